@@ -142,6 +142,49 @@ public interface Channel extends ManagedObject {
      */
     Iterator<ClientSession> getSessions();
 
+    /**
+     * Returns the number of client sessions joined to this channel.
+     *
+     * <p>The returned result may not reflect recent changes to the
+     * channel's membership, as described for the {@link #getSessions
+     * getSessions} method.  Obtaining the count does not access the
+     * sessions themselves.
+     *
+     * @return the number of sessions joined to this channel
+     *
+     * @throws IllegalStateException if this channel is closed
+     * @throws TransactionException if the operation failed because of
+     * a problem with the current transaction
+     */
+    int getSessionCount();
+
+    /**
+     * Returns an iterator for handles to the client sessions joined to
+     * this channel.  The returned iterator may only be used in the task
+     * that this method was invoked from.
+     *
+     * <p>Unlike the iterator returned by {@link #getSessions getSessions},
+     * this iterator does not access the sessions themselves: each {@link
+     * ClientSessionHandle} supplies the session's name, and the session
+     * is only obtained when the application invokes the handle's {@link
+     * ClientSessionHandle#getSession getSession} method.  Applications
+     * that only need some of the members of a large channel should use
+     * this method to avoid adding every member to the current task's
+     * read set.
+     *
+     * <p>The returned iterator may not reflect recent changes to the
+     * channel's membership, as described for the {@code getSessions}
+     * method.
+     *
+     * @return an iterator for handles to the sessions joined to this
+     *	       channel
+     *
+     * @throws IllegalStateException if this channel is closed
+     * @throws TransactionException if the operation failed because of
+     * a problem with the current transaction
+     */
+    Iterator<ClientSessionHandle> getSessionHandles();
+
     /**
      * Adds a client session to this channel.  If the specified
      * session is already joined to this channel, then no action is
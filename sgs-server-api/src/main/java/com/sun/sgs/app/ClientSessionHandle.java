@@ -0,0 +1,79 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.app;
+
+import java.math.BigInteger;
+
+/**
+ * A lightweight handle to a {@link ClientSession} joined to a {@link
+ * Channel}, as returned by {@link Channel#getSessionHandles
+ * Channel.getSessionHandles}.  A handle provides the session's ID and
+ * name without accessing the session itself; the session is only
+ * obtained when {@link #getSession getSession} is invoked. <p>
+ *
+ * Two handles are equal if they refer to the same client session.
+ * Handles are serializable, but are only intended to be used in the
+ * task in which they were obtained.
+ */
+public interface ClientSessionHandle {
+
+    /**
+     * Returns the ID of the client session, which is the same as the
+     * value returned by {@link ManagedReference#getId getId} for a {@link
+     * ManagedReference} to the session.
+     *
+     * @return the ID of the client session
+     */
+    BigInteger getId();
+
+    /**
+     * Returns the login name of the client session.  This method does
+     * not normally access the session, but may need to if the name was
+     * not known when the handle was created.
+     *
+     * @return the login name of the client session
+     *
+     * @throws IllegalStateException if the name is not known and the
+     *	       client session is disconnected
+     * @throws TransactionException if the operation failed because of
+     * a problem with the current transaction
+     */
+    String getName();
+
+    /**
+     * Returns the client session referred to by this handle.
+     *
+     * @return the client session
+     *
+     * @throws IllegalStateException if the client session is
+     *	       disconnected
+     * @throws TransactionException if the operation failed because of
+     * a problem with the current transaction
+     */
+    ClientSession getSession();
+}
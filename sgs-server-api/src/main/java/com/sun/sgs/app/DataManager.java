@@ -28,6 +28,7 @@ package com.sun.sgs.app;
 import java.io.DataInput;
 import java.io.Serializable;
 import java.math.BigInteger;
+import java.util.Collection;
 
 /**
  * Provides facilities for managing access to shared, persistent objects.
@@ -316,4 +317,28 @@ public interface DataManager {
      *		problem with the current transaction
      */
     BigInteger getObjectId(Object object);
+
+    /**
+     * Provides a hint that the objects associated with the specified managed
+     * references are about to be used by the current transaction.  The data
+     * manager may use this hint to obtain any of the objects that have not
+     * yet been retrieved in the current transaction using a single request
+     * to the underlying storage, rather than one request per object as {@link
+     * ManagedReference#get ManagedReference.get} is called on each reference.
+     * Objects obtained this way are retrieved for read access, as with {@code
+     * ManagedReference.get}. <p>
+     *
+     * Calling this method does not change the results of later calls on the
+     * references.  In particular, references to objects that have been
+     * removed are ignored by this method, and will throw {@link
+     * ObjectNotFoundException} when they are dereferenced.  Implementations
+     * are permitted to ignore the hint.
+     *
+     * @param	refs the managed references whose objects should be fetched
+     * @throws	IllegalArgumentException if any of the references were not
+     *		created by this data manager
+     * @throws	TransactionException if the operation failed because of a
+     *		problem with the current transaction
+     */
+    void prefetch(Collection<? extends ManagedReference<?>> refs);
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.app;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * An annotation that tells the system that a task only reads data. Tasks
+ * with this annotation are run in read-only transactions, which avoid the
+ * work needed to record modifications when the task commits. A read-only
+ * task that attempts to create, modify, or remove a managed object, or to
+ * change a name binding, will fail with an {@link IllegalStateException}
+ * and will not be retried. Read-only tasks are useful for work such as
+ * computing summaries or inspecting state that is reported elsewhere.
+ * <p>
+ * Scheduling a task persists the task, so a read-only task cannot
+ * schedule other tasks using {@code TaskManager}. Because a read-only task
+ * has no durable effects, the system may run it more than once if a
+ * failure occurs after the task completes but before the system has
+ * recorded that it is done.
+ * <p>
+ * Note that this annotation does not have the {@code Inherited} annotation.
+ * For a task to be run in a read-only transaction, the concrete class of
+ * the task must have the {@code RunReadOnly} annotation as the annotation
+ * will not be inherited from a superclass or implemented interface.
+ *
+ * @see TaskManager
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Documented
+public @interface RunReadOnly {
+
+}
@@ -51,6 +51,10 @@ import java.io.Serializable;
  * practical terms, this means that the system will be able to recognize
  * these tasks as distinct behavior from other tasks in the system.
  * <p>
+ * If the instance of <code>Task</code> is an instance of a class that has
+ * the <code>RunReadOnly</code> annotation then that task will be run in a
+ * read-only transaction, and will fail if it attempts to modify data.
+ * <p>
  * Note that there is no assumed ordering provided by implementations of
  * this interface. If two tasks are scheduled in a given transaction, it is
  * undefined which task will run or complete first. Likewise, if a task
@@ -62,6 +66,7 @@ import java.io.Serializable;
  * @see AppContext#getTaskManager
  * @see Task
  * @see RunWithNewIdentity
+ * @see RunReadOnly
  */
 public interface TaskManager {
 
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.app.util;
+
+import com.sun.sgs.app.AppContext;
+import com.sun.sgs.app.Channel;
+import com.sun.sgs.app.ClientSession;
+import com.sun.sgs.app.ManagedObject;
+import com.sun.sgs.app.ManagedReference;
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Maintains the membership of a {@link Channel} so that it contains the
+ * client sessions located within a circular area, for use with a {@link
+ * ScalableSpatialIndex} that records the locations of client sessions.  The
+ * application calls {@link #populate populate} once to join the sessions
+ * already in the area, and then calls {@link #moved moved}, {@link #added
+ * added}, and {@link #removed removed} as it makes the corresponding changes
+ * to the index, so that sessions join or leave the channel as they enter or
+ * leave the area.
+ *
+ * <p>
+ *
+ * The area of an instance does not change, and instances are not modified
+ * after they are created, so concurrent tasks that update sessions in the
+ * same area only conflict when they modify the channel membership.
+ */
+public class AreaOfInterest implements ManagedObject, Serializable {
+
+    /** The version of the serialized form. */
+    private static final long serialVersionUID = 1;
+
+    /**
+     * A reference to the channel.
+     *
+     * @serial
+     */
+    private final ManagedReference<Channel> channelRef;
+
+    /**
+     * The X coordinate of the center of the area.
+     *
+     * @serial
+     */
+    private final double x;
+
+    /**
+     * The Y coordinate of the center of the area.
+     *
+     * @serial
+     */
+    private final double y;
+
+    /**
+     * The radius of the area.
+     *
+     * @serial
+     */
+    private final double radius;
+
+    /**
+     * Creates an instance that maintains the membership of the channel for
+     * the specified area.
+     *
+     * @param	channel the channel
+     * @param	x the X coordinate of the center of the area
+     * @param	y the Y coordinate of the center of the area
+     * @param	radius the radius of the area
+     * @throws	IllegalArgumentException if {@code radius} is negative
+     * @throws	NullPointerException if {@code channel} is {@code null}
+     */
+    public AreaOfInterest(Channel channel, double x, double y, double radius)
+    {
+	if (channel == null) {
+	    throw new NullPointerException(
+		"The channel argument must not be null");
+	} else if (radius < 0) {
+	    throw new IllegalArgumentException(
+		"The radius must not be negative");
+	}
+	channelRef = AppContext.getDataManager().createReference(channel);
+	this.x = x;
+	this.y = y;
+	this.radius = radius;
+    }
+
+    /**
+     * Returns the channel.
+     *
+     * @return	the channel
+     */
+    public Channel getChannel() {
+	return channelRef.get();
+    }
+
+    /**
+     * Checks if the specified location is within the area.
+     *
+     * @param	x the X coordinate of the location
+     * @param	y the Y coordinate of the location
+     * @return	{@code true} if the location is within the area, otherwise
+     *		{@code false}
+     */
+    public boolean contains(double x, double y) {
+	double dx = x - this.x;
+	double dy = y - this.y;
+	return dx * dx + dy * dy <= radius * radius;
+    }
+
+    /**
+     * Joins all of the client sessions in the index that are located within
+     * the area to the channel, using a single call to {@link
+     * Channel#join(Set)}.  Elements of the index that are not client
+     * sessions are ignored.
+     *
+     * @param	index the index
+     */
+    public void populate(ScalableSpatialIndex<?> index) {
+	Set<ClientSession> sessions = new HashSet<ClientSession>();
+	for (Object element : index.getWithinRadius(x, y, radius)) {
+	    if (element instanceof ClientSession) {
+		sessions.add((ClientSession) element);
+	    }
+	}
+	if (!sessions.isEmpty()) {
+	    getChannel().join(sessions);
+	}
+    }
+
+    /**
+     * Updates the channel membership for a session that has been added to
+     * the index at the specified location, joining it to the channel if the
+     * location is within the area.
+     *
+     * @param	session the session
+     * @param	x the X coordinate of the session
+     * @param	y the Y coordinate of the session
+     */
+    public void added(ClientSession session, double x, double y) {
+	if (contains(x, y)) {
+	    getChannel().join(session);
+	}
+    }
+
+    /**
+     * Updates the channel membership for a session that has been removed
+     * from the index at the specified location, removing it from the channel
+     * if the location is within the area.
+     *
+     * @param	session the session
+     * @param	x the X coordinate of the session
+     * @param	y the Y coordinate of the session
+     */
+    public void removed(ClientSession session, double x, double y) {
+	if (contains(x, y)) {
+	    getChannel().leave(session);
+	}
+    }
+
+    /**
+     * Updates the channel membership for a session that has moved, joining
+     * it to the channel if it entered the area, or removing it from the
+     * channel if it left the area.  The channel is not accessed if the
+     * session did not cross the boundary of the area.
+     *
+     * @param	session the session
+     * @param	oldX the previous X coordinate of the session
+     * @param	oldY the previous Y coordinate of the session
+     * @param	newX the new X coordinate of the session
+     * @param	newY the new Y coordinate of the session
+     * @return	{@code true} if the channel membership was changed, otherwise
+     *		{@code false}
+     */
+    public boolean moved(ClientSession session, double oldX, double oldY,
+			 double newX, double newY)
+    {
+	boolean wasInside = contains(oldX, oldY);
+	boolean isInside = contains(newX, newY);
+	if (wasInside == isInside) {
+	    return false;
+	} else if (isInside) {
+	    getChannel().join(session);
+	} else {
+	    getChannel().leave(session);
+	}
+	return true;
+    }
+}
@@ -0,0 +1,489 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.app.util;
+
+import com.sun.sgs.app.AppContext;
+import com.sun.sgs.app.DataManager;
+import com.sun.sgs.app.ManagedObject;
+import com.sun.sgs.app.ManagedObjectRemoval;
+import com.sun.sgs.app.ManagedReference;
+import com.sun.sgs.app.ObjectNotFoundException;
+import com.sun.sgs.app.Task;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A scalable accumulator of a {@code long} value, which combines values
+ * using an associative and commutative {@link Operation}.  The accumulated
+ * value is spread across a number of separate managed objects, called
+ * stripes, so that tasks that update the accumulator at the same time will
+ * typically modify different objects and so will not conflict with each
+ * other.  This class is useful for global aggregates, like the number of
+ * players online or the total amount of money in an economy, which would
+ * otherwise be a common source of {@link
+ * com.sun.sgs.app.TransactionConflictException}s if stored in a single
+ * {@code ManagedObject}.  See {@link ScalableCounter} for an accumulator that
+ * computes sums.
+ *
+ * <p>
+ *
+ * Each call to {@link #accumulate(long) accumulate} modifies a single stripe.
+ * By default, the stripe is chosen based on the current thread, so tasks
+ * running concurrently in different threads will usually update different
+ * stripes.  Callers can also supply a hint, such as the name of the player
+ * whose action caused the update, by calling {@link #accumulate(long, Object)
+ * accumulate(value, hint)}, in which case the stripe is chosen based on the
+ * hash code of the hint.
+ *
+ * <p>
+ *
+ * The accumulator starts with a small number of stripes and adds more, up to
+ * a specified maximum, when it notices that a stripe is being updated by
+ * different threads in rapid succession, which indicates that tasks are
+ * likely to be conflicting on that stripe.  The new stripes are added in a
+ * separate task so that the callers updating the accumulator do not need to
+ * modify the accumulator itself.
+ *
+ * <p>
+ *
+ * The {@link #get get} method returns the exact value by reading every
+ * stripe.  Because it obtains read locks on all of the stripes, it will
+ * conflict with concurrent updates, and so should be used sparingly.  The
+ * {@link #getApproximate getApproximate} method instead reads a single
+ * object that holds a snapshot of the value.  The snapshot is refreshed in a
+ * separate task, no more often than once every second, when the accumulator
+ * is being updated, so the approximate value may lag behind the current
+ * value by a second or more.  Calling {@code getApproximate} does not modify
+ * any objects, so it can be used in tasks that only read data.
+ *
+ * <p>
+ *
+ * This class marks its stripes for update as necessary; no additional calls
+ * to the {@link DataManager} are necessary when modifying the accumulator.
+ * Developers should not call {@code markForUpdate} or {@code getForUpdate} on
+ * the accumulator, as that will eliminate its concurrency benefits.
+ *
+ * <p>
+ *
+ * Removing the accumulator from the data manager also removes its stripes
+ * and its snapshot.
+ */
+public class ScalableAccumulator
+    implements ManagedObject, Serializable, ManagedObjectRemoval
+{
+    /** The version of the serialized form. */
+    private static final long serialVersionUID = 1;
+
+    /** The default initial number of stripes. */
+    public static final int DEFAULT_INITIAL_STRIPES = 4;
+
+    /** The default maximum number of stripes. */
+    public static final int DEFAULT_MAX_STRIPES = 64;
+
+    /**
+     * The minimum number of milliseconds between refreshes of the snapshot
+     * used for approximate reads.
+     */
+    static final long REFRESH_INTERVAL = 1000;
+
+    /**
+     * Updates of the same stripe by different threads within this number of
+     * milliseconds of each other are counted as likely conflicts.
+     */
+    static final long CONTENTION_INTERVAL = 20;
+
+    /**
+     * The number of milliseconds over which likely conflicts on a stripe are
+     * counted.
+     */
+    static final long CONTENTION_WINDOW = 1000;
+
+    /**
+     * The number of likely conflicts on a stripe within a contention window
+     * that causes stripes to be added.
+     */
+    static final int CONTENTION_THRESHOLD = 8;
+
+    /**
+     * An associative and commutative operation for combining {@code long}
+     * values.  Implementations need to be serializable since the operation is
+     * stored with the accumulator.
+     */
+    public interface Operation extends Serializable {
+
+	/**
+	 * Combines two values.
+	 *
+	 * @param	x the first value
+	 * @param	y the second value
+	 * @return	the combined value
+	 */
+	long combine(long x, long y);
+    }
+
+    /**
+     * The operation used to combine values.
+     *
+     * @serial
+     */
+    private final Operation operation;
+
+    /**
+     * The identity value of the operation, which is the initial value of
+     * each stripe.
+     *
+     * @serial
+     */
+    private final long identity;
+
+    /**
+     * The maximum number of stripes.
+     *
+     * @serial
+     */
+    private final int maxStripes;
+
+    /**
+     * References to the stripes.  This list is only modified when stripes
+     * are added.
+     *
+     * @serial
+     */
+    private final List<ManagedReference<Stripe>> stripes;
+
+    /**
+     * A reference to the snapshot used for approximate reads.
+     *
+     * @serial
+     */
+    private final ManagedReference<Snapshot> snapshotRef;
+
+    /**
+     * Creates an accumulator that uses the specified operation and identity
+     * value, and the default initial and maximum number of stripes.
+     *
+     * @param	operation the operation for combining values
+     * @param	identity the identity value for the operation, which is the
+     *		initial value of the accumulator
+     * @throws	NullPointerException if {@code operation} is {@code null}
+     */
+    public ScalableAccumulator(Operation operation, long identity) {
+	this(operation, identity, DEFAULT_INITIAL_STRIPES,
+	     DEFAULT_MAX_STRIPES);
+    }
+
+    /**
+     * Creates an accumulator that uses the specified operation, identity
+     * value, and initial and maximum number of stripes.
+     *
+     * @param	operation the operation for combining values
+     * @param	identity the identity value for the operation, which is the
+     *		initial value of the accumulator
+     * @param	initialStripes the initial number of stripes
+     * @param	maxStripes the maximum number of stripes
+     * @throws	NullPointerException if {@code operation} is {@code null}
+     * @throws	IllegalArgumentException if {@code initialStripes} is less
+     *		than {@code 1}, or if {@code maxStripes} is less than {@code
+     *		initialStripes}
+     */
+    public ScalableAccumulator(Operation operation,
+			       long identity,
+			       int initialStripes,
+			       int maxStripes)
+    {
+	if (operation == null) {
+	    throw new NullPointerException(
+		"The operation argument must not be null");
+	} else if (initialStripes < 1) {
+	    throw new IllegalArgumentException(
+		"The initialStripes argument must be greater than 0");
+	} else if (maxStripes < initialStripes) {
+	    throw new IllegalArgumentException(
+		"The maxStripes argument must not be less than " +
+		"initialStripes");
+	}
+	this.operation = operation;
+	this.identity = identity;
+	this.maxStripes = maxStripes;
+	DataManager dm = AppContext.getDataManager();
+	stripes = new ArrayList<ManagedReference<Stripe>>(initialStripes);
+	for (int i = 0; i < initialStripes; i++) {
+	    stripes.add(dm.createReference(new Stripe(identity)));
+	}
+	snapshotRef = dm.createReference(new Snapshot(identity));
+    }
+
+    /**
+     * Combines the specified value with the value of the accumulator, using
+     * a stripe chosen based on the current thread.
+     *
+     * @param	value the value to combine
+     */
+    public void accumulate(long value) {
+	accumulate(value, hash(Thread.currentThread().getId()));
+    }
+
+    /**
+     * Combines the specified value with the value of the accumulator, using
+     * a stripe chosen based on the hash code of the specified hint.  Calls
+     * that supply equal hints will update the same stripe, as long as no
+     * stripes have been added in between.
+     *
+     * @param	value the value to combine
+     * @param	hint the object used to choose the stripe
+     * @throws	NullPointerException if {@code hint} is {@code null}
+     */
+    public void accumulate(long value, Object hint) {
+	if (hint == null) {
+	    throw new NullPointerException(
+		"The hint argument must not be null");
+	}
+	accumulate(value, hash(hint.hashCode()));
+    }
+
+    /**
+     * Returns the exact value of the accumulator, by reading all of its
+     * stripes.
+     *
+     * @return	the value of the accumulator
+     */
+    public long get() {
+	long result = identity;
+	for (ManagedReference<Stripe> ref : stripes) {
+	    result = operation.combine(result, ref.get().value);
+	}
+	return result;
+    }
+
+    /**
+     * Returns an approximate value of the accumulator, by reading a snapshot
+     * of the value that is refreshed periodically while the accumulator is
+     * being updated.  The value returned does not include updates made
+     * within roughly the last second, and does not include updates made by
+     * the current transaction.
+     *
+     * @return	an approximate value of the accumulator
+     */
+    public long getApproximate() {
+	return snapshotRef.get().value;
+    }
+
+    /* -- Implement ManagedObjectRemoval -- */
+
+    /**
+     * {@inheritDoc} <p>
+     *
+     * This implementation removes the stripes and the snapshot.
+     */
+    public void removingObject() {
+	DataManager dm = AppContext.getDataManager();
+	for (ManagedReference<Stripe> ref : stripes) {
+	    dm.removeObject(ref.get());
+	}
+	dm.removeObject(snapshotRef.get());
+    }
+
+    /* -- Other methods -- */
+
+    /**
+     * Returns the current number of stripes.  This method is intended for
+     * testing.
+     */
+    int getStripeCount() {
+	return stripes.size();
+    }
+
+    /**
+     * Combines the value with the stripe selected by the hash code, and
+     * schedules tasks to add stripes or refresh the snapshot if needed.
+     */
+    private void accumulate(long value, int hash) {
+	int count = stripes.size();
+	Stripe stripe = stripes.get(hash % count).getForUpdate();
+	stripe.value = operation.combine(stripe.value, value);
+	long now = System.currentTimeMillis();
+	DataManager dm = AppContext.getDataManager();
+	if (stripe.noteUpdate(now) && count < maxStripes) {
+	    AppContext.getTaskManager().scheduleTask(
+		new AddStripesTask(dm.createReference(this), count));
+	}
+	if (now - stripe.lastRefresh >= REFRESH_INTERVAL) {
+	    stripe.lastRefresh = now;
+	    AppContext.getTaskManager().scheduleTask(
+		new RefreshTask(dm.createReference(this)));
+	}
+    }
+
+    /**
+     * Doubles the number of stripes, up to the maximum, if the current
+     * number is the specified number.
+     */
+    void addStripes(int count) {
+	int size = stripes.size();
+	if (size != count || size >= maxStripes) {
+	    return;
+	}
+	DataManager dm = AppContext.getDataManager();
+	dm.markForUpdate(this);
+	int newSize = Math.min(2 * size, maxStripes);
+	for (int i = size; i < newSize; i++) {
+	    stripes.add(dm.createReference(new Stripe(identity)));
+	}
+    }
+
+    /**
+     * Stores the current value in the snapshot, unless it was refreshed
+     * recently.
+     */
+    void refresh() {
+	Snapshot snapshot = snapshotRef.get();
+	long now = System.currentTimeMillis();
+	if (now - snapshot.time < REFRESH_INTERVAL / 2) {
+	    return;
+	}
+	long value = get();
+	AppContext.getDataManager().markForUpdate(snapshot);
+	snapshot.value = value;
+	snapshot.time = now;
+    }
+
+    /**
+     * Returns a non-negative hash value derived from the argument.  This
+     * method is also used by {@link ScalableBag} to choose lanes.
+     */
+    static int hash(long n) {
+	int h = (int) (n ^ (n >>> 32));
+	h ^= (h >>> 20) ^ (h >>> 12);
+	h ^= (h >>> 7) ^ (h >>> 4);
+	return h & Integer.MAX_VALUE;
+    }
+
+    /* -- Nested classes -- */
+
+    /** Stores a portion of the value of the accumulator. */
+    private static final class Stripe implements ManagedObject, Serializable {
+	private static final long serialVersionUID = 1;
+
+	/** The value of this stripe. */
+	long value;
+
+	/** The time of the last update. */
+	private long lastUpdate;
+
+	/** The ID of the thread that made the last update. */
+	private long lastThread = -1;
+
+	/** The start time of the current contention window. */
+	private long windowStart;
+
+	/** The number of likely conflicts in the current window. */
+	private int conflicts;
+
+	/** The last time this stripe requested a refresh of the snapshot. */
+	long lastRefresh;
+
+	Stripe(long value) {
+	    this.value = value;
+	}
+
+	/**
+	 * Notes an update at the specified time, returning whether the
+	 * stripe appears to be contended.
+	 */
+	boolean noteUpdate(long now) {
+	    long thread = Thread.currentThread().getId();
+	    if (now - windowStart > CONTENTION_WINDOW) {
+		windowStart = now;
+		conflicts = 0;
+	    }
+	    if (thread != lastThread && now - lastUpdate < CONTENTION_INTERVAL)
+	    {
+		conflicts++;
+	    }
+	    lastThread = thread;
+	    lastUpdate = now;
+	    if (conflicts >= CONTENTION_THRESHOLD) {
+		conflicts = 0;
+		return true;
+	    }
+	    return false;
+	}
+    }
+
+    /** Stores a recent value of the accumulator for approximate reads. */
+    private static final class Snapshot
+	implements ManagedObject, Serializable
+    {
+	private static final long serialVersionUID = 1;
+
+	/** The value. */
+	long value;
+
+	/** The time the value was computed. */
+	long time;
+
+	Snapshot(long value) {
+	    this.value = value;
+	}
+    }
+
+    /** A task that adds stripes to an accumulator. */
+    private static final class AddStripesTask implements Task, Serializable {
+	private static final long serialVersionUID = 1;
+	private final ManagedReference<ScalableAccumulator> ref;
+	private final int count;
+	AddStripesTask(ManagedReference<ScalableAccumulator> ref, int count) {
+	    this.ref = ref;
+	    this.count = count;
+	}
+	public void run() {
+	    try {
+		ref.get().addStripes(count);
+	    } catch (ObjectNotFoundException e) {
+		/* The accumulator was removed */
+	    }
+	}
+    }
+
+    /** A task that refreshes the snapshot of an accumulator. */
+    private static final class RefreshTask implements Task, Serializable {
+	private static final long serialVersionUID = 1;
+	private final ManagedReference<ScalableAccumulator> ref;
+	RefreshTask(ManagedReference<ScalableAccumulator> ref) {
+	    this.ref = ref;
+	}
+	public void run() {
+	    try {
+		ref.get().refresh();
+	    } catch (ObjectNotFoundException e) {
+		/* The accumulator was removed */
+	    }
+	}
+    }
+}
@@ -0,0 +1,471 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.app.util;
+
+import com.sun.sgs.app.AppContext;
+import com.sun.sgs.app.DataManager;
+import com.sun.sgs.app.ManagedObjectRemoval;
+import com.sun.sgs.app.ManagedReference;
+import java.io.Serializable;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A scalable, unordered {@code Queue} implementation intended for work
+ * queues with many concurrent producers and consumers.  The elements are
+ * stored in a number of independent lanes, each of which is a {@link
+ * ScalableDeque}.  Each call to {@link #offer(Object) offer} adds the element
+ * to the tail of a single lane, chosen based on the current thread, and each
+ * call to {@link #poll poll} removes the element at the head of a lane,
+ * starting with the lane chosen based on the current thread and moving on to
+ * the other lanes if that lane is empty.  Since concurrent tasks running in
+ * different threads usually access different lanes, they do not conflict
+ * with each other, unlike concurrent operations on the same end of a single
+ * {@code ScalableDeque}.
+ *
+ * <p>
+ *
+ * The price for this concurrency is that the ordering of elements is
+ * relaxed.  Elements added to the same lane are removed in first-in,
+ * first-out order, but there is no ordering between elements in different
+ * lanes.  Applications that need strict FIFO ordering should use {@code
+ * ScalableDeque} instead.  Callers can control which lane is used by
+ * supplying a hint, for example the name of a player, to {@link
+ * #offer(Object, Object) offer(element, hint)} and {@link #poll(Object)
+ * poll(hint)}; elements offered with equal hints are placed in the same lane,
+ * and so are removed in order with respect to each other by calls to {@code
+ * poll} with the same hint.
+ *
+ * <p>
+ *
+ * When the lane chosen by a call to {@code poll} or {@link #peek peek} is
+ * empty, the call checks the other lanes in turn.  Checking an empty lane
+ * reads the pointers at the ends of that lane, which can conflict with a
+ * concurrent producer that adds the first element to that lane.  Work queues
+ * that are usually close to empty will see less benefit from this class than
+ * ones that usually hold a backlog of elements.
+ *
+ * <p>
+ *
+ * The number of elements is tracked with a {@link ScalableCounter}, so
+ * updating the size does not cause conflicts between concurrent operations.
+ * The {@link #size size} method returns the exact number of elements, but
+ * reads all of the counter's stripes, so it will conflict with concurrent
+ * updates.  The {@link #approximateSize approximateSize} method returns a
+ * recent value without conflicting.  The {@link #isEmpty isEmpty} method
+ * checks each lane, and so takes time proportional to the number of lanes.
+ *
+ * <p>
+ *
+ * All elements stored by this queue must be instances of {@link
+ * Serializable}, and {@code null} elements are not permitted.  As with {@code
+ * ScalableDeque}, elements that are instances of {@link
+ * com.sun.sgs.app.ManagedObject} are not removed from the data manager when
+ * they are removed from the queue.
+ *
+ * <p>
+ *
+ * This class marks its internal objects for update as necessary; no
+ * additional calls to the {@link DataManager} are necessary when modifying
+ * the queue.  Developers should not call {@code markForUpdate} or {@code
+ * getForUpdate} on the queue, as this will eliminate all the concurrency
+ * benefits of this class.
+ *
+ * <p>
+ *
+ * The iterator for this class visits the lanes in order, and implements
+ * {@code Serializable}.  Within each lane it behaves like the iterator for
+ * {@code ScalableDeque}, including throwing {@link
+ * java.util.ConcurrentModificationException} if the next element in the lane
+ * was removed by another task.
+ *
+ * @param <E> the type of elements held by this queue
+ *
+ * @see ScalableDeque
+ */
+public class ScalableBag<E> extends AbstractQueue<E>
+    implements Serializable, ManagedObjectRemoval
+{
+    /** The version of the serialized form. */
+    private static final long serialVersionUID = 1;
+
+    /** The default number of lanes. */
+    public static final int DEFAULT_LANES = 8;
+
+    /**
+     * References to the lanes.
+     *
+     * @serial
+     */
+    private final List<ManagedReference<ScalableDeque<E>>> lanes;
+
+    /**
+     * A reference to the counter that tracks the number of elements.
+     *
+     * @serial
+     */
+    private final ManagedReference<ScalableCounter> sizeRef;
+
+    /** Creates an empty queue with the default number of lanes. */
+    public ScalableBag() {
+	this(DEFAULT_LANES);
+    }
+
+    /**
+     * Creates an empty queue with the specified number of lanes.  The number
+     * of lanes should be at least the number of tasks expected to use the
+     * queue concurrently.
+     *
+     * @param	lanes the number of lanes
+     * @throws	IllegalArgumentException if {@code lanes} is less than {@code
+     *		1}
+     */
+    public ScalableBag(int lanes) {
+	if (lanes < 1) {
+	    throw new IllegalArgumentException(
+		"The lanes argument must be greater than 0");
+	}
+	DataManager dm = AppContext.getDataManager();
+	this.lanes = new ArrayList<ManagedReference<ScalableDeque<E>>>(lanes);
+	for (int i = 0; i < lanes; i++) {
+	    this.lanes.add(dm.createReference(new ScalableDeque<E>()));
+	}
+	sizeRef = dm.createReference(new ScalableCounter(lanes, 4 * lanes));
+    }
+
+    /**
+     * Creates a queue with the default number of lanes that contains the
+     * elements of the specified collection.
+     *
+     * @param	c the elements to add
+     * @throws	IllegalArgumentException if any of the elements are not {@code
+     *		Serializable}
+     * @throws	NullPointerException if {@code c} or any of its elements are
+     *		{@code null}
+     */
+    public ScalableBag(Collection<? extends E> c) {
+	this(DEFAULT_LANES);
+	addAll(c);
+    }
+
+    /* -- Implement Queue -- */
+
+    /**
+     * {@inheritDoc} <p>
+     *
+     * The element is added to the lane chosen based on the current thread.
+     *
+     * @return	{@code true}
+     */
+    public boolean offer(E e) {
+	return offer(e, threadHash());
+    }
+
+    /**
+     * {@inheritDoc} <p>
+     *
+     * The element is removed from the lane chosen based on the current
+     * thread, if that lane is not empty, otherwise from the first non-empty
+     * lane that follows it.
+     */
+    public E poll() {
+	return poll(threadHash());
+    }
+
+    /**
+     * {@inheritDoc} <p>
+     *
+     * The element is taken from the lane chosen based on the current thread,
+     * if that lane is not empty, otherwise from the first non-empty lane that
+     * follows it.
+     */
+    public E peek() {
+	int count = lanes.size();
+	int start = threadHash() % count;
+	for (int i = 0; i < count; i++) {
+	    E e = lane((start + i) % count).peekFirst();
+	    if (e != null) {
+		return e;
+	    }
+	}
+	return null;
+    }
+
+    /* -- Other public methods -- */
+
+    /**
+     * Adds the specified element to the lane chosen based on the hash code
+     * of the specified hint.
+     *
+     * @param	e the element to add
+     * @param	hint the object used to choose the lane
+     * @return	{@code true}
+     * @throws	IllegalArgumentException if {@code e} is not {@code
+     *		Serializable}
+     * @throws	NullPointerException if {@code e} or {@code hint} is {@code
+     *		null}
+     */
+    public boolean offer(E e, Object hint) {
+	return offer(e, ScalableAccumulator.hash(checkHint(hint).hashCode()));
+    }
+
+    /**
+     * Removes and returns an element, starting with the lane chosen based on
+     * the hash code of the specified hint, and moving on to the following
+     * lanes if that lane is empty.
+     *
+     * @param	hint the object used to choose the lane
+     * @return	the element removed, or {@code null} if the queue is empty
+     * @throws	NullPointerException if {@code hint} is {@code null}
+     */
+    public E poll(Object hint) {
+	return poll(ScalableAccumulator.hash(checkHint(hint).hashCode()));
+    }
+
+    /**
+     * {@inheritDoc} <p>
+     *
+     * This implementation checks each lane until it finds one that is not
+     * empty.
+     */
+    public boolean isEmpty() {
+	for (ManagedReference<ScalableDeque<E>> ref : lanes) {
+	    if (!ref.get().isEmpty()) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * {@inheritDoc} <p>
+     *
+     * This implementation reads all of the stripes of the counter used to
+     * track the number of elements, and so will conflict with concurrent
+     * updates to the queue.
+     */
+    public int size() {
+	return (int) sizeRef.get().get();
+    }
+
+    /**
+     * Returns a recent value of the number of elements in the queue, without
+     * conflicting with concurrent updates.  The value may not reflect updates
+     * made within roughly the last second.
+     *
+     * @return	the approximate number of elements in the queue
+     */
+    public int approximateSize() {
+	return (int) sizeRef.get().getApproximate();
+    }
+
+    /**
+     * {@inheritDoc} <p>
+     *
+     * This implementation checks each lane, which takes constant time per
+     * lane.
+     */
+    public boolean contains(Object o) {
+	for (ManagedReference<ScalableDeque<E>> ref : lanes) {
+	    if (ref.get().contains(o)) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /** {@inheritDoc} */
+    public boolean remove(Object o) {
+	for (ManagedReference<ScalableDeque<E>> ref : lanes) {
+	    if (ref.get().removeFirstOccurrence(o)) {
+		sizeRef.get().decrement();
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * {@inheritDoc} <p>
+     *
+     * This implementation clears each lane, which removes the elements in
+     * separate tasks.
+     */
+    public void clear() {
+	for (ManagedReference<ScalableDeque<E>> ref : lanes) {
+	    ref.get().clear();
+	}
+	ScalableCounter size = sizeRef.get();
+	size.add(-size.get());
+    }
+
+    /**
+     * {@inheritDoc} <p>
+     *
+     * The iterator returns the elements of each lane in turn.  It implements
+     * {@code Serializable}, but not {@code ManagedObject}, so it needs to be
+     * stored in a managed object, and that object marked for update when
+     * the iterator is used, in order to persist it.
+     */
+    public Iterator<E> iterator() {
+	return new LaneIterator<E>(this);
+    }
+
+    /* -- Implement ManagedObjectRemoval -- */
+
+    /** Removes the lanes and the counter. */
+    public void removingObject() {
+	DataManager dm = AppContext.getDataManager();
+	for (ManagedReference<ScalableDeque<E>> ref : lanes) {
+	    dm.removeObject(ref.get());
+	}
+	dm.removeObject(sizeRef.get());
+    }
+
+    /* -- Private methods and classes -- */
+
+    /** Adds the element to the lane chosen by the hash value. */
+    private boolean offer(E e, int hash) {
+	if (e == null) {
+	    throw new NullPointerException("cannot add null elements");
+	}
+	lane(hash % lanes.size()).offerLast(e);
+	sizeRef.get().increment();
+	return true;
+    }
+
+    /**
+     * Removes an element, starting with the lane chosen by the hash value.
+     */
+    private E poll(int hash) {
+	int count = lanes.size();
+	int start = hash % count;
+	for (int i = 0; i < count; i++) {
+	    E e = lane((start + i) % count).pollFirst();
+	    if (e != null) {
+		sizeRef.get().decrement();
+		return e;
+	    }
+	}
+	return null;
+    }
+
+    /** Returns the lane with the specified index. */
+    ScalableDeque<E> lane(int index) {
+	return lanes.get(index).get();
+    }
+
+    /** Returns the number of lanes. */
+    int laneCount() {
+	return lanes.size();
+    }
+
+    /** Notes that an element was removed by an iterator. */
+    void noteRemoved() {
+	sizeRef.get().decrement();
+    }
+
+    /** Returns a hash value for choosing a lane for the current thread. */
+    private static int threadHash() {
+	return ScalableAccumulator.hash(Thread.currentThread().getId());
+    }
+
+    /** Checks that the hint is not null, and returns it. */
+    private static Object checkHint(Object hint) {
+	if (hint == null) {
+	    throw new NullPointerException(
+		"The hint argument must not be null");
+	}
+	return hint;
+    }
+
+    /** An iterator that returns the elements of each lane in turn. */
+    private static final class LaneIterator<E>
+	implements Iterator<E>, Serializable
+    {
+	private static final long serialVersionUID = 1;
+
+	/** A reference to the queue. */
+	private final ManagedReference<ScalableBag<E>> bagRef;
+
+	/** The index of the current lane. */
+	private int laneIndex;
+
+	/** The iterator for the current lane. */
+	private Iterator<E> laneIterator;
+
+	/**
+	 * The iterator that returned the last element, or {@code null} if
+	 * there is no element to remove.
+	 */
+	private Iterator<E> lastIterator;
+
+	LaneIterator(ScalableBag<E> bag) {
+	    bagRef = AppContext.getDataManager().createReference(bag);
+	    laneIterator = bag.lane(0).iterator();
+	}
+
+	public boolean hasNext() {
+	    if (laneIterator.hasNext()) {
+		return true;
+	    }
+	    ScalableBag<E> bag = bagRef.get();
+	    int count = bag.laneCount();
+	    while (laneIndex + 1 < count) {
+		laneIndex++;
+		laneIterator = bag.lane(laneIndex).iterator();
+		if (laneIterator.hasNext()) {
+		    return true;
+		}
+	    }
+	    return false;
+	}
+
+	public E next() {
+	    if (!hasNext()) {
+		throw new NoSuchElementException();
+	    }
+	    E e = laneIterator.next();
+	    lastIterator = laneIterator;
+	    return e;
+	}
+
+	public void remove() {
+	    if (lastIterator == null) {
+		throw new IllegalStateException();
+	    }
+	    lastIterator.remove();
+	    lastIterator = null;
+	    bagRef.get().noteRemoved();
+	}
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.app.util;
+
+/**
+ * A scalable counter, which spreads updates across a number of managed
+ * objects so that concurrent tasks can update the counter without
+ * conflicting with each other.  See {@link ScalableAccumulator} for details
+ * about how updates are spread and how the value can be read.
+ */
+public class ScalableCounter extends ScalableAccumulator {
+
+    /** The version of the serialized form. */
+    private static final long serialVersionUID = 1;
+
+    /** Creates a counter with an initial value of {@code 0}. */
+    public ScalableCounter() {
+	this(DEFAULT_INITIAL_STRIPES, DEFAULT_MAX_STRIPES);
+    }
+
+    /**
+     * Creates a counter with an initial value of {@code 0} and the specified
+     * initial and maximum number of stripes.
+     *
+     * @param	initialStripes the initial number of stripes
+     * @param	maxStripes the maximum number of stripes
+     * @throws	IllegalArgumentException if {@code initialStripes} is less
+     *		than {@code 1}, or if {@code maxStripes} is less than {@code
+     *		initialStripes}
+     */
+    public ScalableCounter(int initialStripes, int maxStripes) {
+	super(new Sum(), 0, initialStripes, maxStripes);
+    }
+
+    /**
+     * Adds the specified value to the counter.
+     *
+     * @param	delta the value to add
+     */
+    public void add(long delta) {
+	accumulate(delta);
+    }
+
+    /**
+     * Adds the specified value to the counter, using the hint to choose the
+     * stripe to update, as described for {@link #accumulate(long, Object)}.
+     *
+     * @param	delta the value to add
+     * @param	hint the object used to choose the stripe
+     * @throws	NullPointerException if {@code hint} is {@code null}
+     */
+    public void add(long delta, Object hint) {
+	accumulate(delta, hint);
+    }
+
+    /** Adds one to the counter. */
+    public void increment() {
+	accumulate(1);
+    }
+
+    /** Subtracts one from the counter. */
+    public void decrement() {
+	accumulate(-1);
+    }
+
+    /** The operation that adds values. */
+    private static final class Sum implements Operation {
+	private static final long serialVersionUID = 1;
+	public long combine(long x, long y) {
+	    return x + y;
+	}
+    }
+}
@@ -41,9 +41,11 @@ import java.math.BigInteger;
 import java.util.AbstractCollection;
 import java.util.AbstractMap;
 import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
@@ -783,6 +785,25 @@ public class ScalableHashMap<K, V>
 	return null;
     }
 
+    /**
+     * Provides a hint to the data manager that the keys, and optionally the
+     * values, of all the entries in this leaf are about to be used, so that
+     * they can be fetched together rather than one at a time.
+     *
+     * @param values whether to fetch the values as well as the keys
+     */
+    void prefetchEntries(boolean values) {
+	List<ManagedReference<?>> refs = new ArrayList<ManagedReference<?>>();
+	for (int i = 0; i < table.length; i++) {
+            for (PrefixEntry<K, V> e = getBucket(i); e != null; e = e.next) {
+		e.addReferences(refs, values);
+	    }
+	}
+	if (!refs.isEmpty()) {
+	    AppContext.getDataManager().prefetch(refs);
+	}
+    }
+
     /**
      * Returns the next entry in this leaf after the entry with the specified
      * hash and key reference, or {@code null} if there are no entries after
@@ -1941,6 +1962,20 @@ public class ScalableHashMap<K, V>
 	    }
 	}
 
+	/**
+	 * Adds the references to the managed objects that store the key, and
+	 * optionally the value, of this entry to the list.
+	 *
+	 * @param refs the list of references
+	 * @param value whether to add the reference for the value
+	 */
+	void addReferences(List<ManagedReference<?>> refs, boolean value) {
+	    refs.add(keyOrPairRef);
+	    if (value && valueRef != null) {
+		refs.add(valueRef);
+	    }
+	}
+
 	/**
 	 * Returns the key stored by this entry.  If the mapping has been
 	 * removed from the backing map before this call is made, an {@code
@@ -2248,6 +2283,12 @@ public class ScalableHashMap<K, V>
 	 */
 	private transient boolean checkedRootModifications = false;
 
+	/**
+	 * The last leaf whose entries were prefetched, or null if none have
+	 * been prefetched in the current transaction.
+	 */
+        private transient ScalableHashMap<K, V> prefetchedLeaf = null;
+
 	/**
 	 * Constructs a new {@code ConcurrentIterator}.
 	 *
@@ -2286,6 +2327,21 @@ public class ScalableHashMap<K, V>
 		nextEntry = nextLeaf.firstEntry();
 	    }
 	    nextLeafModifications = nextLeaf.modifications;
+	    if (nextEntry != null && nextLeaf != prefetchedLeaf) {
+		nextLeaf.prefetchEntries(prefetchValues());
+		prefetchedLeaf = nextLeaf;
+	    }
+	}
+
+	/**
+	 * Returns whether the values of entries should be prefetched along
+	 * with the keys when the iterator moves to a new leaf.  This
+	 * implementation returns {@code true}.
+	 *
+	 * @return whether to prefetch values
+	 */
+	boolean prefetchValues() {
+	    return true;
 	}
 
 	/** Returns the current leaf. */
@@ -2378,6 +2434,7 @@ public class ScalableHashMap<K, V>
 	    nextEntry = null;
 	    nextLeafModifications = 0;
 	    checkedRootModifications = false;
+	    prefetchedLeaf = null;
 	}
     }
 
@@ -2429,6 +2486,16 @@ public class ScalableHashMap<K, V>
 	public K next() {
 	    return nextEntry().getKey();
 	}
+
+	/**
+	 * {@inheritDoc} <p>
+	 *
+	 * This implementation returns {@code false}, since only the keys are
+	 * used.
+	 */
+	boolean prefetchValues() {
+	    return false;
+	}
     }
 
 
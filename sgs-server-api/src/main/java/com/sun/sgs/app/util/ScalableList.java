@@ -1860,6 +1860,13 @@ public class ScalableList<E> extends AbstractList<E> implements Serializable,
 	 */
 	protected long listNodeReferenceValue = -1;
 
+	/**
+	 * The last {@code ListNode} whose elements were prefetched, or
+	 * {@code null} if none have been prefetched in the current
+	 * transaction
+	 */
+	private transient ListNode<E> prefetchedNode = null;
+
 	private static final long serialVersionUID = 8L;
 
 	/**
@@ -1969,6 +1976,7 @@ public class ScalableList<E> extends AbstractList<E> implements Serializable,
 	    }
 	    cursor = index;
 	    wasNextCalled = true;
+	    prefetchElements(elements);
 
 	    // Once we have located the next node,
 	    // update the reference values
@@ -1980,6 +1988,22 @@ public class ScalableList<E> extends AbstractList<E> implements Serializable,
 	    return (E) getValueFromReference(elements.get(cursor), false);
 	}
 
+	/**
+	 * Provides a hint to the data manager that the elements of the
+	 * current {@code ListNode} are about to be used, so that they can be
+	 * fetched together rather than one at a time. The hint is only given
+	 * once for each {@code ListNode} visited.
+	 * 
+	 * @param elements the elements of the current {@code ListNode}
+	 */
+	void prefetchElements(List<ManagedReference<ManagedObject>> elements) {
+	    ListNode<E> node = currentNode.get();
+	    if (node != prefetchedNode) {
+		AppContext.getDataManager().prefetch(elements);
+		prefetchedNode = node;
+	    }
+	}
+
 	/**
 	 * Retrieve the index of interest, based on our previous direction and
 	 * intended direction
@@ -2295,6 +2319,7 @@ public class ScalableList<E> extends AbstractList<E> implements Serializable,
             cannotRemoveOrSet = false;
 	    cursor = index;
 	    wasNextCalled = false;
+	    prefetchElements(elements);
 
 	    // Once we have found the previous node,
 	    // update the reference values
@@ -0,0 +1,2343 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.app.util;
+
+import com.sun.sgs.app.AppContext;
+import com.sun.sgs.app.DataManager;
+import com.sun.sgs.app.ManagedObject;
+import com.sun.sgs.app.ManagedObjectRemoval;
+import com.sun.sgs.app.ManagedReference;
+import com.sun.sgs.app.ObjectNotFoundException;
+import com.sun.sgs.app.Task;
+import com.sun.sgs.app.TaskManager;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.Stack;
+
+/**
+ * A scalable implementation of {@link NavigableMap}.  The mappings are stored
+ * in a B+-tree whose nodes are separate {@link ManagedObject}s, so each
+ * operation only accesses the nodes on the path from the root of the tree to
+ * the leaf that holds the key, and operations on keys stored in different
+ * leaves can modify the map in parallel.
+ *
+ * <p>
+ *
+ * Developers may use this class as a replacement for the {@link
+ * java.util.TreeMap} class for use in a {@link ManagedObject}, for example to
+ * maintain leaderboards, auction listings ordered by price, or logs ordered by
+ * time.  Unlike a sorted {@link ScalableList}, insertions and removals take
+ * time proportional to the logarithm of the size of the map, and unlike a
+ * {@link ScalableHashMap}, the map can answer range, {@link #floorKey
+ * floorKey}, {@link #ceilingKey ceilingKey}, and "top-k" queries by loading
+ * only the nodes that contain the requested entries.  For example, the
+ * following code visits the {@code k} largest entries:
+ *
+ * <pre>
+ *   Iterator&lt;Entry&lt;K, V&gt;&gt; iter =
+ *       map.descendingMap().entrySet().iterator();
+ *   for (int i = 0; i &lt; k &amp;&amp; iter.hasNext(); i++) {
+ *       Entry&lt;K, V&gt; entry = iter.next();
+ *       ...
+ *   }
+ * </pre>
+ *
+ * <p>
+ *
+ * Keys are ordered using their {@linkplain Comparable natural ordering}, or
+ * by a {@link Comparator} provided when the map is created.  Because keys are
+ * copied into the nodes of the tree to direct searches, keys must implement
+ * {@link Serializable}, must not implement {@code ManagedObject}, and should
+ * be small.  Applications must also make sure that the ordering of keys does
+ * not change after the keys have been serialized and deserialized.  A
+ * comparator supplied to the constructor must implement {@code Serializable}.
+ * This map does not permit {@code null} keys.
+ *
+ * <p>
+ *
+ * Values must either be {@code null} or implement {@code Serializable}.
+ * Values that do not implement {@code ManagedObject} are stored in the leaf
+ * node together with their keys, which avoids the cost of creating a separate
+ * managed object for each entry.  Applications that store large values should
+ * make those values {@code ManagedObject}s, in which case the map stores a
+ * {@link ManagedReference} to the value.  If a value is an instance of {@code
+ * ManagedObject}, the developer will be responsible for removing these objects
+ * from the {@code DataManager} when done with them.  Developers should not
+ * remove these object from the {@code DataManager} prior to removing them from
+ * the map.
+ *
+ * <p>
+ *
+ * This class marks itself for update as necessary; no additional calls to the
+ * {@link DataManager} are necessary when modifying the map.  Developers do not
+ * need to call {@code markForUpdate} or {@code getForUpdate} on this map, as
+ * this will eliminate all the concurrency benefits of this class.  The map
+ * object itself is only modified when the root of the tree changes, or when
+ * the map is cleared.
+ *
+ * <p>
+ *
+ * Note that, unlike most collections, the {@code size} method for this class
+ * is <em>not</em> a constant-time operation: it visits every leaf node of the
+ * tree.  The same is true of the {@code size} methods of the views and
+ * sub-maps of this map.
+ *
+ * <p>
+ *
+ * An instance of {@code ScalableSortedMap} offers one parameter for
+ * performance tuning: {@code nodeSize}, which specifies the maximum number of
+ * entries stored in a leaf node, and the maximum number of children of other
+ * nodes.  Larger nodes make the tree shallower, which reduces the number of
+ * objects loaded by each operation, but increase the size of each object and
+ * the chance that concurrent operations will conflict when modifying the same
+ * leaf.
+ *
+ * <p>
+ *
+ * The views, sub-maps, iterators, and entries returned by this class
+ * implement {@code Serializable}, and may be shared and persisted by multiple
+ * {@code ManagedObject} instances.  The iterators do not throw {@link
+ * java.util.ConcurrentModificationException}.  Each iterator records the last
+ * key it returned, and continues from the next key in the iteration order
+ * after changes to the map, so an iterator never returns a key that does not
+ * follow the previously returned key in iteration order, but may return keys
+ * added after the iteration began.  Attempting to use an iterator, view, or
+ * sub-map when the associated map has been removed from the {@code
+ * DataManager} will result in an {@code ObjectNotFoundException} being
+ * thrown.
+ *
+ * <p>
+ *
+ * This class and its iterators implement all optional operations.  The
+ * entries returned by the {@link #firstEntry firstEntry}, {@link #floorEntry
+ * floorEntry}, and similar methods are snapshots that do not support {@link
+ * Map.Entry#setValue setValue}, while the entries returned by iterators update
+ * the map when {@code setValue} is called.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ *
+ * @see java.util.NavigableMap
+ * @see Serializable
+ * @see ManagedObject
+ */
+public class ScalableSortedMap<K, V>
+        extends AbstractMap<K, V>
+        implements NavigableMap<K, V>, Serializable, ManagedObjectRemoval {
+
+    /*
+     * The map is a B+-tree.  Leaf nodes store sorted lists of keys and
+     * values, and are linked in key order through their nextRef fields.
+     * Internal nodes store sorted lists of separator keys and references to
+     * their children, with one more child than separators: child i holds the
+     * keys that are greater than or equal to separator i-1 and less than
+     * separator i.  The separator for a new node is the smallest key in that
+     * node at the time it is split off, and may remain in the parent after
+     * that key is removed.
+     *
+     * Nodes do not store references to their parents, so that splitting or
+     * merging a node does not require updating its children.  Instead,
+     * operations that may change the structure of the tree record the path
+     * from the root, and use it to update parents.  Splitting a full node
+     * modifies the node, the new node, and the parent.  A node with too few
+     * entries is merged with an adjacent sibling that has the same parent,
+     * which modifies the two nodes and the parent, and only if the merged node
+     * would be no more than three quarters full, so that adding and removing
+     * entries near the boundary does not repeatedly split and merge nodes.
+     * Leaves that become empty are always merged when they have a sibling.
+     * The map object itself, which holds the reference to the root node, is
+     * only modified when the root is split or collapsed, or when the map is
+     * cleared.
+     *
+     * Iterators identify their position by the last key returned, together
+     * with the leaf, index, and leaf modification count at that position.  If
+     * the leaf is unchanged, the iterator continues from the recorded index,
+     * otherwise it searches the tree for the next key after the last one
+     * returned.
+     */
+
+    /** The version of the serialized form. */
+    private static final long serialVersionUID = 1;
+
+    /**
+     * The node size used when none is specified in the constructor.
+     */
+    // NOTE: keys and non-managed values are stored directly in the leaf
+    // nodes, so this value should be adjusted if typical keys and values are
+    // large, to keep leaf nodes small enough to minimize contention.
+    private static final int DEFAULT_NODE_SIZE = 64;
+
+    /** The smallest permitted node size. */
+    private static final int MIN_NODE_SIZE = 4;
+
+    /**
+     * If non-null, a runnable to call when a task that asynchronously removes
+     * nodes is done -- used for testing.  Note that this method is called
+     * during the transaction that completes the removal.
+     */
+    private static volatile Runnable noteDoneRemoving = null;
+
+    /**
+     * The minor version number, which can be modified to note a compatible
+     * change to the data structure.  Incompatible changes should be marked by
+     * a change to the serialVersionUID.
+     *
+     * @serial
+     */
+    private final short minorVersion = 1;
+
+    /**
+     * The maximum number of entries in a leaf node, and of children in an
+     * internal node.
+     *
+     * @serial
+     */
+    private final int nodeSize;
+
+    /**
+     * The comparator used to order keys, or {@code null} to use their natural
+     * ordering.
+     *
+     * @serial
+     */
+    private final Comparator<? super K> comparator;
+
+    /**
+     * A reference to the root node of the tree.
+     *
+     * @serial
+     */
+    private ManagedReference<Node<K, V>> rootRef;
+
+    /**
+     * The number of times the map has been cleared.  Iterators use this
+     * value to detect that the nodes they refer to are no longer part of the
+     * map.
+     *
+     * @serial
+     */
+    int modifications = 0;
+
+    /**
+     * Creates an empty map that orders keys by their natural ordering, and
+     * uses the default node size ({@code 64}).
+     */
+    public ScalableSortedMap() {
+	this(DEFAULT_NODE_SIZE, null);
+    }
+
+    /**
+     * Creates an empty map that orders keys using the specified comparator,
+     * and uses the default node size ({@code 64}).
+     *
+     * @param comparator the comparator for ordering keys, or {@code null} to
+     *	      use the natural ordering of the keys
+     *
+     * @throws IllegalArgumentException if {@code comparator} is not {@code
+     *	       null} and does not implement {@code Serializable}
+     */
+    public ScalableSortedMap(Comparator<? super K> comparator) {
+	this(DEFAULT_NODE_SIZE, comparator);
+    }
+
+    /**
+     * Creates an empty map that orders keys using the specified comparator,
+     * and uses the specified node size.
+     *
+     * @param nodeSize the maximum number of entries in each leaf node, and of
+     *	      children in each internal node
+     * @param comparator the comparator for ordering keys, or {@code null} to
+     *	      use the natural ordering of the keys
+     *
+     * @throws IllegalArgumentException if {@code nodeSize} is less than
+     *	       {@code 4}, or if {@code comparator} is not {@code null} and does
+     *	       not implement {@code Serializable}
+     */
+    public ScalableSortedMap(int nodeSize, Comparator<? super K> comparator) {
+	if (nodeSize < MIN_NODE_SIZE) {
+	    throw new IllegalArgumentException(
+		"Illegal node size: " + nodeSize);
+	}
+	if (comparator != null && !(comparator instanceof Serializable)) {
+	    throw new IllegalArgumentException(
+		"The comparator must implement Serializable");
+	}
+	this.nodeSize = nodeSize;
+	this.comparator = comparator;
+	rootRef = AppContext.getDataManager().createReference(
+	    (Node<K, V>) new LeafNode<K, V>());
+    }
+
+    /**
+     * Constructs a new map with the same mappings as the specified {@code
+     * Map}, ordering keys by their natural ordering, and using the default
+     * node size ({@code 64}).
+     *
+     * @param map the mappings to include
+     *
+     * @throws IllegalArgumentException if any of the keys contained in the
+     *	       argument do not implement {@code Serializable} or implement
+     *	       {@code ManagedObject}, or any of the values are not {@code null}
+     *	       and do not implement {@code Serializable}
+     */
+    public ScalableSortedMap(Map<? extends K, ? extends V> map) {
+	this(DEFAULT_NODE_SIZE, null);
+	if (map == null) {
+	    throw new NullPointerException(
+		"The map argument must not be null");
+	}
+	putAll(map);
+    }
+
+    /* -- Implement Map -- */
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if {@code key} is {@code null}
+     * @throws ClassCastException if {@code key} cannot be compared with the
+     *	       keys in the map
+     */
+    public boolean containsKey(Object key) {
+	checkNonNull(key, "key");
+	LeafNode<K, V> leaf = findLeaf(key, null);
+	return search(leaf.keys, key) >= 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if {@code key} is {@code null}
+     * @throws ClassCastException if {@code key} cannot be compared with the
+     *	       keys in the map
+     */
+    public V get(Object key) {
+	checkNonNull(key, "key");
+	LeafNode<K, V> leaf = findLeaf(key, null);
+	int index = search(leaf.keys, key);
+	return (index >= 0) ? leaf.getValue(index) : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if {@code key} is {@code null}
+     * @throws ClassCastException if {@code key} cannot be compared with the
+     *	       keys in the map
+     * @throws IllegalArgumentException if {@code key} does not implement
+     *	       {@code Serializable} or implements {@code ManagedObject}, or if
+     *	       {@code value} is not {@code null} and does not implement {@code
+     *	       Serializable}
+     */
+    public V put(K key, V value) {
+	checkKey(key);
+	checkSerializable(value, "value");
+	Path<K, V> path = new Path<K, V>();
+	LeafNode<K, V> leaf = findLeaf(key, path);
+	int index = search(leaf.keys, key);
+	AppContext.getDataManager().markForUpdate(leaf);
+	if (index >= 0) {
+	    V oldValue = leaf.getValue(index);
+	    leaf.values.set(index, wrap(value));
+	    return oldValue;
+	}
+	index = -(index + 1);
+	leaf.keys.add(index, key);
+	leaf.values.add(index, wrap(value));
+	leaf.modifications++;
+	if (leaf.keys.size() > nodeSize) {
+	    splitLeaf(leaf, path);
+	}
+	return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if {@code key} is {@code null}
+     * @throws ClassCastException if {@code key} cannot be compared with the
+     *	       keys in the map
+     */
+    public V remove(Object key) {
+	checkNonNull(key, "key");
+	Path<K, V> path = new Path<K, V>();
+	LeafNode<K, V> leaf = findLeaf(key, path);
+	int index = search(leaf.keys, key);
+	if (index < 0) {
+	    return null;
+	}
+	V oldValue = leaf.getValue(index);
+	removeEntry(leaf, index, path);
+	return oldValue;
+    }
+
+    /**
+     * {@inheritDoc} <p>
+     *
+     * This implementation replaces the tree with an empty one, and removes
+     * the nodes of the old tree from the {@code DataManager} in a separate
+     * task.
+     */
+    public void clear() {
+	DataManager dataManager = AppContext.getDataManager();
+	dataManager.markForUpdate(this);
+	modifications++;
+	AppContext.getTaskManager().scheduleTask(new RemoveNodesTask(rootRef));
+	rootRef = dataManager.createReference(
+	    (Node<K, V>) new LeafNode<K, V>());
+    }
+
+    /**
+     * {@inheritDoc} <p>
+     *
+     * Note that this implementation visits every leaf node in the tree.
+     */
+    public int size() {
+	Node<K, V> node = rootRef.get();
+	while (node instanceof InternalNode) {
+	    node = ((InternalNode<K, V>) node).getChild(0);
+	}
+	int size = 0;
+	LeafNode<K, V> leaf = (LeafNode<K, V>) node;
+	while (true) {
+	    size += leaf.keys.size();
+	    if (leaf.nextRef == null) {
+		return size;
+	    }
+	    leaf = (LeafNode<K, V>) leaf.nextRef.get();
+	}
+    }
+
+    /** {@inheritDoc} */
+    public boolean isEmpty() {
+	return first() == null;
+    }
+
+    /** {@inheritDoc} */
+    public Set<Entry<K, V>> entrySet() {
+	return view().entrySet();
+    }
+
+    /** {@inheritDoc} */
+    public Set<K> keySet() {
+	return navigableKeySet();
+    }
+
+    /** {@inheritDoc} */
+    public Collection<V> values() {
+	return view().values();
+    }
+
+    /* -- Implement ManagedObjectRemoval -- */
+
+    /**
+     * {@inheritDoc} <p>
+     *
+     * This implementation removes the nodes of the tree, including the values
+     * stored in them that do not implement {@code ManagedObject}, in a
+     * separate task.
+     */
+    public void removingObject() {
+	AppContext.getTaskManager().scheduleTask(new RemoveNodesTask(rootRef));
+    }
+
+    /* -- Implement SortedMap -- */
+
+    /** {@inheritDoc} */
+    public Comparator<? super K> comparator() {
+	return comparator;
+    }
+
+    /** {@inheritDoc} */
+    public K firstKey() {
+	return key(first());
+    }
+
+    /** {@inheritDoc} */
+    public K lastKey() {
+	return key(last());
+    }
+
+    /** {@inheritDoc} */
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+	return subMap(fromKey, true, toKey, false);
+    }
+
+    /** {@inheritDoc} */
+    public SortedMap<K, V> headMap(K toKey) {
+	return headMap(toKey, false);
+    }
+
+    /** {@inheritDoc} */
+    public SortedMap<K, V> tailMap(K fromKey) {
+	return tailMap(fromKey, true);
+    }
+
+    /* -- Implement NavigableMap -- */
+
+    /** {@inheritDoc} */
+    public Entry<K, V> lowerEntry(K key) {
+	return exportEntry(find(key, false, false));
+    }
+
+    /** {@inheritDoc} */
+    public K lowerKey(K key) {
+	return keyOrNull(find(key, false, false));
+    }
+
+    /** {@inheritDoc} */
+    public Entry<K, V> floorEntry(K key) {
+	return exportEntry(find(key, false, true));
+    }
+
+    /** {@inheritDoc} */
+    public K floorKey(K key) {
+	return keyOrNull(find(key, false, true));
+    }
+
+    /** {@inheritDoc} */
+    public Entry<K, V> ceilingEntry(K key) {
+	return exportEntry(find(key, true, true));
+    }
+
+    /** {@inheritDoc} */
+    public K ceilingKey(K key) {
+	return keyOrNull(find(key, true, true));
+    }
+
+    /** {@inheritDoc} */
+    public Entry<K, V> higherEntry(K key) {
+	return exportEntry(find(key, true, false));
+    }
+
+    /** {@inheritDoc} */
+    public K higherKey(K key) {
+	return keyOrNull(find(key, true, false));
+    }
+
+    /** {@inheritDoc} */
+    public Entry<K, V> firstEntry() {
+	return exportEntry(first());
+    }
+
+    /** {@inheritDoc} */
+    public Entry<K, V> lastEntry() {
+	return exportEntry(last());
+    }
+
+    /** {@inheritDoc} */
+    public Entry<K, V> pollFirstEntry() {
+	return pollEntry(first());
+    }
+
+    /** {@inheritDoc} */
+    public Entry<K, V> pollLastEntry() {
+	return pollEntry(last());
+    }
+
+    /** {@inheritDoc} */
+    public NavigableMap<K, V> descendingMap() {
+	return view().descendingMap();
+    }
+
+    /** {@inheritDoc} */
+    public NavigableSet<K> navigableKeySet() {
+	return view().navigableKeySet();
+    }
+
+    /** {@inheritDoc} */
+    public NavigableSet<K> descendingKeySet() {
+	return view().descendingKeySet();
+    }
+
+    /** {@inheritDoc} */
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive,
+				     K toKey, boolean toInclusive)
+    {
+	return view().subMap(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    /** {@inheritDoc} */
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+	return view().headMap(toKey, inclusive);
+    }
+
+    /** {@inheritDoc} */
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+	return view().tailMap(fromKey, inclusive);
+    }
+
+    /* -- Searching -- */
+
+    /**
+     * Returns a view of all of the entries of this map, in ascending order.
+     */
+    private SubMap<K, V> view() {
+	return new SubMap<K, V>(
+	    AppContext.getDataManager().createReference(this),
+	    true, null, false, true, null, false, false);
+    }
+
+    /**
+     * Compares two keys using the comparator or the natural ordering of the
+     * keys.
+     */
+    @SuppressWarnings("unchecked")
+    int compare(Object x, Object y) {
+	return (comparator == null)
+	    ? ((Comparable<Object>) x).compareTo(y)
+	    : comparator.compare((K) x, (K) y);
+    }
+
+    /**
+     * Searches the sorted list of keys for the specified key, returning its
+     * index if it is found, else {@code (-(insertion point) - 1)}.
+     */
+    private int search(List<K> keys, Object key) {
+	int low = 0;
+	int high = keys.size() - 1;
+	while (low <= high) {
+	    int mid = (low + high) >>> 1;
+	    int cmp = compare(keys.get(mid), key);
+	    if (cmp < 0) {
+		low = mid + 1;
+	    } else if (cmp > 0) {
+		high = mid - 1;
+	    } else {
+		return mid;
+	    }
+	}
+	return -(low + 1);
+    }
+
+    /**
+     * Returns the index of the child of an internal node whose keys include
+     * the specified key.
+     */
+    private int childIndex(InternalNode<K, V> node, Object key) {
+	int index = search(node.keys, key);
+	return (index >= 0) ? index + 1 : -(index + 1);
+    }
+
+    /**
+     * Returns the leaf node whose keys include the specified key, recording
+     * the internal nodes visited in the path if it is not {@code null}.
+     */
+    private LeafNode<K, V> findLeaf(Object key, Path<K, V> path) {
+	Node<K, V> node = rootRef.get();
+	while (node instanceof InternalNode) {
+	    InternalNode<K, V> internal = (InternalNode<K, V>) node;
+	    int index = childIndex(internal, key);
+	    if (path != null) {
+		path.add(internal, index);
+	    }
+	    node = internal.getChild(index);
+	}
+	return (LeafNode<K, V>) node;
+    }
+
+    /**
+     * Returns the position of the entry closest to the specified key in the
+     * specified direction, or {@code null} if there is no such entry.
+     *
+     * @param key the key
+     * @param above whether to find an entry with a key greater than the key,
+     *	      rather than less than it
+     * @param inclusive whether to return the entry for the key itself, if
+     *	      present
+     * @return the position or {@code null}
+     */
+    Position<K, V> find(Object key, boolean above, boolean inclusive) {
+	checkNonNull(key, "key");
+	return find(rootRef.get(), key, above, inclusive);
+    }
+
+    /** Implements find for the subtree rooted at the specified node. */
+    private Position<K, V> find(
+	Node<K, V> node, Object key, boolean above, boolean inclusive)
+    {
+	if (node instanceof LeafNode) {
+	    LeafNode<K, V> leaf = (LeafNode<K, V>) node;
+	    int index = search(leaf.keys, key);
+	    if (index >= 0) {
+		if (!inclusive) {
+		    index += above ? 1 : -1;
+		}
+	    } else {
+		index = -(index + 1);
+		if (!above) {
+		    index--;
+		}
+	    }
+	    return (index >= 0 && index < leaf.keys.size())
+		? new Position<K, V>(leaf, index) : null;
+	}
+	/*
+	 * Search the child that would contain the key, and then the children
+	 * beyond it in the requested direction, in case the entries in the
+	 * first child are all on the wrong side of the key.
+	 */
+	InternalNode<K, V> internal = (InternalNode<K, V>) node;
+	int start = childIndex(internal, key);
+	int step = above ? 1 : -1;
+	for (int i = start; i >= 0 && i < internal.children.size(); i += step) {
+	    Node<K, V> child = internal.getChild(i);
+	    Position<K, V> result = (i == start)
+		? find(child, key, above, inclusive) : findEnd(child, above);
+	    if (result != null) {
+		return result;
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Returns the position of the first or last entry in the subtree rooted
+     * at the specified node, or {@code null} if the subtree is empty.
+     */
+    private Position<K, V> findEnd(Node<K, V> node, boolean first) {
+	if (node instanceof LeafNode) {
+	    LeafNode<K, V> leaf = (LeafNode<K, V>) node;
+	    int size = leaf.keys.size();
+	    return (size == 0) ? null
+		: new Position<K, V>(leaf, first ? 0 : size - 1);
+	}
+	InternalNode<K, V> internal = (InternalNode<K, V>) node;
+	int size = internal.children.size();
+	for (int i = 0; i < size; i++) {
+	    Position<K, V> result =
+		findEnd(internal.getChild(first ? i : size - 1 - i), first);
+	    if (result != null) {
+		return result;
+	    }
+	}
+	return null;
+    }
+
+    /** Returns the position of the first entry, or {@code null}. */
+    Position<K, V> first() {
+	return findEnd(rootRef.get(), true);
+    }
+
+    /** Returns the position of the last entry, or {@code null}. */
+    Position<K, V> last() {
+	return findEnd(rootRef.get(), false);
+    }
+
+    /**
+     * Returns the position of the first entry at or after the specified index
+     * in the leaf, following the links to later leaves as needed, or {@code
+     * null} if there are no more entries.
+     */
+    static <K, V> Position<K, V> firstAtOrAfter(LeafNode<K, V> leaf, int index) {
+	while (index >= leaf.keys.size()) {
+	    if (leaf.nextRef == null) {
+		return null;
+	    }
+	    leaf = (LeafNode<K, V>) leaf.nextRef.get();
+	    index = 0;
+	}
+	return new Position<K, V>(leaf, index);
+    }
+
+    /**
+     * Prefetches the values of the entries in the leaf that are managed
+     * objects, if requested, and the next leaf, if requested.
+     */
+    static void prefetch(LeafNode<?, ?> leaf, boolean values, boolean next) {
+	List<ManagedReference<?>> refs = new ArrayList<ManagedReference<?>>();
+	if (values) {
+	    for (Object value : leaf.values) {
+		if (value instanceof ManagedValue) {
+		    refs.add(((ManagedValue) value).ref);
+		}
+	    }
+	}
+	if (next && leaf.nextRef != null) {
+	    refs.add(leaf.nextRef);
+	}
+	if (!refs.isEmpty()) {
+	    AppContext.getDataManager().prefetch(refs);
+	}
+    }
+
+    /* -- Modifying the tree -- */
+
+    /**
+     * Splits a leaf node that has too many entries, moving the upper half of
+     * its entries to a new leaf that follows it.
+     */
+    private void splitLeaf(LeafNode<K, V> leaf, Path<K, V> path) {
+	int mid = leaf.keys.size() / 2;
+	LeafNode<K, V> right = new LeafNode<K, V>(
+	    removeTail(leaf.keys, mid), removeTail(leaf.values, mid),
+	    leaf.nextRef);
+	ManagedReference<Node<K, V>> rightRef =
+	    AppContext.getDataManager().createReference((Node<K, V>) right);
+	leaf.nextRef = rightRef;
+	insertChild(path, path.size() - 1, right.keys.get(0), rightRef);
+    }
+
+    /**
+     * Inserts a reference to a new node that was split from a child of the
+     * internal node at the specified level of the path, splitting that node in
+     * turn if it has too many children.  If the level is {@code -1}, then the
+     * root was split, and a new root is created.
+     */
+    private void insertChild(Path<K, V> path, int level, K separator,
+			     ManagedReference<Node<K, V>> childRef)
+    {
+	DataManager dataManager = AppContext.getDataManager();
+	if (level < 0) {
+	    InternalNode<K, V> root =
+		new InternalNode<K, V>(separator, rootRef, childRef);
+	    dataManager.markForUpdate(this);
+	    rootRef = dataManager.createReference((Node<K, V>) root);
+	    return;
+	}
+	InternalNode<K, V> node = path.getNode(level);
+	int index = path.getIndex(level);
+	dataManager.markForUpdate(node);
+	node.keys.add(index, separator);
+	node.children.add(index + 1, childRef);
+	if (node.children.size() > nodeSize) {
+	    int mid = node.keys.size() / 2;
+	    ArrayList<K> rightKeys = removeTail(node.keys, mid + 1);
+	    K up = node.keys.remove(mid);
+	    InternalNode<K, V> right = new InternalNode<K, V>(
+		rightKeys, removeTail(node.children, mid + 1));
+	    insertChild(path, level - 1, up,
+			dataManager.createReference((Node<K, V>) right));
+	}
+    }
+
+    /**
+     * Removes the entry at the specified index of a leaf node, merging the
+     * leaf with a sibling if it has too few entries.
+     */
+    private void removeEntry(LeafNode<K, V> leaf, int index, Path<K, V> path) {
+	DataManager dataManager = AppContext.getDataManager();
+	dataManager.markForUpdate(leaf);
+	leaf.keys.remove(index);
+	leaf.values.remove(index);
+	leaf.modifications++;
+	int size = leaf.keys.size();
+	if (path.size() == 0 || size >= minNodeSize()) {
+	    return;
+	}
+	int level = path.size() - 1;
+	InternalNode<K, V> parent = path.getNode(level);
+	int leftIndex = siblingIndex(parent, path.getIndex(level));
+	if (leftIndex < 0) {
+	    return;
+	}
+	LeafNode<K, V> left = (LeafNode<K, V>) parent.getChild(leftIndex);
+	LeafNode<K, V> right = (LeafNode<K, V>) parent.getChild(leftIndex + 1);
+	if (!shouldMerge(size, left.keys.size() + right.keys.size())) {
+	    return;
+	}
+	dataManager.markForUpdate(left);
+	left.keys.addAll(right.keys);
+	left.values.addAll(right.values);
+	left.nextRef = right.nextRef;
+	left.modifications++;
+	dataManager.removeObject(right);
+	removeChild(path, level, leftIndex);
+    }
+
+    /**
+     * Removes the separator and the child to its right from the internal node
+     * at the specified level of the path, after that child has been merged
+     * into the child to its left, and then merges the internal node with a
+     * sibling if it has too few children, or collapses the root if it has only
+     * one child.
+     */
+    private void removeChild(Path<K, V> path, int level, int leftIndex) {
+	DataManager dataManager = AppContext.getDataManager();
+	InternalNode<K, V> node = path.getNode(level);
+	dataManager.markForUpdate(node);
+	node.keys.remove(leftIndex);
+	node.children.remove(leftIndex + 1);
+	int size = node.children.size();
+	if (level == 0) {
+	    if (size == 1) {
+		dataManager.markForUpdate(this);
+		rootRef = node.children.get(0);
+		dataManager.removeObject(node);
+	    }
+	    return;
+	} else if (size >= Math.max(2, minNodeSize())) {
+	    return;
+	}
+	InternalNode<K, V> parent = path.getNode(level - 1);
+	int parentLeftIndex = siblingIndex(parent, path.getIndex(level - 1));
+	if (parentLeftIndex < 0) {
+	    return;
+	}
+	InternalNode<K, V> left =
+	    (InternalNode<K, V>) parent.getChild(parentLeftIndex);
+	InternalNode<K, V> right =
+	    (InternalNode<K, V>) parent.getChild(parentLeftIndex + 1);
+	if (!shouldMerge(size - 1,
+			 left.children.size() + right.children.size()))
+	{
+	    return;
+	}
+	dataManager.markForUpdate(left);
+	left.keys.add(parent.keys.get(parentLeftIndex));
+	left.keys.addAll(right.keys);
+	left.children.addAll(right.children);
+	dataManager.removeObject(right);
+	removeChild(path, level - 1, parentLeftIndex);
+    }
+
+    /**
+     * Returns the index of the left node of the pair of adjacent children of
+     * the parent to merge when the child at the specified index has too few
+     * entries, or {@code -1} if the child has no siblings.
+     */
+    private static int siblingIndex(InternalNode<?, ?> parent, int index) {
+	if (index + 1 < parent.children.size()) {
+	    return index;
+	} else {
+	    return index - 1;
+	}
+    }
+
+    /**
+     * Returns whether to merge a node with the specified number of entries
+     * with its sibling, given the combined number of entries of the two
+     * nodes.  An empty node is always merged.
+     */
+    private boolean shouldMerge(int size, int combinedSize) {
+	return (size == 0)
+	    ? combinedSize <= nodeSize : combinedSize <= (nodeSize * 3) / 4;
+    }
+
+    /** Returns the number of entries below which a node is merged. */
+    private int minNodeSize() {
+	return nodeSize / 4;
+    }
+
+    /**
+     * Removes the elements of the list starting at the specified index,
+     * returning them in a new list.
+     */
+    private static <E> ArrayList<E> removeTail(List<E> list, int index) {
+	List<E> tail = list.subList(index, list.size());
+	ArrayList<E> result = new ArrayList<E>(tail);
+	tail.clear();
+	return result;
+    }
+
+    /* -- Other methods -- */
+
+    /**
+     * Returns an immutable snapshot of the entry at the specified position,
+     * or {@code null} if the position is {@code null}.
+     */
+    static <K, V> Entry<K, V> exportEntry(Position<K, V> position) {
+	return (position == null) ? null
+	    : new SimpleImmutableEntry<K, V>(
+		position.getKey(), position.getValue());
+    }
+
+    /**
+     * Returns the key at the specified position, or {@code null} if the
+     * position is {@code null}.
+     */
+    static <K> K keyOrNull(Position<K, ?> position) {
+	return (position == null) ? null : position.getKey();
+    }
+
+    /**
+     * Returns the key at the specified position, throwing {@link
+     * NoSuchElementException} if the position is {@code null}.
+     */
+    static <K> K key(Position<K, ?> position) {
+	if (position == null) {
+	    throw new NoSuchElementException();
+	}
+	return position.getKey();
+    }
+
+    /**
+     * Removes the entry at the specified position, if not {@code null},
+     * returning an immutable snapshot of the entry, or {@code null} if the
+     * position is {@code null}.
+     */
+    Entry<K, V> pollEntry(Position<K, V> position) {
+	Entry<K, V> result = exportEntry(position);
+	if (result != null) {
+	    remove(result.getKey());
+	}
+	return result;
+    }
+
+    /**
+     * Checks that the argument is a legal key.
+     */
+    private void checkKey(K key) {
+	checkNonNull(key, "key");
+	if (!(key instanceof Serializable)) {
+	    throw new IllegalArgumentException(
+		"The key must implement Serializable");
+	} else if (key instanceof ManagedObject) {
+	    throw new IllegalArgumentException(
+		"The key must not implement ManagedObject");
+	}
+	/* Check that the key can be compared */
+	compare(key, key);
+    }
+
+    /**
+     * Checks that the object is either {@code null} or implements {@code
+     * Serializable}.
+     */
+    static void checkSerializable(Object object, String argName) {
+	if (object != null && !(object instanceof Serializable)) {
+	    throw new IllegalArgumentException(
+		"The " + argName + " argument must implement Serializable");
+	}
+    }
+
+    /** Checks that the object is not {@code null}. */
+    static void checkNonNull(Object object, String argName) {
+	if (object == null) {
+	    throw new NullPointerException(
+		"The " + argName + " argument must not be null");
+	}
+    }
+
+    /** Compares two objects for equality, either of which may be null. */
+    static boolean safeEquals(Object x, Object y) {
+	return x == y || (x != null && x.equals(y));
+    }
+
+    /**
+     * Returns the object to store in a leaf node to represent the specified
+     * value.
+     */
+    private static Object wrap(Object value) {
+	return (value instanceof ManagedObject)
+	    ? new ManagedValue(value) : value;
+    }
+
+    /** Returns the value represented by an object stored in a leaf node. */
+    static <V> V unwrap(Object object) {
+	return (object instanceof ManagedValue)
+	    ? ScalableSortedMap.<V>uncheckedCast(((ManagedValue) object).ref.get())
+	    : ScalableSortedMap.<V>uncheckedCast(object);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T uncheckedCast(Object object) {
+        return (T) object;
+    }
+
+    /**
+     * Verifies the structure of the tree, throwing an {@link AssertionError}
+     * if it is incorrect.  This method is intended for testing.
+     */
+    void checkTree() {
+	List<LeafNode<K, V>> leaves = new ArrayList<LeafNode<K, V>>();
+	checkNode(rootRef.get(), null, null, leaves, true);
+	for (int i = 0; i < leaves.size(); i++) {
+	    ManagedReference<Node<K, V>> nextRef = leaves.get(i).nextRef;
+	    if (i + 1 < leaves.size()) {
+		if (nextRef == null || nextRef.get() != leaves.get(i + 1)) {
+		    throw new AssertionError("Bad link from leaf " + i);
+		}
+	    } else if (nextRef != null) {
+		throw new AssertionError("Last leaf has a next leaf");
+	    }
+	}
+    }
+
+    /**
+     * Verifies the subtree rooted at the specified node, whose keys should be
+     * greater than or equal to low, if not {@code null}, and less than high,
+     * if not {@code null}, adding its leaves to the list.
+     */
+    private void checkNode(Node<K, V> node, K low, K high,
+			   List<LeafNode<K, V>> leaves, boolean isRoot)
+    {
+	List<K> keys = node.keys;
+	for (int i = 0; i < keys.size(); i++) {
+	    K key = keys.get(i);
+	    if ((i > 0 && compare(keys.get(i - 1), key) >= 0) ||
+		(low != null && compare(key, low) < 0) ||
+		(high != null && compare(key, high) >= 0))
+	    {
+		throw new AssertionError("Key out of order: " + key);
+	    }
+	}
+	if (node instanceof LeafNode) {
+	    LeafNode<K, V> leaf = (LeafNode<K, V>) node;
+	    if (leaf.keys.size() > nodeSize ||
+		leaf.keys.size() != leaf.values.size())
+	    {
+		throw new AssertionError("Bad leaf size: " + leaf.keys.size());
+	    }
+	    leaves.add(leaf);
+	    return;
+	}
+	InternalNode<K, V> internal = (InternalNode<K, V>) node;
+	int size = internal.children.size();
+	if (size > nodeSize || size != keys.size() + 1 ||
+	    (isRoot && size < 2))
+	{
+	    throw new AssertionError("Bad internal node size: " + size);
+	}
+	for (int i = 0; i < size; i++) {
+	    checkNode(internal.getChild(i),
+		      (i == 0) ? low : keys.get(i - 1),
+		      (i == size - 1) ? high : keys.get(i),
+		      leaves, false);
+	}
+    }
+
+    /**
+     * Returns the depth of the tree, which is {@code 1} if the root node is a
+     * leaf.  This method is intended for testing.
+     */
+    int getDepth() {
+	int depth = 1;
+	Node<K, V> node = rootRef.get();
+	while (node instanceof InternalNode) {
+	    node = ((InternalNode<K, V>) node).getChild(0);
+	    depth++;
+	}
+	return depth;
+    }
+
+    /* -- Nested classes -- */
+
+    /** A node of the tree. */
+    abstract static class Node<K, V> implements ManagedObject, Serializable {
+
+	/** The version of the serialized form. */
+	private static final long serialVersionUID = 1;
+
+	/**
+	 * The keys of the entries of a leaf node, or the separator keys of an
+	 * internal node, in ascending order.
+	 *
+	 * @serial
+	 */
+	final ArrayList<K> keys;
+
+	/** Creates an instance with the specified keys. */
+	Node(ArrayList<K> keys) {
+	    this.keys = keys;
+	}
+    }
+
+    /** A leaf node, which stores entries. */
+    static final class LeafNode<K, V> extends Node<K, V> {
+
+	/** The version of the serialized form. */
+	private static final long serialVersionUID = 1;
+
+	/**
+	 * The values of the entries, which are {@link ManagedValue}s for
+	 * values that are managed objects.
+	 *
+	 * @serial
+	 */
+	final ArrayList<Object> values;
+
+	/**
+	 * The next leaf node, or {@code null} if this is the last leaf.
+	 *
+	 * @serial
+	 */
+	ManagedReference<Node<K, V>> nextRef;
+
+	/**
+	 * The number of times entries have been added to or removed from this
+	 * node, used by iterators to detect changes between transactions.
+	 *
+	 * @serial
+	 */
+	int modifications = 0;
+
+	/** Creates an empty leaf. */
+	LeafNode() {
+	    this(new ArrayList<K>(), new ArrayList<Object>(), null);
+	}
+
+	/** Creates a leaf with the specified contents. */
+	LeafNode(ArrayList<K> keys, ArrayList<Object> values,
+		 ManagedReference<Node<K, V>> nextRef)
+	{
+	    super(keys);
+	    this.values = values;
+	    this.nextRef = nextRef;
+	}
+
+	/** Returns the value at the specified index. */
+	V getValue(int index) {
+	    return ScalableSortedMap.<V>unwrap(values.get(index));
+	}
+    }
+
+    /** An internal node, which stores references to its children. */
+    static final class InternalNode<K, V> extends Node<K, V> {
+
+	/** The version of the serialized form. */
+	private static final long serialVersionUID = 1;
+
+	/**
+	 * References to the children, which number one more than the keys.
+	 *
+	 * @serial
+	 */
+	final ArrayList<ManagedReference<Node<K, V>>> children;
+
+	/** Creates a new root node with two children. */
+	InternalNode(K separator, ManagedReference<Node<K, V>> leftRef,
+		     ManagedReference<Node<K, V>> rightRef)
+	{
+	    super(new ArrayList<K>());
+	    keys.add(separator);
+	    children = new ArrayList<ManagedReference<Node<K, V>>>();
+	    children.add(leftRef);
+	    children.add(rightRef);
+	}
+
+	/** Creates a node with the specified contents. */
+	InternalNode(ArrayList<K> keys,
+		     ArrayList<ManagedReference<Node<K, V>>> children)
+	{
+	    super(keys);
+	    this.children = children;
+	}
+
+	/** Returns the child at the specified index. */
+	Node<K, V> getChild(int index) {
+	    return children.get(index).get();
+	}
+    }
+
+    /**
+     * Stores a reference to a value that is a managed object in a leaf node.
+     */
+    private static final class ManagedValue implements Serializable {
+
+	/** The version of the serialized form. */
+	private static final long serialVersionUID = 1;
+
+	/**
+	 * The reference to the value.
+	 *
+	 * @serial
+	 */
+	final ManagedReference<?> ref;
+
+	/** Creates an instance for the specified value. */
+	ManagedValue(Object value) {
+	    ref = AppContext.getDataManager().createReference(value);
+	}
+    }
+
+    /**
+     * The position of an entry in a leaf node.  Positions are only valid
+     * within the transaction in which they were obtained.
+     */
+    static final class Position<K, V> {
+
+	/** The leaf node. */
+	final LeafNode<K, V> leaf;
+
+	/** The index of the entry in the leaf. */
+	final int index;
+
+	/** Creates an instance. */
+	Position(LeafNode<K, V> leaf, int index) {
+	    this.leaf = leaf;
+	    this.index = index;
+	}
+
+	/** Returns the key of the entry. */
+	K getKey() {
+	    return leaf.keys.get(index);
+	}
+
+	/** Returns the value of the entry. */
+	V getValue() {
+	    return leaf.getValue(index);
+	}
+    }
+
+    /**
+     * The internal nodes visited on the way from the root to a leaf, and the
+     * index of the child chosen at each one.
+     */
+    private static final class Path<K, V> {
+
+	/** The internal nodes, starting with the root. */
+	private final List<InternalNode<K, V>> nodes =
+	    new ArrayList<InternalNode<K, V>>();
+
+	/** The index of the child chosen at each node. */
+	private final List<Integer> indices = new ArrayList<Integer>();
+
+	/** Creates an instance. */
+	Path() { }
+
+	/** Adds a node and the index of the chosen child. */
+	void add(InternalNode<K, V> node, int index) {
+	    nodes.add(node);
+	    indices.add(index);
+	}
+
+	/** Returns the number of nodes. */
+	int size() {
+	    return nodes.size();
+	}
+
+	/** Returns the node at the specified level. */
+	InternalNode<K, V> getNode(int level) {
+	    return nodes.get(level);
+	}
+
+	/** Returns the index of the child chosen at the specified level. */
+	int getIndex(int level) {
+	    return indices.get(level);
+	}
+    }
+
+    /**
+     * A task that removes the nodes of a tree, performing a limited amount of
+     * work each time it runs, and rescheduling itself if there is more work to
+     * do.
+     */
+    private static final class RemoveNodesTask
+	implements ManagedObject, Serializable, Task
+    {
+	/** The version of the serialized form. */
+	private static final long serialVersionUID = 1;
+
+	/** References to the nodes remaining to be removed. */
+	private final Stack<ManagedReference<?>> nodeRefs =
+	    new Stack<ManagedReference<?>>();
+
+	/** Creates an instance for the tree with the specified root. */
+	RemoveNodesTask(ManagedReference<?> rootRef) {
+	    nodeRefs.push(rootRef);
+	}
+
+	/**
+	 * Removes some nodes, rescheduling the task if there are more, and
+	 * otherwise removing this task object.
+	 */
+	public void run() {
+	    DataManager dataManager = AppContext.getDataManager();
+	    TaskManager taskManager = AppContext.getTaskManager();
+	    dataManager.markForUpdate(this);
+	    do {
+		Object node = nodeRefs.pop().get();
+		if (node instanceof InternalNode) {
+		    nodeRefs.addAll(((InternalNode<?, ?>) node).children);
+		}
+		dataManager.removeObject(node);
+	    } while (!nodeRefs.isEmpty() && taskManager.shouldContinue());
+	    if (!nodeRefs.isEmpty()) {
+		taskManager.scheduleTask(this);
+	    } else {
+		dataManager.removeObject(this);
+		Runnable r = noteDoneRemoving;
+		if (r != null) {
+		    r.run();
+		}
+	    }
+	}
+    }
+
+    /**
+     * A view of the entries of the map whose keys fall within a range, in
+     * either ascending or descending order.  All views of the map, including
+     * those for the full map, are implemented using this class.
+     */
+    private static final class SubMap<K, V>
+	extends AbstractMap<K, V>
+	implements NavigableMap<K, V>, Serializable
+    {
+	/** The version of the serialized form. */
+	private static final long serialVersionUID = 1;
+
+	/**
+	 * A reference to the backing map.
+	 *
+	 * @serial
+	 */
+	final ManagedReference<ScalableSortedMap<K, V>> mapRef;
+
+	/**
+	 * Whether the range has no lower bound.
+	 *
+	 * @serial
+	 */
+	private final boolean fromStart;
+
+	/**
+	 * The lower bound, if any.
+	 *
+	 * @serial
+	 */
+	private final K low;
+
+	/**
+	 * Whether the lower bound is included in the range.
+	 *
+	 * @serial
+	 */
+	private final boolean lowInclusive;
+
+	/**
+	 * Whether the range has no upper bound.
+	 *
+	 * @serial
+	 */
+	private final boolean toEnd;
+
+	/**
+	 * The upper bound, if any.
+	 *
+	 * @serial
+	 */
+	private final K high;
+
+	/**
+	 * Whether the upper bound is included in the range.
+	 *
+	 * @serial
+	 */
+	private final boolean highInclusive;
+
+	/**
+	 * Whether the view is in descending order.
+	 *
+	 * @serial
+	 */
+	final boolean descending;
+
+	/** Creates an instance. */
+	SubMap(ManagedReference<ScalableSortedMap<K, V>> mapRef,
+	       boolean fromStart, K low, boolean lowInclusive,
+	       boolean toEnd, K high, boolean highInclusive,
+	       boolean descending)
+	{
+	    this.mapRef = mapRef;
+	    this.fromStart = fromStart;
+	    this.low = low;
+	    this.lowInclusive = lowInclusive;
+	    this.toEnd = toEnd;
+	    this.high = high;
+	    this.highInclusive = highInclusive;
+	    this.descending = descending;
+	}
+
+	/** Returns the backing map. */
+	ScalableSortedMap<K, V> map() {
+	    return mapRef.get();
+	}
+
+	/* -- Range checks -- */
+
+	/** Checks if the key is below the range. */
+	boolean tooLow(Object key) {
+	    if (!fromStart) {
+		int c = map().compare(key, low);
+		return c < 0 || (c == 0 && !lowInclusive);
+	    }
+	    return false;
+	}
+
+	/** Checks if the key is above the range. */
+	boolean tooHigh(Object key) {
+	    if (!toEnd) {
+		int c = map().compare(key, high);
+		return c > 0 || (c == 0 && !highInclusive);
+	    }
+	    return false;
+	}
+
+	/** Checks if the key is in the range. */
+	boolean inRange(Object key) {
+	    return !tooLow(key) && !tooHigh(key);
+	}
+
+	/**
+	 * Checks if the key is in the range, or equal to an exclusive bound if
+	 * inclusive is false.
+	 */
+	private boolean inRange(Object key, boolean inclusive) {
+	    if (inclusive) {
+		return inRange(key);
+	    }
+	    ScalableSortedMap<K, V> map = map();
+	    return (fromStart || map.compare(key, low) >= 0) &&
+		(toEnd || map.compare(key, high) <= 0);
+	}
+
+	/* -- Positions in ascending key order -- */
+
+	/** Returns the position of the lowest entry in the range. */
+	private Position<K, V> absLowest() {
+	    ScalableSortedMap<K, V> map = map();
+	    Position<K, V> p =
+		fromStart ? map.first() : map.find(low, true, lowInclusive);
+	    return (p == null || tooHigh(p.getKey())) ? null : p;
+	}
+
+	/** Returns the position of the highest entry in the range. */
+	private Position<K, V> absHighest() {
+	    ScalableSortedMap<K, V> map = map();
+	    Position<K, V> p =
+		toEnd ? map.last() : map.find(high, false, highInclusive);
+	    return (p == null || tooLow(p.getKey())) ? null : p;
+	}
+
+	/**
+	 * Returns the position of the entry above the key, or at the key if
+	 * inclusive, within the range.
+	 */
+	private Position<K, V> absAbove(Object key, boolean inclusive) {
+	    if (tooLow(key)) {
+		return absLowest();
+	    }
+	    Position<K, V> p = map().find(key, true, inclusive);
+	    return (p == null || tooHigh(p.getKey())) ? null : p;
+	}
+
+	/**
+	 * Returns the position of the entry below the key, or at the key if
+	 * inclusive, within the range.
+	 */
+	private Position<K, V> absBelow(Object key, boolean inclusive) {
+	    if (tooHigh(key)) {
+		return absHighest();
+	    }
+	    Position<K, V> p = map().find(key, false, inclusive);
+	    return (p == null || tooLow(p.getKey())) ? null : p;
+	}
+
+	/* -- Positions in the order of this view -- */
+
+	/** Returns the position of the first entry. */
+	Position<K, V> first() {
+	    return descending ? absHighest() : absLowest();
+	}
+
+	/** Returns the position of the last entry. */
+	Position<K, V> last() {
+	    return descending ? absLowest() : absHighest();
+	}
+
+	/**
+	 * Returns the position of the entry after the key, or at the key if
+	 * inclusive.
+	 */
+	Position<K, V> after(Object key, boolean inclusive) {
+	    return descending
+		? absBelow(key, inclusive) : absAbove(key, inclusive);
+	}
+
+	/**
+	 * Returns the position of the entry before the key, or at the key if
+	 * inclusive.
+	 */
+	Position<K, V> before(Object key, boolean inclusive) {
+	    return descending
+		? absAbove(key, inclusive) : absBelow(key, inclusive);
+	}
+
+	/**
+	 * Checks if the key is beyond the end of the range in the order of
+	 * this view.
+	 */
+	boolean pastEnd(Object key) {
+	    return descending ? tooLow(key) : tooHigh(key);
+	}
+
+	/* -- Implement Map -- */
+
+	public boolean containsKey(Object key) {
+	    checkNonNull(key, "key");
+	    return inRange(key) && map().containsKey(key);
+	}
+
+	public V get(Object key) {
+	    checkNonNull(key, "key");
+	    return inRange(key) ? map().get(key) : null;
+	}
+
+	public V put(K key, V value) {
+	    checkNonNull(key, "key");
+	    if (!inRange(key)) {
+		throw new IllegalArgumentException("The key is out of range");
+	    }
+	    return map().put(key, value);
+	}
+
+	public V remove(Object key) {
+	    checkNonNull(key, "key");
+	    return inRange(key) ? map().remove(key) : null;
+	}
+
+	public void clear() {
+	    if (fromStart && toEnd) {
+		map().clear();
+	    } else {
+		for (Iterator<K> i = new KeyIterator<K, V>(this); i.hasNext(); ) {
+		    i.next();
+		    i.remove();
+		}
+	    }
+	}
+
+	public int size() {
+	    int size = 0;
+	    for (Iterator<K> i = new KeyIterator<K, V>(this); i.hasNext(); ) {
+		i.next();
+		size++;
+	    }
+	    return size;
+	}
+
+	public boolean isEmpty() {
+	    return first() == null;
+	}
+
+	public Set<Entry<K, V>> entrySet() {
+	    return new EntrySet<K, V>(this);
+	}
+
+	public Set<K> keySet() {
+	    return navigableKeySet();
+	}
+
+	public Collection<V> values() {
+	    return new Values<K, V>(this);
+	}
+
+	/* -- Implement SortedMap -- */
+
+	public Comparator<? super K> comparator() {
+	    Comparator<? super K> comparator = map().comparator();
+	    if (descending) {
+		return Collections.reverseOrder(comparator);
+	    } else {
+		return comparator;
+	    }
+	}
+
+	public K firstKey() {
+	    return key(first());
+	}
+
+	public K lastKey() {
+	    return key(last());
+	}
+
+	public SortedMap<K, V> subMap(K fromKey, K toKey) {
+	    return subMap(fromKey, true, toKey, false);
+	}
+
+	public SortedMap<K, V> headMap(K toKey) {
+	    return headMap(toKey, false);
+	}
+
+	public SortedMap<K, V> tailMap(K fromKey) {
+	    return tailMap(fromKey, true);
+	}
+
+	/* -- Implement NavigableMap -- */
+
+	public Entry<K, V> lowerEntry(K key) {
+	    return exportEntry(before(key, false));
+	}
+
+	public K lowerKey(K key) {
+	    return keyOrNull(before(key, false));
+	}
+
+	public Entry<K, V> floorEntry(K key) {
+	    return exportEntry(before(key, true));
+	}
+
+	public K floorKey(K key) {
+	    return keyOrNull(before(key, true));
+	}
+
+	public Entry<K, V> ceilingEntry(K key) {
+	    return exportEntry(after(key, true));
+	}
+
+	public K ceilingKey(K key) {
+	    return keyOrNull(after(key, true));
+	}
+
+	public Entry<K, V> higherEntry(K key) {
+	    return exportEntry(after(key, false));
+	}
+
+	public K higherKey(K key) {
+	    return keyOrNull(after(key, false));
+	}
+
+	public Entry<K, V> firstEntry() {
+	    return exportEntry(first());
+	}
+
+	public Entry<K, V> lastEntry() {
+	    return exportEntry(last());
+	}
+
+	public Entry<K, V> pollFirstEntry() {
+	    return map().pollEntry(first());
+	}
+
+	public Entry<K, V> pollLastEntry() {
+	    return map().pollEntry(last());
+	}
+
+	public NavigableMap<K, V> descendingMap() {
+	    return new SubMap<K, V>(mapRef, fromStart, low, lowInclusive,
+				    toEnd, high, highInclusive, !descending);
+	}
+
+	public NavigableSet<K> navigableKeySet() {
+	    return new KeySet<K>(this);
+	}
+
+	public NavigableSet<K> descendingKeySet() {
+	    return descendingMap().navigableKeySet();
+	}
+
+	public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive,
+					 K toKey, boolean toInclusive)
+	{
+	    checkBound(fromKey, fromInclusive, "fromKey");
+	    checkBound(toKey, toInclusive, "toKey");
+	    if (descending) {
+		return subMap(false, toKey, toInclusive,
+			      false, fromKey, fromInclusive);
+	    } else {
+		return subMap(false, fromKey, fromInclusive,
+			      false, toKey, toInclusive);
+	    }
+	}
+
+	public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+	    checkBound(toKey, inclusive, "toKey");
+	    if (descending) {
+		return subMap(false, toKey, inclusive,
+			      toEnd, high, highInclusive);
+	    } else {
+		return subMap(fromStart, low, lowInclusive,
+			      false, toKey, inclusive);
+	    }
+	}
+
+	public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+	    checkBound(fromKey, inclusive, "fromKey");
+	    if (descending) {
+		return subMap(fromStart, low, lowInclusive,
+			      false, fromKey, inclusive);
+	    } else {
+		return subMap(false, fromKey, inclusive,
+			      toEnd, high, highInclusive);
+	    }
+	}
+
+	/**
+	 * Checks that a key is a legal bound for a view of this view.
+	 */
+	private void checkBound(K key, boolean inclusive, String argName) {
+	    checkNonNull(key, argName);
+	    if (!inRange(key, inclusive)) {
+		throw new IllegalArgumentException(
+		    "The " + argName + " argument is out of range");
+	    }
+	}
+
+	/**
+	 * Returns a view with the specified range, in ascending key order,
+	 * and in the same order as this view.
+	 */
+	private NavigableMap<K, V> subMap(
+	    boolean newFromStart, K newLow, boolean newLowInclusive,
+	    boolean newToEnd, K newHigh, boolean newHighInclusive)
+	{
+	    if (!newFromStart && !newToEnd &&
+		map().compare(newLow, newHigh) > 0)
+	    {
+		throw new IllegalArgumentException(
+		    "The lower bound is greater than the upper bound");
+	    }
+	    return new SubMap<K, V>(
+		mapRef, newFromStart, newLow, newLowInclusive,
+		newToEnd, newHigh, newHighInclusive, descending);
+	}
+    }
+
+    /**
+     * A concurrent, persistable {@code Iterator} implementation for the views
+     * of the {@code ScalableSortedMap}.  The iterator records the last key it
+     * returned, so it is stable with respect to concurrent changes to the
+     * map, never returns a key more than once, and returns keys in strictly
+     * increasing order in the order of the view.
+     */
+    abstract static class ConcurrentIterator<E, K, V>
+	implements Iterator<E>, Serializable
+    {
+	/** The version of the serialized form. */
+	private static final long serialVersionUID = 1;
+
+	/**
+	 * The view being iterated over.
+	 *
+	 * @serial
+	 */
+	private final SubMap<K, V> view;
+
+	/**
+	 * A reference to the leaf containing the entry last returned, or
+	 * {@code null} if no entry has been returned.
+	 *
+	 * @serial
+	 */
+	private ManagedReference<Node<K, V>> leafRef = null;
+
+	/**
+	 * The index in the leaf of the entry after the one last returned, in
+	 * the order of the view.
+	 *
+	 * @serial
+	 */
+	private int nextIndex;
+
+	/**
+	 * The value of the leaf's modification count when the last entry was
+	 * returned.
+	 *
+	 * @serial
+	 */
+	private int leafModifications;
+
+	/**
+	 * The value of the map's modification count when the last entry was
+	 * returned.
+	 *
+	 * @serial
+	 */
+	private int mapModifications;
+
+	/**
+	 * The key of the entry last returned, or {@code null} if no entry has
+	 * been returned.
+	 *
+	 * @serial
+	 */
+	private K lastKey = null;
+
+	/**
+	 * Whether the entry last returned has been removed.
+	 *
+	 * @serial
+	 */
+	private boolean lastRemoved = false;
+
+	/**
+	 * The leaf whose entries were last prefetched, or {@code null} if none
+	 * have been prefetched in the current transaction.
+	 */
+	private transient LeafNode<K, V> prefetchedLeaf = null;
+
+	/**
+	 * Creates an instance for the specified view.
+	 *
+	 * @param view the view
+	 */
+	ConcurrentIterator(SubMap<K, V> view) {
+	    this.view = view;
+	}
+
+	/**
+	 * Returns the position of the next entry, or {@code null} if there
+	 * are no more entries.
+	 */
+	private Position<K, V> getNext() {
+	    ScalableSortedMap<K, V> map = view.map();
+	    Position<K, V> next = null;
+	    boolean found = false;
+	    if (leafRef != null && mapModifications == map.modifications) {
+		LeafNode<K, V> leaf = null;
+		try {
+		    leaf = (LeafNode<K, V>) leafRef.get();
+		} catch (ObjectNotFoundException e) {
+		    /* The leaf was merged into another one */
+		}
+		if (leaf != null && leaf.modifications == leafModifications) {
+		    if (!view.descending) {
+			next = firstAtOrAfter(leaf, nextIndex);
+			found = true;
+		    } else if (nextIndex >= 0) {
+			next = new Position<K, V>(leaf, nextIndex);
+			found = true;
+		    }
+		}
+	    }
+	    if (!found) {
+		next = (lastKey == null)
+		    ? view.first() : view.after(lastKey, false);
+	    } else if (next != null && view.pastEnd(next.getKey())) {
+		next = null;
+	    }
+	    if (next != null && next.leaf != prefetchedLeaf) {
+		prefetch(next.leaf, prefetchValues(), !view.descending);
+		prefetchedLeaf = next.leaf;
+	    }
+	    return next;
+	}
+
+	/**
+	 * Returns whether the values of entries should be prefetched when the
+	 * iterator moves to a new leaf.  This implementation returns {@code
+	 * true}.
+	 *
+	 * @return whether to prefetch values
+	 */
+	boolean prefetchValues() {
+	    return true;
+	}
+
+	/** {@inheritDoc} */
+	public boolean hasNext() {
+	    return getNext() != null;
+	}
+
+	/**
+	 * Returns the position of the next entry, and moves the iterator past
+	 * it.
+	 *
+	 * @return the position of the next entry
+	 * @throws NoSuchElementException if there are no more entries
+	 */
+	Position<K, V> nextPosition() {
+	    Position<K, V> next = getNext();
+	    if (next == null) {
+		throw new NoSuchElementException();
+	    }
+	    leafRef = AppContext.getDataManager().createReference(
+		(Node<K, V>) next.leaf);
+	    nextIndex = view.descending ? next.index - 1 : next.index + 1;
+	    leafModifications = next.leaf.modifications;
+	    mapModifications = view.map().modifications;
+	    lastKey = next.getKey();
+	    lastRemoved = false;
+	    return next;
+	}
+
+	/**
+	 * Returns the view being iterated over.
+	 *
+	 * @return the view
+	 */
+	SubMap<K, V> getView() {
+	    return view;
+	}
+
+	/** {@inheritDoc} */
+	public void remove() {
+	    if (lastKey == null) {
+		throw new IllegalStateException("No current element");
+	    } else if (lastRemoved) {
+		throw new IllegalStateException(
+		    "The current element has already been removed");
+	    }
+	    view.map().remove(lastKey);
+	    lastRemoved = true;
+	}
+
+	/**
+	 * Clear transient fields so that they will be recomputed if an attempt
+	 * is made to use the iterator in another transaction.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+	    out.defaultWriteObject();
+	    prefetchedLeaf = null;
+	}
+    }
+
+    /** An iterator over the entries of a view. */
+    private static final class EntryIterator<K, V>
+	extends ConcurrentIterator<Entry<K, V>, K, V>
+    {
+	/** The version of the serialized form. */
+	private static final long serialVersionUID = 1;
+
+	/** Creates an instance for the specified view. */
+	EntryIterator(SubMap<K, V> view) {
+	    super(view);
+	}
+
+	/** {@inheritDoc} */
+	public Entry<K, V> next() {
+	    Position<K, V> next = nextPosition();
+	    return new IteratorEntry<K, V>(
+		getView().mapRef, next.getKey(), next.getValue());
+	}
+    }
+
+    /** An iterator over the keys of a view. */
+    private static final class KeyIterator<K, V>
+	extends ConcurrentIterator<K, K, V>
+    {
+	/** The version of the serialized form. */
+	private static final long serialVersionUID = 1;
+
+	/** Creates an instance for the specified view. */
+	KeyIterator(SubMap<K, V> view) {
+	    super(view);
+	}
+
+	/** {@inheritDoc} */
+	public K next() {
+	    return nextPosition().getKey();
+	}
+
+	/** Don't prefetch values when iterating over keys. */
+	boolean prefetchValues() {
+	    return false;
+	}
+    }
+
+    /** An iterator over the values of a view. */
+    private static final class ValueIterator<K, V>
+	extends ConcurrentIterator<V, K, V>
+    {
+	/** The version of the serialized form. */
+	private static final long serialVersionUID = 1;
+
+	/** Creates an instance for the specified view. */
+	ValueIterator(SubMap<K, V> view) {
+	    super(view);
+	}
+
+	/** {@inheritDoc} */
+	public V next() {
+	    return nextPosition().getValue();
+	}
+    }
+
+    /**
+     * An entry returned by an iterator, which updates the map when its value
+     * is set.
+     */
+    private static final class IteratorEntry<K, V>
+	extends SimpleEntry<K, V>
+    {
+	/** The version of the serialized form. */
+	private static final long serialVersionUID = 1;
+
+	/**
+	 * A reference to the map.
+	 *
+	 * @serial
+	 */
+	private final ManagedReference<ScalableSortedMap<K, V>> mapRef;
+
+	/** Creates an instance. */
+	IteratorEntry(ManagedReference<ScalableSortedMap<K, V>> mapRef,
+		      K key, V value)
+	{
+	    super(key, value);
+	    this.mapRef = mapRef;
+	}
+
+	/**
+	 * {@inheritDoc} <p>
+	 *
+	 * This implementation also stores the value in the map.
+	 */
+	public V setValue(V value) {
+	    checkSerializable(value, "value");
+	    mapRef.get().put(getKey(), value);
+	    return super.setValue(value);
+	}
+    }
+
+    /** The set of entries of a view. */
+    private static final class EntrySet<K, V>
+	extends AbstractSet<Entry<K, V>>
+	implements Serializable
+    {
+	/** The version of the serialized form. */
+	private static final long serialVersionUID = 1;
+
+	/**
+	 * The view.
+	 *
+	 * @serial
+	 */
+	private final SubMap<K, V> view;
+
+	/** Creates an instance for the specified view. */
+	EntrySet(SubMap<K, V> view) {
+	    this.view = view;
+	}
+
+	public Iterator<Entry<K, V>> iterator() {
+	    return new EntryIterator<K, V>(view);
+	}
+
+	public boolean isEmpty() {
+	    return view.isEmpty();
+	}
+
+	public int size() {
+	    return view.size();
+	}
+
+	public boolean contains(Object o) {
+	    if (!(o instanceof Entry)) {
+		return false;
+	    }
+	    Entry<?, ?> e = (Entry<?, ?>) o;
+	    Object key = e.getKey();
+	    return key != null && view.containsKey(key) &&
+		safeEquals(view.get(key), e.getValue());
+	}
+
+	public boolean remove(Object o) {
+	    if (contains(o)) {
+		view.remove(((Entry<?, ?>) o).getKey());
+		return true;
+	    }
+	    return false;
+	}
+
+	public void clear() {
+	    view.clear();
+	}
+    }
+
+    /** The set of keys of a view. */
+    private static final class KeySet<K>
+	extends AbstractSet<K>
+	implements NavigableSet<K>, Serializable
+    {
+	/** The version of the serialized form. */
+	private static final long serialVersionUID = 1;
+
+	/**
+	 * The view.
+	 *
+	 * @serial
+	 */
+	private final SubMap<K, ?> view;
+
+	/** Creates an instance for the specified view. */
+	KeySet(SubMap<K, ?> view) {
+	    this.view = view;
+	}
+
+	/** Returns a key set for the specified map, which must be a view. */
+	private static <K> NavigableSet<K> keySet(NavigableMap<K, ?> map) {
+	    return new KeySet<K>((SubMap<K, ?>) map);
+	}
+
+	public Iterator<K> iterator() {
+	    return createIterator(view);
+	}
+
+	/** Creates an iterator over the keys of a view. */
+	private static <K, V> Iterator<K> createIterator(SubMap<K, V> view) {
+	    return new KeyIterator<K, V>(view);
+	}
+
+	public Iterator<K> descendingIterator() {
+	    return descendingSet().iterator();
+	}
+
+	public boolean isEmpty() {
+	    return view.isEmpty();
+	}
+
+	public int size() {
+	    return view.size();
+	}
+
+	public boolean contains(Object o) {
+	    return view.containsKey(o);
+	}
+
+	public boolean remove(Object o) {
+	    if (view.containsKey(o)) {
+		view.remove(o);
+		return true;
+	    }
+	    return false;
+	}
+
+	public void clear() {
+	    view.clear();
+	}
+
+	public Comparator<? super K> comparator() {
+	    return view.comparator();
+	}
+
+	public K first() {
+	    return view.firstKey();
+	}
+
+	public K last() {
+	    return view.lastKey();
+	}
+
+	public K lower(K e) {
+	    return view.lowerKey(e);
+	}
+
+	public K floor(K e) {
+	    return view.floorKey(e);
+	}
+
+	public K ceiling(K e) {
+	    return view.ceilingKey(e);
+	}
+
+	public K higher(K e) {
+	    return view.higherKey(e);
+	}
+
+	public K pollFirst() {
+	    return keyOrNull(view.pollFirstEntry());
+	}
+
+	public K pollLast() {
+	    return keyOrNull(view.pollLastEntry());
+	}
+
+	/** Returns the key of the entry, or null if the entry is null. */
+	private static <K> K keyOrNull(Entry<K, ?> entry) {
+	    return (entry == null) ? null : entry.getKey();
+	}
+
+	public NavigableSet<K> descendingSet() {
+	    return keySet(view.descendingMap());
+	}
+
+	public NavigableSet<K> subSet(K fromElement, boolean fromInclusive,
+				      K toElement, boolean toInclusive)
+	{
+	    return keySet(view.subMap(
+			      fromElement, fromInclusive,
+			      toElement, toInclusive));
+	}
+
+	public NavigableSet<K> headSet(K toElement, boolean inclusive) {
+	    return keySet(view.headMap(toElement, inclusive));
+	}
+
+	public NavigableSet<K> tailSet(K fromElement, boolean inclusive) {
+	    return keySet(view.tailMap(fromElement, inclusive));
+	}
+
+	public SortedSet<K> subSet(K fromElement, K toElement) {
+	    return subSet(fromElement, true, toElement, false);
+	}
+
+	public SortedSet<K> headSet(K toElement) {
+	    return headSet(toElement, false);
+	}
+
+	public SortedSet<K> tailSet(K fromElement) {
+	    return tailSet(fromElement, true);
+	}
+    }
+
+    /** The collection of values of a view. */
+    private static final class Values<K, V>
+	extends AbstractCollection<V>
+	implements Serializable
+    {
+	/** The version of the serialized form. */
+	private static final long serialVersionUID = 1;
+
+	/**
+	 * The view.
+	 *
+	 * @serial
+	 */
+	private final SubMap<K, V> view;
+
+	/** Creates an instance for the specified view. */
+	Values(SubMap<K, V> view) {
+	    this.view = view;
+	}
+
+	public Iterator<V> iterator() {
+	    return new ValueIterator<K, V>(view);
+	}
+
+	public boolean isEmpty() {
+	    return view.isEmpty();
+	}
+
+	public int size() {
+	    return view.size();
+	}
+
+	public void clear() {
+	    view.clear();
+	}
+    }
+}
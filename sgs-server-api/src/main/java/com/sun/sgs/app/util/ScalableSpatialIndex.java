@@ -0,0 +1,837 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.app.util;
+
+import com.sun.sgs.app.AppContext;
+import com.sun.sgs.app.DataManager;
+import com.sun.sgs.app.ManagedObject;
+import com.sun.sgs.app.ManagedObjectRemoval;
+import com.sun.sgs.app.ManagedReference;
+import com.sun.sgs.app.Task;
+import com.sun.sgs.app.TaskManager;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Stack;
+
+/**
+ * A scalable index of elements located at points in a two dimensional
+ * space, for use in finding the elements near a location, for example to
+ * implement interest management in a game world.  The index is a quadtree
+ * whose nodes are separate managed objects, so operations only access the
+ * nodes covering the area of interest, and concurrent operations in
+ * different areas of the space do not conflict with each other.
+ *
+ * <p>
+ *
+ * Elements are stored in leaf nodes, called buckets, each of which covers a
+ * rectangular area of the space.  When a bucket holds more than the bucket
+ * size specified when the index is created, it is split into four buckets
+ * that each cover a quarter of its area.  When the elements in a group of
+ * four neighboring buckets fall to half the bucket size, they are merged
+ * back into a single bucket.  Moving an element to a new location within the
+ * same bucket modifies only that bucket.  Finding the bucket for a location
+ * reads the internal nodes of the tree, which are only modified when buckets
+ * are split or merged.
+ *
+ * <p>
+ *
+ * The index does not keep track of where each element is located, so callers
+ * need to supply the current location of an element when moving or removing
+ * it.  Elements are identified by their {@code equals} method, or by their
+ * identity in the data manager if they implement {@link ManagedObject}.  An
+ * element can be stored at more than one location, and equal elements can be
+ * stored at the same location.  All elements must implement {@link
+ * Serializable}, and {@code null} elements are not permitted.  Elements that
+ * implement {@code ManagedObject} are stored by reference, and are not
+ * removed from the data manager when they are removed from the index.
+ *
+ * <p>
+ *
+ * The {@link #getWithin getWithin}, {@link #getWithinRadius getWithinRadius},
+ * and {@link #getNearest getNearest} methods find elements near a location.
+ * They read the nodes that overlap the area searched, and so will conflict
+ * with concurrent updates to elements in that area.  The {@link
+ * AreaOfInterest} class can be used together with this class to maintain the
+ * membership of a {@link com.sun.sgs.app.Channel} for the client sessions
+ * located within an area.
+ *
+ * <p>
+ *
+ * This class marks its nodes for update as necessary; no additional calls to
+ * the {@link DataManager} are necessary when modifying the index.  Developers
+ * should not call {@code markForUpdate} or {@code getForUpdate} on the index,
+ * as this will eliminate all the concurrency benefits of this class.
+ * Removing the index from the data manager removes its nodes in a separate
+ * task.
+ *
+ * @param <E> the type of elements held by this index
+ */
+public class ScalableSpatialIndex<E>
+    implements ManagedObject, Serializable, ManagedObjectRemoval
+{
+    /*
+     * IMPLEMENTATION NOTES:
+     *
+     * Each node records the rectangle it covers.  An internal node has four
+     * children, which divide its rectangle at the midpoints of its sides.  A
+     * point belongs to the lower child on each axis if its coordinate is less
+     * than the midpoint, and to the upper child otherwise, so points on the
+     * maximum edges of the index belong to the upper children.
+     *
+     * Splitting a bucket converts the bucket into an internal node in place,
+     * and merging converts an internal node back into a bucket, so the
+     * parent's reference to the node does not change.  Nodes at the maximum
+     * depth are not split, which bounds the depth of the tree when many
+     * elements share the same location.
+     */
+
+    /** The version of the serialized form. */
+    private static final long serialVersionUID = 1;
+
+    /** The default bucket size. */
+    public static final int DEFAULT_BUCKET_SIZE = 32;
+
+    /** The maximum depth of the tree, where the root has depth 0. */
+    static final int MAX_DEPTH = 20;
+
+    /**
+     * A runnable to call when the task that removes the nodes of an index
+     * has completed, or {@code null}.  Used for testing.
+     */
+    private static volatile Runnable noteDoneRemoving = null;
+
+    /**
+     * The minimum X coordinate.
+     *
+     * @serial
+     */
+    private final double minX;
+
+    /**
+     * The minimum Y coordinate.
+     *
+     * @serial
+     */
+    private final double minY;
+
+    /**
+     * The maximum X coordinate.
+     *
+     * @serial
+     */
+    private final double maxX;
+
+    /**
+     * The maximum Y coordinate.
+     *
+     * @serial
+     */
+    private final double maxY;
+
+    /**
+     * The maximum number of elements in a bucket, unless it is at the
+     * maximum depth.
+     *
+     * @serial
+     */
+    private final int bucketSize;
+
+    /**
+     * A reference to the root node.
+     *
+     * @serial
+     */
+    private final ManagedReference<Node<E>> rootRef;
+
+    /**
+     * Creates an empty index for the specified area, using the default
+     * bucket size.
+     *
+     * @param	minX the minimum X coordinate
+     * @param	minY the minimum Y coordinate
+     * @param	maxX the maximum X coordinate
+     * @param	maxY the maximum Y coordinate
+     * @throws	IllegalArgumentException if {@code minX} is not less than
+     *		{@code maxX}, or {@code minY} is not less than {@code maxY}
+     */
+    public ScalableSpatialIndex(double minX, double minY,
+				double maxX, double maxY)
+    {
+	this(minX, minY, maxX, maxY, DEFAULT_BUCKET_SIZE);
+    }
+
+    /**
+     * Creates an empty index for the specified area, using the specified
+     * bucket size.
+     *
+     * @param	minX the minimum X coordinate
+     * @param	minY the minimum Y coordinate
+     * @param	maxX the maximum X coordinate
+     * @param	maxY the maximum Y coordinate
+     * @param	bucketSize the maximum number of elements in a bucket before
+     *		it is split
+     * @throws	IllegalArgumentException if {@code minX} is not less than
+     *		{@code maxX}, {@code minY} is not less than {@code maxY}, or
+     *		{@code bucketSize} is less than {@code 2}
+     */
+    public ScalableSpatialIndex(double minX, double minY,
+				double maxX, double maxY,
+				int bucketSize)
+    {
+	if (!(minX < maxX) || !(minY < maxY)) {
+	    throw new IllegalArgumentException(
+		"The minimum coordinates must be less than the maximum " +
+		"coordinates");
+	} else if (bucketSize < 2) {
+	    throw new IllegalArgumentException(
+		"The bucketSize argument must be at least 2");
+	}
+	this.minX = minX;
+	this.minY = minY;
+	this.maxX = maxX;
+	this.maxY = maxY;
+	this.bucketSize = bucketSize;
+	rootRef = AppContext.getDataManager().createReference(
+	    new Node<E>(null, minX, minY, maxX, maxY, 0));
+    }
+
+    /* -- Public methods -- */
+
+    /**
+     * Adds an element at the specified location.
+     *
+     * @param	element the element
+     * @param	x the X coordinate
+     * @param	y the Y coordinate
+     * @throws	IllegalArgumentException if {@code element} does not
+     *		implement {@code Serializable}, or the location is outside
+     *		the area covered by this index
+     * @throws	NullPointerException if {@code element} is {@code null}
+     */
+    public void add(E element, double x, double y) {
+	checkElement(element);
+	checkLocation(x, y);
+	addEntry(new Entry(wrap(element), x, y));
+    }
+
+    /**
+     * Removes an element from the specified location.
+     *
+     * @param	element the element
+     * @param	x the X coordinate of the element
+     * @param	y the Y coordinate of the element
+     * @return	{@code true} if the element was found at the location and
+     *		removed, otherwise {@code false}
+     * @throws	IllegalArgumentException if the location is outside the area
+     *		covered by this index
+     * @throws	NullPointerException if {@code element} is {@code null}
+     */
+    public boolean remove(E element, double x, double y) {
+	checkNonNull(element);
+	checkLocation(x, y);
+	Node<E> bucket = findBucket(x, y);
+	int index = bucket.indexOf(element, x, y);
+	if (index < 0) {
+	    return false;
+	}
+	removeEntry(bucket, index);
+	return true;
+    }
+
+    /**
+     * Moves an element from one location to another.  If both locations are
+     * in the same bucket, only that bucket is modified.
+     *
+     * @param	element the element
+     * @param	oldX the current X coordinate of the element
+     * @param	oldY the current Y coordinate of the element
+     * @param	newX the new X coordinate
+     * @param	newY the new Y coordinate
+     * @return	{@code true} if the element was found at the current location
+     *		and moved, otherwise {@code false}
+     * @throws	IllegalArgumentException if either location is outside the
+     *		area covered by this index
+     * @throws	NullPointerException if {@code element} is {@code null}
+     */
+    public boolean move(E element, double oldX, double oldY,
+			double newX, double newY)
+    {
+	checkNonNull(element);
+	checkLocation(oldX, oldY);
+	checkLocation(newX, newY);
+	Node<E> bucket = findBucket(oldX, oldY);
+	int index = bucket.indexOf(element, oldX, oldY);
+	if (index < 0) {
+	    return false;
+	}
+	Entry entry = bucket.entries.get(index);
+	if (findBucket(newX, newY) == bucket) {
+	    AppContext.getDataManager().markForUpdate(bucket);
+	    bucket.entries.set(index, new Entry(entry.element, newX, newY));
+	} else {
+	    removeEntry(bucket, index);
+	    addEntry(new Entry(entry.element, newX, newY));
+	}
+	return true;
+    }
+
+    /**
+     * Checks if an element is stored at the specified location.
+     *
+     * @param	element the element
+     * @param	x the X coordinate
+     * @param	y the Y coordinate
+     * @return	{@code true} if the element is stored at the location,
+     *		otherwise {@code false}
+     * @throws	IllegalArgumentException if the location is outside the area
+     *		covered by this index
+     * @throws	NullPointerException if {@code element} is {@code null}
+     */
+    public boolean contains(E element, double x, double y) {
+	checkNonNull(element);
+	checkLocation(x, y);
+	return findBucket(x, y).indexOf(element, x, y) >= 0;
+    }
+
+    /**
+     * Returns the elements located within the specified rectangle, including
+     * its edges.  The rectangle may extend outside the area covered by this
+     * index.
+     *
+     * @param	minX the minimum X coordinate
+     * @param	minY the minimum Y coordinate
+     * @param	maxX the maximum X coordinate
+     * @param	maxY the maximum Y coordinate
+     * @return	the elements located within the rectangle, in no particular
+     *		order
+     */
+    public List<E> getWithin(double minX, double minY,
+			     double maxX, double maxY)
+    {
+	List<E> result = new ArrayList<E>();
+	Stack<Node<E>> nodes = new Stack<Node<E>>();
+	nodes.push(rootRef.get());
+	while (!nodes.isEmpty()) {
+	    Node<E> node = nodes.pop();
+	    if (!node.intersects(minX, minY, maxX, maxY)) {
+		continue;
+	    } else if (node.isBucket()) {
+		for (Entry entry : node.entries) {
+		    if (entry.x >= minX && entry.x <= maxX &&
+			entry.y >= minY && entry.y <= maxY)
+		    {
+			result.add(ScalableSpatialIndex.<E>unwrap(entry.element));
+		    }
+		}
+	    } else {
+		for (ManagedReference<Node<E>> child : node.children) {
+		    nodes.push(child.get());
+		}
+	    }
+	}
+	return result;
+    }
+
+    /**
+     * Returns the elements located within the specified distance of a
+     * location.
+     *
+     * @param	x the X coordinate of the location
+     * @param	y the Y coordinate of the location
+     * @param	radius the distance
+     * @return	the elements located within the distance, in no particular
+     *		order
+     * @throws	IllegalArgumentException if {@code radius} is negative
+     */
+    public List<E> getWithinRadius(double x, double y, double radius) {
+	if (radius < 0) {
+	    throw new IllegalArgumentException(
+		"The radius must not be negative");
+	}
+	double radiusSquared = radius * radius;
+	List<E> result = new ArrayList<E>();
+	Stack<Node<E>> nodes = new Stack<Node<E>>();
+	nodes.push(rootRef.get());
+	while (!nodes.isEmpty()) {
+	    Node<E> node = nodes.pop();
+	    if (node.distanceSquared(x, y) > radiusSquared) {
+		continue;
+	    } else if (node.isBucket()) {
+		for (Entry entry : node.entries) {
+		    if (entry.distanceSquared(x, y) <= radiusSquared) {
+			result.add(ScalableSpatialIndex.<E>unwrap(entry.element));
+		    }
+		}
+	    } else {
+		for (ManagedReference<Node<E>> child : node.children) {
+		    nodes.push(child.get());
+		}
+	    }
+	}
+	return result;
+    }
+
+    /**
+     * Returns up to the specified number of elements closest to a location,
+     * ordered by increasing distance from the location.  Elements at the
+     * same distance are returned in no particular order.
+     *
+     * @param	x the X coordinate of the location
+     * @param	y the Y coordinate of the location
+     * @param	count the maximum number of elements to return
+     * @return	the elements closest to the location
+     * @throws	IllegalArgumentException if {@code count} is negative
+     */
+    public List<E> getNearest(double x, double y, int count) {
+	if (count < 0) {
+	    throw new IllegalArgumentException(
+		"The count must not be negative");
+	}
+	List<E> result = new ArrayList<E>(Math.min(count, bucketSize));
+	if (count == 0) {
+	    return result;
+	}
+	/*
+	 * Visit nodes and entries in order of their distance from the
+	 * location.  A node's distance is never greater than the distance of
+	 * any of its entries, so entries are returned in order.
+	 */
+	PriorityQueue<Candidate> queue =
+	    new PriorityQueue<Candidate>(16, Candidate.COMPARATOR);
+	Node<E> root = rootRef.get();
+	queue.add(new Candidate(root.distanceSquared(x, y), root));
+	while (!queue.isEmpty() && result.size() < count) {
+	    Object next = queue.remove().item;
+	    if (next instanceof Entry) {
+		result.add(
+		    ScalableSpatialIndex.<E>unwrap(((Entry) next).element));
+		continue;
+	    }
+	    Node<E> node = uncheckedCast(next);
+	    if (node.isBucket()) {
+		for (Entry entry : node.entries) {
+		    queue.add(new Candidate(entry.distanceSquared(x, y), entry));
+		}
+	    } else {
+		for (ManagedReference<Node<E>> ref : node.children) {
+		    Node<E> child = ref.get();
+		    queue.add(
+			new Candidate(child.distanceSquared(x, y), child));
+		}
+	    }
+	}
+	return result;
+    }
+
+    /* -- Implement ManagedObjectRemoval -- */
+
+    /**
+     * {@inheritDoc} <p>
+     *
+     * This implementation removes the nodes of the tree in a separate task.
+     */
+    public void removingObject() {
+	AppContext.getTaskManager().scheduleTask(new RemoveNodesTask(rootRef));
+    }
+
+    /* -- Other methods -- */
+
+    /** Returns the bucket that covers the specified location. */
+    private Node<E> findBucket(double x, double y) {
+	Node<E> node = rootRef.get();
+	while (!node.isBucket()) {
+	    node = node.getChild(x, y);
+	}
+	return node;
+    }
+
+    /** Adds an entry, splitting its bucket if needed. */
+    private void addEntry(Entry entry) {
+	Node<E> bucket = findBucket(entry.x, entry.y);
+	AppContext.getDataManager().markForUpdate(bucket);
+	bucket.entries.add(entry);
+	while (bucket.entries.size() > bucketSize &&
+	       bucket.depth < MAX_DEPTH)
+	{
+	    bucket.split();
+	    bucket = bucket.getChild(entry.x, entry.y);
+	}
+    }
+
+    /**
+     * Removes the entry at the specified index from a bucket, merging the
+     * bucket with its siblings if they have become small enough.
+     */
+    private void removeEntry(Node<E> bucket, int index) {
+	DataManager dataManager = AppContext.getDataManager();
+	dataManager.markForUpdate(bucket);
+	bucket.entries.remove(index);
+	if (bucket.entries.size() > bucketSize / 4) {
+	    return;
+	}
+	Node<E> node = bucket;
+	while (node.parentRef != null) {
+	    Node<E> parent = node.parentRef.get();
+	    if (!parent.merge(bucketSize / 2)) {
+		break;
+	    }
+	    node = parent;
+	}
+    }
+
+    /**
+     * Checks that the element is not null and implements {@code
+     * Serializable}.
+     */
+    private static void checkElement(Object element) {
+	checkNonNull(element);
+	if (!(element instanceof Serializable)) {
+	    throw new IllegalArgumentException(
+		"The element must implement Serializable");
+	}
+    }
+
+    /** Checks that the element is not null. */
+    private static void checkNonNull(Object element) {
+	if (element == null) {
+	    throw new NullPointerException(
+		"The element argument must not be null");
+	}
+    }
+
+    /** Checks that the location is within the area covered by the index. */
+    private void checkLocation(double x, double y) {
+	if (!(x >= minX && x <= maxX && y >= minY && y <= maxY)) {
+	    throw new IllegalArgumentException(
+		"The location (" + x + ", " + y + ") is outside the index");
+	}
+    }
+
+    /**
+     * Returns the object to store in a bucket to represent the specified
+     * element.
+     */
+    private static Object wrap(Object element) {
+	return (element instanceof ManagedObject)
+	    ? AppContext.getDataManager().createReference(element) : element;
+    }
+
+    /** Returns the element represented by an object stored in a bucket. */
+    private static <E> E unwrap(Object object) {
+	return (object instanceof ManagedReference)
+	    ? ScalableSpatialIndex.<E>uncheckedCast(
+		((ManagedReference<?>) object).get())
+	    : ScalableSpatialIndex.<E>uncheckedCast(object);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T uncheckedCast(Object object) {
+        return (T) object;
+    }
+
+    /**
+     * Returns the depth of the tree, which is {@code 0} if the root node is
+     * a bucket.  This method is intended for testing.
+     */
+    int getDepth() {
+	int depth = 0;
+	Stack<Node<E>> nodes = new Stack<Node<E>>();
+	nodes.push(rootRef.get());
+	while (!nodes.isEmpty()) {
+	    Node<E> node = nodes.pop();
+	    depth = Math.max(depth, node.depth);
+	    if (!node.isBucket()) {
+		for (ManagedReference<Node<E>> child : node.children) {
+		    nodes.push(child.get());
+		}
+	    }
+	}
+	return depth;
+    }
+
+    /* -- Nested classes -- */
+
+    /** An element and its location. */
+    private static final class Entry implements Serializable {
+	private static final long serialVersionUID = 1;
+
+	/**
+	 * The element, or a reference to it if it is a managed object.
+	 *
+	 * @serial
+	 */
+	final Object element;
+
+	/**
+	 * The X coordinate.
+	 *
+	 * @serial
+	 */
+	final double x;
+
+	/**
+	 * The Y coordinate.
+	 *
+	 * @serial
+	 */
+	final double y;
+
+	Entry(Object element, double x, double y) {
+	    this.element = element;
+	    this.x = x;
+	    this.y = y;
+	}
+
+	/** Returns the square of the distance to the location. */
+	double distanceSquared(double x, double y) {
+	    double dx = this.x - x;
+	    double dy = this.y - y;
+	    return dx * dx + dy * dy;
+	}
+    }
+
+    /**
+     * A node of the tree, which is either a bucket that holds entries, or an
+     * internal node with four children.
+     */
+    private static final class Node<E> implements ManagedObject, Serializable {
+	private static final long serialVersionUID = 1;
+
+	/** The parent of this node, or {@code null} for the root. */
+	final ManagedReference<Node<E>> parentRef;
+
+	/** The bounds of the area covered by this node. */
+	final double minX, minY, maxX, maxY;
+
+	/** The depth of this node, which is {@code 0} for the root. */
+	final int depth;
+
+	/** The entries, if this node is a bucket, else {@code null}. */
+	List<Entry> entries = new ArrayList<Entry>();
+
+	/**
+	 * References to the children, if this is an internal node, else
+	 * {@code null}.  The children are ordered by increasing X coordinate,
+	 * then by increasing Y coordinate.
+	 */
+	List<ManagedReference<Node<E>>> children = null;
+
+	Node(Node<E> parent, double minX, double minY,
+	     double maxX, double maxY, int depth)
+	{
+	    parentRef = (parent == null)
+		? null : AppContext.getDataManager().createReference(parent);
+	    this.minX = minX;
+	    this.minY = minY;
+	    this.maxX = maxX;
+	    this.maxY = maxY;
+	    this.depth = depth;
+	}
+
+	/** Returns whether this node is a bucket. */
+	boolean isBucket() {
+	    return entries != null;
+	}
+
+	/** Returns the child of this internal node that covers a location. */
+	Node<E> getChild(double x, double y) {
+	    int index = (x < (minX + maxX) / 2 ? 0 : 1) +
+		(y < (minY + maxY) / 2 ? 0 : 2);
+	    return children.get(index).get();
+	}
+
+	/**
+	 * Returns the index of the entry for the element at the specified
+	 * location in this bucket, or {@code -1} if not found.
+	 */
+	int indexOf(Object element, double x, double y) {
+	    ManagedReference<?> ref = (element instanceof ManagedObject)
+		? AppContext.getDataManager().createReference(element) : null;
+	    for (int i = 0; i < entries.size(); i++) {
+		Entry entry = entries.get(i);
+		if (entry.x == x && entry.y == y &&
+		    (ref != null ? ref.equals(entry.element)
+		     : element.equals(entry.element)))
+		{
+		    return i;
+		}
+	    }
+	    return -1;
+	}
+
+	/**
+	 * Converts this bucket into an internal node, moving its entries into
+	 * four new buckets.  This node should already be marked for update.
+	 */
+	void split() {
+	    DataManager dataManager = AppContext.getDataManager();
+	    double midX = (minX + maxX) / 2;
+	    double midY = (minY + maxY) / 2;
+	    children = new ArrayList<ManagedReference<Node<E>>>(4);
+	    children.add(dataManager.createReference(
+			     new Node<E>(this, minX, minY, midX, midY,
+					 depth + 1)));
+	    children.add(dataManager.createReference(
+			     new Node<E>(this, midX, minY, maxX, midY,
+					 depth + 1)));
+	    children.add(dataManager.createReference(
+			     new Node<E>(this, minX, midY, midX, maxY,
+					 depth + 1)));
+	    children.add(dataManager.createReference(
+			     new Node<E>(this, midX, midY, maxX, maxY,
+					 depth + 1)));
+	    List<Entry> oldEntries = entries;
+	    entries = null;
+	    for (Entry entry : oldEntries) {
+		Node<E> child = getChild(entry.x, entry.y);
+		dataManager.markForUpdate(child);
+		child.entries.add(entry);
+	    }
+	}
+
+	/**
+	 * Converts this internal node into a bucket if all of its children are
+	 * buckets and they hold no more than the specified number of entries
+	 * in total, returning whether the merge was performed.
+	 */
+	boolean merge(int maxEntries) {
+	    List<Node<E>> nodes = new ArrayList<Node<E>>(4);
+	    int total = 0;
+	    for (ManagedReference<Node<E>> ref : children) {
+		Node<E> child = ref.get();
+		if (!child.isBucket()) {
+		    return false;
+		}
+		total += child.entries.size();
+		if (total > maxEntries) {
+		    return false;
+		}
+		nodes.add(child);
+	    }
+	    DataManager dataManager = AppContext.getDataManager();
+	    dataManager.markForUpdate(this);
+	    entries = new ArrayList<Entry>(total);
+	    for (Node<E> child : nodes) {
+		entries.addAll(child.entries);
+		dataManager.removeObject(child);
+	    }
+	    children = null;
+	    return true;
+	}
+
+	/**
+	 * Returns whether this node's area intersects the specified rectangle.
+	 */
+	boolean intersects(double minX, double minY,
+			   double maxX, double maxY)
+	{
+	    return minX <= this.maxX && maxX >= this.minX &&
+		minY <= this.maxY && maxY >= this.minY;
+	}
+
+	/**
+	 * Returns the square of the distance from the location to the closest
+	 * point in this node's area.
+	 */
+	double distanceSquared(double x, double y) {
+	    double dx = Math.max(0, Math.max(minX - x, x - maxX));
+	    double dy = Math.max(0, Math.max(minY - y, y - maxY));
+	    return dx * dx + dy * dy;
+	}
+    }
+
+    /** A node or entry to visit when searching for the nearest elements. */
+    private static final class Candidate {
+
+	/** Orders candidates by increasing distance. */
+	static final Comparator<Candidate> COMPARATOR =
+	    new Comparator<Candidate>() {
+		public int compare(Candidate c1, Candidate c2) {
+		    return Double.compare(c1.distanceSquared,
+					  c2.distanceSquared);
+		}
+	    };
+
+	/** The square of the distance from the search location. */
+	final double distanceSquared;
+
+	/** The node or entry. */
+	final Object item;
+
+	Candidate(double distanceSquared, Object item) {
+	    this.distanceSquared = distanceSquared;
+	    this.item = item;
+	}
+    }
+
+    /** A task that removes the nodes of a tree. */
+    private static final class RemoveNodesTask
+	implements ManagedObject, Serializable, Task
+    {
+	/** The version of the serialized form. */
+	private static final long serialVersionUID = 1;
+
+	/** References to the nodes remaining to be removed. */
+	private final Stack<ManagedReference<?>> nodeRefs =
+	    new Stack<ManagedReference<?>>();
+
+	/** Creates an instance for the tree with the specified root. */
+	RemoveNodesTask(ManagedReference<?> rootRef) {
+	    nodeRefs.push(rootRef);
+	}
+
+	/**
+	 * Removes some nodes, rescheduling the task if there are more, and
+	 * otherwise removing this task object.
+	 */
+	public void run() {
+	    DataManager dataManager = AppContext.getDataManager();
+	    TaskManager taskManager = AppContext.getTaskManager();
+	    dataManager.markForUpdate(this);
+	    do {
+		Node<?> node = (Node<?>) nodeRefs.pop().get();
+		if (!node.isBucket()) {
+		    nodeRefs.addAll(node.children);
+		}
+		dataManager.removeObject(node);
+	    } while (!nodeRefs.isEmpty() && taskManager.shouldContinue());
+	    if (!nodeRefs.isEmpty()) {
+		taskManager.scheduleTask(this);
+	    } else {
+		dataManager.removeObject(this);
+		Runnable r = noteDoneRemoving;
+		if (r != null) {
+		    r.run();
+		}
+	    }
+	}
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.kernel;
+
+/**
+ * A {@link KernelRunnable} that only reads data. When a
+ * {@code TransactionScheduler} runs a task of this type it creates the
+ * task's transaction as {@linkplain
+ * com.sun.sgs.service.Transaction#isReadOnly read-only}. Participants
+ * reject any attempt by the task to modify data, and skip work that is
+ * only needed when changes are made, such as flushing modified objects
+ * and preparing the transaction before committing it.
+ * <p>
+ * A task is marked as read-only when it is created, by implementing this
+ * interface, rather than when it is scheduled, so wrapping tasks should
+ * only implement this interface if the tasks that they wrap are
+ * read-only.
+ */
+public interface ReadOnlyKernelRunnable extends KernelRunnable {
+
+}
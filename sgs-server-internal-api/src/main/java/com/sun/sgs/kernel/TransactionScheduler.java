@@ -56,6 +56,9 @@ import com.sun.sgs.auth.Identity;
  * <p>
  * Note that re-try is handled slightly differently for {@code runTask}. See
  * the documentation on that method for more details.
+ * <p>
+ * Tasks that implement {@link ReadOnlyKernelRunnable} are run in read-only
+ * transactions.
  */
 public interface TransactionScheduler {
 
@@ -194,4 +197,14 @@ public interface TransactionScheduler {
      */
     TaskQueue createTaskQueue();
 
+    /**
+     * Returns the number of tasks that are ready to run but are waiting
+     * for a consumer thread.  This value is a snapshot that may change
+     * as soon as it is returned, and is intended for reporting the load
+     * on this scheduler rather than for making scheduling decisions.
+     *
+     * @return the number of tasks that are ready to run
+     */
+    int getReadyCount();
+
 }
@@ -104,4 +104,160 @@ public interface ClientSessionServiceMXBean {
      *         has been called
      */
     long getIsRelocatingToLocalNodeCalls();
+
+    /**
+     * Returns the average time, in milliseconds, between when a
+     * transaction commits and when the actions it requested for a client
+     * session, such as sending messages, are performed.
+     *
+     * @return the average flush lag
+     */
+    double getFlushLagAvg();
+
+    /**
+     * Returns the maximum time, in milliseconds, between when a
+     * transaction commits and when the actions it requested for a client
+     * session are performed.
+     *
+     * @return the maximum flush lag
+     */
+    long getFlushLagMax();
+
+    /**
+     * Returns the median time, in milliseconds, taken by recent logins,
+     * measured from when a client's credentials have been authenticated
+     * until the login has been accepted or refused.
+     *
+     * @return the median login latency, or {@code 0} if there have been
+     *	       no logins
+     */
+    long getLoginLatency50th();
+
+    /**
+     * Returns the 90th percentile of the time, in milliseconds, taken by
+     * recent logins.
+     *
+     * @return the 90th percentile login latency, or {@code 0} if there
+     *	       have been no logins
+     */
+    long getLoginLatency90th();
+
+    /**
+     * Returns the 99th percentile of the time, in milliseconds, taken by
+     * recent logins.
+     *
+     * @return the 99th percentile login latency, or {@code 0} if there
+     *	       have been no logins
+     */
+    long getLoginLatency99th();
+
+    /**
+     * Returns the maximum time, in milliseconds, taken by a login.
+     *
+     * @return the maximum login latency
+     */
+    long getLoginLatencyMax();
+
+    /**
+     * Returns the average time, in milliseconds, that sessions relocating
+     * to this node took to reconnect, measured from when this node was
+     * notified of the relocation.
+     *
+     * @return the average relocation time
+     */
+    double getRelocationTimeAvg();
+
+    /**
+     * Returns the maximum time, in milliseconds, that a session relocating
+     * to this node took to reconnect.
+     *
+     * @return the maximum relocation time
+     */
+    long getRelocationTimeMax();
+
+    /**
+     * Returns the number of objects this node has fetched in advance for
+     * sessions relocating to it.
+     *
+     * @return the number of objects fetched for relocating sessions
+     */
+    long getRelocationPrefetchedObjects();
+
+    /**
+     * Returns the median number of bytes waiting to be written to a
+     * client, sampled as recent messages were queued for clients on this
+     * node.
+     *
+     * @return the median outbound queue size, or {@code 0} if no messages
+     *	       have been sampled
+     */
+    long getOutboundQueueBytes50th();
+
+    /**
+     * Returns the 90th percentile of the number of bytes waiting to be
+     * written to a client, sampled as recent messages were queued.
+     *
+     * @return the 90th percentile outbound queue size, or {@code 0} if no
+     *	       messages have been sampled
+     */
+    long getOutboundQueueBytes90th();
+
+    /**
+     * Returns the 99th percentile of the number of bytes waiting to be
+     * written to a client, sampled as recent messages were queued.
+     *
+     * @return the 99th percentile outbound queue size, or {@code 0} if no
+     *	       messages have been sampled
+     */
+    long getOutboundQueueBytes99th();
+
+    /**
+     * Returns the maximum number of bytes that have been waiting to be
+     * written to a client.
+     *
+     * @return the maximum outbound queue size
+     */
+    long getOutboundQueueBytesMax();
+
+    /**
+     * Returns the number of unreliable messages that were dropped, rather
+     * than written to a client, because the client was not reading its
+     * messages quickly enough.
+     *
+     * @return the number of outbound messages dropped
+     */
+    long getOutboundMessagesDropped();
+
+    /**
+     * Returns the number of clients that were disconnected because too
+     * many reliable messages were waiting to be written to them.
+     *
+     * @return the number of clients disconnected for outbound overflow
+     */
+    long getOutboundOverflowDisconnects();
+
+    /**
+     * Returns the number of messages whose payloads were compressed before
+     * being written to a client.
+     *
+     * @return the number of compressed messages
+     */
+    long getCompressedMessages();
+
+    /**
+     * Returns the number of bytes saved by compressing messages written to
+     * clients.
+     *
+     * @return the number of bytes saved by compression
+     */
+    long getCompressionBytesSaved();
+
+    /**
+     * Returns the total time, in milliseconds, spent compressing message
+     * payloads.  A channel message payload is compressed once for all of
+     * the channel's members on this node.
+     *
+     * @return the time spent compressing messages
+     */
+    long getCompressionTime();
 }
@@ -112,6 +112,14 @@ public interface DataServiceMXBean {
      * @return the number of times {@code setBinding} has been called
      */
     long getSetBindingCalls();
+
+    /**
+     * Returns the number of times 
+     * {@link DataService#prefetch prefetch} 
+     * has been called.
+     * @return the number of times {@code prefetch} has been called
+     */
+    long getPrefetchCalls();
   
     /**
      * Returns the number of times {@link DataService#getLocalNodeId
@@ -177,4 +185,20 @@ public interface DataServiceMXBean {
      * @return the number of times {@code setServiceBinding} has been called
      */
     long getSetServiceBindingCalls();
+
+    /**
+     * Returns the number of binding lookups that were satisfied without
+     * consulting the data store, because the name had already been looked
+     * up or bound in the same transaction.
+     * @return the number of binding lookups found in the binding cache
+     */
+    long getBindingCacheHits();
+
+    /**
+     * Returns the number of binding lookups that were passed to the data
+     * store because the name had not been looked up or bound in the same
+     * transaction.
+     * @return the number of binding lookups not found in the binding cache
+     */
+    long getBindingCacheMisses();
 }
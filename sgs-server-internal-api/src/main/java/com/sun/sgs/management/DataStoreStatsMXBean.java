@@ -87,6 +87,15 @@ public interface DataStoreStatsMXBean
      * @return the number of times {@code getObject} has been called
      */
     long getGetObjectCalls();
+
+    /**
+     * Returns the number of times
+     * {@link DataStore#getObjects(Transaction, long[]) getObjects}
+     * has been called.
+     * 
+     * @return the number of times {@code getObjects} has been called
+     */
+    long getGetObjectsCalls();
     
     /**
      * Returns the number of times
@@ -193,6 +202,48 @@ public interface DataStoreStatsMXBean
      */
     long getWrittenObjectsCount();
 
+    /**
+     * Returns the maximum number of bytes of memory used by the data store's
+     * off-heap object cache, or {@code 0} if the cache is disabled.
+     * @return the size of the object cache
+     */
+    long getObjectCacheSize();
+
+    /**
+     * Returns the number of bytes of memory currently used by entries in the
+     * data store's off-heap object cache.
+     * @return the number of bytes used by the object cache
+     */
+    long getObjectCacheUsedBytes();
+
+    /**
+     * Returns the number of objects currently stored in the data store's
+     * off-heap object cache.
+     * @return the number of objects in the object cache
+     */
+    long getObjectCacheEntryCount();
+
+    /**
+     * Returns the number of object reads that found the object in the data
+     * store's off-heap object cache.
+     * @return the number of object cache hits
+     */
+    long getObjectCacheHits();
+
+    /**
+     * Returns the number of object reads that did not find the object in the
+     * data store's off-heap object cache.
+     * @return the number of object cache misses
+     */
+    long getObjectCacheMisses();
+
+    /**
+     * Returns the number of objects evicted from the data store's off-heap
+     * object cache to make room for other objects.
+     * @return the number of object cache evictions
+     */
+    long getObjectCacheEvictions();
+
     /**
      * Returns the smoothing factor in effect for the data store aggregate
      * statistics.
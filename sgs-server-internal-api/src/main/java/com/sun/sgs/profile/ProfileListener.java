@@ -116,6 +116,12 @@ public interface ProfileListener {
      * <code>scheduledStartTime</code> will remain constant but the
      * <code>actualStartTime</code> will change for each re-try of the
      * same task.
+     * <p>
+     * The report, and the collections returned by its methods, are only
+     * valid for the duration of this call, since the implementation may
+     * reuse the report for another task once all listeners have been
+     * notified.  Listeners that need to refer to the contents of the report
+     * later should copy them.
      *
      * @param profileReport the <code>ProfileReport</code> for the task
      */
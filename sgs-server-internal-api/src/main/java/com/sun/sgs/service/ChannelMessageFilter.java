@@ -0,0 +1,80 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.service;
+
+import com.sun.sgs.auth.Identity;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * A filter that the channel service applies to each channel message before
+ * delivering it to a channel member.  A filter can drop, downsample, or
+ * rewrite a message for each recipient, for example to limit the messages
+ * a client receives to those about things that are visible to it. <p>
+ *
+ * A filter runs on the node that the recipient is connected to, once for
+ * each local member of the channel, after the message has been sent to
+ * that node.  Filtering therefore does not increase the number of remote
+ * calls or transactions needed to send a channel message.  The filter is
+ * invoked outside of a transaction, so it must not use the managers in
+ * {@link com.sun.sgs.app.AppContext} or access managed objects.  Any state
+ * it uses to make its decisions must be local to the node.  A filter is
+ * invoked concurrently by multiple threads, and should return quickly,
+ * since it delays the delivery of messages to the recipient. <p>
+ *
+ * A filter is specified with the {@code
+ * com.sun.sgs.impl.service.channel.message.filter} property.  All
+ * implementations of {@code ChannelMessageFilter} must have a public
+ * constructor that accepts an instance of {@link java.util.Properties},
+ * which contains the application's configuration properties.
+ */
+public interface ChannelMessageFilter {
+
+    /**
+     * Returns the message to deliver to the client session with the
+     * specified {@code sessionId} and {@code identity} in place of the
+     * specified {@code message} sent on the channel with the specified
+     * {@code channelName}, or {@code null} if no message should be
+     * delivered to that session. <p>
+     *
+     * The specified {@code message} is a read-only buffer.  The filter may
+     * return {@code message} itself to deliver it unchanged, regardless of
+     * its position, or a new buffer containing the message to deliver.
+     * If this method throws a runtime exception, the message is not
+     * delivered to the session.
+     *
+     * @param	channelName the name of the channel
+     * @param	sessionId the ID of the recipient session, as returned by
+     *		{@link com.sun.sgs.app.ClientSessionHandle#getId}
+     * @param	identity the identity of the recipient session
+     * @param	message the channel message
+     * @return	the message to deliver, or {@code null}
+     */
+    ByteBuffer filterMessage(String channelName, BigInteger sessionId,
+			     Identity identity, ByteBuffer message);
+}
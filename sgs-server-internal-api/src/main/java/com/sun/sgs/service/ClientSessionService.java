@@ -26,6 +26,7 @@
 package com.sun.sgs.service;
 
 import com.sun.sgs.app.ManagedReference;
+import com.sun.sgs.auth.Identity;
 import com.sun.sgs.protocol.SessionProtocol;
 import java.math.BigInteger;
 
@@ -67,6 +68,19 @@ public interface ClientSessionService extends Service {
      */
     SessionProtocol getSessionProtocol(BigInteger sessionRefId);
 
+    /**
+     * Returns the identity of the <i>local</i> client session with the
+     * specified {@code sessionRefId} or {@code null} if the specified
+     * client session is not connected to the local node.
+     *
+     * <p>This method is non-transactional, and may be invoked inside or
+     * outside of a transaction.
+     *
+     * @param	sessionRefId a client session ID, as a {@code BigInteger}
+     * @return	an identity, or {@code null}
+     */
+    Identity getSessionIdentity(BigInteger sessionRefId);
+
     /**
      * Returns {@code true} if the session with the specified {@code
      * sessionRefId} is known to be relocating to the local node, and
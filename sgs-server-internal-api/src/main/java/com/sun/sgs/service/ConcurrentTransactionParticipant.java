@@ -0,0 +1,55 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.service;
+
+/**
+ * Defines a {@link NonDurableTransactionParticipant} whose {@link
+ * TransactionParticipant#prepare prepare} and {@link
+ * TransactionParticipant#commit commit} methods may be called concurrently
+ * with those of other participants in the same transaction.  Transaction
+ * coordinators can use this information to reduce the time needed to commit
+ * a transaction with several participants by preparing and committing these
+ * participants in parallel.  Participants that do not implement this
+ * interface are still called one at a time, and a durable participant is
+ * still prepared only after all non-durable participants have been prepared
+ * successfully. <p>
+ *
+ * The {@code prepare} and {@code commit} methods of participants that
+ * implement this interface may be called from a thread other than the one
+ * that created the transaction.  As a result, implementations should not
+ * obtain information about the transaction from thread-local state, such as
+ * the current transaction maintained by {@link TransactionProxy}, and should
+ * not call the methods of {@link Transaction} that are restricted to the
+ * thread that created the transaction.  The coordinator still calls each
+ * participant's methods one at a time, and waits for any concurrent calls to
+ * complete before aborting the transaction.
+ */
+public interface ConcurrentTransactionParticipant
+    extends NonDurableTransactionParticipant
+{
+}
@@ -93,6 +93,19 @@ public interface Transaction {
      */
     void checkTimeout();
 
+    /**
+     * Returns whether this <code>Transaction</code> was created to only
+     * read data. Participants should reject any attempt to modify
+     * persistent state in a read-only transaction, and may use this
+     * information to avoid work that is only needed when changes are
+     * made, such as acquiring write locks or flushing modified objects
+     * at commit time.
+     *
+     * @return <code>true</code> if this transaction is read-only,
+     *         otherwise <code>false</code>
+     */
+    boolean isReadOnly();
+
     /**
      * Tells the <code>Transaction</code> that the given
      * <code>TransactionParticipant</code> is participating in the
@@ -114,6 +114,30 @@ public interface DataStore {
      */
     byte[] getObject(Transaction txn, long oid, boolean forUpdate);
 
+    /**
+     * Obtains the data associated with a series of object IDs, without
+     * stating an intention to modify the objects.  Unlike {@link #getObject
+     * getObject}, this method does not throw {@link ObjectNotFoundException}
+     * if an object is not found, but instead returns {@code null} for that
+     * object.  Callers can use this method to obtain the data for several
+     * objects with a single request, which can be much faster than a series
+     * of calls to {@code getObject} if the data store is remote.
+     *
+     * @param	txn the transaction under which the operation should take place
+     * @param	oids the object IDs
+     * @return	an array with the data associated with each object ID, in the
+     *		same order as {@code oids}, containing {@code null} for objects
+     *		that are not found
+     * @throws	IllegalArgumentException if <code>oids</code> contains a value
+     *		that is negative
+     * @throws	TransactionAbortedException if the transaction was aborted due
+     *		to a lock conflict or timeout
+     * @throws	TransactionNotActiveException if the transaction is not active
+     * @throws	IllegalStateException if the operation failed because of a
+     *		problem with the current transaction
+     */
+    byte[][] getObjects(Transaction txn, long[] oids);
+
     /**
      * Specifies data to associate with an object ID.
      *
@@ -50,6 +50,22 @@ public interface DbDatabase {
      */
     byte[] get(DbTransaction txn, byte[] key, boolean forUpdate);
 
+    /**
+     * Locks the key and associated value for read, without retrieving the
+     * value.  Callers can use this method to obtain the same lock as a call
+     * to {@link #get get} with {@code forUpdate} set to {@code false} when
+     * they already have a copy of the value.
+     *
+     * @param	txn the transaction for this operation
+     * @param	key the key
+     * @throws	IllegalArgumentException if {@code txn} was not created by the
+     *		associated environment
+     * @throws	TransactionAbortedException if the transaction should be
+     *		aborted due to timeout or conflict
+     * @throws	DbDatabaseException if an unexpected database problem occurs
+     */
+    void markForRead(DbTransaction txn, byte[] key);
+
     /**
      * Locks the key and associated value for update.
      *
@@ -25,6 +25,7 @@ import com.sun.sgs.app.DataManager;
 import com.sun.sgs.app.ManagedObject;
 import com.sun.sgs.app.ManagedReference;
 import java.math.BigInteger;
+import java.util.Collection;
 
 /**
  * This implementation of {@code DataManager} simply calls its 
@@ -106,4 +107,11 @@ public class ProfileDataManager implements DataManager {
     public BigInteger getObjectId(Object object) {
 	return backingManager.getObjectId(object);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void prefetch(Collection<? extends ManagedReference<?>> refs) {
+	backingManager.prefetch(refs);
+    }
 }
@@ -73,8 +73,19 @@ public class NamePasswordAuthenticator implements IdentityAuthenticator
     // a fixed map from name to passowrd, loaded from the password file
     private final HashMap<String, byte[]> passwordMap;
 
-    // the instance used to hash passwords
-    private MessageDigest digest;
+    // the per-thread instances used to hash passwords, so that concurrent
+    // logins do not contend for a single digest
+    private final ThreadLocal<MessageDigest> digests =
+        new ThreadLocal<MessageDigest>() {
+            protected MessageDigest initialValue() {
+                try {
+                    return MessageDigest.getInstance("SHA-256");
+                } catch (NoSuchAlgorithmException nsae) {
+                    throw new IllegalStateException(
+                        "SHA-256 not supported", nsae);
+                }
+            }
+        };
 
 
     /**
@@ -116,8 +127,9 @@ public class NamePasswordAuthenticator implements IdentityAuthenticator
             passwordMap.put(name, password);
         }
 
-        // finally, create the digest we'll use to hash incoming passwords
-        digest = MessageDigest.getInstance("SHA-256");
+        // finally, make sure we can create the digests we'll use to hash
+        // incoming passwords
+        MessageDigest.getInstance("SHA-256");
     }
 
     /**
@@ -196,15 +208,14 @@ public class NamePasswordAuthenticator implements IdentityAuthenticator
 
         // hash the given password
         byte [] pass = null;
-        synchronized (digest) {
-            digest.reset();
-            try {
-                pass = digest.digest((new String(npc.getPassword())).
-                                     getBytes("UTF-8"));
-            } catch (IOException ioe) {
-                throw new CredentialException("Could not get password: " +
-                                              ioe.getMessage());
-            }
+        MessageDigest digest = digests.get();
+        digest.reset();
+        try {
+            pass = digest.digest((new String(npc.getPassword())).
+                                 getBytes("UTF-8"));
+        } catch (IOException ioe) {
+            throw new CredentialException("Could not get password: " +
+                                          ioe.getMessage());
         }
         
         // verify that the hashes match
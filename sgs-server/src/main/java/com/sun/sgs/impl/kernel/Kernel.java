@@ -133,7 +133,10 @@ import javax.management.JMException;
  *      name of a public, non-abstract class that implements the
  *      {@link AccessCoordinatorHandle} interface, and that provides a public
  *      constructor with the three parameters {@link Properties},
- *      {@link TransactionProxy}, and {@link ProfileCollectorHandle}.<p>
+ *      {@link TransactionProxy}, and {@link ProfileCollectorHandle}.
+ *      Specifying {@link OptimisticAccessCoordinator} validates accesses
+ *      when transactions commit rather than locking, which can improve
+ *      throughput for workloads dominated by reads.<p>
  *
  * 
  * </dl>
@@ -68,7 +68,9 @@ import java.util.logging.Logger;
  * deadlock victim, determining the age using the originally requested start
  * time for the task associated with the transaction.  The implementation does
  * not deny requests that would not result in deadlock.  When requests block,
- * it services the requests in the order that they arrive. <p>
+ * it services the requests in the order that they arrive.  Requests for write
+ * access made by {@linkplain Transaction#isReadOnly read-only} transactions
+ * are rejected with {@link IllegalStateException}. <p>
  *
  * The methods that this class provides to implement {@code AccessReporter} are
  * not thread safe, and should either be called from a single thread or else
@@ -587,6 +589,12 @@ public class LockingAccessCoordinator extends AbstractAccessCoordinator {
 	{
 	    checkNull("type", type);
 	    LockerImpl locker = getLocker(txn);
+	    if (type == AccessType.WRITE && txn.isReadOnly()) {
+		throw new IllegalStateException(
+		    "Write access not permitted in read-only transaction:" +
+		    " txn:" + txn + ", source:" + source +
+		    ", objectId:" + objectId);
+	    }
 	    Key key = new Key(source, objectId);
 	    if (description != null) {
 		locker.setDescription(key, description);
@@ -0,0 +1,751 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.impl.kernel;
+
+import com.sun.sgs.app.TransactionConflictException;
+import com.sun.sgs.impl.profile.ProfileCollectorHandle;
+import com.sun.sgs.impl.sharedutil.LoggerWrapper;
+import static com.sun.sgs.impl.sharedutil.Objects.checkNull;
+import com.sun.sgs.impl.sharedutil.PropertiesWrapper;
+import com.sun.sgs.kernel.AccessCoordinator;
+import com.sun.sgs.kernel.AccessReporter;
+import com.sun.sgs.kernel.AccessReporter.AccessType;
+import com.sun.sgs.kernel.AccessedObject;
+import com.sun.sgs.profile.AccessedObjectsDetail;
+import com.sun.sgs.profile.AccessedObjectsDetail.ConflictType;
+import com.sun.sgs.service.Transaction;
+import com.sun.sgs.service.TransactionListener;
+import com.sun.sgs.service.TransactionProxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import static java.util.logging.Level.CONFIG;
+import static java.util.logging.Level.FINER;
+import java.util.logging.Logger;
+
+/**
+ * An implementation of {@link AccessCoordinator} that uses optimistic
+ * concurrency control to handle conflicts. <p>
+ *
+ * This implementation does not block or lock when accesses are reported.
+ * Instead, it maintains a version stamp for each accessed object, and records
+ * the version that each transaction observed when it first accessed the
+ * object.  Just before the transaction is prepared, the implementation
+ * validates the transaction: it reserves the objects that the transaction
+ * wrote, and checks that none of the objects that it accessed have been
+ * changed by a transaction that committed in the meantime, or are reserved by
+ * another transaction that is committing.  Accesses reported after validation,
+ * for example while data is flushed during prepare, are validated as they are
+ * reported.  If validation fails, the transaction is aborted with a {@link
+ * TransactionConflictException}, so conflicting writes are resolved in favor
+ * of the transaction that commits first.  Accesses to an object that is
+ * reserved by a committing transaction are also denied immediately.  When the
+ * transaction commits, the versions of the objects it wrote are advanced and
+ * the reservations are released. <p>
+ *
+ * Version stamps are kept in a fixed size table indexed by the hash code of
+ * the source and object ID, so unrelated objects may share a stamp.  Sharing
+ * only produces extra conflicts, never missed ones.  Requests for write access
+ * made by {@linkplain Transaction#isReadOnly read-only} transactions are
+ * rejected with {@link IllegalStateException}. <p>
+ *
+ * This implementation works best for workloads dominated by reads, where
+ * avoiding locking outweighs the cost of retrying the occasional transaction
+ * that fails validation.  Transactions with conflicting writes are retried
+ * rather than waiting, so workloads with frequent writes to shared objects are
+ * better served by {@link LockingAccessCoordinator}. <p>
+ *
+ * The {@link #OptimisticAccessCoordinator constructor} supports the following
+ * configuration properties: <p>
+ *
+ * <dl style="margin-left: 1em">
+ *
+ * <dt> <i>Property:</i> <b>{@value #NUM_STAMPS_PROPERTY}</b> <br>
+ *	<i>Default:</i> {@value #NUM_STAMPS_DEFAULT}
+ *
+ * <dd style="padding-top: .5em">The number of version stamps to use for
+ *	tracking changes to objects.  Using more stamps reduces the chance that
+ *	unrelated objects share a stamp, at the cost of more memory.  The value
+ *	must be greater than {@code 0}. <p>
+ *
+ * </dl> <p>
+ *
+ * This class uses the {@link Logger} named {@code
+ * com.sun.sgs.impl.kernel.OptimisticAccessCoordinator} to log information at
+ * the following logging levels: <p>
+ *
+ * <ul>
+ * <li> {@link Level#CONFIG CONFIG} - Creating an instance
+ * <li> {@link Level#FINER FINER} - Beginning and ending transactions, and
+ *	validation failures
+ * </ul>
+ */
+public class OptimisticAccessCoordinator extends AbstractAccessCoordinator {
+
+    /** The class name. */
+    private static final String CLASS =
+	"com.sun.sgs.impl.kernel.OptimisticAccessCoordinator";
+
+    /**
+     * The property for specifying the number of version stamps to use for
+     * tracking changes to objects.
+     */
+    public static final String NUM_STAMPS_PROPERTY = CLASS + ".num.stamps";
+
+    /** The default number of version stamps. */
+    public static final int NUM_STAMPS_DEFAULT = 65536;
+
+    /** The logger for this class. */
+    static final LoggerWrapper logger = new LoggerWrapper(
+	Logger.getLogger(OptimisticAccessCoordinator.class.getName()));
+
+    /** Maps transactions to information about their accesses. */
+    private final ConcurrentMap<Transaction, TxnInfo> txnMap =
+	new ConcurrentHashMap<Transaction, TxnInfo>();
+
+    /**
+     * The version stamps.  An even value is the current version of the
+     * objects that map to the stamp.  An odd value means that the objects are
+     * reserved by a committing transaction, and is one more than the version
+     * at the time the reservation was made.
+     */
+    private final AtomicLongArray stamps;
+
+    /**
+     * The transaction holding the reservation for each stamp, or {@code null}
+     * if the stamp is not reserved.
+     */
+    private final AtomicReferenceArray<TxnInfo> owners;
+
+    /* -- Public constructor -- */
+
+    /**
+     * Creates an instance of this class.
+     *
+     * @param	properties the configuration properties
+     * @param	txnProxy the transaction proxy
+     * @param	profileCollectorHandle the profile collector handle
+     * @throws	IllegalArgumentException if the values of the configuration
+     *		properties are illegal
+     */
+    public OptimisticAccessCoordinator(
+	Properties properties,
+	TransactionProxy txnProxy,
+	ProfileCollectorHandle profileCollectorHandle)
+    {
+	super(txnProxy, profileCollectorHandle);
+	PropertiesWrapper wrappedProps = new PropertiesWrapper(properties);
+	int numStamps = wrappedProps.getIntProperty(
+	    NUM_STAMPS_PROPERTY, NUM_STAMPS_DEFAULT, 1, Integer.MAX_VALUE);
+	stamps = new AtomicLongArray(numStamps);
+	owners = new AtomicReferenceArray<TxnInfo>(numStamps);
+	if (logger.isLoggable(CONFIG)) {
+	    logger.log(CONFIG,
+		       "Created OptimisticAccessCoordinator with properties:" +
+		       "\n  num stamps: " + numStamps);
+	}
+    }
+
+    /* -- Implement AccessCoordinator -- */
+
+    /** {@inheritDoc} */
+    public <T> AccessReporter<T> registerAccessSource(
+	String sourceName, Class<T> objectIdType)
+    {
+	checkNull("objectIdType", objectIdType);
+	return new AccessReporterImpl<T>(sourceName);
+    }
+
+    /**
+     * {@inheritDoc} <p>
+     *
+     * This implementation does not record information about completed
+     * transactions, so it always returns {@code null}.
+     */
+    public Transaction getConflictingTransaction(Transaction txn) {
+	checkNull("txn", txn);
+	return null;
+    }
+
+    /* -- Implement AccessCoordinatorHandle -- */
+
+    /** {@inheritDoc} */
+    public void notifyNewTransaction(
+	Transaction txn, long requestedStartTime, int tryCount)
+    {
+	checkNull("txn", txn);
+	if (requestedStartTime < 0) {
+	    throw new IllegalArgumentException(
+		"The requestedStartTime must not be less than 0");
+	} else if (tryCount < 1) {
+	    throw new IllegalArgumentException(
+		"The tryCount must not be less than 1");
+	}
+	TxnInfo info = new TxnInfo(txn);
+	TxnInfo existing = txnMap.putIfAbsent(txn, info);
+	if (existing != null) {
+	    throw new IllegalStateException("Transaction already started");
+	}
+	if (logger.isLoggable(FINER)) {
+	    logger.log(FINER, "begin {0}, requestedStartTime:{1,number,#}",
+		       info, requestedStartTime);
+	}
+	txn.registerListener(new TxnListener(txn));
+    }
+
+    /* -- Other methods -- */
+
+    /**
+     * Returns the information associated with a transaction.
+     *
+     * @param	txn the transaction
+     * @return	the information
+     * @throws	IllegalArgumentException if the transaction is not active
+     */
+    TxnInfo getTxnInfo(Transaction txn) {
+	checkNull("txn", txn);
+	TxnInfo info = txnMap.get(txn);
+	if (info == null) {
+	    throw new IllegalArgumentException(
+		"Transaction not active: " + txn);
+	}
+	return info;
+    }
+
+    /**
+     * Releases the reservations made by the transaction, advancing the
+     * versions of the objects it wrote if it committed, and reports object
+     * accesses to the profiling system.
+     *
+     * @param	txn the finished transaction
+     * @param	committed whether the transaction committed
+     */
+    private void endTransaction(Transaction txn, boolean committed) {
+	TxnInfo info = getTxnInfo(txn);
+	logger.log(FINER, "end {0}, committed:{1}", info, committed);
+	info.release(committed);
+	txnMap.remove(txn);
+	profileCollectorHandle.setAccessedObjectsDetail(info);
+    }
+
+    /** Returns the index of the version stamp for the specified key. */
+    private int getStampIndex(Key key) {
+	int h = key.hashCode();
+	/* Spread the bits, since object IDs are often sequential */
+	h ^= (h >>> 20) ^ (h >>> 12);
+	h ^= (h >>> 7) ^ (h >>> 4);
+	return (h & Integer.MAX_VALUE) % stamps.length();
+    }
+
+    /* -- Other classes -- */
+
+    /**
+     * Records the accesses made by a transaction, and the versions of the
+     * accessed objects.
+     */
+    final class TxnInfo implements AccessedObjectsDetail {
+
+	/** The transaction. */
+	final Transaction txn;
+
+	/** The accesses made by this transaction, in order. */
+	private final List<AccessedObjectImpl> accesses =
+	    new ArrayList<AccessedObjectImpl>();
+
+	/**
+	 * Maps the keys accessed by this transaction to the version observed
+	 * when the key was first accessed.
+	 */
+	private final Map<Key, Long> versions = new LinkedHashMap<Key, Long>();
+
+	/** The keys written by this transaction. */
+	private final Set<Key> writes = new HashSet<Key>();
+
+	/**
+	 * Maps the indices of the stamps reserved by this transaction to the
+	 * version at the time the reservation was made.
+	 */
+	private final Map<Integer, Long> reserved =
+	    new HashMap<Integer, Long>();
+
+	/** A map from keys to descriptions, or {@code null}. */
+	private Map<Key, Object> keyToDescriptionMap = null;
+
+	/** Whether this transaction has been validated. */
+	private boolean validated = false;
+
+	/** Whether this transaction has ended. */
+	private boolean ended = false;
+
+	/** The type of conflict, if any. */
+	private ConflictType conflictType = ConflictType.NONE;
+
+	/** The transaction that caused a conflict, if known. */
+	private Transaction conflictingTxn = null;
+
+	/**
+	 * Creates an instance of this class.
+	 *
+	 * @param	txn the associated transaction
+	 */
+	TxnInfo(Transaction txn) {
+	    this.txn = txn;
+	}
+
+	/**
+	 * Records an access.  Validates the access if this transaction has
+	 * already been validated.
+	 *
+	 * @param	key the key
+	 * @param	forWrite whether the access is for write
+	 * @return	the transaction holding a conflicting reservation, this
+	 *		transaction if the access conflicts with a committed
+	 *		change, or {@code null} if there is no conflict
+	 */
+	synchronized TxnInfo access(Key key, boolean forWrite) {
+	    assert !ended;
+	    if (!versions.containsKey(key)) {
+		accesses.add(new AccessedObjectImpl(key, forWrite));
+		int index = getStampIndex(key);
+		Long reservedVersion = reserved.get(index);
+		long version;
+		if (reservedVersion != null) {
+		    version = reservedVersion;
+		} else {
+		    version = stamps.get(index);
+		    if ((version & 1) != 0) {
+			return getOwner(index);
+		    }
+		}
+		versions.put(key, version);
+		if (forWrite) {
+		    writes.add(key);
+		}
+	    } else if (forWrite && !writes.contains(key)) {
+		accesses.add(new AccessedObjectImpl(key, true));
+		writes.add(key);
+	    }
+	    if (!validated) {
+		return null;
+	    } else if (forWrite) {
+		return reserve(key);
+	    } else {
+		return check(key);
+	    }
+	}
+
+	/**
+	 * Validates this transaction, reserving the stamps for the objects it
+	 * wrote, and checking the versions of the objects it accessed.
+	 *
+	 * @return	the transaction holding a conflicting reservation, this
+	 *		transaction if the access conflicts with a committed
+	 *		change, or {@code null} if there is no conflict
+	 */
+	synchronized TxnInfo validate() {
+	    assert !validated;
+	    validated = true;
+	    for (Key key : writes) {
+		TxnInfo conflict = reserve(key);
+		if (conflict != null) {
+		    return conflict;
+		}
+	    }
+	    for (Key key : versions.keySet()) {
+		if (!writes.contains(key)) {
+		    TxnInfo conflict = check(key);
+		    if (conflict != null) {
+			return conflict;
+		    }
+		}
+	    }
+	    return null;
+	}
+
+	/**
+	 * Reserves the stamp for a key written by this transaction, checking
+	 * that the version is the one observed when it was first accessed.
+	 */
+	private TxnInfo reserve(Key key) {
+	    long version = versions.get(key);
+	    int index = getStampIndex(key);
+	    Long reservedVersion = reserved.get(index);
+	    if (reservedVersion != null) {
+		return (reservedVersion == version) ? null : this;
+	    } else if (stamps.compareAndSet(index, version, version + 1)) {
+		owners.set(index, this);
+		reserved.put(index, version);
+		return null;
+	    } else {
+		return getOwner(index);
+	    }
+	}
+
+	/**
+	 * Checks that the version of a key accessed by this transaction is the
+	 * one observed when it was first accessed.
+	 */
+	private TxnInfo check(Key key) {
+	    long version = versions.get(key);
+	    int index = getStampIndex(key);
+	    Long reservedVersion = reserved.get(index);
+	    if (reservedVersion != null) {
+		return (reservedVersion == version) ? null : this;
+	    }
+	    long current = stamps.get(index);
+	    if (current == version) {
+		return null;
+	    } else if ((current & 1) != 0) {
+		return getOwner(index);
+	    } else {
+		return this;
+	    }
+	}
+
+	/**
+	 * Returns the transaction that holds the reservation for a stamp, or
+	 * this transaction if the reservation has already been released.
+	 */
+	private TxnInfo getOwner(int index) {
+	    TxnInfo owner = owners.get(index);
+	    return (owner == null) ? this : owner;
+	}
+
+	/**
+	 * Releases the stamps reserved by this transaction, advancing their
+	 * versions if the transaction committed.
+	 */
+	synchronized void release(boolean committed) {
+	    ended = true;
+	    for (Entry<Integer, Long> entry : reserved.entrySet()) {
+		int index = entry.getKey();
+		long version = entry.getValue();
+		/* Clear the owner first, since the stamp may be reused */
+		owners.set(index, null);
+		stamps.set(index, committed ? version + 2 : version);
+	    }
+	    reserved.clear();
+	}
+
+	/** Notes a conflict with the specified transaction, if known. */
+	synchronized void setConflict(TxnInfo conflict) {
+	    if (conflictType == ConflictType.NONE) {
+		conflictType = ConflictType.ACCESS_NOT_GRANTED;
+		conflictingTxn = (conflict == this) ? null : conflict.txn;
+	    }
+	}
+
+	/**
+	 * Sets the description associated with a key for this transaction.
+	 * The description should not be {@code null}.  Does not replace an
+	 * existing description.
+	 */
+	synchronized void setDescription(Key key, Object description) {
+	    assert key != null;
+	    assert description != null;
+	    if (keyToDescriptionMap == null) {
+		keyToDescriptionMap = new HashMap<Key, Object>();
+	    }
+	    if (!keyToDescriptionMap.containsKey(key)) {
+		keyToDescriptionMap.put(key, description);
+	    }
+	}
+
+	/** Gets the description associated with a key, or {@code null}. */
+	synchronized Object getDescription(Key key) {
+	    return (keyToDescriptionMap == null)
+		? null : keyToDescriptionMap.get(key);
+	}
+
+	/**
+	 * Returns a string representation of this object.  This implementation
+	 * prints the associated transaction, for debugging.
+	 *
+	 * @return	a string representation of this object
+	 */
+	@Override
+	public String toString() {
+	    return txn.toString();
+	}
+
+	/* -- Implement AccessedObjectsDetail -- */
+
+	/** {@inheritDoc} */
+	public synchronized List<AccessedObject> getAccessedObjects() {
+	    return Collections.<AccessedObject>unmodifiableList(
+		new ArrayList<AccessedObject>(accesses));
+	}
+
+	/** {@inheritDoc} */
+	public synchronized ConflictType getConflictType() {
+	    return conflictType;
+	}
+
+	/** {@inheritDoc} */
+	public synchronized byte[] getConflictingId() {
+	    return (conflictingTxn == null) ? null : conflictingTxn.getId();
+	}
+
+	/** Implement {@code AccessedObject}. */
+	private final class AccessedObjectImpl implements AccessedObject {
+
+	    /** The key. */
+	    final Key key;
+
+	    /** Whether the access was for write. */
+	    private final boolean forWrite;
+
+	    /**
+	     * Creates an instance of this class.
+	     *
+	     * @param	key the key
+	     * @param	forWrite whether the access was for write
+	     */
+	    AccessedObjectImpl(Key key, boolean forWrite) {
+		this.key = key;
+		this.forWrite = forWrite;
+	    }
+
+	    /** {@inheritDoc} */
+	    public String getSource() {
+		return key.source;
+	    }
+
+	    /** {@inheritDoc} */
+	    public Object getObjectId() {
+		return key.objectId;
+	    }
+
+	    /** {@inheritDoc} */
+	    public AccessType getAccessType() {
+		return forWrite ? AccessType.WRITE : AccessType.READ;
+	    }
+
+	    /** {@inheritDoc} */
+	    public Object getDescription() {
+		return TxnInfo.this.getDescription(key);
+	    }
+
+	    /** Print fields, for debugging. */
+	    @Override
+	    public String toString() {
+		return "AccessedObjectImpl[" + txn + ", " + key + ", " +
+		    (forWrite ? "WRITE" : "READ") + "]";
+	    }
+	}
+    }
+
+    /** Represents an object as identified by a source and an object ID. */
+    private static final class Key {
+
+	/** The source. */
+	final String source;
+
+	/** The object ID. */
+	final Object objectId;
+
+	/**
+	 * Creates an instance of this class.
+	 *
+	 * @param	source the source of the object
+	 * @param	objectId the object ID of the object
+	 */
+	Key(String source, Object objectId) {
+	    checkNull("source", source);
+	    checkNull("objectId", objectId);
+	    this.source = source;
+	    this.objectId = objectId;
+	}
+
+	/* -- Compare source and object ID -- */
+
+	@Override
+	public boolean equals(Object object) {
+	    if (object == this) {
+		return true;
+	    } else if (object instanceof Key) {
+		Key key = (Key) object;
+		return source.equals(key.source) &&
+		    objectId.equals(key.objectId);
+	    } else {
+		return false;
+	    }
+	}
+
+	@Override
+	public int hashCode() {
+	    return source.hashCode() ^ objectId.hashCode();
+	}
+
+	/** Print fields, for debugging. */
+	@Override
+	public String toString() {
+	    return source + ":" + objectId;
+	}
+    }
+
+    /** Implement {@link AccessReporter}. */
+    private class AccessReporterImpl<T> extends AbstractAccessReporter<T> {
+
+	/**
+	 * Creates an instance of this class.
+	 *
+	 * @param	source the source of the objects managed by this
+	 *		reporter
+	 */
+	AccessReporterImpl(String source) {
+	    super(source);
+	}
+
+	/* -- Implement AccessReporter -- */
+
+	/** {@inheritDoc} */
+	public void reportObjectAccess(
+	    Transaction txn, T objectId, AccessType type, Object description)
+	{
+	    checkNull("type", type);
+	    TxnInfo info = getTxnInfo(txn);
+	    if (type == AccessType.WRITE && txn.isReadOnly()) {
+		throw new IllegalStateException(
+		    "Write access not permitted in read-only transaction:" +
+		    " txn:" + txn + ", source:" + source +
+		    ", objectId:" + objectId);
+	    }
+	    Key key = new Key(source, objectId);
+	    if (description != null) {
+		info.setDescription(key, description);
+	    }
+	    TxnInfo conflict = info.access(key, type == AccessType.WRITE);
+	    if (conflict != null) {
+		info.setConflict(conflict);
+		String descriptionMsg = "";
+		if (description != null) {
+		    try {
+			descriptionMsg = ", description:" + description;
+		    } catch (RuntimeException e) {
+		    }
+		}
+		TransactionConflictException exception =
+		    new TransactionConflictException(
+			"Access txn:" + txn +
+			", type:" + type +
+			", source:" + source +
+			", objectId:" + objectId +
+			descriptionMsg +
+			" failed: " + conflictMessage(info, conflict));
+		txn.abort(exception);
+		throw exception;
+	    }
+	}
+
+	/** {@inheritDoc} */
+	public void setObjectDescription(
+	    Transaction txn, T objectId, Object description)
+	{
+	    TxnInfo info = getTxnInfo(txn);
+	    if (description == null) {
+		checkNull("objectId", objectId);
+	    } else {
+		info.setDescription(new Key(source, objectId), description);
+	    }
+	}
+    }
+
+    /** Returns a message describing a conflict. */
+    private static String conflictMessage(TxnInfo info, TxnInfo conflict) {
+	return (conflict == info)
+	    ? "Object changed by a committed transaction"
+	    : ("Object reserved by committing transaction " + conflict.txn);
+    }
+
+    /**
+     * A transaction listener that validates the transaction before it is
+     * prepared, and calls {@link #endTransaction} when called after the
+     * transaction completes.  Use a listener instead of a transaction
+     * participant to make sure that reservations are released only after all
+     * of the transaction participants have finished their work.
+     */
+    private class TxnListener implements TransactionListener {
+
+	/** The transaction. */
+	private final Transaction txn;
+
+	/**
+	 * Creates an instance of this class.
+	 *
+	 * @param	txn the transaction we're listening for
+	 */
+	TxnListener(Transaction txn) {
+	    this.txn = txn;
+	}
+
+	/**
+	 * {@inheritDoc} <p>
+	 *
+	 * This implementation validates the transaction, throwing {@link
+	 * TransactionConflictException} if validation fails.
+	 */
+	public void beforeCompletion() {
+	    TxnInfo info = getTxnInfo(txn);
+	    TxnInfo conflict = info.validate();
+	    if (conflict != null) {
+		info.setConflict(conflict);
+		String msg = "Validation failed for txn:" + txn + ": " +
+		    conflictMessage(info, conflict);
+		logger.log(FINER, msg);
+		throw new TransactionConflictException(msg);
+	    }
+	}
+
+	/**
+	 * {@inheritDoc} <p>
+	 *
+	 * This implementation calls {@link #endTransaction}.
+	 */
+	public void afterCompletion(boolean committed) {
+	    endTransaction(txn, committed);
+	}
+
+        /** {@inheritDoc} */
+        public String getTypeName() {
+            return TxnListener.class.getName();
+        }
+    }
+}
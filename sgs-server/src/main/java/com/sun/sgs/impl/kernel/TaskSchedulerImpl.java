@@ -28,6 +28,7 @@ import com.sun.sgs.auth.Identity;
 import com.sun.sgs.impl.profile.ProfileCollectorHandle;
 import com.sun.sgs.impl.sharedutil.LoggerWrapper;
 import com.sun.sgs.impl.util.NamedThreadFactory;
+import com.sun.sgs.impl.util.RunLimiter;
 
 import com.sun.sgs.kernel.KernelRunnable;
 import com.sun.sgs.kernel.TaskQueue;
@@ -68,6 +69,15 @@ import java.util.logging.Logger;
  *
  * <dd style="padding-top: .5em">The number of initial threads used to process
  *      non-transactional tasks.<p>
+ *
+ * <dt> <i>Property:</i> <code><b>{@value #RUNNING_THREADS_PROPERTY}
+ *	</b></code> <br>
+ *	<i>Default:</i> <code>{@value #DEFAULT_RUNNING_THREADS}</code>
+ *
+ * <dd style="padding-top: .5em">The maximum number of threads that may run
+ *      non-transactional tasks at the same time, or {@code 0} for no limit.
+ *      A task that blocks waiting for a transactional task to complete gives
+ *      up its turn to run while it waits.<p>
  * </dl>
  * FIXME: the profiling code needs a way to learn about the thread count
  * from this scheduler separately from the transaction pool. When this gets
@@ -92,9 +102,25 @@ final class TaskSchedulerImpl implements TaskScheduler {
      */
     public static final String DEFAULT_CONSUMER_THREADS = "4";
 
+    /**
+     * The property used to define the maximum number of threads that may
+     * run tasks at the same time.
+     */
+    public static final String RUNNING_THREADS_PROPERTY =
+        "com.sun.sgs.impl.kernel.task.running.threads";
+
+    /**
+     * The default maximum number of running threads, which means no limit.
+     */
+    public static final String DEFAULT_RUNNING_THREADS = "0";
+
     // the executor used to run tasks
     private final ScheduledExecutorService executor;
 
+    // the limit on the number of running threads, or null if there is no
+    // limit
+    private final RunLimiter runLimiter;
+
     // the collector handle used for profiling data
     private final ProfileCollectorHandle profileCollectorHandle;
 
@@ -133,6 +159,16 @@ final class TaskSchedulerImpl implements TaskScheduler {
         int requestedThreads =
             Integer.parseInt(properties.getProperty(CONSUMER_THREADS_PROPERTY,
                                                     DEFAULT_CONSUMER_THREADS));
+        int runningThreads =
+            Integer.parseInt(properties.getProperty(RUNNING_THREADS_PROPERTY,
+                                                    DEFAULT_RUNNING_THREADS));
+        if (runningThreads < 0) {
+            throw new IllegalArgumentException(
+                "The " + RUNNING_THREADS_PROPERTY + " property must not be " +
+                "negative: " + runningThreads);
+        }
+        this.runLimiter =
+            (runningThreads == 0) ? null : new RunLimiter(runningThreads);
 
         // NOTE: this is replicating previous behavior where there is a
         // fixed-size pool for running tasks, but in practice we may
@@ -143,7 +179,8 @@ final class TaskSchedulerImpl implements TaskScheduler {
 
         logger.log(Level.CONFIG,
                    "Created TaskSchedulerImpl with properties:" +
-                   "\n  " + CONSUMER_THREADS_PROPERTY + "=" + requestedThreads);
+                   "\n  " + CONSUMER_THREADS_PROPERTY + "=" + requestedThreads +
+                   "\n  " + RUNNING_THREADS_PROPERTY + "=" + runningThreads);
     }
 
     /**
@@ -411,6 +448,19 @@ final class TaskSchedulerImpl implements TaskScheduler {
         }
         /** {@inheritDoc} */
         public void run() {
+            if (runLimiter == null) {
+                runTask();
+                return;
+            }
+            runLimiter.enter();
+            try {
+                runTask();
+            } finally {
+                runLimiter.exit();
+            }
+        }
+        /** Runs the task, notifying the profiler and the task's queue. */
+        private void runTask() {
             logger.log(Level.FINE, "Running a non-transactional task");
 
             int queueSize = (taskDetail.isRecurring() ? waitingSize.get() :
@@ -37,10 +37,12 @@ import com.sun.sgs.impl.sharedutil.LoggerWrapper;
 import com.sun.sgs.impl.sharedutil.PropertiesWrapper;
 
 import com.sun.sgs.impl.util.NamedThreadFactory;
+import com.sun.sgs.impl.util.RunLimiter;
 
 import com.sun.sgs.kernel.KernelRunnable;
 import com.sun.sgs.kernel.Priority;
 import com.sun.sgs.kernel.PriorityScheduler;
+import com.sun.sgs.kernel.ReadOnlyKernelRunnable;
 import com.sun.sgs.kernel.RecurringTaskHandle;
 import com.sun.sgs.kernel.TaskQueue;
 import com.sun.sgs.kernel.TaskReservation;
@@ -80,6 +82,22 @@ import java.util.logging.Logger;
  *
  * <dd style="padding-top: .5em">The number of initial threads used to process
  *      transactional tasks.<p>
+ *
+ * <dt> <i>Property:</i> <code><b>{@value #RUNNING_THREADS_PROPERTY}
+ *	</b></code> <br>
+ *	<i>Default:</i> <code>{@value #DEFAULT_RUNNING_THREADS}</code>
+ *
+ * <dd style="padding-top: .5em">The maximum number of consumer threads that
+ *      may run transactional tasks at the same time, or {@code 0} for no
+ *      limit.  If this value is smaller than the number of consumer threads,
+ *      then a task that blocks waiting for a lock, for a reply from the data
+ *      store server, or for a task passed to {@link #runTask runTask}, gives
+ *      up its turn to run while it waits, so that another consumer thread can
+ *      run a task in the meantime.  Tasks are not moved between threads, so
+ *      per-thread state remains correct.  Setting the number of consumer
+ *      threads well above this value lets the scheduler make progress on many
+ *      tasks that spend much of their time blocked without running more tasks
+ *      at once than the machine can support.<p>
  * 
  * <dt> <i>Property:</i> <code><b>{@value #SCHEDULER_QUEUE_PROPERTY}
  *	</b></code> <br>
@@ -152,6 +170,19 @@ final class TransactionSchedulerImpl
      */
     public static final String DEFAULT_CONSUMER_THREADS = "4";
 
+    /**
+     * The property used to define the maximum number of consumer threads
+     * that may run tasks at the same time.
+     */
+    public static final String RUNNING_THREADS_PROPERTY =
+        "com.sun.sgs.impl.kernel.transaction.running.threads";
+
+    /**
+     * The default maximum number of running consumer threads, which means
+     * no limit.
+     */
+    public static final String DEFAULT_RUNNING_THREADS = "0";
+
     // the default priority for tasks
     private static final Priority defaultPriority =
         Priority.getDefaultPriority();
@@ -180,6 +211,10 @@ final class TransactionSchedulerImpl
     // the number of requested consumer threads
     private final int requestedThreads;
 
+    // the limit on the number of running consumer threads, or null if
+    // there is no limit
+    private final RunLimiter runLimiter;
+
     // flag to note that this scheduler has shutdown
     private volatile boolean isShutdown = false;
 
@@ -247,6 +282,16 @@ final class TransactionSchedulerImpl
         this.requestedThreads =
             Integer.parseInt(properties.getProperty(CONSUMER_THREADS_PROPERTY,
                                                     DEFAULT_CONSUMER_THREADS));
+        int runningThreads =
+            Integer.parseInt(properties.getProperty(RUNNING_THREADS_PROPERTY,
+                                                    DEFAULT_RUNNING_THREADS));
+        if (runningThreads < 0) {
+            throw new IllegalArgumentException(
+                "The " + RUNNING_THREADS_PROPERTY + " property must not be " +
+                "negative: " + runningThreads);
+        }
+        this.runLimiter =
+            (runningThreads == 0) ? null : new RunLimiter(runningThreads);
         this.executor = Executors.newCachedThreadPool(
                 new NamedThreadFactory("TransactionScheduler"));
         for (int i = 0; i < requestedThreads; i++) {
@@ -263,7 +308,8 @@ final class TransactionSchedulerImpl
                    retryPolicy.getClass().getName() +
                    "\n  " + SCHEDULER_QUEUE_PROPERTY + "=" +
                    backingQueue.getClass().getName() +
-                   "\n  " + CONSUMER_THREADS_PROPERTY + "=" + requestedThreads);
+                   "\n  " + CONSUMER_THREADS_PROPERTY + "=" + requestedThreads +
+                   "\n  " + RUNNING_THREADS_PROPERTY + "=" + runningThreads);
     }
 
     /**
@@ -346,6 +392,13 @@ final class TransactionSchedulerImpl
         return new TaskQueueImpl();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public int getReadyCount() {
+        return backingQueue.getReadyCount();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -446,7 +499,7 @@ final class TransactionSchedulerImpl
             // wait for the task to complete...at this point it may have
             // already completed, or else it is being re-tried in a
             // scheduler thread
-            t = task.get();
+            t = getResult(task);
         } catch (InterruptedException ie) {
             // we were interrupted, so try to cancel the task, re-throwing
             // the interruption if that succeeds or looking at the result
@@ -458,7 +511,7 @@ final class TransactionSchedulerImpl
             if (task.isCancelled()) {
                 throw ie;
             }
-            t = task.get();
+            t = getResult(task);
         }
 
         // if the result of the task was a permananent failure, then
@@ -533,6 +586,21 @@ final class TransactionSchedulerImpl
         }
     }
 
+    /**
+     * Private method that waits for the result of a task, allowing another
+     * thread to run while the current thread is blocked.
+     */
+    private static Throwable getResult(ScheduledTaskImpl task)
+        throws InterruptedException
+    {
+        RunLimiter limiter = RunLimiter.beginBlocking();
+        try {
+            return task.get();
+        } finally {
+            RunLimiter.endBlocking(limiter);
+        }
+    }
+
     /**
      * Private {@code Runnable} used to consume tasks as they become available
      * from the {@code SchedulerQueue}. Once started, it will continue
@@ -551,8 +619,9 @@ final class TransactionSchedulerImpl
                     ScheduledTaskImpl task =
                         (ScheduledTaskImpl) (backingQueue.getNextTask(true));
 
-                    // run the task, checking if it completed
-                    if (executeTask(task, true)) {
+                    // wait for a turn to run, if running is limited, and
+                    // then run the task, checking if it completed
+                    if (runLimitedTask(task)) {
                         // if it's a recurring task, schedule the next run
                         if (task.isRecurring()) {
                             long nextStart =
@@ -583,6 +652,25 @@ final class TransactionSchedulerImpl
         }
     }
 
+    /**
+     * Private method that executes a task from a consumer thread, first
+     * waiting for a turn to run if the number of running consumer threads
+     * is limited.
+     */
+    private boolean runLimitedTask(ScheduledTaskImpl task)
+        throws InterruptedException
+    {
+        if (runLimiter == null) {
+            return executeTask(task, true);
+        }
+        runLimiter.enter();
+        try {
+            return executeTask(task, true);
+        } finally {
+            runLimiter.exit();
+        }
+    }
+
     /**
      * Private method that executes a single task, creating the transaction
      * state and handling re-try as appropriate. If the thread calling this
@@ -634,7 +722,8 @@ final class TransactionSchedulerImpl
                     // setup the transaction state
                     TransactionHandle handle = 
                             transactionCoordinator.createTransaction(
-                            task.getTimeout());
+                            task.getTimeout(),
+                            task.getTask() instanceof ReadOnlyKernelRunnable);
                     transaction = handle.getTransaction();
                     ContextResolver.setCurrentTransaction(transaction);
                     
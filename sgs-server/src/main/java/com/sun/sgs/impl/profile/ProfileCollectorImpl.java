@@ -132,6 +132,14 @@ public final class ProfileCollectorImpl implements ProfileCollector {
             }
         };
 
+    // thread-local pool of reports, reused once they have been reported
+    private final ThreadLocal<ProfileReportImpl.Pool> reportPools =
+        new ThreadLocal<ProfileReportImpl.Pool>() {
+            protected ProfileReportImpl.Pool initialValue() {
+                return new ProfileReportImpl.Pool();
+            }
+        };
+
     // the incoming report queue
     private LinkedBlockingQueue<ProfileReportImpl> queue;
 
@@ -448,7 +456,7 @@ public final class ProfileCollectorImpl implements ProfileCollector {
         if (owner == null) {
             throw new NullPointerException("Owner cannot be null");
         }
-        profileReports.get().push(new ProfileReportImpl(task, owner,
+        profileReports.get().push(reportPools.get().get(task, owner,
                                                         scheduledStartTime,
                                                         readyCount));
     }
@@ -592,15 +600,8 @@ public final class ProfileCollectorImpl implements ProfileCollector {
             profileReports.get().peek().merge(profileReport);
         }
 
-        // Note that we're done modifying this report
-        profileReport.finish();
-        
-        // queue up the report to be reported to our listeners
-        if (!queue.offer(profileReport)) {
-            logger.log(Level.FINE, "ProfileCollector queue is full");
-        }
-        
-        // Update the task aggregate data 
+        // Update the task aggregate data before queueing the report,
+        // since the report is reused once it has been reported
         boolean trans = profileReport.wasTaskTransactional();
         if (successful) {
             long lagtime = profileReport.actualStartTime -
@@ -610,6 +611,12 @@ public final class ProfileCollectorImpl implements ProfileCollector {
         } else {
             taskStats.taskFinishedFail(trans, profileReport.readyCount);
         }
+
+        // queue up the report to be reported to our listeners
+        if (!queue.offer(profileReport)) {
+            logger.log(Level.FINE, "ProfileCollector queue is full");
+            profileReport.release();
+        }
     }
 
     /**
@@ -684,6 +691,7 @@ public final class ProfileCollectorImpl implements ProfileCollector {
                             }
                         }
                     }
+                    profileReport.release();
                 }
             } catch (InterruptedException ie) { }
         }
@@ -21,6 +21,8 @@
 
 package com.sun.sgs.impl.profile;
 
+import com.sun.sgs.impl.profile.util.SampleBuffer;
+import com.sun.sgs.impl.profile.util.StripedCounter;
 import com.sun.sgs.profile.AggregateProfileCounter;
 import com.sun.sgs.profile.AggregateProfileOperation;
 import com.sun.sgs.profile.AggregateProfileSample;
@@ -37,10 +39,7 @@ import java.util.Collection;
 import java.util.EmptyStackException;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 
@@ -56,6 +55,9 @@ class ProfileConsumerImpl implements ProfileConsumer {
      * the exponential weighted average of the samples.
      */
     public static final double DEFAULT_SAMPLE_AGGREGATE_SMOOTHING = 0.7;
+
+    /** The bits of the average of an aggregate sample with no samples. */
+    private static final long NO_AVERAGE = Double.doubleToLongBits(Double.NaN);
     
     // the fullName of the consumer
     private final String name;
@@ -355,7 +357,7 @@ class ProfileConsumerImpl implements ProfileConsumer {
             extends AbstractProfileData
             implements AggregateProfileOperation 
     {
-        private final AtomicLong count = new AtomicLong();
+        private final StripedCounter count = new StripedCounter();
         AggregateProfileOperationImpl(String opName, ProfileDataType type,
                                       ProfileLevel minLevel) {
             super(opName, type, minLevel);
@@ -363,7 +365,7 @@ class ProfileConsumerImpl implements ProfileConsumer {
 
         /** {@inheritDoc} */
         public void clearCount() {
-            count.set(0);
+            count.clear();
         }
 
         /** {@inheritDoc} */
@@ -378,7 +380,7 @@ class ProfileConsumerImpl implements ProfileConsumer {
             if (minLevel.ordinal() > profileLevel.ordinal()) {
                 return;
             }
-            count.incrementAndGet();
+            count.increment();
         }
     }
     
@@ -449,7 +451,7 @@ class ProfileConsumerImpl implements ProfileConsumer {
             extends AbstractProfileData 
             implements AggregateProfileCounter
     {
-        private final AtomicLong count = new AtomicLong();
+        private final StripedCounter count = new StripedCounter();
         AggregateProfileCounterImpl(String name, ProfileDataType type,
                                     ProfileLevel minLevel) {
             super(name, type, minLevel);
@@ -461,7 +463,7 @@ class ProfileConsumerImpl implements ProfileConsumer {
             if (minLevel.ordinal() > profileLevel.ordinal()) {
                 return;
             }
-            count.incrementAndGet();
+            count.increment();
         }
         /** {@inheritDoc} */
         public void incrementCount(long value) {
@@ -475,12 +477,12 @@ class ProfileConsumerImpl implements ProfileConsumer {
                 throw new IllegalArgumentException("Increment value must be " +
                                                    "non-negative");
             }
-            count.addAndGet(value);
+            count.add(value);
         }
 
         /** {@inheritDoc} */
         public void clearCount() {
-            count.set(0);
+            count.clear();
         }
 
         /** {@inheritDoc} */
@@ -578,27 +580,33 @@ class ProfileConsumerImpl implements ProfileConsumer {
     }
 
     /**
-     * Aggregating profile sample.
+     * Aggregating profile sample.  Samples are held in a lock-free buffer,
+     * and the statistics are updated with compare-and-set loops, so that
+     * threads adding samples do not block each other.
      */
     private class AggregateProfileSampleImpl
             extends AbstractProfileData 
             implements AggregateProfileSample
     {
-        private final Queue<Long> samples =
-                new ConcurrentLinkedQueue<Long>();
-        private final AtomicInteger roughSize = new AtomicInteger();
-	private volatile int capacity = DEFAULT_SAMPLE_AGGREGATE_CAPACITY;   
+        // the held samples, or null if the capacity is zero
+        private volatile SampleBuffer samples = null;
         private volatile double smoothingFactor = 
                         DEFAULT_SAMPLE_AGGREGATE_SMOOTHING;
-        private long minSampleValue = Long.MAX_VALUE;
-        private long maxSampleValue = Long.MIN_VALUE;
-        private final ExponentialAverage avgSampleValue = 
-                new ExponentialAverage();
+        private final AtomicLong minSampleValue = 
+                new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong maxSampleValue = 
+                new AtomicLong(Long.MIN_VALUE);
+        // the bits of the average as a double, or of NaN if there is no
+        // average yet
+        private final AtomicLong avgSampleBits = new AtomicLong(NO_AVERAGE);
         
 	AggregateProfileSampleImpl(String name, ProfileDataType type,
                                    ProfileLevel minLevel) 
         {
             super(name, type, minLevel);
+            if (DEFAULT_SAMPLE_AGGREGATE_CAPACITY > 0) {
+                samples = new SampleBuffer(DEFAULT_SAMPLE_AGGREGATE_CAPACITY);
+            }
         }
 
         public void addSample(long value) {
@@ -608,74 +616,104 @@ class ProfileConsumerImpl implements ProfileConsumer {
                 return;
             }
             
-            if (capacity > 0) {
-                if (samples.size() >= capacity) {
-                    samples.remove(); // remove oldest
-                } else {
-                    roughSize.incrementAndGet();
-                }
-                samples.add(value);
+            SampleBuffer buffer = samples;
+            if (buffer != null) {
+                buffer.add(value);
             }
             
-            synchronized (this) {
-                // Update the statistics
-                if (value > maxSampleValue) {
-                    maxSampleValue = value;
-                } 
-                if (value < minSampleValue) {
-                    minSampleValue = value;
+            // Update the statistics
+            long max = maxSampleValue.get();
+            while (value > max && !maxSampleValue.compareAndSet(max, value)) {
+                max = maxSampleValue.get();
+            }
+            long min = minSampleValue.get();
+            while (value < min && !minSampleValue.compareAndSet(min, value)) {
+                min = minSampleValue.get();
+            }
+            updateAverage(value);
+        }
+
+        /**
+         * Updates the exponential average with a new sample.  The current
+         * average is computed as:
+         *   (current sample - last avg) * smoothingFactor + last avg
+         */
+        private void updateAverage(long sample) {
+            while (true) {
+                long lastBits = avgSampleBits.get();
+                double last = Double.longBitsToDouble(lastBits);
+                double avg = Double.isNaN(last) ? sample
+                    : (sample - last) * smoothingFactor + last;
+                if (avgSampleBits.compareAndSet(
+                        lastBits, Double.doubleToLongBits(avg)))
+                {
+                    return;
                 }
-            
-                avgSampleValue.update(value);
             }
         }
         
         /** {@inheritDoc} */
-         public synchronized List<Long> getSamples() {
-             return new LinkedList<Long>(samples);
+         public List<Long> getSamples() {
+             SampleBuffer buffer = samples;
+             return (buffer == null) ? new LinkedList<Long>()
+                 : buffer.getSamples();
          }
          
          /** {@inheritDoc} */
          public int getNumSamples() {
-             return roughSize.intValue();
+             SampleBuffer buffer = samples;
+             return (buffer == null) ? 0 : buffer.size();
          }
          
          /** {@inheritDoc} */
          public synchronized void clearSamples() {
-             samples.clear();
-             roughSize.set(0);
-             avgSampleValue.clear();
-             maxSampleValue = Long.MIN_VALUE;
-             minSampleValue = Long.MAX_VALUE;
+             int capacity = getCapacity();
+             samples = (capacity == 0) ? null : new SampleBuffer(capacity);
+             avgSampleBits.set(NO_AVERAGE);
+             maxSampleValue.set(Long.MIN_VALUE);
+             minSampleValue.set(Long.MAX_VALUE);
          }
 
         /** {@inheritDoc} */
         public double getAverage() {
-            return avgSampleValue.avg;
+            double avg = Double.longBitsToDouble(avgSampleBits.get());
+            return Double.isNaN(avg) ? 0 : avg;
         }
 
         /** {@inheritDoc} */
-        public synchronized long getMaxSample() {
-            return maxSampleValue;
+        public long getMaxSample() {
+            return maxSampleValue.get();
         }
 
         /** {@inheritDoc} */
-        public synchronized long getMinSample() {
-            return minSampleValue;
+        public long getMinSample() {
+            return minSampleValue.get();
         }
         
         /** {@inheritDoc} */
         public int getCapacity() { 
-            return capacity; 
+            SampleBuffer buffer = samples;
+            return (buffer == null) ? 0 : buffer.getCapacity();
         }
         
         /** {@inheritDoc} */
-        public void setCapacity(int capacity) {
+        public synchronized void setCapacity(int capacity) {
             if (capacity < 0) {
                 throw new IllegalArgumentException(
                                         "capacity must not be negative");
             }
-            this.capacity = capacity; 
+            if (capacity == getCapacity()) {
+                return;
+            } else if (capacity == 0) {
+                samples = null;
+                return;
+            }
+            // copy the held samples, keeping the newest ones that fit
+            SampleBuffer buffer = new SampleBuffer(capacity);
+            for (long value : getSamples()) {
+                buffer.add(value);
+            }
+            samples = buffer;
         }
         
         /** {@inheritDoc} */
@@ -692,41 +730,6 @@ class ProfileConsumerImpl implements ProfileConsumer {
         public double getSmoothingFactor() {
             return smoothingFactor;
         }
-        
-        private class ExponentialAverage {
-            private boolean first = true;
-            private double last;
-            double avg;
-
-            void update(long sample) {
-                // calculate the exponential smoothed data:
-                // current avg = 
-                //   (smoothingFactor * current sample) 
-                // + ((1 - smoothingFactor) * last avg)
-                // This is the same as:
-                // current avg =
-                //    (smoothingFactor * current sample)
-                //  + (last avg)
-                //  - (smoothingFactor * last avg)
-                // Which simplifies to:
-                // current avg =
-                //   (current sample - lastAvg) * smoothingFactor + lastAvg
-
-                if (first) {
-                    avg = sample;
-                    first = false;
-                } else {
-                    avg = (sample - last) * smoothingFactor + last;
-                }
-                last = avg;
-            }
-            
-            void clear() {
-                first = true;
-                last = 0;
-                avg = 0;
-            }
-        }
     }
     
     /**
@@ -38,9 +38,13 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Package-private implementation of <code>ProfileReport</code>.
+ * Package-private implementation of <code>ProfileReport</code>.  Reports
+ * obtained from a {@link Pool} are reused once they have been delivered to
+ * all listeners, so that profiling each task does not allocate a new report
+ * and new collections.
  */
 class ProfileReportImpl implements ProfileReport {
 
@@ -63,12 +67,18 @@ class ProfileReportImpl implements ProfileReport {
     private static final Map<String, List<Long>> EMPTY_SAMPLE_MAP = 
 	Collections.unmodifiableMap(new HashMap<String, List<Long>>());
 
-    // the final fields, set by the constructor
-    final KernelRunnable task;
-    final Identity owner;
-    final long scheduledStartTime;
-    final int readyCount;
-    final long actualStartTime;
+    // the pool this report is returned to when released, or null
+    private final Pool pool;
+
+    // the next report in the pool's list of free reports
+    private ProfileReportImpl nextFree = null;
+
+    // the task fields, set by the constructor or when the report is reused
+    KernelRunnable task;
+    Identity owner;
+    long scheduledStartTime;
+    int readyCount;
+    long actualStartTime;
 
     // the other fields, set directly by the ProfileCollectorImpl
     byte [] transactionId = null;
@@ -78,18 +88,31 @@ class ProfileReportImpl implements ProfileReport {
     Throwable throwable = null;
     private AccessedObjectsDetail accessedObjectsDetail = null;
 
-    private Set<ProfileParticipantDetail> participants;
-    private Set<TransactionListenerDetail> txnListeners;
+    private final Set<ProfileParticipantDetail> participants =
+        new HashSet<ProfileParticipantDetail>();
+    private final Set<TransactionListenerDetail> txnListeners =
+        new HashSet<TransactionListenerDetail>();
 
-    // counters that are updated through methods on this class
-    private Map<String, Long> taskCounters;
+    // unmodifiable views of the sets, for returning to listeners
+    private final Set<ProfileParticipantDetail> participantsView =
+        Collections.unmodifiableSet(participants);
+    private final Set<TransactionListenerDetail> txnListenersView =
+        Collections.unmodifiableSet(txnListeners);
+
+    // counters that are updated through methods on this class, and a view
+    // of them, created when first needed and cleared when reused
+    private Map<String, Long> taskCounters = null;
+    private Map<String, Long> taskCountersView = null;
 
     // a list of operations performed, which is updated through
-    // methods on this class
-    private List<String> ops;
+    // methods on this class, and a view of it
+    private List<String> ops = null;
+    private List<String> opsView = null;
 
-    // samples that are added through methods on this class
-    private Map<String, List<Long>> taskSamples;
+    // samples that are added through methods on this class, and a view
+    // of them
+    private Map<String, List<Long>> taskSamples = null;
+    private Map<String, List<Long>> taskSamplesView = null;
 
     /**
      * Creates an instance of <code>ProfileReportImpl</code> with the
@@ -103,6 +126,23 @@ class ProfileReportImpl implements ProfileReport {
      */
     ProfileReportImpl(KernelRunnable task, Identity owner,
                       long scheduledStartTime, int readyCount)
+    {
+        this(null);
+        init(task, owner, scheduledStartTime, readyCount);
+    }
+
+    /** Creates an uninitialized report that belongs to a pool. */
+    private ProfileReportImpl(Pool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Initializes this report for a new task, clearing any state left from
+     * a previous use, with the actual starting time being set to the
+     * current time.
+     */
+    private void init(KernelRunnable task, Identity owner,
+                      long scheduledStartTime, int readyCount)
     {
         this.task = task;
         this.owner = owner;
@@ -110,12 +150,64 @@ class ProfileReportImpl implements ProfileReport {
         this.readyCount = readyCount;
         this.actualStartTime = System.currentTimeMillis();
 
-	participants = new HashSet<ProfileParticipantDetail>();
-        txnListeners = new HashSet<TransactionListenerDetail>();
+        transactionId = null;
+        succeeded = false;
+        runningTime = 0;
+        tryCount = 0;
+        throwable = null;
+        accessedObjectsDetail = null;
 
-	taskCounters = null;
-        ops = null;
-	taskSamples = null;
+        participants.clear();
+        txnListeners.clear();
+        if (taskCounters != null) {
+            taskCounters.clear();
+        }
+        if (ops != null) {
+            ops.clear();
+        }
+        if (taskSamples != null) {
+            taskSamples.clear();
+        }
+    }
+
+    /**
+     * Package-private method used to return this report to its pool, if
+     * any, once all listeners have been notified.  The report must not be
+     * used after this method is called.
+     */
+    void release() {
+        if (pool != null) {
+            // drop references the report should not keep alive
+            task = null;
+            owner = null;
+            throwable = null;
+            accessedObjectsDetail = null;
+            pool.release(this);
+        }
+    }
+
+    /** Creates the task counters map, if needed. */
+    private void ensureTaskCounters() {
+        if (taskCounters == null) {
+            taskCounters = new HashMap<String, Long>();
+            taskCountersView = Collections.unmodifiableMap(taskCounters);
+        }
+    }
+
+    /** Creates the task samples map, if needed. */
+    private void ensureTaskSamples() {
+        if (taskSamples == null) {
+            taskSamples = new HashMap<String, List<Long>>();
+            taskSamplesView = Collections.unmodifiableMap(taskSamples);
+        }
+    }
+
+    /** Creates the operations list, if needed. */
+    private void ensureOps() {
+        if (ops == null) {
+            ops = new ArrayList<String>();
+            opsView = Collections.unmodifiableList(ops);
+        }
     }
 
     /**
@@ -128,15 +220,11 @@ class ProfileReportImpl implements ProfileReport {
      * @param value the amount to increment the counter
      */
     void incrementTaskCounter(String counter, long value) {
-        long currentValue = 0;
-        if (taskCounters == null) {
-            taskCounters = new HashMap<String, Long>();
-        } else {
-            if (taskCounters.containsKey(counter)) {
-                currentValue = taskCounters.get(counter);
-            }
-        }
-        taskCounters.put(counter, currentValue + value);
+        ensureTaskCounters();
+        Long currentValue = taskCounters.get(counter);
+        taskCounters.put(counter,
+                         (currentValue == null) ? value
+                         : currentValue + value);
     }
 
     /**
@@ -148,18 +236,11 @@ class ProfileReportImpl implements ProfileReport {
      * @param value the latest value for the sample
      */
     void addTaskSample(String sampleName, long value) {
-	List<Long> samples;
-        if (taskSamples == null) {
-            taskSamples = new HashMap<String, List<Long>>();
-	    samples = new LinkedList<Long>();
-	    taskSamples.put(sampleName, samples);
-        } else {
-            if (taskSamples.containsKey(sampleName)) {
-		samples = taskSamples.get(sampleName);
-            } else {
-		samples = new LinkedList<Long>();
-		taskSamples.put(sampleName, samples);		
-	    }
+        ensureTaskSamples();
+	List<Long> samples = taskSamples.get(sampleName);
+        if (samples == null) {
+            samples = new LinkedList<Long>();
+            taskSamples.put(sampleName, samples);
         }
 	samples.add(value);
     }
@@ -170,9 +251,7 @@ class ProfileReportImpl implements ProfileReport {
      * @param operationName name of the operation
      */
     void addOperation(String operationName) {
-        if (ops == null) {
-            ops = new ArrayList<String>(); 
-        }
+        ensureOps();
         ops.add(operationName);
     }
 
@@ -220,14 +299,14 @@ class ProfileReportImpl implements ProfileReport {
      * {@inheritDoc}
      */
     public Set<ProfileParticipantDetail> getParticipantDetails() {
-        return participants;
+        return participantsView;
     }
 
     /**
      * {@inheritDoc}
      */
     public Set<TransactionListenerDetail> getListenerDetails() {
-        return txnListeners;
+        return txnListenersView;
     }
 
     /**
@@ -269,21 +348,23 @@ class ProfileReportImpl implements ProfileReport {
      * {@inheritDoc}
      */
     public List<String> getReportedOperations() {
-        return (ops == null) ? EMPTY_OPS : ops;
+        return (ops == null || ops.isEmpty()) ? EMPTY_OPS : opsView;
     }
 
     /**
      * {@inheritDoc}
      */
     public Map<String, Long> getUpdatedTaskCounters() {
-        return (taskCounters == null) ? EMPTY_COUNTER_MAP : taskCounters;
+        return (taskCounters == null || taskCounters.isEmpty())
+            ? EMPTY_COUNTER_MAP : taskCountersView;
     }
 
     /**
      * {@inheritDoc}
      */
     public Map<String, List<Long>> getUpdatedTaskSamples() {
-	return (taskSamples == null) ? EMPTY_SAMPLE_MAP : taskSamples;
+	return (taskSamples == null || taskSamples.isEmpty())
+            ? EMPTY_SAMPLE_MAP : taskSamplesView;
     }
 
     /**
@@ -318,54 +399,36 @@ class ProfileReportImpl implements ProfileReport {
 	// check whether the task recorded any data.  If so, then we
 	// copy the data to this report.      
 
-	if (report.taskCounters != null) {
-	    if (taskCounters == null) {
-		taskCounters = new HashMap<String, Long>(report.taskCounters);
-	    } else {
-		for (Map.Entry<String, Long> e : 
-                    report.taskCounters.entrySet()) 
-                {
-		    Long curCount = taskCounters.get(e.getKey());
-		    taskCounters.put(e.getKey(),
-				     (curCount == null) 
-				     ? e.getValue()
-				     : curCount + e.getValue());
-		}
+	if (report.taskCounters != null && !report.taskCounters.isEmpty()) {
+	    ensureTaskCounters();
+	    for (Map.Entry<String, Long> e : report.taskCounters.entrySet()) {
+		Long curCount = taskCounters.get(e.getKey());
+		taskCounters.put(e.getKey(),
+				 (curCount == null) 
+				 ? e.getValue()
+				 : curCount + e.getValue());
 	    }
 	}
 
-	if (report.taskSamples != null) {
-	    if (taskSamples == null) {
-		taskSamples = new HashMap<String, List<Long>>();
-		for (Map.Entry<String, List<Long>> e : 
-			 report.taskSamples.entrySet()) 
-                {
+	if (report.taskSamples != null && !report.taskSamples.isEmpty()) {
+	    ensureTaskSamples();
+	    for (Map.Entry<String, List<Long>> e : 
+		     report.taskSamples.entrySet()) 
+	    {
+		List<Long> samples = taskSamples.get(e.getKey());
+		if (samples == null) {
 		    // make a copy of the child task's samples
-		    List<Long> samples = new LinkedList<Long>(e.getValue());
-		    taskSamples.put(e.getKey(), samples);
-		}
-	    } else {
-		for (Map.Entry<String, List<Long>> e : 
-			 report.taskSamples.entrySet()) 
-                {
-		    List<Long> samples = taskSamples.get(e.getKey());
-		    if (samples == null) {
-			// make a copy of the child task's samples
-			taskSamples.put(e.getKey(),
-					 new LinkedList<Long>(e.getValue()));
-                    } else {
-			samples.addAll(e.getValue());
-                    }
+		    taskSamples.put(e.getKey(),
+				    new LinkedList<Long>(e.getValue()));
+		} else {
+		    samples.addAll(e.getValue());
 		}
 	    }
 	}
 
-	if (report.ops != null) {
-	    if (ops == null) {
-                ops = new LinkedList<String>(report.ops);
-	    } else {
-		ops.addAll(report.ops);
-	    }
+	if (report.ops != null && !report.ops.isEmpty()) {
+	    ensureOps();
+	    ops.addAll(report.ops);
 	}
 
 	// NOTE: we do not include the the participant or listener detail
@@ -374,22 +437,62 @@ class ProfileReportImpl implements ProfileReport {
     }
 
     /**
-     * Package-private method to note that a task has finished running.
-     * All collections are modified to be immutable.
+     * A per-thread pool of reports.  Only the thread that owns the pool
+     * obtains reports from it, while released reports may be returned from
+     * any thread.  Released reports are pushed onto a lock-free list, which
+     * the owning thread takes in its entirety when it runs out of free
+     * reports, so neither operation allocates or blocks.  The pool never
+     * holds more reports than the owning thread had outstanding at once.
      */
-    void finish() {
-        if (ops != null) {
-            ops = Collections.unmodifiableList(ops);
-        }
-        if (taskCounters != null) {
-            taskCounters = Collections.unmodifiableMap(taskCounters);
+    static final class Pool {
+
+        // reports released since the owner last took them
+        private final AtomicReference<ProfileReportImpl> released =
+            new AtomicReference<ProfileReportImpl>();
+
+        // free reports only accessed by the owning thread
+        private ProfileReportImpl free = null;
+
+        /**
+         * Returns a report for a new task, reusing a released report if one
+         * is available.  Must only be called by the thread that owns this
+         * pool.
+         *
+         * @param task the <code>KernelRunnable</code> being reported on
+         * @param owner the <code>Identity</code> that owns the task
+         * @param scheduledStartTime the time the task was scheduled to run
+         * @param readyCount the number of tasks in the scheduler, ready to
+         *                   run, that are associated with the same context
+         *                   as the task
+         * @return the report
+         */
+        ProfileReportImpl get(KernelRunnable task, Identity owner,
+                              long scheduledStartTime, int readyCount)
+        {
+            if (free == null) {
+                free = released.getAndSet(null);
+            }
+            ProfileReportImpl report;
+            if (free != null) {
+                report = free;
+                free = report.nextFree;
+                report.nextFree = null;
+            } else {
+                report = new ProfileReportImpl(this);
+            }
+            report.init(task, owner, scheduledStartTime, readyCount);
+            return report;
         }
-        if (taskSamples != null) {
-            taskSamples = Collections.unmodifiableMap(taskSamples);
+
+        /** Returns a report to this pool. */
+        private void release(ProfileReportImpl report) {
+            while (true) {
+                ProfileReportImpl head = released.get();
+                report.nextFree = head;
+                if (released.compareAndSet(head, report)) {
+                    return;
+                }
+            }
         }
-        
-        participants = Collections.unmodifiableSet(participants);
-        txnListeners = Collections.unmodifiableSet(txnListeners);
     }
-
 }
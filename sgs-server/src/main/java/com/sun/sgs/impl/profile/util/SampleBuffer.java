@@ -0,0 +1,129 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.impl.profile.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size buffer that holds the most recently added samples.  Adding
+ * a sample does not block or allocate, and overwrites the oldest sample once
+ * the buffer is full. <p>
+ *
+ * Samples are stored in a circular array, along with a stamp that records
+ * which sample each slot holds.  Readers use the stamps to skip slots that
+ * are being overwritten while they read, so the samples returned may omit
+ * some samples added concurrently, but will be in the order they were
+ * added.
+ */
+public final class SampleBuffer {
+
+    /** The maximum number of samples held. */
+    private final int capacity;
+
+    /** The sample values. */
+    private final AtomicLongArray values;
+
+    /**
+     * For each slot, one more than the sequence number of the sample whose
+     * value is stored in that slot, or {@code 0} if the slot is empty.
+     */
+    private final AtomicLongArray stamps;
+
+    /** The sequence number of the next sample. */
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * Creates an empty buffer.
+     *
+     * @param	capacity the maximum number of samples held
+     * @throws	IllegalArgumentException if {@code capacity} is less than
+     *		{@code 1}
+     */
+    public SampleBuffer(int capacity) {
+	if (capacity < 1) {
+	    throw new IllegalArgumentException(
+		"The capacity must not be less than 1");
+	}
+	this.capacity = capacity;
+	values = new AtomicLongArray(capacity);
+	stamps = new AtomicLongArray(capacity);
+    }
+
+    /**
+     * Adds a sample, dropping the oldest sample if the buffer is full.
+     *
+     * @param	value the sample
+     */
+    public void add(long value) {
+	long seq = next.getAndIncrement();
+	int slot = (int) (seq % capacity);
+	stamps.set(slot, 0);
+	values.set(slot, value);
+	stamps.set(slot, seq + 1);
+    }
+
+    /**
+     * Returns the maximum number of samples held.
+     *
+     * @return	the capacity
+     */
+    public int getCapacity() {
+	return capacity;
+    }
+
+    /**
+     * Returns the number of samples held.
+     *
+     * @return	the number of samples held
+     */
+    public int size() {
+	return (int) Math.min(next.get(), capacity);
+    }
+
+    /**
+     * Returns the samples held, oldest first.
+     *
+     * @return	a new list of the samples held
+     */
+    public List<Long> getSamples() {
+	long end = next.get();
+	long start = Math.max(0, end - capacity);
+	List<Long> result = new ArrayList<Long>((int) (end - start));
+	for (long seq = start; seq < end; seq++) {
+	    int slot = (int) (seq % capacity);
+	    long value = values.get(slot);
+	    if (stamps.get(slot) == seq + 1) {
+		result.add(value);
+	    }
+	}
+	return result;
+    }
+}
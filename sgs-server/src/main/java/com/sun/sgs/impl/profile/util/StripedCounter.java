@@ -0,0 +1,123 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.impl.profile.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that can be updated by many threads at once without contention.
+ * Updates are spread over a number of separate cells, chosen by the
+ * identifier of the updating thread, and the cells are summed when the count
+ * is read.  Each cell is placed on its own cache line so that threads
+ * updating different cells do not slow each other down. <p>
+ *
+ * Reading the count is more expensive than updating it, and a count read
+ * while updates are in progress may not include those updates.  Clearing the
+ * count while updates are in progress may lose some of them.  These
+ * tradeoffs are appropriate for statistics that are updated often and read
+ * rarely.
+ */
+public final class StripedCounter {
+
+    /** The number of longs between cells, to avoid false sharing. */
+    private static final int PADDING = 8;
+
+    /** The maximum number of cells. */
+    private static final int MAX_CELLS = 64;
+
+    /** The number of cells, which is a power of two. */
+    private static final int NUM_CELLS;
+    static {
+	int cells = 1;
+	int target = 2 * Runtime.getRuntime().availableProcessors();
+	while (cells < target && cells < MAX_CELLS) {
+	    cells <<= 1;
+	}
+	NUM_CELLS = cells;
+    }
+
+    /** The cells, with a cell every {@link #PADDING} elements. */
+    private final AtomicLongArray cells =
+	new AtomicLongArray(NUM_CELLS * PADDING);
+
+    /** Creates an instance of this class with a count of zero. */
+    public StripedCounter() { }
+
+    /**
+     * Adds the specified amount to the count.
+     *
+     * @param	value the amount to add
+     */
+    public void add(long value) {
+	cells.addAndGet(cellIndex(), value);
+    }
+
+    /** Adds one to the count. */
+    public void increment() {
+	cells.incrementAndGet(cellIndex());
+    }
+
+    /**
+     * Returns the current count.
+     *
+     * @return	the current count
+     */
+    public long get() {
+	long sum = 0;
+	for (int i = 0; i < cells.length(); i += PADDING) {
+	    sum += cells.get(i);
+	}
+	return sum;
+    }
+
+    /** Sets the count to zero. */
+    public void clear() {
+	for (int i = 0; i < cells.length(); i += PADDING) {
+	    cells.set(i, 0);
+	}
+    }
+
+    /**
+     * Returns a string representation of this counter.
+     *
+     * @return	a string representation of this counter
+     */
+    public String toString() {
+	return String.valueOf(get());
+    }
+
+    /** Returns the index of the cell for the current thread. */
+    private static int cellIndex() {
+	/*
+	 * Thread IDs are assigned sequentially, so threads in the same pool
+	 * usually get different cells.
+	 */
+	return ((int) Thread.currentThread().getId() & (NUM_CELLS - 1)) *
+	    PADDING;
+    }
+}
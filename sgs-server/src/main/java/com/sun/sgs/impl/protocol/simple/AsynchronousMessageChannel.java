@@ -274,7 +274,8 @@ public class AsynchronousMessageChannel implements Channel {
         Writer(CompletionHandler<Void, Void> handler, ByteBuffer src) {
             super(null, handler);
 	    int size = src.remaining();
-	    assert size < Short.MAX_VALUE;
+	    /* The size is read back as an unsigned short */
+	    assert size <= 0xffff;
 	    /* Prepend the size as a short. */
 	    /*
 	     * XXX: Maybe avoid copying by doing two writes?  -tjb@sun.com
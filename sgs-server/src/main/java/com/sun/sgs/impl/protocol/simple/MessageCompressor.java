@@ -0,0 +1,286 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.impl.protocol.simple;
+
+import java.util.Arrays;
+
+/**
+ * Compresses and decompresses message payloads using the LZ4 block
+ * format.  Each payload is compressed independently, so compressed
+ * payloads can be shared among several connections and can be dropped
+ * without affecting later ones. <p>
+ *
+ * A compressor may be created with a preset dictionary, which should
+ * contain byte sequences that are common in the payloads being compressed.
+ * Matches may refer back into the dictionary as if it preceded each
+ * payload, which allows short payloads to compress well.  The same
+ * dictionary must be used to decompress the payloads. <p>
+ *
+ * Instances of this class are immutable, and can be used by multiple
+ * threads concurrently.
+ */
+public final class MessageCompressor {
+
+    /** The maximum dictionary length, which is the maximum match offset. */
+    public static final int MAX_DICTIONARY_LENGTH = 65535;
+
+    /** The minimum match length. */
+    private static final int MIN_MATCH = 4;
+
+    /** The number of bytes at the end that must be literals. */
+    private static final int LAST_LITERALS = 5;
+
+    /** The minimum distance from the end at which a match may start. */
+    private static final int MATCH_FIND_LIMIT = 12;
+
+    /** The number of bits in a hash table index. */
+    private static final int HASH_BITS = 12;
+
+    /** An empty dictionary. */
+    private static final byte[] NO_DICTIONARY = new byte[0];
+
+    /** The dictionary. */
+    private final byte[] dictionary;
+
+    /**
+     * The hash table for the dictionary, mapping the hash of four bytes to
+     * the last position in the dictionary that they were found, or
+     * {@code -1}.
+     */
+    private final int[] dictionaryTable;
+
+    /** Creates an instance with no dictionary. */
+    public MessageCompressor() {
+	this(NO_DICTIONARY);
+    }
+
+    /**
+     * Creates an instance with the specified {@code dictionary}.  If the
+     * dictionary is longer than {@value #MAX_DICTIONARY_LENGTH} bytes,
+     * only its last {@value #MAX_DICTIONARY_LENGTH} bytes are used.
+     *
+     * @param	dictionary a preset dictionary
+     */
+    public MessageCompressor(byte[] dictionary) {
+	int length = Math.min(dictionary.length, MAX_DICTIONARY_LENGTH);
+	this.dictionary = Arrays.copyOfRange(
+	    dictionary, dictionary.length - length, dictionary.length);
+	dictionaryTable = new int[1 << HASH_BITS];
+	Arrays.fill(dictionaryTable, -1);
+	for (int i = 0; i + MIN_MATCH <= length; i++) {
+	    dictionaryTable[hash(readInt(this.dictionary, i))] = i;
+	}
+    }
+
+    /**
+     * Returns the compressed form of {@code length} bytes of {@code src}
+     * starting at {@code offset}, or {@code null} if compressing would not
+     * make the payload smaller.
+     *
+     * @param	src the source array
+     * @param	offset the offset of the payload in {@code src}
+     * @param	length the length of the payload
+     * @return	the compressed payload, or {@code null}
+     */
+    public byte[] compress(byte[] src, int offset, int length) {
+	int dictLength = dictionary.length;
+	byte[] buf = new byte[dictLength + length];
+	System.arraycopy(dictionary, 0, buf, 0, dictLength);
+	System.arraycopy(src, offset, buf, dictLength, length);
+	int[] table = dictionaryTable.clone();
+
+	/* The output is discarded as soon as it is no smaller than the input */
+	byte[] out = new byte[length];
+	int op = 0;
+	int end = buf.length;
+	int anchor = dictLength;
+	int ip = dictLength;
+	int matchLimit = end - LAST_LITERALS;
+	int findLimit = end - MATCH_FIND_LIMIT;
+	try {
+	    while (ip < findLimit) {
+		int h = hash(readInt(buf, ip));
+		int ref = table[h];
+		table[h] = ip;
+		if (ref < 0 || ip - ref > MAX_DICTIONARY_LENGTH ||
+		    readInt(buf, ref) != readInt(buf, ip))
+		{
+		    ip++;
+		    continue;
+		}
+		/* Extend the match backwards, and then forwards */
+		while (ip > anchor && ref > 0 && buf[ip - 1] == buf[ref - 1]) {
+		    ip--;
+		    ref--;
+		}
+		int matchLength = MIN_MATCH;
+		while (ip + matchLength < matchLimit &&
+		       buf[ref + matchLength] == buf[ip + matchLength])
+		{
+		    matchLength++;
+		}
+		int token = op;
+		op = writeSequence(buf, anchor, ip - anchor, out, op);
+		out[op++] = (byte) (ip - ref);
+		out[op++] = (byte) ((ip - ref) >>> 8);
+		int extra = matchLength - MIN_MATCH;
+		if (extra >= 15) {
+		    out[token] |= 0x0f;
+		    op = writeLength(extra - 15, out, op);
+		} else {
+		    out[token] |= (byte) extra;
+		}
+		ip += matchLength;
+		anchor = ip;
+		if (ip < findLimit) {
+		    table[hash(readInt(buf, ip - 2))] = ip - 2;
+		}
+	    }
+	    op = writeSequence(buf, anchor, end - anchor, out, op);
+	} catch (ArrayIndexOutOfBoundsException e) {
+	    return null;
+	}
+	return (op < length) ? Arrays.copyOf(out, op) : null;
+    }
+
+    /**
+     * Returns the payload decompressed from {@code length} bytes of {@code
+     * src} starting at {@code offset}.
+     *
+     * @param	src the source array
+     * @param	offset the offset of the compressed payload in {@code src}
+     * @param	length the length of the compressed payload
+     * @param	uncompressedLength the length of the uncompressed payload
+     * @return	the uncompressed payload
+     * @throws	IllegalArgumentException if the compressed payload is
+     *		malformed, or does not decompress to {@code
+     *		uncompressedLength} bytes
+     */
+    public byte[] decompress(
+	byte[] src, int offset, int length, int uncompressedLength)
+    {
+	int dictLength = dictionary.length;
+	byte[] buf = new byte[dictLength + uncompressedLength];
+	System.arraycopy(dictionary, 0, buf, 0, dictLength);
+	int ip = offset;
+	int end = offset + length;
+	int op = dictLength;
+	try {
+	    while (ip < end) {
+		int token = src[ip++] & 0xff;
+		int literalLength = token >>> 4;
+		if (literalLength == 15) {
+		    int b;
+		    do {
+			b = src[ip++] & 0xff;
+			literalLength += b;
+		    } while (b == 255);
+		}
+		System.arraycopy(src, ip, buf, op, literalLength);
+		ip += literalLength;
+		op += literalLength;
+		if (ip >= end) {
+		    break;
+		}
+		int matchOffset = (src[ip] & 0xff) | ((src[ip + 1] & 0xff) << 8);
+		ip += 2;
+		int matchLength = token & 0x0f;
+		if (matchLength == 15) {
+		    int b;
+		    do {
+			b = src[ip++] & 0xff;
+			matchLength += b;
+		    } while (b == 255);
+		}
+		matchLength += MIN_MATCH;
+		int ref = op - matchOffset;
+		if (matchOffset == 0 || ref < 0) {
+		    throw new IllegalArgumentException(
+			"Invalid match offset: " + matchOffset);
+		}
+		/* Copy one byte at a time, since the match may overlap */
+		for (int i = 0; i < matchLength; i++) {
+		    buf[op++] = buf[ref++];
+		}
+	    }
+	} catch (IndexOutOfBoundsException e) {
+	    throw new IllegalArgumentException(
+		"Malformed compressed payload", e);
+	}
+	if (ip != end || op != buf.length) {
+	    throw new IllegalArgumentException(
+		"Compressed payload does not have the expected length: " +
+		uncompressedLength);
+	}
+	return Arrays.copyOfRange(buf, dictLength, buf.length);
+    }
+
+    /**
+     * Writes a sequence token and the specified literals to {@code out}
+     * starting at {@code op}, and returns the position after them.  The
+     * match length in the token is left as zero.
+     */
+    private static int writeSequence(
+	byte[] buf, int start, int literalLength, byte[] out, int op)
+    {
+	int token = op++;
+	if (literalLength >= 15) {
+	    out[token] = (byte) 0xf0;
+	    op = writeLength(literalLength - 15, out, op);
+	} else {
+	    out[token] = (byte) (literalLength << 4);
+	}
+	System.arraycopy(buf, start, out, op, literalLength);
+	return op + literalLength;
+    }
+
+    /**
+     * Writes the remainder of a literal or match length that did not fit
+     * in a token to {@code out} starting at {@code op}, and returns the
+     * position after it.
+     */
+    private static int writeLength(int length, byte[] out, int op) {
+	while (length >= 255) {
+	    out[op++] = (byte) 255;
+	    length -= 255;
+	}
+	out[op++] = (byte) length;
+	return op;
+    }
+
+    /** Returns the little-endian integer at position {@code i} in {@code b}. */
+    private static int readInt(byte[] b, int i) {
+	return (b[i] & 0xff) | ((b[i + 1] & 0xff) << 8) |
+	    ((b[i + 2] & 0xff) << 16) | ((b[i + 3] & 0xff) << 24);
+    }
+
+    /** Returns the hash table index for the specified four bytes. */
+    private static int hash(int value) {
+	return (value * -1640531535) >>> (32 - HASH_BITS);
+    }
+}
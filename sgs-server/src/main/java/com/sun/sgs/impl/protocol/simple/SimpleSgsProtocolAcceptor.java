@@ -31,14 +31,22 @@ import com.sun.sgs.app.Delivery;
 import com.sun.sgs.auth.Identity;
 import com.sun.sgs.auth.IdentityCoordinator;
 import com.sun.sgs.impl.auth.NamePasswordCredentials;
+import com.sun.sgs.impl.profile.ProfileCollectorImpl;
 import com.sun.sgs.impl.sharedutil.LoggerWrapper;
 import com.sun.sgs.impl.sharedutil.PropertiesWrapper;
 import com.sun.sgs.impl.util.AbstractKernelRunnable;
 import com.sun.sgs.impl.util.AbstractService;
+import com.sun.sgs.impl.util.NamedThreadFactory;
 import com.sun.sgs.kernel.ComponentRegistry;
 import com.sun.sgs.kernel.KernelRunnable;
 import com.sun.sgs.kernel.RecurringTaskHandle;
 import com.sun.sgs.nio.channels.AsynchronousByteChannel;
+import com.sun.sgs.profile.ProfileCollector;
+import com.sun.sgs.profile.ProfileCollector.ProfileLevel;
+import com.sun.sgs.profile.ProfileConsumer;
+import com.sun.sgs.profile.ProfileConsumer.ProfileDataType;
+import com.sun.sgs.profile.ProfileCounter;
+import com.sun.sgs.profile.ProfileSample;
 import com.sun.sgs.protocol.ProtocolAcceptor;
 import com.sun.sgs.protocol.ProtocolDescriptor;
 import com.sun.sgs.protocol.ProtocolListener;
@@ -48,9 +56,20 @@ import com.sun.sgs.service.TransactionProxy;
 import com.sun.sgs.transport.ConnectionHandler;
 import com.sun.sgs.transport.Transport;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.security.auth.login.LoginException;
@@ -102,6 +121,99 @@ import javax.security.auth.login.LoginException;
  * <dd style="padding-top: .5em"> 
  *	Specifies the disconnect delay (in milliseconds) for disconnecting
  *      sessions.<p>
+ *
+ * <dt> <i>Property:</i> <code><b>
+ *	{@value #LOGIN_THREADS_PROPERTY}
+ *	</b></code><br>
+ *	<i>Default:</i> {@value #DEFAULT_LOGIN_THREADS}<br>
+ *      <i>Minimum:</i> {@code 1}<br>
+ *
+ * <dd style="padding-top: .5em"> 
+ *	Specifies the number of threads used to authenticate login
+ *	requests.  Login requests are authenticated on these threads rather
+ *	than on the thread that read the request, so that slow
+ *	authentication does not delay reads for connected clients.<p>
+ *
+ * <dt> <i>Property:</i> <code><b>
+ *	{@value #LOGIN_QUEUE_SIZE_PROPERTY}
+ *	</b></code><br>
+ *	<i>Default:</i> {@value #DEFAULT_LOGIN_QUEUE_SIZE}<br>
+ *      <i>Minimum:</i> {@code 0}<br>
+ *
+ * <dd style="padding-top: .5em"> 
+ *	Specifies the maximum number of login requests that can be waiting
+ *	for an authentication thread.  Login requests received while the
+ *	queue is full are refused.<p>
+ *
+ * <dt> <i>Property:</i> <code><b>
+ *	{@value #RELIABLE_WRITE_LIMIT_PROPERTY}
+ *	</b></code><br>
+ *	<i>Default:</i> {@value #DEFAULT_RELIABLE_WRITE_LIMIT}<br>
+ *      <i>Minimum:</i> {@value #MIN_RELIABLE_WRITE_LIMIT}<br>
+ *
+ * <dd style="padding-top: .5em"> 
+ *	Specifies the maximum number of bytes of control and reliable
+ *	messages that can be waiting to be written to a single client.  If
+ *	a client does not read its messages quickly enough to stay under
+ *	this limit, its connection is closed.<p>
+ *
+ * <dt> <i>Property:</i> <code><b>
+ *	{@value #UNRELIABLE_WRITE_LIMIT_PROPERTY}
+ *	</b></code><br>
+ *	<i>Default:</i> {@value #DEFAULT_UNRELIABLE_WRITE_LIMIT}<br>
+ *      <i>Minimum:</i> {@code 0}<br>
+ *
+ * <dd style="padding-top: .5em"> 
+ *	Specifies the maximum number of bytes of unreliable messages that
+ *	can be waiting to be written to a single client.  Unreliable
+ *	messages are only written when no reliable messages are waiting.
+ *	When this limit is exceeded, older messages of the same kind (that
+ *	is, session messages, or messages on the same channel) are dropped
+ *	in favor of newer ones, and then the oldest unreliable messages are
+ *	dropped.<p>
+ *
+ * <dt> <i>Property:</i> <code><b>
+ *	{@value #COMPRESSION_THRESHOLD_PROPERTY}
+ *	</b></code><br>
+ *	<i>Default:</i> {@value #DEFAULT_COMPRESSION_THRESHOLD}<br>
+ *      <i>Minimum:</i> {@code 0}<br>
+ *
+ * <dd style="padding-top: .5em"> 
+ *	Specifies the minimum length, in bytes, of a session or channel
+ *	message payload that is compressed before it is written to a client
+ *	that accepts compressed messages.  Clients indicate that they accept
+ *	compressed messages by setting {@link
+ *	SimpleSgsProtocolImpl#COMPRESSION_FLAG} in the protocol version of
+ *	their login or relocate request.<p>
+ *
+ * <dt> <i>Property:</i> <code><b>
+ *	{@value #COMPRESSION_DICTIONARY_PROPERTY}
+ *	</b></code><br>
+ *	<i>Default:</i> <i>none</i>
+ *
+ * <dd style="padding-top: .5em"> 
+ *	Specifies the name of a file containing a preset dictionary for
+ *	compressing message payloads.  Clients must decompress payloads
+ *	using the same dictionary.  See {@link MessageCompressor}.<p>
+ *
+ * <dt> <i>Property:</i> <code><b>
+ *	{@value #BUNDLE_FLUSH_INTERVAL_PROPERTY}
+ *	</b></code><br>
+ *	<i>Default:</i> {@value #DEFAULT_BUNDLE_FLUSH_INTERVAL}<br>
+ *      <i>Minimum:</i> {@code 0}<br>
+ *      <i>Maximum:</i> {@value #MAX_BUNDLE_FLUSH_INTERVAL}<br>
+ *
+ * <dd style="padding-top: .5em"> 
+ *	Specifies the time, in milliseconds, that messages for a client
+ *	that accepts message bundles are held before being written, so that
+ *	messages sent during that time can be written together in a single
+ *	bundle.  Clients indicate that they accept message bundles by
+ *	setting {@link SimpleSgsProtocolImpl#BUNDLE_FLAG} in the protocol
+ *	version of their login or relocate request.  If the value is
+ *	{@code 0}, messages are written immediately, and only messages that
+ *	are waiting for an earlier write to complete are bundled.  A value
+ *	between {@code 5} and {@code 20} is suitable for clients that belong
+ *	to many busy channels.<p>
  * </dl> <p>
  */
 public class SimpleSgsProtocolAcceptor
@@ -167,6 +279,75 @@ public class SimpleSgsProtocolAcceptor
     /** The minimum disconnect delay value. */
     public static final long MIN_DISCONNECT_DELAY = 1000;
 
+    /** The name of the login threads property. */
+    public static final String LOGIN_THREADS_PROPERTY =
+	PKG_NAME + ".login.threads";
+
+    /** The default number of login threads. */
+    public static final int DEFAULT_LOGIN_THREADS = 4;
+
+    /** The name of the login queue size property. */
+    public static final String LOGIN_QUEUE_SIZE_PROPERTY =
+	PKG_NAME + ".login.queue.size";
+
+    /** The default login queue size. */
+    public static final int DEFAULT_LOGIN_QUEUE_SIZE = 1024;
+
+    /** The name of the reliable write limit property. */
+    public static final String RELIABLE_WRITE_LIMIT_PROPERTY =
+	PKG_NAME + ".reliable.write.limit";
+
+    /** The default reliable write limit, in bytes. */
+    public static final int DEFAULT_RELIABLE_WRITE_LIMIT = 4 * 1024 * 1024;
+
+    /** The minimum reliable write limit, in bytes. */
+    public static final int MIN_RELIABLE_WRITE_LIMIT =
+	SimpleSgsProtocol.MAX_MESSAGE_LENGTH;
+
+    /** The name of the unreliable write limit property. */
+    public static final String UNRELIABLE_WRITE_LIMIT_PROPERTY =
+	PKG_NAME + ".unreliable.write.limit";
+
+    /** The default unreliable write limit, in bytes. */
+    public static final int DEFAULT_UNRELIABLE_WRITE_LIMIT = 256 * 1024;
+
+    /** The name of the compression threshold property. */
+    public static final String COMPRESSION_THRESHOLD_PROPERTY =
+	PKG_NAME + ".compression.threshold";
+
+    /** The default compression threshold, in bytes. */
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 256;
+
+    /** The name of the compression dictionary property. */
+    public static final String COMPRESSION_DICTIONARY_PROPERTY =
+	PKG_NAME + ".compression.dictionary";
+
+    /** The name of the bundle flush interval property. */
+    public static final String BUNDLE_FLUSH_INTERVAL_PROPERTY =
+	PKG_NAME + ".bundle.flush.interval";
+
+    /** The default bundle flush interval, in milliseconds. */
+    public static final int DEFAULT_BUNDLE_FLUSH_INTERVAL = 0;
+
+    /** The maximum bundle flush interval, in milliseconds. */
+    public static final int MAX_BUNDLE_FLUSH_INTERVAL = 1000;
+
+    /**
+     * The number of bytes that a compressed message adds for the length
+     * of the uncompressed payload.
+     */
+    private static final int COMPRESSION_OVERHEAD = 4;
+
+    /** The number of shared compressed payloads that are cached. */
+    private static final int COMPRESSED_PAYLOAD_CACHE_SIZE = 64;
+
+    /**
+     * The name of the client session service's profile consumer, which
+     * reports this acceptor's outbound queue statistics.
+     */
+    private static final String SESSION_CONSUMER_NAME =
+	ProfileCollectorImpl.CORE_CONSUMER_PREFIX + "ClientSessionService";
+
     /** The identity manager. */
     private final IdentityCoordinator identityManager;
 
@@ -182,6 +363,64 @@ public class SimpleSgsProtocolAcceptor
     /** The {@code SimpleSgsProtocol} version for the protocol impl. */
     private final int protocolVersion;
 
+    /** The number of threads for authenticating login requests. */
+    private final int loginThreads;
+
+    /** The maximum number of login requests waiting to be authenticated. */
+    private final int loginQueueSize;
+
+    /** The executor for authenticating login requests. */
+    private final ThreadPoolExecutor loginExecutor;
+
+    /** The maximum bytes of reliable messages queued for a client. */
+    private final int reliableWriteLimit;
+
+    /** The maximum bytes of unreliable messages queued for a client. */
+    private final int unreliableWriteLimit;
+
+    /** The minimum length of a payload that is compressed. */
+    private final int compressionThreshold;
+
+    /** The compressor for message payloads. */
+    private final MessageCompressor compressor;
+
+    /**
+     * The recently compressed shared payloads, indexed by the identity
+     * hash of their source arrays and offsets.
+     */
+    private final AtomicReferenceArray<CompressedPayload> compressedPayloads =
+	new AtomicReferenceArray<CompressedPayload>(
+	    COMPRESSED_PAYLOAD_CACHE_SIZE);
+
+    /** The time, in milliseconds, that messages are held for bundling. */
+    private final int bundleFlushInterval;
+
+    /**
+     * The executor for flushing messages held for bundling, or {@code
+     * null} if the bundle flush interval is {@code 0}.
+     */
+    private final ScheduledExecutorService flushExecutor;
+
+    /** The bytes queued for a client, sampled as each message is queued. */
+    private final ProfileSample outboundQueueSample;
+
+    /** The number of unreliable messages dropped before being written. */
+    private final ProfileCounter outboundDropCounter;
+
+    /** The number of clients disconnected for exceeding the reliable
+     * write limit.
+     */
+    private final ProfileCounter outboundOverflowCounter;
+
+    /** The number of messages written compressed. */
+    private final ProfileCounter compressedMessagesCounter;
+
+    /** The number of bytes saved by writing messages compressed. */
+    private final ProfileCounter compressionBytesSavedCounter;
+
+    /** The time, in nanoseconds, spent compressing payloads. */
+    private final ProfileCounter compressionTimeCounter;
+
     /** The protocol descriptor. */
     private ProtocolDescriptor protocolDesc;
   
@@ -254,6 +493,29 @@ public class SimpleSgsProtocolAcceptor
 		wrappedProps.getIntProperty(
 		PROTOCOL_VERSION_PROPERTY, DEFAULT_PROTOCOL_VERSION,
 		PROTOCOL4, SimpleSgsProtocol.VERSION);
+	    loginThreads = wrappedProps.getIntProperty(
+		LOGIN_THREADS_PROPERTY, DEFAULT_LOGIN_THREADS,
+		1, Integer.MAX_VALUE);
+	    loginQueueSize = wrappedProps.getIntProperty(
+		LOGIN_QUEUE_SIZE_PROPERTY, DEFAULT_LOGIN_QUEUE_SIZE,
+		0, Integer.MAX_VALUE);
+	    reliableWriteLimit = wrappedProps.getIntProperty(
+		RELIABLE_WRITE_LIMIT_PROPERTY, DEFAULT_RELIABLE_WRITE_LIMIT,
+		MIN_RELIABLE_WRITE_LIMIT, Integer.MAX_VALUE);
+	    unreliableWriteLimit = wrappedProps.getIntProperty(
+		UNRELIABLE_WRITE_LIMIT_PROPERTY,
+		DEFAULT_UNRELIABLE_WRITE_LIMIT, 0, Integer.MAX_VALUE);
+	    compressionThreshold = wrappedProps.getIntProperty(
+		COMPRESSION_THRESHOLD_PROPERTY, DEFAULT_COMPRESSION_THRESHOLD,
+		0, Integer.MAX_VALUE);
+	    String dictionaryFile =
+		wrappedProps.getProperty(COMPRESSION_DICTIONARY_PROPERTY);
+	    compressor = (dictionaryFile == null) ?
+		new MessageCompressor() :
+		new MessageCompressor(readFile(dictionaryFile));
+	    bundleFlushInterval = wrappedProps.getIntProperty(
+		BUNDLE_FLUSH_INTERVAL_PROPERTY, DEFAULT_BUNDLE_FLUSH_INTERVAL,
+		0, MAX_BUNDLE_FLUSH_INTERVAL);
 
             if (!transport.getDelivery().equals(Delivery.RELIABLE)) {
                 transport.shutdown();
@@ -269,6 +531,42 @@ public class SimpleSgsProtocolAcceptor
 		    taskOwner, System.currentTimeMillis(),
 		    disconnectDelay);
 	    monitorDisconnectingSessionsTaskHandle.start();
+
+	    BlockingQueue<Runnable> loginQueue = (loginQueueSize == 0) ?
+		new SynchronousQueue<Runnable>() :
+		new ArrayBlockingQueue<Runnable>(loginQueueSize);
+	    loginExecutor = new ThreadPoolExecutor(
+		loginThreads, loginThreads, 0L, TimeUnit.MILLISECONDS,
+		loginQueue, new NamedThreadFactory(PKG_NAME + ".login"));
+	    flushExecutor = (bundleFlushInterval == 0) ? null :
+		Executors.newSingleThreadScheduledExecutor(
+		    new NamedThreadFactory(PKG_NAME + ".flush"));
+
+	    /*
+	     * Report outbound queue statistics through the client session
+	     * service's consumer, which exposes them in its MXBean.
+	     */
+	    ProfileConsumer consumer =
+		systemRegistry.getComponent(ProfileCollector.class).
+		    getConsumer(SESSION_CONSUMER_NAME);
+	    outboundQueueSample = consumer.createSample(
+		"outboundQueueBytes", ProfileDataType.AGGREGATE,
+		ProfileLevel.MEDIUM);
+	    outboundDropCounter = consumer.createCounter(
+		"outboundMessagesDropped", ProfileDataType.AGGREGATE,
+		ProfileLevel.MIN);
+	    outboundOverflowCounter = consumer.createCounter(
+		"outboundOverflowDisconnects", ProfileDataType.AGGREGATE,
+		ProfileLevel.MIN);
+	    compressedMessagesCounter = consumer.createCounter(
+		"compressedMessages", ProfileDataType.AGGREGATE,
+		ProfileLevel.MIN);
+	    compressionBytesSavedCounter = consumer.createCounter(
+		"compressionBytesSaved", ProfileDataType.AGGREGATE,
+		ProfileLevel.MIN);
+	    compressionTimeCounter = consumer.createCounter(
+		"compressionTime", ProfileDataType.AGGREGATE,
+		ProfileLevel.MIN);
 	    
 	    /*
 	     * Check service version.
@@ -288,6 +586,20 @@ public class SimpleSgsProtocolAcceptor
                        disconnectDelay +
                        "\n  " + READ_BUFFER_SIZE_PROPERTY + "=" +
                        readBufferSize +
+                       "\n  " + LOGIN_THREADS_PROPERTY + "=" +
+                       loginThreads +
+                       "\n  " + LOGIN_QUEUE_SIZE_PROPERTY + "=" +
+                       loginQueueSize +
+                       "\n  " + RELIABLE_WRITE_LIMIT_PROPERTY + "=" +
+                       reliableWriteLimit +
+                       "\n  " + UNRELIABLE_WRITE_LIMIT_PROPERTY + "=" +
+                       unreliableWriteLimit +
+                       "\n  " + COMPRESSION_THRESHOLD_PROPERTY + "=" +
+                       compressionThreshold +
+                       "\n  " + COMPRESSION_DICTIONARY_PROPERTY + "=" +
+                       dictionaryFile +
+                       "\n  " + BUNDLE_FLUSH_INTERVAL_PROPERTY + "=" +
+                       bundleFlushInterval +
                        "\n  " + TRANSPORT_PROPERTY + "=" +
                        transport.getClass().getName());
 	    
@@ -320,6 +632,10 @@ public class SimpleSgsProtocolAcceptor
     public void doShutdown() {
         transport.shutdown();
         monitorDisconnectingSessionsTaskHandle.cancel(); 
+	loginExecutor.shutdownNow();
+	if (flushExecutor != null) {
+	    flushExecutor.shutdownNow();
+	}
 	disconnectingHandlersMap.clear();
     }
 
@@ -397,6 +713,162 @@ public class SimpleSgsProtocolAcceptor
 	    new NamePasswordCredentials(name, password.toCharArray()));
     }
 
+    /**
+     * Schedules the specified {@code task} to authenticate a login request
+     * on one of this acceptor's login threads, and returns {@code true} if
+     * the task was scheduled.  Returns {@code false} if too many login
+     * requests are already waiting to be authenticated, or if this acceptor
+     * is shutting down.
+     *
+     * @param	task a task that authenticates a login request
+     * @return	{@code true} if the task was scheduled, and {@code false}
+     *		otherwise
+     */
+    public boolean scheduleLoginTask(Runnable task) {
+	try {
+	    loginExecutor.execute(task);
+	    return true;
+	} catch (RejectedExecutionException e) {
+	    return false;
+	}
+    }
+
+    /**
+     * Returns the maximum number of bytes of control and reliable messages
+     * that can be waiting to be written to a single client.
+     *
+     * @return	the reliable write limit, in bytes
+     */
+    public int getReliableWriteLimit() {
+	return reliableWriteLimit;
+    }
+
+    /**
+     * Returns the maximum number of bytes of unreliable messages that can
+     * be waiting to be written to a single client.
+     *
+     * @return	the unreliable write limit, in bytes
+     */
+    public int getUnreliableWriteLimit() {
+	return unreliableWriteLimit;
+    }
+
+    /**
+     * Records that a message was queued for a client, leaving the specified
+     * number of bytes waiting to be written to that client.
+     *
+     * @param	queuedBytes the number of bytes waiting to be written
+     */
+    public void outboundMessageQueued(int queuedBytes) {
+	outboundQueueSample.addSample(queuedBytes);
+    }
+
+    /**
+     * Records that the specified number of unreliable messages were
+     * dropped before being written to a client.
+     *
+     * @param	count the number of messages dropped
+     */
+    public void outboundMessagesDropped(int count) {
+	outboundDropCounter.incrementCount(count);
+    }
+
+    /**
+     * Records that a client was disconnected because it exceeded the
+     * reliable write limit.
+     */
+    public void outboundOverflow() {
+	outboundOverflowCounter.incrementCount();
+    }
+
+    /**
+     * Returns the time, in milliseconds, that messages for a client that
+     * accepts message bundles are held before being written.
+     *
+     * @return	the bundle flush interval, in milliseconds
+     */
+    public int getBundleFlushInterval() {
+	return bundleFlushInterval;
+    }
+
+    /**
+     * Schedules the specified {@code task}, which writes the messages
+     * held for bundling for a client, to run after the bundle flush
+     * interval.  If this acceptor is shutting down, the task is run
+     * immediately.
+     *
+     * @param	task a task that writes held messages
+     */
+    public void scheduleFlush(Runnable task) {
+	try {
+	    flushExecutor.schedule(
+		task, bundleFlushInterval, TimeUnit.MILLISECONDS);
+	} catch (RejectedExecutionException e) {
+	    task.run();
+	}
+    }
+
+    /**
+     * Returns the compressed form of the specified message {@code
+     * payload}, or {@code null} if the payload is shorter than the
+     * compression threshold or compressing it would not make the message
+     * smaller.  The payload's position is not changed. <p>
+     *
+     * If {@code shared} is {@code true}, the payload is expected to be
+     * written to several clients, as is the case for a channel message
+     * delivered to the members on this node, so the result is cached and
+     * the payload is only compressed once.  A cached result is only used
+     * for a payload with the same backing array and the same contents, so
+     * a caller may reuse the array for other payloads.
+     *
+     * @param	payload a message payload
+     * @param	shared whether the payload is written to several clients
+     * @return	the compressed payload, or {@code null}
+     */
+    public byte[] compress(ByteBuffer payload, boolean shared) {
+	int length = payload.remaining();
+	if (length < compressionThreshold) {
+	    return null;
+	}
+	byte[] src;
+	int offset;
+	if (payload.hasArray()) {
+	    src = payload.array();
+	    offset = payload.arrayOffset() + payload.position();
+	} else {
+	    src = new byte[length];
+	    payload.duplicate().get(src);
+	    offset = 0;
+	    shared = false;
+	}
+	byte[] compressed = null;
+	int slot = (System.identityHashCode(src) ^ offset) &
+	    (COMPRESSED_PAYLOAD_CACHE_SIZE - 1);
+	CompressedPayload cached = shared ? compressedPayloads.get(slot) : null;
+	if (cached != null && cached.isFor(src, offset, length)) {
+	    compressed = cached.compressed;
+	} else {
+	    long start = System.nanoTime();
+	    compressed = compressor.compress(src, offset, length);
+	    if (compressed != null &&
+		compressed.length + COMPRESSION_OVERHEAD >= length)
+	    {
+		compressed = null;
+	    }
+	    compressionTimeCounter.incrementCount(System.nanoTime() - start);
+	    if (shared) {
+		compressedPayloads.set(
+		    slot, new CompressedPayload(src, offset, length, compressed));
+	    }
+	}
+	if (compressed != null) {
+	    compressedMessagesCounter.incrementCount();
+	    compressionBytesSavedCounter.incrementCount(
+		length - compressed.length - COMPRESSION_OVERHEAD);
+	}
+	return compressed;
+    }
+
     /**
      * Adds the specified {@code protocol} to the map containing {@code
      * SessionProtocol}s that are disconnecting.  The map is keyed by
@@ -422,6 +894,73 @@ public class SimpleSgsProtocolAcceptor
     
     /* -- Private methods and classes -- */
 
+    /**
+     * Returns the contents of the file with the specified name.
+     *
+     * @param	fileName a file name
+     * @return	the contents of the file
+     * @throws	IOException if a problem occurs reading the file
+     */
+    private static byte[] readFile(String fileName) throws IOException {
+	RandomAccessFile file = new RandomAccessFile(fileName, "r");
+	try {
+	    byte[] contents = new byte[(int) file.length()];
+	    file.readFully(contents);
+	    return contents;
+	} finally {
+	    file.close();
+	}
+    }
+
+    /** The compressed form of a shared payload. */
+    private static final class CompressedPayload {
+
+	/** The array containing the uncompressed payload. */
+	private final byte[] src;
+
+	/** The offset of the uncompressed payload. */
+	private final int offset;
+
+	/**
+	 * A copy of the uncompressed payload, to detect an array that was
+	 * reused for a payload with other contents.
+	 */
+	private final byte[] contents;
+
+	/** The compressed payload, or {@code null} if not compressible. */
+	final byte[] compressed;
+
+	/** Constructs an instance. */
+	CompressedPayload(byte[] src, int offset, int length,
+			  byte[] compressed)
+	{
+	    this.src = src;
+	    this.offset = offset;
+	    contents = new byte[length];
+	    System.arraycopy(src, offset, contents, 0, length);
+	    this.compressed = compressed;
+	}
+
+	/**
+	 * Returns {@code true} if this instance is for the payload with
+	 * the specified array, offset, and length, and the array still
+	 * holds the same contents.
+	 */
+	boolean isFor(byte[] src, int offset, int length) {
+	    if (this.src != src || this.offset != offset ||
+		contents.length != length)
+	    {
+		return false;
+	    }
+	    for (int i = 0; i < length; i++) {
+		if (contents[i] != src[offset + i]) {
+		    return false;
+		}
+	    }
+	    return true;
+	}
+    }
+
     /**
      * A task to monitor disconnecting sessions to ensure that their
      * associated connections are closed by the client in a timely manner.
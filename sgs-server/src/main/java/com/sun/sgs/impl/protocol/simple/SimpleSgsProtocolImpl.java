@@ -49,6 +49,7 @@ import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -66,6 +67,61 @@ import java.util.logging.Logger;
  */
 public class SimpleSgsProtocolImpl implements SessionProtocol {
 
+    /**
+     * The flag that a client sets in the protocol version of a login or
+     * relocate request to indicate that it accepts compressed messages.
+     * A client that sets this flag must handle the {@link
+     * #COMPRESSED_SESSION_MESSAGE} and {@link #COMPRESSED_CHANNEL_MESSAGE}
+     * opcodes.
+     */
+    public static final byte COMPRESSION_FLAG = (byte) 0x80;
+
+    /**
+     * Compressed session message: a session message whose payload is
+     * compressed with a {@link MessageCompressor}. <br>
+     * Opcode: {@code 0x31} <br>
+     * Payload:
+     * <ul>
+     * <li> (int) uncompressed payload length
+     * <li> (byte[]) compressed payload
+     * </ul>
+     */
+    public static final byte COMPRESSED_SESSION_MESSAGE = 0x31;
+
+    /**
+     * Compressed channel message: a channel message whose payload is
+     * compressed with a {@link MessageCompressor}. <br>
+     * Opcode: {@code 0x53} <br>
+     * Payload:
+     * <ul>
+     * <li> (short) channel ID size
+     * <li> (byte[]) channel ID
+     * <li> (int) uncompressed payload length
+     * <li> (byte[]) compressed payload
+     * </ul>
+     */
+    public static final byte COMPRESSED_CHANNEL_MESSAGE = 0x53;
+
+    /**
+     * The flag that a client sets in the protocol version of a login or
+     * relocate request to indicate that it accepts message bundles.  A
+     * client that sets this flag must handle the {@link #MESSAGE_BUNDLE}
+     * opcode.
+     */
+    public static final byte BUNDLE_FLAG = 0x40;
+
+    /**
+     * Message bundle: several protocol messages written together, which
+     * the client should process in order. <br>
+     * Opcode: {@code 0x60} <br>
+     * Payload, repeated for each message:
+     * <ul>
+     * <li> (short) message length
+     * <li> (byte[]) message, starting with its opcode
+     * </ul>
+     */
+    public static final byte MESSAGE_BUNDLE = 0x60;
+
     /** The protocol version for this implementation. */
     private static final byte PROTOCOL4 = 0x04;
     
@@ -129,6 +185,12 @@ public class SimpleSgsProtocolImpl implements SessionProtocol {
     /** The set of supported delivery requirements. */
     protected final Set<Delivery> deliverySet = new HashSet<Delivery>();
 
+    /** Whether the client accepts compressed messages. */
+    private volatile boolean compressionEnabled = false;
+
+    /** Whether the client accepts message bundles. */
+    private volatile boolean bundlingEnabled = false;
+
     /**
      * Creates a new instance of this class.
      *
@@ -190,6 +252,25 @@ public class SimpleSgsProtocolImpl implements SessionProtocol {
 	return PROTOCOL4;
     }
 
+    /**
+     * Returns the protocol version contained in the specified {@code
+     * version} byte of a login or relocate request, and enables message
+     * compression or bundling for this connection if the client set the
+     * {@link #COMPRESSION_FLAG} or {@link #BUNDLE_FLAG}.
+     *
+     * @param	version the version byte of a login or relocate request
+     * @return	the protocol version
+     */
+    protected final byte negotiateVersion(byte version) {
+	if ((version & COMPRESSION_FLAG) != 0) {
+	    compressionEnabled = true;
+	}
+	if ((version & BUNDLE_FLAG) != 0) {
+	    bundlingEnabled = true;
+	}
+	return (byte) (version & ~(COMPRESSION_FLAG | BUNDLE_FLAG));
+    }
+
     /**
      * Returns the associated identity, or {@code null} if the client has
      * not yet authenticated.
@@ -219,6 +300,17 @@ public class SimpleSgsProtocolImpl implements SessionProtocol {
     
     /** {@inheritDoc} */
     public void sessionMessage(ByteBuffer message, Delivery delivery) {
+	byte[] compressed =
+	    compressionEnabled ? acceptor.compress(message, false) : null;
+	if (compressed != null) {
+	    ByteBuffer buf = ByteBuffer.allocate(5 + compressed.length);
+	    buf.put(COMPRESSED_SESSION_MESSAGE).
+		putInt(message.remaining()).
+		put(compressed).
+		flip();
+	    writeBuffer(buf, delivery);
+	    return;
+	}
 	int messageLength = 1 + message.remaining();
         assert messageLength <= SimpleSgsProtocol.MAX_MESSAGE_LENGTH;
 	ByteBuffer buf = ByteBuffer.wrap(new byte[messageLength]);
@@ -261,12 +353,30 @@ public class SimpleSgsProtocolImpl implements SessionProtocol {
      * subclass can override the {@code writeBuffer} method if it supports
      * other delivery guarantees and can make use of alternate transports
      * for those other delivery requirements.
+     *
+     * <p>If the client accepts compressed messages, the compressed form of
+     * the message is cached, so a message that is delivered to all of the
+     * channel's members on this node is only compressed once.
      */
     public void channelMessage(BigInteger channelId,
                                ByteBuffer message,
                                Delivery delivery)
     {
 	byte[] channelIdBytes = channelId.toByteArray();
+	byte[] compressed =
+	    compressionEnabled ? acceptor.compress(message, true) : null;
+	if (compressed != null) {
+	    ByteBuffer buf = ByteBuffer.allocate(
+		7 + channelIdBytes.length + compressed.length);
+	    buf.put(COMPRESSED_CHANNEL_MESSAGE).
+		putShort((short) channelIdBytes.length).
+		put(channelIdBytes).
+		putInt(message.remaining()).
+		put(compressed).
+		flip();
+	    writeBuffer(buf, delivery);
+	    return;
+	}
 	int messageLength = 3 + channelIdBytes.length + message.remaining();
         assert messageLength <= SimpleSgsProtocol.MAX_MESSAGE_LENGTH;
 	ByteBuffer buf =
@@ -434,16 +544,28 @@ public class SimpleSgsProtocolImpl implements SessionProtocol {
     /**
      * Writes a message to the underlying connection if login has been handled,
      * otherwise enqueues the message to be sent when the login has not yet been
-     * handled.
+     * handled.  The message is written reliably.
      *
      * @param	buf a buffer containing a complete protocol message
      */
     protected final void write(ByteBuffer buf) {
+	write(buf, Delivery.RELIABLE);
+    }
+
+    /**
+     * Writes a message with the specified delivery requirement to the
+     * underlying connection if login has been handled, otherwise enqueues
+     * the message to be sent reliably when the login has been handled.
+     *
+     * @param	buf a buffer containing a complete protocol message
+     * @param	delivery a delivery requirement
+     */
+    protected final void write(ByteBuffer buf, Delivery delivery) {
 	synchronized (lock) {
 	    if (!loginHandled) {
 		messageQueue.add(buf);
 	    } else {
-		writeNow(buf, false);
+		writeNow(buf, delivery);
 	    }
 	}
     }
@@ -456,8 +578,28 @@ public class SimpleSgsProtocolImpl implements SessionProtocol {
      *		flag to {@code true} and flush the message queue
      */
     protected final void writeNow(ByteBuffer message, boolean flush) {
+	writeNow(message, Delivery.RELIABLE);
+	if (flush) {
+	    synchronized (lock) {
+		loginHandled = true;
+		for (ByteBuffer nextMessage : messageQueue) {
+		    writeNow(nextMessage, Delivery.RELIABLE);
+		}
+		messageQueue.clear();
+	    }
+	}
+    }
+
+    /**
+     * Writes a message with the specified delivery requirement to the
+     * underlying connection, logging any exception thrown.
+     *
+     * @param	message a buffer containing a complete protocol message
+     * @param	delivery a delivery requirement
+     */
+    private void writeNow(ByteBuffer message, Delivery delivery) {
 	try {
-	    writeHandler.write(message);
+	    writeHandler.write(message, delivery);
 		    
 	} catch (RuntimeException e) {
 	    if (logger.isLoggable(Level.WARNING)) {
@@ -466,32 +608,17 @@ public class SimpleSgsProtocolImpl implements SessionProtocol {
 		    "writeNow protocol:{0} throws", this);
 	    }
 	}
-
-	if (flush) {
-	    synchronized (lock) {
-		loginHandled = true;
-		for (ByteBuffer nextMessage : messageQueue) {
-		    try {
-			writeHandler.write(nextMessage);
-		    } catch (RuntimeException e) {
-			if (logger.isLoggable(Level.WARNING)) {
-			    logger.logThrow(
-				Level.WARNING, e,
-				"writeNow protocol:{0} throws", this);
-			}
-		    }
-		}
-		messageQueue.clear();
-	    }
-	}
     }
 
     /**
      * Writes the specified buffer, satisfying the specified delivery
      * requirement.
      *
-     * <p>This implementation writes the buffer reliably, because this
-     * protocol only supports reliable delivery.
+     * <p>This implementation writes all messages over the reliable
+     * connection, because this protocol only supports reliable delivery.
+     * Messages with an unreliable delivery requirement, though, are only
+     * written when no reliable messages are waiting, and may be dropped if
+     * the client is not reading its messages quickly enough.
      *
      * <p>A subclass can override the {@code writeBuffer} method if it
      * supports other delivery guarantees and can make use of alternate
@@ -501,7 +628,7 @@ public class SimpleSgsProtocolImpl implements SessionProtocol {
      * @param	delivery a delivery requirement
      */
     protected void writeBuffer(ByteBuffer buf, Delivery delivery) {
-	write(buf);
+	write(buf, delivery);
     }
     
     /**
@@ -521,8 +648,8 @@ public class SimpleSgsProtocolImpl implements SessionProtocol {
     private abstract class WriteHandler
         implements CompletionHandler<Void, Void>
     {
-	/** Writes the specified message. */
-        abstract void write(ByteBuffer message);
+	/** Writes the specified message with the specified delivery. */
+        abstract void write(ByteBuffer message, Delivery delivery);
     }
 
     /** A completion handler for writing that always fails. */
@@ -531,7 +658,7 @@ public class SimpleSgsProtocolImpl implements SessionProtocol {
 	ClosedWriteHandler() { }
 
         @Override
-        void write(ByteBuffer message) {
+        void write(ByteBuffer message, Delivery delivery) {
             throw new ClosedAsynchronousChannelException();
         }
         
@@ -540,70 +667,314 @@ public class SimpleSgsProtocolImpl implements SessionProtocol {
         }    
     }
 
-    /** A completion handler for writing to the session's channel. */
+    /**
+     * A completion handler for writing to the session's channel.  Messages
+     * waiting to be written are held in two queues: one for control and
+     * reliable messages, and one for unreliable messages, which are only
+     * written when no reliable messages are waiting.  The number of bytes
+     * in each queue is bounded by the acceptor's write limits.  If the
+     * reliable limit is exceeded, the connection is closed.  If the
+     * unreliable limit is exceeded, older unreliable messages of the same
+     * kind as the new message, and then the oldest unreliable messages,
+     * are dropped to make room for it. <p>
+     *
+     * If the client accepts message bundles, the messages waiting when a
+     * write starts are written together as a single bundle, and, if the
+     * acceptor's bundle flush interval is not zero, a message sent while
+     * no write is underway is held for that interval so that later
+     * messages can join its bundle.
+     */
     private class ConnectedWriteHandler extends WriteHandler {
 
-	/** The lock for accessing the fields {@code pendingWrites} and
-	 * {@code isWriting}. The locks {@code lock} and {@code writeLock}
-	 * should only be acquired in that specified order.
+	/** The lock for accessing the fields {@code reliableWrites},
+	 * {@code reliableBytes}, {@code unreliableWrites}, {@code
+	 * unreliableBytes}, {@code currentWrite}, {@code flushScheduled},
+	 * and {@code overflowed}.
+	 * The locks {@code lock} and {@code writeLock} should only be
+	 * acquired in that specified order.
 	 */
 	private final Object writeLock = new Object();
-	
-	/** An unbounded queue of messages waiting to be written. */
-        private final LinkedList<ByteBuffer> pendingWrites =
+
+	/** The control and reliable messages waiting to be written. */
+        private final LinkedList<ByteBuffer> reliableWrites =
             new LinkedList<ByteBuffer>();
 
-	/** Whether a write is underway. */
-        private boolean isWriting = false;
+	/** The number of bytes in {@code reliableWrites}. */
+	private int reliableBytes = 0;
+
+	/** The unreliable messages waiting to be written. */
+        private final LinkedList<ByteBuffer> unreliableWrites =
+            new LinkedList<ByteBuffer>();
+
+	/** The number of bytes in {@code unreliableWrites}. */
+	private int unreliableBytes = 0;
+
+	/** The message being written, or {@code null}. */
+        private ByteBuffer currentWrite = null;
+
+	/** Whether writing is waiting for the bundle flush interval. */
+	private boolean flushScheduled = false;
+
+	/** Whether the reliable write limit has been exceeded. */
+	private boolean overflowed = false;
 
 	/** Creates an instance of this class. */
         ConnectedWriteHandler() { }
 
 	/**
-	 * Adds the message to the queue, and starts processing the queue if
-	 * needed.
+	 * Adds the message to the queue for its delivery requirement, and
+	 * starts processing the queues if needed.
 	 */
         @Override
-        void write(ByteBuffer message) {
+        void write(ByteBuffer message, Delivery delivery) {
             if (message.remaining() > SimpleSgsProtocol.MAX_PAYLOAD_LENGTH) {
                 throw new IllegalArgumentException(
                     "message too long: " + message.remaining() + " > " +
                         SimpleSgsProtocol.MAX_PAYLOAD_LENGTH);
             }
-            boolean first;
+	    int size = message.remaining();
+	    boolean reliable =
+		delivery.supportsDelivery(Delivery.UNORDERED_RELIABLE);
+	    boolean first;
+	    boolean scheduleFlush = false;
+	    boolean overflow = false;
+	    int dropped = 0;
+	    int queuedBytes;
             synchronized (writeLock) {
-                first = pendingWrites.isEmpty();
-                pendingWrites.add(message);
+		if (overflowed) {
+		    return;
+		}
+                first = currentWrite == null && !flushScheduled;
+		if (first && bundlingEnabled &&
+		    acceptor.getBundleFlushInterval() > 0)
+		{
+		    flushScheduled = true;
+		    scheduleFlush = true;
+		}
+		if (reliable) {
+		    if (!first &&
+			reliableBytes + size > acceptor.getReliableWriteLimit())
+		    {
+			overflowed = true;
+			overflow = true;
+			clearQueues();
+		    } else {
+			if (message.get(message.position()) ==
+			    SimpleSgsProtocol.CHANNEL_LEAVE)
+			{
+			    dropped = removeChannelMessages(message);
+			}
+			reliableWrites.add(message);
+			reliableBytes += size;
+		    }
+		} else {
+		    dropped = makeRoom(message, first);
+		    if (first ||
+			unreliableBytes + size <=
+			    acceptor.getUnreliableWriteLimit())
+		    {
+			unreliableWrites.add(message);
+			unreliableBytes += size;
+		    } else {
+			dropped++;
+		    }
+		}
+		queuedBytes = reliableBytes + unreliableBytes;
             }
+	    acceptor.outboundMessageQueued(queuedBytes);
+	    if (dropped > 0) {
+		acceptor.outboundMessagesDropped(dropped);
+	    }
+	    if (overflow) {
+		if (logger.isLoggable(Level.WARNING)) {
+		    logger.log(
+			Level.WARNING,
+			"write protocol:{0} exceeded reliable write limit:" +
+			"{1,number,#}, disconnecting",
+			SimpleSgsProtocolImpl.this,
+			acceptor.getReliableWriteLimit());
+		}
+		acceptor.outboundOverflow();
+		close();
+		return;
+	    }
             if (logger.isLoggable(Level.FINEST)) {
                 logger.log(Level.FINEST,
-			   "write protocol:{0} message:{1} first:{2}",
+			   "write protocol:{0} message:{1} delivery:{2} " +
+			   "first:{3} dropped:{4,number,#}",
                            SimpleSgsProtocolImpl.this,
-			   HexDumper.format(message, 0x50), first);
+			   HexDumper.format(message, 0x50), delivery, first,
+			   dropped);
             }
-            if (first) {
+            if (scheduleFlush) {
+		acceptor.scheduleFlush(new Runnable() {
+			public void run() {
+			    synchronized (writeLock) {
+				flushScheduled = false;
+			    }
+			    processQueue();
+			} });
+	    } else if (first) {
                 processQueue();
             }
         }
 
-	/** Start processing the first element of the queue, if present. */
+	/**
+	 * Removes unreliable messages from the queue until the specified
+	 * unreliable {@code message} fits within the unreliable write limit,
+	 * and returns the number of messages removed.  Older messages of the
+	 * same kind as {@code message} are removed first, and then the
+	 * oldest messages.  If {@code idle} is {@code true}, no write is
+	 * underway, so no messages are removed.  This method must be called
+	 * while holding {@code writeLock}.
+	 */
+	private int makeRoom(ByteBuffer message, boolean idle) {
+	    int limit = acceptor.getUnreliableWriteLimit();
+	    int size = message.remaining();
+	    int removed = 0;
+	    if (idle || unreliableBytes + size <= limit) {
+		return removed;
+	    }
+	    for (Iterator<ByteBuffer> iter = unreliableWrites.iterator();
+		 iter.hasNext() && unreliableBytes + size > limit; )
+	    {
+		ByteBuffer queued = iter.next();
+		if (isSameKind(queued, message)) {
+		    iter.remove();
+		    unreliableBytes -= queued.remaining();
+		    removed++;
+		}
+	    }
+	    while (unreliableBytes + size > limit &&
+		   !unreliableWrites.isEmpty())
+	    {
+		unreliableBytes -= unreliableWrites.remove().remaining();
+		removed++;
+	    }
+	    return removed;
+	}
+
+	/**
+	 * Removes the unreliable channel messages for the channel that the
+	 * specified channel leave {@code message} refers to, and returns the
+	 * number of messages removed.  Because reliable messages are written
+	 * first, such messages would otherwise be written after the leave.
+	 * This method must be called while holding {@code writeLock}.
+	 */
+	private int removeChannelMessages(ByteBuffer message) {
+	    ByteBuffer channelId = message.duplicate();
+	    channelId.position(channelId.position() + 1);
+	    int removed = 0;
+	    for (Iterator<ByteBuffer> iter = unreliableWrites.iterator();
+		 iter.hasNext(); )
+	    {
+		ByteBuffer queued = iter.next();
+		if (channelId.equals(getChannelId(queued))) {
+		    iter.remove();
+		    unreliableBytes -= queued.remaining();
+		    removed++;
+		}
+	    }
+	    return removed;
+	}
+
+	/** Clears the queues.  Must be called while holding {@code
+	 * writeLock}.
+	 */
+	private void clearQueues() {
+	    reliableWrites.clear();
+	    reliableBytes = 0;
+	    unreliableWrites.clear();
+	    unreliableBytes = 0;
+	}
+
+	/**
+	 * Removes and returns the first reliable message, or if there are
+	 * none, the first unreliable message, or returns {@code null} if
+	 * there are no messages.  This method must be called while holding
+	 * {@code writeLock}.
+	 */
+	private ByteBuffer pollQueues() {
+	    ByteBuffer message = reliableWrites.poll();
+	    if (message != null) {
+		reliableBytes -= message.remaining();
+	    } else {
+		message = unreliableWrites.poll();
+		if (message != null) {
+		    unreliableBytes -= message.remaining();
+		}
+	    }
+	    return message;
+	}
+
+	/**
+	 * Returns the next message that {@link #pollQueues pollQueues} would
+	 * return, without removing it.  This method must be called while
+	 * holding {@code writeLock}.
+	 */
+	private ByteBuffer peekQueues() {
+	    ByteBuffer message = reliableWrites.peek();
+	    return (message != null) ? message : unreliableWrites.peek();
+	}
+
+	/**
+	 * Returns a message bundle containing the specified {@code message}
+	 * followed by as many of the waiting messages as fit, or returns
+	 * {@code message} if no other messages fit.  This method must be
+	 * called while holding {@code writeLock}.
+	 */
+	private ByteBuffer bundle(ByteBuffer message) {
+	    List<ByteBuffer> messages = new ArrayList<ByteBuffer>();
+	    messages.add(message);
+	    int length = 3 + message.remaining();
+	    ByteBuffer next;
+	    while ((next = peekQueues()) != null &&
+		   length + 2 + next.remaining() <=
+		       SimpleSgsProtocol.MAX_PAYLOAD_LENGTH)
+	    {
+		messages.add(pollQueues());
+		length += 2 + next.remaining();
+	    }
+	    if (messages.size() == 1) {
+		return message;
+	    }
+	    ByteBuffer bundle = ByteBuffer.allocate(length);
+	    bundle.put(MESSAGE_BUNDLE);
+	    for (ByteBuffer m : messages) {
+		bundle.putShort((short) m.remaining()).
+		    put(m.duplicate());
+	    }
+	    bundle.flip();
+	    return bundle;
+	}
+
+	/**
+	 * Start writing the first reliable message, or if there are none,
+	 * the first unreliable message, if present.  If the client accepts
+	 * message bundles, the other waiting messages are written with it.
+	 */
         private void processQueue() {
             ByteBuffer message;
+	    int size;
             synchronized (writeLock) {
-                if (isWriting) {
+                if (currentWrite != null || flushScheduled) {
                     return;
 		}
-                message = pendingWrites.peek();
-                if (message == null) {
+		message = pollQueues();
+		if (message == null) {
 		    return;
 		}
-		isWriting = true;
+		if (bundlingEnabled) {
+		    message = bundle(message);
+		}
+		currentWrite = message;
+		size = reliableWrites.size() + unreliableWrites.size();
             }
             if (logger.isLoggable(Level.FINEST)) {
                 logger.log(
 		    Level.FINEST,
 		    "processQueue protocol:{0} size:{1,number,#} head={2}",
-		    SimpleSgsProtocolImpl.this, pendingWrites.size(),
+		    SimpleSgsProtocolImpl.this, size,
 		    HexDumper.format(message, 0x50));
 		message.mark();
             }
@@ -618,12 +989,12 @@ public class SimpleSgsProtocolImpl implements SessionProtocol {
             }
         }
 
-	/** Done writing the first request in the queue. */
+	/** Done writing the current message. */
         public void completed(IoFuture<Void, Void> result) {
 	    ByteBuffer message;
             synchronized (writeLock) {
-                message = pendingWrites.remove();
-                isWriting = false;
+                message = currentWrite;
+                currentWrite = null;
             }
             if (logger.isLoggable(Level.FINEST)) {
 		ByteBuffer resetMessage = message.duplicate();
@@ -649,13 +1020,64 @@ public class SimpleSgsProtocolImpl implements SessionProtocol {
 				    HexDumper.format(message, 0x50));
                 }
 		synchronized (writeLock) {
-		    pendingWrites.clear();
+		    clearQueues();
 		}
 		close();
             }
         }
     }
 
+    /**
+     * Returns {@code true} if the specified messages are of the same kind,
+     * that is, they have the same opcode, ignoring compression, and, if
+     * they are channel messages, are for the same channel.
+     */
+    private static boolean isSameKind(ByteBuffer message1,
+				      ByteBuffer message2)
+    {
+	byte opcode = getKind(message1.get(message1.position()));
+	if (opcode != getKind(message2.get(message2.position()))) {
+	    return false;
+	} else if (opcode == SimpleSgsProtocol.CHANNEL_MESSAGE) {
+	    return getChannelId(message1).equals(getChannelId(message2));
+	} else {
+	    return true;
+	}
+    }
+
+    /**
+     * Returns the opcode of the uncompressed form of messages with the
+     * specified {@code opcode}.
+     */
+    private static byte getKind(byte opcode) {
+	switch (opcode) {
+	    case COMPRESSED_SESSION_MESSAGE:
+		return SimpleSgsProtocol.SESSION_MESSAGE;
+	    case COMPRESSED_CHANNEL_MESSAGE:
+		return SimpleSgsProtocol.CHANNEL_MESSAGE;
+	    default:
+		return opcode;
+	}
+    }
+
+    /**
+     * Returns a buffer containing the channel ID of the specified channel
+     * message, or {@code null} if {@code message} is not a channel message.
+     */
+    private static ByteBuffer getChannelId(ByteBuffer message) {
+	int position = message.position();
+	if (getKind(message.get(position)) !=
+	    SimpleSgsProtocol.CHANNEL_MESSAGE)
+	{
+	    return null;
+	}
+	int length = message.getShort(position + 1);
+	ByteBuffer channelId = message.duplicate();
+	channelId.position(position + 3);
+	channelId.limit(position + 3 + length);
+	return channelId;
+    }
+
     /** A completion handler for reading from a connection. */
     private abstract class ReadHandler
         implements CompletionHandler<ByteBuffer, Void>
@@ -759,6 +1181,52 @@ public class SimpleSgsProtocolImpl implements SessionProtocol {
         }
     }
 
+    /**
+     * A task to authenticate a login request and, if authentication is
+     * successful, to notify the protocol listener of the new login.
+     */
+    private class LoginTask implements Runnable {
+
+	/** The login name. */
+	private final String name;
+
+	/** The login password. */
+	private final String password;
+
+	/**
+	 * Constructs an instance.
+	 *
+	 * @param	name the login name
+	 * @param	password the login password
+	 */
+	LoginTask(String name, String password) {
+	    this.name = name;
+	    this.password = password;
+	}
+
+	/** Authenticates the login request. */
+	public void run() {
+	    if (!isOpen()) {
+		return;
+	    }
+	    try {
+		identity = acceptor.authenticate(name, password);
+	    } catch (Exception e) {
+		logger.logThrow(
+		    Level.FINEST, e,
+		    "login authentication failed for name:{0}", name);
+		loginFailure("login failed", e);
+		return;
+	    }
+
+	    listener.newLogin(
+		identity, SimpleSgsProtocolImpl.this, new LoginHandler());
+
+	    // Resume reading immediately
+	    readNow();
+	}
+    }
+
     /**
      * Processes the received message.  This implementation processes
      * opcodes for {@code SimpleSgsProtocol} version {@code 0x04}.  A
@@ -777,7 +1245,7 @@ public class SimpleSgsProtocolImpl implements SessionProtocol {
 		
 	    case SimpleSgsProtocol.LOGIN_REQUEST:
 
-		byte version = msg.getByte();
+		byte version = negotiateVersion(msg.getByte());
 	        if (version != getProtocolVersion()) {
 	            if (logger.isLoggable(Level.SEVERE)) {
 	                logger.log(Level.SEVERE,
@@ -791,23 +1259,24 @@ public class SimpleSgsProtocolImpl implements SessionProtocol {
 		String name = msg.getString();
 		String password = msg.getString();
 
-		try {
-		    identity = acceptor.authenticate(name, password);
-		} catch (Exception e) {
-		    logger.logThrow(
-			Level.FINEST, e,
-			"login authentication failed for name:{0}", name);
-		    loginFailure("login failed", e);
-		    
-		    break;
+		/*
+		 * Authenticate on one of the acceptor's login threads so
+		 * that this I/O thread is free to process reads for other
+		 * connections.  Reading for this connection resumes once
+		 * the login has been handed off.
+		 */
+		if (!acceptor.scheduleLoginTask(
+			new LoginTask(name, password)))
+		{
+		    if (logger.isLoggable(Level.FINE)) {
+			logger.log(
+			    Level.FINE,
+			    "login refused, too many pending logins, name:{0}",
+			    name);
+		    }
+		    loginFailure("server busy", null);
 		}
 
-		listener.newLogin(
- 		    identity, SimpleSgsProtocolImpl.this, new LoginHandler());
-		
-                // Resume reading immediately
-		readNow();
-
 		break;
 
 	    case SimpleSgsProtocol.SESSION_MESSAGE:
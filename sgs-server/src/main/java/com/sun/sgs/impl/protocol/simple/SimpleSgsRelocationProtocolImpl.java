@@ -291,7 +291,7 @@ public class SimpleSgsRelocationProtocolImpl
 		
 	    case SimpleSgsProtocol.RELOCATE_REQUEST:
 
-		byte version = msg.getByte();
+		byte version = negotiateVersion(msg.getByte());
 	        if (version != getProtocolVersion()) {
 	            if (logger.isLoggable(Level.SEVERE)) {
 	                logger.log(Level.SEVERE,
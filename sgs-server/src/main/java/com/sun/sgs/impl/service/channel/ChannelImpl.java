@@ -25,6 +25,7 @@ import com.sun.sgs.app.AppContext;
 import com.sun.sgs.app.Channel;
 import com.sun.sgs.app.ChannelListener;
 import com.sun.sgs.app.ClientSession;
+import com.sun.sgs.app.ClientSessionHandle;
 import com.sun.sgs.app.Delivery;
 import com.sun.sgs.app.DeliveryNotSupportedException;
 import com.sun.sgs.app.ManagedObject;
@@ -62,7 +63,10 @@ import java.io.Serializable;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -140,8 +144,8 @@ final class ChannelImpl implements ManagedObject, Serializable {
     static final String SAVED_MESSAGES_MAP_PREFIX = PKG_NAME + "message.";
 
     /** The empty channel membership set. */
-    static final Set<BigInteger> EMPTY_CHANNEL_MEMBERSHIP =
-	Collections.emptySet();
+    static final Map<BigInteger, String> EMPTY_CHANNEL_MEMBERSHIP =
+	Collections.emptyMap();
 
     /** The random number generator for choosing a new coordinator. */
     private static final Random random = new Random();
@@ -357,21 +361,36 @@ final class ChannelImpl implements ManagedObject, Serializable {
 
     /** Implements {@link Channel#getSessions}. */
     Iterator<ClientSession> getSessions() {
+	return new ClientSessionIterator(getChannelMembership().keySet());
+    }
+
+    /** Implements {@link Channel#getSessionCount}. */
+    int getSessionCount() {
 	checkClosed();
+	return
+	    servers.isEmpty() ?
+	    0 :
+	    ChannelServiceImpl.getInstance().getChannelMembershipCount(
+		txn, channelRefId, servers);
+    }
 
-	Set<BigInteger> channelMembers = null;
-	
-	if (!servers.isEmpty()) {
-	    channelMembers =
-		ChannelServiceImpl.getInstance().collectChannelMembership(
-		    txn, channelRefId, servers);
-	}
+    /** Implements {@link Channel#getSessionHandles}. */
+    Iterator<ClientSessionHandle> getSessionHandles() {
+	return new ClientSessionHandleIterator(getChannelMembership());
+    }
 
-	return
-	    new ClientSessionIterator(
-		channelMembers != null ?
-		channelMembers :
-		EMPTY_CHANNEL_MEMBERSHIP);
+    /**
+     * Returns a snapshot of this channel's membership, mapping each
+     * member's session ID to its name (or {@code null} if the name is not
+     * known).
+     */
+    private Map<BigInteger, String> getChannelMembership() {
+	checkClosed();
+	if (servers.isEmpty()) {
+	    return EMPTY_CHANNEL_MEMBERSHIP;
+	}
+	return ChannelServiceImpl.getInstance().collectChannelMembership(
+	    txn, channelRefId, servers);
     }
 
     /** Implements {@link Channel#join(ClientSession)}. */
@@ -402,7 +421,11 @@ final class ChannelImpl implements ManagedObject, Serializable {
     /** Implements {@link Channel#join(Set)}.
      *
      * Enqueues a join event to this channel's event queue and notifies
-     * this channel's coordinator to service the event.
+     * this channel's coordinator to service the event.  If more than one
+     * session is joining, a single bulk join event containing all of the
+     * sessions (grouped by node) is enqueued, so that the cost of
+     * servicing the event depends on the number of nodes involved rather
+     * than the number of sessions.
      */
     void join(final Set<? extends ClientSession> sessions) {
 	try {
@@ -424,13 +447,22 @@ final class ChannelImpl implements ManagedObject, Serializable {
 	    }
 	    
 	    /*
-	     * Enqueue join requests, each with underlying (unwrapped)
-	     * client session object.
+	     * Enqueue join request(s) with underlying (unwrapped) client
+	     * session objects.
 	     */
 	    EventQueue eventQueue = eventQueueRef.get();
-	    for (ClientSession session : sessions) {
+	    if (sessions.size() == 1) {
+		ClientSession session = sessions.iterator().next();
 		updateMaxMessageLength(session);
 		addEvent(new JoinEvent(unwrapSession(session), eventQueue));
+	    } else if (!sessions.isEmpty()) {
+		List<ClientSession> unwrappedSessions =
+		    new ArrayList<ClientSession>(sessions.size());
+		for (ClientSession session : sessions) {
+		    updateMaxMessageLength(session);
+		    unwrappedSessions.add(unwrapSession(session));
+		}
+		addEvent(new BulkJoinEvent(unwrappedSessions, eventQueue));
 	    }
 	    logger.log(Level.FINEST, "join sessions:{0} returns", sessions);
 
@@ -587,8 +619,10 @@ final class ChannelImpl implements ManagedObject, Serializable {
 
     /** Implements {@link Channel#leave(Set)}.
      *
-     * Enqueues leave event(s) to this channel's event queue and notifies
-     * this channel's coordinator to service the event(s).
+     * Enqueues a leave event to this channel's event queue and notifies
+     * this channel's coordinator to service the event.  If more than one
+     * session is leaving, a single bulk leave event containing all of the
+     * sessions (grouped by node) is enqueued.
      */
     void leave(final Set<? extends ClientSession> sessions) {
 	try {
@@ -598,12 +632,21 @@ final class ChannelImpl implements ManagedObject, Serializable {
 	    }
 
 	    /*
-	     * Enqueue leave requests, each with underlying (unwrapped)
-	     * client session object.
+	     * Enqueue leave request(s) with underlying (unwrapped) client
+	     * session objects.
 	     */
-	    for (ClientSession session : sessions) {
-		addEvent(new LeaveEvent(unwrapSession(session),
-					eventQueueRef.get()));
+	    EventQueue eventQueue = eventQueueRef.get();
+	    if (sessions.size() == 1) {
+		addEvent(new LeaveEvent(
+			     unwrapSession(sessions.iterator().next()),
+			     eventQueue));
+	    } else if (!sessions.isEmpty()) {
+		List<ClientSession> unwrappedSessions =
+		    new ArrayList<ClientSession>(sessions.size());
+		for (ClientSession session : sessions) {
+		    unwrappedSessions.add(unwrapSession(session));
+		}
+		addEvent(new BulkLeaveEvent(unwrappedSessions, eventQueue));
 	    }
 	    logger.log(Level.FINEST, "leave sessions:{0} returns", sessions);
 
@@ -1318,6 +1361,120 @@ final class ChannelImpl implements ManagedObject, Serializable {
 	}
     }
 
+    /**
+     * An iterator for {@code ClientSessionHandle}s, given a map of
+     * session IDs to names.  The iterator does not access the sessions.
+     */
+    private static class ClientSessionHandleIterator
+	implements Iterator<ClientSessionHandle>
+    {
+	/** The iterator for the channel membership entries. */
+	private final Iterator<Map.Entry<BigInteger, String>> iterator;
+
+	/**
+	 * Constructs an instance of this class with the specified
+	 * {@code channelMembers}.
+	 */
+	ClientSessionHandleIterator(Map<BigInteger, String> channelMembers) {
+	    iterator = channelMembers.entrySet().iterator();
+	}
+
+	/** {@inheritDoc} */
+	public boolean hasNext() {
+	    return iterator.hasNext();
+	}
+
+	/** {@inheritDoc} */
+	public ClientSessionHandle next() {
+	    Map.Entry<BigInteger, String> entry = iterator.next();
+	    return new SessionHandle(entry.getKey(), entry.getValue());
+	}
+
+	/** {@inheritDoc} */
+	public void remove() {
+	    throw new UnsupportedOperationException("remove is not supported");
+	}
+    }
+
+    /**
+     * A handle to a channel member, consisting of the member's session
+     * ID and name.  The underlying client session is only accessed if the
+     * session is requested, or if the name was not known when the handle
+     * was created.
+     */
+    private static class SessionHandle
+	implements ClientSessionHandle, Serializable
+    {
+	/** The serialVersionUID for this class. */
+	private static final long serialVersionUID = 1L;
+
+	/** The session ID. */
+	private final BigInteger sessionRefId;
+
+	/** The session's name, or {@code null} if not known. */
+	private String name;
+
+	/**
+	 * Constructs an instance with the specified {@code sessionRefId}
+	 * and {@code name}.
+	 */
+	SessionHandle(BigInteger sessionRefId, String name) {
+	    this.sessionRefId = sessionRefId;
+	    this.name = name;
+	}
+
+	/** {@inheritDoc} */
+	public BigInteger getId() {
+	    return sessionRefId;
+	}
+
+	/** {@inheritDoc} */
+	public String getName() {
+	    if (name == null) {
+		name = getSessionImpl().getName();
+	    }
+	    return name;
+	}
+
+	/** {@inheritDoc} */
+	public ClientSession getSession() {
+	    return getSessionImpl().getWrappedClientSession();
+	}
+
+	/**
+	 * Returns the underlying client session, or throws {@code
+	 * IllegalStateException} if the session has been removed.
+	 */
+	private ClientSessionImpl getSessionImpl() {
+	    ClientSessionImpl session =
+		(ClientSessionImpl) getObjectForId(sessionRefId);
+	    if (session == null) {
+		throw new IllegalStateException(
+		    "client session is disconnected");
+	    }
+	    return session;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean equals(Object object) {
+	    return object instanceof SessionHandle &&
+		sessionRefId.equals(((SessionHandle) object).sessionRefId);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int hashCode() {
+	    return sessionRefId.hashCode();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+	    return "SessionHandle[id:" + sessionRefId + ", name:" + name + "]";
+	}
+    }
+
     /**
      * A wrapper for a {@code ChannelListener} that is serializable,
      * but not managed.
@@ -1887,6 +2044,7 @@ final class ChannelImpl implements ManagedObject, Serializable {
 	protected final BigInteger channelRefId;
 	protected final long timestamp;
 	private final BigInteger eventRefId;
+	private final BigInteger eventQueueRefId;
 	
 	/**
 	 * Constructs an instance.  This constructor must be called within a
@@ -1899,6 +2057,7 @@ final class ChannelImpl implements ManagedObject, Serializable {
 	    this.eventRefId =
 		getDataService().createReference(channelEvent).getId();
 	    this.timestamp = channelEvent.timestamp;
+	    this.eventQueueRefId = channel.eventQueueRef.getId();
 	}
 	
 	/**
@@ -1940,6 +2099,30 @@ final class ChannelImpl implements ManagedObject, Serializable {
 	    }
 	}
 
+	/**
+	 * Returns the event queue's latest timestamp.  This method may be
+	 * invoked outside of a transaction.
+	 */
+	protected long getEventQueueTimestamp() {
+	    
+	    try {
+		return channelService.runTransactionalCallable(
+ 		  new KernelCallable<Long>("getEventQueueTimestamp") {
+		      public Long call() {
+			  EventQueue eventQueue = (EventQueue)
+			      getObjectForId(eventQueueRefId);
+			  if (eventQueue != null) {
+			      return eventQueue.getNextTimestamp();
+			  } else {
+			      return -1L;
+			  }
+		    }
+		});
+	    } catch (Exception e) {
+		return -1L;
+	    }
+	}
+
 	/**
 	 * Removes the specified {@code nodeId} from the associated
 	 * channel.
@@ -1975,7 +2158,6 @@ final class ChannelImpl implements ManagedObject, Serializable {
 	protected final String name;
 	protected final Delivery delivery;
 	protected final BigInteger sessionRefId;
-	private final BigInteger eventQueueRefId;
 
 	/** The session's node ID.  Initialized during construction
 	 * and modified by calls to {@code removeMembershipIfNodeUnchanged}
@@ -1995,7 +2177,6 @@ final class ChannelImpl implements ManagedObject, Serializable {
 	    super(channel, channelEvent);
 	    this.name = channel.name;
 	    this.delivery = channel.delivery;
-	    this.eventQueueRefId = channel.eventQueueRef.getId();
 	    this.sessionRefId = sessionRefId;
 	    this.sessionNodeId = getNodeId(session);
 	}
@@ -2132,30 +2313,6 @@ final class ChannelImpl implements ManagedObject, Serializable {
 		return false;
 	    }
 	}
-
-	/**
-	 * Returns the event queue's latest timestamp.  This method may be
-	 * invoked outside of a transaction.
-	 */
-	protected long getEventQueueTimestamp() {
-	    
-	    try {
-		return channelService.runTransactionalCallable(
- 		  new KernelCallable<Long>("getEventQueueTimestamp") {
-		      public Long call() {
-			  EventQueue eventQueue = (EventQueue)
-			      getObjectForId(eventQueueRefId);
-			  if (eventQueue != null) {
-			      return eventQueue.getNextTimestamp();
-			  } else {
-			      return -1L;
-			  }
-		    }
-		});
-	    } catch (Exception e) {
-		return -1L;
-	    }
-	}
     }
 
     /**
@@ -2322,6 +2479,429 @@ final class ChannelImpl implements ManagedObject, Serializable {
 	}
     }
 
+    /**
+     * A channel membership event for a group of sessions.  The sessions'
+     * IDs are grouped by the ID of the node that each session is
+     * connected to (or relocating to) when the event is constructed, so
+     * that the event can be serviced with one durable update to the
+     * channel and one notification per node, instead of one per session.
+     * Sessions that have since moved to another node, or disconnected,
+     * are regrouped by the notify task when their notification fails,
+     * so servicing the event does not need to look up every session.
+     */
+    private abstract static class BulkMembershipEvent extends ChannelEvent {
+	/** The serialVersionUID for this class. */
+	private static final long serialVersionUID = 1L;
+
+	/** The session IDs, keyed by node ID. */
+	protected final Map<Long, List<BigInteger>> sessionsByNode =
+	    new HashMap<Long, List<BigInteger>>();
+
+	/**
+	 * Constructs an event with the specified (unwrapped) {@code
+	 * sessions}.
+	 */
+	BulkMembershipEvent(List<ClientSession> sessions,
+			    EventQueue eventQueue)
+	{
+	    super(eventQueue.getNextTimestamp());
+	    for (ClientSession session : sessions) {
+		long nodeId = getNodeId((ClientSessionImpl) session);
+		List<BigInteger> sessionRefIds = sessionsByNode.get(nodeId);
+		if (sessionRefIds == null) {
+		    sessionRefIds = new ArrayList<BigInteger>();
+		    sessionsByNode.put(nodeId, sessionRefIds);
+		}
+		sessionRefIds.add(getSessionRefId(session));
+	    }
+	}
+
+	/**
+	 * Returns a string representation of field:value pairs, separated
+	 * by commas.
+	 */
+	@Override
+	protected String toStringFieldsOnly() {
+	    int numSessions = 0;
+	    for (List<BigInteger> sessionRefIds : sessionsByNode.values()) {
+		numSessions += sessionRefIds.size();
+	    }
+	    return "nodeIds:" + sessionsByNode.keySet() +
+		", sessions:" + numSessions + ", " +
+		super.toStringFieldsOnly();
+	}
+    }
+
+    /**
+     * A channel join event for a group of sessions.
+     */
+    private static class BulkJoinEvent extends BulkMembershipEvent {
+	/** The serialVersionUID for this class. */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructs a join event with the specified {@code sessions}.
+	 */
+	BulkJoinEvent(List<ClientSession> sessions, EventQueue eventQueue) {
+	    super(sessions, eventQueue);
+	}
+
+	/** {@inheritDoc} */
+	public boolean serviceEvent(ChannelImpl channel) {
+	    assert isProcessing() && !isCompleted();
+	    for (long nodeId : sessionsByNode.keySet()) {
+		channel.addServerNodeId(nodeId);
+	    }
+	    BulkJoinNotifyTask task = new BulkJoinNotifyTask(channel, this);
+	    ChannelServiceImpl.getInstance().addChannelTaskOnCommit(
+		channel.channelRefId, task);
+	    return isCompleted();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+	    return "BulkJoinEvent[" + toStringFieldsOnly() + "]";
+	}
+    }
+
+    /**
+     * A channel leave event for a group of sessions.
+     */
+    private static class BulkLeaveEvent extends BulkMembershipEvent {
+	/** The serialVersionUID for this class. */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructs a leave event with the specified {@code sessions}.
+	 */
+	BulkLeaveEvent(List<ClientSession> sessions, EventQueue eventQueue) {
+	    super(sessions, eventQueue);
+	}
+
+	/** {@inheritDoc} */
+	public boolean serviceEvent(ChannelImpl channel) {
+	    assert isProcessing() && !isCompleted();
+	    BulkLeaveNotifyTask task = new BulkLeaveNotifyTask(channel, this);
+	    ChannelServiceImpl.getInstance().addChannelTaskOnCommit(
+		channel.channelRefId, task);
+	    return isCompleted();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+	    return "BulkLeaveEvent[" + toStringFieldsOnly() + "]";
+	}
+    }
+
+    /**
+     * A non-transactional task to send a membership notification for a
+     * group of sessions to each of the sessions' nodes, one notification
+     * per node, allowing for the possibility of sessions relocating while
+     * a notification is in transit.
+     */
+    private abstract static class BulkNotifyTask extends NotifyTask {
+
+	protected final String name;
+	protected final Delivery delivery;
+
+	/** The session IDs still to be notified, keyed by node ID.  This
+	 * map is only accessed by the thread running this task. */
+	private final Map<Long, List<BigInteger>> sessionsByNode =
+	    new HashMap<Long, List<BigInteger>>();
+
+	/** The session IDs of the sessions successfully notified. */
+	protected final List<BigInteger> notifiedSessions =
+	    new ArrayList<BigInteger>();
+
+	/**
+	 * Constructs an instance.  This constructor must be called within a
+	 * transaction.
+	 */
+	BulkNotifyTask(ChannelImpl channel, BulkMembershipEvent event) {
+	    super(channel, event);
+	    this.name = channel.name;
+	    this.delivery = channel.delivery;
+	    for (Map.Entry<Long, List<BigInteger>> entry :
+		     event.sessionsByNode.entrySet())
+	    {
+		sessionsByNode.put(entry.getKey(),
+				   new ArrayList<BigInteger>(entry.getValue()));
+	    }
+	}
+
+	/**
+	 * This must be called outside of a transaction.
+	 */
+	public void run() {
+	    channelService.checkNonTransactionalContext();
+	    while (!sessionsByNode.isEmpty() &&
+		   !channelService.shuttingDown())
+	    {
+		long nodeId = sessionsByNode.keySet().iterator().next();
+		List<BigInteger> sessionRefIds = sessionsByNode.remove(nodeId);
+		ChannelServer server = getChannelServer(nodeId);
+		if (server == null) {
+		    // Sessions whose node hasn't changed are disconnected
+		    // because their channel server is gone.
+		    updateSessionNodeIds(nodeId, sessionRefIds);
+		    continue;
+		}
+		try {
+		    BigInteger[] failedSessionRefIds = sendNotification(
+			server,
+			sessionRefIds.toArray(
+			    new BigInteger[sessionRefIds.size()]));
+		    if (failedSessionRefIds.length == 0) {
+			notifiedSessions.addAll(sessionRefIds);
+		    } else {
+			// Sessions that weren't connected to the node are
+			// either relocating or disconnected.
+			Set<BigInteger> failed = new HashSet<BigInteger>(
+			    Arrays.asList(failedSessionRefIds));
+			for (BigInteger sessionRefId : sessionRefIds) {
+			    if (!failed.contains(sessionRefId)) {
+				notifiedSessions.add(sessionRefId);
+			    }
+			}
+			updateSessionNodeIds(nodeId, failed);
+		    }
+		    
+		} catch (IOException e) {
+		    if (!channelService.isAlive(nodeId)) {
+			// Sessions whose node hasn't changed are
+			// disconnected because their node crashed.
+			removeNodeIdFromChannel(nodeId);
+			updateSessionNodeIds(nodeId, sessionRefIds);
+			continue;
+		    }
+		    // Wait for transient situation to resolve.
+		    sessionsByNode.put(nodeId, sessionRefIds);
+		    try {
+			Thread.sleep(200);
+		    } catch (InterruptedException ie) {
+		    }
+		}
+	    }
+
+	    // Mark event as completed and add task to resume
+	    // servicing the event queue.
+	    completed();
+	}
+
+	/**
+	 * Sends a notification message for the sessions with the
+	 * specified {@code sessionRefIds} to the specified channel {@code
+	 * server}, and returns the IDs of the sessions for which the
+	 * notification could not be delivered.  This method is invoked
+	 * outside of a transaction.
+	 *
+	 * @return the IDs of sessions not notified
+	 * @throws IOException if a communication problem occurs while sending
+	 * 	   the notification
+	 */
+	protected abstract BigInteger[] sendNotification(
+	    ChannelServer server, BigInteger[] sessionRefIds)
+	    throws IOException;
+
+	/**
+	 * Returns {@code true} if when a session's node ID changes, it
+	 * should be added to the channel's set of node IDs, and returns
+	 * {@code false} otherwise.  This method is invoked inside of a
+	 * transaction.
+	 *
+	 * @return {@code true} if when a session's node ID changes, it
+	 *	   should be added to the channel's set of node IDs, and
+	 *	   {@code false} otherwise
+	 */
+	protected abstract boolean addChangedSessionNodeId();
+
+	/**
+	 * Looks up the current node ID of each session with the specified
+	 * {@code sessionRefIds}, which were last known to be on the node
+	 * with the specified {@code oldNodeId}, and regroups those
+	 * sessions whose node ID has changed so that they are notified on
+	 * their new nodes.  Sessions that no longer exist or whose node ID
+	 * is unchanged are dropped.  If {@code addChangedSessionNodeId}
+	 * returns {@code true}, each new node ID is added to the channel's
+	 * set of node IDs.  All sessions are looked up in a single
+	 * transaction.  This method is invoked outside of a transaction.
+	 */
+	private void updateSessionNodeIds(
+	    final long oldNodeId, final Collection<BigInteger> sessionRefIds)
+	{
+	    Map<Long, List<BigInteger>> changed;
+	    try {
+		changed = channelService.runTransactionalCallable(
+ 		  new KernelCallable<Map<Long, List<BigInteger>>>(
+		      "updateSessionNodeIds")
+		  {
+		    public Map<Long, List<BigInteger>> call() {
+			Map<Long, List<BigInteger>> newSessionsByNode =
+			    new HashMap<Long, List<BigInteger>>();
+			for (BigInteger sessionRefId : sessionRefIds) {
+			    ClientSessionImpl session = (ClientSessionImpl)
+				getObjectForId(sessionRefId);
+			    if (session == null) {
+				continue;
+			    }
+			    long nodeId = getNodeId(session);
+			    if (nodeId == oldNodeId) {
+				continue;
+			    }
+			    List<BigInteger> ids =
+				newSessionsByNode.get(nodeId);
+			    if (ids == null) {
+				ids = new ArrayList<BigInteger>();
+				newSessionsByNode.put(nodeId, ids);
+			    }
+			    ids.add(sessionRefId);
+			}
+			if (!newSessionsByNode.isEmpty() &&
+			    addChangedSessionNodeId())
+			{
+			    ChannelImpl channel = getChannel();
+			    if (channel == null) {
+				return Collections.emptyMap();
+			    }
+			    for (long nodeId : newSessionsByNode.keySet()) {
+				channel.addServerNodeId(nodeId);
+			    }
+			}
+			return newSessionsByNode;
+		    }
+		});
+		
+	    } catch (Exception e) {
+		// Transaction scheduler will print out warning.
+		return;
+	    }
+	    for (Map.Entry<Long, List<BigInteger>> entry : changed.entrySet()) {
+		List<BigInteger> ids = sessionsByNode.get(entry.getKey());
+		if (ids == null) {
+		    sessionsByNode.put(entry.getKey(), entry.getValue());
+		} else {
+		    ids.addAll(entry.getValue());
+		}
+	    }
+	}
+
+	/**
+	 * Caches a membership event of the specified {@code eventType}
+	 * for each session notified if the event queue has moved past
+	 * this task's timestamp.
+	 */
+	protected void cacheMembershipEvents(MembershipEventType eventType) {
+	    long eventQueueTimestamp = getEventQueueTimestamp();
+	    if (eventQueueTimestamp > timestamp) {
+		for (BigInteger sessionRefId : notifiedSessions) {
+		    channelService.cacheMembershipEvent(
+			eventType, channelRefId, sessionRefId,
+			timestamp, eventQueueTimestamp);
+		}
+	    }
+	}
+    }
+
+    /**
+     * A non-transactional task to send join notifications for a group of
+     * sessions to the sessions' nodes.
+     */
+    private static class BulkJoinNotifyTask extends BulkNotifyTask {
+
+	/**
+	 * Constructs an instance.  This constructor must be called within a
+	 * transaction.
+	 */
+	BulkJoinNotifyTask(ChannelImpl channel, BulkJoinEvent joinEvent) {
+	    super(channel, joinEvent);
+	}
+
+	/** {@inheritDoc} <p> Sends a join notification. */
+	protected BigInteger[] sendNotification(
+	    ChannelServer server, BigInteger[] sessionRefIds)
+	    throws IOException
+	{
+	    // See JoinNotifyTask for the use of "timestamp - 1".
+	    BigInteger[] failed =
+		server.join(name, channelRefId, (byte) delivery.ordinal(),
+			    timestamp - 1, sessionRefIds);
+	    if (logger.isLoggable(Level.FINEST)) {
+		logger.log(
+		    Level.FINEST,
+		    "Sent bulk join, name:{0} channel:{1} sessions:{2} " +
+		    "coordinator:{3} failed:{4}", name,
+		    channelRefId, sessionRefIds.length,
+		    getLocalNodeId(), failed.length);
+	    }
+	    return failed;
+	}
+
+	/** {@inheritDoc} <p>
+	 *
+	 * A join event requires that a changed session's node ID be added to
+	 * the channel's set of server node IDs.
+	 */
+	protected boolean addChangedSessionNodeId() {
+	    return true;
+	}
+
+	/** {@inheritDoc} */
+	protected void completed() {
+	    cacheMembershipEvents(MembershipEventType.JOIN);
+	    super.completed();
+	}
+    }
+
+    /**
+     * A non-transactional task to send leave notifications for a group of
+     * sessions to the sessions' nodes.
+     */
+    private static class BulkLeaveNotifyTask extends BulkNotifyTask {
+
+	/**
+	 * Constructs an instance.  This constructor must be called within a
+	 * transaction.
+	 */
+	BulkLeaveNotifyTask(ChannelImpl channel, BulkLeaveEvent leaveEvent) {
+	    super(channel, leaveEvent);
+	}
+
+	/** {@inheritDoc} <p> Sends a leave notification. */
+	protected BigInteger[] sendNotification(
+	    ChannelServer server, BigInteger[] sessionRefIds)
+	    throws IOException
+	{
+	    BigInteger[] failed =
+		server.leave(channelRefId, timestamp, sessionRefIds);
+	    if (logger.isLoggable(Level.FINEST)) {
+		logger.log(
+		    Level.FINEST,
+		    "Sent bulk leave, channel:{0} sessions:{1} " +
+		    "coordinator:{2} failed:{3}",
+		    channelRefId, sessionRefIds.length,
+		    getLocalNodeId(), failed.length);
+	    }
+	    return failed;
+	}
+
+	/** {@inheritDoc} <p>
+	 *
+	 * A leave event should not have a changed session's node ID
+	 * added to the channel's set of server node IDs.
+	 */
+	protected boolean addChangedSessionNodeId() {
+	    return false;
+	}
+
+	/** {@inheritDoc} */
+	protected void completed() {
+	    cacheMembershipEvents(MembershipEventType.LEAVE);
+	    super.completed();
+	}
+    }
+
     /**
      * A channel send event.
      */
@@ -25,6 +25,7 @@ import com.sun.sgs.app.Delivery;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.rmi.Remote;
+import java.util.Map;
 
 /**
  * A remote interface for communicating channel events and other
@@ -122,6 +123,31 @@ public interface ChannelServer extends Remote {
 		 long timestamp, BigInteger sessionRefId)
 	throws IOException;
 
+    /**
+     * Notifies this server that the locally-connected sessions with
+     * the specified {@code sessionRefIds} have joined the channel with
+     * the specified {@code name} and {@code channelRefId}.  This method
+     * is equivalent to invoking {@link #join(String,BigInteger,byte,long,
+     * BigInteger) join} for each session, but requires only one remote
+     * call.
+     *
+     * @param	name a channel name
+     * @param	channelRefId a channel ID
+     * @param	deliveryOrdinal the channel's delivery requirement, as a {@link
+     *		Delivery} ordinal
+     * @param	timestamp the timestamp of the last channel message sent
+     * @param	sessionRefIds an array of session IDs
+     * @return	an array containing the ID of each session that is not
+     *		locally connected and is not known to be relocating (that
+     *		is, each session for which the join did not succeed)
+     * @throws	IOException if a communication problem occurs while
+     * 		invoking this method
+     */
+    BigInteger[] join(String name, BigInteger channelRefId,
+		      byte deliveryOrdinal, long timestamp,
+		      BigInteger[] sessionRefIds)
+	throws IOException;
+
     /**
      * Notifies this server that the locally-connected session with
      * the specified {@code sessionRefId} has left the channel with the
@@ -142,16 +168,38 @@ public interface ChannelServer extends Remote {
 	throws IOException;
 
     /**
-     * Returns an array containing the client session ID of each client
-     * session on this node that is a member of the channel with the
-     * specified {@code channelRefId}.
+     * Notifies this server that the locally-connected sessions with
+     * the specified {@code sessionRefIds} have left the channel with the
+     * specified {@code channelRefId}.  This method is equivalent to
+     * invoking {@link #leave(BigInteger,long,BigInteger) leave} for each
+     * session, but requires only one remote call.
      *
      * @param	channelRefId a channel ID
-     * @return	an array of members' session IDs
+     * @param	timestamp the timestamp of the last channel message sent
+     * @param	sessionRefIds an array of session IDs
+     * @return	an array containing the ID of each session that is not
+     *		locally connected and is not known to be relocating (that
+     *		is, each session for which the leave did not succeed)
      * @throws	IOException if a communication problem occurs while
      * 		invoking this method
      */
-    BigInteger[] getSessions(BigInteger channelRefId)
+    BigInteger[] leave(BigInteger channelRefId, long timestamp,
+		       BigInteger[] sessionRefIds)
+	throws IOException;
+
+    /**
+     * Returns a map containing an entry for each client session on this
+     * node that is a member of the channel with the specified {@code
+     * channelRefId}.  Each entry maps the session's ID to the session's
+     * name, or to {@code null} if the name is not known (for example,
+     * because the session is still relocating to this node).
+     *
+     * @param	channelRefId a channel ID
+     * @return	a map of members' session IDs to their names
+     * @throws	IOException if a communication problem occurs while
+     * 		invoking this method
+     */
+    Map<BigInteger, String> getSessions(BigInteger channelRefId)
 	throws IOException;
     
     /**
@@ -175,11 +223,12 @@ public interface ChannelServer extends Remote {
      * the session's channel memberships should be updated accordingly.
      * The {@code channelRefIds} array contains the channel ID of each
      * channel that the client session belongs to.  The {@code
-     * deliveryOrdinals} array contains the delivery ordinal of each
-     * corresponding channel. The {@code msgTimestamps} array contains the
-     * timestamp of the latest message received by the specified session
-     * (at the point that relocation started) for each corresponding
-     * channel.<p>
+     * channelNames} array contains the name of each corresponding
+     * channel.  The {@code deliveryOrdinals} array contains the delivery
+     * ordinal of each corresponding channel. The {@code msgTimestamps}
+     * array contains the timestamp of the latest message received by the
+     * specified session (at the point that relocation started) for each
+     * corresponding channel.<p>
      *
      * This server must update its local channel membership cache for the
      * specified session and add persistent membership information to
@@ -195,6 +244,8 @@ public interface ChannelServer extends Remote {
      * @param	oldNodeId the ID of the node the session is relocating from
      * @param	channelRefIds an array that contains the channel ID of each
      *		channel that the client session is a member of
+     * @param	channelNames an array that contains the name of each
+     *		channel that the client session is a member of
      * @param	deliveryOrdinals an array that contains the delivery ordinal
      *		of each channel that the client session is a member of
      * @param	msgTimestamps an array that contains the message timestamp
@@ -204,6 +255,7 @@ public interface ChannelServer extends Remote {
      */
     void relocateChannelMemberships(BigInteger sessionRefId, long oldNodeId,
 				    BigInteger[] channelRefIds,
+				    String[] channelNames,
 				    byte[] deliveryOrdinals,
 				    long[] msgTimestamps)
 	throws IOException;
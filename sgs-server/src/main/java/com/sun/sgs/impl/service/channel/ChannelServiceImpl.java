@@ -31,6 +31,7 @@ import com.sun.sgs.app.ObjectNotFoundException;
 import com.sun.sgs.app.Task;
 import com.sun.sgs.app.TransactionNotActiveException;
 import com.sun.sgs.app.TransactionTimeoutException;
+import com.sun.sgs.auth.Identity;
 import com.sun.sgs.impl.kernel.StandardProperties;
 import com.sun.sgs.impl.service.channel.ChannelImpl.ChannelMessageInfo;
 import com.sun.sgs.impl.service.channel.ChannelServer.MembershipStatus;
@@ -53,6 +54,7 @@ import com.sun.sgs.kernel.KernelRunnable;
 import com.sun.sgs.kernel.TaskQueue;
 import com.sun.sgs.profile.ProfileCollector;
 import com.sun.sgs.protocol.SessionProtocol;
+import com.sun.sgs.service.ChannelMessageFilter;
 import com.sun.sgs.service.ClientSessionStatusListener;
 import com.sun.sgs.service.ClientSessionService;
 import com.sun.sgs.service.DataService;
@@ -68,6 +70,7 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -134,6 +137,17 @@ import javax.management.JMException;
  *	time to save reliable channel messages so that relocating client
  *	sessions can obtain channel messages that were missed during
  *	relocation. <p>
+ *
+ * <dt> <i>Property:</i> <code><b>
+ *	{@value #MESSAGE_FILTER_PROPERTY}
+ *	</b></code><br>
+ *	<i>Default:</i> <i>none</i>
+ *
+ * <dd style="padding-top: .5em">Specifies the name of a class that
+ *	implements {@link ChannelMessageFilter}, which is applied to each
+ *	channel message before it is delivered to each local channel
+ *	member.  If the property is not specified, messages are not
+ *	filtered.<p>
  * 
  * </dl> <p>
  */
@@ -186,6 +200,10 @@ public final class ChannelServiceImpl
     /** The default write buffer size: {@value #DEFAULT_WRITE_BUFFER_SIZE}. */
     static final int DEFAULT_WRITE_BUFFER_SIZE = 128 * 1024;
 
+    /** The name of the message filter property. */
+    static final String MESSAGE_FILTER_PROPERTY =
+	PKG_NAME + ".message.filter";
+
     /** The transaction context map. */
     private static TransactionContextMap<Context> contextMap = null;
 
@@ -237,9 +255,9 @@ public final class ChannelServiceImpl
     /** The cache of channel membership snapshots, keyed by channel ID.
      * The cache entry timeout is one second.
      */
-    private final CacheMap<BigInteger, Set<BigInteger>>
+    private final CacheMap<BigInteger, Map<BigInteger, String>>
 	channelMembershipCache =
-	    new CacheMap<BigInteger, Set<BigInteger>>(1000);
+	    new CacheMap<BigInteger, Map<BigInteger, String>>(1000);
 
     /**
      * The local channel membership info, keyed by channel ID.  This map is
@@ -306,6 +324,9 @@ public final class ChannelServiceImpl
     /** The timeout expiration, in milliseconds, for a client session to
      * relocate. */
     final long sessionRelocationTimeout;
+
+    /** The filter for channel messages, or {@code null}. */
+    private final ChannelMessageFilter messageFilter;
     
     /** Our JMX exposed statistics. */
     final ChannelServiceStats serviceStats;
@@ -366,6 +387,9 @@ public final class ChannelServiceImpl
 		StandardProperties.SESSION_RELOCATION_TIMEOUT_PROPERTY,
 		StandardProperties.DEFAULT_SESSION_RELOCATION_TIMEOUT,
 		500, Long.MAX_VALUE);
+	    messageFilter = wrappedProps.getClassInstanceProperty(
+		MESSAGE_FILTER_PROPERTY, ChannelMessageFilter.class,
+		new Class[] { Properties.class }, properties);
 	    
 	    /*
 	     * Export the ChannelServer.
@@ -441,7 +465,10 @@ public final class ChannelServiceImpl
                        writeBufferSize +
 		       "\n  " +
 		       StandardProperties.SESSION_RELOCATION_TIMEOUT_PROPERTY +
-		       "=" + sessionRelocationTimeout);
+		       "=" + sessionRelocationTimeout +
+		       "\n  " + MESSAGE_FILTER_PROPERTY + "=" +
+		       (messageFilter != null ?
+			messageFilter.getClass().getName() : null));
 
 	} catch (Exception e) {
 	    if (logger.isLoggable(Level.CONFIG)) {
@@ -626,16 +653,92 @@ public final class ChannelServiceImpl
 		    sessionRefId, msgTimestamp, task);
 		task.cleanupIfNoLocalChannelMembership();
 		return success;
-		
+
 	    } finally {
 		callFinished();
 	    }
 	}
 
-	/** {@inheritDoc} */
-	public BigInteger[] getSessions(BigInteger channelRefId) {
+	/** {@inheritDoc}
+	 *
+	 * Handles a join notification for each of the specified sessions
+	 * as {@link #join(String,BigInteger,byte,long,BigInteger) join}
+	 * does for a single session.
+	 */
+	public BigInteger[] join(String name, BigInteger channelRefId,
+				 byte deliveryOrdinal, long timestamp,
+				 BigInteger[] sessionRefIds)
+	{
+	    callStarted();
+	    try {
+		if (logger.isLoggable(Level.FINEST)) {
+		    logger.log(
+			Level.FINEST, "join name:{0} channelId:{1} " +
+			"sessions:{2} localNodeId:{3}",
+			name, channelRefId, sessionRefIds.length, localNodeId);
+		}
+
+		ChannelJoinTask task =
+		    new ChannelJoinTask(
+			name, channelRefId,
+			Delivery.values()[deliveryOrdinal]);
+		List<BigInteger> failed = new ArrayList<BigInteger>();
+		for (BigInteger sessionRefId : sessionRefIds) {
+		    if (!handleNotification(sessionRefId, timestamp, task)) {
+			failed.add(sessionRefId);
+		    }
+		}
+		return failed.toArray(new BigInteger[failed.size()]);
+
+	    } finally {
+		callFinished();
+	    }
+	}
+
+	/** {@inheritDoc}
+	 *
+	 * Handles a leave notification for each of the specified sessions
+	 * as {@link #leave(BigInteger,long,BigInteger) leave} does for a
+	 * single session.  If the local node no longer has any members of
+	 * the channel afterwards, the local node is removed from the
+	 * channel's server list once, rather than once per session.
+	 */
+	public BigInteger[] leave(BigInteger channelRefId, long msgTimestamp,
+				  BigInteger[] sessionRefIds)
+	{
+	    callStarted();
+	    try {
+		if (logger.isLoggable(Level.FINEST)) {
+		    logger.log(
+			Level.FINEST, "leave channelId:{0} sessions:{1}",
+			channelRefId, sessionRefIds.length);
+		}
+
+		ChannelLeaveTask task = new ChannelLeaveTask(channelRefId);
+		List<BigInteger> failed = new ArrayList<BigInteger>();
+		for (BigInteger sessionRefId : sessionRefIds) {
+		    if (!handleNotification(
+			    sessionRefId, msgTimestamp, task))
+		    {
+			failed.add(sessionRefId);
+		    }
+		}
+		task.cleanupIfNoLocalChannelMembership();
+		return failed.toArray(new BigInteger[failed.size()]);
+
+	    } finally {
+		callFinished();
+	    }
+	}
+
+	/** {@inheritDoc}
+	 *
+	 * The name of each member is obtained from the client session
+	 * service, so no session objects are accessed.
+	 */
+	public Map<BigInteger, String> getSessions(BigInteger channelRefId) {
 	    callStarted();
-	    BigInteger[] localMembers = null;
+	    Map<BigInteger, String> localMembers = null;
 	    try {
 		if (logger.isLoggable(Level.FINEST)) {
 		    logger.log(
@@ -646,12 +749,11 @@ public final class ChannelServiceImpl
 
 		LocalChannelInfo channelInfo = lockChannel(channelRefId);
 		if (channelInfo == null) {
-		    localMembers = new BigInteger[0];
+		    localMembers = new HashMap<BigInteger, String>();
 		    return localMembers;
 		}
 		try {
-		    localMembers =  channelInfo.members.toArray(
- 			new BigInteger[channelInfo.members.size()]);
+		    localMembers = getLocalMembers(channelInfo);
 		    return localMembers;
 		    
 		} finally {
@@ -747,8 +849,8 @@ public final class ChannelServiceImpl
 	 */
 	public void relocateChannelMemberships(
 	    final BigInteger sessionRefId, long oldNodeId,
-	    BigInteger[] channelRefIds, byte[] deliveryOrdinals,
-	    long[] msgTimestamps)
+	    BigInteger[] channelRefIds, String[] channelNames,
+	    byte[] deliveryOrdinals, long[] msgTimestamps)
 	{
 	    callStarted();
 	    try {
@@ -758,8 +860,8 @@ public final class ChannelServiceImpl
 		 */
 		taskScheduler.scheduleTask(
 		    new AddRelocatingSessionNodeToChannels(
-			sessionRefId, oldNodeId,
-			channelRefIds, deliveryOrdinals, msgTimestamps),
+			sessionRefId, oldNodeId, channelRefIds, channelNames,
+			deliveryOrdinals, msgTimestamps),
 		    taskOwner);
 		
 	    } finally {
@@ -980,6 +1082,7 @@ public final class ChannelServiceImpl
      * {@code channelRefId}.  ALSO adds the {@code channelRefId} to the the
      * local per-session channel map for {@code sessionRefId}.
      *
+     * @param	name the channel's name
      * @param	channelRefId a channel ID
      * @param	delivery the channel's delivery guarantee
      * @param	sessionRefId a session ID
@@ -989,7 +1092,8 @@ public final class ChannelServiceImpl
      *		received
      * @param	isRelocating if session is relocating to this node
      */
-    private void addLocalChannelMember(final BigInteger channelRefId,
+    private void addLocalChannelMember(String name,
+				       final BigInteger channelRefId,
 				       Delivery delivery,
 				       final BigInteger sessionRefId,
 				       long timestamp,
@@ -1010,7 +1114,8 @@ public final class ChannelServiceImpl
 	synchronized (localChannelMembersMap) {
 	    channelInfo = localChannelMembersMap.get(channelRefId);
 	    if (channelInfo == null) {
-		channelInfo = new LocalChannelInfo(delivery, timestamp);
+		channelInfo =
+		    new LocalChannelInfo(name, delivery, timestamp);
 		localChannelMembersMap.put(channelRefId, channelInfo);
 		addedChannelInfo = true;
 	    }
@@ -1276,22 +1381,73 @@ public final class ChannelServiceImpl
 	}
     }
 
+    /**
+     * Returns a map containing an entry for each member in the specified
+     * local {@code channelInfo}, mapping the member's session ID to its
+     * name, or to {@code null} if the session is not (yet) locally
+     * connected.  The caller must hold the lock on the {@code
+     * channelInfo}.
+     */
+    private Map<BigInteger, String> getLocalMembers(
+	LocalChannelInfo channelInfo)
+    {
+	Map<BigInteger, String> members =
+	    new HashMap<BigInteger, String>(channelInfo.members.size());
+	for (BigInteger sessionRefId : channelInfo.members) {
+	    Identity identity = sessionService.getSessionIdentity(sessionRefId);
+	    members.put(sessionRefId,
+			identity != null ? identity.getName() : null);
+	}
+	return members;
+    }
+
+    /**
+     * Returns the number of members of the channel with the specified
+     * {@code channelRefId} and set of member {@code nodeIds}.  If the
+     * channel's members are all on the local node, the count is obtained
+     * directly from the local membership set; otherwise, the count is
+     * obtained from a (possibly cached) snapshot of the channel
+     * membership.
+     *
+     * @return	the number of channel members
+     */
+    int getChannelMembershipCount(
+	Transaction txn, BigInteger channelRefId, Set<Long> nodeIds)
+    {
+	if (nodeIds.size() == 1 && nodeIds.contains(getLocalNodeId())) {
+	    LocalChannelInfo channelInfo = lockChannel(channelRefId);
+	    if (channelInfo != null) {
+		try {
+		    return channelInfo.members.size();
+		} finally {
+		    unlockChannel(channelInfo);
+		}
+	    } else {
+		return 0;
+	    }
+	} else {
+	    return collectChannelMembership(txn, channelRefId, nodeIds).size();
+	}
+    }
+
     /**
      * Collects a snapshot of the channel membership for the channel with
      * the specified {@code channelRefId} and set of member {@code
-     * nodeIds} and returns an unmodifiable set containing the channel
-     * membership. 
+     * nodeIds} and returns an unmodifiable map containing the channel
+     * membership.  Each entry in the map maps a member's session ID to
+     * the member's name, or to {@code null} if the name is not known.
      *
-     * @return	an unmodifiable set containing the channel membership
+     * @return	an unmodifiable map containing the channel membership
      */
-    Set<BigInteger> collectChannelMembership(
+    Map<BigInteger, String> collectChannelMembership(
 	Transaction txn, BigInteger channelRefId, Set<Long> nodeIds)
     {
 	if (nodeIds.size() == 1 && nodeIds.contains(getLocalNodeId())) {
 	    LocalChannelInfo channelInfo = lockChannel(channelRefId);
 	    if (channelInfo != null) {
 		try {
-		    return Collections.unmodifiableSet(channelInfo.members);
+		    return Collections.unmodifiableMap(
+			getLocalMembers(channelInfo));
 		} finally {
 		    unlockChannel(channelInfo);
 		}
@@ -1302,7 +1458,7 @@ public final class ChannelServiceImpl
 	} else {
 
 	    synchronized (channelMembershipCache) {
-		Set<BigInteger> members =
+		Map<BigInteger, String> members =
 		    channelMembershipCache.get(channelRefId);
 		if (members != null) {
 		    return members;
@@ -1633,6 +1789,7 @@ public final class ChannelServiceImpl
 		// Transfer the session's channel membership set to new node.
 		int size = channelMap.size();
 		final BigInteger[] channelRefIds = new BigInteger[size];
+		final String[] channelNames = new String[size];
 		final byte[] deliveryOrdinals = new byte[size];
 		final long[] msgTimestamps = new long[size];
 		int i = 0;
@@ -1642,6 +1799,7 @@ public final class ChannelServiceImpl
 		    {
 			channelRefIds[i] = entry.getKey();
 			LocalMemberInfo memberInfo = entry.getValue();
+			channelNames[i] = memberInfo.channelInfo.name;
 			deliveryOrdinals[i] = (byte)
 			    memberInfo.channelInfo.delivery.ordinal();
 			msgTimestamps[i] = memberInfo.msgTimestamp;
@@ -1656,8 +1814,8 @@ public final class ChannelServiceImpl
 				    getChannelServer(newNodeId).
 					relocateChannelMemberships(
  					    sessionRefId, localNodeId,
-					    channelRefIds, deliveryOrdinals,
-					    msgTimestamps);
+					    channelRefIds, channelNames,
+					    deliveryOrdinals, msgTimestamps);
 				} }, newNodeId);
 			} }, taskOwner);
 	    }
@@ -2029,19 +2187,21 @@ public final class ChannelServiceImpl
 	private final BigInteger sessionRefId;
 	private final long oldNodeId;
 	private final BigInteger[] channelRefIds;
+	private final String[] channelNames;
 	private final byte[] deliveryOrdinals;
 	private final long[] msgTimestamps;
 
 	/** Constructs an instance. */
 	AddRelocatingSessionNodeToChannels(
 	    BigInteger sessionRefId, long oldNodeId,
-	    BigInteger[] channelRefIds, byte[] deliveryOrdinals,
-	    long[] msgTimestamps)
+	    BigInteger[] channelRefIds, String[] channelNames,
+	    byte[] deliveryOrdinals, long[] msgTimestamps)
 	{
 	    super(null);
 	    this.sessionRefId = sessionRefId;
 	    this.oldNodeId = oldNodeId;
 	    this.channelRefIds = channelRefIds;
+	    this.channelNames = channelNames;
 	    this.deliveryOrdinals = deliveryOrdinals;
 	    this.msgTimestamps = msgTimestamps;
 	}
@@ -2057,7 +2217,8 @@ public final class ChannelServiceImpl
 		Delivery delivery = Delivery.values()[deliveryOrdinals[i]];
 		long msgTimestamp = msgTimestamps[i];
 		addLocalChannelMember(
-		    channelRefId, delivery, sessionRefId, msgTimestamp, true);
+		    channelNames[i], channelRefId, delivery, sessionRefId,
+		    msgTimestamp, true);
 	    }
 
 	    /*
@@ -2121,7 +2282,7 @@ public final class ChannelServiceImpl
 	public void run(BigInteger sessionRefId, long timestamp) {
 	    // Update local channel membership set.
 	    addLocalChannelMember(
- 		channelRefId, delivery, sessionRefId, timestamp, false);
+ 		name, channelRefId, delivery, sessionRefId, timestamp, false);
 
 	    // Send channel join protocol message.
 	    SessionProtocol protocol =
@@ -2270,9 +2431,15 @@ public final class ChannelServiceImpl
 		    return;
 		}
 		memberInfo.msgTimestamp = timestamp;
+		ByteBuffer buf = (messageFilter == null) ?
+		    ByteBuffer.wrap(message) :
+		    filterMessage(memberInfo.channelInfo.name, sessionRefId,
+				  protocol);
+		if (buf == null) {
+		    return;
+		}
 		try {
-		    protocol.channelMessage(
-			channelRefId, ByteBuffer.wrap(message), delivery);
+		    protocol.channelMessage(channelRefId, buf, delivery);
 		} catch (IOException e) {
 		    logger.logThrow(Level.WARNING, e,  "channelMessage " +
 			"session:{0} channel:{0} throws",
@@ -2280,6 +2447,42 @@ public final class ChannelServiceImpl
 		}
 	    }
 	}
+
+	/**
+	 * Returns the message that the message filter provides for
+	 * delivering this task's message on the channel with the specified
+	 * {@code name} to the session with the specified {@code
+	 * sessionRefId} and {@code protocol}, or {@code null} if the
+	 * message should not be delivered to the session.
+	 */
+	private ByteBuffer filterMessage(String name, BigInteger sessionRefId,
+					 SessionProtocol protocol)
+	{
+	    ByteBuffer readOnly = ByteBuffer.wrap(message).asReadOnlyBuffer();
+	    ByteBuffer filtered;
+	    try {
+		filtered = messageFilter.filterMessage(
+		    name, sessionRefId,
+		    sessionService.getSessionIdentity(sessionRefId), readOnly);
+	    } catch (RuntimeException e) {
+		logger.logThrow(Level.WARNING, e, "filterMessage " +
+				"session:{0} channel:{1} throws",
+				sessionRefId, name);
+		return null;
+	    }
+	    if (filtered == readOnly) {
+		return ByteBuffer.wrap(message);
+	    } else if (filtered != null &&
+		       filtered.remaining() > protocol.getMaxMessageLength())
+	    {
+		logger.log(Level.WARNING, "filterMessage session:{0} " +
+			   "channel:{1} returned message that is too long:" +
+			   "{2,number,#}", sessionRefId, name,
+			   filtered.remaining());
+		return null;
+	    }
+	    return filtered;
+	}
     }
     
     /**
@@ -2317,7 +2520,8 @@ public final class ChannelServiceImpl
 
 	private final BigInteger channelRefId;
 	private final Set<Long> nodeIds;
-	private final Set<BigInteger> allMembers = new HashSet<BigInteger>();
+	private final Map<BigInteger, String> allMembers =
+	    new HashMap<BigInteger, String>();
 	private boolean completed = false;
 
 	/** Constructs an instance. */
@@ -2336,11 +2540,7 @@ public final class ChannelServiceImpl
 		try {
 		    ChannelServer server = getChannelServer(nodeId);
 		    if (server != null) {
-			BigInteger[] nodeMembers =
-			    server.getSessions(channelRefId);
-			for (BigInteger member : nodeMembers) {
-			    allMembers.add(member);
-			}
+			allMembers.putAll(server.getSessions(channelRefId));
 		    }
 		} catch (Exception e) {
 		    // problem contacting server; continue
@@ -2353,7 +2553,8 @@ public final class ChannelServiceImpl
 		}
 	    }
 	    synchronized (channelMembershipCache) {
-		channelMembershipCache.put(channelRefId, allMembers);
+		channelMembershipCache.put(
+		    channelRefId, Collections.unmodifiableMap(allMembers));
 	    }
 	    synchronized (this) {
 		completed = true;
@@ -2362,17 +2563,18 @@ public final class ChannelServiceImpl
 	}
 
 	/**
-	 * Returns an unmodifiable set containing a snapshot of all the
-	 * members of the channel specified during construction.
+	 * Returns an unmodifiable map containing a snapshot of all the
+	 * members of the channel specified during construction, mapping
+	 * each member's session ID to its name.
 	 *
 	 * @throws IllegalStateException if the task to collect the the
 	 *	   channel membership has not completed
 	 */
-	synchronized Set<BigInteger> getMembers() {
+	synchronized Map<BigInteger, String> getMembers() {
 	    if (!completed) {
 		throw new IllegalStateException("not completed");
 	    }
-	    return Collections.unmodifiableSet(allMembers);
+	    return Collections.unmodifiableMap(allMembers);
 	}
     }
 
@@ -2439,6 +2641,8 @@ public final class ChannelServiceImpl
     private static class LocalChannelInfo {
 	/** A lock for this instance. */
 	final Lock lock = new ReentrantLock();
+	/** The channel's name. */
+	final String name;
 	/** The channel's delivery guarantee. */
 	final Delivery delivery;
 	/** The channel's membership set. */
@@ -2447,7 +2651,8 @@ public final class ChannelServiceImpl
 	long msgTimestamp;
 
 	/** Constructs an instance. */
-	LocalChannelInfo(Delivery delivery, long msgTimestamp) {
+	LocalChannelInfo(String name, Delivery delivery, long msgTimestamp) {
+	    this.name = name;
 	    this.delivery = delivery;
 	    this.msgTimestamp = msgTimestamp;
 	}
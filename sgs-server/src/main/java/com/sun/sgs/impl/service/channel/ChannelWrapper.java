@@ -23,6 +23,7 @@ package com.sun.sgs.impl.service.channel;
 
 import com.sun.sgs.app.Channel;
 import com.sun.sgs.app.ClientSession;
+import com.sun.sgs.app.ClientSessionHandle;
 import com.sun.sgs.app.Delivery;
 import com.sun.sgs.app.ManagedObjectRemoval;
 import com.sun.sgs.app.ManagedReference;
@@ -84,6 +85,16 @@ class ChannelWrapper
 	return getChannel().getSessions();
     }
 
+    /** {@inheritDoc} */
+    public int getSessionCount() {
+	return getChannel().getSessionCount();
+    }
+
+    /** {@inheritDoc} */
+    public Iterator<ClientSessionHandle> getSessionHandles() {
+	return getChannel().getSessionHandles();
+    }
+
     /** {@inheritDoc} */
     public Channel join(final ClientSession session) {
 	getChannel().join(session);
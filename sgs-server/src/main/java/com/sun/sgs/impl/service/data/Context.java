@@ -29,7 +29,9 @@ import com.sun.sgs.service.Transaction;
 import com.sun.sgs.service.TransactionListener;
 import com.sun.sgs.service.store.DataStore;
 import java.math.BigInteger;
+import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -58,6 +60,16 @@ final class Context extends TransactionContext implements TransactionListener {
     /** Whether to detect modifications. */
     final boolean detectModifications;
 
+    /** Whether the transaction is read-only. */
+    final boolean readOnly;
+
+    /**
+     * Whether to skip flushing managed references at commit, which is only
+     * possible for read-only transactions that neither track stale objects
+     * nor detect modifications.
+     */
+    private final boolean skipFlush;
+
     /** Controls serializing classes. */
     final ClassSerialization classSerial;
 
@@ -81,6 +93,16 @@ final class Context extends TransactionContext implements TransactionListener {
      */
     private IdentityHashMap<ManagedObjectRemoval, Boolean> removing = null;
 
+    /**
+     * The object IDs bound to the internal names that this transaction has
+     * looked up or bound, or null.  The data store holds locks on these
+     * names until the transaction ends, so other transactions cannot change
+     * their bindings, and this transaction updates the entries when it
+     * changes them.  This map is discarded with the transaction, so it
+     * needs no invalidation when other transactions commit.
+     */
+    private Map<String, Long> boundIds = null;
+
     /** Creates an instance of this class. */
     Context(DataServiceImpl service,
 	    DataStore store,
@@ -97,7 +119,9 @@ final class Context extends TransactionContext implements TransactionListener {
 	this.store = store;
 	this.txn = txn;
 	this.debugCheckInterval = debugCheckInterval;
+	readOnly = txn.isReadOnly();
 	this.detectModifications = detectModifications;
+	skipFlush = readOnly && !trackStaleObjects && !detectModifications;
 	refs = new ReferenceTable(trackStaleObjects);
 	classSerial = classesTable.createClassSerialization(this.txn);
 	txn.registerListener(this);
@@ -140,7 +164,16 @@ final class Context extends TransactionContext implements TransactionListener {
 
     /** Obtains the object associated with the specified internal name. */
     ManagedObject getBinding(String internalName, boolean forUpdate) {
-	long id = store.getBinding(txn, internalName);
+	Long cached = (boundIds == null) ? null : boundIds.get(internalName);
+	long id;
+	if (cached != null) {
+	    service.serviceStats.bindingCacheHits.incrementCount();
+	    id = cached;
+	} else {
+	    service.serviceStats.bindingCacheMisses.incrementCount();
+	    id = store.getBinding(txn, internalName);
+	    noteBinding(internalName, id);
+	}
 	assert id >= 0 : "Object ID must not be negative";
 	ManagedObject result;
 	if (forUpdate) {
@@ -154,13 +187,31 @@ final class Context extends TransactionContext implements TransactionListener {
 
     /** Sets the object associated with the specified internal name. */
     void setBinding(String internalName, Object object) {
+	checkWritable();
 	store.setBindingDescription(txn, internalName, object);
-	store.setBinding(txn, internalName, getReference(object).oid);
+	long id = getReference(object).oid;
+	store.setBinding(txn, internalName, id);
+	noteBinding(internalName, id);
     }
 
     /** Removes the object associated with the specified internal name. */
     void removeBinding(String internalName) {
+	checkWritable();
 	store.removeBinding(txn, internalName);
+	if (boundIds != null) {
+	    boundIds.remove(internalName);
+	}
+    }
+
+    /**
+     * Records the object ID bound to the specified internal name in this
+     * transaction.
+     */
+    private void noteBinding(String internalName, long id) {
+	if (boundIds == null) {
+	    boundIds = new HashMap<String, Long>();
+	}
+	boundIds.put(internalName, id);
     }
 
     /** Returns the next bound name. */
@@ -258,10 +309,15 @@ final class Context extends TransactionContext implements TransactionListener {
      *
      * This implementation flushes managed references and marks the transaction
      * inactive so that we'll notice if other beforeCompletion methods attempt
-     * to call the data service.
+     * to call the data service.  For read-only transactions, the scan of the
+     * reference table is skipped unless it is needed to track stale objects
+     * or to detect modifications, in which case an object that was modified
+     * without being marked for update causes an IllegalStateException.
      */
     public void beforeCompletion() {
-	ManagedReferenceImpl.flushAll(this);
+	if (!skipFlush) {
+	    ManagedReferenceImpl.flushAll(this);
+	}
     }
 
     /**
@@ -295,6 +351,17 @@ final class Context extends TransactionContext implements TransactionListener {
 	service.checkState();
     }
 
+    /**
+     * Checks that the transaction is allowed to modify data, throwing
+     * IllegalStateException if it is read-only.
+     */
+    void checkWritable() {
+	if (readOnly) {
+	    throw new IllegalStateException(
+		"Attempt to modify data in a read-only transaction");
+	}
+    }
+
     /** Calls removingObject on the argument, and checks for recursion. */
     void removingObject(ManagedObjectRemoval object) {
 	if (removing == null) {
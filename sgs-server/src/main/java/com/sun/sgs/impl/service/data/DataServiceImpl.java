@@ -47,6 +47,7 @@ import com.sun.sgs.service.TransactionProxy;
 import com.sun.sgs.service.store.DataStore;
 import java.io.Serializable;
 import java.math.BigInteger;
+import java.util.Collection;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -127,6 +128,14 @@ import javax.management.JMException;
  * The constructor also passes the properties to the {@link DataStoreImpl}
  * constructor, which supports additional properties. <p>
  *
+ * If the current transaction is {@link Transaction#isReadOnly read-only},
+ * then operations that create, modify, or remove objects or name bindings
+ * throw {@link IllegalStateException}.  If modification detection is
+ * enabled, committing such a transaction also throws {@code
+ * IllegalStateException} if an object was modified without being marked
+ * for update.  Otherwise, the flushing of modified objects at commit time
+ * is skipped for these transactions. <p>
+ *
  * This class uses the {@link Logger} named
  * <code>com.sun.sgs.impl.service.data.DataServiceImpl</code> to log
  * information at the following logging levels: <p>
@@ -231,7 +240,7 @@ public final class DataServiceImpl implements DataService {
     private final boolean trackStaleObjects;
 
     /** The data service profiling information. */
-    private final DataServiceStats serviceStats;
+    final DataServiceStats serviceStats;
     
     /**
      * Synchronize on this object before accessing the state,
@@ -509,6 +518,7 @@ public final class DataServiceImpl implements DataService {
 	try {
 	    checkManagedObject(object);
 	    context = getContext();
+	    context.checkWritable();
 	    ref = context.findReference(object);
 	    if (object instanceof ManagedObjectRemoval) {
 		context.removingObject((ManagedObjectRemoval) object);
@@ -628,6 +638,33 @@ public final class DataServiceImpl implements DataService {
 	}
     }
 
+    /** {@inheritDoc} */
+    public void prefetch(Collection<? extends ManagedReference<?>> refs) {
+	serviceStats.prefetchOp.report();
+	Context context = null;
+	try {
+	    if (refs == null) {
+		throw new NullPointerException(
+		    "The refs argument must not be null");
+	    }
+	    context = getContext();
+	    ManagedReferenceImpl.prefetch(context, refs);
+	    if (logger.isLoggable(Level.FINEST)) {
+		logger.log(Level.FINEST,
+			   "prefetch tid:{0,number,#}, count:{1} returns",
+			   contextTxnId(context), refs.size());
+	    }
+	} catch (RuntimeException e) {
+	    LoggerWrapper exceptionLogger = getExceptionLogger(e);
+	    if (exceptionLogger.isLoggable(Level.FINEST)) {
+		exceptionLogger.logThrow(
+		    Level.FINEST, e, "prefetch tid:{0,number,#} throws",
+		    contextTxnId(context));
+	    }
+	    throw e;
+	}
+    }
+
     /* -- Implement DataService -- */
 
     /** {@inheritDoc} */
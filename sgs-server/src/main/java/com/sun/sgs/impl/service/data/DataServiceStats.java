@@ -23,11 +23,13 @@ package com.sun.sgs.impl.service.data;
 
 import com.sun.sgs.impl.profile.ProfileCollectorImpl;
 import com.sun.sgs.management.DataServiceMXBean;
+import com.sun.sgs.profile.AggregateProfileCounter;
 import com.sun.sgs.profile.AggregateProfileOperation;
 import com.sun.sgs.profile.ProfileCollector;
 import com.sun.sgs.profile.ProfileCollector.ProfileLevel;
 import com.sun.sgs.profile.ProfileConsumer;
 import com.sun.sgs.profile.ProfileConsumer.ProfileDataType;
+import com.sun.sgs.profile.ProfileCounter;
 import com.sun.sgs.profile.ProfileOperation;
 
 /**
@@ -45,6 +47,7 @@ class DataServiceStats implements DataServiceMXBean {
     final ProfileOperation removeBindingOp;
     final ProfileOperation removeObjOp;
     final ProfileOperation setBindingOp;
+    final ProfileOperation prefetchOp;
     final ProfileOperation getLocalNodeIdOp;
     final ProfileOperation createRefForIdOp;
     final ProfileOperation getServiceBindingOp;
@@ -53,6 +56,11 @@ class DataServiceStats implements DataServiceMXBean {
     final ProfileOperation nextServiceBoundNameOp;
     final ProfileOperation removeServiceBindingOp;
     final ProfileOperation setServiceBindingOp;
+
+    // the binding lookups satisfied by, or missing, the transaction's
+    // binding cache
+    final ProfileCounter bindingCacheHits;
+    final ProfileCounter bindingCacheMisses;
     
     DataServiceStats(ProfileCollector collector) {
         ProfileConsumer consumer = 
@@ -80,6 +88,8 @@ class DataServiceStats implements DataServiceMXBean {
             consumer.createOperation("removeObject", type, level);
         setBindingOp =
             consumer.createOperation("setBinding", type, level);
+        prefetchOp =
+            consumer.createOperation("prefetch", type, level);
         // Service operations
         getLocalNodeIdOp =
             consumer.createOperation("getLocalNodeId", type, level);
@@ -97,8 +107,22 @@ class DataServiceStats implements DataServiceMXBean {
             consumer.createOperation("removeServiceBinding", type, level);
         setServiceBindingOp =
             consumer.createOperation("setServiceBinding", type, level);
+        bindingCacheHits =
+            consumer.createCounter("bindingCacheHits", type, level);
+        bindingCacheMisses =
+            consumer.createCounter("bindingCacheMisses", type, level);
     }
     
+    /** {@inheritDoc} */
+    public long getBindingCacheHits() {
+        return ((AggregateProfileCounter) bindingCacheHits).getCount();
+    }
+
+    /** {@inheritDoc} */
+    public long getBindingCacheMisses() {
+        return ((AggregateProfileCounter) bindingCacheMisses).getCount();
+    }
+
     /** {@inheritDoc} */
     public long getCreateReferenceCalls() {
         return ((AggregateProfileOperation) createRefOp).getCount();
@@ -160,6 +184,11 @@ class DataServiceStats implements DataServiceMXBean {
         return ((AggregateProfileOperation) nextServiceBoundNameOp).getCount();
     }
 
+    /** {@inheritDoc} */
+    public long getPrefetchCalls() {
+        return ((AggregateProfileOperation) prefetchOp).getCount();
+    }
+
     /** {@inheritDoc} */
     public long getRemoveBindingCalls() {
         return ((AggregateProfileOperation) removeBindingOp).getCount();
@@ -31,7 +31,10 @@ import com.sun.sgs.impl.sharedutil.Objects;
 import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -240,6 +243,7 @@ final class ManagedReferenceImpl<T>
     /** Creates a NEW reference to an object. */
     private ManagedReferenceImpl(Context context, T object) {
 	this.context = context;
+	context.checkWritable();
 	oid = context.store.createObject(context.txn);
 	this.object = (ManagedObject) object;
 	state = State.NEW;
@@ -258,6 +262,7 @@ final class ManagedReferenceImpl<T>
 
     @SuppressWarnings("fallthrough")
     void removeObject() {
+	context.checkWritable();
 	switch (state) {
 	case EMPTY:
 	    context.store.removeObject(context.txn, oid);
@@ -290,6 +295,7 @@ final class ManagedReferenceImpl<T>
 
     @SuppressWarnings("fallthrough")
     void markForUpdate() {
+	context.checkWritable();
 	switch (state) {
 	case EMPTY:
 	    /*
@@ -352,19 +358,7 @@ final class ManagedReferenceImpl<T>
 	    }
 	    switch (state) {
 	    case EMPTY:
-		ManagedObject tempObject = deserialize(
-		    context.store.getObject(context.txn, oid, false));
-		if (context.detectModifications) {
-		    unmodifiedBytes = SerialUtil.serialize(
-			tempObject, context.classSerial);
-		    state = State.MAYBE_MODIFIED;
-		} else {
-		    state = State.NOT_MODIFIED;
-		}
-		/* Do after creating unmodified bytes, in case that fails */
-		object = tempObject;
-		context.refs.registerObject(this);
-		context.store.setObjectDescription(context.txn, oid, object);
+		fetched(context.store.getObject(context.txn, oid, false));
 		break;
 	    case NEW:
 	    case NOT_MODIFIED:
@@ -429,6 +423,7 @@ final class ManagedReferenceImpl<T>
 	    if (checkContext) {
 		DataServiceImpl.checkContext(context);
 	    }
+	    context.checkWritable();
 	    switch (state) {
 	    case EMPTY:
 		object = deserialize(
@@ -618,6 +613,65 @@ final class ManagedReferenceImpl<T>
 	}
     }
 
+    /**
+     * Fetches the objects for those of the specified references that have
+     * not been fetched yet, using a single call to the data store.
+     * References to objects that are not found are left unfetched, so that
+     * dereferencing them will throw {@link ObjectNotFoundException} as usual.
+     */
+    static void prefetch(Context context,
+			 Collection<? extends ManagedReference<?>> refs)
+    {
+	List<ManagedReferenceImpl<?>> empty =
+	    new ArrayList<ManagedReferenceImpl<?>>(refs.size());
+	for (ManagedReference<?> ref : refs) {
+	    if (!(ref instanceof ManagedReferenceImpl)) {
+		throw new IllegalArgumentException(
+		    "The reference was not created by this data manager: " +
+		    ref);
+	    }
+	    ManagedReferenceImpl<?> refImpl = (ManagedReferenceImpl<?>) ref;
+	    DataServiceImpl.checkContext(refImpl.context);
+	    if (refImpl.state == State.EMPTY) {
+		empty.add(refImpl);
+	    }
+	}
+	if (empty.isEmpty()) {
+	    return;
+	}
+	long[] oids = new long[empty.size()];
+	for (int i = 0; i < oids.length; i++) {
+	    oids[i] = empty.get(i).oid;
+	}
+	byte[][] dataArray = context.store.getObjects(context.txn, oids);
+	for (int i = 0; i < oids.length; i++) {
+	    ManagedReferenceImpl<?> refImpl = empty.get(i);
+	    /* The same reference may appear more than once */
+	    if (dataArray[i] != null && refImpl.state == State.EMPTY) {
+		refImpl.fetched(dataArray[i]);
+	    }
+	}
+    }
+
+    /**
+     * Deserializes the data obtained from the data store for this reference,
+     * which should be in the EMPTY state, and records the resulting object.
+     */
+    private void fetched(byte[] data) {
+	ManagedObject tempObject = deserialize(data);
+	if (context.detectModifications) {
+	    unmodifiedBytes = SerialUtil.serialize(
+		tempObject, context.classSerial);
+	    state = State.MAYBE_MODIFIED;
+	} else {
+	    state = State.NOT_MODIFIED;
+	}
+	/* Do after creating unmodified bytes, in case that fails */
+	object = tempObject;
+	context.refs.registerObject(this);
+	context.store.setObjectDescription(context.txn, oid, object);
+    }
+
     /** Saves all object modifications to the data store. */
     static void flushAll(Context context) {
 	FlushInfo info = context.refs.flushModifiedObjects();
@@ -672,6 +726,12 @@ final class ManagedReferenceImpl<T>
 	    byte[] modified =
 		SerialUtil.serialize(object, context.classSerial);
 	    if (!Arrays.equals(modified, unmodifiedBytes)) {
+		if (context.readOnly) {
+		    throw new IllegalStateException(
+			"Modified object was not marked for update in a" +
+			" read-only transaction: " +
+			Objects.fastToString(object));
+		}
 		result = modified;
 		if (debugDetectLogger.isLoggable(Level.FINEST)) {
 		    debugDetectLogger.log(
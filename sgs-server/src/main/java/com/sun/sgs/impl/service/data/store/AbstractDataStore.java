@@ -76,6 +76,12 @@ import static java.util.logging.Level.FINEST;
 public abstract class AbstractDataStore
     implements DataStore, TransactionParticipant
 {
+    /**
+     * The suffix appended to the name of the data store class to form the
+     * name of the access source for object accesses.
+     */
+    public static final String OBJECT_ACCESS_SOURCE_SUFFIX = ".objects";
+
     /** The main logger for this class. */
     protected final LoggerWrapper logger;
 
@@ -107,7 +113,7 @@ public abstract class AbstractDataStore
 	AccessCoordinator accessCoordinator =
 	    systemRegistry.getComponent(AccessCoordinator.class);
 	objectAccesses = accessCoordinator.registerAccessSource(
-	    className + ".objects", Long.class);
+	    className + OBJECT_ACCESS_SOURCE_SUFFIX, Long.class);
 	nameAccesses = accessCoordinator.registerAccessSource(
 	    className + ".names", String.class);
     }
@@ -270,6 +276,52 @@ public abstract class AbstractDataStore
     protected abstract byte[] getObjectInternal(
 	Transaction txn, long oid, boolean forUpdate);
 
+    /**
+     * {@inheritDoc} <p>
+     *
+     * This implementation does logging, checks that {@code oids} is not {@code
+     * null} and its elements are valid, reports object accesses, and calls
+     * {@link #getObjectsInternal getObjectsInternal} to perform the actual
+     * operation.
+     */
+    public byte[][] getObjects(Transaction txn, long[] oids) {
+	if (logger.isLoggable(FINEST)) {
+	    logger.log(FINEST, "getObjects txn:{0}, oids:[{1}]",
+		       txn, Arrays.toString(oids));
+	}
+	try {
+	    for (long oid : oids) {
+		reportObjectAccess(txn, oid, READ);
+	    }
+	    byte[][] result = getObjectsInternal(txn, oids);
+	    if (logger.isLoggable(FINEST)) {
+		logger.log(FINEST, "getObjects txn:{0}, oids:[{1}] returns",
+			   txn, Arrays.toString(oids));
+	    }
+	    return result;
+	} catch (RuntimeException e) {
+	    throw handleException(txn, FINEST, e,
+				  "getObjects txn:" + txn +
+				  ", oids:[" + Arrays.toString(oids) + "]");
+	}
+    }
+
+    /**
+     * Performs the actual operation for {@link #getObjects getObjects}.
+     *
+     * @param	txn the transaction under which the operation should take place
+     * @param	oids the object IDs
+     * @return	the data associated with the object IDs, with {@code null}
+     *		for objects that are not found
+     * @throws	TransactionAbortedException if the transaction was aborted due
+     *		to a lock conflict or timeout
+     * @throws	TransactionNotActiveException if the transaction is not active
+     * @throws	IllegalStateException if the operation failed because of a
+     *		problem with the current transaction
+     */
+    protected abstract byte[][] getObjectsInternal(
+	Transaction txn, long[] oids);
+
     /**
      * {@inheritDoc} <p>
      *
@@ -37,6 +37,7 @@ import com.sun.sgs.impl.service.data.store.DbUtilities.Databases;
 import com.sun.sgs.impl.sharedutil.LoggerWrapper;
 import static com.sun.sgs.impl.sharedutil.Objects.checkNull;
 import com.sun.sgs.impl.sharedutil.PropertiesWrapper;
+import com.sun.sgs.impl.util.NamedThreadFactory;
 import com.sun.sgs.kernel.ComponentRegistry;
 import com.sun.sgs.service.Transaction;
 import com.sun.sgs.service.TransactionParticipant;
@@ -48,6 +49,7 @@ import com.sun.sgs.service.store.db.DbDatabaseException;
 import com.sun.sgs.service.store.db.DbEnvironment;
 import com.sun.sgs.service.store.db.DbTransaction;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.PriorityQueue;
@@ -55,6 +57,11 @@ import java.util.Properties;
 import java.util.Queue;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -131,6 +138,39 @@ public class DataStoreImpl extends AbstractDataStore {
     public static final String DEFAULT_ENVIRONMENT_CLASS =
         "com.sun.sgs.impl.service.data.store.db.je.JeEnvironment";
 
+    /**
+     * The property that specifies the size in bytes of the cache of object
+     * data stored outside of the Java heap, or {@code 0} to disable the
+     * cache.
+     */
+    public static final String CACHE_SIZE_PROPERTY = CLASSNAME + ".cache.size";
+
+    /** The default size of the object cache. */
+    public static final long DEFAULT_CACHE_SIZE = 0;
+
+    /**
+     * The property that specifies the maximum number of object ID allocation
+     * blocks to obtain from the database at one time.
+     */
+    public static final String OBJECT_ID_MAX_BLOCKS_PROPERTY =
+	CLASSNAME + ".object.id.max.blocks";
+
+    /** The default maximum number of object ID allocation blocks. */
+    public static final int DEFAULT_OBJECT_ID_MAX_BLOCKS = 16;
+
+    /**
+     * The property that specifies whether to obtain more object IDs in the
+     * background before the available IDs are used up.
+     */
+    public static final String OBJECT_ID_PREFETCH_PROPERTY =
+	CLASSNAME + ".object.id.prefetch";
+
+    /**
+     * The number of milliseconds that the data store tries to have elapse
+     * between obtaining object ID allocation blocks from the database.
+     */
+    private static final long OBJECT_ID_REFILL_INTERVAL = 1000;
+
     /** The object data for a placeholder. */
     private static final byte[] PLACEHOLDER_DATA = { PLACEHOLDER_OBJ_VALUE };
 
@@ -172,6 +212,15 @@ public class DataStoreImpl extends AbstractDataStore {
     /** Information about free object IDs. */
     final FreeObjectIds freeObjectIds;
 
+    /**
+     * The executor for obtaining object IDs in the background, or null if
+     * object IDs are only obtained when needed.
+     */
+    private final ExecutorService objectIdExecutor;
+
+    /** The cache of committed object data, or null if not caching. */
+    private final OffHeapObjectCache cache;
+
     /**
      * Object to synchronize on when accessing txnCount, allOps and
      * shuttingDown.
@@ -313,6 +362,12 @@ public class DataStoreImpl extends AbstractDataStore {
 	 */
 	private ObjectIdInfo objectIdInfo = null;
 
+	/**
+	 * The IDs of objects modified or removed in this transaction, or null
+	 * if there are none or the object cache is disabled.
+	 */
+	private List<Long> invalidatedOids = null;
+
 	/**
 	 * Object ID blocks whose last IDs were used during this transaction,
 	 * or null if there were no such blocks.  The empty blocks will be
@@ -397,9 +452,34 @@ public class DataStoreImpl extends AbstractDataStore {
 	    objectIdInfo = null;
 	    emptyObjectIdInfo = null;
 	    maybeCloseCursors(true);
+	    /*
+	     * Invalidate the cache again while still holding the locks, in
+	     * case a transaction that can read uncommitted data cached one of
+	     * the values being rolled back.
+	     */
+	    if (invalidatedOids != null) {
+		for (long oid : invalidatedOids) {
+		    cache.invalidate(oid);
+		}
+	    }
 	    dbTxn.abort();
 	}
 
+	/**
+	 * Removes an object that this transaction has modified or removed from
+	 * the object cache, if the cache is enabled.  Callers should make this
+	 * call after obtaining the write lock for the object.
+	 */
+	void invalidate(long oid) {
+	    if (cache != null) {
+		cache.invalidate(oid);
+		if (invalidatedOids == null) {
+		    invalidatedOids = new ArrayList<Long>();
+		}
+		invalidatedOids.add(oid);
+	    }
+	}
+
 	/** Returns the next name in the names database. */
 	String nextName(String name, DbDatabase names) {
 	    if (namesCursor == null) {
@@ -513,12 +593,13 @@ public class DataStoreImpl extends AbstractDataStore {
 	 * Returns information about free object IDs available for allocation
 	 * in this transaction, or null if no IDs are already available.
 	 */
-	ObjectIdInfo getObjectIdInfo() {
+	ObjectIdInfo getObjectIdInfo(long timeout) {
 	    if (objectIdInfo == null) {
 		objectIdInfo = freeObjectIds.get();
 		if (objectIdInfo != null) {
 		    objectIdInfo.initTxn();
 		}
+		maybePrefetchObjectIds(timeout);
 	    } else if (!objectIdInfo.hasNext()) {
 		if (emptyObjectIdInfo == null) {
 		    emptyObjectIdInfo = new LinkedList<ObjectIdInfo>();
@@ -530,19 +611,25 @@ public class DataStoreImpl extends AbstractDataStore {
 	}
 
 	/**
-	 * Creates and stores information about newly available free object
+	 * Stores information about a newly allocated block of free object
 	 * IDs.
 	 */
-	ObjectIdInfo createObjectIdInfo(
-	    long firstObjectId, long lastObjectId)
-	{
+	ObjectIdInfo setObjectIdInfo(ObjectIdInfo newObjectIdInfo) {
 	    assert objectIdInfo == null;
-	    objectIdInfo = freeObjectIds.create(firstObjectId, lastObjectId);
+	    objectIdInfo = newObjectIdInfo;
 	    return objectIdInfo;
 	}
     }
 
-    /** Stores information about free object IDs. */
+    /**
+     * Stores information about free object IDs.  Each thread keeps the
+     * partially used block from its last committed transaction, so that
+     * threads that create objects repeatedly can do so without
+     * synchronizing.  Other available blocks are shared.  The number of
+     * blocks obtained from the database at one time grows and shrinks so
+     * that blocks are obtained about once every {@link
+     * #OBJECT_ID_REFILL_INTERVAL} milliseconds.
+     */
     private static final class FreeObjectIds {
 
 	/**
@@ -552,6 +639,31 @@ public class DataStoreImpl extends AbstractDataStore {
 	private final Queue<ObjectIdInfo> freeObjectIdInfo =
 	    new PriorityQueue<ObjectIdInfo>();
 
+	/** The available allocation block reserved for each thread. */
+	private final ThreadLocal<ObjectIdInfo> threadObjectIdInfo =
+	    new ThreadLocal<ObjectIdInfo>();
+
+	/** The maximum number of blocks to obtain at one time. */
+	private final int maxBlocks;
+
+	/**
+	 * The number of blocks to obtain the next time.  Synchronize on the
+	 * FreeObjectIds instance when accessing this field.
+	 */
+	private int refillBlocks = 1;
+
+	/**
+	 * The time in milliseconds that blocks were last obtained, or 0.
+	 * Synchronize on the FreeObjectIds instance when accessing this field.
+	 */
+	private long lastRefillTime = 0;
+
+	/**
+	 * Whether blocks are being obtained in the background.  Synchronize
+	 * on the FreeObjectIds instance when accessing this field.
+	 */
+	private boolean prefetching = false;
+
 	/**
 	 * The set of object IDs of placeholders for allocation blocks that are
 	 * still in use, or null if placeholders are not being used.
@@ -561,22 +673,51 @@ public class DataStoreImpl extends AbstractDataStore {
 	private final SortedSet<Long> placeholderOids;
 
 	/** Creates an instance of this class. */
-	FreeObjectIds(boolean usePlaceholders) {
+	FreeObjectIds(boolean usePlaceholders, int maxBlocks) {
 	    placeholderOids = usePlaceholders ? new TreeSet<Long>() : null;
+	    this.maxBlocks = maxBlocks;
 	}
 
-	/** Obtains a block of object IDs, or null if none are available. */
-	synchronized ObjectIdInfo get() {
-	    return freeObjectIdInfo.poll();
+	/**
+	 * Obtains a block of object IDs, preferring the block reserved for
+	 * the current thread, or null if none are available.
+	 */
+	ObjectIdInfo get() {
+	    ObjectIdInfo info = threadObjectIdInfo.get();
+	    if (info != null) {
+		threadObjectIdInfo.set(null);
+		return info;
+	    }
+	    synchronized (this) {
+		return freeObjectIdInfo.poll();
+	    }
 	}
 
 	/**
 	 * Updates object ID information for a transaction that is going to be
-	 * committed.  Returns the object ID block, if not null, to the free
-	 * list, and updates placeholders for the empty blocks.
+	 * committed.  Reserves the object ID block, if not null, for the
+	 * current thread, or returns it to the free list if the thread already
+	 * has one, and updates placeholders for the empty blocks.
+	 */
+	void prepare(ObjectIdInfo info, List<ObjectIdInfo> emptyObjectIdInfo) {
+	    if (info != null && threadObjectIdInfo.get() == null) {
+		assert info.hasNext();
+		threadObjectIdInfo.set(info);
+		info = null;
+	    }
+	    if (info != null ||
+		(placeholderOids != null && emptyObjectIdInfo != null))
+	    {
+		prepareShared(info, emptyObjectIdInfo);
+	    }
+	}
+
+	/**
+	 * Returns the object ID block, if not null, to the free list, and
+	 * updates placeholders for the empty blocks.
 	 */
-	synchronized void prepare(ObjectIdInfo info,
-				  List<ObjectIdInfo> emptyObjectIdInfo)
+	private synchronized void prepareShared(
+	    ObjectIdInfo info, List<ObjectIdInfo> emptyObjectIdInfo)
 	{
 	    if (info != null) {
 		assert info.hasNext();
@@ -608,17 +749,71 @@ public class DataStoreImpl extends AbstractDataStore {
 	    }
 	}
 
-	/** Creates and returns a new block of object IDs. */
-	ObjectIdInfo create(long firstObjectId, long lastObjectId) {
+	/**
+	 * Creates and returns the specified number of contiguous blocks of
+	 * object IDs.
+	 */
+	List<ObjectIdInfo> create(long firstObjectId, int numBlocks) {
 	    assert firstObjectId >= 0;
-	    assert lastObjectId > firstObjectId;
-	    ObjectIdInfo info = new ObjectIdInfo(firstObjectId, lastObjectId);
-	    if (placeholderOids != null) {
-		synchronized (this) {
-		    placeholderOids.add(lastObjectId);
+	    assert numBlocks > 0;
+	    List<ObjectIdInfo> result = new ArrayList<ObjectIdInfo>(numBlocks);
+	    for (int i = 0; i < numBlocks; i++) {
+		long first = firstObjectId + ((long) i * ALLOCATION_BLOCK_SIZE);
+		long last = first + ALLOCATION_BLOCK_SIZE - 1;
+		result.add(new ObjectIdInfo(first, last));
+		if (placeholderOids != null) {
+		    synchronized (this) {
+			placeholderOids.add(last);
+		    }
+		}
+	    }
+	    return result;
+	}
+
+	/** Adds a block of object IDs to the free list. */
+	synchronized void add(ObjectIdInfo info) {
+	    freeObjectIdInfo.add(info);
+	}
+
+	/**
+	 * Returns the number of blocks to obtain from the database, doubling
+	 * or halving the previous number if blocks were last obtained more or
+	 * less recently than the refill interval.
+	 */
+	synchronized int getRefillBlocks() {
+	    long now = System.currentTimeMillis();
+	    if (lastRefillTime != 0) {
+		long elapsed = now - lastRefillTime;
+		if (elapsed < OBJECT_ID_REFILL_INTERVAL / 2) {
+		    refillBlocks = Math.min(refillBlocks * 2, maxBlocks);
+		} else if (elapsed > OBJECT_ID_REFILL_INTERVAL * 2) {
+		    refillBlocks = Math.max(refillBlocks / 2, 1);
 		}
 	    }
-	    return info;
+	    lastRefillTime = now;
+	    return refillBlocks;
+	}
+
+	/**
+	 * Returns whether the caller should start obtaining blocks in the
+	 * background, which is the case if no blocks are being obtained
+	 * already and fewer than half of the number obtained last time
+	 * remain.  If the method returns true, the caller should call
+	 * {@link #endPrefetch endPrefetch} when done.
+	 */
+	synchronized boolean startPrefetch() {
+	    if (prefetching ||
+		freeObjectIdInfo.size() > refillBlocks / 2)
+	    {
+		return false;
+	    }
+	    prefetching = true;
+	    return true;
+	}
+
+	/** Notes that obtaining blocks in the background is done. */
+	synchronized void endPrefetch() {
+	    prefetching = false;
 	}
 
 	/**
@@ -741,6 +936,16 @@ public class DataStoreImpl extends AbstractDataStore {
         logger.log(Level.CONFIG, "Creating DataStoreImpl");
 
 	PropertiesWrapper wrappedProps = new PropertiesWrapper(properties);
+	long cacheSize = wrappedProps.getLongProperty(
+	    CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE, 0, Long.MAX_VALUE);
+	cache = (cacheSize == 0) ? null
+	    : new OffHeapObjectCache(
+		cacheSize, OffHeapObjectCache.DEFAULT_SLAB_SIZE);
+	int objectIdMaxBlocks = wrappedProps.getIntProperty(
+	    OBJECT_ID_MAX_BLOCKS_PROPERTY, DEFAULT_OBJECT_ID_MAX_BLOCKS,
+	    1, 1024);
+	boolean objectIdPrefetch = wrappedProps.getBooleanProperty(
+	    OBJECT_ID_PREFETCH_PROPERTY, true);
 	String specifiedDirectory =
 	    wrappedProps.getProperty(DIRECTORY_PROPERTY);
 	if (specifiedDirectory == null) {
@@ -791,7 +996,18 @@ public class DataStoreImpl extends AbstractDataStore {
 		DataStoreHeader.NEXT_NODE_ID_KEY, infoDb, dbTxn, 1);
 	    useAllocationBlockPlaceholders =
 		env.useAllocationBlockPlaceholders();
-	    freeObjectIds = new FreeObjectIds(useAllocationBlockPlaceholders);
+	    freeObjectIds = new FreeObjectIds(
+		useAllocationBlockPlaceholders, objectIdMaxBlocks);
+	    if (objectIdPrefetch) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(
+		    1, 1, 10, TimeUnit.SECONDS,
+		    new LinkedBlockingQueue<Runnable>(),
+		    new NamedThreadFactory("DataStoreImpl-objectIds"));
+		executor.allowCoreThreadTimeOut(true);
+		objectIdExecutor = executor;
+	    } else {
+		objectIdExecutor = null;
+	    }
 	    removeUnusedAllocationPlaceholders(dbTxn);
 	    done = true;
 	    dbTxn.commit();
@@ -800,7 +1016,12 @@ public class DataStoreImpl extends AbstractDataStore {
                        "Created DataStoreImpl with properties:" +
                        "\n  " + DIRECTORY_PROPERTY + "=" + specifiedDirectory +
                        "\n  " + ENVIRONMENT_CLASS_PROPERTY + "=" +
-                       env.getClass().getName());
+                       env.getClass().getName() +
+                       "\n  " + CACHE_SIZE_PROPERTY + "=" + cacheSize +
+                       "\n  " + OBJECT_ID_MAX_BLOCKS_PROPERTY + "=" +
+                       objectIdMaxBlocks +
+                       "\n  " + OBJECT_ID_PREFETCH_PROPERTY + "=" +
+                       objectIdPrefetch);
             
 	} catch (RuntimeException e) { 
 	    throw handleException(
@@ -878,29 +1099,11 @@ public class DataStoreImpl extends AbstractDataStore {
     /** {@inheritDoc} */
     protected long createObjectInternal(Transaction txn) {
 	TxnInfo txnInfo = checkTxn(txn);
-	ObjectIdInfo objectIdInfo = txnInfo.getObjectIdInfo();
+	ObjectIdInfo objectIdInfo = txnInfo.getObjectIdInfo(txn.getTimeout());
 	if (objectIdInfo == null) {
 	    logger.log(Level.FINE, "Allocate more object IDs");
-	    long newNextObjectId;
-	    long newLastObjectId;
-	    DbTransaction dbTxn = env.beginTransaction(txn.getTimeout());
-	    boolean done = false;
-	    try {
-		newNextObjectId = DbUtilities.getNextObjectId(
-		    infoDb, dbTxn, ALLOCATION_BLOCK_SIZE);
-		newLastObjectId =
-		    newNextObjectId + ALLOCATION_BLOCK_SIZE - 1;
-		maybeUpdateAllocationBlockPlaceholders(
-		    dbTxn, newLastObjectId);
-		done = true;
-		dbTxn.commit();
-	    } finally {
-		if (!done) {
-		    dbTxn.abort();
-		}
-	    }
-	    objectIdInfo = txnInfo.createObjectIdInfo(
-		newNextObjectId, newLastObjectId);
+	    objectIdInfo = txnInfo.setObjectIdInfo(
+		allocateObjectIdBlocks(txn.getTimeout()));
 	}
 	long result = objectIdInfo.next();
 	if (useAllocationBlockPlaceholders && result == objectIdInfo.first()) {
@@ -928,12 +1131,21 @@ public class DataStoreImpl extends AbstractDataStore {
 	Transaction txn, long oid, boolean forUpdate)
     {
 	TxnInfo txnInfo = checkTxn(txn);
-	byte[] result = oidsDb.get(
-	    txnInfo.dbTxn, DataEncoding.encodeLong(oid), forUpdate);
-	if (result == null || isPlaceholderValue(result)) {
+	byte[] result = getObjectData(txnInfo, oid, forUpdate);
+	if (result == null) {
 	    throw new ObjectNotFoundException("Object not found: " + oid);
 	}
-	return decodeValue(result);
+	return result;
+    }
+
+    /** {@inheritDoc} */
+    protected byte[][] getObjectsInternal(Transaction txn, long[] oids) {
+	TxnInfo txnInfo = checkTxn(txn);
+	byte[][] result = new byte[oids.length][];
+	for (int i = 0; i < oids.length; i++) {
+	    result[i] = getObjectData(txnInfo, oids[i], false);
+	}
+	return result;
     }
 
     /** {@inheritDoc} */
@@ -941,6 +1153,7 @@ public class DataStoreImpl extends AbstractDataStore {
 	TxnInfo txnInfo = checkTxn(txn);
 	oidsDb.put(
 	    txnInfo.dbTxn, DataEncoding.encodeLong(oid), encodeValue(data));
+	txnInfo.invalidate(oid);
 	txnInfo.modified = true;
     }
 
@@ -952,6 +1165,7 @@ public class DataStoreImpl extends AbstractDataStore {
 	for (int i = 0; i < oids.length; i++) {
 	    oidsDb.put(txnInfo.dbTxn, DataEncoding.encodeLong(oids[i]),
 		       encodeValue(dataArray[i]));
+	    txnInfo.invalidate(oids[i]);
 	}
 	txnInfo.modified = true;
     }
@@ -964,6 +1178,7 @@ public class DataStoreImpl extends AbstractDataStore {
 	if (!found) {
 	    throw new ObjectNotFoundException("Object not found: " + oid);
 	}
+	txnInfo.invalidate(oid);
 	txnInfo.modified = true;
     }
 
@@ -1040,6 +1255,22 @@ public class DataStoreImpl extends AbstractDataStore {
 	    if (txnCount < 0) {
 		return; // return silently
 	    }
+	    if (objectIdExecutor != null) {
+		objectIdExecutor.shutdown();
+		while (true) {
+		    try {
+			if (objectIdExecutor.awaitTermination(
+				Long.MAX_VALUE, TimeUnit.MILLISECONDS))
+			{
+			    break;
+			}
+		    } catch (InterruptedException e) {
+			// loop until the executor is done
+			logger.log(Level.FINEST, "DataStore shutdown " +
+				   "interrupt ignored");
+		    }
+		}
+	    }
 	    
 	    infoDb.close();
 	    classesDb.close();
@@ -1333,6 +1564,45 @@ public class DataStoreImpl extends AbstractDataStore {
 	return txnInfo;
     }
 
+    /**
+     * Returns the data for an object, or null if the object is not found,
+     * using the object cache if it is enabled.  An object found in the cache
+     * is still locked in the database, which insures that the cached data is
+     * current: transactions that modify or remove an object invalidate its
+     * cache entry while they hold the write lock.
+     */
+    private byte[] getObjectData(
+	TxnInfo txnInfo, long oid, boolean forUpdate)
+    {
+	byte[] key = DataEncoding.encodeLong(oid);
+	long stamp = 0;
+	if (cache != null) {
+	    if (cache.contains(oid)) {
+		if (forUpdate) {
+		    oidsDb.markForUpdate(txnInfo.dbTxn, key);
+		} else {
+		    oidsDb.markForRead(txnInfo.dbTxn, key);
+		}
+		byte[] cached = cache.get(oid);
+		if (cached != null) {
+		    return cached;
+		}
+	    } else {
+		cache.recordMiss();
+	    }
+	    stamp = cache.getStamp(oid);
+	}
+	byte[] value = oidsDb.get(txnInfo.dbTxn, key, forUpdate);
+	if (value == null || isPlaceholderValue(value)) {
+	    return null;
+	}
+	byte[] result = decodeValue(value);
+	if (cache != null) {
+	    cache.put(oid, result, stamp);
+	}
+	return result;
+    }
+
     /** Returns the current transaction count. */
     private int getTxnCount() {
 	synchronized (txnCountLock) {
@@ -1419,6 +1689,77 @@ public class DataStoreImpl extends AbstractDataStore {
 	return value;
     }
 
+    /**
+     * Obtains contiguous object ID allocation blocks from the database, adds
+     * all but the first to the free list, and returns the first.  Uses a
+     * single database transaction, with the specified timeout, both to
+     * update the next object ID and to note the first placeholder.
+     */
+    private ObjectIdInfo allocateObjectIdBlocks(long timeout) {
+	int numBlocks = freeObjectIds.getRefillBlocks();
+	long firstObjectId;
+	List<ObjectIdInfo> blocks;
+	DbTransaction dbTxn = env.beginTransaction(timeout);
+	boolean done = false;
+	try {
+	    firstObjectId = DbUtilities.getNextObjectId(
+		infoDb, dbTxn, numBlocks * ALLOCATION_BLOCK_SIZE);
+	    /*
+	     * Create the blocks, which records their placeholders, before
+	     * noting the first placeholder, so that a concurrent allocation
+	     * does not note a later placeholder as the first one.
+	     */
+	    blocks = freeObjectIds.create(firstObjectId, numBlocks);
+	    maybeUpdateAllocationBlockPlaceholders(
+		dbTxn, firstObjectId + ALLOCATION_BLOCK_SIZE - 1);
+	    done = true;
+	    dbTxn.commit();
+	} finally {
+	    if (!done) {
+		dbTxn.abort();
+	    }
+	}
+	if (logger.isLoggable(Level.FINE)) {
+	    logger.log(Level.FINE,
+		       "Allocated {0} object ID blocks starting at" +
+		       " oid:{1,number,#}",
+		       numBlocks, firstObjectId);
+	}
+	for (int i = 1; i < blocks.size(); i++) {
+	    freeObjectIds.add(blocks.get(i));
+	}
+	return blocks.get(0);
+    }
+
+    /**
+     * Starts obtaining more object ID allocation blocks in the background,
+     * using the specified timeout, if prefetching is enabled and few free
+     * blocks remain.
+     */
+    private void maybePrefetchObjectIds(final long timeout) {
+	if (objectIdExecutor == null || !freeObjectIds.startPrefetch()) {
+	    return;
+	}
+	try {
+	    objectIdExecutor.execute(new Runnable() {
+		public void run() {
+		    try {
+			freeObjectIds.add(allocateObjectIdBlocks(timeout));
+		    } catch (RuntimeException e) {
+			/* Transactions will allocate IDs when needed */
+			logger.logThrow(
+			    Level.FINE, e, "Prefetching object IDs failed");
+		    } finally {
+			freeObjectIds.endPrefetch();
+		    }
+		}
+	    });
+	} catch (RejectedExecutionException e) {
+	    /* Shutting down */
+	    freeObjectIds.endPrefetch();
+	}
+    }
+
     /**
      * Notes the first placeholder when starting to use a new allocation block
      * with the specified object ID at its end, if using allocation block
@@ -1443,6 +1784,16 @@ public class DataStoreImpl extends AbstractDataStore {
 	}
     }
 
+    /**
+     * Returns the cache of object data, or {@code null} if the cache is
+     * disabled.
+     *
+     * @return	the object cache or {@code null}
+     */
+    OffHeapObjectCache getObjectCache() {
+	return cache;
+    }
+
     /**
      * Store raw data for the specified object ID.  The value is used as the
      * literal data, without checking for placeholders or quoted values.  This
@@ -1455,6 +1806,7 @@ public class DataStoreImpl extends AbstractDataStore {
     void setObjectRaw(Transaction txn, long oid, byte[] data) {
 	TxnInfo txnInfo = checkTxn(txn);
 	oidsDb.put(txnInfo.dbTxn, DataEncoding.encodeLong(oid), data);
+	txnInfo.invalidate(oid);
     }
 
     /**
@@ -83,7 +83,10 @@ public class DataStoreProfileProducer
 	this.dataStore = dataStore;
 	participant = (TransactionParticipant) dataStore;
 
-        stats = new DataStoreStats(collector);
+        stats = new DataStoreStats(
+	    collector,
+	    (dataStore instanceof DataStoreImpl)
+	    ? ((DataStoreImpl) dataStore).getObjectCache() : null);
         try {
             collector.registerMBean(stats, DataStoreStatsMXBean.MXBEAN_NAME);
         } catch (JMException e) {
@@ -145,6 +148,20 @@ public class DataStoreProfileProducer
 	return result;
     }
 
+    /** {@inheritDoc} */
+    public byte[][] getObjects(Transaction txn, long[] oids) {
+	byte[][] result = dataStore.getObjects(txn, oids);
+	stats.getObjectsOp.report();
+	for (byte[] data : result) {
+	    if (data != null) {
+		stats.readBytesCounter.incrementCount(data.length);
+		stats.readObjectsCounter.incrementCount();
+		stats.readBytesSample.addSample(data.length);
+	    }
+	}
+	return result;
+    }
+
     /** {@inheritDoc} */
     public void setObject(Transaction txn, long oid, byte[] data) {
 	dataStore.setObject(txn, oid, data);
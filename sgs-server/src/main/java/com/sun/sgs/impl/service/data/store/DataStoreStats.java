@@ -47,6 +47,7 @@ class DataStoreStats implements DataStoreStatsMXBean {
     final ProfileOperation markForUpdateOp;
     final ProfileOperation getObjectOp;
     final ProfileOperation getObjectForUpdateOp;
+    final ProfileOperation getObjectsOp;
     final ProfileOperation setObjectOp;
     final ProfileOperation setObjectsOp;
     final ProfileOperation removeObjectOp;
@@ -58,10 +59,16 @@ class DataStoreStats implements DataStoreStatsMXBean {
     final ProfileOperation getClassInfoOp;
     final ProfileOperation nextObjectIdOp;
 
-    /** Records the number of bytes read by the getObject method. */
+    /**
+     * Records the number of bytes read by the getObject and getObjects
+     * methods.
+     */
     final ProfileCounter readBytesCounter;
 
-    /** Records the number of objects read by the getObject method. */
+    /**
+     * Records the number of objects read by the getObject and getObjects
+     * methods.
+     */
     final ProfileCounter readObjectsCounter;
 
     /**
@@ -78,7 +85,7 @@ class DataStoreStats implements DataStoreStatsMXBean {
 
     /**
      * Records a list of the number of bytes read by calls to the getObject
-     * method.
+     * and getObjects methods.
      */
     final ProfileSample readBytesSample;
 
@@ -87,13 +94,19 @@ class DataStoreStats implements DataStoreStatsMXBean {
      * and setObjects methods.
      */
     final ProfileSample writtenBytesSample;
+
+    /** The data store's object cache, or {@code null}. */
+    private final OffHeapObjectCache cache;
     
     /**
      * Create a data store statistics object.
      * @param collector the profile collector used to create profiling
      *     objects and register the MBean with JMX
+     * @param cache the data store's object cache, or {@code null} if the
+     *     data store does not have an object cache
      */
-    DataStoreStats(ProfileCollector collector) {
+    DataStoreStats(ProfileCollector collector, OffHeapObjectCache cache) {
+        this.cache = cache;
         ProfileConsumer consumer = 
             collector.getConsumer(ProfileCollectorImpl.CORE_CONSUMER_PREFIX 
                                   + "DataStore");
@@ -107,6 +120,7 @@ class DataStoreStats implements DataStoreStatsMXBean {
 	getObjectOp = consumer.createOperation("getObject", type, level);
 	getObjectForUpdateOp =
 	    consumer.createOperation("getObjectForUpdate", type, level);
+	getObjectsOp = consumer.createOperation("getObjects", type, level);
 	setObjectOp = consumer.createOperation("setObject", type, level);
 	setObjectsOp = consumer.createOperation("setObjects", type, level);
 	removeObjectOp = 
@@ -174,6 +188,11 @@ class DataStoreStats implements DataStoreStatsMXBean {
         return ((AggregateProfileOperation) getObjectOp).getCount();
     }
 
+    /** {@inheritDoc} */
+    public long getGetObjectsCalls() {
+        return ((AggregateProfileOperation) getObjectsOp).getCount();
+    }
+
     /** {@inheritDoc} */
     public long getGetObjectForUpdateCalls() {
         return ((AggregateProfileOperation) getObjectForUpdateOp).getCount();
@@ -199,6 +218,36 @@ class DataStoreStats implements DataStoreStatsMXBean {
         return ((AggregateProfileCounter) writtenObjectsCounter).getCount();
     }
 
+    /** {@inheritDoc} */
+    public long getObjectCacheSize() {
+        return (cache == null) ? 0 : cache.getSize();
+    }
+
+    /** {@inheritDoc} */
+    public long getObjectCacheUsedBytes() {
+        return (cache == null) ? 0 : cache.getUsedBytes();
+    }
+
+    /** {@inheritDoc} */
+    public long getObjectCacheEntryCount() {
+        return (cache == null) ? 0 : cache.getEntryCount();
+    }
+
+    /** {@inheritDoc} */
+    public long getObjectCacheHits() {
+        return (cache == null) ? 0 : cache.getHits();
+    }
+
+    /** {@inheritDoc} */
+    public long getObjectCacheMisses() {
+        return (cache == null) ? 0 : cache.getMisses();
+    }
+
+    /** {@inheritDoc} */
+    public long getObjectCacheEvictions() {
+        return (cache == null) ? 0 : cache.getEvictions();
+    }
+
     /** {@inheritDoc} */
     public long getRemoveBindingCalls() {
         return ((AggregateProfileOperation) removeBindingOp).getCount();
@@ -0,0 +1,510 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.impl.service.data.store;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A size-bounded cache of object data, keyed by object ID, that stores the
+ * data outside of the Java heap so that a large cache does not increase
+ * garbage collection pauses. <p>
+ *
+ * The cache is divided into segments, each with its own lock.  Each segment
+ * stores object data in a ring of fixed-size slabs allocated as direct byte
+ * buffers, and finds data with an open-addressing hash table of primitive
+ * object IDs and slab locations.  New data is appended to the current slab.
+ * When the current slab is full, the segment moves to the next slab in the
+ * ring, evicting all of the entries stored there, so the oldest data is
+ * evicted first and the memory used by each segment never exceeds its share
+ * of the cache size.  Data larger than a slab is not cached. <p>
+ *
+ * Callers should insure that the Java virtual machine permits allocating
+ * the requested amount of direct memory, for example by specifying the
+ * {@code -XX:MaxDirectMemorySize} option. <p>
+ *
+ * To avoid caching data that has been replaced by a concurrent update, each
+ * object ID is associated with a stamp that changes whenever the entry is
+ * {@link #invalidate invalidated}.  Callers obtain the stamp before reading
+ * the data from the underlying store, and the {@link #put put} method
+ * ignores the data if the stamp has changed. <p>
+ *
+ * This class is thread-safe.
+ */
+final class OffHeapObjectCache {
+
+    /** The default size of each slab in bytes. */
+    static final int DEFAULT_SLAB_SIZE = 1 << 20;
+
+    /** The number of segments, which must be a power of two. */
+    private static final int NUM_SEGMENTS = 16;
+
+    /** The number of stamps, which must be a power of two. */
+    private static final int NUM_STAMPS = 4096;
+
+    /** The number of bytes stored before the data of each entry. */
+    private static final int ENTRY_HEADER_SIZE = 12;
+
+    /** The initial capacity of each segment's hash table. */
+    private static final int INITIAL_TABLE_SIZE = 256;
+
+    /** The value stored in the hash table for an empty slot. */
+    private static final long EMPTY = -1;
+
+    /** The segments. */
+    private final Segment[] segments = new Segment[NUM_SEGMENTS];
+
+    /** The stamps, indexed by a hash of the object ID. */
+    private final AtomicLongArray stamps = new AtomicLongArray(NUM_STAMPS);
+
+    /** The maximum number of bytes of memory the cache will use. */
+    private final long size;
+
+    /** The number of requests that found data in the cache. */
+    private final AtomicLong hits = new AtomicLong();
+
+    /** The number of requests that did not find data in the cache. */
+    private final AtomicLong misses = new AtomicLong();
+
+    /** The number of entries evicted to make room for new data. */
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates an instance of this class.
+     *
+     * @param	size the maximum number of bytes of memory to use for
+     *		storing data
+     * @param	slabSize the size in bytes of each slab
+     * @throws	IllegalArgumentException if {@code size} or {@code slabSize}
+     *		is not greater than {@code 0}
+     */
+    OffHeapObjectCache(long size, int slabSize) {
+	if (size <= 0) {
+	    throw new IllegalArgumentException(
+		"The size must be greater than 0");
+	} else if (slabSize <= ENTRY_HEADER_SIZE) {
+	    throw new IllegalArgumentException(
+		"The slabSize must be greater than " + ENTRY_HEADER_SIZE);
+	}
+	long segmentSize = Math.max(size / NUM_SEGMENTS, ENTRY_HEADER_SIZE + 1);
+	int segmentSlabSize = (int) Math.min(slabSize, segmentSize);
+	long numSlabs = Math.max(1, segmentSize / segmentSlabSize);
+	if (numSlabs > Integer.MAX_VALUE) {
+	    throw new IllegalArgumentException(
+		"The slabSize is too small for the cache size");
+	}
+	for (int i = 0; i < NUM_SEGMENTS; i++) {
+	    segments[i] = new Segment((int) numSlabs, segmentSlabSize);
+	}
+	this.size = numSlabs * segmentSlabSize * NUM_SEGMENTS;
+    }
+
+    /**
+     * Returns whether the cache contains data for an object.  This method
+     * does not update the hit and miss counts.
+     *
+     * @param	oid the object ID
+     * @return	whether the cache contains data for the object
+     */
+    boolean contains(long oid) {
+	long hash = hash(oid);
+	return getSegment(hash).contains(oid, hash);
+    }
+
+    /**
+     * Returns a copy of the cached data for an object, or {@code null} if
+     * the data is not cached, and updates the hit or miss count.
+     *
+     * @param	oid the object ID
+     * @return	the data or {@code null}
+     */
+    byte[] get(long oid) {
+	long hash = hash(oid);
+	byte[] result = getSegment(hash).get(oid, hash);
+	if (result != null) {
+	    hits.incrementAndGet();
+	} else {
+	    misses.incrementAndGet();
+	}
+	return result;
+    }
+
+    /**
+     * Records a request that did not find data in the cache without calling
+     * {@link #get get}.
+     */
+    void recordMiss() {
+	misses.incrementAndGet();
+    }
+
+    /**
+     * Returns the current stamp for an object, which should be obtained
+     * before reading the data to be supplied to {@link #put put}.
+     *
+     * @param	oid the object ID
+     * @return	the stamp
+     */
+    long getStamp(long oid) {
+	return stamps.get(getStampIndex(hash(oid)));
+    }
+
+    /**
+     * Stores data for an object in the cache, unless the object has been
+     * invalidated since the specified stamp was obtained or the data is too
+     * large to cache.  The data is copied and the array may be reused by the
+     * caller.
+     *
+     * @param	oid the object ID
+     * @param	data the data
+     * @param	stamp the stamp obtained before the data was read
+     */
+    void put(long oid, byte[] data, long stamp) {
+	long hash = hash(oid);
+	int stampIndex = getStampIndex(hash);
+	getSegment(hash).put(oid, hash, data, stamps, stampIndex, stamp);
+    }
+
+    /**
+     * Removes any data cached for an object and changes its stamp, so that
+     * data read before this call will not be cached.
+     *
+     * @param	oid the object ID
+     */
+    void invalidate(long oid) {
+	long hash = hash(oid);
+	stamps.incrementAndGet(getStampIndex(hash));
+	getSegment(hash).remove(oid, hash);
+    }
+
+    /**
+     * Returns the maximum number of bytes of memory used to store data.
+     *
+     * @return	the cache size
+     */
+    long getSize() {
+	return size;
+    }
+
+    /**
+     * Returns the number of requests that found data in the cache.
+     *
+     * @return	the number of hits
+     */
+    long getHits() {
+	return hits.get();
+    }
+
+    /**
+     * Returns the number of requests that did not find data in the cache.
+     *
+     * @return	the number of misses
+     */
+    long getMisses() {
+	return misses.get();
+    }
+
+    /**
+     * Returns the number of entries evicted to make room for new data.
+     *
+     * @return	the number of evictions
+     */
+    long getEvictions() {
+	return evictions.get();
+    }
+
+    /**
+     * Returns the number of entries in the cache.
+     *
+     * @return	the number of entries
+     */
+    long getEntryCount() {
+	long result = 0;
+	for (Segment segment : segments) {
+	    result += segment.getEntryCount();
+	}
+	return result;
+    }
+
+    /**
+     * Returns the number of bytes of memory used by entries in the cache,
+     * including per-entry overhead.
+     *
+     * @return	the number of bytes used
+     */
+    long getUsedBytes() {
+	long result = 0;
+	for (Segment segment : segments) {
+	    result += segment.getUsedBytes();
+	}
+	return result;
+    }
+
+    /* -- Private methods and classes -- */
+
+    /** Mixes the bits of an object ID. */
+    private static long hash(long oid) {
+	long h = oid * 0x9E3779B97F4A7C15L;
+	return h ^ (h >>> 29);
+    }
+
+    /** Returns the segment for a hash. */
+    private Segment getSegment(long hash) {
+	return segments[(int) (hash >>> 60) & (NUM_SEGMENTS - 1)];
+    }
+
+    /** Returns the index of the stamp for a hash. */
+    private static int getStampIndex(long hash) {
+	return (int) (hash >>> 40) & (NUM_STAMPS - 1);
+    }
+
+    /** Stores the entries for a portion of the object IDs. */
+    private final class Segment {
+
+	/** The slabs, allocated as needed. */
+	private final ByteBuffer[] slabs;
+
+	/** The number of bytes used in each slab. */
+	private final int[] slabEnds;
+
+	/** The size of each slab. */
+	private final int slabSize;
+
+	/** The index of the slab receiving new entries. */
+	private int currentSlab = 0;
+
+	/**
+	 * The object IDs of the entries in the hash table, or EMPTY for empty
+	 * slots.
+	 */
+	private long[] oids;
+
+	/**
+	 * The locations of the entries, with the slab index in the upper 32
+	 * bits and the offset within the slab in the lower 32 bits.
+	 */
+	private long[] locations;
+
+	/** The number of entries. */
+	private int count = 0;
+
+	/** The number of bytes used by live entries. */
+	private long usedBytes = 0;
+
+	/** Creates an instance with the specified number and size of slabs. */
+	Segment(int numSlabs, int slabSize) {
+	    slabs = new ByteBuffer[numSlabs];
+	    slabEnds = new int[numSlabs];
+	    this.slabSize = slabSize;
+	    oids = new long[INITIAL_TABLE_SIZE];
+	    locations = new long[INITIAL_TABLE_SIZE];
+	    Arrays.fill(oids, EMPTY);
+	}
+
+	synchronized boolean contains(long oid, long hash) {
+	    return find(oid, hash) >= 0;
+	}
+
+	synchronized byte[] get(long oid, long hash) {
+	    int slot = find(oid, hash);
+	    if (slot < 0) {
+		return null;
+	    }
+	    long location = locations[slot];
+	    ByteBuffer slab = slabs[(int) (location >>> 32)];
+	    int offset = (int) location;
+	    byte[] result = new byte[slab.getInt(offset + 8)];
+	    ByteBuffer buffer = slab.duplicate();
+	    buffer.position(offset + ENTRY_HEADER_SIZE);
+	    buffer.get(result);
+	    return result;
+	}
+
+	synchronized void put(long oid,
+			      long hash,
+			      byte[] data,
+			      AtomicLongArray stamps,
+			      int stampIndex,
+			      long stamp)
+	{
+	    int entrySize = ENTRY_HEADER_SIZE + data.length;
+	    if (entrySize > slabSize || stamps.get(stampIndex) != stamp) {
+		return;
+	    }
+	    if (slabs[currentSlab] == null) {
+		slabs[currentSlab] = ByteBuffer.allocateDirect(slabSize);
+	    } else if (slabEnds[currentSlab] + entrySize > slabSize) {
+		currentSlab = (currentSlab + 1) % slabs.length;
+		evictSlab(currentSlab);
+	    }
+	    ByteBuffer slab = slabs[currentSlab];
+	    int offset = slabEnds[currentSlab];
+	    slab.putLong(offset, oid);
+	    slab.putInt(offset + 8, data.length);
+	    ByteBuffer buffer = slab.duplicate();
+	    buffer.position(offset + ENTRY_HEADER_SIZE);
+	    buffer.put(data);
+	    slabEnds[currentSlab] = offset + entrySize;
+	    long location = (((long) currentSlab) << 32) | offset;
+	    int slot = find(oid, hash);
+	    if (slot >= 0) {
+		usedBytes -= getEntrySize(locations[slot]);
+		locations[slot] = location;
+	    } else {
+		insert(oid, hash, location);
+	    }
+	    usedBytes += entrySize;
+	}
+
+	synchronized void remove(long oid, long hash) {
+	    int slot = find(oid, hash);
+	    if (slot >= 0) {
+		usedBytes -= getEntrySize(locations[slot]);
+		delete(slot);
+	    }
+	}
+
+	synchronized int getEntryCount() {
+	    return count;
+	}
+
+	synchronized long getUsedBytes() {
+	    return usedBytes;
+	}
+
+	/**
+	 * Prepares a slab to receive new entries, allocating it if needed,
+	 * and removing entries still stored in it.
+	 */
+	private void evictSlab(int slabIndex) {
+	    ByteBuffer slab = slabs[slabIndex];
+	    if (slab == null) {
+		slabs[slabIndex] = ByteBuffer.allocateDirect(slabSize);
+		return;
+	    }
+	    int end = slabEnds[slabIndex];
+	    int offset = 0;
+	    long evicted = 0;
+	    while (offset < end) {
+		long oid = slab.getLong(offset);
+		int entrySize = ENTRY_HEADER_SIZE + slab.getInt(offset + 8);
+		int slot = find(oid, hash(oid));
+		if (slot >= 0 &&
+		    locations[slot] == ((((long) slabIndex) << 32) | offset))
+		{
+		    usedBytes -= entrySize;
+		    delete(slot);
+		    evicted++;
+		}
+		offset += entrySize;
+	    }
+	    slabEnds[slabIndex] = 0;
+	    if (evicted > 0) {
+		evictions.addAndGet(evicted);
+	    }
+	}
+
+	/** Returns the size of the entry at the specified location. */
+	private int getEntrySize(long location) {
+	    return ENTRY_HEADER_SIZE +
+		slabs[(int) (location >>> 32)].getInt((int) location + 8);
+	}
+
+	/** Returns the slot containing an object ID, or -1 if not found. */
+	private int find(long oid, long hash) {
+	    int mask = oids.length - 1;
+	    for (int i = (int) hash & mask; true; i = (i + 1) & mask) {
+		long found = oids[i];
+		if (found == oid) {
+		    return i;
+		} else if (found == EMPTY) {
+		    return -1;
+		}
+	    }
+	}
+
+	/** Adds an object ID that is not present, growing the table. */
+	private void insert(long oid, long hash, long location) {
+	    if ((count + 1) * 2 > oids.length) {
+		resize(oids.length * 2);
+	    }
+	    int mask = oids.length - 1;
+	    int i = (int) hash & mask;
+	    while (oids[i] != EMPTY) {
+		i = (i + 1) & mask;
+	    }
+	    oids[i] = oid;
+	    locations[i] = location;
+	    count++;
+	}
+
+	/**
+	 * Removes the entry in a slot, moving later entries in the same
+	 * probe sequence back to keep them reachable.
+	 */
+	private void delete(int slot) {
+	    int mask = oids.length - 1;
+	    int hole = slot;
+	    for (int i = (slot + 1) & mask; oids[i] != EMPTY;
+		 i = (i + 1) & mask)
+	    {
+		int home = (int) hash(oids[i]) & mask;
+		/* Move the entry if its home is not between the hole and i */
+		if (((i - home) & mask) >= ((i - hole) & mask)) {
+		    oids[hole] = oids[i];
+		    locations[hole] = locations[i];
+		    hole = i;
+		}
+	    }
+	    oids[hole] = EMPTY;
+	    count--;
+	}
+
+	/** Rebuilds the hash table with the specified capacity. */
+	private void resize(int capacity) {
+	    long[] oldOids = oids;
+	    long[] oldLocations = locations;
+	    oids = new long[capacity];
+	    locations = new long[capacity];
+	    Arrays.fill(oids, EMPTY);
+	    int mask = capacity - 1;
+	    for (int j = 0; j < oldOids.length; j++) {
+		long oid = oldOids[j];
+		if (oid != EMPTY) {
+		    int i = (int) hash(oid) & mask;
+		    while (oids[i] != EMPTY) {
+			i = (i + 1) & mask;
+		    }
+		    oids[i] = oid;
+		    locations[i] = oldLocations[j];
+		}
+	    }
+	}
+    }
+}
@@ -106,6 +106,22 @@ public class BdbDatabase implements DbDatabase {
 	}
     }
 
+    /** {@inheritDoc} */
+    public void markForRead(DbTransaction txn, byte[] key) {
+	try {
+	    DatabaseEntry valueEntry = new DatabaseEntry();
+	    /* Ignore value by truncating to zero bytes */
+	    valueEntry.setPartial(0, 0, true);
+	    OperationStatus status = db.get(
+		BdbTransaction.getBdbTxn(txn), new DatabaseEntry(key), valueEntry, null);
+	    if (status != SUCCESS && status != NOTFOUND) {
+		throw new DbDatabaseException("Operation failed: " + status);
+	    }
+	} catch (DatabaseException e) {
+	    throw BdbEnvironment.convertException(e, true);
+	}
+    }
+
     /** {@inheritDoc} */
     public void markForUpdate(DbTransaction txn, byte[] key) {
 	try {
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.impl.service.data.store.db.mem;
+
+import com.sun.sgs.service.store.db.DbCursor;
+import java.util.Map.Entry;
+
+/** Provides a cursor implementation for a database stored in memory. */
+public class MemCursor implements DbCursor {
+
+    /** The database. */
+    private final MemDatabase db;
+
+    /** The transaction. */
+    private final MemTransaction txn;
+
+    /** The current key, or null if there is no current key. */
+    private byte[] key = null;
+
+    /** The current value, or null if there is no current key. */
+    private byte[] value = null;
+
+    /** Whether this cursor has been closed. */
+    private boolean closed = false;
+
+    /**
+     * Creates an instance of this class.
+     *
+     * @param	db the database
+     * @param	txn the transaction
+     */
+    MemCursor(MemDatabase db, MemTransaction txn) {
+	this.db = db;
+	this.txn = txn;
+	txn.cursorOpened();
+    }
+
+    /** {@inheritDoc} */
+    public byte[] getKey() {
+	checkOpen();
+	return (key == null) ? null : key.clone();
+    }
+
+    /** {@inheritDoc} */
+    public byte[] getValue() {
+	checkOpen();
+	return (value == null) ? null : value.clone();
+    }
+
+    /** {@inheritDoc} */
+    public boolean findFirst() {
+	checkOpen();
+	return setCurrent(txn.findNext(db, null, true));
+    }
+
+    /** {@inheritDoc} */
+    public boolean findNext() {
+	checkOpen();
+	return setCurrent(txn.findNext(db, key, false));
+    }
+
+    /** {@inheritDoc} */
+    public boolean findNext(byte[] key) {
+	checkOpen();
+	if (key == null) {
+	    throw new NullPointerException("The key must not be null");
+	}
+	return setCurrent(txn.findNext(db, key, true));
+    }
+
+    /** {@inheritDoc} */
+    public boolean findLast() {
+	checkOpen();
+	return setCurrent(txn.findLast(db));
+    }
+
+    /** {@inheritDoc} */
+    public boolean putNoOverwrite(byte[] key, byte[] value) {
+	checkOpen();
+	if (txn.put(db, key, value, false)) {
+	    this.key = key.clone();
+	    this.value = value.clone();
+	    return true;
+	} else {
+	    return false;
+	}
+    }
+
+    /** {@inheritDoc} */
+    public void close() {
+	if (!closed) {
+	    closed = true;
+	    txn.cursorClosed();
+	}
+    }
+
+    /**
+     * Sets the current key and value from an entry, if it is not null, and
+     * returns whether the entry was not null.
+     */
+    private boolean setCurrent(Entry<byte[], byte[]> entry) {
+	if (entry == null) {
+	    return false;
+	}
+	key = entry.getKey();
+	value = entry.getValue();
+	return true;
+    }
+
+    /** Checks that this cursor has not been closed. */
+    private void checkOpen() {
+	if (closed) {
+	    throw new IllegalStateException("The cursor is closed");
+	}
+    }
+}
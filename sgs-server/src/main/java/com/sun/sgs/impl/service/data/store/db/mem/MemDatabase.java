@@ -0,0 +1,161 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.impl.service.data.store.db.mem;
+
+import com.sun.sgs.service.store.db.DbCursor;
+import com.sun.sgs.service.store.db.DbDatabase;
+import com.sun.sgs.service.store.db.DbTransaction;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/** Provides a database implementation that keeps its data in memory. */
+public class MemDatabase implements DbDatabase {
+
+    /** Orders keys by comparing their bytes as unsigned values. */
+    static final Comparator<byte[]> KEY_COMPARATOR =
+	new Comparator<byte[]>() {
+	    public int compare(byte[] x, byte[] y) {
+		int length = Math.min(x.length, y.length);
+		for (int i = 0; i < length; i++) {
+		    int diff = (x[i] & 0xff) - (y[i] & 0xff);
+		    if (diff != 0) {
+			return diff;
+		    }
+		}
+		return x.length - y.length;
+	    }
+	};
+
+    /** The environment. */
+    private final MemEnvironment env;
+
+    /** The ID of this database, which identifies it in log records. */
+    private final int id;
+
+    /** The name of this database. */
+    private final String name;
+
+    /**
+     * The committed keys and values.  Keys and values stored in this map are
+     * not modified, so readers and the snapshot writer can use them without
+     * locking or copying.  Values are kept on the heap, rather than in
+     * recycled off-heap slabs like those of the data store's object cache,
+     * because those slabs reclaim space by evicting their oldest entries,
+     * which the authoritative copy of the data cannot do.
+     */
+    private final ConcurrentSkipListMap<byte[], byte[]> committed =
+	new ConcurrentSkipListMap<byte[], byte[]>(KEY_COMPARATOR);
+
+    /** Whether the transaction that created this database has committed. */
+    private volatile boolean isCommitted = false;
+
+    /**
+     * Creates an instance of this class.
+     *
+     * @param	env the environment
+     * @param	id the database ID
+     * @param	name the database name
+     */
+    MemDatabase(MemEnvironment env, int id, String name) {
+	this.env = env;
+	this.id = id;
+	this.name = name;
+    }
+
+    /** Returns the ID of this database. */
+    int getId() {
+	return id;
+    }
+
+    /** Returns the name of this database. */
+    String getName() {
+	return name;
+    }
+
+    /** Returns the map of committed keys and values. */
+    ConcurrentSkipListMap<byte[], byte[]> getCommitted() {
+	return committed;
+    }
+
+    /** Notes that the creation of this database has been committed. */
+    void setCommitted() {
+	isCommitted = true;
+    }
+
+    /** Returns whether the creation of this database has been committed. */
+    boolean isCommitted() {
+	return isCommitted;
+    }
+
+    /* -- Implement DbDatabase -- */
+
+    /** {@inheritDoc} */
+    public byte[] get(DbTransaction txn, byte[] key, boolean forUpdate) {
+	return MemTransaction.getMemTxn(env, txn).get(this, key, forUpdate);
+    }
+
+    /** {@inheritDoc} */
+    public void markForRead(DbTransaction txn, byte[] key) {
+	MemTransaction.getMemTxn(env, txn).markForRead(this, key);
+    }
+
+    /** {@inheritDoc} */
+    public void markForUpdate(DbTransaction txn, byte[] key) {
+	MemTransaction.getMemTxn(env, txn).markForUpdate(this, key);
+    }
+
+    /** {@inheritDoc} */
+    public void put(DbTransaction txn, byte[] key, byte[] value) {
+	MemTransaction.getMemTxn(env, txn).put(this, key, value, true);
+    }
+
+    /** {@inheritDoc} */
+    public boolean putNoOverwrite(
+	DbTransaction txn, byte[] key, byte[] value)
+    {
+	return MemTransaction.getMemTxn(env, txn).put(this, key, value, false);
+    }
+
+    /** {@inheritDoc} */
+    public boolean delete(DbTransaction txn, byte[] key) {
+	return MemTransaction.getMemTxn(env, txn).delete(this, key);
+    }
+
+    /** {@inheritDoc} */
+    public DbCursor openCursor(DbTransaction txn) {
+	return new MemCursor(this, MemTransaction.getMemTxn(env, txn));
+    }
+
+    /**
+     * {@inheritDoc} <p>
+     *
+     * This implementation does nothing, since the data remains available
+     * to the environment.
+     */
+    public void close() { }
+}
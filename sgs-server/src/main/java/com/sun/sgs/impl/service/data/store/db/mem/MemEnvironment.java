@@ -0,0 +1,631 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.impl.service.data.store.db.mem;
+
+import com.sun.sgs.impl.service.transaction.TransactionCoordinator;
+import com.sun.sgs.impl.service.transaction.TransactionCoordinatorImpl;
+import com.sun.sgs.impl.sharedutil.LoggerWrapper;
+import com.sun.sgs.impl.sharedutil.PropertiesWrapper;
+import com.sun.sgs.impl.util.lock.LockManager;
+import com.sun.sgs.kernel.ComponentRegistry;
+import com.sun.sgs.service.TransactionParticipant;
+import com.sun.sgs.service.TransactionProxy;
+import com.sun.sgs.service.store.db.DbDatabase;
+import com.sun.sgs.service.store.db.DbDatabaseException;
+import com.sun.sgs.service.store.db.DbEnvironment;
+import com.sun.sgs.service.store.db.DbTransaction;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Provides a database implementation that keeps all data in memory. <p>
+ *
+ * Committed data is stored in concurrent sorted maps, and isolation is
+ * provided by locking keys with the {@link LockManager} lock library.  Reads
+ * obtain shared locks, writes obtain exclusive locks, and inserting a new key
+ * also obtains an exclusive lock on the next key so that cursor scans are
+ * serializable.  All locks are held until the transaction commits or aborts.
+ * Since deadlocks are only detected by lock timeouts, the lock timeout is
+ * also the amount of time it will take to detect a deadlock. <p>
+ *
+ * Durability is provided by writing the changes made by each committed
+ * transaction to a sequential write-ahead log, and by periodically writing
+ * snapshots of the full contents of the databases so that older log files can
+ * be deleted.  Concurrent commits share the writes, and disk flushes, of the
+ * log.  When the environment is created, it reads the most recent snapshot,
+ * if any, and then redoes the changes recorded in the log files written since
+ * that snapshot was started. <p>
+ *
+ * Note that, although databases returned by this class provide support for the
+ * {@link DbTransaction#prepare DbTransaction.prepare} method, they do not
+ * provide facilities for resolving prepared transactions after a crash.
+ * Callers can work around this limitation by insuring that the transaction
+ * implementation calls {@link TransactionParticipant#prepareAndCommit
+ * TransactionParticipant.prepareAndCommit} to commit transactions on this
+ * class.  The current transaction implementation calls
+ * <code>prepareAndCommit</code> on durable participants, so the inability to
+ * resolve prepared transactions should have no effect at present. <p>
+ *
+ * The {@link #MemEnvironment constructor} supports the following
+ * configuration properties: <p>
+ *
+ * <dl style="margin-left: 1em">
+ *
+ * <dt> <i>Property:</i> <b>{@value #FLUSH_TO_DISK_PROPERTY}</b> <br>
+ *	<i>Default:</i> <code>false</code>
+ *
+ * <dd style="padding-top: .5em">Whether to flush changes to disk when a
+ * transaction commits.  If <code>false</code>, the modifications made in some
+ * of the most recent transactions may be lost if the host crashes, although
+ * data integrity will be maintained.  Flushing changes to disk avoids data
+ * loss but introduces a significant reduction in performance. <p>
+ *
+ * <dt> <i>Property:</i> <b>{@value #LOCK_TIMEOUT_PROPERTY}</b> <br>
+ *	<i>Default:</i> {@value #DEFAULT_LOCK_TIMEOUT_PROPORTION} times the
+ *	value of the <code>com.sun.sgs.txn.timeout</code> property, if
+ *	specified, otherwise times the value of the default transaction
+ *	timeout.
+ *
+ * <dd style="padding-top: .5em">The maximum amount of time in milliseconds
+ * that an attempt to obtain a lock will be allowed to continue before being
+ * aborted.  The value must be greater than {@code 0}, and should be less than
+ * the transaction timeout. <p>
+ *
+ * <dt> <i>Property:</i> <b>{@value #SNAPSHOT_LOG_SIZE_PROPERTY}</b> <br>
+ *	<i>Default:</i> {@value #DEFAULT_SNAPSHOT_LOG_SIZE}
+ *
+ * <dd style="padding-top: .5em">The number of bytes that can be written to the
+ * current log file before a new snapshot is started.  Smaller values reduce
+ * the amount of disk space used by log files and the time needed to recover,
+ * but increase the frequency of snapshots.  The value must be greater than
+ * {@code 0}. <p>
+ *
+ * </dl> <p>
+ *
+ * This class uses the {@link Logger} named
+ * <code>com.sun.sgs.impl.service.data.store.db.mem</code> to log
+ * information at the following logging levels: <p>
+ *
+ * <ul>
+ * <li> {@link java.util.logging.Level#WARNING WARNING} - Snapshot failures
+ *	and incomplete log records found during recovery
+ * <li> {@link java.util.logging.Level#INFO INFO} - Recovery
+ * <li> {@link java.util.logging.Level#CONFIG CONFIG} - Constructor properties
+ * <li> {@link java.util.logging.Level#FINE FINE} - Snapshots
+ * </ul>
+ */
+public class MemEnvironment implements DbEnvironment {
+
+    /** The package name. */
+    private static final String PACKAGE =
+	"com.sun.sgs.impl.service.data.store.db.mem";
+
+    /** The logger for this class. */
+    static final LoggerWrapper logger =
+	new LoggerWrapper(Logger.getLogger(PACKAGE));
+
+    /**
+     * The property that specifies whether to flush changes to disk on
+     * transaction boundaries.  The property is set to false by default.  If
+     * false, some recent transactions may be lost in the event of a crash,
+     * although integrity will be maintained.
+     */
+    public static final String FLUSH_TO_DISK_PROPERTY =
+	PACKAGE + ".flush.to.disk";
+
+    /**
+     * The property that specifies the amount of time permitted to obtain a
+     * lock, in milliseconds.
+     */
+    public static final String LOCK_TIMEOUT_PROPERTY =
+	PACKAGE + ".lock.timeout";
+
+    /**
+     * The default proportion of the transaction timeout to use for the lock
+     * timeout, if no lock timeout is specified.
+     */
+    public static final double DEFAULT_LOCK_TIMEOUT_PROPORTION = 0.1;
+
+    /**
+     * The default value of the lock timeout property, if no transaction
+     * timeout is specified.
+     */
+    public static final long DEFAULT_LOCK_TIMEOUT =
+	computeLockTimeout(TransactionCoordinatorImpl.BOUNDED_TIMEOUT_DEFAULT);
+
+    /**
+     * The property that specifies the number of bytes that can be written to
+     * the current log file before starting a new snapshot.
+     */
+    public static final String SNAPSHOT_LOG_SIZE_PROPERTY =
+	PACKAGE + ".snapshot.log.size";
+
+    /** The default value of the snapshot log size property. */
+    public static final long DEFAULT_SNAPSHOT_LOG_SIZE = 64 * 1024 * 1024;
+
+    /** The number of maps the lock manager uses to store keys. */
+    private static final int NUM_KEY_MAPS = 8;
+
+    /** Log record operation: create a database. */
+    static final byte OP_CREATE = 1;
+
+    /** Log record operation: store a value. */
+    static final byte OP_PUT = 2;
+
+    /** Log record operation: remove a value. */
+    static final byte OP_DELETE = 3;
+
+    /** The directory containing the snapshot and log files. */
+    private final File directory;
+
+    /** The number of log bytes that trigger a snapshot. */
+    private final long snapshotLogSize;
+
+    /** The lock timeout in milliseconds. */
+    private final long lockTimeout;
+
+    /** The lock manager for keys in all databases. */
+    final LockManager<MemTransaction.LockKey> lockManager;
+
+    /**
+     * Held for read while appending records to the log and applying their
+     * changes, and for write while starting a new log file for a snapshot.
+     */
+    private final ReadWriteLock checkpointLock =
+	new ReentrantReadWriteLock();
+
+    /**
+     * The databases, by name.  Synchronize on this map when accessing it or
+     * {@link #databasesById} or {@link #nextDatabaseId}.
+     */
+    private final Map<String, MemDatabase> databasesByName =
+	new HashMap<String, MemDatabase>();
+
+    /** The databases, by ID. */
+    private final Map<Integer, MemDatabase> databasesById =
+	new HashMap<Integer, MemDatabase>();
+
+    /** The ID to use for the next database created. */
+    private int nextDatabaseId = 1;
+
+    /** The write-ahead log. */
+    private final WriteAheadLog log;
+
+    /** The thread that writes snapshots. */
+    private final SnapshotThread snapshotThread;
+
+    /**
+     * Whether a snapshot has been requested.  Synchronize on the snapshot
+     * thread when accessing this field or {@link #closed}.
+     */
+    private boolean snapshotRequested = false;
+
+    /** Whether this environment has been closed. */
+    private boolean closed = false;
+
+    /**
+     * Creates an instance of this class.
+     *
+     * @param	directory the directory containing database files
+     * @param	properties the properties to configure this instance
+     * @param	systemRegistry the registry of available system components
+     * @param	txnProxy the transaction proxy
+     * @throws	DbDatabaseException if an unexpected database problem occurs
+     */
+    public MemEnvironment(String directory,
+			  Properties properties,
+			  ComponentRegistry systemRegistry,
+			  TransactionProxy txnProxy)
+    {
+        logger.log(Level.CONFIG, "Creating MemEnvironment with directory: {0}",
+                   directory);
+	PropertiesWrapper wrappedProps = new PropertiesWrapper(properties);
+	boolean flushToDisk = wrappedProps.getBooleanProperty(
+	    FLUSH_TO_DISK_PROPERTY, false);
+	long txnTimeout = wrappedProps.getLongProperty(
+	    TransactionCoordinator.TXN_TIMEOUT_PROPERTY, -1);
+	long defaultLockTimeout = (txnTimeout < 1)
+	    ? DEFAULT_LOCK_TIMEOUT : computeLockTimeout(txnTimeout);
+	lockTimeout = wrappedProps.getLongProperty(
+	    LOCK_TIMEOUT_PROPERTY, defaultLockTimeout, 1, Long.MAX_VALUE);
+	snapshotLogSize = wrappedProps.getLongProperty(
+	    SNAPSHOT_LOG_SIZE_PROPERTY, DEFAULT_SNAPSHOT_LOG_SIZE,
+	    1, Long.MAX_VALUE);
+	lockManager = new LockManager<MemTransaction.LockKey>(
+	    lockTimeout, NUM_KEY_MAPS);
+	this.directory = new File(directory);
+	try {
+	    log = recover(flushToDisk);
+	} catch (IOException e) {
+	    throw new DbDatabaseException(
+		"Problem recovering database: " + e.getMessage(), e);
+	}
+	snapshotThread = new SnapshotThread();
+	snapshotThread.start();
+
+        logger.log(Level.CONFIG,
+                   "Created MemEnvironment with properties:" +
+                   "\n  " + FLUSH_TO_DISK_PROPERTY + "=" + flushToDisk +
+                   "\n  " + LOCK_TIMEOUT_PROPERTY + "=" + lockTimeout +
+                   "\n  " + SNAPSHOT_LOG_SIZE_PROPERTY + "=" +
+		   snapshotLogSize);
+    }
+
+    /**
+     * Computes the lock timeout based on the specified transaction timeout and
+     * {@link #DEFAULT_LOCK_TIMEOUT_PROPORTION}.
+     */
+    private static long computeLockTimeout(long txnTimeout) {
+	long result = (long) (txnTimeout * DEFAULT_LOCK_TIMEOUT_PROPORTION);
+	/* Lock timeout should be at least 1 */
+	if (result < 1) {
+	    result = 1;
+	}
+	return result;
+    }
+
+    /**
+     * Loads the most recent snapshot, redoes the changes in later log files,
+     * and returns a log for a new generation.  If any changes were redone,
+     * writes a new snapshot so that the old log files can be removed.
+     */
+    private WriteAheadLog recover(boolean flushToDisk) throws IOException {
+	if (!directory.isDirectory()) {
+	    throw new FileNotFoundException(
+		"Directory does not exist: " + directory);
+	}
+	long startGeneration = MemSnapshot.read(directory, this);
+	SortedMap<Long, File> logFiles = WriteAheadLog.getFiles(directory);
+	long lastGeneration = logFiles.isEmpty() ? 0 : logFiles.lastKey();
+	boolean redone = false;
+	for (Map.Entry<Long, File> entry :
+		 logFiles.tailMap(Math.max(startGeneration, 0)).entrySet())
+	{
+	    File file = entry.getValue();
+	    if (file.length() == 0) {
+		continue;
+	    }
+	    redone = true;
+	    /*
+	     * A new generation is started each time the environment is
+	     * created, so an incomplete record can only appear at the end of
+	     * a file, left by a crash while the record was being written.
+	     */
+	    if (!WriteAheadLog.replay(file, this)) {
+		logger.log(Level.WARNING,
+			   "Ignoring incomplete record at the end of log " +
+			   "file {0}", file);
+	    }
+	}
+	long generation = Math.max(startGeneration, lastGeneration + 1);
+	WriteAheadLog result =
+	    new WriteAheadLog(directory, generation, flushToDisk);
+	if (redone) {
+	    logger.log(Level.INFO, "Recovered database in {0}", directory);
+	    MemSnapshot.write(directory, generation, getSnapshotDatabases());
+	}
+	result.deleteBefore(generation);
+	return result;
+    }
+
+    /**
+     * Redoes the changes recorded in the data for a single log record.
+     *
+     * @param	data the log record data
+     * @throws	IOException if the data is not in the expected format
+     */
+    void redo(byte[] data) throws IOException {
+	DataInputStream in =
+	    new DataInputStream(new ByteArrayInputStream(data));
+	while (in.available() > 0) {
+	    byte op = in.readByte();
+	    int id = in.readInt();
+	    switch (op) {
+	    case OP_CREATE:
+		getDatabaseForRedo(id, in.readUTF());
+		break;
+	    case OP_PUT:
+		byte[] key = readBytes(in);
+		byte[] value = readBytes(in);
+		getDatabaseForRedo(id, null).getCommitted().put(key, value);
+		break;
+	    case OP_DELETE:
+		getDatabaseForRedo(id, null).getCommitted().remove(
+		    readBytes(in));
+		break;
+	    default:
+		throw new IOException("Unknown log record operation: " + op);
+	    }
+	}
+    }
+
+    /** Reads a length-prefixed byte array. */
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+	byte[] result = new byte[in.readInt()];
+	in.readFully(result);
+	return result;
+    }
+
+    /**
+     * Returns the database with the specified ID, creating it during
+     * recovery if a name is supplied.
+     *
+     * @param	id the database ID
+     * @param	name the database name, or {@code null} if the database must
+     *		already exist
+     * @return	the database
+     * @throws	IOException if the database does not exist and {@code name}
+     *		is {@code null}
+     */
+    MemDatabase getDatabaseForRedo(int id, String name) throws IOException {
+	synchronized (databasesByName) {
+	    MemDatabase db = databasesById.get(id);
+	    if (db == null) {
+		if (name == null) {
+		    throw new IOException("Unknown database ID: " + id);
+		}
+		db = new MemDatabase(this, id, name);
+		db.setCommitted();
+		databasesByName.put(name, db);
+		databasesById.put(id, db);
+		nextDatabaseId = Math.max(nextDatabaseId, id + 1);
+	    }
+	    return db;
+	}
+    }
+
+    /** Returns the databases whose creation has been committed. */
+    private Collection<MemDatabase> getSnapshotDatabases() {
+	Collection<MemDatabase> result = new ArrayList<MemDatabase>();
+	synchronized (databasesByName) {
+	    for (MemDatabase db : databasesById.values()) {
+		if (db.isCommitted()) {
+		    result.add(db);
+		}
+	    }
+	}
+	return result;
+    }
+
+    /**
+     * Removes a database whose creating transaction aborted.
+     *
+     * @param	db the database
+     */
+    void removeDatabase(MemDatabase db) {
+	synchronized (databasesByName) {
+	    databasesByName.remove(db.getName());
+	    databasesById.remove(db.getId());
+	}
+    }
+
+    /**
+     * Logs and applies the changes made by a committing transaction, and
+     * waits for the log record to be written.
+     *
+     * @param	txn the transaction
+     * @param	data the log record data describing the changes
+     * @throws	DbDatabaseException if writing to the log fails
+     */
+    void commit(MemTransaction txn, byte[] data) {
+	long position;
+	checkpointLock.readLock().lock();
+	try {
+	    position = log.append(data);
+	    txn.apply();
+	} catch (IOException e) {
+	    throw new DbDatabaseException(
+		"Problem writing to log: " + e.getMessage(), e);
+	} finally {
+	    checkpointLock.readLock().unlock();
+	}
+	try {
+	    log.flush(position);
+	} catch (IOException e) {
+	    throw new DbDatabaseException(
+		"Problem writing to log: " + e.getMessage(), e);
+	}
+	if (log.getSize() >= snapshotLogSize) {
+	    synchronized (snapshotThread) {
+		if (!snapshotRequested) {
+		    snapshotRequested = true;
+		    snapshotThread.notifyAll();
+		}
+	    }
+	}
+    }
+
+    /**
+     * Writes a snapshot.  Starts a new log file, writes the contents of the
+     * databases, and then deletes log files for earlier generations.  Changes
+     * committed while the snapshot is being written may or may not be
+     * included in the snapshot, but are also recorded in the new log file.
+     */
+    private void snapshot() throws IOException {
+	long generation;
+	checkpointLock.writeLock().lock();
+	try {
+	    generation = log.rotate();
+	} finally {
+	    checkpointLock.writeLock().unlock();
+	}
+	logger.log(Level.FINE, "Writing snapshot for generation {0}",
+		   generation);
+	MemSnapshot.write(directory, generation, getSnapshotDatabases());
+	log.deleteBefore(generation);
+	logger.log(Level.FINE, "Wrote snapshot for generation {0}",
+		   generation);
+    }
+
+    /** A thread that writes snapshots when requested. */
+    private class SnapshotThread extends Thread {
+
+	/** Creates an instance of this class as a daemon thread. */
+	SnapshotThread() {
+	    super("MemEnvironment$SnapshotThread");
+	    setDaemon(true);
+	}
+
+	/** Writes snapshots until the environment is closed. */
+	public void run() {
+	    while (true) {
+		synchronized (this) {
+		    while (!snapshotRequested && !closed) {
+			try {
+			    wait();
+			} catch (InterruptedException e) {
+			    return;
+			}
+		    }
+		    if (closed) {
+			return;
+		    }
+		}
+		try {
+		    snapshot();
+		} catch (Throwable e) {
+		    logger.logThrow(Level.WARNING, e, "Snapshot failed");
+		}
+		synchronized (this) {
+		    snapshotRequested = false;
+		}
+	    }
+	}
+    }
+
+    /** Returns the lock timeout in microseconds -- for testing. */
+    private long getLockTimeoutMicros() {
+	/* Avoid overflow, and match the value used for BDB */
+	return (lockTimeout < (Long.MAX_VALUE / 1000))
+	    ? lockTimeout * 1000 : 0;
+    }
+
+    /* -- Implement DbEnvironment -- */
+
+    /** {@inheritDoc} */
+    public DbTransaction beginTransaction(long timeout) {
+	return new MemTransaction(this, timeout);
+    }
+
+    /**
+     * {@inheritDoc} <p>
+     *
+     * This implementation always provides full serializable isolation.
+     */
+    public DbTransaction beginTransaction(
+	long timeout, boolean fullIsolation)
+    {
+	return new MemTransaction(this, timeout);
+    }
+
+    /** {@inheritDoc} */
+    public DbDatabase openDatabase(
+	DbTransaction txn, String fileName, boolean create)
+	throws FileNotFoundException
+    {
+	if (fileName == null) {
+	    throw new NullPointerException("The fileName must not be null");
+	}
+	MemTransaction memTxn = MemTransaction.getMemTxn(this, txn);
+	synchronized (databasesByName) {
+	    MemDatabase db = databasesByName.get(fileName);
+	    if (db == null) {
+		if (!create) {
+		    throw new FileNotFoundException(
+			"Database not found: " + fileName);
+		}
+		db = new MemDatabase(this, nextDatabaseId++, fileName);
+		databasesByName.put(fileName, db);
+		databasesById.put(db.getId(), db);
+		memTxn.created(db);
+	    }
+	    return db;
+	}
+    }
+
+    /**
+     * {@inheritDoc} <p>
+     *
+     * This implementation writes a final snapshot if any changes have been
+     * logged since the last one.
+     */
+    public void close() {
+	synchronized (snapshotThread) {
+	    closed = true;
+	    snapshotThread.notifyAll();
+	}
+	boolean interrupted = false;
+	while (true) {
+	    try {
+		snapshotThread.join();
+		break;
+	    } catch (InterruptedException e) {
+		interrupted = true;
+	    }
+	}
+	if (interrupted) {
+	    Thread.currentThread().interrupt();
+	}
+	try {
+	    try {
+		if (log.getSize() > 0) {
+		    snapshot();
+		}
+	    } finally {
+		log.close();
+	    }
+	} catch (IOException e) {
+	    throw new DbDatabaseException(
+		"Problem closing environment: " + e.getMessage(), e);
+	}
+    }
+
+    /**
+     * {@inheritDoc} <p>
+     *
+     * This implementation returns {@code true} to specify that this
+     * environment requires the use of allocation block placeholders, since
+     * inserting a key locks the next key.
+     */
+    public boolean useAllocationBlockPlaceholders() {
+	return true;
+    }
+}
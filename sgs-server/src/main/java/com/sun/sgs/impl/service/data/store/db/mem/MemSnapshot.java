@@ -0,0 +1,237 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.impl.service.data.store.db.mem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Map.Entry;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Reads and writes snapshots of the contents of the databases in a {@link
+ * MemEnvironment}. <p>
+ *
+ * A snapshot records the generation of the first log file whose records need
+ * to be redone on top of it, followed by the ID, name, and entries of each
+ * database, and a trailing CRC-32 checksum.  Snapshots are written to a
+ * temporary file that is renamed once the data is on disk, so a snapshot file
+ * is always complete. <p>
+ *
+ * Snapshots are written while transactions continue to commit, so they may
+ * include changes made by some transactions whose records appear in later
+ * log files.  Redoing those records when recovering produces the correct
+ * result, since each record specifies the complete new value for each key
+ * it changes.
+ */
+final class MemSnapshot {
+
+    /** The name of the snapshot file. */
+    static final String FILE_NAME = "snapshot";
+
+    /** The name of the file used while writing a snapshot. */
+    static final String TEMP_FILE_NAME = "snapshot.tmp";
+
+    /** Identifies snapshot files. */
+    private static final int MAGIC = 0x534e4150;
+
+    /** The version of the snapshot format. */
+    private static final int VERSION = 1;
+
+    /** The buffer size for reading and writing snapshots. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** This class should not be instantiated. */
+    private MemSnapshot() {
+	throw new AssertionError();
+    }
+
+    /**
+     * Writes a snapshot of the specified databases, replacing any existing
+     * snapshot.
+     *
+     * @param	directory the directory for the snapshot file
+     * @param	generation the generation of the first log file that needs
+     *		to be redone on top of this snapshot
+     * @param	databases the databases
+     * @throws	IOException if an I/O failure occurs
+     */
+    static void write(File directory,
+		      long generation,
+		      Collection<MemDatabase> databases)
+	throws IOException
+    {
+	File temp = new File(directory, TEMP_FILE_NAME);
+	FileOutputStream fileOut = new FileOutputStream(temp);
+	try {
+	    BufferedOutputStream bufferedOut =
+		new BufferedOutputStream(fileOut, BUFFER_SIZE);
+	    CheckedOutputStream checkedOut =
+		new CheckedOutputStream(bufferedOut, new CRC32());
+	    DataOutputStream out = new DataOutputStream(checkedOut);
+	    out.writeInt(MAGIC);
+	    out.writeInt(VERSION);
+	    out.writeLong(generation);
+	    for (MemDatabase db : databases) {
+		out.writeBoolean(true);
+		out.writeInt(db.getId());
+		out.writeUTF(db.getName());
+		for (Entry<byte[], byte[]> entry :
+			 db.getCommitted().entrySet())
+		{
+		    byte[] key = entry.getKey();
+		    byte[] value = entry.getValue();
+		    out.writeInt(key.length);
+		    out.write(key);
+		    out.writeInt(value.length);
+		    out.write(value);
+		}
+		out.writeInt(-1);
+	    }
+	    out.writeBoolean(false);
+	    out.flush();
+	    new DataOutputStream(bufferedOut).writeLong(
+		checkedOut.getChecksum().getValue());
+	    bufferedOut.flush();
+	    fileOut.getFD().sync();
+	} finally {
+	    fileOut.close();
+	}
+	File file = new File(directory, FILE_NAME);
+	if (!temp.renameTo(file)) {
+	    /* Some platforms do not permit renaming over an existing file */
+	    file.delete();
+	    if (!temp.renameTo(file)) {
+		throw new IOException(
+		    "Unable to rename " + temp + " to " + file);
+	    }
+	}
+    }
+
+    /**
+     * Loads the most recent snapshot, if any, into the specified
+     * environment.
+     *
+     * @param	directory the directory containing the snapshot file
+     * @param	env the environment
+     * @return	the generation of the first log file that needs to be redone
+     *		on top of the snapshot, or {@code -1} if there is no snapshot
+     * @throws	IOException if an I/O failure occurs or the snapshot file is
+     *		damaged
+     */
+    static long read(File directory, MemEnvironment env) throws IOException {
+	File file = new File(directory, FILE_NAME);
+	File temp = new File(directory, TEMP_FILE_NAME);
+	if (!file.exists()) {
+	    /*
+	     * A complete temporary file with no snapshot file means the system
+	     * crashed while replacing the snapshot file on a platform that
+	     * does not permit renaming over an existing file.
+	     */
+	    if (temp.exists() && isComplete(temp)) {
+		if (!temp.renameTo(file)) {
+		    throw new IOException(
+			"Unable to rename " + temp + " to " + file);
+		}
+	    } else {
+		return -1;
+	    }
+	} else if (!isComplete(file)) {
+	    throw new IOException("Snapshot file is damaged: " + file);
+	}
+	DataInputStream in = new DataInputStream(
+	    new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+	try {
+	    in.readInt();
+	    in.readInt();
+	    long generation = in.readLong();
+	    while (in.readBoolean()) {
+		MemDatabase db =
+		    env.getDatabaseForRedo(in.readInt(), in.readUTF());
+		while (true) {
+		    int keyLength = in.readInt();
+		    if (keyLength < 0) {
+			break;
+		    }
+		    byte[] key = new byte[keyLength];
+		    in.readFully(key);
+		    byte[] value = new byte[in.readInt()];
+		    in.readFully(value);
+		    db.getCommitted().put(key, value);
+		}
+	    }
+	    return generation;
+	} finally {
+	    in.close();
+	}
+    }
+
+    /**
+     * Checks whether a snapshot file has the right header and a matching
+     * checksum.
+     */
+    private static boolean isComplete(File file) throws IOException {
+	long length = file.length();
+	if (length < 16 + 8) {
+	    return false;
+	}
+	InputStream fileIn = new BufferedInputStream(
+	    new FileInputStream(file), BUFFER_SIZE);
+	try {
+	    CheckedInputStream checkedIn =
+		new CheckedInputStream(fileIn, new CRC32());
+	    DataInputStream in = new DataInputStream(checkedIn);
+	    if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+		return false;
+	    }
+	    long remaining = length - 8 - 8;
+	    byte[] buffer = new byte[BUFFER_SIZE];
+	    while (remaining > 0) {
+		int n = in.read(
+		    buffer, 0, (int) Math.min(buffer.length, remaining));
+		if (n < 0) {
+		    return false;
+		}
+		remaining -= n;
+	    }
+	    long checksum = checkedIn.getChecksum().getValue();
+	    return new DataInputStream(fileIn).readLong() == checksum;
+	} finally {
+	    fileIn.close();
+	}
+    }
+}
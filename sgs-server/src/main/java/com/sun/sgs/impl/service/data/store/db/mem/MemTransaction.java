@@ -0,0 +1,624 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.impl.service.data.store.db.mem;
+
+import com.sun.sgs.app.TransactionConflictException;
+import com.sun.sgs.app.TransactionTimeoutException;
+import com.sun.sgs.impl.util.lock.BasicLocker;
+import com.sun.sgs.impl.util.lock.LockConflict;
+import com.sun.sgs.impl.util.lock.LockManager;
+import com.sun.sgs.service.TransactionInterruptedException;
+import com.sun.sgs.service.store.db.DbDatabaseException;
+import com.sun.sgs.service.store.db.DbTransaction;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import static com.sun.sgs.impl.util.Numbers.addCheckOverflow;
+
+/**
+ * Provides a transaction implementation for databases stored in memory.
+ * Changes are buffered in the transaction, and are only applied to the
+ * databases, and written to the log, when the transaction commits.  Locks
+ * are held until the transaction commits or aborts.
+ */
+class MemTransaction implements DbTransaction {
+
+    /** The value recorded in the change set for a key that is deleted. */
+    private static final byte[] DELETED = new byte[0];
+
+    /** The environment. */
+    private final MemEnvironment env;
+
+    /** The locker for obtaining locks. */
+    private final MemLocker locker;
+
+    /** The time in milliseconds when the transaction times out. */
+    private final long stopTime;
+
+    /**
+     * The locks held by this transaction, mapped to whether the lock is
+     * held for write.
+     */
+    private final Map<LockKey, Boolean> locks =
+	new HashMap<LockKey, Boolean>();
+
+    /**
+     * The changes made by this transaction, by database, mapping each key to
+     * its new value, or to {@link #DELETED} if it was deleted.
+     */
+    private final Map<MemDatabase, TreeMap<byte[], byte[]>> changes =
+	new HashMap<MemDatabase, TreeMap<byte[], byte[]>>();
+
+    /** The databases created by this transaction. */
+    private final List<MemDatabase> created = new ArrayList<MemDatabase>();
+
+    /** The number of open cursors. */
+    private int openCursors = 0;
+
+    /** The possible transaction states. */
+    private enum State {
+
+	/** The transaction is active. */
+	ACTIVE,
+
+	/** The transaction has been prepared. */
+	PREPARED,
+
+	/** The transaction has committed or aborted. */
+	DONE;
+    }
+
+    /** The transaction state. */
+    private State state = State.ACTIVE;
+
+    /**
+     * Identifies a lock on a key in a database.  A {@code null} key
+     * represents the position past the last key in the database.
+     */
+    static final class LockKey {
+
+	/** The database. */
+	private final MemDatabase db;
+
+	/** The key, or {@code null} for the end of the database. */
+	private final byte[] key;
+
+	/** Creates an instance of this class. */
+	LockKey(MemDatabase db, byte[] key) {
+	    this.db = db;
+	    this.key = key;
+	}
+
+	@Override
+	public boolean equals(Object object) {
+	    if (object instanceof LockKey) {
+		LockKey lockKey = (LockKey) object;
+		return db == lockKey.db && Arrays.equals(key, lockKey.key);
+	    } else {
+		return false;
+	    }
+	}
+
+	@Override
+	public int hashCode() {
+	    return (db.getId() * 31) + Arrays.hashCode(key);
+	}
+
+	@Override
+	public String toString() {
+	    return "LockKey[db:" + db.getName() + ", key:" +
+		(key == null ? "END" : Arrays.toString(key)) + "]";
+	}
+    }
+
+    /** A locker that limits waiting for locks by the transaction timeout. */
+    private final class MemLocker extends BasicLocker<LockKey> {
+	MemLocker(LockManager<LockKey> lockManager) {
+	    super(lockManager);
+	}
+	@Override
+	protected long getLockTimeoutTime(long now, long lockTimeout) {
+	    return Math.min(addCheckOverflow(now, lockTimeout), stopTime);
+	}
+	@Override
+	public String toString() {
+	    return "MemLocker[" + MemTransaction.this + "]";
+	}
+    }
+
+    /**
+     * Creates an instance of this class.
+     *
+     * @param	env the environment
+     * @param	timeout the number of milliseconds the transaction should be
+     *		allowed to run
+     * @throws	IllegalArgumentException if timeout is less than {@code 1}
+     */
+    MemTransaction(MemEnvironment env, long timeout) {
+	if (timeout <= 0) {
+	    throw new IllegalArgumentException(
+		"Timeout must be greater than 0");
+	}
+	this.env = env;
+	locker = new MemLocker(env.lockManager);
+	stopTime = addCheckOverflow(System.currentTimeMillis(), timeout);
+    }
+
+    /**
+     * Converts the argument to a transaction for the specified
+     * environment.
+     */
+    static MemTransaction getMemTxn(MemEnvironment env, DbTransaction dbTxn) {
+	if (dbTxn instanceof MemTransaction &&
+	    ((MemTransaction) dbTxn).env == env)
+	{
+	    return (MemTransaction) dbTxn;
+	} else if (dbTxn == null) {
+	    throw new NullPointerException("The transaction must not be null");
+	} else {
+	    throw new IllegalArgumentException(
+		"Transaction must be an instance of MemTransaction for " +
+		"this environment");
+	}
+    }
+
+    /* -- Database operations -- */
+
+    /** Returns the value for a key, obtaining a read or write lock. */
+    byte[] get(MemDatabase db, byte[] key, boolean forUpdate) {
+	key = key.clone();
+	lock(db, key, forUpdate);
+	byte[] value = getValue(db, key);
+	return (value == null) ? null : value.clone();
+    }
+
+    /** Obtains a read lock on a key. */
+    void markForRead(MemDatabase db, byte[] key) {
+	lock(db, key.clone(), false);
+    }
+
+    /** Obtains a write lock on a key. */
+    void markForUpdate(MemDatabase db, byte[] key) {
+	lock(db, key.clone(), true);
+    }
+
+    /**
+     * Stores a value for a key, only replacing an existing value if
+     * overwrite is true, and returning whether the value was stored.
+     */
+    boolean put(MemDatabase db, byte[] key, byte[] value, boolean overwrite) {
+	key = key.clone();
+	value = value.clone();
+	lock(db, key, true);
+	if (!overwrite && getValue(db, key) != null) {
+	    return false;
+	}
+	if (!db.getCommitted().containsKey(key)) {
+	    /*
+	     * Lock the next key to prevent phantoms in cursor scans.  Keys
+	     * this transaction has already changed are locked, so an insert
+	     * before one of them needs no other locks.
+	     */
+	    while (true) {
+		byte[] next = getHigherKey(db, key);
+		lock(db, next, true);
+		byte[] check = getHigherKey(db, key);
+		if (next == null ? check == null : next == check) {
+		    break;
+		}
+	    }
+	}
+	getChanges(db).put(key, value);
+	return true;
+    }
+
+    /** Removes the value for a key, returning whether it was present. */
+    boolean delete(MemDatabase db, byte[] key) {
+	key = key.clone();
+	lock(db, key, true);
+	if (getValue(db, key) == null) {
+	    return false;
+	} else if (db.getCommitted().containsKey(key)) {
+	    getChanges(db).put(key, DELETED);
+	} else {
+	    getChanges(db).remove(key);
+	}
+	return true;
+    }
+
+    /**
+     * Returns the first entry with a key greater than, or equal to if
+     * inclusive is true, the specified key, or the first entry if the key
+     * is null.  Obtains a read lock on the key found, or on the end of the
+     * database if none was found.
+     */
+    Entry<byte[], byte[]> findNext(
+	MemDatabase db, byte[] key, boolean inclusive)
+    {
+	if (key != null) {
+	    key = key.clone();
+	}
+	while (true) {
+	    Entry<byte[], byte[]> entry = getNextEntry(db, key, inclusive);
+	    byte[] found = (entry == null) ? null : entry.getKey();
+	    lock(db, found, false);
+	    Entry<byte[], byte[]> check = getNextEntry(db, key, inclusive);
+	    if (sameKey(entry, check)) {
+		return check;
+	    }
+	}
+    }
+
+    /**
+     * Returns the last entry, or null if the database is empty, obtaining
+     * read locks on the end of the database and on the key found.
+     */
+    Entry<byte[], byte[]> findLast(MemDatabase db) {
+	lock(db, null, false);
+	while (true) {
+	    Entry<byte[], byte[]> entry = getPreviousEntry(db, null);
+	    if (entry == null) {
+		return null;
+	    }
+	    lock(db, entry.getKey(), false);
+	    Entry<byte[], byte[]> check = getPreviousEntry(db, null);
+	    if (sameKey(entry, check)) {
+		return check;
+	    }
+	}
+    }
+
+    /** Notes that a cursor has been opened. */
+    void cursorOpened() {
+	checkActive();
+	openCursors++;
+    }
+
+    /** Notes that a cursor has been closed. */
+    void cursorClosed() {
+	openCursors--;
+    }
+
+    /** Notes that this transaction created a database. */
+    void created(MemDatabase db) {
+	checkActive();
+	created.add(db);
+    }
+
+    /**
+     * Applies the changes made by this transaction to the databases.  Called
+     * by the environment while committing, after the changes are logged.
+     */
+    void apply() {
+	for (MemDatabase db : created) {
+	    db.setCommitted();
+	}
+	for (Entry<MemDatabase, TreeMap<byte[], byte[]>> entry :
+		 changes.entrySet())
+	{
+	    Map<byte[], byte[]> committed = entry.getKey().getCommitted();
+	    for (Entry<byte[], byte[]> change : entry.getValue().entrySet()) {
+		if (change.getValue() == DELETED) {
+		    committed.remove(change.getKey());
+		} else {
+		    committed.put(change.getKey(), change.getValue());
+		}
+	    }
+	}
+    }
+
+    /* -- Implement DbTransaction -- */
+
+    /**
+     * {@inheritDoc} <p>
+     *
+     * This implementation does not record the prepared state durably, and
+     * so does not support resolving prepared transactions after a crash.
+     */
+    public void prepare(byte[] gid) {
+	checkActive();
+	checkNoCursors();
+	state = State.PREPARED;
+    }
+
+    /** {@inheritDoc} */
+    public void commit() {
+	if (state == State.DONE) {
+	    throw new IllegalStateException("Transaction is not active");
+	}
+	checkNoCursors();
+	try {
+	    if (!created.isEmpty() || !changes.isEmpty()) {
+		env.commit(this, encodeChanges());
+	    }
+	} finally {
+	    state = State.DONE;
+	    releaseLocks();
+	}
+    }
+
+    /** {@inheritDoc} */
+    public void abort() {
+	if (state == State.DONE) {
+	    throw new IllegalStateException("Transaction is not active");
+	}
+	checkNoCursors();
+	state = State.DONE;
+	for (MemDatabase db : created) {
+	    env.removeDatabase(db);
+	}
+	releaseLocks();
+    }
+
+    /* -- Object methods -- */
+
+    @Override
+    public String toString() {
+	return "MemTransaction@" + Integer.toHexString(hashCode());
+    }
+
+    /* -- Private methods -- */
+
+    /**
+     * Obtains a lock on a key, or on the end of the database if the key is
+     * null, unless this transaction already holds a strong enough lock.
+     */
+    private void lock(MemDatabase db, byte[] key, boolean forWrite) {
+	checkActive();
+	LockKey lockKey = new LockKey(db, key);
+	Boolean held = locks.get(lockKey);
+	if (held != null && (held || !forWrite)) {
+	    return;
+	}
+	if (System.currentTimeMillis() > stopTime) {
+	    throw new TransactionTimeoutException("Transaction timed out");
+	}
+	LockConflict<LockKey> conflict =
+	    env.lockManager.lock(locker, lockKey, forWrite);
+	if (conflict != null) {
+	    String msg = ": " + lockKey + ", with conflicting transaction " +
+		conflict.getConflictingLocker();
+	    switch (conflict.getType()) {
+	    case TIMEOUT:
+		throw new TransactionTimeoutException(
+		    "Transaction timed out waiting for lock" + msg);
+	    case DENIED:
+	    case DEADLOCK:
+		throw new TransactionConflictException(
+		    "Transaction conflict" + msg);
+	    case INTERRUPTED:
+		throw new TransactionInterruptedException(
+		    "Transaction interrupted waiting for lock" + msg);
+	    default:
+		throw new AssertionError(
+		    "Should not be " + conflict.getType());
+	    }
+	}
+	locks.put(lockKey, forWrite);
+    }
+
+    /** Releases all locks held by this transaction. */
+    private void releaseLocks() {
+	for (LockKey lockKey : locks.keySet()) {
+	    env.lockManager.releaseLock(locker, lockKey);
+	}
+	locks.clear();
+    }
+
+    /**
+     * Returns the value of a key as seen by this transaction, or null if it
+     * has no value.
+     */
+    private byte[] getValue(MemDatabase db, byte[] key) {
+	TreeMap<byte[], byte[]> dbChanges = changes.get(db);
+	if (dbChanges != null) {
+	    byte[] value = dbChanges.get(key);
+	    if (value != null) {
+		return (value == DELETED) ? null : value;
+	    }
+	}
+	return db.getCommitted().get(key);
+    }
+
+    /** Returns the changes for a database, creating them if needed. */
+    private TreeMap<byte[], byte[]> getChanges(MemDatabase db) {
+	TreeMap<byte[], byte[]> dbChanges = changes.get(db);
+	if (dbChanges == null) {
+	    dbChanges = new TreeMap<byte[], byte[]>(MemDatabase.KEY_COMPARATOR);
+	    changes.put(db, dbChanges);
+	}
+	return dbChanges;
+    }
+
+    /**
+     * Returns the first key greater than the specified key that is either
+     * committed or changed by this transaction, including keys it deleted,
+     * or null if there is none.
+     */
+    private byte[] getHigherKey(MemDatabase db, byte[] key) {
+	byte[] result = db.getCommitted().higherKey(key);
+	TreeMap<byte[], byte[]> dbChanges = changes.get(db);
+	if (dbChanges != null) {
+	    byte[] change = dbChanges.higherKey(key);
+	    if (change != null &&
+		(result == null ||
+		 MemDatabase.KEY_COMPARATOR.compare(change, result) < 0))
+	    {
+		result = change;
+	    }
+	}
+	return result;
+    }
+
+    /**
+     * Returns the entry as seen by this transaction with the first key
+     * greater than, or equal to if inclusive is true, the specified key, or
+     * the first entry if the key is null.
+     */
+    private Entry<byte[], byte[]> getNextEntry(
+	MemDatabase db, byte[] key, boolean inclusive)
+    {
+	NavigableMap<byte[], byte[]> committed = db.getCommitted();
+	NavigableMap<byte[], byte[]> dbChanges = changes.get(db);
+	while (true) {
+	    Entry<byte[], byte[]> result = nextEntry(committed, key, inclusive);
+	    if (dbChanges != null) {
+		Entry<byte[], byte[]> change =
+		    nextEntry(dbChanges, key, inclusive);
+		if (change != null &&
+		    (result == null ||
+		     MemDatabase.KEY_COMPARATOR.compare(
+			 change.getKey(), result.getKey()) <= 0))
+		{
+		    result = change;
+		}
+	    }
+	    if (result == null || result.getValue() != DELETED) {
+		return result;
+	    }
+	    key = result.getKey();
+	    inclusive = false;
+	}
+    }
+
+    /** Returns the next entry in a single map. */
+    private static Entry<byte[], byte[]> nextEntry(
+	NavigableMap<byte[], byte[]> map, byte[] key, boolean inclusive)
+    {
+	if (key == null) {
+	    return map.firstEntry();
+	} else if (inclusive) {
+	    return map.ceilingEntry(key);
+	} else {
+	    return map.higherEntry(key);
+	}
+    }
+
+    /**
+     * Returns the entry as seen by this transaction with the last key less
+     * than the specified key, or the last entry if the key is null.
+     */
+    private Entry<byte[], byte[]> getPreviousEntry(
+	MemDatabase db, byte[] key)
+    {
+	NavigableMap<byte[], byte[]> committed = db.getCommitted();
+	NavigableMap<byte[], byte[]> dbChanges = changes.get(db);
+	while (true) {
+	    Entry<byte[], byte[]> result = (key == null)
+		? committed.lastEntry() : committed.lowerEntry(key);
+	    if (dbChanges != null) {
+		Entry<byte[], byte[]> change = (key == null)
+		    ? dbChanges.lastEntry() : dbChanges.lowerEntry(key);
+		if (change != null &&
+		    (result == null ||
+		     MemDatabase.KEY_COMPARATOR.compare(
+			 change.getKey(), result.getKey()) >= 0))
+		{
+		    result = change;
+		}
+	    }
+	    if (result == null || result.getValue() != DELETED) {
+		return result;
+	    }
+	    key = result.getKey();
+	}
+    }
+
+    /** Checks whether two entries, which may be null, have the same key. */
+    private static boolean sameKey(
+	Entry<byte[], byte[]> x, Entry<byte[], byte[]> y)
+    {
+	if (x == null || y == null) {
+	    return x == y;
+	} else {
+	    return Arrays.equals(x.getKey(), y.getKey());
+	}
+    }
+
+    /** Encodes the changes made by this transaction as a log record. */
+    private byte[] encodeChanges() {
+	try {
+	    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+	    DataOutputStream out = new DataOutputStream(baos);
+	    for (MemDatabase db : created) {
+		out.writeByte(MemEnvironment.OP_CREATE);
+		out.writeInt(db.getId());
+		out.writeUTF(db.getName());
+	    }
+	    for (Entry<MemDatabase, TreeMap<byte[], byte[]>> entry :
+		     changes.entrySet())
+	    {
+		int id = entry.getKey().getId();
+		for (Entry<byte[], byte[]> change :
+			 entry.getValue().entrySet())
+		{
+		    byte[] key = change.getKey();
+		    byte[] value = change.getValue();
+		    out.writeByte((value == DELETED)
+				  ? MemEnvironment.OP_DELETE
+				  : MemEnvironment.OP_PUT);
+		    out.writeInt(id);
+		    out.writeInt(key.length);
+		    out.write(key);
+		    if (value != DELETED) {
+			out.writeInt(value.length);
+			out.write(value);
+		    }
+		}
+	    }
+	    out.flush();
+	    return baos.toByteArray();
+	} catch (IOException e) {
+	    throw new DbDatabaseException(
+		"Unexpected exception: " + e.getMessage(), e);
+	}
+    }
+
+    /** Checks that this transaction is active. */
+    private void checkActive() {
+	if (state != State.ACTIVE) {
+	    throw new IllegalStateException("Transaction is not active");
+	}
+    }
+
+    /** Checks that this transaction has no open cursors. */
+    private void checkNoCursors() {
+	if (openCursors > 0) {
+	    throw new IllegalStateException(
+		"Transaction has open cursors");
+	}
+    }
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.impl.service.data.store.db.mem;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * A sequential log of the changes made by committed transactions.  The log is
+ * made up of a series of files, one per generation, each containing a
+ * sequence of records.  Each record consists of the length of the record
+ * data, a CRC-32 checksum of the data, and the data itself. <p>
+ *
+ * Records are appended to an in-memory buffer, and then written to the
+ * current log file by calls to {@link #flush flush}.  Concurrent calls to
+ * {@code flush} are grouped, so that a single write, and a single call to
+ * force the data to disk, covers all of the records appended by the threads
+ * waiting to flush.  This class is thread-safe.
+ */
+final class WriteAheadLog {
+
+    /** The prefix for the names of log files. */
+    static final String FILE_PREFIX = "log.";
+
+    /** The number of bytes in the header of each record. */
+    private static final int RECORD_HEADER_SIZE = 12;
+
+    /**
+     * The maximum number of bytes of data in a record.  Longer lengths found
+     * while replaying a log are treated as damage.
+     */
+    static final int MAX_RECORD_SIZE = 256 * 1024 * 1024;
+
+    /** The directory containing the log files. */
+    private final File directory;
+
+    /** Whether to force log data to disk when flushing. */
+    private final boolean flushToDisk;
+
+    /** The buffer holding records that have not been written yet. */
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    /** For writing record headers to the pending buffer. */
+    private final DataOutputStream pendingOut = new DataOutputStream(pending);
+
+    /** The generation of the current log file. */
+    private long generation;
+
+    /** The stream for writing to the current log file. */
+    private FileOutputStream out;
+
+    /** The logical position just past the last appended record. */
+    private long appended = 0;
+
+    /** The logical position just past the last written record. */
+    private long written = 0;
+
+    /** The number of bytes appended to the current log file. */
+    private long size = 0;
+
+    /** Whether a thread is currently writing to the log file. */
+    private boolean writing = false;
+
+    /** The exception that caused the log to fail, or null. */
+    private IOException failure = null;
+
+    /**
+     * Creates an instance of this class, creating a new log file for the
+     * specified generation.
+     *
+     * @param	directory the directory containing the log files
+     * @param	generation the generation of the new log file
+     * @param	flushToDisk whether to force data to disk when flushing
+     * @throws	IOException if the log file cannot be created
+     */
+    WriteAheadLog(File directory, long generation, boolean flushToDisk)
+	throws IOException
+    {
+	this.directory = directory;
+	this.generation = generation;
+	this.flushToDisk = flushToDisk;
+	out = new FileOutputStream(getFile(directory, generation));
+    }
+
+    /**
+     * Returns the file for the log with the specified generation.
+     *
+     * @param	directory the directory containing the log files
+     * @param	generation the generation
+     * @return	the file
+     */
+    static File getFile(File directory, long generation) {
+	return new File(directory, FILE_PREFIX + generation);
+    }
+
+    /**
+     * Returns the log files in the specified directory, sorted by
+     * generation.
+     *
+     * @param	directory the directory containing the log files
+     * @return	a map from generation to log file
+     */
+    static SortedMap<Long, File> getFiles(File directory) {
+	SortedMap<Long, File> result = new TreeMap<Long, File>();
+	String[] names = directory.list();
+	if (names != null) {
+	    for (String name : names) {
+		if (name.startsWith(FILE_PREFIX)) {
+		    try {
+			long generation = Long.parseLong(
+			    name.substring(FILE_PREFIX.length()));
+			result.put(generation, new File(directory, name));
+		    } catch (NumberFormatException e) {
+			continue;
+		    }
+		}
+	    }
+	}
+	return result;
+    }
+
+    /**
+     * Reads the records in a log file, passing the data for each one to the
+     * environment to redo the associated changes.  Stops at the first record
+     * that is incomplete, whose length is negative, larger than {@link
+     * #MAX_RECORD_SIZE}, or larger than the rest of the file, or whose
+     * checksum does not match, which is what is found at the end of a log
+     * file if the system crashed while the record was being written.
+     *
+     * @param	file the log file
+     * @param	env the environment
+     * @return	{@code true} if all of the data in the file was read, or
+     *		{@code false} if reading stopped at an incomplete or
+     *		damaged record
+     * @throws	IOException if an I/O failure occurs
+     */
+    static boolean replay(File file, MemEnvironment env) throws IOException {
+	DataInputStream in = new DataInputStream(
+	    new BufferedInputStream(new FileInputStream(file)));
+	try {
+	    CRC32 crc = new CRC32();
+	    long remaining = file.length();
+	    while (true) {
+		int length;
+		try {
+		    length = in.readInt();
+		} catch (EOFException e) {
+		    return remaining == 0;
+		}
+		remaining -= RECORD_HEADER_SIZE;
+		/*
+		 * Check the length before allocating space for the data, since
+		 * a damaged record may have any value there
+		 */
+		if (length < 0 || length > MAX_RECORD_SIZE ||
+		    length > remaining)
+		{
+		    return false;
+		}
+		byte[] data;
+		long checksum;
+		try {
+		    checksum = in.readLong();
+		    data = new byte[length];
+		    in.readFully(data);
+		} catch (EOFException e) {
+		    return false;
+		}
+		remaining -= length;
+		crc.reset();
+		crc.update(data);
+		if (crc.getValue() != checksum) {
+		    return false;
+		}
+		env.redo(data);
+	    }
+	} finally {
+	    in.close();
+	}
+    }
+
+    /**
+     * Appends a record to the log.  The record will not be written to the
+     * log file until {@link #flush flush} is called with a position at least
+     * as large as the one returned by this method.
+     *
+     * @param	data the record data
+     * @return	the logical log position just past the record
+     * @throws	IOException if an earlier attempt to write to the log failed,
+     *		or if the data is longer than {@link #MAX_RECORD_SIZE}
+     */
+    synchronized long append(byte[] data) throws IOException {
+	checkFailure();
+	if (data.length > MAX_RECORD_SIZE) {
+	    throw new IOException(
+		"Log record is too large: " + data.length + " bytes");
+	}
+	CRC32 crc = new CRC32();
+	crc.update(data);
+	pendingOut.writeInt(data.length);
+	pendingOut.writeLong(crc.getValue());
+	pendingOut.write(data);
+	int recordSize = RECORD_HEADER_SIZE + data.length;
+	appended += recordSize;
+	size += recordSize;
+	return appended;
+    }
+
+    /**
+     * Makes sure that all records up to the specified logical position have
+     * been written to the log file, and forced to disk if requested.  If
+     * another thread is already writing, waits for it to finish and then
+     * writes all records appended in the meantime with a single write.
+     *
+     * @param	position the logical position
+     * @throws	IOException if the write fails
+     */
+    void flush(long position) throws IOException {
+	boolean interrupted = false;
+	try {
+	    while (true) {
+		byte[] data;
+		long target;
+		FileOutputStream file;
+		synchronized (this) {
+		    checkFailure();
+		    if (written >= position) {
+			return;
+		    } else if (writing) {
+			try {
+			    wait();
+			} catch (InterruptedException e) {
+			    interrupted = true;
+			}
+			continue;
+		    }
+		    writing = true;
+		    data = pending.toByteArray();
+		    pending.reset();
+		    target = appended;
+		    file = out;
+		}
+		boolean done = false;
+		try {
+		    file.write(data);
+		    if (flushToDisk) {
+			file.getChannel().force(false);
+		    }
+		    done = true;
+		} catch (IOException e) {
+		    synchronized (this) {
+			failure = e;
+		    }
+		    throw e;
+		} finally {
+		    synchronized (this) {
+			if (done) {
+			    written = target;
+			}
+			writing = false;
+			notifyAll();
+		    }
+		}
+	    }
+	} finally {
+	    if (interrupted) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+    }
+
+    /**
+     * Returns the number of bytes appended to the current log file.
+     *
+     * @return	the size of the current log file
+     */
+    synchronized long getSize() {
+	return size;
+    }
+
+    /**
+     * Writes all pending records to the current log file, forces it to disk,
+     * and starts a new log file with the next generation.  Callers should
+     * insure that no records are appended during this call if they need to
+     * know which file contains each record.
+     *
+     * @return	the generation of the new log file
+     * @throws	IOException if an I/O failure occurs
+     */
+    synchronized long rotate() throws IOException {
+	writeAll();
+	out.close();
+	generation++;
+	out = new FileOutputStream(getFile(directory, generation));
+	size = 0;
+	return generation;
+    }
+
+    /**
+     * Deletes the log files for generations earlier than the specified one.
+     *
+     * @param	before the earliest generation to keep
+     * @return	{@code true} if all of the files were deleted
+     */
+    boolean deleteBefore(long before) {
+	boolean result = true;
+	for (File file : getFiles(directory).headMap(before).values()) {
+	    if (!file.delete()) {
+		result = false;
+	    }
+	}
+	return result;
+    }
+
+    /**
+     * Writes all pending records to the log file, forces it to disk, and
+     * closes it.  The log should not be used after this method is called.
+     *
+     * @throws	IOException if an I/O failure occurs
+     */
+    synchronized void close() throws IOException {
+	try {
+	    writeAll();
+	} finally {
+	    out.close();
+	}
+    }
+
+    /**
+     * Waits for any current writer, and then writes all pending records to
+     * the current log file and forces it to disk.
+     */
+    private void writeAll() throws IOException {
+	assert Thread.holdsLock(this);
+	boolean interrupted = false;
+	while (writing) {
+	    try {
+		wait();
+	    } catch (InterruptedException e) {
+		interrupted = true;
+	    }
+	}
+	if (interrupted) {
+	    Thread.currentThread().interrupt();
+	}
+	checkFailure();
+	try {
+	    pending.writeTo(out);
+	    out.getChannel().force(false);
+	} catch (IOException e) {
+	    failure = e;
+	    throw e;
+	}
+	pending.reset();
+	written = appended;
+    }
+
+    /** Throws an exception if an earlier write to the log failed. */
+    private void checkFailure() throws IOException {
+	assert Thread.holdsLock(this);
+	if (failure != null) {
+	    IOException e = new IOException(
+		"The log failed earlier: " + failure.getMessage());
+	    e.initCause(failure);
+	    throw e;
+	}
+    }
+}
@@ -30,6 +30,7 @@ import com.sun.sgs.impl.service.data.store.BindingValue;
 import com.sun.sgs.impl.service.data.store.NetworkException;
 import com.sun.sgs.impl.sharedutil.LoggerWrapper;
 import com.sun.sgs.impl.sharedutil.PropertiesWrapper;
+import com.sun.sgs.impl.util.RunLimiter;
 import com.sun.sgs.kernel.ComponentRegistry;
 import com.sun.sgs.kernel.NodeType;
 import com.sun.sgs.service.Transaction;
@@ -135,11 +136,11 @@ public final class DataStoreClient extends AbstractDataStore {
     private static final long GET_SERVER_WAIT = 10000;
 
     /**
-     * Whether to replace Java(TM) RMI with an experimental, socket-based
-     * facility.
+     * The property that specifies whether to replace Java(TM) RMI with an
+     * experimental, socket-based facility.  The system property of the same
+     * name supplies the default.
      */
-    private static final boolean noRmi = Boolean.getBoolean(
-	PACKAGE + ".no.rmi");
+    private static final String NO_RMI_PROPERTY = PACKAGE + ".no.rmi";
 
     /** The property that specifies the maximum transaction timeout. */
     private static final String MAX_TXN_TIMEOUT_PROPERTY =
@@ -148,6 +149,15 @@ public final class DataStoreClient extends AbstractDataStore {
     /** The default maximum transaction timeout. */
     private static final long DEFAULT_MAX_TXN_TIMEOUT = 600000;
 
+    /**
+     * The properties that limit the number of threads the transaction and
+     * task schedulers allow to run at once.
+     */
+    private static final String[] RUNNING_THREADS_PROPERTIES = {
+	"com.sun.sgs.impl.kernel.transaction.running.threads",
+	"com.sun.sgs.impl.kernel.task.running.threads"
+    };
+
     /** The server host name. */
     private final String serverHost;
 
@@ -166,6 +176,9 @@ public final class DataStoreClient extends AbstractDataStore {
     /** The maximum transaction timeout. */
     private final long maxTxnTimeout;
 
+    /** Whether to use the socket-based facility in place of RMI. */
+    private final boolean noRmi;
+
     /** Provides information about the transaction for the current thread. */
     private final ThreadLocal<TxnInfo> threadTxnInfo =
 	new ThreadLocal<TxnInfo>();
@@ -260,6 +273,8 @@ public final class DataStoreClient extends AbstractDataStore {
 	maxTxnTimeout = wrappedProps.getLongProperty(
 	    MAX_TXN_TIMEOUT_PROPERTY, DEFAULT_MAX_TXN_TIMEOUT, 1,
 	    Long.MAX_VALUE);
+	noRmi = wrappedProps.getBooleanProperty(
+	    NO_RMI_PROPERTY, Boolean.getBoolean(NO_RMI_PROPERTY));
 	if (serverStart) {
 	    try {
 		localServer = new DataStoreServerImpl(
@@ -277,7 +292,22 @@ public final class DataStoreClient extends AbstractDataStore {
 	    localServer = null;
 	    serverPort = specifiedServerPort;
 	}
-	server = getServer();
+	/*
+	 * Calls to the server block waiting for replies, so let another
+	 * thread run while they do if the schedulers limit the number of
+	 * running threads.  Skip the proxy otherwise, since it only adds
+	 * overhead to each call.
+	 */
+	DataStoreServer remoteServer = getServer();
+	boolean limited = false;
+	for (String property : RUNNING_THREADS_PROPERTIES) {
+	    if (wrappedProps.getIntProperty(property, 0) != 0) {
+		limited = true;
+	    }
+	}
+	server = limited
+	    ? RunLimiter.blockingProxy(DataStoreServer.class, remoteServer)
+	    : remoteServer;
 	nodeId = server.newNodeId();
     }
 
@@ -320,6 +350,16 @@ public final class DataStoreClient extends AbstractDataStore {
 	}
     }
 
+    /** {@inheritDoc} */
+    protected byte[][] getObjectsInternal(Transaction txn, long[] oids) {
+	try {
+	    TxnInfo txnInfo = checkTxn(txn);
+	    return server.getObjects(txnInfo.tid, oids);
+	} catch (IOException e) {
+	    throw new NetworkException("", e);
+	}
+    }
+
     /** {@inheritDoc} */
     protected void setObjectInternal(Transaction txn, long oid, byte[] data) {
 	try {
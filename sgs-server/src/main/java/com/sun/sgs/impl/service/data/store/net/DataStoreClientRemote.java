@@ -21,7 +21,11 @@
 
 package com.sun.sgs.impl.service.data.store.net;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.Socket;
 
 /**
@@ -56,7 +60,8 @@ class DataStoreClientRemote extends DataStoreProtocolClient {
 	Socket socket = new Socket(host, port);
 	setSocketOptions(socket);
 	return new DataStoreProtocol(
-	    socket.getInputStream(), socket.getOutputStream());
+	    socket.getInputStream(),
+	    new FrameOutputStream(socket.getOutputStream()));
     }
 
     /** Sets TcpNoDelay and KeepAlive options, if possible. */
@@ -70,4 +75,37 @@ class DataStoreClientRemote extends DataStoreProtocolClient {
 	} catch (Exception e) {
 	}
     }
+
+    /**
+     * An output stream that sends the data written before each call to flush
+     * as a single frame, preceded by its length, so that the server can tell
+     * when it has read a complete request.
+     */
+    private static class FrameOutputStream extends ByteArrayOutputStream {
+
+	/** The underlying stream. */
+	private final DataOutputStream out;
+
+	/** Creates an instance that writes to the specified stream. */
+	FrameOutputStream(OutputStream out) {
+	    this.out = new DataOutputStream(new BufferedOutputStream(out));
+	}
+
+	/** Writes the pending data as a frame, if any, and flushes. */
+	@Override
+	public synchronized void flush() throws IOException {
+	    if (count > 0) {
+		out.writeInt(count);
+		out.write(buf, 0, count);
+		reset();
+	    }
+	    out.flush();
+	}
+
+	/** Closes the underlying stream. */
+	@Override
+	public void close() throws IOException {
+	    out.close();
+	}
+    }
 }
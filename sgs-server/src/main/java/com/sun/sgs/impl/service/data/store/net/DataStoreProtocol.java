@@ -22,9 +22,12 @@
 package com.sun.sgs.impl.service.data.store.net;
 
 import com.sun.sgs.impl.service.data.store.BindingValue;
+import com.sun.sgs.service.store.ClassInfoNotFoundException;
+import static com.sun.sgs.impl.util.DataStreamUtil.readByteArrays;
 import static com.sun.sgs.impl.util.DataStreamUtil.readBytes;
 import static com.sun.sgs.impl.util.DataStreamUtil.readLongs;
 import static com.sun.sgs.impl.util.DataStreamUtil.readString;
+import static com.sun.sgs.impl.util.DataStreamUtil.writeByteArrays;
 import static com.sun.sgs.impl.util.DataStreamUtil.writeBytes;
 import static com.sun.sgs.impl.util.DataStreamUtil.writeLongs;
 import static com.sun.sgs.impl.util.DataStreamUtil.writeString;
@@ -68,6 +71,7 @@ class DataStoreProtocol implements DataStoreServer {
     private static final short GET_CLASS_ID = 12;
     private static final short GET_CLASS_INFO = 13;
     private static final short NEXT_OBJECT_ID = 14;
+    private static final short GET_OBJECTS = 15;
     private static final short CREATE_TRANSACTION = 100;
     private static final short PREPARE = 101;
     private static final short COMMIT = 102;
@@ -86,6 +90,20 @@ class DataStoreProtocol implements DataStoreServer {
 	this.out = new DataOutputStream(new BufferedOutputStream(out));
     }
 
+    /**
+     * Returns whether the specified request, as written by this protocol,
+     * prepares, commits, or aborts a transaction.  These requests release
+     * locks rather than waiting for them.
+     */
+    static boolean endsTransaction(byte[] request) {
+	if (request.length < 2) {
+	    return false;
+	}
+	short op = (short) (((request[0] & 0xff) << 8) | (request[1] & 0xff));
+	return op == PREPARE || op == COMMIT || op == PREPARE_AND_COMMIT ||
+	    op == ABORT;
+    }
+
     /** Dispatches a single method call to the server. */
     void dispatch(DataStoreServer server) throws IOException {
 	short op = in.readShort();
@@ -102,6 +120,9 @@ class DataStoreProtocol implements DataStoreServer {
 	case GET_OBJECT:
 	    handleGetObject(server);
 	    break;
+	case GET_OBJECTS:
+	    handleGetObjects(server);
+	    break;
 	case SET_OBJECT:
 	    handleSetObject(server);
 	    break;
@@ -238,6 +259,27 @@ class DataStoreProtocol implements DataStoreServer {
 	}
     }
 
+    public byte[][] getObjects(long tid, long[] oids) throws IOException {
+	out.writeShort(GET_OBJECTS);
+	out.writeLong(tid);
+	writeLongs(oids, out);
+	checkResult();
+	return readByteArrays(in);
+    }
+
+    private void handleGetObjects(DataStoreServer server) throws IOException {
+	try {
+	    long tid = in.readLong();
+	    long[] oids = readLongs(in);
+	    byte[][] result = server.getObjects(tid, oids);
+	    out.writeBoolean(true);
+	    writeByteArrays(result, out);
+	    out.flush();
+	} catch (Throwable t) {
+	    failure(t);
+	}
+    }
+
     public void setObject(long tid, long oid, byte[] data)
 	throws IOException
     {
@@ -429,11 +471,13 @@ class DataStoreProtocol implements DataStoreServer {
 	}
     }
 
-    public byte[] getClassInfo(long tid, int classId) throws IOException {
+    public byte[] getClassInfo(long tid, int classId)
+	throws ClassInfoNotFoundException, IOException
+    {
 	out.writeShort(GET_CLASS_INFO);
 	out.writeLong(tid);
 	out.writeInt(classId);
-	checkResult();
+	checkResult(ClassInfoNotFoundException.class);
 	return readBytes(in);
     }
 
@@ -575,6 +619,18 @@ class DataStoreProtocol implements DataStoreServer {
      * method call failed.
      */
     private void checkResult() throws IOException {
+	checkResult(IOException.class);
+    }
+
+    /**
+     * Flush output, read the success value, and throw an exception if the
+     * method call failed, rethrowing checked exceptions of the specified
+     * type, and wrapping other unexpected checked exceptions in an {@code
+     * IOException}.
+     */
+    private <E extends Exception> void checkResult(Class<E> checkedType)
+	throws E, IOException
+    {
 	out.flush();
 	boolean ok = in.readBoolean();
 	if (ok) {
@@ -599,8 +655,15 @@ class DataStoreProtocol implements DataStoreServer {
 	    throw (IOException) exception;
 	} else if (exception instanceof RuntimeException) {
 	    throw (RuntimeException) exception;
-	} else {
+	} else if (exception instanceof Error) {
 	    throw (Error) exception;
+	} else if (checkedType.isInstance(exception)) {
+	    throw checkedType.cast(exception);
+	} else {
+	    IOException ioe = new IOException(
+		"Unexpected exception: " + exception);
+	    ioe.initCause(exception);
+	    throw ioe;
 	}
     }
 
@@ -22,6 +22,7 @@
 package com.sun.sgs.impl.service.data.store.net;
 
 import com.sun.sgs.impl.service.data.store.BindingValue;
+import com.sun.sgs.service.store.ClassInfoNotFoundException;
 import java.io.IOException;
 
 /**
@@ -85,6 +86,11 @@ abstract class DataStoreProtocolClient implements DataStoreServer {
 	return getHandler().getObject(tid, oid, forUpdate);
     }
 
+    /** {@inheritDoc} */
+    public byte[][] getObjects(long tid, long[] oids) throws IOException {
+	return getHandler().getObjects(tid, oids);
+    }
+
     /** {@inheritDoc} */
     public void setObject(long tid, long oid, byte[] data) throws IOException {
 	getHandler().setObject(tid, oid, data);
@@ -132,7 +138,9 @@ abstract class DataStoreProtocolClient implements DataStoreServer {
     }
 
     /** {@inheritDoc} */
-    public byte[] getClassInfo(long tid, int classId) throws IOException {
+    public byte[] getClassInfo(long tid, int classId)
+	throws ClassInfoNotFoundException, IOException
+    {
 	return getHandler().getClassInfo(tid, classId);
     }
 
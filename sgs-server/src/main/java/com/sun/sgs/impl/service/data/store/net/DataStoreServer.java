@@ -102,6 +102,26 @@ public interface DataStoreServer extends Remote {
     byte[] getObject(long tid, long oid, boolean forUpdate)
 	throws IOException;
 
+    /**
+     * Obtains the data associated with a series of object IDs, returning
+     * {@code null} for objects that are not found.
+     *
+     * @param	tid the ID of the transaction under which the operation should
+     *		take place
+     * @param	oids the object IDs
+     * @return	the data associated with the object IDs, with {@code null}
+     *		for objects that are not found
+     * @throws	IllegalArgumentException if {@code tid} is negative, or if
+     *		{@code oids} contains a value that is negative
+     * @throws	TransactionAbortedException if the transaction was aborted due
+     *		to a lock conflict or timeout
+     * @throws	TransactionNotActiveException if the transaction is not active
+     * @throws	IllegalStateException if the operation failed because of a
+     *		problem with the current transaction
+     * @throws	IOException if a network problem occurs
+     */
+    byte[][] getObjects(long tid, long[] oids) throws IOException;
+
     /**
      * Specifies data to associate with an object ID.
      *
@@ -93,6 +93,16 @@ import java.util.logging.Logger;
  *	port will be chosen.  The value chosen will be logged, and can also be
  *	accessed with the {@link #getPort getPort} method. <p>
  *
+ * <dt> <i>Property:</i> <code><b>
+ *	com.sun.sgs.impl.service.data.store.net.server.worker.threads
+ *	</b></code><br>
+ *      <i>Default:</i> {@code 32}
+ *
+ * <dd style="padding-top: .5em">The number of threads used to run requests
+ *	when the experimental, socket-based facility is used in place of Java
+ *	RMI.  Requests from all connections share these threads.  A request
+ *	that is waiting for a lock holds on to its thread while it waits. <p>
+ *
  * </dl> <p>
  *
  * In addition to any logging performed by the {@code DataStoreImpl} class,
@@ -144,15 +154,25 @@ public class DataStoreServerImpl implements DataStoreServer {
     /** The default value of the port for running the server. */
     private static final int DEFAULT_PORT = 44530;
 
+    /**
+     * The name of the property for specifying the number of worker threads
+     * used by the socket-based facility.
+     */
+    private static final String WORKER_THREADS_PROPERTY =
+	PACKAGE + ".server.worker.threads";
+
+    /** The default number of worker threads. */
+    private static final int DEFAULT_WORKER_THREADS = 32;
+
     /** The number of transactions to allocate at a time. */
     private static final int TXN_ALLOCATION_BLOCK_SIZE = 100;
 
     /**
-     * Whether to replace Java(TM) RMI with an experimental, socket-based
-     * facility.
+     * The property that specifies whether to replace Java(TM) RMI with an
+     * experimental, socket-based facility.  The system property of the same
+     * name supplies the default.
      */
-    private static final boolean noRmi = Boolean.getBoolean(
-	PACKAGE + ".no.rmi");
+    private static final String NO_RMI_PROPERTY = PACKAGE + ".no.rmi";
 
     /** The underlying data store. */
     private final CustomDataStoreImpl store;
@@ -341,6 +361,10 @@ public class DataStoreServerImpl implements DataStoreServer {
 	    }
 	}
 
+	public boolean isReadOnly() {
+	    return false;
+	}
+
 	public void join(TransactionParticipant participant) {
 	    this.participant = participant;
 	}
@@ -769,14 +793,16 @@ public class DataStoreServerImpl implements DataStoreServer {
      * instead of Java RMI.
      */
     private static class SocketExporter extends Exporter<DataStoreServer> {
+	private final int workerThreads;
 	private DataStoreServerRemote remote;
-	SocketExporter(Class<DataStoreServer> type) {
+	SocketExporter(Class<DataStoreServer> type, int workerThreads) {
 	    super(type);
+	    this.workerThreads = workerThreads;
 	}
 	public int export(DataStoreServer server, String name, int port)
 	    throws IOException
 	{
-	    remote = new DataStoreServerRemote(server, port);
+	    remote = new DataStoreServerRemote(server, port, workerThreads);
 	    return remote.getLocalPort();
 	}
 	public void unexport() {
@@ -823,8 +849,13 @@ public class DataStoreServerImpl implements DataStoreServer {
 	    1, Long.MAX_VALUE);
 	int requestedPort = wrappedProps.getIntProperty(
 	    PORT_PROPERTY, DEFAULT_PORT, 0, 65535);
+	int workerThreads = wrappedProps.getIntProperty(
+	    WORKER_THREADS_PROPERTY, DEFAULT_WORKER_THREADS,
+	    1, Integer.MAX_VALUE);
+	boolean noRmi = wrappedProps.getBooleanProperty(
+	    NO_RMI_PROPERTY, Boolean.getBoolean(NO_RMI_PROPERTY));
 	exporter = noRmi ?
-	    new SocketExporter(DataStoreServer.class) :
+	    new SocketExporter(DataStoreServer.class, workerThreads) :
 	    new Exporter<DataStoreServer>(DataStoreServer.class);
 	port = exporter.export(this, "DataStoreServer", requestedPort);
 	if (requestedPort == 0) {
@@ -853,7 +884,8 @@ public class DataStoreServerImpl implements DataStoreServer {
                    "\n  " + MAX_TXN_TIMEOUT_PROPERTY + "=" +
                    maxTxnTimeout +
                    "\n  " + PORT_PROPERTY + "=" + requestedPort +
-                   "\n  " + REAP_DELAY_PROPERTY + "=" + reapDelay);
+                   "\n  " + REAP_DELAY_PROPERTY + "=" + reapDelay +
+                   "\n  " + WORKER_THREADS_PROPERTY + "=" + workerThreads);
         
     }
 
@@ -894,6 +926,16 @@ public class DataStoreServerImpl implements DataStoreServer {
 	}
     }
 
+    /** {@inheritDoc} */
+    public byte[][] getObjects(long tid, long[] oids) {
+	Txn txn = getTxn(tid);
+	try {
+	    return store.getObjects(txn, oids);
+	} finally {
+	    txnTable.notInUse(txn);
+	}
+    }
+
     /** {@inheritDoc} */
     public void setObject(long tid, long oid, byte[] data) {
 	Txn txn = getTxn(tid);
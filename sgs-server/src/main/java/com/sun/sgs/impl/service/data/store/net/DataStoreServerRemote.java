@@ -20,119 +20,392 @@
  */
 
 package com.sun.sgs.impl.service.data.store.net;
-
+import com.sun.sgs.impl.util.NamedThreadFactory;
+import com.sun.sgs.nio.channels.AsynchronousChannelGroup;
+import com.sun.sgs.nio.channels.AsynchronousServerSocketChannel;
+import com.sun.sgs.nio.channels.AsynchronousSocketChannel;
+import com.sun.sgs.nio.channels.CompletionHandler;
+import com.sun.sgs.nio.channels.IoFuture;
+import com.sun.sgs.nio.channels.StandardSocketOption;
+import com.sun.sgs.nio.channels.spi.AsynchronousChannelProvider;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 
 /**
  * The server side of an experimental network protocol, not currently used, for
- * implementing DataStoreServer using sockets instead of RMI.
- */
-/*
- * XXX: Use thread pools?
- * XXX: Reap idle connections?
+ * implementing DataStoreServer using sockets instead of RMI. <p>
+ *
+ * Connections are accepted and read using asynchronous channels, and each
+ * request is handed to a fixed size pool of worker threads, so that idle
+ * connections do not use any threads.  Each request is sent by the client as
+ * a single frame, consisting of the length of the request as an {@code int},
+ * followed by the request itself, as written by {@link DataStoreProtocol}.
+ * The reply is written unframed, since the client reads it synchronously.  A
+ * connection does not read its next request until the reply to the previous
+ * one has been written, so each connection has at most one request queued
+ * for the workers. <p>
+ *
+ * Workers can block waiting for locks, so requests that prepare, commit, or
+ * abort a transaction are run on a separate, unbounded pool of completer
+ * threads instead.  Otherwise, a lock holder's commit could wait behind
+ * requests that are blocked on its locks, with every worker taken.  The
+ * completer pool is bounded in practice by the number of connections.
  */
-class DataStoreServerRemote implements Runnable {
+class DataStoreServerRemote {
 
     /* XXX: 2 hours -- same as RMI default.  Make configurable? */
     /** The number of milliseconds before closing an idle connection. */
     private static final int connectionReadTimeout = 2 * 3600 * 1000;
 
-    /** The server socket, or null if closed. */
-    private ServerSocket serverSocket;
+    /** The maximum size of a request, in bytes. */
+    private static final int MAX_REQUEST_SIZE = 64 * 1024 * 1024;
 
     /** The data store server, for up calls. */
     private final DataStoreServer server;
 
-    /** Creates an instance for the specified server and port. */
-    DataStoreServerRemote(DataStoreServer server, int port)
+    /** The async channel group for accepting and reading connections. */
+    private final AsynchronousChannelGroup asyncChannelGroup;
+
+    /** The acceptor for new connections. */
+    private final AsynchronousServerSocketChannel acceptor;
+
+    /** The worker threads for running requests. */
+    private final ThreadPoolExecutor workers;
+
+    /** The threads for running requests that end transactions. */
+    private final ExecutorService completers;
+
+    /** Whether the server has been shut down. */
+    private boolean shutdown = false;
+
+    /** The number of requests that have been run. */
+    private final AtomicLong requestCount = new AtomicLong();
+
+    /** The total time, in nanoseconds, requests spent waiting for a worker. */
+    private final AtomicLong totalQueueTime = new AtomicLong();
+
+    /** The total time, in nanoseconds, spent running requests. */
+    private final AtomicLong totalServiceTime = new AtomicLong();
+
+    /** The largest number of requests seen waiting for a worker. */
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    /**
+     * Creates an instance for the specified server and port, using the
+     * specified number of worker threads.
+     */
+    DataStoreServerRemote(DataStoreServer server, int port, int workerThreads)
 	throws IOException
     {
-	serverSocket = new ServerSocket(port);
 	this.server = server;
-	new Thread(this, "DataStoreServerRemote").start();
+	workers = new ThreadPoolExecutor(
+	    workerThreads, workerThreads, 0L, TimeUnit.MILLISECONDS,
+	    new LinkedBlockingQueue<Runnable>(),
+	    new NamedThreadFactory("DataStoreServerRemote-Worker"));
+	completers = Executors.newCachedThreadPool(
+	    new NamedThreadFactory("DataStoreServerRemote-Completer"));
+	AsynchronousChannelProvider provider =
+	    AsynchronousChannelProvider.provider();
+	asyncChannelGroup = provider.openAsynchronousChannelGroup(
+	    Executors.newCachedThreadPool(
+		new NamedThreadFactory("DataStoreServerRemote-Io")));
+	try {
+	    acceptor =
+		provider.openAsynchronousServerSocketChannel(asyncChannelGroup);
+	    acceptor.bind(new InetSocketAddress(port), 0);
+	    acceptor.accept(new AcceptHandler());
+	} catch (IOException e) {
+	    shutdown();
+	    throw e;
+	}
     }
 
     /** Shuts down the server. */
     synchronized void shutdown() throws IOException {
-	if (serverSocket != null) {
-	    serverSocket.close();
-	    serverSocket = null;
+	if (shutdown) {
+	    return;
+	}
+	shutdown = true;
+	workers.shutdownNow();
+	completers.shutdownNow();
+	try {
+	    if (acceptor != null) {
+		acceptor.close();
+	    }
+	} finally {
+	    asyncChannelGroup.shutdownNow();
+	}
+	if (DataStoreServerImpl.logger.isLoggable(Level.FINE)) {
+	    long count = getRequestCount();
+	    DataStoreServerImpl.logger.log(
+		Level.FINE,
+		"Shut down socket server, requests:{0}, " +
+		"average queue time:{1} ms, average service time:{2} ms, " +
+		"max queue depth:{3}",
+		count,
+		(count == 0) ? 0 : getTotalQueueTime() / count / 1000000.0,
+		(count == 0) ? 0 : getTotalServiceTime() / count / 1000000.0,
+		getMaxQueueDepth());
 	}
     }
 
     /** Returns the local port. */
     synchronized int getLocalPort() throws IOException {
-	if (serverSocket == null) {
+	if (shutdown) {
 	    throw new IOException("Server is shut down");
 	}
-	return serverSocket.getLocalPort();
+	return ((InetSocketAddress) acceptor.getLocalAddress()).getPort();
     }
 
-    /** Accepts and hands off new connections until shut down. */
-    public void run() {
-	while (true) {
-	    ServerSocket ss;
-	    synchronized (this) {
-		ss = serverSocket;
-	    }
-	    if (ss == null) {
-		break;
-	    }
+    /** Returns the number of requests waiting for a worker thread. */
+    int getQueueDepth() {
+	return workers.getQueue().size();
+    }
+
+    /** Returns the largest number of requests seen waiting for a worker. */
+    int getMaxQueueDepth() {
+	return maxQueueDepth.get();
+    }
+
+    /** Returns the number of requests that have been run. */
+    long getRequestCount() {
+	return requestCount.get();
+    }
+
+    /**
+     * Returns the total time, in nanoseconds, that requests have spent
+     * waiting for a worker thread.
+     */
+    long getTotalQueueTime() {
+	return totalQueueTime.get();
+    }
+
+    /**
+     * Returns the total time, in nanoseconds, that worker threads have spent
+     * running requests.
+     */
+    long getTotalServiceTime() {
+	return totalServiceTime.get();
+    }
+
+    /** Accepts new connections until shut down. */
+    private class AcceptHandler
+	implements CompletionHandler<AsynchronousSocketChannel, Void>
+    {
+	/** Starts reading from the new connection and accepts the next one. */
+	public void completed(
+	    IoFuture<AsynchronousSocketChannel, Void> result)
+	{
 	    try {
-		new Thread(
-		    new Handler(ss.accept()), "Handler").start();
+		new Connection(result.getNow()).readRequest();
+	    } catch (CancellationException e) {
+		return;
 	    } catch (Throwable t) {
+		DataStoreServerImpl.logger.logThrow(
+		    Level.FINE, t, "Problem accepting connection");
+	    }
+	    if (acceptor.isOpen()) {
+		try {
+		    acceptor.accept(this);
+		} catch (Throwable t) {
+		    DataStoreServerImpl.logger.logThrow(
+			Level.WARNING, t, "Problem accepting connections");
+		}
 	    }
 	}
     }
 
-    /** Handles connections. */
-    private class Handler implements Runnable {
+    /**
+     * Handles a connection, reading requests, running them on the worker
+     * threads, and writing the replies.
+     */
+    private class Connection implements Runnable {
+
+	/** The channel for the connection. */
+	private final AsynchronousSocketChannel channel;
+
+	/** The buffer for the length of the current request. */
+	private final ByteBuffer header = ByteBuffer.allocate(4);
+
+	/** The buffer for the current request, or null if not yet known. */
+	private ByteBuffer request;
+
+	/** The buffer for the reply to the current request. */
+	private ByteBuffer reply;
+
+	/** The stream for collecting replies. */
+	private final ByteArrayOutputStream replyBytes =
+	    new ByteArrayOutputStream();
 
-	/** The accepted socket. */
-	private final Socket socket;
+	/** The time the current request was queued for a worker. */
+	private long queuedTime;
 
-	/** Creates an instance for an accepted socket. */
-	Handler(Socket socket) {
-	    this.socket = socket;
+	/** The handler for completed reads. */
+	private final CompletionHandler<Integer, Void> readHandler =
+	    new CompletionHandler<Integer, Void>() {
+		public void completed(IoFuture<Integer, Void> result) {
+		    readCompleted(result);
+		}
+	    };
+
+	/** The handler for completed writes. */
+	private final CompletionHandler<Integer, Void> writeHandler =
+	    new CompletionHandler<Integer, Void>() {
+		public void completed(IoFuture<Integer, Void> result) {
+		    writeCompleted(result);
+		}
+	    };
+
+	/** Creates an instance for an accepted channel. */
+	Connection(AsynchronousSocketChannel channel) {
+	    this.channel = channel;
+	    setSocketOptions();
+	}
+
+	/** Starts reading the next request. */
+	void readRequest() {
+	    header.clear();
+	    request = null;
+	    read(header);
 	}
 
-	/** Handles requests until an exception occurs. */
+	/** Runs the current request, and starts writing the reply. */
 	public void run() {
+	    long start = System.nanoTime();
+	    totalQueueTime.addAndGet(start - queuedTime);
+	    replyBytes.reset();
+	    try {
+		new DataStoreProtocol(
+		    new ByteArrayInputStream(request.array()), replyBytes).
+		    dispatch(server);
+	    } catch (Throwable t) {
+		DataStoreServerImpl.logger.logThrow(
+		    Level.FINE, t, "Problem handling request");
+		close();
+		return;
+	    } finally {
+		totalServiceTime.addAndGet(System.nanoTime() - start);
+		requestCount.incrementAndGet();
+	    }
+	    reply = ByteBuffer.wrap(replyBytes.toByteArray());
+	    write();
+	}
+
+	/** Reads into the specified buffer. */
+	private void read(ByteBuffer buffer) {
+	    channel.read(buffer, connectionReadTimeout, TimeUnit.MILLISECONDS,
+			 null, readHandler);
+	}
+
+	/** Writes the remainder of the current reply. */
+	private void write() {
+	    try {
+		channel.write(reply, null, writeHandler);
+	    } catch (Throwable t) {
+		DataStoreServerImpl.logger.logThrow(
+		    Level.FINE, t, "Problem writing reply");
+		close();
+	    }
+	}
+
+	/**
+	 * Continues reading the current request, or hands a complete request
+	 * to the completers, if it ends a transaction, or else to the workers.
+	 */
+	private void readCompleted(IoFuture<Integer, Void> result) {
 	    try {
-		setSocketOptions(socket);
-		DataStoreProtocol protocol =
-		    new DataStoreProtocol(
-			socket.getInputStream(), socket.getOutputStream());
+		if (result.getNow() < 0) {
+		    close();
+		    return;
+		}
+		if (request == null) {
+		    if (header.hasRemaining()) {
+			read(header);
+			return;
+		    }
+		    header.flip();
+		    int length = header.getInt();
+		    if (length < 0 || length > MAX_REQUEST_SIZE) {
+			throw new IOException(
+			    "Illegal request length: " + length);
+		    }
+		    request = ByteBuffer.allocate(length);
+		}
+		if (request.hasRemaining()) {
+		    read(request);
+		    return;
+		}
+		queuedTime = System.nanoTime();
+		if (DataStoreProtocol.endsTransaction(request.array())) {
+		    completers.execute(this);
+		    return;
+		}
+		workers.execute(this);
+		int depth = getQueueDepth();
 		while (true) {
-		    protocol.dispatch(server);
+		    int max = maxQueueDepth.get();
+		    if (depth <= max ||
+			maxQueueDepth.compareAndSet(max, depth))
+		    {
+			break;
+		    }
 		}
-	    } catch (Throwable e) {
-	    } finally {
-		try {
-		    socket.close();
-		} catch (IOException e) {
+	    } catch (RejectedExecutionException e) {
+		close();
+	    } catch (Throwable t) {
+		DataStoreServerImpl.logger.logThrow(
+		    Level.FINE, t, "Problem reading request");
+		close();
+	    }
+	}
+
+	/** Continues writing the reply, or starts reading the next request. */
+	private void writeCompleted(IoFuture<Integer, Void> result) {
+	    try {
+		result.getNow();
+		if (reply.hasRemaining()) {
+		    write();
+		} else {
+		    readRequest();
 		}
+	    } catch (Throwable t) {
+		DataStoreServerImpl.logger.logThrow(
+		    Level.FINE, t, "Problem writing reply");
+		close();
 	    }
 	}
 
-	/** Sets TcpNoDelay, KeepAlive, and SoTimeout options, if possible. */
-	private void setSocketOptions(Socket socket) {
+	/** Closes the connection. */
+	private void close() {
 	    try {
-		socket.setTcpNoDelay(true);
-	    } catch (Exception e) {
+		channel.close();
+	    } catch (IOException e) {
 	    }
+	}
+
+	/** Sets TcpNoDelay and KeepAlive options, if possible. */
+	private void setSocketOptions() {
 	    try {
-		socket.setKeepAlive(true);
+		channel.setOption(StandardSocketOption.TCP_NODELAY, true);
 	    } catch (Exception e) {
 	    }
-	    if (connectionReadTimeout > 0) {
-		try {
-		    socket.setSoTimeout(connectionReadTimeout);
-		} catch (Exception e) {
-		}
+	    try {
+		channel.setOption(StandardSocketOption.SO_KEEPALIVE, true);
+	    } catch (Exception e) {
 	    }
 	}
     }
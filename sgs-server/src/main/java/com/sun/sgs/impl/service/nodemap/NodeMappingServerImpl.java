@@ -25,6 +25,8 @@ import com.sun.sgs.app.ExceptionRetryStatus;
 import com.sun.sgs.app.NameNotBoundException;
 import com.sun.sgs.app.ObjectNotFoundException;
 import com.sun.sgs.auth.Identity;
+import com.sun.sgs.impl.service.watchdog.NodeLoadListener;
+import com.sun.sgs.impl.service.watchdog.WatchdogServiceImpl;
 import com.sun.sgs.impl.sharedutil.LoggerWrapper;
 import com.sun.sgs.impl.sharedutil.PropertiesWrapper;
 import com.sun.sgs.impl.util.AbstractKernelRunnable;
@@ -89,6 +91,8 @@ import java.util.logging.Logger;
  *	NodeAssignPolicy}, used for the node assignment policy. The class 
  *      should be public, not abstract, and should provide a public constructor
  *      with {@link Properties} and {@link NodeMappingServerImpl} parameters. 
+ *      If the class also implements {@link NodeLoadListener}, it will be
+ *      notified of the load reported by each node to the watchdog server.
  *      <p>
  *
  * <dt> <i>Property:</i> <code><b>
@@ -308,6 +312,19 @@ public final class NodeMappingServerImpl
         // Register our node listener with the watchdog service.
         watchdogNodeListener = new Listener();
         watchdogService.addNodeListener(watchdogNodeListener);   
+
+        // If the policy balances by load, have the watchdog server
+        // deliver the load reports it receives from each node.
+        if (assignPolicy instanceof NodeLoadListener) {
+            if (watchdogService instanceof WatchdogServiceImpl) {
+                ((WatchdogServiceImpl) watchdogService).addNodeLoadListener(
+                    (NodeLoadListener) assignPolicy);
+            } else {
+                logger.log(Level.CONFIG,
+                           "Node load reports are not available to {0}",
+                           assignPolicy.getClass().getName());
+            }
+        }
         
         // Export ourselves.  At this point, this object is public.
         exporter = new Exporter<NodeMappingServer>(NodeMappingServer.class);
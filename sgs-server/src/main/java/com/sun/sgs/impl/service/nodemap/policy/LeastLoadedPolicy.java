@@ -0,0 +1,257 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.impl.service.nodemap.policy;
+
+import com.sun.sgs.impl.service.nodemap.NoNodesAvailableException;
+import com.sun.sgs.impl.service.watchdog.NodeLoad;
+import com.sun.sgs.impl.service.watchdog.NodeLoadListener;
+import com.sun.sgs.impl.sharedutil.PropertiesWrapper;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A node assignment policy that uses the load reported by each node to
+ * spread assignments across the available nodes.  Each node reports its
+ * load to the watchdog server when it renews, and this policy is notified
+ * of those reports as a {@link NodeLoadListener}. <p>
+ *
+ * To choose a node, this policy picks two available nodes at random and
+ * assigns to the one with the lower weighted load (the "power of two
+ * choices").  This spreads assignments nearly as well as always choosing
+ * the least loaded node, but avoids sending every assignment made between
+ * two load reports to the same node.  Assignments made since a node's most
+ * recent load report are counted as additional sessions on that node. <p>
+ *
+ * The weighted load of a node is computed as: <p>
+ *
+ * <code>readyWeight * readyCount + sessionWeight * (sessionCount +
+ * assignedSinceReport) + latencyWeight * commitLatency</code> <p>
+ *
+ * Nodes that have not reported their load are treated as having no load.
+ * <p>
+ *
+ * The {@link #LeastLoadedPolicy constructor} supports the following
+ * properties: <p>
+ *
+ * <dl style="margin-left: 1em">
+ *
+ * <dt> <i>Property:</i> <code><b>
+ *	com.sun.sgs.impl.service.nodemap.policy.load.ready.weight
+ *	</b></code><br>
+ *	<i>Default:</i> {@code 10} <br>
+ *
+ * <dd style="padding-top: .5em">
+ *	The weight given to the number of tasks waiting to be run on a node.
+ *	The value must be greater than or equal to {@code 0}. <p>
+ *
+ * <dt> <i>Property:</i> <code><b>
+ *	com.sun.sgs.impl.service.nodemap.policy.load.session.weight
+ *	</b></code><br>
+ *	<i>Default:</i> {@code 1} <br>
+ *
+ * <dd style="padding-top: .5em">
+ *	The weight given to the number of client sessions connected to a
+ *	node.  The value must be greater than or equal to {@code 0}. <p>
+ *
+ * <dt> <i>Property:</i> <code><b>
+ *	com.sun.sgs.impl.service.nodemap.policy.load.latency.weight
+ *	</b></code><br>
+ *	<i>Default:</i> {@code 1} <br>
+ *
+ * <dd style="padding-top: .5em">
+ *	The weight given to the average latency, in milliseconds, of
+ *	successful transactions on a node.  The value must be greater than
+ *	or equal to {@code 0}. <p>
+ *
+ * </dl> <p>
+ */
+public class LeastLoadedPolicy extends AbstractNodePolicy
+    implements NodeLoadListener
+{
+    /** The package name. */
+    private static final String PKG_NAME =
+	"com.sun.sgs.impl.service.nodemap.policy";
+
+    /** The property for the weight given to the ready count. */
+    public static final String READY_WEIGHT_PROPERTY =
+	PKG_NAME + ".load.ready.weight";
+
+    /** The default weight given to the ready count. */
+    public static final int DEFAULT_READY_WEIGHT = 10;
+
+    /** The property for the weight given to the session count. */
+    public static final String SESSION_WEIGHT_PROPERTY =
+	PKG_NAME + ".load.session.weight";
+
+    /** The default weight given to the session count. */
+    public static final int DEFAULT_SESSION_WEIGHT = 1;
+
+    /** The property for the weight given to the commit latency. */
+    public static final String LATENCY_WEIGHT_PROPERTY =
+	PKG_NAME + ".load.latency.weight";
+
+    /** The default weight given to the commit latency. */
+    public static final int DEFAULT_LATENCY_WEIGHT = 1;
+
+    /** The weight given to the ready count. */
+    private final int readyWeight;
+
+    /** The weight given to the session count. */
+    private final int sessionWeight;
+
+    /** The weight given to the commit latency. */
+    private final int latencyWeight;
+
+    /** The most recent load information, keyed by node ID. */
+    private final ConcurrentMap<Long, LoadInfo> loads =
+	new ConcurrentHashMap<Long, LoadInfo>();
+
+    /** The random number generator for choosing candidate nodes. */
+    private final Random random = new Random();
+
+    /**
+     * Creates a new instance of LeastLoadedPolicy.
+     *
+     * @param props service properties
+     */
+    public LeastLoadedPolicy(Properties props) {
+        super();
+	PropertiesWrapper wrappedProps = new PropertiesWrapper(props);
+	readyWeight = wrappedProps.getIntProperty(
+	    READY_WEIGHT_PROPERTY, DEFAULT_READY_WEIGHT, 0, Integer.MAX_VALUE);
+	sessionWeight = wrappedProps.getIntProperty(
+	    SESSION_WEIGHT_PROPERTY, DEFAULT_SESSION_WEIGHT,
+	    0, Integer.MAX_VALUE);
+	latencyWeight = wrappedProps.getIntProperty(
+	    LATENCY_WEIGHT_PROPERTY, DEFAULT_LATENCY_WEIGHT,
+	    0, Integer.MAX_VALUE);
+    }
+
+    /** {@inheritDoc} */
+    public long chooseNode(long requestingNode)
+        throws NoNodesAvailableException
+    {
+	long first;
+	long second;
+	synchronized (this) {
+	    int size = availableNodes.size();
+	    if (size < 1) {
+		// We don't have any live nodes to assign to.
+		// Let the caller figure it out.
+		throw new NoNodesAvailableException("no live nodes available");
+	    }
+	    int i = random.nextInt(size);
+	    first = availableNodes.get(i);
+	    if (size == 1) {
+		second = first;
+	    } else {
+		// Pick a second node that is different from the first
+		int j = random.nextInt(size - 1);
+		second = availableNodes.get(j < i ? j : j + 1);
+	    }
+	}
+	LoadInfo firstInfo = getLoadInfo(first);
+	LoadInfo secondInfo = getLoadInfo(second);
+	LoadInfo chosen =
+	    (secondInfo.getWeightedLoad() < firstInfo.getWeightedLoad()) ?
+	    secondInfo : firstInfo;
+	chosen.assigned.incrementAndGet();
+	return (chosen == firstInfo) ? first : second;
+    }
+
+    /** {@inheritDoc} */
+    public void nodeUnavailable(long nodeId) {
+	super.nodeUnavailable(nodeId);
+	loads.remove(nodeId);
+    }
+
+    /** {@inheritDoc} */
+    public void reset() {
+	super.reset();
+	loads.clear();
+    }
+
+    /* -- Implement NodeLoadListener -- */
+
+    /** {@inheritDoc} */
+    public void nodeLoadUpdate(long nodeId, NodeLoad load) {
+	getLoadInfo(nodeId).update(load);
+    }
+
+    /* -- Other methods -- */
+
+    /**
+     * Returns the load information for the specified node, creating it
+     * if needed.
+     */
+    private LoadInfo getLoadInfo(long nodeId) {
+	LoadInfo info = loads.get(nodeId);
+	if (info == null) {
+	    info = new LoadInfo();
+	    LoadInfo existing = loads.putIfAbsent(nodeId, info);
+	    if (existing != null) {
+		info = existing;
+	    }
+	}
+	return info;
+    }
+
+    /**
+     * The load information for a single node: the most recent load report,
+     * and the number of assignments made to the node since that report.
+     */
+    private final class LoadInfo {
+
+	/** The most recent load report, or {@code null}. */
+	private volatile NodeLoad load = null;
+
+	/** The number of assignments made since the most recent report. */
+	final AtomicInteger assigned = new AtomicInteger();
+
+	/** Records a new load report. */
+	void update(NodeLoad newLoad) {
+	    load = newLoad;
+	    assigned.set(0);
+	}
+
+	/** Returns the weighted load for the node. */
+	double getWeightedLoad() {
+	    NodeLoad current = load;
+	    double result = (double) sessionWeight * assigned.get();
+	    if (current != null) {
+		result += (double) readyWeight * current.getReadyCount() +
+		    (double) sessionWeight * current.getSessionCount() +
+		    latencyWeight * current.getCommitLatency();
+	    }
+	    return result;
+	}
+    }
+}
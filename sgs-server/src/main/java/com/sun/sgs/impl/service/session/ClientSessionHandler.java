@@ -82,7 +82,7 @@ class ClientSessionHandler implements SessionProtocolHandler {
 	    "com.sun.sgs.impl.service.session.handler"));
 
     /** Message indicating login was refused for a non-specific reason. */
-    private static final String LOGIN_REFUSED_REASON = "Login refused";
+    static final String LOGIN_REFUSED_REASON = "Login refused";
 
     /** Message indicating relocation was refused for a non-specific reason. */
     static final String RELOCATE_REFUSED_REASON = "Relocate refused";
@@ -1288,12 +1288,14 @@ class ClientSessionHandler implements SessionProtocolHandler {
 	    byte[] key;
 	    try {
 		/*
-		 * Notify new node that session is being relocated there and
-		 * obtain relocation key.
+		 * Notify new node that session is being relocated there,
+		 * supplying the objects the session recently accessed so
+		 * the new node can fetch them, and obtain relocation key.
 		 */
 		key = server.relocatingSession(
  			  identity, sessionRefId.toByteArray(),
-			  sessionService.getLocalNodeId());
+			  sessionService.getLocalNodeId(),
+			  sessionService.getRecentObjectIds(identity));
 		
 	    } catch (Exception e) {
 		// If there is a problem contacting the destination node or
@@ -70,14 +70,21 @@ public interface ClientSessionServer extends Remote {
      * relocatedSession} method of the appropriate {@link
      * ProtocolListener} to reestablish the client session.
      *
+     * <p>The specified {@code objectIds} are the IDs of objects recently
+     * accessed by the session on the old node.  This server may fetch
+     * those objects in the background, so that they are cached locally by
+     * the time the client reconnects.
+     *
      * @param	identity an identity
      * @param	sessionId a session ID
      * @param	oldNodeId the ID of the node the session is relocating from
+     * @param	objectIds the IDs of objects recently accessed by the
+     *		session, possibly empty
      * @return	a relocation key 
      * @throws	IOException if a communication problem occurs while
      * 		invoking this method
      */
     byte[] relocatingSession(
-	Identity identity, byte[] sessionId, long oldNodeId)
+	Identity identity, byte[] sessionId, long oldNodeId, long[] objectIds)
 	throws IOException;
 }
@@ -22,6 +22,7 @@
 package com.sun.sgs.impl.service.session;
 
 import com.sun.sgs.app.Delivery;
+import com.sun.sgs.app.ManagedReference;
 import com.sun.sgs.app.NameNotBoundException;
 import com.sun.sgs.app.ObjectNotFoundException;
 import com.sun.sgs.app.Task;
@@ -43,12 +44,15 @@ import com.sun.sgs.impl.sharedutil.PropertiesWrapper;
 import com.sun.sgs.impl.util.AbstractKernelRunnable;
 import com.sun.sgs.impl.util.AbstractService;
 import com.sun.sgs.impl.util.Exporter;
+import com.sun.sgs.impl.util.NamedThreadFactory;
 import com.sun.sgs.impl.util.TransactionContext;
 import com.sun.sgs.impl.util.TransactionContextFactory;
 import com.sun.sgs.kernel.ComponentRegistry;
 import com.sun.sgs.kernel.KernelRunnable;
+import com.sun.sgs.kernel.ReadOnlyKernelRunnable;
 import com.sun.sgs.kernel.TaskQueue;
 import com.sun.sgs.kernel.TaskScheduler;
+import com.sun.sgs.protocol.LoginFailureException;
 import com.sun.sgs.protocol.ProtocolAcceptor;
 import com.sun.sgs.protocol.ProtocolDescriptor;
 import com.sun.sgs.protocol.ProtocolListener;
@@ -77,17 +81,23 @@ import java.io.Serializable;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;   
 import java.util.Properties;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.management.JMException;
@@ -151,6 +161,17 @@ import javax.management.JMException;
  * {@code Integer.MAX_VALUE}.<p>
  *
  * <dt> <i>Property:</i> <code><b>
+ *	{@value #LOGIN_ADMISSION_CONTROL_PROPERTY}
+ *	</b></code><br>
+ *	<i>Default:</i> {@code false}
+ *
+ * <dd style="padding-top: .5em">If {@code true}, new logins are refused
+ * while the number of logged in sessions plus the number of logins in
+ * progress has reached the login high water, so that the high water is
+ * not exceeded.  If {@code false}, the login high water only affects the
+ * service's health.<p>
+ *
+ * <dt> <i>Property:</i> <code><b>
  *	{@value #PROTOCOL_ACCEPTOR_PROPERTY}
  *	</b></code><br>
  *	<i>Default:</i> {@value #DEFAULT_PROTOCOL_ACCEPTOR}
@@ -180,6 +201,31 @@ import javax.management.JMException;
  * <dd style="padding-top: .5em">Specifies the timeout, in milliseconds,
  *	for client session relocation.<p>
  * 
+ * <dt> <i>Property:</i> <code><b>
+ *	{@value #FLUSH_THREADS_PROPERTY}
+ *	</b></code><br>
+ *	<i>Default:</i> {@value #DEFAULT_FLUSH_THREADS}
+ *
+ * <dd style="padding-top: .5em">Specifies the number of threads used to
+ *	perform the actions, such as sending messages and disconnecting,
+ *	that committed transactions request for client sessions.  Actions
+ *	for a given session are performed in the order that their
+ *	transactions were prepared, while actions for different sessions
+ *	may be performed in parallel.<p>
+ * 
+ * <dt> <i>Property:</i> <code><b>
+ *	{@value #RELOCATION_PREFETCH_SIZE_PROPERTY}
+ *	</b></code><br>
+ *	<i>Default:</i> {@value #DEFAULT_RELOCATION_PREFETCH_SIZE}
+ *
+ * <dd style="padding-top: .5em">Specifies the maximum number of recently
+ *	accessed objects to record for each local session.  When a session
+ *	relocates to another node, the IDs of these objects are sent to the
+ *	new node, which fetches the objects before the client reconnects.
+ *	Object accesses are only recorded if the access coordinator reports
+ *	them to the profiling system.  A value of {@code 0} disables
+ *	recording and prefetching.<p>
+ * 
  * </dl> <p>
  */
 public final class ClientSessionServiceImpl
@@ -239,6 +285,10 @@ public final class ClientSessionServiceImpl
     static final String LOGIN_HIGH_WATER_PROPERTY =
         PKG_NAME + ".login.high.water";
 
+    /** The name of the login admission control property. */
+    static final String LOGIN_ADMISSION_CONTROL_PROPERTY =
+        PKG_NAME + ".login.admission.control";
+
     /** The protocol acceptor property name. */
     static final String PROTOCOL_ACCEPTOR_PROPERTY =
 	PKG_NAME + ".protocol.acceptor";
@@ -254,6 +304,22 @@ public final class ClientSessionServiceImpl
     /** The default length of a relocation key, in bytes. */
     static final int DEFAULT_RELOCATION_KEY_LENGTH = 16;
 
+    /** The name of the property for the number of flush threads. */
+    static final String FLUSH_THREADS_PROPERTY = PKG_NAME + ".flush.threads";
+
+    /** The default number of flush threads. */
+    static final int DEFAULT_FLUSH_THREADS = 4;
+
+    /**
+     * The name of the property for the number of recently accessed objects
+     * to prefetch when a session relocates.
+     */
+    static final String RELOCATION_PREFETCH_SIZE_PROPERTY =
+	PKG_NAME + ".relocation.prefetch.size";
+
+    /** The default number of objects to prefetch when a session relocates. */
+    static final int DEFAULT_RELOCATION_PREFETCH_SIZE = 256;
+
     /** A random number generator for relocation keys. */
     private static final SecureRandom random = new SecureRandom();
     
@@ -274,15 +340,27 @@ public final class ClientSessionServiceImpl
 	Collections.synchronizedMap(
 	    new HashMap<BigInteger, ClientSessionHandler>());
 
-    /** Queue of contexts that are prepared (non-readonly) or committed. */
-    private final Queue<Context> contextQueue =
-	new ConcurrentLinkedQueue<Context>();
+    /**
+     * Map of session IDs to the queue of contexts, prepared (non-readonly)
+     * or committed, with pending actions for that session.
+     */
+    private final ConcurrentHashMap<BigInteger, SessionFlushQueue>
+	flushQueues = new ConcurrentHashMap<BigInteger, SessionFlushQueue>();
+
+    /** The number of threads for flushing committed contexts. */
+    private final int flushThreads;
 
-    /** Thread for flushing committed contexts. */
-    private final Thread flushContextsThread = new FlushContextsThread();
-    
-    /** Lock for notifying the thread that flushes committed contexts. */
-    private final Object flushContextsLock = new Object();
+    /** The executor for flushing committed contexts. */
+    private final ExecutorService flushExecutor;
+
+    /** The number of recently accessed objects recorded per session. */
+    private final int relocationPrefetchSize;
+
+    /**
+     * The tracker for objects recently accessed by local sessions, or
+     * {@code null} if relocation prefetching is disabled.
+     */
+    private final SessionAccessTracker accessTracker;
 
     /** The transaction context factory. */
     private final TransactionContextFactory<Context> contextFactory;
@@ -364,6 +442,25 @@ public final class ClientSessionServiceImpl
     /** Login high water. */
     private int loginHighWater;
 
+    /** Whether to refuse logins that would exceed the login high water. */
+    private final boolean loginAdmissionControl;
+
+    /**
+     * The completion handlers for logins in progress, if login admission
+     * control is enabled.
+     */
+    private final Set<LoginCompletionHandler> pendingLogins =
+	Collections.newSetFromMap(
+	    new ConcurrentHashMap<LoginCompletionHandler, Boolean>());
+
+    /**
+     * The number of admitted logins that have not completed, if login
+     * admission control is enabled.  A login is counted when it is
+     * admitted, before it is added to {@code pendingLogins}, so that
+     * concurrent logins cannot all pass the login high water check.
+     */
+    private final AtomicInteger pendingLoginCount = new AtomicInteger();
+
     /** The session relocation key length. */
     final int relocationKeyLength;
 
@@ -405,6 +502,8 @@ public final class ClientSessionServiceImpl
             loginHighWater = wrappedProps.getIntProperty(
                 LOGIN_HIGH_WATER_PROPERTY,
                 Integer.MAX_VALUE / 2, 0, Integer.MAX_VALUE / 2);
+            loginAdmissionControl = wrappedProps.getBooleanProperty(
+                LOGIN_ADMISSION_CONTROL_PROPERTY, false);
 	    relocationKeyLength = wrappedProps.getIntProperty(
  		RELOCATION_KEY_LENGTH_PROPERTY, DEFAULT_RELOCATION_KEY_LENGTH,
 		16, Integer.MAX_VALUE);
@@ -412,6 +511,14 @@ public final class ClientSessionServiceImpl
 		StandardProperties.SESSION_RELOCATION_TIMEOUT_PROPERTY,
 		StandardProperties.DEFAULT_SESSION_RELOCATION_TIMEOUT,
 		1000L, Long.MAX_VALUE);
+	    flushThreads = wrappedProps.getIntProperty(
+		FLUSH_THREADS_PROPERTY, DEFAULT_FLUSH_THREADS,
+		1, Integer.MAX_VALUE);
+	    flushExecutor = Executors.newFixedThreadPool(
+		flushThreads, new NamedThreadFactory(CLASSNAME + "$Flush"));
+	    relocationPrefetchSize = wrappedProps.getIntProperty(
+		RELOCATION_PREFETCH_SIZE_PROPERTY,
+		DEFAULT_RELOCATION_PREFETCH_SIZE, 0, Integer.MAX_VALUE);
 
             /* Export the ClientSessionServer. */
 	    int serverPort = wrappedProps.getIntProperty(
@@ -435,7 +542,6 @@ public final class ClientSessionServiceImpl
 	    }
 
 	    /* Get services and check service version. */
-	    flushContextsThread.start();
 	    contextFactory = new ContextFactory(txnProxy);
 	    watchdogService = txnProxy.getService(WatchdogService.class);
 	    nodeMapService = txnProxy.getService(NodeMappingService.class);
@@ -496,6 +602,13 @@ public final class ClientSessionServiceImpl
             } catch (JMException e) {
                 logger.logThrow(Level.CONFIG, e, "Could not register MBean");
             }
+	    if (relocationPrefetchSize > 0) {
+		accessTracker =
+		    new SessionAccessTracker(relocationPrefetchSize);
+		collector.addListener(accessTracker, false);
+	    } else {
+		accessTracker = null;
+	    }
             
             /* Set the protocol descriptor in the ConfigMXBean. */
             ConfigManager config = (ConfigManager)
@@ -511,6 +624,8 @@ public final class ClientSessionServiceImpl
                        "Created ClientSessionServiceImpl with properties:" +
                        "\n  " + ALLOW_NEW_LOGIN_PROPERTY + "=" + allowNewLogin +
                        "\n  " + LOGIN_HIGH_WATER_PROPERTY + "=" + loginHighWater +
+                       "\n  " + LOGIN_ADMISSION_CONTROL_PROPERTY + "=" +
+                       loginAdmissionControl +
                        "\n  " + WRITE_BUFFER_SIZE_PROPERTY + "=" +
                        writeBufferSize +
                        "\n  " + EVENTS_PER_TXN_PROPERTY + "=" + eventsPerTxn +
@@ -519,6 +634,9 @@ public final class ClientSessionServiceImpl
 		       "\n  " +
 		       StandardProperties.SESSION_RELOCATION_TIMEOUT_PROPERTY +
 		       "=" + relocationTimeout +
+		       "\n  " + FLUSH_THREADS_PROPERTY + "=" + flushThreads +
+		       "\n  " + RELOCATION_PREFETCH_SIZE_PROPERTY + "=" +
+		       relocationPrefetchSize +
                        "\n  " + PROTOCOL_ACCEPTOR_PROPERTY + "=" +
                        protocolAcceptor.getClass().getName() +
                        "\n  " + SERVER_PORT_PROPERTY + "=" + serverPort);
@@ -593,8 +711,8 @@ public final class ClientSessionServiceImpl
 	    }
 	}
 	
-	synchronized (flushContextsLock) {
-	    flushContextsLock.notifyAll();
+	if (flushExecutor != null) {
+	    flushExecutor.shutdownNow();
 	}
     }
 
@@ -650,6 +768,14 @@ public final class ClientSessionServiceImpl
 	return handler != null ? handler.getSessionProtocol() : null;
     }
 
+    /** {@inheritDoc} */
+    public Identity getSessionIdentity(BigInteger sessionRefId) {
+	Objects.checkNull("sessionRefId", sessionRefId);
+	ClientSessionHandler handler = handlers.get(sessionRefId);
+
+	return handler != null ? handler.identity : null;
+    }
+
     /** {@inheritDoc} */
     public boolean isRelocatingToLocalNode(BigInteger sessionRefId) {
 	Objects.checkNull("sessionRefId", sessionRefId);
@@ -826,9 +952,29 @@ public final class ClientSessionServiceImpl
 	    Identity identity, SessionProtocol protocol,
 	    RequestCompletionHandler<SessionProtocolHandler> completionHandler)
 	{
+	    if (loginAdmissionControl && !admitLogin()) {
+		if (logger.isLoggable(Level.FINE)) {
+		    logger.log(
+			Level.FINE,
+			"Refusing login for identity:{0}, login high water:{1} " +
+			"reached", identity, loginHighWater);
+		}
+		(new SetupCompletionFuture(null, completionHandler)).
+		    setException(
+			new LoginFailureException(
+			    ClientSessionHandler.LOGIN_REFUSED_REASON,
+			    LoginFailureException.FailureReason.
+				SERVER_UNAVAILABLE));
+		return;
+	    }
+	    LoginCompletionHandler loginHandler =
+		new LoginCompletionHandler(protocol, completionHandler);
+	    if (loginAdmissionControl) {
+		pendingLogins.add(loginHandler);
+	    }
 	    new ClientSessionHandler(
 		ClientSessionServiceImpl.this, dataService, protocol,
-		identity, completionHandler);
+		identity, loginHandler);
 	}
 
 	/** {@inheritDoc} */
@@ -861,6 +1007,94 @@ public final class ClientSessionServiceImpl
 		info.identity, completionHandler, info.sessionRefId);
 	}
     }
+
+    /**
+     * Returns {@code true} and counts a new login as pending if it can be
+     * admitted without the number of sessions, including logins in
+     * progress, exceeding the login high water.  Logins in progress whose
+     * connections have since closed are discarded before refusing a
+     * login.
+     */
+    private boolean admitLogin() {
+	boolean discarded = false;
+	while (true) {
+	    int pending = pendingLoginCount.get();
+	    if (handlers.size() + pending >= loginHighWater) {
+		if (discarded) {
+		    return false;
+		}
+		for (Iterator<LoginCompletionHandler> iter =
+			 pendingLogins.iterator();
+		     iter.hasNext(); )
+		{
+		    LoginCompletionHandler loginHandler = iter.next();
+		    if (!loginHandler.protocol.isOpen()) {
+			removePendingLogin(loginHandler);
+		    }
+		}
+		discarded = true;
+	    } else if (pendingLoginCount.compareAndSet(pending, pending + 1)) {
+		return true;
+	    }
+	}
+    }
+
+    /**
+     * Removes the specified login from the logins in progress, if it is
+     * present, and no longer counts it as pending.
+     */
+    private void removePendingLogin(LoginCompletionHandler loginHandler) {
+	if (pendingLogins.remove(loginHandler)) {
+	    pendingLoginCount.decrementAndGet();
+	}
+    }
+
+    /**
+     * A completion handler for a new login that records the login's latency
+     * and that the login is no longer in progress before notifying the
+     * protocol's completion handler.
+     */
+    private class LoginCompletionHandler
+	implements RequestCompletionHandler<SessionProtocolHandler>
+    {
+	/** The session protocol for the login. */
+	final SessionProtocol protocol;
+
+	/** The protocol's completion handler. */
+	private final RequestCompletionHandler<SessionProtocolHandler>
+	    completionHandler;
+
+	/** The time the login was started. */
+	private final long startTime = System.currentTimeMillis();
+
+	/** Whether the login has completed. */
+	private boolean done = false;
+
+	/**
+	 * Constructs an instance with the specified {@code protocol} and
+	 * protocol {@code completionHandler}.
+	 */
+	LoginCompletionHandler(
+	    SessionProtocol protocol,
+	    RequestCompletionHandler<SessionProtocolHandler> completionHandler)
+	{
+	    this.protocol = protocol;
+	    this.completionHandler = completionHandler;
+	}
+
+	/** {@inheritDoc} */
+	public void completed(Future<SessionProtocolHandler> result) {
+	    synchronized (this) {
+		if (!done) {
+		    done = true;
+		    removePendingLogin(this);
+		    serviceStats.loginLatencySample.addSample(
+			System.currentTimeMillis() - startTime);
+		}
+	    }
+	    completionHandler.completed(result);
+	}
+    }
     
     /* -- Implement TransactionContextFactory -- */
 
@@ -884,6 +1118,13 @@ public final class ClientSessionServiceImpl
         private final Map<BigInteger, CommitActions> commitActions =
 	    new HashMap<BigInteger, CommitActions>();
 
+	/** The flush queues this context was added to when prepared. */
+	private final List<SessionFlushQueue> sessionQueues =
+	    new ArrayList<SessionFlushQueue>();
+
+	/** The time this context committed. */
+	private volatile long commitTime;
+
 	/**
 	 * Constructs a context with the specified transaction.
 	 */
@@ -942,15 +1183,18 @@ public final class ClientSessionServiceImpl
 	
 	/**
 	 * Marks this transaction as prepared, and if there are
-	 * pending changes, adds this context to the context queue and
-	 * returns {@code false}.  Otherwise, if there are no pending
-	 * changes returns {@code true} indicating readonly status.
+	 * pending changes, adds this context to the flush queue of each
+	 * session with pending changes and returns {@code false}.
+	 * Otherwise, if there are no pending changes returns {@code
+	 * true} indicating readonly status.
 	 */
         public boolean prepare() {
 	    isPrepared = true;
 	    boolean readOnly = commitActions.isEmpty();
 	    if (!readOnly) {
-		contextQueue.add(this);
+		for (BigInteger sessionRefId : commitActions.keySet()) {
+		    sessionQueues.add(addToFlushQueue(sessionRefId, this));
+		}
 	    } else {
 		isCommitted = true;
 	    }
@@ -958,12 +1202,13 @@ public final class ClientSessionServiceImpl
         }
 
 	/**
-	 * Removes the context from the context queue containing
+	 * Removes the context from the flush queues containing
 	 * pending actions, and checks for flushing committed contexts.
 	 */
 	public void abort(boolean retryable) {
-	    contextQueue.remove(this);
-	    checkFlush();
+	    for (SessionFlushQueue queue : sessionQueues) {
+		queue.remove(this);
+	    }
 	}
 
 	/**
@@ -971,42 +1216,33 @@ public final class ClientSessionServiceImpl
 	 * flushing committed contexts.
 	 */
 	public void commit() {
+	    commitTime = System.currentTimeMillis();
 	    isCommitted = true;
-	    checkFlush();
+	    for (SessionFlushQueue queue : sessionQueues) {
+		queue.checkFlush();
+	    }
         }
 
 	/**
-	 * Wakes up the thread to process committed contexts in the
-	 * context queue if the queue is non-empty and the first
-	 * context in the queue is committed.
+	 * Returns {@code true} if this context's transaction has
+	 * committed.  Callers should synchronize on a flush queue
+	 * containing this context, to make sure they see the current
+	 * value.
 	 */
-	private void checkFlush() {
-	    Context context = contextQueue.peek();
-	    if ((context != null) && (context.isCommitted)) {
-		synchronized (flushContextsLock) {
-		    flushContextsLock.notifyAll();
-		}
-	    }
+	boolean isCommitted() {
+	    return isCommitted;
 	}
 	
 	/**
-	 * Sends all message enqueued during this context's
-	 * transaction (via the {@code addMessage} and {@code
-	 * addMessageFirst} methods), and disconnects any session
-	 * whose disconnection was requested via the {@code
-	 * requestDisconnect} method.
+	 * Performs the actions enqueued during this context's
+	 * transaction for the specified session, such as sending
+	 * messages and disconnecting the session.  This method should
+	 * only be called once the transaction has committed.
 	 */
-	private boolean flush() {
-	    if (shuttingDown()) {
-		return false;
-	    } else if (isCommitted) {
-		for (CommitActions actions : commitActions.values()) {
-		    actions.flush();
-		}
-		return true;
-	    } else {
-		return false;
-	    }
+	void flush(BigInteger sessionRefId) {
+	    commitActions.get(sessionRefId).flush();
+	    serviceStats.flushLagSample.addSample(
+		System.currentTimeMillis() - commitTime);
 	}
     }
 
@@ -1043,77 +1279,152 @@ public final class ClientSessionServiceImpl
     }
 
     /**
-     * Thread to process the context queue, in order, to flush any
-     * committed changes.
+     * Adds the context to the flush queue for the specified session,
+     * creating the queue if needed, and returns the queue.
+     */
+    private SessionFlushQueue addToFlushQueue(
+	BigInteger sessionRefId, Context context)
+    {
+	while (true) {
+	    SessionFlushQueue queue = flushQueues.get(sessionRefId);
+	    if (queue == null) {
+		queue = new SessionFlushQueue(sessionRefId);
+		SessionFlushQueue existing =
+		    flushQueues.putIfAbsent(sessionRefId, queue);
+		if (existing != null) {
+		    queue = existing;
+		}
+	    }
+	    if (queue.add(context)) {
+		return queue;
+	    }
+	    /* The queue was removed because it was empty, so try again. */
+	}
+    }
+
+    /**
+     * The contexts with pending actions for a single session, in the
+     * order they were prepared.  When the context at the head of the
+     * queue has committed, the queue is submitted to the flush
+     * executor, which flushes contexts, in order, until it reaches one
+     * that has not committed.  At most one thread flushes a given
+     * queue at a time, so the actions for a session are performed in
+     * order, while the queues for different sessions may be flushed in
+     * parallel.  A slow transaction only delays the actions of the
+     * sessions it has actions for.
      */
-    private class FlushContextsThread extends Thread {
+    private final class SessionFlushQueue implements Runnable {
+
+	/** The session ID. */
+	private final BigInteger sessionRefId;
+
+	/** The contexts, in prepare order. */
+	private final Queue<Context> contexts = new LinkedList<Context>();
+
+	/** Whether this queue has been submitted to the executor. */
+	private boolean scheduled = false;
+
+	/** Whether this queue has been removed from the map of queues. */
+	private boolean removed = false;
+
+	/** Constructs an instance for the specified session. */
+	SessionFlushQueue(BigInteger sessionRefId) {
+	    this.sessionRefId = sessionRefId;
+	}
 
 	/**
-	 * Constructs an instance of this class as a daemon thread.
+	 * Adds the context to the end of this queue, returning {@code
+	 * false} if this queue has been removed and can no longer be
+	 * used.
 	 */
-	public FlushContextsThread() {
-	    super(CLASSNAME + "$FlushContextsThread");
-	    setDaemon(true);
+	synchronized boolean add(Context context) {
+	    if (removed) {
+		return false;
+	    }
+	    contexts.add(context);
+	    return true;
 	}
-	
+
 	/**
-	 * Processes the context queue, in order, to flush any
-	 * committed changes.  This thread waits to be notified that a
-	 * committed context is at the head of the queue, then
-	 * iterates through the context queue invoking {@code flush}
-	 * on the {@code Context} returned by {@code next}.  Iteration
-	 * ceases when either a context's {@code flush} method returns
-	 * {@code false} (indicating that the transaction associated
-	 * with the context has not yet committed) or when there are
-	 * no more contexts in the context queue.
+	 * Removes the context, which has aborted, from this queue, and
+	 * checks for flushing committed contexts.
 	 */
-	public void run() {
-	    
-	    while (true) {
-		
-		/*
-		 * Wait for a non-empty context queue, returning if
-		 * the service is shutting down.
-		 */
-		synchronized (flushContextsLock) {
-		    if (contextQueue.isEmpty()) {
-			if (shuttingDown()) {
-			    return;
-			}
-			try {
-			    flushContextsLock.wait();
-			} catch (InterruptedException e) {
-			    logger.log(Level.SEVERE,
-				       "FlushContextsThread interrupted, " +
-				       "node:{0}", localNodeId);
-			    return;
-			}
-		    }
+	void remove(Context context) {
+	    synchronized (this) {
+		contexts.remove(context);
+	    }
+	    checkFlush();
+	}
+
+	/**
+	 * Submits this queue to the flush executor if the context at
+	 * the head of the queue has committed, and removes this queue
+	 * from the map of queues if it is empty.
+	 */
+	void checkFlush() {
+	    synchronized (this) {
+		if (scheduled) {
+		    return;
 		}
-		if (shuttingDown()) {
+		Context context = contexts.peek();
+		if (context == null) {
+		    removeIfEmpty();
+		    return;
+		} else if (!context.isCommitted()) {
 		    return;
 		}
+		scheduled = true;
+	    }
+	    try {
+		flushExecutor.execute(this);
+	    } catch (RejectedExecutionException e) {
+		/* The service is shutting down. */
+		logger.log(Level.FINEST,
+			   "Flush rejected for session:{0}", sessionRefId);
+	    }
+	}
 
-		/*
-		 * Remove committed contexts from head of context
-		 * queue, and enqueue them to be flushed.
-		 */
-		if (!contextQueue.isEmpty()) {
-		    Iterator<Context> iter = contextQueue.iterator();
-		    while (iter.hasNext()) {
-			if (shuttingDown()) {
-			    return;
-			}
-			Context context = iter.next();
-			if (context.flush()) {
-			    iter.remove();
-			} else {
-			    break;
-			}
+	/**
+	 * Flushes committed contexts, in order, stopping when the queue
+	 * is empty, when the context at the head of the queue has not
+	 * committed, or when the service is shutting down.
+	 */
+	public void run() {
+	    while (true) {
+		Context context;
+		synchronized (this) {
+		    context = contexts.peek();
+		    if (context == null || !context.isCommitted() ||
+			shuttingDown())
+		    {
+			scheduled = false;
+			removeIfEmpty();
+			return;
 		    }
+		    contexts.remove();
+		}
+		try {
+		    context.flush(sessionRefId);
+		} catch (RuntimeException e) {
+		    logger.logThrow(
+			Level.WARNING, e,
+			"Flushing actions for session:{0} throws",
+			sessionRefId);
 		}
 	    }
 	}
+
+	/**
+	 * Removes this queue from the map of queues if it is empty and
+	 * not scheduled.  Callers should synchronize on this queue.
+	 */
+	private void removeIfEmpty() {
+	    assert Thread.holdsLock(this);
+	    if (contexts.isEmpty() && !scheduled && !removed) {
+		removed = true;
+		flushQueues.remove(sessionRefId, this);
+	    }
+	}
     }
 
     /* -- Implement ClientSessionServer -- */
@@ -1143,13 +1454,22 @@ public final class ClientSessionServiceImpl
 
 	/** {@inheritDoc} */
 	public byte[] relocatingSession(
-	    Identity identity, byte[] sessionId, long oldNodeId)
+	    Identity identity, byte[] sessionId, long oldNodeId,
+	    long[] objectIds)
 	{
 	    callStarted();
 	    try {
 		if (logger.isLoggable(Level.FINEST)) {
-		    logger.log(Level.FINEST, "sessionId:{0} oldNodeId:{1}",
-			       HexDumper.toHexString(sessionId), oldNodeId);
+		    logger.log(Level.FINEST, "sessionId:{0} oldNodeId:{1} " +
+			       "objectIds:{2}", HexDumper.toHexString(sessionId),
+			       oldNodeId, objectIds.length);
+		}
+
+		// Fetch the session's recently accessed objects while the
+		// client is being told to relocate.
+		if (objectIds.length > 0) {
+		    transactionScheduler.scheduleTask(
+			new PrefetchObjectsTask(objectIds), taskOwner);
 		}
 		
 		// Cache relocation information.
@@ -1522,8 +1842,15 @@ public final class ClientSessionServiceImpl
         assert handler != null;
 	handlers.put(sessionRefId, handler);
         checkHighWater();
-	incomingSessionRelocationInfo.remove(sessionRefId);
+	if (accessTracker != null) {
+	    accessTracker.track(handler.identity);
+	}
+	RelocationInfo info = incomingSessionRelocationInfo.remove(sessionRefId);
 	if (identity != null) {
+	    if (info != null) {
+		serviceStats.relocationTimeSample.addSample(
+		    System.currentTimeMillis() - info.startTime);
+	    }
 	    incomingRelocatingIdentities.remove(identity);
 	    //  Notify status listeners that the specified client session
 	    //  has completed relocating to this node.
@@ -1543,6 +1870,19 @@ public final class ClientSessionServiceImpl
 	}
     }
     
+    /**
+     * Returns the IDs of the objects recently accessed by the session with
+     * the specified {@code identity}, ordered from least to most recently
+     * accessed, or an empty array if relocation prefetching is disabled.
+     *
+     * @param	identity the identity of a local session
+     * @return	the recently accessed object IDs
+     */
+    long[] getRecentObjectIds(Identity identity) {
+	return (accessTracker == null) ?
+	    new long[0] : accessTracker.getRecentObjectIds(identity);
+    }
+
     /**
      * Removes the specified session from the internal session handler map,
      * cleans up other session-related transient data, and if {@code
@@ -1560,8 +1900,11 @@ public final class ClientSessionServiceImpl
 	}
 	// Notify session listeners of disconnection
 	notifyStatusListenersOfDisconnection(sessionRefId, isRelocating);
-	handlers.remove(sessionRefId);
+	ClientSessionHandler handler = handlers.remove(sessionRefId);
         checkHighWater();
+	if (handler != null && accessTracker != null) {
+	    accessTracker.untrack(handler.identity);
+	}
 	sessionTaskQueues.remove(sessionRefId);
 	prepareRelocationMap.remove(sessionRefId); // just in case...
     }
@@ -1872,6 +2215,7 @@ public final class ClientSessionServiceImpl
     private static class RelocationInfo {
 	final Identity identity;
 	final BigInteger sessionRefId;
+	final long startTime = System.currentTimeMillis();
 
 	RelocationInfo(Identity identity, BigInteger sessionRefId) {
 	    this.identity = identity;
@@ -1879,6 +2223,37 @@ public final class ClientSessionServiceImpl
 	}
     }
 
+    /**
+     * A read-only task that fetches the objects recently accessed by a
+     * session relocating to the local node, so that the objects are cached
+     * by the data store before the session's client reconnects.
+     */
+    private class PrefetchObjectsTask extends AbstractKernelRunnable
+	implements ReadOnlyKernelRunnable
+    {
+	/** The IDs of the objects to fetch. */
+	private final long[] objectIds;
+
+	/** Constructs an instance with the specified {@code objectIds}. */
+	PrefetchObjectsTask(long[] objectIds) {
+	    super(null);
+	    this.objectIds = objectIds;
+	}
+
+	/** {@inheritDoc} */
+	public void run() {
+	    List<ManagedReference<?>> refs =
+		new ArrayList<ManagedReference<?>>(objectIds.length);
+	    for (long oid : objectIds) {
+		refs.add(dataService.createReferenceForId(
+			     BigInteger.valueOf(oid)));
+	    }
+	    dataService.prefetch(refs);
+	    serviceStats.relocationPrefetchCounter.incrementCount(
+		objectIds.length);
+	}
+    }
+
     /**
      * A task (run after a delay) that checks to see if a client session
      * with the {@code sessionRefId} specified during construction has
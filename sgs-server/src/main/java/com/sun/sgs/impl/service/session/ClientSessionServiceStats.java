@@ -23,13 +23,19 @@ package com.sun.sgs.impl.service.session;
 
 import com.sun.sgs.impl.profile.ProfileCollectorImpl;
 import com.sun.sgs.management.ClientSessionServiceMXBean;
+import com.sun.sgs.profile.AggregateProfileCounter;
 import com.sun.sgs.profile.AggregateProfileOperation;
+import com.sun.sgs.profile.AggregateProfileSample;
 import com.sun.sgs.profile.ProfileCollector;
 import com.sun.sgs.profile.ProfileCollector.ProfileLevel;
 import com.sun.sgs.profile.ProfileConsumer;
 import com.sun.sgs.profile.ProfileConsumer.ProfileDataType;
+import com.sun.sgs.profile.ProfileCounter;
 import com.sun.sgs.profile.ProfileOperation;
+import com.sun.sgs.profile.ProfileSample;
 import com.sun.sgs.service.Node;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * The Statistics MBean object for the client session service.
@@ -39,6 +45,22 @@ class ClientSessionServiceStats implements ClientSessionServiceMXBean {
     final ProfileOperation addSessionStatusListenerOp;
     final ProfileOperation getSessionProtocolOp;
     final ProfileOperation isRelocatingToLocalNodeOp;
+    final ProfileSample flushLagSample;
+    final ProfileSample loginLatencySample;
+    final ProfileSample relocationTimeSample;
+    final ProfileCounter relocationPrefetchCounter;
+    final ProfileSample outboundQueueSample;
+    final ProfileCounter outboundDropCounter;
+    final ProfileCounter outboundOverflowCounter;
+    final ProfileCounter compressedMessagesCounter;
+    final ProfileCounter compressionBytesSavedCounter;
+    final ProfileCounter compressionTimeCounter;
+
+    /** The number of login latency samples retained for percentiles. */
+    private static final int LOGIN_LATENCY_CAPACITY = 1024;
+
+    /** The number of outbound queue samples retained for percentiles. */
+    private static final int OUTBOUND_QUEUE_CAPACITY = 1024;
 
     private final ClientSessionServiceImpl service;
     
@@ -59,6 +81,53 @@ class ClientSessionServiceStats implements ClientSessionServiceMXBean {
             consumer.createOperation("getSessionProtocol", type, level);
         isRelocatingToLocalNodeOp =
             consumer.createOperation("isRelocatingToLocalNode", type, level);
+        flushLagSample =
+            consumer.createSample("flushLag", ProfileDataType.AGGREGATE,
+                                  ProfileLevel.MEDIUM);
+        loginLatencySample =
+            consumer.createSample("loginLatency", ProfileDataType.AGGREGATE,
+                                  ProfileLevel.MIN);
+        ((AggregateProfileSample) loginLatencySample).setCapacity(
+            LOGIN_LATENCY_CAPACITY);
+        relocationTimeSample =
+            consumer.createSample("relocationTime",
+                                  ProfileDataType.AGGREGATE,
+                                  ProfileLevel.MIN);
+        relocationPrefetchCounter =
+            consumer.createCounter("relocationPrefetchedObjects",
+                                   ProfileDataType.TASK_AND_AGGREGATE,
+                                   ProfileLevel.MEDIUM);
+        /*
+         * The outbound queue and compression statistics are reported by
+         * the protocol acceptor, which creates the same data in this
+         * consumer.
+         */
+        outboundQueueSample =
+            consumer.createSample("outboundQueueBytes",
+                                  ProfileDataType.AGGREGATE,
+                                  ProfileLevel.MEDIUM);
+        ((AggregateProfileSample) outboundQueueSample).setCapacity(
+            OUTBOUND_QUEUE_CAPACITY);
+        outboundDropCounter =
+            consumer.createCounter("outboundMessagesDropped",
+                                   ProfileDataType.AGGREGATE,
+                                   ProfileLevel.MIN);
+        outboundOverflowCounter =
+            consumer.createCounter("outboundOverflowDisconnects",
+                                   ProfileDataType.AGGREGATE,
+                                   ProfileLevel.MIN);
+        compressedMessagesCounter =
+            consumer.createCounter("compressedMessages",
+                                   ProfileDataType.AGGREGATE,
+                                   ProfileLevel.MIN);
+        compressionBytesSavedCounter =
+            consumer.createCounter("compressionBytesSaved",
+                                   ProfileDataType.AGGREGATE,
+                                   ProfileLevel.MIN);
+        compressionTimeCounter =
+            consumer.createCounter("compressionTime",
+                                   ProfileDataType.AGGREGATE,
+                                   ProfileLevel.MIN);
     }
 
     /** {@inheritDoc} */
@@ -79,6 +148,115 @@ class ClientSessionServiceStats implements ClientSessionServiceMXBean {
 		    isRelocatingToLocalNodeOp).getCount();
     }
 
+    /** {@inheritDoc} */
+    public double getFlushLagAvg() {
+        return ((AggregateProfileSample) flushLagSample).getAverage();
+    }
+
+    /** {@inheritDoc} */
+    public long getFlushLagMax() {
+        return ((AggregateProfileSample) flushLagSample).getMaxSample();
+    }
+
+    /** {@inheritDoc} */
+    public long getLoginLatency50th() {
+        return getPercentile(loginLatencySample, 50);
+    }
+
+    /** {@inheritDoc} */
+    public long getLoginLatency90th() {
+        return getPercentile(loginLatencySample, 90);
+    }
+
+    /** {@inheritDoc} */
+    public long getLoginLatency99th() {
+        return getPercentile(loginLatencySample, 99);
+    }
+
+    /** {@inheritDoc} */
+    public long getLoginLatencyMax() {
+        return ((AggregateProfileSample) loginLatencySample).getMaxSample();
+    }
+
+    /**
+     * Returns the specified percentile of the recent values of the
+     * specified {@code sample}, or {@code 0} if no values have been
+     * recorded.
+     */
+    private static long getPercentile(ProfileSample sample, int percentile) {
+        List<Long> samples = ((AggregateProfileSample) sample).getSamples();
+        if (samples.isEmpty()) {
+            return 0;
+        }
+        Collections.sort(samples);
+        int index = (samples.size() * percentile + 99) / 100 - 1;
+        return samples.get(Math.max(index, 0));
+    }
+
+    /** {@inheritDoc} */
+    public double getRelocationTimeAvg() {
+        return ((AggregateProfileSample) relocationTimeSample).getAverage();
+    }
+
+    /** {@inheritDoc} */
+    public long getRelocationTimeMax() {
+        return ((AggregateProfileSample) relocationTimeSample).getMaxSample();
+    }
+
+    /** {@inheritDoc} */
+    public long getRelocationPrefetchedObjects() {
+        return ((AggregateProfileCounter) relocationPrefetchCounter).
+            getCount();
+    }
+
+    /** {@inheritDoc} */
+    public long getOutboundQueueBytes50th() {
+        return getPercentile(outboundQueueSample, 50);
+    }
+
+    /** {@inheritDoc} */
+    public long getOutboundQueueBytes90th() {
+        return getPercentile(outboundQueueSample, 90);
+    }
+
+    /** {@inheritDoc} */
+    public long getOutboundQueueBytes99th() {
+        return getPercentile(outboundQueueSample, 99);
+    }
+
+    /** {@inheritDoc} */
+    public long getOutboundQueueBytesMax() {
+        return ((AggregateProfileSample) outboundQueueSample).getMaxSample();
+    }
+
+    /** {@inheritDoc} */
+    public long getOutboundMessagesDropped() {
+        return ((AggregateProfileCounter) outboundDropCounter).getCount();
+    }
+
+    /** {@inheritDoc} */
+    public long getOutboundOverflowDisconnects() {
+        return ((AggregateProfileCounter) outboundOverflowCounter).getCount();
+    }
+
+    /** {@inheritDoc} */
+    public long getCompressedMessages() {
+        return ((AggregateProfileCounter) compressedMessagesCounter).
+            getCount();
+    }
+
+    /** {@inheritDoc} */
+    public long getCompressionBytesSaved() {
+        return ((AggregateProfileCounter) compressionBytesSavedCounter).
+            getCount();
+    }
+
+    /** {@inheritDoc} */
+    public long getCompressionTime() {
+        return ((AggregateProfileCounter) compressionTimeCounter).
+            getCount() / 1000000;
+    }
+
     @Override
     public Node.Health getSessionServiceHealth() {
         return service.getHealth();
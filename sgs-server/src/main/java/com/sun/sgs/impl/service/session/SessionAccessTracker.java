@@ -0,0 +1,179 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.impl.service.session;
+
+import com.sun.sgs.auth.Identity;
+import com.sun.sgs.impl.service.data.store.AbstractDataStore;
+import com.sun.sgs.kernel.AccessedObject;
+import com.sun.sgs.profile.AccessedObjectsDetail;
+import com.sun.sgs.profile.ProfileListener;
+import com.sun.sgs.profile.ProfileReport;
+import java.beans.PropertyChangeEvent;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A profile listener that records the IDs of the objects most recently
+ * accessed by the tasks of each tracked identity.  The client session service
+ * tracks the identities of its local sessions, and sends the recently
+ * accessed object IDs to a session's new node when the session relocates, so
+ * that the new node can fetch those objects before the client reconnects.
+ * <p>
+ *
+ * Object accesses are obtained from the {@link AccessedObjectsDetail} of
+ * each profile report, so they are only available if the access coordinator
+ * in use reports them.
+ */
+class SessionAccessTracker implements ProfileListener {
+
+    /** The maximum number of object IDs recorded for each identity. */
+    private final int capacity;
+
+    /** The recently accessed objects, keyed by tracked identity. */
+    private final ConcurrentHashMap<Identity, RecentObjects> tracked =
+	new ConcurrentHashMap<Identity, RecentObjects>();
+
+    /**
+     * Creates an instance that records up to {@code capacity} object IDs for
+     * each identity.
+     *
+     * @param	capacity the maximum number of object IDs to record for each
+     *		identity
+     * @throws	IllegalArgumentException if {@code capacity} is less than
+     *		{@code 1}
+     */
+    SessionAccessTracker(int capacity) {
+	if (capacity < 1) {
+	    throw new IllegalArgumentException(
+		"The capacity must not be less than 1");
+	}
+	this.capacity = capacity;
+    }
+
+    /**
+     * Starts recording object accesses for the specified {@code identity}.
+     *
+     * @param	identity the identity
+     */
+    void track(Identity identity) {
+	tracked.putIfAbsent(identity, new RecentObjects());
+    }
+
+    /**
+     * Stops recording object accesses for the specified {@code identity},
+     * and discards the object IDs recorded for it.
+     *
+     * @param	identity the identity
+     */
+    void untrack(Identity identity) {
+	tracked.remove(identity);
+    }
+
+    /**
+     * Returns the IDs of the objects recently accessed by tasks owned by the
+     * specified {@code identity}, ordered from least to most recently
+     * accessed.  Returns an empty array if the identity is not tracked.
+     *
+     * @param	identity the identity
+     * @return	the recently accessed object IDs
+     */
+    long[] getRecentObjectIds(Identity identity) {
+	RecentObjects recent = tracked.get(identity);
+	return (recent == null) ? new long[0] : recent.getObjectIds();
+    }
+
+    /* -- Implement ProfileListener -- */
+
+    /** {@inheritDoc} */
+    public void propertyChange(PropertyChangeEvent event) { }
+
+    /** {@inheritDoc} */
+    public void report(ProfileReport profileReport) {
+	Identity owner = profileReport.getTaskOwner();
+	if (owner == null) {
+	    return;
+	}
+	RecentObjects recent = tracked.get(owner);
+	if (recent == null) {
+	    return;
+	}
+	AccessedObjectsDetail detail =
+	    profileReport.getAccessedObjectsDetail();
+	if (detail == null) {
+	    return;
+	}
+	for (AccessedObject object : detail.getAccessedObjects()) {
+	    Object objectId = object.getObjectId();
+	    if (objectId instanceof Long &&
+		object.getSource().endsWith(
+		    AbstractDataStore.OBJECT_ACCESS_SOURCE_SUFFIX))
+	    {
+		recent.add((Long) objectId);
+	    }
+	}
+    }
+
+    /** {@inheritDoc} */
+    public void shutdown() {
+	tracked.clear();
+    }
+
+    /**
+     * The object IDs recently accessed by an identity, ordered from least to
+     * most recently accessed, and limited to the tracker's capacity.
+     */
+    private class RecentObjects {
+
+	/** The object IDs, in access order. */
+	private final LinkedHashMap<Long, Boolean> objectIds =
+	    new LinkedHashMap<Long, Boolean>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1;
+		protected boolean removeEldestEntry(
+		    Map.Entry<Long, Boolean> eldest)
+		{
+		    return size() > capacity;
+		}
+	    };
+
+	/** Records an access to the specified object ID. */
+	synchronized void add(Long objectId) {
+	    objectIds.put(objectId, Boolean.TRUE);
+	}
+
+	/** Returns the recorded object IDs. */
+	synchronized long[] getObjectIds() {
+	    long[] result = new long[objectIds.size()];
+	    int i = 0;
+	    for (Long objectId : objectIds.keySet()) {
+		result[i++] = objectId;
+	    }
+	    return result;
+	}
+    }
+}
@@ -26,6 +26,7 @@ import com.sun.sgs.app.DataManager;
 import com.sun.sgs.app.ManagedObject;
 import com.sun.sgs.app.ManagedReference;
 import com.sun.sgs.app.ObjectNotFoundException;
+import com.sun.sgs.app.RunReadOnly;
 import com.sun.sgs.app.Task;
 
 import com.sun.sgs.auth.Identity;
@@ -64,6 +65,9 @@ class PendingTask implements ManagedObject, Serializable {
     // identifies whether this instance is free for re-use
     private boolean reusable;
 
+    // whether the task only reads data
+    private boolean readOnly;
+
     // if this is a periodic task, where it's currently running
     private long runningNode;
 
@@ -114,6 +118,8 @@ class PendingTask implements ManagedObject, Serializable {
         }
 
         this.taskType = t.getClass().getName();
+        this.readOnly =
+            (t.getClass().getAnnotation(RunReadOnly.class) != null);
         this.startTime = s;
         this.period = p;
         this.lastStartTime = TaskServiceImpl.NEVER;
@@ -134,12 +140,21 @@ class PendingTask implements ManagedObject, Serializable {
         task = null;
         taskRef = null;
         taskType = null;
+        readOnly = false;
         startTime = TaskServiceImpl.START_NOW;
         period = TaskServiceImpl.PERIOD_NONE;
         lastStartTime = TaskServiceImpl.NEVER;
         runningNode = -1;
     }
 
+    /**
+     * Returns whether the pending task has the {@code RunReadOnly}
+     * annotation, and so should be run in a read-only transaction.
+     */
+    boolean isReadOnly() {
+        return readOnly;
+    }
+
     /** Returns the type of the pending task. */
     String getBaseTaskType() {
         return taskType;
@@ -26,6 +26,7 @@ import com.sun.sgs.app.ManagedReference;
 import com.sun.sgs.app.NameNotBoundException;
 import com.sun.sgs.app.ObjectNotFoundException;
 import com.sun.sgs.app.PeriodicTaskHandle;
+import com.sun.sgs.app.RunReadOnly;
 import com.sun.sgs.app.RunWithNewIdentity;
 import com.sun.sgs.app.Task;
 import com.sun.sgs.app.TaskRejectedException;
@@ -43,6 +44,7 @@ import com.sun.sgs.impl.util.TransactionContextFactory;
 
 import com.sun.sgs.kernel.ComponentRegistry;
 import com.sun.sgs.kernel.KernelRunnable;
+import com.sun.sgs.kernel.ReadOnlyKernelRunnable;
 import com.sun.sgs.kernel.RecurringTaskHandle;
 import com.sun.sgs.kernel.TaskReservation;
 
@@ -703,7 +705,21 @@ public class TaskServiceImpl
                        objId, identity);
         }
 
-        return new TaskRunner(objId, task.getClass().getName(), identity);
+        return createRunner(
+            objId, task.getClass().getName(), identity,
+            task.getClass().getAnnotation(RunReadOnly.class) != null);
+    }
+
+    /**
+     * Private helper that creates the {@code TaskRunner} for a pending
+     * task, using a read-only runner if the task only reads data.
+     */
+    private TaskRunner createRunner(BigInteger objId, String objTaskType,
+                                    Identity identity, boolean readOnly)
+    {
+        return readOnly ?
+            new ReadOnlyTaskRunner(objId, objTaskType, identity) :
+            new TaskRunner(objId, objTaskType, identity);
     }
 
     /** Helper that generates the name for a pending object. */
@@ -826,6 +842,17 @@ public class TaskServiceImpl
      * meaning that there is no task to run.
      */
     PendingTask fetchPendingTask(BigInteger objId) {
+        return fetchPendingTask(objId, false);
+    }
+
+    /**
+     * Private helper that fetches the task associated with the given ID,
+     * as for {@link #fetchPendingTask(BigInteger)}. If {@code readOnly} is
+     * {@code true}, then the pending task is not modified or removed, since
+     * that isn't possible in a read-only transaction. Instead, a separate
+     * task is run once the current transaction commits to do that work.
+     */
+    private PendingTask fetchPendingTask(BigInteger objId, boolean readOnly) {
         PendingTask ptask = null;
         try {
             ptask = (PendingTask) (dataService.createReferenceForId(objId).
@@ -846,6 +873,16 @@ public class TaskServiceImpl
         }
         boolean isAvailable = ptask.isTaskAvailable();
 
+        // a read-only transaction can't update the pending task, so leave
+        // the bookkeeping below to the cleanup task, which will repeat
+        // these checks in a transaction that can make changes
+        if (readOnly) {
+            if ((!ptask.isPeriodic()) || (!isAvailable)) {
+                ctxFactory.joinTransaction().noteCleanupOnCommit(objId);
+            }
+            return isAvailable ? ptask : null;
+        }
+
         // if it's not periodic then note that the pending task will be
         // available if the transaction commits, checking that this doesn't
         // change the identity's status
@@ -935,9 +972,33 @@ public class TaskServiceImpl
         }
     }
 
+    /**
+     * Private helper that schedules a task to remove or re-use the pending
+     * task with the given id after it was run in a read-only transaction.
+     * This is called when the read-only transaction commits, or aborts
+     * without being retried. If the cleanup task can't be scheduled, then
+     * the pending task is left in place and may be run again later, which
+     * is safe since it doesn't modify data.
+     */
+    private void scheduleCleanup(BigInteger objId) {
+        try {
+            transactionScheduler.
+                scheduleTask(new NonRetryCleanupRunnable(objId),
+                             txnProxy.getCurrentOwner());
+        } catch (TaskRejectedException tre) {
+            if (logger.isLoggable(Level.WARNING)) {
+                logger.logThrow(Level.WARNING, tre, "could not schedule " +
+                                "task to clean up read-only task {0}",
+                                objId);
+            }
+        }
+    }
+
     /**
      * Private helper runnable that cleans up after a non-retried task. See
-     * block comment above in notifyNonRetry for more detail.
+     * block comment above in notifyNonRetry for more detail. This is also
+     * used to clean up after read-only tasks, which can't modify their
+     * pending task themselves.
      */
     private class NonRetryCleanupRunnable implements KernelRunnable {
         private final BigInteger objId;
@@ -974,6 +1035,7 @@ public class TaskServiceImpl
         private HashMap<Identity, HashSet<BigInteger>> allocatedTaskIds = null;
         private HashMap<BigInteger, RecurringDetail> addedRecurringMap = null;
         private HashSet<BigInteger> cancelledRecurringSet = null;
+        private HashSet<BigInteger> cleanupSet = null;
         private HashMap<Identity, Integer> statusMap =
                 new HashMap<Identity, Integer>();
         private BigInteger currentTaskId = null;
@@ -1019,7 +1081,7 @@ public class TaskServiceImpl
                     detail.handle.start();
                 }
             }
-            // finally, return the ID of this task if it's now available
+            // finally, return the ID of this task if it's now available...
             if (currentTaskId != null) {
                 Set<BigInteger> set = availablePendingMap.get(currentTaskOwner);
                 if (set != null) {
@@ -1028,6 +1090,12 @@ public class TaskServiceImpl
                     }
                 }
             }
+            // ...and clean up after any tasks run in a read-only transaction
+            if (cleanupSet != null) {
+                for (BigInteger objId : cleanupSet) {
+                    scheduleCleanup(objId);
+                }
+            }
         }
         /** {@inheritDoc} */
         public void abort(boolean retryable) {
@@ -1057,6 +1125,13 @@ public class TaskServiceImpl
                     }
                 }
             }
+            // a read-only task that will not be retried still needs its
+            // pending task cleaned up, even if it only failed at commit
+            if (!retryable && cleanupSet != null) {
+                for (BigInteger objId : cleanupSet) {
+                    scheduleCleanup(objId);
+                }
+            }
         }
         /** Adds a reservation to use at commit-time. */
         void addReservation(TaskReservation reservation, Identity identity) {
@@ -1126,6 +1201,16 @@ public class TaskServiceImpl
             }
             set.add(objId);
         }
+        /**
+         * Notes that the pending task with the given id needs to be cleaned
+         * up in a separate transaction once this transaction commits.
+         */
+        void noteCleanupOnCommit(BigInteger objId) {
+            if (cleanupSet == null) {
+                cleanupSet = new HashSet<BigInteger>();
+            }
+            cleanupSet.add(objId);
+        }
         /** Notes the current tasks's id to be freed. */
         void noteCurrentIdFreed(BigInteger objId) {
             assert currentTaskId == null : "The id of the current task " +
@@ -1177,6 +1262,10 @@ public class TaskServiceImpl
         void markIgnoreIsLocal() {
             doLocalCheck = false;
         }
+        /** Returns whether this runs the task in a read-only transaction. */
+        boolean isReadOnly() {
+            return false;
+        }
         /** {@inheritDoc} */
         public String getBaseTaskType() {
             return objTaskType;
@@ -1199,9 +1288,14 @@ public class TaskServiceImpl
                 return;
             }
 
+            // once a read-only task has been fetched, any cleanup it needs
+            // is noted in the transaction state, which also does that
+            // cleanup if the transaction fails
+            boolean fetched = false;
             try {
                 // fetch the task, making sure that it's available
-                PendingTask ptask = fetchPendingTask(objId);
+                PendingTask ptask = fetchPendingTask(objId, isReadOnly());
+                fetched = true;
                 if (ptask == null) {
                     logger.log(Level.FINER, "tried to run a task that was " +
                                "removed previously from the data service; " +
@@ -1223,7 +1317,8 @@ public class TaskServiceImpl
                                "run at {1}", objId, ptask.getStartTime());
                 }
                 // finally, run the task itself, and set for re-use as needed
-                if (ptask.isPeriodic()) {
+                // (leaving the pending task alone for read-only tasks)
+                if (ptask.isPeriodic() && !isReadOnly()) {
                     // Persistently record the start time of periodic tasks so
                     // that if the task is handed off, we can approximate what
                     // time to use as the new restart time of the periodic task.
@@ -1238,15 +1333,16 @@ public class TaskServiceImpl
                             watchdogService.currentAppTimeMillis());
                 }
                 ptask.run();
-                if (!ptask.isPeriodic()) {
+                if (!ptask.isPeriodic() && !isReadOnly()) {
                     ptask.setReusable();
                 }
             } catch (Exception e) {
                 // catch exceptions just before they go back to the scheduler
                 // to see if the task will be re-tried...if not, then we need
                 // to notify the service
-                if ((!(e instanceof ExceptionRetryStatus)) ||
-                        (!((ExceptionRetryStatus) e).shouldRetry()))
+                if (((!(e instanceof ExceptionRetryStatus)) ||
+                     (!((ExceptionRetryStatus) e).shouldRetry())) &&
+                    !(isReadOnly() && fetched))
                 {
                     notifyNonRetry(objId);
                 }
@@ -1255,6 +1351,24 @@ public class TaskServiceImpl
         }
     }
 
+    /**
+     * Private extension of {@code TaskRunner} that is used to run tasks that
+     * have the {@code RunReadOnly} annotation in read-only transactions.
+     */
+    private class ReadOnlyTaskRunner extends TaskRunner
+        implements ReadOnlyKernelRunnable
+    {
+        ReadOnlyTaskRunner(BigInteger objId, String objTaskType,
+                           Identity taskIdentity)
+        {
+            super(objId, objTaskType, taskIdentity);
+        }
+        /** {@inheritDoc} */
+        boolean isReadOnly() {
+            return true;
+        }
+    }
+
     /**
      * Private wrapper class for all non-durable tasks. This makes sure that
      * when a non-durable task runs the status count for the associated
@@ -1354,8 +1468,8 @@ public class TaskServiceImpl
             return;
         }
 
-        TaskRunner runner = new TaskRunner(objId, ptask.getBaseTaskType(),
-                                           identity);
+        TaskRunner runner = createRunner(objId, ptask.getBaseTaskType(),
+                                         identity, ptask.isReadOnly());
         runner.markIgnoreIsLocal();
 
         if (ptask.getPeriod() == PERIOD_NONE) {
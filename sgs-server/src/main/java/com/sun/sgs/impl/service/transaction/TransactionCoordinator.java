@@ -42,6 +42,20 @@ public interface TransactionCoordinator {
      */
     String TXN_DISABLE_PREPAREANDCOMMIT_OPT_PROPERTY =
             "com.sun.sgs.txn.disable.prepareandcommit.optimization";
+
+    /**
+     * The property used to specify the maximum number of threads used to
+     * prepare and commit participants that implement {@link
+     * com.sun.sgs.service.ConcurrentTransactionParticipant
+     * ConcurrentTransactionParticipant} concurrently with other participants.
+     * A value of {@code 0} calls all participants from the thread that
+     * created the transaction.
+     * <p>
+     * The value defaults to {@code 4}.
+     */
+    String TXN_CONCURRENT_PARTICIPANT_THREADS_PROPERTY =
+	"com.sun.sgs.txn.concurrent.participant.threads";
+
     /**
      * Creates a new transaction, and returns a handle for managing it.
      * If a timeout of {@link ScheduledTask#UNBOUNDED} is given, a
@@ -55,6 +69,22 @@ public interface TransactionCoordinator {
      */
     TransactionHandle createTransaction(long timeout);
 
+    /**
+     * Creates a new transaction, optionally read-only, and returns a handle
+     * for managing it. A read-only transaction reports {@code true} from
+     * {@link com.sun.sgs.service.Transaction#isReadOnly isReadOnly}, which
+     * tells participants to reject modifications and to skip work that is
+     * only needed when changes are made. Timeouts are treated as for
+     * {@link #createTransaction(long)}.
+     *
+     * @param timeout the timeout, in milliseconds, to be used for this
+     *        transaction
+     * @param readOnly whether the transaction is read-only
+     *
+     * @return	a handle for managing the newly created transaction.
+     */
+    TransactionHandle createTransaction(long timeout, boolean readOnly);
+
     /**
      * Returns the default transaction timeout to use for bounded transactions.
      * This value is specified using the property
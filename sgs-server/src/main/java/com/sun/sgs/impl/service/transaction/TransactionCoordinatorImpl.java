@@ -25,9 +25,16 @@ import com.sun.sgs.impl.kernel.ConfigManager;
 import com.sun.sgs.impl.profile.ProfileCollectorHandle;
 import com.sun.sgs.impl.sharedutil.PropertiesWrapper;
 import com.sun.sgs.kernel.schedule.ScheduledTask;
+import com.sun.sgs.service.ConcurrentTransactionParticipant;
 import com.sun.sgs.service.NonDurableTransactionParticipant;
 import com.sun.sgs.service.Transaction;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -54,7 +61,16 @@ import java.util.concurrent.atomic.AtomicLong;
  * is Long.MAX_VALUE. These defaults may be overridden using the properties
  * <code>TransactionCoordinator.TXN_TIMEOUT_PROPERTY</code> and
  * <code>TransactionCoordinator.TXN_UNBOUNDED_TIMEOUT_PROPERTY</code>
- * respectively.
+ * respectively. <p>
+ *
+ * Participants that implement {@link ConcurrentTransactionParticipant} are
+ * prepared and committed using a pool of threads, concurrently with the
+ * other participants, while the durable participant, if any, is still
+ * prepared last.  The maximum number of threads in the pool is specified by
+ * the property <code>TransactionCoordinator.
+ * TXN_CONCURRENT_PARTICIPANT_THREADS_PROPERTY</code>, and defaults to
+ * {@code 4}.  If the pool has no free threads, participants are called from
+ * the thread that created the transaction.
  */
 public final class TransactionCoordinatorImpl
     implements TransactionCoordinator
@@ -79,6 +95,15 @@ public final class TransactionCoordinatorImpl
 
     /** Should we use prepareAndCommit() or separate calls? */
     private final boolean disablePrepareAndCommitOpt;
+
+    /** The default maximum number of concurrent participant threads. */
+    public static final int CONCURRENT_PARTICIPANT_THREADS_DEFAULT = 4;
+
+    /**
+     * The executor for calling concurrent participants, or {@code null} if
+     * all participants are called from the transaction's thread.
+     */
+    private final ExecutorService participantExecutor;
     
     /** An implementation of TransactionHandle. */
     private static final class TransactionHandleImpl
@@ -89,15 +114,19 @@ public final class TransactionCoordinatorImpl
 
 	/**
 	 * Creates a transaction with the specified ID, timeout, 
-         * prepareAndCommit optimization boolean, and collectorHandle.
+         * prepareAndCommit optimization boolean, read-only flag,
+         * collectorHandle, and executor for concurrent participants.
 	 */
 	TransactionHandleImpl(long tid, long timeout,
                               boolean disablePrepareAndCommitOpt,
-			      ProfileCollectorHandle collectorHandle) 
+                              boolean readOnly,
+			      ProfileCollectorHandle collectorHandle,
+			      ExecutorService participantExecutor)
         {
 	    txn = new TransactionImpl(tid, timeout, 
                                       disablePrepareAndCommitOpt, 
-                                      collectorHandle);
+                                      readOnly, collectorHandle,
+				      participantExecutor);
 	}
 
 	public String toString() {
@@ -123,7 +152,8 @@ public final class TransactionCoordinatorImpl
      * @param	collectorHandle the {@code ProfileCollectorHandle} used 
      *          to report participant detail
      * @throws	IllegalArgumentException if the bounded or
-     *		unbounded timeout properties are less than {@code 1}
+     *		unbounded timeout properties are less than {@code 1}, or if
+     *		the concurrent participant threads property is negative
      */
     public TransactionCoordinatorImpl(Properties properties,
                                       ProfileCollectorHandle collectorHandle) 
@@ -150,6 +180,11 @@ public final class TransactionCoordinatorImpl
                 TransactionCoordinator.
                     TXN_DISABLE_PREPAREANDCOMMIT_OPT_PROPERTY,
                 false);
+	int participantThreads = props.getIntProperty(
+	    TransactionCoordinator.TXN_CONCURRENT_PARTICIPANT_THREADS_PROPERTY,
+	    CONCURRENT_PARTICIPANT_THREADS_DEFAULT, 0, Integer.MAX_VALUE);
+	participantExecutor = (participantThreads == 0)
+	    ? null : createParticipantExecutor(participantThreads);
         
         // Set our portion of the ConfigManager MXBean
         ConfigManager config = (ConfigManager) collectorHandle.getCollector().
@@ -159,11 +194,19 @@ public final class TransactionCoordinatorImpl
 
     /** {@inheritDoc} */
     public TransactionHandle createTransaction(long timeout) {
+        return createTransaction(timeout, false);
+    }
+
+    /** {@inheritDoc} */
+    public TransactionHandle createTransaction(long timeout,
+                                               boolean readOnly)
+    {
         if (timeout == ScheduledTask.UNBOUNDED) {
 	    return new TransactionHandleImpl(nextTid.getAndIncrement(),
 					     unboundedTimeout, 
                                              disablePrepareAndCommitOpt,
-                                             collectorHandle);
+                                             readOnly, collectorHandle,
+					     participantExecutor);
         } else if (timeout <= 0) {
             throw new IllegalArgumentException(
                     "Timeout value must be greater than 0 : " + timeout);
@@ -171,11 +214,36 @@ public final class TransactionCoordinatorImpl
         return new TransactionHandleImpl(nextTid.getAndIncrement(),
                                          timeout,
                                          disablePrepareAndCommitOpt,
-                                         collectorHandle);
+                                         readOnly, collectorHandle,
+					 participantExecutor);
     }
 
     /** {@inheritDoc} */
     public long getDefaultTimeout() {
         return boundedTimeout;
     }
+
+    /**
+     * Creates the executor for calling concurrent participants.  The executor
+     * uses daemon threads that exit when idle, since the coordinator is never
+     * shut down, and does not queue calls, so that the transaction's thread
+     * makes the call itself if all threads are busy.
+     */
+    private static ExecutorService createParticipantExecutor(int maxThreads) {
+	ThreadPoolExecutor executor = new ThreadPoolExecutor(
+	    maxThreads, maxThreads, 10, TimeUnit.SECONDS,
+	    new SynchronousQueue<Runnable>(),
+	    new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+		public Thread newThread(Runnable r) {
+		    Thread thread = new Thread(
+			r, "TransactionParticipant-" +
+			count.getAndIncrement());
+		    thread.setDaemon(true);
+		    return thread;
+		}
+	    });
+	executor.allowCoreThreadTimeOut(true);
+	return executor;
+    }
 }
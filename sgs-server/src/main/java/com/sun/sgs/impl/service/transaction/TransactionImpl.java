@@ -27,14 +27,19 @@ import com.sun.sgs.app.TransactionTimeoutException;
 import com.sun.sgs.impl.profile.ProfileCollectorHandle;
 import com.sun.sgs.impl.sharedutil.LoggerWrapper;
 import com.sun.sgs.profile.ProfileCollector.ProfileLevel;
+import com.sun.sgs.service.ConcurrentTransactionParticipant;
 import com.sun.sgs.service.NonDurableTransactionParticipant;
 import com.sun.sgs.service.Transaction;
 import com.sun.sgs.service.TransactionListener;
 import com.sun.sgs.service.TransactionParticipant;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -45,7 +50,14 @@ import java.util.logging.Logger;
  * {@code TransactionParticipant} has a unique value for {@code getTypeName}.
  * Nor is this check done for {@code TransactionListener}s. If two
  * participants or listeners have the same type name then their
- * profiling data will be aggregated and reported as a single result.
+ * profiling data will be aggregated and reported as a single result. <p>
+ *
+ * If an executor is supplied, participants that implement {@link
+ * ConcurrentTransactionParticipant} are prepared and committed using the
+ * executor, while the remaining participants are called from the
+ * transaction's thread.  The last participant, which is the durable
+ * participant if there is one, is only called after the concurrent calls are
+ * complete.
  */
 final class TransactionImpl implements Transaction {
 
@@ -83,6 +95,9 @@ final class TransactionImpl implements Transaction {
 
     /** Whether the prepareAndCommit optimization should be used. */
     private final boolean disablePrepareAndCommitOpt;
+
+    /** Whether this transaction is read-only. */
+    private final boolean readOnly;
     
     /** The state of the transaction. */
     private State state;
@@ -128,17 +143,34 @@ final class TransactionImpl implements Transaction {
      */
     private List<TransactionListener> listeners = null;
 
+    /**
+     * The executor for calling concurrent participants, or {@code null} if
+     * all participants are called from the transaction's thread.
+     */
+    private final ExecutorService participantExecutor;
+
+    /**
+     * The participant calls in progress using the executor, or {@code null}
+     * if there are none.
+     */
+    private List<ParticipantCall> pendingCalls = null;
+
     /**
      * Creates an instance with the specified transaction ID, timeout, 
-     * prepare and commit optimization flag, and collectorHandle.
+     * prepare and commit optimization flag, read-only flag,
+     * collectorHandle, and executor for concurrent participants, which may
+     * be {@code null}.
      */
     TransactionImpl(long tid, long timeout, boolean usePrepareAndCommitOpt,
-                    ProfileCollectorHandle collectorHandle) 
+                    boolean readOnly, ProfileCollectorHandle collectorHandle,
+		    ExecutorService participantExecutor)
     {
 	this.tid = tid;
 	this.timeout = timeout;
         this.disablePrepareAndCommitOpt = usePrepareAndCommitOpt;
+        this.readOnly = readOnly;
 	this.collectorHandle = collectorHandle;
+	this.participantExecutor = participantExecutor;
 	creationTime = System.currentTimeMillis();
 	owner = Thread.currentThread();
 	state = State.ACTIVE;
@@ -174,6 +206,11 @@ final class TransactionImpl implements Transaction {
 	return timeout;
     }
 
+    /** {@inheritDoc} */
+    public boolean isReadOnly() {
+	return readOnly;
+    }
+
     /** {@inheritDoc} */
     public void checkTimeout() {
 	checkThread("checkTimeout");
@@ -267,6 +304,8 @@ final class TransactionImpl implements Transaction {
 	synchronized (this) {
 	    abortCause = cause;
 	}
+	/* Don't abort participants while they are still being called */
+	awaitPendingCalls();
 	long startTime = 0;
 	for (TransactionParticipant participant : participants) {
 	    if (logger.isLoggable(Level.FINEST)) {
@@ -341,6 +380,7 @@ final class TransactionImpl implements Transaction {
 	return "TransactionImpl[tid:" + tid +
 	    ", creationTime:" + creationTime +
 	    ", timeout:" + timeout +
+	    (readOnly ? ", readOnly" : "") +
 	    ", state:" + state + "]";
     }
 
@@ -399,23 +439,43 @@ final class TransactionImpl implements Transaction {
 	state = State.PREPARING;
 	long startTime = 0;
 	ProfileParticipantDetailImpl detail = null;
-	for (Iterator<TransactionParticipant> iter = participants.iterator();
-	     iter.hasNext(); )
-	{
-	    TransactionParticipant participant = iter.next();
-	    if (participantDetailMap != null) {
-		detail = participantDetailMap.get(participant.getTypeName());
-		startTime = System.currentTimeMillis();
+	startConcurrentCalls(true);
+	for (int i = 0; i < participants.size(); i++) {
+	    TransactionParticipant participant = participants.get(i);
+	    if (isPending(participant)) {
+		continue;
+	    }
+	    boolean last = (i == participants.size() - 1);
+	    if (last && pendingCalls != null) {
+		try {
+		    finishConcurrentPrepares();
+		} catch (Exception e) {
+		    if (state != State.ABORTED) {
+			abort(e);
+		    }
+		    throw e;
+		}
+		/* Read-only participants may have been removed */
+		i = participants.size() - 1;
 	    }
 	    try {
-		if (iter.hasNext() || disablePrepareAndCommitOpt) {
+		if (participantDetailMap != null) {
+		    detail =
+			participantDetailMap.get(participant.getTypeName());
+		    startTime = System.currentTimeMillis();
+		}
+		/*
+		 * A read-only transaction has nothing to make durable, so
+		 * always let the last participant commit directly.
+		 */
+		if (!last || (disablePrepareAndCommitOpt && !readOnly)) {
 		    boolean readOnly = participant.prepare(this);
 		    if (detail != null) {
 			detail.setPrepared(System.currentTimeMillis() -
 					   startTime, readOnly);
 		    }
 		    if (readOnly) {
-			iter.remove();
+			participants.remove(i--);
 			if (detail != null) {
 			    collectorHandle.addParticipant(detail);
 			}
@@ -434,7 +494,7 @@ final class TransactionImpl implements Transaction {
 						 startTime);
 			collectorHandle.addParticipant(detail);
 		    }
-		    iter.remove();
+		    participants.remove(i--);
 		    if (logger.isLoggable(Level.FINEST)) {
 			logger.log(
 			    Level.FINEST,
@@ -446,7 +506,7 @@ final class TransactionImpl implements Transaction {
 		if (logger.isLoggable(Level.FINEST)) {
 		    logger.logThrow(
 			Level.FINEST, e, "{0} {1} participant:{1} throws",
-			iter.hasNext() ? "prepare" : "prepareAndCommit",
+			last ? "prepareAndCommit" : "prepare",
 			this, getParticipantInfo(participant));
 		}
 		if (state != State.ABORTED) {
@@ -460,7 +520,14 @@ final class TransactionImpl implements Transaction {
 	    }
 	}
 	state = State.COMMITTING;
-	for (TransactionParticipant participant : participants) {
+	startConcurrentCalls(false);
+	for (int i = 0; i < participants.size(); i++) {
+	    TransactionParticipant participant = participants.get(i);
+	    if (isPending(participant)) {
+		continue;
+	    } else if (i == participants.size() - 1 && pendingCalls != null) {
+		finishConcurrentCommits();
+	    }
 	    if (logger.isLoggable(Level.FINEST)) {
 		logger.log(Level.FINEST, "commit {0} participant:{1}",
 			   this, getParticipantInfo(participant));
@@ -488,6 +555,191 @@ final class TransactionImpl implements Transaction {
 	notifyListenersAfter(true);
     }
 
+    /**
+     * Starts calling prepare or commit, using the executor, on participants
+     * that implement ConcurrentTransactionParticipant, other than the last
+     * participant.  Participants that the executor rejects are left to be
+     * called from the transaction's thread.
+     */
+    private void startConcurrentCalls(boolean prepare) {
+	if (participantExecutor == null) {
+	    return;
+	}
+	for (int i = 0; i < participants.size() - 1; i++) {
+	    TransactionParticipant participant = participants.get(i);
+	    if (participant instanceof ConcurrentTransactionParticipant) {
+		ParticipantCall call = new ParticipantCall(participant, prepare);
+		try {
+		    call.future = participantExecutor.submit(call);
+		} catch (RejectedExecutionException e) {
+		    logger.log(Level.FINEST,
+			       "No threads for concurrent participant calls");
+		    break;
+		}
+		if (pendingCalls == null) {
+		    pendingCalls = new ArrayList<ParticipantCall>();
+		}
+		pendingCalls.add(call);
+	    }
+	}
+    }
+
+    /**
+     * Returns whether the participant is being called using the executor.
+     */
+    private boolean isPending(TransactionParticipant participant) {
+	if (pendingCalls != null) {
+	    for (ParticipantCall call : pendingCalls) {
+		if (call.participant == participant) {
+		    return true;
+		}
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Waits for the concurrent calls to prepare to complete, records their
+     * results, and removes participants that are read-only.  If any call
+     * throws an exception, throws the exception from the earliest such
+     * participant.
+     */
+    private void finishConcurrentPrepares() throws Exception {
+	List<ParticipantCall> calls = awaitPendingCalls();
+	Exception failure = null;
+	for (ParticipantCall call : calls) {
+	    TransactionParticipant participant = call.participant;
+	    if (call.exception != null) {
+		if (logger.isLoggable(Level.FINEST)) {
+		    logger.logThrow(
+			Level.FINEST, call.exception,
+			"prepare {0} participant:{1} throws",
+			this, getParticipantInfo(participant));
+		}
+		if (failure == null) {
+		    failure = call.exception;
+		}
+		continue;
+	    }
+	    ProfileParticipantDetailImpl detail = (participantDetailMap == null)
+		? null : participantDetailMap.get(participant.getTypeName());
+	    if (detail != null) {
+		detail.setPrepared(call.time, call.readOnly);
+	    }
+	    if (call.readOnly) {
+		participants.remove(participant);
+		if (detail != null) {
+		    collectorHandle.addParticipant(detail);
+		}
+	    }
+	    if (logger.isLoggable(Level.FINEST)) {
+		logger.log(Level.FINEST,
+			   "prepare {0} participant:{1} returns {2}",
+			   this, getParticipantInfo(participant),
+			   call.readOnly);
+	    }
+	}
+	if (failure != null) {
+	    throw failure;
+	}
+    }
+
+    /**
+     * Waits for the concurrent calls to commit to complete, and records their
+     * results.
+     */
+    private void finishConcurrentCommits() {
+	for (ParticipantCall call : awaitPendingCalls()) {
+	    TransactionParticipant participant = call.participant;
+	    if (call.exception != null) {
+		if (logger.isLoggable(Level.WARNING)) {
+		    logger.logThrow(
+			Level.WARNING, call.exception,
+			"commit {0} participant:{1} failed",
+			this, getParticipantInfo(participant));
+		}
+	    } else if (participantDetailMap != null) {
+		ProfileParticipantDetailImpl detail =
+		    participantDetailMap.get(participant.getTypeName());
+		detail.setCommitted(call.time);
+		collectorHandle.addParticipant(detail);
+	    }
+	}
+    }
+
+    /**
+     * Waits for any participant calls in progress using the executor to
+     * complete, clears the pending calls, and returns the calls that were
+     * pending.
+     */
+    private List<ParticipantCall> awaitPendingCalls() {
+	List<ParticipantCall> calls = pendingCalls;
+	if (calls == null) {
+	    return new ArrayList<ParticipantCall>(0);
+	}
+	pendingCalls = null;
+	boolean interrupted = false;
+	for (ParticipantCall call : calls) {
+	    while (true) {
+		try {
+		    call.future.get();
+		    break;
+		} catch (InterruptedException e) {
+		    interrupted = true;
+		} catch (ExecutionException e) {
+		    /* The call records its own exception */
+		    break;
+		}
+	    }
+	}
+	if (interrupted) {
+	    Thread.currentThread().interrupt();
+	}
+	return calls;
+    }
+
+    /** Calls prepare or commit on a participant using the executor. */
+    private final class ParticipantCall implements Callable<Void> {
+
+	/** The participant. */
+	final TransactionParticipant participant;
+
+	/** Whether to call prepare, rather than commit. */
+	private final boolean prepare;
+
+	/** The future for the call. */
+	Future<Void> future;
+
+	/** The result of prepare, if it returned normally. */
+	boolean readOnly;
+
+	/** The time in milliseconds that the call took. */
+	long time;
+
+	/** The exception thrown by the call, or null. */
+	Exception exception;
+
+	ParticipantCall(TransactionParticipant participant, boolean prepare) {
+	    this.participant = participant;
+	    this.prepare = prepare;
+	}
+
+	public Void call() {
+	    long startTime = System.currentTimeMillis();
+	    try {
+		if (prepare) {
+		    readOnly = participant.prepare(TransactionImpl.this);
+		} else {
+		    participant.commit(TransactionImpl.this);
+		}
+	    } catch (Exception e) {
+		exception = e;
+	    }
+	    time = System.currentTimeMillis() - startTime;
+	    return null;
+	}
+    }
+
     /** Returns a byte array that represents the specified long. */
     private byte[] longToBytes(long l) {
 	return new byte[] {
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.impl.service.watchdog;
+
+import java.io.Serializable;
+
+/**
+ * A snapshot of the load on a single node, sent to the watchdog server
+ * along with each {@link WatchdogServer#renewNode renewNode} request.
+ * Instances of this class are immutable.
+ */
+public final class NodeLoad implements Serializable {
+
+    /** The serialVersionUID of this class. */
+    private static final long serialVersionUID = 1L;
+
+    /** The number of tasks waiting to be run by the scheduler. */
+    private final int readyCount;
+
+    /** The number of client sessions connected to the node. */
+    private final int sessionCount;
+
+    /**
+     * The smoothed average latency, in milliseconds, of successful
+     * transactions, or {@code 0} if not known.
+     */
+    private final double commitLatency;
+
+    /**
+     * Creates an instance with the specified load values.
+     *
+     * @param	readyCount the number of tasks ready to run
+     * @param	sessionCount the number of connected client sessions
+     * @param	commitLatency the average latency, in milliseconds, of
+     *		successful transactions, or {@code 0} if not known
+     * @throws	IllegalArgumentException if any of the values are negative
+     */
+    public NodeLoad(int readyCount, int sessionCount, double commitLatency) {
+	if (readyCount < 0 || sessionCount < 0 || commitLatency < 0) {
+	    throw new IllegalArgumentException("negative load value");
+	}
+	this.readyCount = readyCount;
+	this.sessionCount = sessionCount;
+	this.commitLatency = commitLatency;
+    }
+
+    /**
+     * Returns the number of tasks that were ready to run on the node.
+     *
+     * @return	the number of tasks ready to run
+     */
+    public int getReadyCount() {
+	return readyCount;
+    }
+
+    /**
+     * Returns the number of client sessions connected to the node.
+     *
+     * @return	the number of connected client sessions
+     */
+    public int getSessionCount() {
+	return sessionCount;
+    }
+
+    /**
+     * Returns the smoothed average latency, in milliseconds, of
+     * successful transactions run on the node, or {@code 0} if the
+     * latency is not being measured.
+     *
+     * @return	the average transaction latency in milliseconds
+     */
+    public double getCommitLatency() {
+	return commitLatency;
+    }
+
+    /** {@inheritDoc} */
+    public String toString() {
+	return "NodeLoad[readyCount:" + readyCount +
+	    ", sessionCount:" + sessionCount +
+	    ", commitLatency:" + commitLatency + "]";
+    }
+}
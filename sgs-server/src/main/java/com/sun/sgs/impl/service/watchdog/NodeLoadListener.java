@@ -0,0 +1,48 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.impl.service.watchdog;
+
+/**
+ * A listener that is notified by the {@link WatchdogServerImpl} when a
+ * node reports its load.
+ *
+ * @see WatchdogServerImpl#addNodeLoadListener
+ */
+public interface NodeLoadListener {
+
+    /**
+     * Notifies this listener that the node with the specified {@code
+     * nodeId} has reported the specified {@code load}.  This method is
+     * called from the thread servicing the node's renew request, so
+     * implementations should return quickly and must not block.
+     *
+     * @param	nodeId the ID of the node reporting its load
+     * @param	load the load reported by the node
+     */
+    void nodeLoadUpdate(long nodeId, NodeLoad load);
+}
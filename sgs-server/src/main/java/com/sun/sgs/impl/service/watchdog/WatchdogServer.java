@@ -72,7 +72,13 @@ public interface WatchdogServer extends Remote {
      * for a given {@code nodeId}, the caller should not retry this
      * method because the node is considered to have failed.
      *
+     * <p>The {@code load} reported with each renew request is made
+     * available to any {@link NodeLoadListener}s registered with the
+     * server, for use in balancing work across nodes.
+     *
      * @param	nodeId	a node ID
+     * @param	load the current load on the node, or {@code null} if
+     *		the load is not known
      *
      * @return	{@code true} if the node is considered alive,
      *		{@code false} otherwise
@@ -80,7 +86,7 @@ public interface WatchdogServer extends Remote {
      * @throws	IOException if a communication problem occurs while
      * 		invoking this method
      */
-    boolean renewNode(long nodeId) throws IOException;
+    boolean renewNode(long nodeId, NodeLoad load) throws IOException;
 
     /**
      * Notifies this watchdog that the node with the specified {@code
@@ -229,6 +229,11 @@ public final class WatchdogServerImpl
     private final ConcurrentMap<Long, NodeImpl> recoveringNodes =
 	new ConcurrentHashMap<Long, NodeImpl>();
     
+    /** The set of listeners notified of node load reports. */
+    private final ConcurrentMap<NodeLoadListener, NodeLoadListener>
+	nodeLoadListeners =
+	    new ConcurrentHashMap<NodeLoadListener, NodeLoadListener>();
+
     /** A random number generator, for choosing backup nodes. */
     private final Random backupChooser = new Random();
     
@@ -532,7 +537,7 @@ public final class WatchdogServerImpl
     /**
      * {@inheritDoc}
      */
-    public boolean renewNode(long nodeId) {
+    public boolean renewNode(long nodeId, NodeLoad load) {
 	callStarted();
 
 	try {
@@ -546,9 +551,13 @@ public final class WatchdogServerImpl
 		expirationSet.remove(node);
 		node.setExpiration(calculateExpiration());
 		expirationSet.add(node);
-		return true;
 	    }
 
+	    if (load != null) {
+		notifyNodeLoadListeners(nodeId, load);
+	    }
+	    return true;
+
 	} finally {
 	    callFinished();
 	}
@@ -708,6 +717,34 @@ public final class WatchdogServerImpl
 	return aliveNodesToFail;
     }
 
+    /**
+     * Adds a listener to be notified of the load reported by each node
+     * when it renews with this server.
+     *
+     * @param	listener a node load listener
+     */
+    public void addNodeLoadListener(NodeLoadListener listener) {
+	Objects.checkNull("listener", listener);
+	nodeLoadListeners.putIfAbsent(listener, listener);
+    }
+
+    /**
+     * Notifies the registered node load listeners of the {@code load}
+     * reported by the node with the specified {@code nodeId}.
+     */
+    private void notifyNodeLoadListeners(long nodeId, NodeLoad load) {
+	for (NodeLoadListener listener : nodeLoadListeners.keySet()) {
+	    try {
+		listener.nodeLoadUpdate(nodeId, load);
+	    } catch (RuntimeException e) {
+		logger.logThrow(
+		    Level.WARNING, e,
+		    "Notifying node load listener:{0} of load for node:{1} " +
+		    "throws", listener, nodeId);
+	    }
+	}
+    }
+
     /**
      * Returns the port being used for this server.
      *
@@ -34,7 +34,9 @@ import com.sun.sgs.kernel.ComponentRegistry;
 import com.sun.sgs.kernel.NodeType;
 import com.sun.sgs.kernel.KernelRunnable;
 import com.sun.sgs.kernel.RecurringTaskHandle;
+import com.sun.sgs.management.ClientSessionServiceMXBean;
 import com.sun.sgs.management.NodeInfo;
+import com.sun.sgs.management.TaskAggregateMXBean;
 import com.sun.sgs.profile.ProfileCollector;
 import com.sun.sgs.service.Node;
 import com.sun.sgs.service.Node.Health;
@@ -277,6 +279,9 @@ public final class WatchdogServiceImpl
     /** Our profiled data */
     private final WatchdogServiceStats serviceStats;
 
+    /** The profile collector, used to find the MXBeans reporting load. */
+    private final ProfileCollector collector;
+
     /** The interval between synchronizations of global time with the server. */
     private final long timesyncInterval;
 
@@ -387,8 +392,7 @@ public final class WatchdogServiceImpl
                     1000, Long.MAX_VALUE);
 
             // create our profiling info and register our MBean
-            ProfileCollector collector = 
-                systemRegistry.getComponent(ProfileCollector.class);
+            collector = systemRegistry.getComponent(ProfileCollector.class);
             serviceStats = new WatchdogServiceStats(collector, this);
             try {
                 collector.registerMBean(serviceStats, 
@@ -789,7 +793,7 @@ public final class WatchdogServiceImpl
 
 		boolean renewed = false;
 		try {
-    		    if (!serverProxy.renewNode(localNodeId)) {
+    		    if (!serverProxy.renewNode(localNodeId, getLocalLoad())) {
                         // server has already marked node as failed, so we can
                         // go directly to removing this node
                         setFailedThenNotify();
@@ -833,6 +837,58 @@ public final class WatchdogServiceImpl
     public WatchdogServerImpl getServer() {
 	return serverImpl;
     }
+
+    /**
+     * Adds a listener to be notified of the load reported by each node
+     * when it renews with the watchdog server.  Load reports are only
+     * available on the node running the watchdog server.
+     *
+     * @param	listener a node load listener
+     * @throws	IllegalStateException if the watchdog server is not running
+     *		on this node
+     */
+    public void addNodeLoadListener(NodeLoadListener listener) {
+	checkState();
+	if (serverImpl == null) {
+	    throw new IllegalStateException(
+		"watchdog server is not running on this node");
+	}
+	serverImpl.addNodeLoadListener(listener);
+    }
+
+    /**
+     * Returns the current load on this node, to be reported to the
+     * watchdog server.  The session count and transaction latency are
+     * obtained from the MXBeans registered with the profile collector,
+     * and are reported as {@code 0} if those MXBeans are not (yet)
+     * available.
+     *
+     * @return	the current load on this node
+     */
+    private NodeLoad getLocalLoad() {
+	int sessionCount = 0;
+	double commitLatency = 0;
+	if (collector != null) {
+	    Object sessionBean = collector.getRegisteredMBean(
+		ClientSessionServiceMXBean.MXBEAN_NAME);
+	    if (sessionBean instanceof ClientSessionServiceMXBean) {
+		sessionCount = ((ClientSessionServiceMXBean) sessionBean).
+		    getNumSessions();
+	    }
+	    Object taskBean = collector.getRegisteredMBean(
+		TaskAggregateMXBean.MXBEAN_NAME);
+	    if (taskBean instanceof TaskAggregateMXBean) {
+		double latency = ((TaskAggregateMXBean) taskBean).
+		    getSuccessfulLatencyAvg();
+		// The average is not a number until a task has been sampled
+		if (latency > 0) {
+		    commitLatency = latency;
+		}
+	    }
+	}
+	return new NodeLoad(transactionScheduler.getReadyCount(),
+			    Math.max(sessionCount, 0), commitLatency);
+    }
     
     /**
      * Throws {@code IllegalStateException} if this service is shutting down.
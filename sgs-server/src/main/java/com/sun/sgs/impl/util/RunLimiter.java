@@ -0,0 +1,193 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.impl.util;
+
+import static com.sun.sgs.impl.sharedutil.Objects.checkNull;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the number of threads that run at the same time, independently of
+ * the number of threads that have work in progress.  A thread calls {@link
+ * #enter enter} before running a task and {@link #exit exit} when the task is
+ * done.  Code that may block for a long time, such as waiting for a lock or
+ * for a reply from a remote server, should call {@link #beginBlocking
+ * beginBlocking} before blocking and {@link #endBlocking endBlocking}
+ * afterwards, so that another thread can run in the meantime. <p>
+ *
+ * This arrangement lets a scheduler use many more threads than it allows to
+ * run at once, so that tasks that are blocked do not prevent other tasks from
+ * running.  Tasks always stay on the thread that started them, so state kept
+ * in thread locals remains correct.  The blocking methods are static, and do
+ * nothing when called from a thread that has not entered a limiter, so they
+ * can be used by code that does not know which scheduler, if any, is running
+ * it.
+ */
+public final class RunLimiter {
+
+    /** The limiter that the current thread has entered, if any. */
+    private static final ThreadLocal<RunLimiter> currentLimiter =
+	new ThreadLocal<RunLimiter>();
+
+    /** The maximum number of threads that may run at once. */
+    private final int maxRunning;
+
+    /** The permits for running threads. */
+    private final Semaphore permits;
+
+    /**
+     * Creates an instance of this class.
+     *
+     * @param	maxRunning the maximum number of threads that may run at once
+     * @throws	IllegalArgumentException if {@code maxRunning} is less than
+     *		{@code 1}
+     */
+    public RunLimiter(int maxRunning) {
+	if (maxRunning < 1) {
+	    throw new IllegalArgumentException(
+		"The maxRunning must not be less than 1");
+	}
+	this.maxRunning = maxRunning;
+	permits = new Semaphore(maxRunning, true);
+    }
+
+    /**
+     * Waits until the current thread may run, and then notes that it is
+     * running.  Waiting is not interrupted, but the interrupt status of the
+     * thread is preserved.
+     *
+     * @throws	IllegalStateException if the current thread has already
+     *		entered a limiter
+     */
+    public void enter() {
+	if (currentLimiter.get() != null) {
+	    throw new IllegalStateException("Thread has already entered");
+	}
+	permits.acquireUninterruptibly();
+	currentLimiter.set(this);
+    }
+
+    /**
+     * Notes that the current thread is no longer running.
+     *
+     * @throws	IllegalStateException if the current thread has not entered
+     *		this limiter
+     */
+    public void exit() {
+	if (currentLimiter.get() != this) {
+	    throw new IllegalStateException("Thread has not entered");
+	}
+	currentLimiter.remove();
+	permits.release();
+    }
+
+    /**
+     * Returns the maximum number of threads that may run at once.
+     *
+     * @return	the maximum number of running threads
+     */
+    public int getMaxRunning() {
+	return maxRunning;
+    }
+
+    /**
+     * Returns the number of threads that are currently running.
+     *
+     * @return	the number of running threads
+     */
+    public int getRunningCount() {
+	return maxRunning - permits.availablePermits();
+    }
+
+    /**
+     * Notes that the current thread is about to block, allowing another
+     * thread to run.  The caller must pass the return value to {@link
+     * #endBlocking endBlocking} when it is done blocking, and should not hold
+     * any locks that a running thread might need while it calls that method.
+     *
+     * @return	the limiter that the current thread had entered, or {@code
+     *		null} if it had not entered one
+     */
+    public static RunLimiter beginBlocking() {
+	RunLimiter limiter = currentLimiter.get();
+	if (limiter != null) {
+	    currentLimiter.remove();
+	    limiter.permits.release();
+	}
+	return limiter;
+    }
+
+    /**
+     * Notes that the current thread is done blocking, waiting until it may
+     * run again.  Waiting is not interrupted, but the interrupt status of the
+     * thread is preserved.
+     *
+     * @param	limiter the value returned by the matching call to {@link
+     *		#beginBlocking beginBlocking}, which may be {@code null}
+     */
+    public static void endBlocking(RunLimiter limiter) {
+	if (limiter != null) {
+	    limiter.enter();
+	}
+    }
+
+    /**
+     * Returns an object that implements the specified interface by calling
+     * the methods of {@code target}, treating each call as blocking.  This
+     * method is useful for wrapping objects whose methods make remote calls.
+     *
+     * @param	<T> the type of the interface
+     * @param	type the interface
+     * @param	target the object to call
+     * @return	the wrapped object
+     */
+    public static <T> T blockingProxy(Class<T> type, final T target) {
+	checkNull("target", target);
+	return type.cast(
+	    Proxy.newProxyInstance(
+		type.getClassLoader(), new Class<?>[] { type },
+		new InvocationHandler() {
+		    public Object invoke(
+			Object proxy, Method method, Object[] args)
+			throws Throwable
+		    {
+			RunLimiter limiter = beginBlocking();
+			try {
+			    return method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+			    throw e.getCause();
+			} finally {
+			    endBlocking(limiter);
+			}
+		    }
+		}));
+    }
+}
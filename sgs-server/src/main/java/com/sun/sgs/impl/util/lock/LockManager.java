@@ -29,6 +29,7 @@ package com.sun.sgs.impl.util.lock;
 
 import com.sun.sgs.impl.sharedutil.LoggerWrapper;
 import static com.sun.sgs.impl.sharedutil.Objects.uncheckedCast;
+import com.sun.sgs.impl.util.RunLimiter;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -437,6 +438,12 @@ public class LockManager<K> {
      */
     LockConflict<K> waitForLockInternal(Locker<K> locker) {
 	logger.log(FINEST, "wait for lock {0}", locker);
+	/*
+	 * Let another thread run while this one waits.  The turn to run is
+	 * reclaimed after the locker's monitor is released, so that a thread
+	 * waiting for a turn never holds a monitor other threads need.
+	 */
+	RunLimiter limiter = RunLimiter.beginBlocking();
 	try {
 	    assert noteLockerSync(locker);
 	    try {
@@ -557,6 +564,8 @@ public class LockManager<K> {
 	} catch (Error e) {
 	    logger.logThrow(FINER, e, "wait for lock {0} throws", locker);
 	    throw e;
+	} finally {
+	    RunLimiter.endBlocking(limiter);
 	}
     }
 
@@ -27,6 +27,7 @@ import com.sun.sgs.auth.Identity;
 
 import com.sun.sgs.kernel.KernelRunnable;
 import com.sun.sgs.kernel.NodeType;
+import com.sun.sgs.kernel.ReadOnlyKernelRunnable;
 import com.sun.sgs.kernel.TaskQueue;
 import com.sun.sgs.kernel.TransactionScheduler;
 import com.sun.sgs.kernel.schedule.ScheduledTask;
@@ -138,6 +139,34 @@ public class TestTransactionSchedulerImpl {
             }, taskOwner);
     }
 
+    @Test public void runTaskReadOnly() throws Exception {
+        final TransactionProxy proxy = serverNode.getProxy();
+        txnScheduler.runTask(new ReadOnlyTestRunnable() {
+                public void run() throws Exception {
+                    assertTrue(proxy.getCurrentTransaction().isReadOnly());
+                }
+            }, taskOwner);
+        txnScheduler.runTask(new TestAbstractKernelRunnable() {
+                public void run() throws Exception {
+                    assertFalse(proxy.getCurrentTransaction().isReadOnly());
+                }
+            }, taskOwner);
+    }
+
+    @Test public void scheduleTaskReadOnly() throws Exception {
+        final TransactionProxy proxy = serverNode.getProxy();
+        final AtomicInteger readOnlyRuns = new AtomicInteger();
+        txnScheduler.scheduleTask(new ReadOnlyTestRunnable() {
+                public void run() throws Exception {
+                    if (proxy.getCurrentTransaction().isReadOnly()) {
+                        readOnlyRuns.incrementAndGet();
+                    }
+                }
+            }, taskOwner);
+        Thread.sleep(500L);
+        assertEquals(1, readOnlyRuns.get());
+    }
+
     @Test public void runTransactionInTransaction() throws Exception {
         final TransactionProxy proxy = serverNode.getProxy();
         KernelRunnable task = new TestAbstractKernelRunnable() {
@@ -391,6 +420,12 @@ public class TestTransactionSchedulerImpl {
         }
     }
 
+    /** A kernel runnable that is run in a read-only transaction. */
+    private abstract static class ReadOnlyTestRunnable
+        extends TestAbstractKernelRunnable
+        implements ReadOnlyKernelRunnable
+    { }
+
     private class RunCountTestRunner implements KernelRunnable {
         private int runCount;
         RunCountTestRunner(int initialCount) {
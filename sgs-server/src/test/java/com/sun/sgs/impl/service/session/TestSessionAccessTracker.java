@@ -0,0 +1,314 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.impl.service.session;
+
+import com.sun.sgs.auth.Identity;
+import com.sun.sgs.impl.service.data.store.AbstractDataStore;
+import com.sun.sgs.kernel.AccessedObject;
+import com.sun.sgs.kernel.AccessReporter.AccessType;
+import com.sun.sgs.kernel.KernelRunnable;
+import com.sun.sgs.profile.AccessedObjectsDetail;
+import com.sun.sgs.profile.ProfileReport;
+import com.sun.sgs.test.util.DummyIdentity;
+import com.sun.sgs.test.util.UtilReflection;
+import com.sun.sgs.tools.test.FilteredNameRunner;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests the {@link SessionAccessTracker} class. */
+@RunWith(FilteredNameRunner.class)
+public class TestSessionAccessTracker extends Assert {
+
+    /** The source of object accesses reported by the data store. */
+    private static final String OBJECT_SOURCE =
+	"TestSessionAccessTracker" +
+	AbstractDataStore.OBJECT_ACCESS_SOURCE_SUFFIX;
+
+    /** The source of name binding accesses. */
+    private static final String BINDING_SOURCE =
+	"TestSessionAccessTracker.names";
+
+    /** The ProfileReportImpl constructor. */
+    private static final Constructor<?> profileReportImplConstructor;
+
+    /** The ProfileReportImpl.setAccessedObjectsDetail method. */
+    private static final Method setAccessedObjectsDetailMethod;
+
+    static {
+	Class<?> profileReportImplClass = UtilReflection.getClass(
+	    "com.sun.sgs.impl.profile.ProfileReportImpl");
+	profileReportImplConstructor = UtilReflection.getConstructor(
+	    profileReportImplClass, KernelRunnable.class, Identity.class,
+	    long.class, int.class);
+	setAccessedObjectsDetailMethod = UtilReflection.getMethod(
+	    profileReportImplClass, "setAccessedObjectsDetail",
+	    AccessedObjectsDetail.class);
+    }
+
+    private final Identity identity = new DummyIdentity("session");
+
+    private final Identity otherIdentity = new DummyIdentity("other");
+
+    /* -- Test constructor -- */
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorZeroCapacity() {
+	new SessionAccessTracker(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorNegativeCapacity() {
+	new SessionAccessTracker(-1);
+    }
+
+    /* -- Test report -- */
+
+    @Test
+    public void testUntrackedIdentity() throws Exception {
+	SessionAccessTracker tracker = new SessionAccessTracker(4);
+	tracker.report(makeReport(identity, 1L, 2L));
+	assertIds(tracker.getRecentObjectIds(identity));
+    }
+
+    @Test
+    public void testNullOwner() throws Exception {
+	SessionAccessTracker tracker = new SessionAccessTracker(4);
+	tracker.track(identity);
+	tracker.report(makeReport(null, 1L, 2L));
+	assertIds(tracker.getRecentObjectIds(identity));
+    }
+
+    @Test
+    public void testNoDetail() throws Exception {
+	SessionAccessTracker tracker = new SessionAccessTracker(4);
+	tracker.track(identity);
+	tracker.report(makeReport(identity));
+	assertIds(tracker.getRecentObjectIds(identity));
+    }
+
+    @Test
+    public void testRecordsObjectIds() throws Exception {
+	SessionAccessTracker tracker = new SessionAccessTracker(4);
+	tracker.track(identity);
+	tracker.report(makeReport(identity, 3L, 1L, 2L));
+	assertIds(tracker.getRecentObjectIds(identity), 3, 1, 2);
+    }
+
+    @Test
+    public void testIgnoresOtherAccesses() throws Exception {
+	SessionAccessTracker tracker = new SessionAccessTracker(4);
+	tracker.track(identity);
+	AccessedObjectsDetailImpl detail = new AccessedObjectsDetailImpl();
+	detail.add(BINDING_SOURCE, 7L);
+	detail.add(BINDING_SOURCE, "name");
+	detail.add(OBJECT_SOURCE, "notALong");
+	detail.add(OBJECT_SOURCE, 8L);
+	tracker.report(makeReport(identity, detail));
+	assertIds(tracker.getRecentObjectIds(identity), 8);
+    }
+
+    @Test
+    public void testSeparateIdentities() throws Exception {
+	SessionAccessTracker tracker = new SessionAccessTracker(4);
+	tracker.track(identity);
+	tracker.track(otherIdentity);
+	tracker.report(makeReport(identity, 1L, 2L));
+	tracker.report(makeReport(otherIdentity, 3L));
+	assertIds(tracker.getRecentObjectIds(identity), 1, 2);
+	assertIds(tracker.getRecentObjectIds(otherIdentity), 3);
+    }
+
+    @Test
+    public void testRepeatedAccessRecordedOnce() throws Exception {
+	SessionAccessTracker tracker = new SessionAccessTracker(4);
+	tracker.track(identity);
+	tracker.report(makeReport(identity, 1L, 2L, 1L));
+	assertIds(tracker.getRecentObjectIds(identity), 2, 1);
+    }
+
+    /* -- Test capacity and eviction -- */
+
+    @Test
+    public void testCapacityBound() throws Exception {
+	SessionAccessTracker tracker = new SessionAccessTracker(3);
+	tracker.track(identity);
+	tracker.report(makeReport(identity, 1L, 2L, 3L, 4L, 5L));
+	assertIds(tracker.getRecentObjectIds(identity), 3, 4, 5);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyAccessed() throws Exception {
+	SessionAccessTracker tracker = new SessionAccessTracker(3);
+	tracker.track(identity);
+	tracker.report(makeReport(identity, 1L, 2L, 3L));
+	/* Accessing 1 again makes 2 the least recently accessed */
+	tracker.report(makeReport(identity, 1L));
+	tracker.report(makeReport(identity, 4L));
+	assertIds(tracker.getRecentObjectIds(identity), 3, 1, 4);
+    }
+
+    @Test
+    public void testCapacityOne() throws Exception {
+	SessionAccessTracker tracker = new SessionAccessTracker(1);
+	tracker.track(identity);
+	tracker.report(makeReport(identity, 1L, 2L));
+	assertIds(tracker.getRecentObjectIds(identity), 2);
+    }
+
+    /* -- Test track, untrack, and shutdown -- */
+
+    @Test
+    public void testTrackAgainKeepsIds() throws Exception {
+	SessionAccessTracker tracker = new SessionAccessTracker(4);
+	tracker.track(identity);
+	tracker.report(makeReport(identity, 1L));
+	tracker.track(identity);
+	assertIds(tracker.getRecentObjectIds(identity), 1);
+    }
+
+    @Test
+    public void testUntrack() throws Exception {
+	SessionAccessTracker tracker = new SessionAccessTracker(4);
+	tracker.track(identity);
+	tracker.report(makeReport(identity, 1L));
+	tracker.untrack(identity);
+	assertIds(tracker.getRecentObjectIds(identity));
+	tracker.report(makeReport(identity, 2L));
+	assertIds(tracker.getRecentObjectIds(identity));
+	tracker.track(identity);
+	assertIds(tracker.getRecentObjectIds(identity));
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+	SessionAccessTracker tracker = new SessionAccessTracker(4);
+	tracker.track(identity);
+	tracker.report(makeReport(identity, 1L));
+	tracker.shutdown();
+	assertIds(tracker.getRecentObjectIds(identity));
+    }
+
+    /* -- Other methods and classes -- */
+
+    /** Checks that the object IDs match the expected ones, in order. */
+    private static void assertIds(long[] actual, long... expected) {
+	assertTrue("Expected " + Arrays.toString(expected) +
+		   ", found " + Arrays.toString(actual),
+		   Arrays.equals(expected, actual));
+    }
+
+    /**
+     * Creates a profile report for the specified owner with accesses to
+     * the specified object IDs, or no detail if none are specified.
+     */
+    private static ProfileReport makeReport(Identity owner, Long... oids)
+	throws Exception
+    {
+	if (oids.length == 0) {
+	    return (ProfileReport) profileReportImplConstructor.newInstance(
+		null, owner, System.currentTimeMillis(), 1);
+	}
+	AccessedObjectsDetailImpl detail = new AccessedObjectsDetailImpl();
+	for (Long oid : oids) {
+	    detail.add(OBJECT_SOURCE, oid);
+	}
+	return makeReport(owner, detail);
+    }
+
+    /**
+     * Creates a profile report for the specified owner with the specified
+     * accessed objects detail.
+     */
+    private static ProfileReport makeReport(
+	Identity owner, AccessedObjectsDetail detail)
+	throws Exception
+    {
+	ProfileReport report =
+	    (ProfileReport) profileReportImplConstructor.newInstance(
+		null, owner, System.currentTimeMillis(), 1);
+	setAccessedObjectsDetailMethod.invoke(report, detail);
+	return report;
+    }
+
+    /** An accessed objects detail that only supports getting accesses. */
+    private static class AccessedObjectsDetailImpl
+	implements AccessedObjectsDetail
+    {
+	private final List<AccessedObject> accesses =
+	    new ArrayList<AccessedObject>();
+
+	void add(String source, Object objectId) {
+	    accesses.add(new AccessedObjectImpl(source, objectId));
+	}
+
+	public List<AccessedObject> getAccessedObjects() {
+	    return accesses;
+	}
+
+	public ConflictType getConflictType() {
+	    return ConflictType.NONE;
+	}
+
+	public byte[] getConflictingId() {
+	    return null;
+	}
+    }
+
+    /** An accessed object with a source and an object ID. */
+    private static class AccessedObjectImpl implements AccessedObject {
+	private final String source;
+	private final Object objectId;
+
+	AccessedObjectImpl(String source, Object objectId) {
+	    this.source = source;
+	    this.objectId = objectId;
+	}
+
+	public Object getObjectId() {
+	    return objectId;
+	}
+
+	public AccessType getAccessType() {
+	    return AccessType.READ;
+	}
+
+	public Object getDescription() {
+	    return null;
+	}
+
+	public String getSource() {
+	    return source;
+	}
+    }
+}
@@ -26,25 +26,21 @@ import com.sun.sgs.app.Task;
 import com.sun.sgs.app.util.ScalableHashMap;
 import static com.sun.sgs.test.util.UtilReflection.getField;
 import java.io.Serializable;
-import java.lang.reflect.Field;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A runnable that can be used to count the completions of asynchronous
- * removals from ScalableHashMap.
+ * removals from ScalableHashMap, or from other classes that provide a
+ * noteDoneRemoving field.
  */
 class DoneRemoving implements Runnable {
 
-    /** The ScalableHashMap.noteDoneRemoving field. */
-    private static Field noteDoneRemoving =
-	getField(ScalableHashMap.class, "noteDoneRemoving");
-
     /** The number of milliseconds to wait for the removal to complete. */
     private static final long WAIT = 5000;
 
-    /** The runnable that ScalableHashMap should notify of completions. */
+    /** The runnable that the class should notify of completions. */
     private static final DoneRemoving INSTANCE = new DoneRemoving();
 
     /**
@@ -78,9 +74,18 @@ class DoneRemoving implements Runnable {
      * Make sure the ScalableHashMap will notify us of removal completions, and
      * clear the count.
      */
-    static synchronized void init() {
+    static void init() {
+	init(ScalableHashMap.class);
+    }
+
+    /**
+     * Make sure the specified class will notify us of removal completions,
+     * and clear the count.  The class should have a static field named
+     * noteDoneRemoving of type Runnable.
+     */
+    static synchronized void init(Class<?> cl) {
 	try {
-	    noteDoneRemoving.set(null, INSTANCE);
+	    getField(cl, "noteDoneRemoving").set(null, INSTANCE);
 	} catch (Exception e) {
 	    throw new RuntimeException(e.getMessage(), e);
 	}
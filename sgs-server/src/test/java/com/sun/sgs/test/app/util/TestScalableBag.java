@@ -0,0 +1,239 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.test.app.util;
+
+import com.sun.sgs.app.util.ScalableBag;
+import com.sun.sgs.auth.Identity;
+import static com.sun.sgs.impl.sharedutil.Objects.uncheckedCast;
+import com.sun.sgs.kernel.TransactionScheduler;
+import com.sun.sgs.service.DataService;
+import com.sun.sgs.test.util.SgsTestNode;
+import com.sun.sgs.test.util.TestAbstractKernelRunnable;
+import com.sun.sgs.tools.test.FilteredNameRunner;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Test the {@link ScalableBag} class. */
+@RunWith(FilteredNameRunner.class)
+public class TestScalableBag extends Assert {
+
+    private static SgsTestNode serverNode;
+    private static TransactionScheduler txnScheduler;
+    private static Identity taskOwner;
+    private static DataService dataService;
+
+    /** Setup */
+    @BeforeClass public static void setUpClass() throws Exception {
+	serverNode = new SgsTestNode("TestScalableBag", null, null);
+        txnScheduler = serverNode.getSystemRegistry().
+            getComponent(TransactionScheduler.class);
+        taskOwner = serverNode.getProxy().getCurrentOwner();
+        dataService = serverNode.getDataService();
+    }
+
+    /** Teardown. */
+    @AfterClass public static void tearDownClass() throws Exception {
+        serverNode.shutdown(true);
+    }
+
+    /* -- Tests -- */
+
+    @Test public void testConstructorIllegalArgument() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() {
+		    try {
+			new ScalableBag<Integer>(0);
+			fail("Expected IllegalArgumentException");
+		    } catch (IllegalArgumentException e) {
+			System.err.println(e);
+		    }
+		}
+	    }, taskOwner);
+    }
+
+    @Test public void testCopyConstructor() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() {
+		    try {
+			new ScalableBag<Integer>(null);
+			fail("Expected NullPointerException");
+		    } catch (NullPointerException e) {
+			System.err.println(e);
+		    }
+		    ScalableBag<Integer> bag =
+			new ScalableBag<Integer>(Arrays.asList(1, 2, 3));
+		    assertEquals(3, bag.size());
+		    assertEquals(Arrays.asList(1, 2, 3), sorted(bag));
+		    dataService.removeObject(bag);
+		}
+	    }, taskOwner);
+    }
+
+    @Test public void testOfferPoll() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() {
+		    ScalableBag<Integer> bag = new ScalableBag<Integer>(4);
+		    assertTrue(bag.isEmpty());
+		    assertNull(bag.poll());
+		    assertNull(bag.peek());
+		    for (int i = 0; i < 20; i++) {
+			assertTrue(bag.offer(i));
+		    }
+		    assertFalse(bag.isEmpty());
+		    assertEquals(20, bag.size());
+		    assertTrue(bag.contains(7));
+		    assertFalse(bag.contains(20));
+		    List<Integer> removed = new ArrayList<Integer>();
+		    Integer next;
+		    while ((next = bag.poll()) != null) {
+			removed.add(next);
+		    }
+		    Collections.sort(removed);
+		    assertEquals(20, removed.size());
+		    for (int i = 0; i < 20; i++) {
+			assertEquals(Integer.valueOf(i), removed.get(i));
+		    }
+		    assertTrue(bag.isEmpty());
+		    assertEquals(0, bag.size());
+		    dataService.removeObject(bag);
+		}
+	    }, taskOwner);
+    }
+
+    @Test public void testOfferPollHint() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() {
+		    ScalableBag<Integer> bag = new ScalableBag<Integer>(8);
+		    for (int i = 0; i < 10; i++) {
+			bag.offer(i, "player");
+		    }
+		    for (int i = 0; i < 10; i++) {
+			assertEquals(Integer.valueOf(i), bag.poll("player"));
+		    }
+		    assertNull(bag.poll("player"));
+		    try {
+			bag.offer(1, null);
+			fail("Expected NullPointerException");
+		    } catch (NullPointerException e) {
+			System.err.println(e);
+		    }
+		    try {
+			bag.poll(null);
+			fail("Expected NullPointerException");
+		    } catch (NullPointerException e) {
+			System.err.println(e);
+		    }
+		    try {
+			bag.offer(null);
+			fail("Expected NullPointerException");
+		    } catch (NullPointerException e) {
+			System.err.println(e);
+		    }
+		    dataService.removeObject(bag);
+		}
+	    }, taskOwner);
+    }
+
+    @Test public void testRemoveAndClear() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() {
+		    ScalableBag<Integer> bag = new ScalableBag<Integer>(3);
+		    for (int i = 0; i < 10; i++) {
+			bag.offer(i, i);
+		    }
+		    assertTrue(bag.remove(4));
+		    assertFalse(bag.remove(4));
+		    assertEquals(9, bag.size());
+		    bag.clear();
+		    assertTrue(bag.isEmpty());
+		    assertEquals(0, bag.size());
+		    dataService.removeObject(bag);
+		}
+	    }, taskOwner);
+    }
+
+    @Test public void testIterator() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() {
+		    ScalableBag<Integer> bag = new ScalableBag<Integer>(4);
+		    for (int i = 0; i < 12; i++) {
+			bag.offer(i, i);
+		    }
+		    dataService.setBinding("bag", bag);
+		    assertEquals(12, sorted(bag).size());
+		    Iterator<Integer> iter = bag.iterator();
+		    try {
+			iter.remove();
+			fail("Expected IllegalStateException");
+		    } catch (IllegalStateException e) {
+			System.err.println(e);
+		    }
+		    while (iter.hasNext()) {
+			if (iter.next() % 2 == 0) {
+			    iter.remove();
+			}
+		    }
+		    assertEquals(6, bag.size());
+		    assertEquals(Arrays.asList(1, 3, 5, 7, 9, 11), sorted(bag));
+		}
+	    }, taskOwner);
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() {
+		    ScalableBag<Integer> bag =
+			uncheckedCast(dataService.getBinding("bag"));
+		    assertEquals(Arrays.asList(1, 3, 5, 7, 9, 11), sorted(bag));
+		    dataService.removeObject(bag);
+		    dataService.removeBinding("bag");
+		}
+	    }, taskOwner);
+    }
+
+    /* -- Utilities -- */
+
+    /** Returns the elements of the bag in sorted order. */
+    private static List<Integer> sorted(ScalableBag<Integer> bag) {
+	List<Integer> list = new ArrayList<Integer>(bag);
+	Collections.sort(list);
+	return list;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.test.app.util;
+
+import com.sun.sgs.app.util.ScalableBag;
+import com.sun.sgs.app.util.ScalableDeque;
+import com.sun.sgs.auth.Identity;
+import static com.sun.sgs.impl.sharedutil.Objects.uncheckedCast;
+import com.sun.sgs.kernel.TransactionScheduler;
+import com.sun.sgs.service.DataService;
+import com.sun.sgs.test.util.SgsTestNode;
+import com.sun.sgs.test.util.TestAbstractKernelRunnable;
+import com.sun.sgs.tools.test.FilteredNameRunner;
+import com.sun.sgs.tools.test.IntegrationTest;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares the throughput of {@link ScalableBag} and {@link ScalableDeque}
+ * when used as a work queue by many concurrent tasks.  Each task removes an
+ * element from the queue and adds it back, as a worker that takes a job and
+ * schedules a follow-on job would.
+ */
+@IntegrationTest
+@RunWith(FilteredNameRunner.class)
+public class TestScalableBagThroughput extends Assert {
+
+    /** The number of transactions to run in each thread. */
+    private static final int transactions =
+	Integer.getInteger("test.transactions", 200);
+
+    /** The initial number of concurrent threads. */
+    private static final int threads = Integer.getInteger("test.threads", 8);
+
+    /** The maximum number of concurrent threads. */
+    private static final int maxThreads =
+	Integer.getInteger("test.max.threads", 64);
+
+    /** The number of elements to place in the queue before starting. */
+    private static final int elements =
+	Integer.getInteger("test.elements", 256);
+
+    /** The number of lanes for the bag. */
+    private static final int lanes = Integer.getInteger("test.lanes", 16);
+
+    private SgsTestNode serverNode;
+    private TransactionScheduler txnScheduler;
+    private Identity taskOwner;
+    private DataService dataService;
+
+    /**
+     * The exception thrown by one of the threads, or null if none of the
+     * threads have failed.
+     */
+    private Throwable failure;
+
+    /** The number of threads that are done. */
+    private int done;
+
+    /** Prints the test parameters and sets up the server. */
+    @Before public void setUp() throws Exception {
+	System.err.println(
+	    "Parameters:" +
+	    "\n  test.transactions=" + transactions +
+	    "\n  test.threads=" + threads +
+	    "\n  test.max.threads=" + maxThreads +
+	    "\n  test.elements=" + elements +
+	    "\n  test.lanes=" + lanes);
+	Properties props = SgsTestNode.getDefaultProperties(
+	    "TestScalableBagThroughput", null, null);
+	props.setProperty("com.sun.sgs.txn.timeout", "10000");
+	serverNode = new SgsTestNode("TestScalableBagThroughput", null, props);
+        txnScheduler = serverNode.getSystemRegistry().
+            getComponent(TransactionScheduler.class);
+        taskOwner = serverNode.getProxy().getCurrentOwner();
+        dataService = serverNode.getDataService();
+    }
+
+    /** Shuts down the server. */
+    @After public void tearDown() throws Exception {
+	if (serverNode != null) {
+	    serverNode.shutdown(true);
+	}
+    }
+
+    /* -- Tests -- */
+
+    @Test public void testThroughput() throws Throwable {
+	for (int i = threads; i <= maxThreads; i *= 2) {
+	    runQueue("ScalableDeque", new QueueFactory() {
+		public Queue<Integer> create() {
+		    return new ScalableDeque<Integer>();
+		}
+	    }, i);
+	    runQueue("ScalableBag", new QueueFactory() {
+		public Queue<Integer> create() {
+		    return new ScalableBag<Integer>(lanes);
+		}
+	    }, i);
+	}
+    }
+
+    /* -- Other methods and classes -- */
+
+    /** Creates the queue to test. */
+    private interface QueueFactory {
+	Queue<Integer> create();
+    }
+
+    /**
+     * Runs the work queue operations against a new queue in the specified
+     * number of threads, and prints the throughput.
+     */
+    private void runQueue(String name,
+			  final QueueFactory factory,
+			  int threads)
+	throws Throwable
+    {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() {
+		    Queue<Integer> queue = factory.create();
+		    for (int i = 0; i < elements; i++) {
+			queue.offer(i);
+		    }
+		    dataService.setBinding("queue", queue);
+		}
+	    }, taskOwner);
+	failure = null;
+	done = 0;
+	AtomicInteger attempts = new AtomicInteger();
+	long start = System.currentTimeMillis();
+	for (int i = 0; i < threads; i++) {
+	    new OperationThread(i, attempts);
+	}
+	synchronized (this) {
+	    while (failure == null && done < threads) {
+		wait();
+	    }
+	}
+	long stop = System.currentTimeMillis();
+	if (failure != null) {
+	    throw failure;
+	}
+	int commits = threads * transactions;
+	System.err.println(
+	    name + ": threads: " + threads + ", " +
+	    "time: " + (stop - start) + " ms, " +
+	    "retries: " + (attempts.get() - commits) + ", " +
+	    "txns/sec: " +
+	    Math.round((1000.0d * commits) / Math.max(1, stop - start)));
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() {
+		    Queue<Integer> queue =
+			uncheckedCast(dataService.getBinding("queue"));
+		    assertEquals(elements, queue.size());
+		    dataService.removeObject(queue);
+		    dataService.removeBinding("queue");
+		}
+	    }, taskOwner);
+    }
+
+    /** Notes that a thread has completed successfully. */
+    synchronized void threadDone() {
+	done++;
+	notifyAll();
+    }
+
+    /** Notes that a thread has failed with the specified exception. */
+    synchronized void threadFailed(Throwable failure) {
+	this.failure = failure;
+	notifyAll();
+    }
+
+    /** Removes and adds back queue elements in a separate thread. */
+    private class OperationThread extends Thread {
+	private final AtomicInteger attempts;
+
+	OperationThread(int id, AtomicInteger attempts) {
+	    super("OperationThread" + id);
+	    this.attempts = attempts;
+	    start();
+	}
+
+	public void run() {
+	    try {
+		for (int i = 0; i < transactions; i++) {
+		    txnScheduler.runTask(
+			new TestAbstractKernelRunnable() {
+			    public void run() {
+				attempts.incrementAndGet();
+				Queue<Integer> queue = uncheckedCast(
+				    dataService.getBinding("queue"));
+				Integer element = queue.poll();
+				assertNotNull(element);
+				queue.offer(element);
+			    }
+			}, taskOwner);
+		}
+		threadDone();
+	    } catch (Throwable t) {
+		threadFailed(t);
+	    }
+	}
+    }
+}
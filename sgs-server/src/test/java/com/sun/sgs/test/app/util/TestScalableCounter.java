@@ -0,0 +1,252 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.test.app.util;
+
+import com.sun.sgs.app.util.ScalableAccumulator;
+import com.sun.sgs.app.util.ScalableCounter;
+import com.sun.sgs.auth.Identity;
+import com.sun.sgs.kernel.TransactionScheduler;
+import com.sun.sgs.service.DataService;
+import com.sun.sgs.test.util.SgsTestNode;
+import com.sun.sgs.test.util.TestAbstractKernelRunnable;
+import static com.sun.sgs.test.util.UtilReflection.getMethod;
+import com.sun.sgs.tools.test.FilteredNameRunner;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Test the {@link ScalableCounter} and {@link ScalableAccumulator} classes.
+ */
+@RunWith(FilteredNameRunner.class)
+public class TestScalableCounter extends Assert {
+
+    /** The ScalableAccumulator.getStripeCount method. */
+    private static final Method getStripeCount =
+	getMethod(ScalableAccumulator.class, "getStripeCount");
+
+    private static SgsTestNode serverNode;
+    private static TransactionScheduler txnScheduler;
+    private static Identity taskOwner;
+    private static DataService dataService;
+
+    /** Setup */
+    @BeforeClass public static void setUpClass() throws Exception {
+	serverNode = new SgsTestNode("TestScalableCounter", null, null);
+        txnScheduler = serverNode.getSystemRegistry().
+            getComponent(TransactionScheduler.class);
+        taskOwner = serverNode.getProxy().getCurrentOwner();
+        dataService = serverNode.getDataService();
+    }
+
+    /** Teardown. */
+    @AfterClass public static void tearDownClass() throws Exception {
+        serverNode.shutdown(true);
+    }
+
+    /* -- Tests -- */
+
+    @Test public void testConstructorIllegalArguments() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() {
+		    try {
+			new ScalableCounter(0, 4);
+			fail("Expected IllegalArgumentException");
+		    } catch (IllegalArgumentException e) {
+			System.err.println(e);
+		    }
+		    try {
+			new ScalableCounter(4, 3);
+			fail("Expected IllegalArgumentException");
+		    } catch (IllegalArgumentException e) {
+			System.err.println(e);
+		    }
+		    try {
+			new ScalableAccumulator(null, 0);
+			fail("Expected NullPointerException");
+		    } catch (NullPointerException e) {
+			System.err.println(e);
+		    }
+		}
+	    }, taskOwner);
+    }
+
+    @Test public void testConstructor() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() throws Exception {
+		    ScalableCounter counter = new ScalableCounter();
+		    assertEquals(0, counter.get());
+		    assertEquals(0, counter.getApproximate());
+		    assertEquals(ScalableAccumulator.DEFAULT_INITIAL_STRIPES,
+				 getStripeCount.invoke(counter));
+		    counter = new ScalableCounter(3, 3);
+		    assertEquals(3, getStripeCount.invoke(counter));
+		    dataService.removeObject(counter);
+		}
+	    }, taskOwner);
+    }
+
+    @Test public void testAdd() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() {
+		    dataService.setBinding("counter", new ScalableCounter());
+		}
+	    }, taskOwner);
+	for (int i = 0; i < 10; i++) {
+	    final int n = i;
+	    txnScheduler.runTask(
+		new TestAbstractKernelRunnable() {
+		    public void run() {
+			ScalableCounter counter =
+			    (ScalableCounter) dataService.getBinding("counter");
+			counter.increment();
+			counter.add(n);
+			counter.add(2, "hint" + n);
+			counter.decrement();
+		    }
+		}, taskOwner);
+	}
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() {
+		    ScalableCounter counter =
+			(ScalableCounter) dataService.getBinding("counter");
+		    assertEquals(65, counter.get());
+		    dataService.removeObject(counter);
+		    dataService.removeBinding("counter");
+		}
+	    }, taskOwner);
+    }
+
+    @Test public void testAddNullHint() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() {
+		    ScalableCounter counter = new ScalableCounter();
+		    try {
+			counter.add(1, null);
+			fail("Expected NullPointerException");
+		    } catch (NullPointerException e) {
+			System.err.println(e);
+		    }
+		    dataService.removeObject(counter);
+		}
+	    }, taskOwner);
+    }
+
+    @Test public void testAccumulateMax() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() {
+		    ScalableAccumulator max =
+			new ScalableAccumulator(new Max(), Long.MIN_VALUE);
+		    assertEquals(Long.MIN_VALUE, max.get());
+		    max.accumulate(-5);
+		    max.accumulate(17, "a");
+		    max.accumulate(3, "b");
+		    assertEquals(17, max.get());
+		    dataService.removeObject(max);
+		}
+	    }, taskOwner);
+    }
+
+    @Test public void testRemoveObject() throws Exception {
+	// wait to avoid side effects from previous tests
+	Thread.sleep(2000);
+	final int initialCount = getObjectCount();
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() {
+		    ScalableCounter counter = new ScalableCounter(8, 8);
+		    for (int i = 0; i < 8; i++) {
+			counter.add(i, i);
+		    }
+		    dataService.setBinding("counter", counter);
+		}
+	    }, taskOwner);
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() {
+		    dataService.removeObject(
+			dataService.getBinding("counter"));
+		    dataService.removeBinding("counter");
+		}
+	    }, taskOwner);
+	// wait for the counter's background tasks to finish
+	Thread.sleep(2000);
+	assertEquals(initialCount, getObjectCount());
+    }
+
+    /* -- Utilities -- */
+
+    /** An operation that computes the maximum. */
+    private static class Max implements ScalableAccumulator.Operation {
+	private static final long serialVersionUID = 1;
+	public long combine(long x, long y) {
+	    return Math.max(x, y);
+	}
+    }
+
+    /**
+     * Returns the current number of objects, not counting pending tasks,
+     * which may be used to refresh the counters.
+     */
+    private int getObjectCount() throws Exception {
+	final int[] count = { 0 };
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() {
+		    // start over if the transaction is retried
+		    count[0] = 0;
+		    BigInteger last = null;
+		    while (true) {
+			BigInteger next = dataService.nextObjectId(last);
+			if (next == null) {
+			    break;
+			}
+			String name = dataService.createReferenceForId(next).
+			    get().getClass().getName();
+			if (!name.equals(
+				"com.sun.sgs.impl.service.task.PendingTask"))
+			{
+			    count[0]++;
+			}
+			last = next;
+		    }
+		}
+	    }, taskOwner);
+	return count[0];
+    }
+}
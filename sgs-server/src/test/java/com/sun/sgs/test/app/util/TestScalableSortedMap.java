@@ -0,0 +1,653 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.test.app.util;
+
+import com.sun.sgs.app.util.ManagedSerializable;
+import com.sun.sgs.app.util.ScalableSortedMap;
+import com.sun.sgs.auth.Identity;
+import static com.sun.sgs.impl.sharedutil.Objects.uncheckedCast;
+import com.sun.sgs.kernel.TransactionScheduler;
+import com.sun.sgs.service.DataService;
+import com.sun.sgs.test.util.SgsTestNode;
+import com.sun.sgs.test.util.TestAbstractKernelRunnable;
+import static com.sun.sgs.test.util.UtilReflection.getMethod;
+import com.sun.sgs.tools.test.FilteredNameRunner;
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Test the {@link ScalableSortedMap} class.  Most tests compare the map, or
+ * one of its views, with a {@link TreeMap} holding the same mappings.  The
+ * maps use a small node size so that they contain several leaves.
+ */
+@RunWith(FilteredNameRunner.class)
+public class TestScalableSortedMap extends Assert {
+
+    private static SgsTestNode serverNode;
+    private static TransactionScheduler txnScheduler;
+    private static Identity taskOwner;
+    private static DataService dataService;
+
+    /** The node size for maps created by the tests. */
+    private static final int NODE_SIZE = 4;
+
+    /** The ScalableSortedMap.checkTree method. */
+    private static final Method checkTree =
+	getMethod(ScalableSortedMap.class, "checkTree");
+
+    /** The ScalableSortedMap.getDepth method. */
+    private static final Method getDepth =
+	getMethod(ScalableSortedMap.class, "getDepth");
+
+    /** A serializable comparator that reverses the natural ordering. */
+    private static class ReverseComparator
+	implements Comparator<Integer>, Serializable
+    {
+	private static final long serialVersionUID = 1;
+	public int compare(Integer x, Integer y) {
+	    return y.compareTo(x);
+	}
+    }
+
+    /**
+     * Test management.
+     */
+
+    @BeforeClass public static void setUpClass() throws Exception {
+	serverNode = new SgsTestNode("TestScalableSortedMap", null, null);
+        txnScheduler = serverNode.getSystemRegistry().
+            getComponent(TransactionScheduler.class);
+        taskOwner = serverNode.getProxy().getCurrentOwner();
+        dataService = serverNode.getDataService();
+    }
+
+    @AfterClass public static void tearDownClass() throws Exception {
+	serverNode.shutdown(true);
+    }
+
+    /*
+     * Test comparator
+     */
+
+    @Test public void testComparatorNaturalOrdering() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() throws Exception {
+		    ScalableSortedMap<Integer, String> map = createMap(0, 10);
+		    assertNull(map.comparator());
+		    assertNull(map.subMap(2, 5).comparator());
+		    assertNull(map.tailMap(3, false).comparator());
+		    Comparator<? super Integer> comparator =
+			map.descendingMap().comparator();
+		    assertTrue(comparator.compare(1, 2) > 0);
+		    assertTrue(comparator.compare(2, 1) < 0);
+		    comparator = map.descendingMap().headMap(5).comparator();
+		    assertTrue(comparator.compare(1, 2) > 0);
+		    assertNull(
+			map.descendingMap().descendingMap().comparator());
+		}
+	    }, taskOwner);
+    }
+
+    @Test public void testComparatorCustom() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() throws Exception {
+		    ScalableSortedMap<Integer, String> map =
+			new ScalableSortedMap<Integer, String>(
+			    NODE_SIZE, new ReverseComparator());
+		    TreeMap<Integer, String> control =
+			new TreeMap<Integer, String>(new ReverseComparator());
+		    for (int i = 0; i < 20; i++) {
+			map.put(i, "v" + i);
+			control.put(i, "v" + i);
+		    }
+		    checkTree(map);
+		    assertSameMap(control, map);
+		    assertEquals(Integer.valueOf(19), map.firstKey());
+		    assertTrue(map.comparator().compare(1, 2) > 0);
+		    Comparator<? super Integer> comparator =
+			map.descendingMap().comparator();
+		    assertTrue(comparator.compare(1, 2) < 0);
+		    assertSameMap(control.descendingMap(),
+				  map.descendingMap());
+		    assertSameMap(control.subMap(15, true, 5, false),
+				  map.subMap(15, true, 5, false));
+		}
+	    }, taskOwner);
+    }
+
+    /*
+     * Test subMap, headMap, and tailMap
+     */
+
+    @Test public void testSubMap() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() throws Exception {
+		    ScalableSortedMap<Integer, String> map = createMap(0, 50);
+		    TreeMap<Integer, String> control = createControl(0, 50);
+		    assertTrue(getDepth(map) > 1);
+		    assertSameMap(control.subMap(10, true, 20, false),
+				  map.subMap(10, true, 20, false));
+		    assertSameMap(control.subMap(10, false, 20, true),
+				  map.subMap(10, false, 20, true));
+		    assertSameMap(control.subMap(11, true, 19, true),
+				  map.subMap(11, true, 19, true));
+		    assertSameMap(control.subMap(10, 20), map.subMap(10, 20));
+		    assertSameMap(control.subMap(-5, true, 200, true),
+				  map.subMap(-5, true, 200, true));
+		    assertSameMap(control.subMap(20, false, 22, false),
+				  map.subMap(20, false, 22, false));
+
+		    /* Nested sub-maps */
+		    NavigableMap<Integer, String> sub =
+			map.subMap(10, true, 40, false);
+		    NavigableMap<Integer, String> controlSub =
+			control.subMap(10, true, 40, false);
+		    assertSameMap(controlSub.subMap(12, true, 30, true),
+				  sub.subMap(12, true, 30, true));
+		    try {
+			sub.subMap(0, true, 30, true);
+			fail("Expected IllegalArgumentException");
+		    } catch (IllegalArgumentException e) {
+			System.err.println(e);
+		    }
+		    try {
+			sub.tailMap(40, true);
+			fail("Expected IllegalArgumentException");
+		    } catch (IllegalArgumentException e) {
+			System.err.println(e);
+		    }
+
+		    /* Modifications through the sub-map */
+		    assertNull(sub.put(11, "new"));
+		    controlSub.put(11, "new");
+		    assertEquals("v20", sub.put(20, "changed"));
+		    controlSub.put(20, "changed");
+		    assertEquals("v30", sub.remove(30));
+		    controlSub.remove(30);
+		    assertNull(sub.remove(0));
+		    try {
+			sub.put(40, "out of range");
+			fail("Expected IllegalArgumentException");
+		    } catch (IllegalArgumentException e) {
+			System.err.println(e);
+		    }
+		    try {
+			sub.put(9, "out of range");
+			fail("Expected IllegalArgumentException");
+		    } catch (IllegalArgumentException e) {
+			System.err.println(e);
+		    }
+		    assertSameMap(control, map);
+		    sub.subMap(14, true, 24, true).clear();
+		    controlSub.subMap(14, true, 24, true).clear();
+		    checkTree(map);
+		    assertSameMap(control, map);
+		    sub.clear();
+		    controlSub.clear();
+		    checkTree(map);
+		    assertTrue(sub.isEmpty());
+		    assertSameMap(control, map);
+		}
+	    }, taskOwner);
+    }
+
+    @Test public void testHeadMapTailMap() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() throws Exception {
+		    ScalableSortedMap<Integer, String> map = createMap(0, 50);
+		    TreeMap<Integer, String> control = createControl(0, 50);
+		    assertSameMap(control.headMap(20), map.headMap(20));
+		    assertSameMap(control.headMap(20, true),
+				  map.headMap(20, true));
+		    assertSameMap(control.headMap(21, true),
+				  map.headMap(21, true));
+		    assertSameMap(control.headMap(0), map.headMap(0));
+		    assertSameMap(control.tailMap(90), map.tailMap(90));
+		    assertSameMap(control.tailMap(90, false),
+				  map.tailMap(90, false));
+		    assertSameMap(control.tailMap(91, false),
+				  map.tailMap(91, false));
+		    assertSameMap(control.tailMap(100), map.tailMap(100));
+		    SortedMap<Integer, String> head = map.headMap(30);
+		    assertEquals(Integer.valueOf(0), head.firstKey());
+		    assertEquals(Integer.valueOf(28), head.lastKey());
+		    SortedMap<Integer, String> tail = map.tailMap(31);
+		    assertEquals(Integer.valueOf(32), tail.firstKey());
+		    assertEquals(Integer.valueOf(98), tail.lastKey());
+		    assertSameMap(control.headMap(30).tailMap(10),
+				  map.headMap(30).tailMap(10));
+		    try {
+			map.headMap(30).tailMap(40);
+			fail("Expected IllegalArgumentException");
+		    } catch (IllegalArgumentException e) {
+			System.err.println(e);
+		    }
+		}
+	    }, taskOwner);
+    }
+
+    @Test public void testDescendingMap() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() throws Exception {
+		    ScalableSortedMap<Integer, String> map = createMap(0, 50);
+		    TreeMap<Integer, String> control = createControl(0, 50);
+		    NavigableMap<Integer, String> desc = map.descendingMap();
+		    NavigableMap<Integer, String> controlDesc =
+			control.descendingMap();
+		    assertSameMap(controlDesc, desc);
+		    assertEquals(Integer.valueOf(98), desc.firstKey());
+		    assertEquals(Integer.valueOf(0), desc.lastKey());
+		    assertSameMap(controlDesc.headMap(90), desc.headMap(90));
+		    assertSameMap(controlDesc.tailMap(9, true),
+				  desc.tailMap(9, true));
+		    assertSameMap(controlDesc.subMap(50, true, 40, false),
+				  desc.subMap(50, true, 40, false));
+		    assertSameMap(control, desc.descendingMap());
+		    assertEquals(
+			new ArrayList<Integer>(control.descendingKeySet()),
+			new ArrayList<Integer>(map.descendingKeySet()));
+		    assertEquals(
+			new ArrayList<Integer>(controlDesc.navigableKeySet()),
+			new ArrayList<Integer>(desc.navigableKeySet()));
+		    assertEquals(
+			new ArrayList<Integer>(
+			    control.subMap(20, true, 40, false)
+			    .descendingMap().keySet()),
+			new ArrayList<Integer>(
+			    map.subMap(20, true, 40, false)
+			    .descendingMap().keySet()));
+		    try {
+			desc.subMap(40, true, 50, true);
+			fail("Expected IllegalArgumentException");
+		    } catch (IllegalArgumentException e) {
+			System.err.println(e);
+		    }
+
+		    /* Modifications through the descending map */
+		    assertEquals("v50", desc.remove(50));
+		    controlDesc.remove(50);
+		    assertNull(desc.put(51, "v51"));
+		    controlDesc.put(51, "v51");
+		    assertEquals(controlDesc.pollFirstEntry(),
+				 desc.pollFirstEntry());
+		    assertEquals(controlDesc.pollLastEntry(),
+				 desc.pollLastEntry());
+		    checkTree(map);
+		    assertSameMap(control, map);
+		}
+	    }, taskOwner);
+    }
+
+    /*
+     * Test floor, ceiling, higher, and lower
+     */
+
+    @Test public void testNavigation() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() throws Exception {
+		    ScalableSortedMap<Integer, String> map = createMap(0, 50);
+		    TreeMap<Integer, String> control = createControl(0, 50);
+		    checkNavigation(control, map);
+		    checkNavigation(control.descendingMap(),
+				    map.descendingMap());
+		    checkNavigation(control.subMap(10, true, 60, false),
+				    map.subMap(10, true, 60, false));
+		    checkNavigation(control.subMap(11, false, 61, true),
+				    map.subMap(11, false, 61, true));
+		    checkNavigation(control.headMap(30, true),
+				    map.headMap(30, true));
+		    checkNavigation(control.tailMap(71, false),
+				    map.tailMap(71, false));
+		    checkNavigation(
+			control.subMap(10, true, 60, false).descendingMap(),
+			map.subMap(10, true, 60, false).descendingMap());
+		}
+	    }, taskOwner);
+    }
+
+    @Test public void testNavigationEmpty() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() throws Exception {
+		    ScalableSortedMap<Integer, String> map = createMap(0, 0);
+		    checkNavigation(new TreeMap<Integer, String>(), map);
+		    assertNull(map.firstEntry());
+		    assertNull(map.lastEntry());
+		    assertNull(map.pollFirstEntry());
+		    assertNull(map.pollLastEntry());
+		    map = createMap(0, 50);
+		    NavigableMap<Integer, String> sub =
+			map.subMap(21, true, 22, false);
+		    assertTrue(sub.isEmpty());
+		    checkNavigation(new TreeMap<Integer, String>(), sub);
+		}
+	    }, taskOwner);
+    }
+
+    /*
+     * Test iterating across leaf splits and merges
+     */
+
+    @Test public void testIterateAcrossSplit() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() throws Exception {
+		    ScalableSortedMap<Integer, String> map =
+			new ScalableSortedMap<Integer, String>(
+			    NODE_SIZE, null);
+		    for (int i = 0; i < 10; i++) {
+			map.put(i * 100, "v" + (i * 100));
+		    }
+		    dataService.setBinding("test", map);
+		    Iterator<Integer> iter = map.keySet().iterator();
+		    assertEquals(Integer.valueOf(0), iter.next());
+		    assertEquals(Integer.valueOf(100), iter.next());
+		    dataService.setBinding(
+			"iter",
+			new ManagedSerializable<Iterator<Integer>>(iter));
+		}
+	    }, taskOwner);
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() throws Exception {
+		    ScalableSortedMap<Integer, String> map = getMap();
+		    int depth = getDepth(map);
+		    /* Split the leaf holding the iterator's position */
+		    for (int i = 1; i < 200; i++) {
+			if (i % 100 != 0) {
+			    map.put(i, "v" + i);
+			}
+		    }
+		    checkTree(map);
+		    assertTrue(getDepth(map) > depth);
+		}
+	    }, taskOwner);
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() throws Exception {
+		    ScalableSortedMap<Integer, String> map = getMap();
+		    List<Integer> expected = new ArrayList<Integer>(
+			map.tailMap(100, false).keySet());
+		    assertEquals(Integer.valueOf(101), expected.get(0));
+		    assertEquals(expected, rest(getIterator()));
+		    dataService.removeObject(
+			dataService.getBinding("iter"));
+		}
+	    }, taskOwner);
+    }
+
+    @Test public void testIterateAcrossSplitSameTransaction()
+	throws Exception
+    {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() throws Exception {
+		    ScalableSortedMap<Integer, String> map = createMap(0, 8);
+		    TreeMap<Integer, String> control = createControl(0, 8);
+		    Iterator<Entry<Integer, String>> iter =
+			map.descendingMap().entrySet().iterator();
+		    assertEquals(Integer.valueOf(14), iter.next().getKey());
+		    assertEquals(Integer.valueOf(12), iter.next().getKey());
+		    for (int i = 1; i < 12; i += 2) {
+			map.put(i, "v" + i);
+			control.put(i, "v" + i);
+		    }
+		    checkTree(map);
+		    List<Integer> keys = new ArrayList<Integer>();
+		    while (iter.hasNext()) {
+			keys.add(iter.next().getKey());
+		    }
+		    assertEquals(
+			new ArrayList<Integer>(
+			    control.headMap(12, false).descendingKeySet()),
+			keys);
+		}
+	    }, taskOwner);
+    }
+
+    @Test public void testIterateAcrossMerge() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() throws Exception {
+		    ScalableSortedMap<Integer, String> map =
+			new ScalableSortedMap<Integer, String>(
+			    NODE_SIZE, null);
+		    for (int i = 0; i < 200; i++) {
+			map.put(i, "v" + i);
+		    }
+		    dataService.setBinding("test", map);
+		    Iterator<Integer> iter = map.keySet().iterator();
+		    for (int i = 0; i <= 50; i++) {
+			assertEquals(Integer.valueOf(i), iter.next());
+		    }
+		    dataService.setBinding(
+			"iter",
+			new ManagedSerializable<Iterator<Integer>>(iter));
+		}
+	    }, taskOwner);
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() throws Exception {
+		    ScalableSortedMap<Integer, String> map = getMap();
+		    int depth = getDepth(map);
+		    /*
+		     * Remove the iterator's last key, and enough of the
+		     * keys around it to merge leaves
+		     */
+		    for (int i = 20; i < 190; i++) {
+			if (i % 50 != 0 || i == 50) {
+			    map.remove(i);
+			}
+		    }
+		    checkTree(map);
+		    assertTrue(getDepth(map) < depth);
+		}
+	    }, taskOwner);
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() throws Exception {
+		    ScalableSortedMap<Integer, String> map = getMap();
+		    List<Integer> expected = new ArrayList<Integer>(
+			map.tailMap(50, false).keySet());
+		    assertEquals(Integer.valueOf(100), expected.get(0));
+		    assertEquals(expected, rest(getIterator()));
+		    dataService.removeObject(
+			dataService.getBinding("iter"));
+		}
+	    }, taskOwner);
+    }
+
+    @Test public void testIteratorRemoveAcrossMerge() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() throws Exception {
+		    ScalableSortedMap<Integer, String> map = createMap(0, 100);
+		    TreeMap<Integer, String> control = createControl(0, 100);
+		    /* Removing most entries merges leaves while iterating */
+		    Iterator<Integer> iter =
+			map.subMap(20, true, 180, false).keySet().iterator();
+		    Iterator<Integer> controlIter =
+			control.subMap(20, true, 180, false).keySet()
+			.iterator();
+		    while (controlIter.hasNext()) {
+			Integer key = controlIter.next();
+			assertEquals(key, iter.next());
+			if (key % 10 != 0) {
+			    iter.remove();
+			    controlIter.remove();
+			}
+		    }
+		    assertFalse(iter.hasNext());
+		    checkTree(map);
+		    assertSameMap(control, map);
+		}
+	    }, taskOwner);
+    }
+
+    /*
+     * Utilities
+     */
+
+    /**
+     * Creates a map with the specified node size whose keys are the even
+     * numbers from {@code 2 * start} up to, but not including, {@code 2 *
+     * end}, and binds it to the name "test".
+     */
+    private static ScalableSortedMap<Integer, String> createMap(
+	int start, int end)
+    {
+	ScalableSortedMap<Integer, String> map =
+	    new ScalableSortedMap<Integer, String>(NODE_SIZE, null);
+	for (int i = start; i < end; i++) {
+	    map.put(2 * i, "v" + (2 * i));
+	}
+	dataService.setBinding("test", map);
+	return map;
+    }
+
+    /** Creates a tree map with the same mappings as createMap. */
+    private static TreeMap<Integer, String> createControl(int start, int end) {
+	TreeMap<Integer, String> control = new TreeMap<Integer, String>();
+	for (int i = start; i < end; i++) {
+	    control.put(2 * i, "v" + (2 * i));
+	}
+	return control;
+    }
+
+    /** Returns the map bound to the name "test". */
+    private static ScalableSortedMap<Integer, String> getMap() {
+	return uncheckedCast(dataService.getBinding("test"));
+    }
+
+    /** Returns the iterator bound to the name "iter". */
+    private static Iterator<Integer> getIterator() {
+	ManagedSerializable<Iterator<Integer>> msIter =
+	    uncheckedCast(dataService.getBinding("iter"));
+	return msIter.get();
+    }
+
+    /** Returns the remaining elements returned by the iterator. */
+    private static <E> List<E> rest(Iterator<E> iter) {
+	List<E> result = new ArrayList<E>();
+	while (iter.hasNext()) {
+	    result.add(iter.next());
+	}
+	return result;
+    }
+
+    /**
+     * Checks that the two maps have the same size, the same entries in the
+     * same iteration order, and the same first and last keys.
+     */
+    private static void assertSameMap(SortedMap<Integer, String> expected,
+				      SortedMap<Integer, String> actual)
+    {
+	assertEquals(expected.size(), actual.size());
+	assertEquals(expected.isEmpty(), actual.isEmpty());
+	assertEquals(new ArrayList<Entry<Integer, String>>(expected.entrySet()),
+		     new ArrayList<Entry<Integer, String>>(actual.entrySet()));
+	assertEquals(new ArrayList<Integer>(expected.keySet()),
+		     new ArrayList<Integer>(actual.keySet()));
+	assertEquals(new ArrayList<String>(expected.values()),
+		     new ArrayList<String>(actual.values()));
+	assertEquals(expected, actual);
+	if (!expected.isEmpty()) {
+	    assertEquals(expected.firstKey(), actual.firstKey());
+	    assertEquals(expected.lastKey(), actual.lastKey());
+	}
+    }
+
+    /**
+     * Checks that the floor, ceiling, higher, and lower methods return the
+     * same keys and entries for the two maps, for keys from {@code -2} to
+     * {@code 102}.
+     */
+    private static void checkNavigation(
+	NavigableMap<Integer, String> expected,
+	NavigableMap<Integer, String> actual)
+    {
+	for (int key = -2; key <= 102; key++) {
+	    String msg = "key " + key;
+	    assertEquals(msg, expected.floorKey(key), actual.floorKey(key));
+	    assertEquals(msg, expected.floorEntry(key),
+			 actual.floorEntry(key));
+	    assertEquals(msg, expected.ceilingKey(key),
+			 actual.ceilingKey(key));
+	    assertEquals(msg, expected.ceilingEntry(key),
+			 actual.ceilingEntry(key));
+	    assertEquals(msg, expected.higherKey(key), actual.higherKey(key));
+	    assertEquals(msg, expected.higherEntry(key),
+			 actual.higherEntry(key));
+	    assertEquals(msg, expected.lowerKey(key), actual.lowerKey(key));
+	    assertEquals(msg, expected.lowerEntry(key),
+			 actual.lowerEntry(key));
+	}
+    }
+
+    /** Calls checkTree on the map. */
+    private static void checkTree(ScalableSortedMap<?, ?> map)
+	throws Exception
+    {
+	try {
+	    checkTree.invoke(map);
+	} catch (InvocationTargetException e) {
+	    Throwable cause = e.getCause();
+	    if (cause instanceof Error) {
+		throw (Error) cause;
+	    }
+	    throw e;
+	}
+    }
+
+    /** Returns the depth of the map's tree. */
+    private static int getDepth(ScalableSortedMap<?, ?> map)
+	throws Exception
+    {
+	return (Integer) getDepth.invoke(map);
+    }
+}
@@ -0,0 +1,536 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.test.app.util;
+
+import com.sun.sgs.app.AppContext;
+import com.sun.sgs.app.ManagedObject;
+import com.sun.sgs.app.util.ManagedSerializable;
+import com.sun.sgs.app.util.ScalableSortedMap;
+import com.sun.sgs.auth.Identity;
+import static com.sun.sgs.impl.sharedutil.Objects.uncheckedCast;
+import com.sun.sgs.kernel.TransactionScheduler;
+import com.sun.sgs.service.DataService;
+import com.sun.sgs.test.util.SgsTestNode;
+import com.sun.sgs.test.util.TestAbstractKernelRunnable;
+import static com.sun.sgs.test.util.UtilReflection.getMethod;
+import com.sun.sgs.tools.test.FilteredNameRunner;
+import com.sun.sgs.tools.test.IntegrationTest;
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * A stress test for the {@link ScalableSortedMap} class.  Checks random
+ * operations against a bit set that records which keys should be present,
+ * and checks that persistent iterators return keys in order, including when
+ * the map is modified between calls.
+ */
+@IntegrationTest
+@RunWith(FilteredNameRunner.class)
+public class TestScalableSortedMapStress extends Assert {
+
+    /**
+     * The seed for the random number generator.  This number depends on the
+     * current time by default, but should be set explicitly to repeat a
+     * previous test run.
+     */
+    private static final long seed = Long.getLong(
+	"test.seed", new Date().getTime());
+
+    /** Whether to print debugging information. */
+    static final boolean debug = Boolean.getBoolean("test.debug");
+
+    /** The maximum number of entries to store in the map. */
+    private static final int maxEntries = Integer.getInteger(
+	"test.entries", 2000);
+
+    /** The number of operations to perform. */
+    private static final int operations = Integer.getInteger(
+	"test.operations", 20000);
+
+    /**
+     * The node size for the map, kept small so that the test splits and
+     * merges nodes frequently.
+     */
+    private static final int nodeSize = Integer.getInteger(
+	"test.node.size", 8);
+
+    /** The maximum number of operations per transaction. */
+    private static final int maxOpsPerTxn = 10;
+
+    /** The ScalableSortedMap.checkTree method. */
+    private static final Method checkTree =
+	getMethod(ScalableSortedMap.class, "checkTree");
+
+    /** Generates the seeds for the random numbers used in each transaction. */
+    private static final Random seeds = new Random(seed);
+
+    private static SgsTestNode serverNode;
+    private static TransactionScheduler txnScheduler;
+    private static Identity taskOwner;
+    private static DataService dataService;
+
+    /**
+     * The random number generator for the current transaction, which is
+     * recreated with the same seed if the transaction is retried.
+     */
+    Random random;
+
+    /** Records the keys that should appear in the map. */
+    BitSet control = new BitSet(maxEntries);
+
+    /** The value of control at the start of the current transaction. */
+    BitSet savedControl;
+
+    /** The number of objects before creating the map. */
+    private int initialObjectCount;
+
+    /** The map under test. */
+    ScalableSortedMap<Integer, Value> map;
+
+    /** An iterator over the keys of the map, in ascending order. */
+    ManagedSerializable<Iterator<Integer>> msKeys;
+
+    /**
+     * The last key returned by the keys iterator, or -1.  Saved and restored
+     * along with the control.
+     */
+    int lastKey = -1;
+
+    /** The value of lastKey at the start of the current transaction. */
+    int savedLastKey;
+
+    /** An iterator over the entries of the map, in descending order. */
+    ManagedSerializable<Iterator<Entry<Integer, Value>>> msEntries;
+
+    /** The last key returned by the entries iterator, or maxEntries. */
+    int lastEntry = maxEntries;
+
+    /** The value of lastEntry at the start of the current transaction. */
+    int savedLastEntry;
+
+    /** A serializable value to store in the map. */
+    private static class Value implements Serializable {
+	private static final long serialVersionUID = 1;
+	final int i;
+	static Value create(Random random, int i) {
+	    return random.nextBoolean() ? new Value(i) : new ManagedValue(i);
+	}
+	Value(int i) {
+	    this.i = i;
+	}
+	public boolean equals(Object object) {
+	    return object instanceof Value && i == ((Value) object).i;
+	}
+	public int hashCode() {
+	    return i;
+	}
+	public String toString() {
+	    return "Value[" + i + "]";
+	}
+    }
+
+    /** A managed value to store in the map. */
+    private static class ManagedValue extends Value implements ManagedObject {
+	private static final long serialVersionUID = 1;
+	ManagedValue(int i) {
+	    super(i);
+	}
+    }
+
+    /** Setup. */
+    @Before public void setUp() throws Exception {
+	serverNode = new SgsTestNode("TestScalableSortedMapStress", null, null);
+        txnScheduler = serverNode.getSystemRegistry().
+            getComponent(TransactionScheduler.class);
+        taskOwner = serverNode.getProxy().getCurrentOwner();
+        dataService = serverNode.getDataService();
+
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() throws Exception {
+		    initialObjectCount = getObjectCount();
+		    map = new ScalableSortedMap<Integer, Value>(
+			nodeSize, null);
+		    dataService.setBinding("map", map);
+		    dataService.setBinding(
+			"keys",
+			new ManagedSerializable<Iterator<Integer>>(
+			    map.keySet().iterator()));
+		    dataService.setBinding(
+			"entries",
+			new ManagedSerializable<Iterator<
+			    Entry<Integer, Value>>>(
+				map.descendingMap().entrySet().iterator()));
+		}
+	    }, taskOwner);
+    }
+
+    /** Teardown. */
+    @After public void tearDown() throws Exception {
+	final AtomicBoolean isDone = new AtomicBoolean(false);
+	while (!isDone.get()) {
+	    txnScheduler.runTask(
+		new TestAbstractKernelRunnable() {
+		    public void run() throws Exception {
+			initTxnState(false);
+			for (int i = 0; i < 50; i++) {
+			    Entry<Integer, Value> entry =
+				map.pollFirstEntry();
+			    if (entry == null) {
+				isDone.set(true);
+				break;
+			    }
+			    maybeRemoveObject(entry.getValue());
+			}
+			checkTree();
+		    }
+		}, taskOwner);
+	}
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() throws Exception {
+		    initTxnState(false);
+		    DoneRemoving.init(ScalableSortedMap.class);
+		    dataService.removeObject(map);
+		    dataService.removeObject(msKeys);
+		    dataService.removeObject(msEntries);
+		}
+	    }, taskOwner);
+	DoneRemoving.await(1);
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() throws Exception {
+		    assertEquals(initialObjectCount, getObjectCount());
+		}
+	    }, taskOwner);
+        serverNode.shutdown(true);
+    }
+
+    /* Tests */
+
+    /** Performs a random stress test on the scalable sorted map. */
+    @Test public void testStress() throws Exception {
+	final long start = System.currentTimeMillis();
+	System.err.println("test.entries=" + maxEntries);
+	System.err.println("test.operations=" + operations);
+	System.err.println("test.node.size=" + nodeSize);
+	System.err.println("test.seed=" + seed);
+
+	final AtomicInteger opnum = new AtomicInteger(0);
+	while (opnum.get() < operations) {
+	    final long txnSeed = seeds.nextLong();
+	    txnScheduler.runTask(
+		new TestAbstractKernelRunnable() {
+		    private boolean retry = false;
+		    public void run() throws Exception {
+			initTxnState(retry);
+			retry = true;
+			random = new Random(txnSeed);
+			int count = random.nextInt(maxOpsPerTxn) + 1;
+			for (int i = 0; i < count; i++) {
+			    runRandomOp();
+			}
+			checkTree();
+		    }
+		}, taskOwner);
+	    int num = opnum.incrementAndGet();
+	    if (num % 5000 == 0) {
+		System.err.println("opnum=" + num);
+	    }
+	}
+	long stop = System.currentTimeMillis();
+	System.err.println(
+	    "ops/sec=" + Math.round((1000.0d * operations) / (stop - start)));
+	System.err.println("map.size=" + control.cardinality());
+    }
+
+    /* Operations */
+
+    /** Performs a random operation. */
+    void runRandomOp() {
+	switch (random.nextInt(8)) {
+	case 0:
+	    get();
+	    break;
+	case 1:
+	case 2:
+	case 3:
+	    /* Do more puts to make up for the different kinds of removes */
+	    put();
+	    break;
+	case 4:
+	    remove();
+	    break;
+	case 5:
+	    navigate();
+	    break;
+	case 6:
+	    keysNext();
+	    break;
+	default:
+	    entriesNext();
+	    break;
+	}
+    }
+
+    /** Map.get and Map.containsKey */
+    private void get() {
+	int objnum = getRandomObjectNumber();
+	if (debug) {
+	    System.err.println("get " + objnum);
+	}
+	boolean present = control.get(objnum);
+	assertEquals(present, map.containsKey(objnum));
+	assertEquals(present ? new Value(objnum) : null, map.get(objnum));
+    }
+
+    /** Map.put */
+    private void put() {
+	int objnum = getRandomObjectNumber();
+	if (debug) {
+	    System.err.println("put " + objnum);
+	}
+	Value oldValue = map.put(objnum, Value.create(random, objnum));
+	if (control.get(objnum)) {
+	    assertEquals(new Value(objnum), oldValue);
+	    maybeRemoveObject(oldValue);
+	} else {
+	    assertEquals(null, oldValue);
+	}
+	control.set(objnum);
+    }
+
+    /** Map.remove */
+    private void remove() {
+	int objnum = getRandomObjectNumber();
+	if (debug) {
+	    System.err.println("remove " + objnum);
+	}
+	Value oldValue = map.remove(objnum);
+	if (control.get(objnum)) {
+	    assertEquals(new Value(objnum), oldValue);
+	    maybeRemoveObject(oldValue);
+	} else {
+	    assertEquals(null, oldValue);
+	}
+	control.clear(objnum);
+    }
+
+    /** NavigableMap ceilingKey, higherKey, floorKey, and lowerKey */
+    private void navigate() {
+	int objnum = getRandomObjectNumber();
+	if (debug) {
+	    System.err.println("navigate " + objnum);
+	}
+	assertEquals(next(objnum, true), map.ceilingKey(objnum));
+	assertEquals(next(objnum, false), map.higherKey(objnum));
+	assertEquals(previous(objnum, true), map.floorKey(objnum));
+	assertEquals(previous(objnum, false), map.lowerKey(objnum));
+    }
+
+    /**
+     * Calls next, and sometimes remove, on the ascending keys iterator,
+     * starting again when it is exhausted.
+     */
+    private void keysNext() {
+	dataService.markForUpdate(msKeys);
+	Iterator<Integer> keys = msKeys.get();
+	if (!keys.hasNext()) {
+	    if (debug) {
+		System.err.println("keys new iterator");
+	    }
+	    keys = map.keySet().iterator();
+	    msKeys.set(keys);
+	    lastKey = -1;
+	}
+	if (keys.hasNext()) {
+	    Integer key = keys.next();
+	    if (debug) {
+		System.err.println("keys next " + key);
+	    }
+	    assertEquals(next(lastKey, false), key);
+	    lastKey = key;
+	    if (random.nextInt(3) == 0) {
+		if (debug) {
+		    System.err.println("keys remove " + key);
+		}
+		Value value = map.get(key);
+		keys.remove();
+		control.clear(key);
+		maybeRemoveObject(value);
+	    }
+	}
+    }
+
+    /**
+     * Calls next, and either setValue or remove, on the descending entries
+     * iterator, starting again when it is exhausted.
+     */
+    private void entriesNext() {
+	dataService.markForUpdate(msEntries);
+	Iterator<Entry<Integer, Value>> entries = msEntries.get();
+	if (!entries.hasNext()) {
+	    if (debug) {
+		System.err.println("entries new iterator");
+	    }
+	    entries = map.descendingMap().entrySet().iterator();
+	    msEntries.set(entries);
+	    lastEntry = maxEntries;
+	}
+	if (entries.hasNext()) {
+	    Entry<Integer, Value> entry = entries.next();
+	    int key = entry.getKey();
+	    Value value = entry.getValue();
+	    if (debug) {
+		System.err.println("entries next " + key);
+	    }
+	    assertEquals(previous(lastEntry, false),
+			 Integer.valueOf(key));
+	    assertEquals(new Value(key), value);
+	    lastEntry = key;
+	    if (random.nextBoolean()) {
+		if (debug) {
+		    System.err.println("entries remove " + key);
+		}
+		entries.remove();
+		control.clear(key);
+	    } else {
+		entry.setValue(Value.create(random, key));
+		assertEquals(new Value(key), map.get(key));
+	    }
+	    maybeRemoveObject(value);
+	}
+    }
+
+    /* Utilities */
+
+    /**
+     * Updates fields from data manager bindings for a new transaction, and
+     * restores the control state if the transaction is being retried.
+     */
+    private void initTxnState(boolean retry) {
+	if (retry) {
+	    control = (BitSet) savedControl.clone();
+	    lastKey = savedLastKey;
+	    lastEntry = savedLastEntry;
+	} else {
+	    savedControl = (BitSet) control.clone();
+	    savedLastKey = lastKey;
+	    savedLastEntry = lastEntry;
+	}
+	map = uncheckedCast(dataService.getBinding("map"));
+	msKeys = uncheckedCast(dataService.getBinding("keys"));
+	msEntries = uncheckedCast(dataService.getBinding("entries"));
+	if (debug) {
+	    System.err.println("new transaction");
+	}
+    }
+
+    /** Checks the structure of the map's tree. */
+    private void checkTree() throws Exception {
+	try {
+	    checkTree.invoke(map);
+	} catch (InvocationTargetException e) {
+	    Throwable cause = e.getCause();
+	    if (cause instanceof Error) {
+		throw (Error) cause;
+	    }
+	    throw e;
+	}
+    }
+
+    /** Returns a random object number. */
+    private int getRandomObjectNumber() {
+	return random.nextInt(maxEntries);
+    }
+
+    /**
+     * Returns the smallest key in the control greater than, or equal to if
+     * inclusive, the argument, or null if there is none.
+     */
+    private Integer next(int objnum, boolean inclusive) {
+	int result = control.nextSetBit(inclusive ? objnum : objnum + 1);
+	return (result < 0) ? null : result;
+    }
+
+    /**
+     * Returns the largest key in the control less than, or equal to if
+     * inclusive, the argument, or null if there is none.
+     */
+    private Integer previous(int objnum, boolean inclusive) {
+	for (int i = inclusive ? objnum : objnum - 1; i >= 0; i--) {
+	    if (control.get(i)) {
+		return i;
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Removes the argument from the data manager if it is a managed object.
+     */
+    static void maybeRemoveObject(Object object) {
+	if (object instanceof ManagedObject) {
+	    AppContext.getDataManager().removeObject(object);
+	}
+    }
+
+    /** Returns the current number of objects. */
+    private int getObjectCount() {
+	int count = 0;
+	BigInteger last = null;
+	while (true) {
+	    BigInteger next = dataService.nextObjectId(last);
+	    if (next == null) {
+		break;
+	    }
+	    /* Exclude the tasks that services may accumulate */
+            String name = dataService.createReferenceForId(next).get().
+                getClass().getName();
+            if (!name.equals("com.sun.sgs.impl.service.task.PendingTask")) {
+                count++;
+	    }
+	    last = next;
+	}
+	return count;
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.test.app.util;
+
+import com.sun.sgs.app.AppContext;
+import com.sun.sgs.app.Channel;
+import com.sun.sgs.app.Delivery;
+import com.sun.sgs.app.ManagedObject;
+import com.sun.sgs.app.util.AreaOfInterest;
+import com.sun.sgs.app.util.ScalableSpatialIndex;
+import com.sun.sgs.auth.Identity;
+import static com.sun.sgs.impl.sharedutil.Objects.uncheckedCast;
+import com.sun.sgs.kernel.TransactionScheduler;
+import com.sun.sgs.service.DataService;
+import com.sun.sgs.test.util.SgsTestNode;
+import com.sun.sgs.test.util.TestAbstractKernelRunnable;
+import static com.sun.sgs.test.util.UtilReflection.getMethod;
+import com.sun.sgs.tools.test.FilteredNameRunner;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Test the {@link ScalableSpatialIndex} and {@link AreaOfInterest} classes. */
+@RunWith(FilteredNameRunner.class)
+public class TestScalableSpatialIndex extends Assert {
+
+    /** The ScalableSpatialIndex.getDepth method. */
+    private static final Method getDepth =
+	getMethod(ScalableSpatialIndex.class, "getDepth");
+
+    private static SgsTestNode serverNode;
+    private static TransactionScheduler txnScheduler;
+    private static Identity taskOwner;
+    private static DataService dataService;
+
+    /** Setup */
+    @BeforeClass public static void setUpClass() throws Exception {
+	serverNode = new SgsTestNode("TestScalableSpatialIndex", null, null);
+        txnScheduler = serverNode.getSystemRegistry().
+            getComponent(TransactionScheduler.class);
+        taskOwner = serverNode.getProxy().getCurrentOwner();
+        dataService = serverNode.getDataService();
+    }
+
+    /** Teardown. */
+    @AfterClass public static void tearDownClass() throws Exception {
+        serverNode.shutdown(true);
+    }
+
+    /* -- Tests -- */
+
+    @Test public void testConstructorIllegalArguments() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() {
+		    try {
+			new ScalableSpatialIndex<Integer>(0, 0, 0, 1);
+			fail("Expected IllegalArgumentException");
+		    } catch (IllegalArgumentException e) {
+			System.err.println(e);
+		    }
+		    try {
+			new ScalableSpatialIndex<Integer>(0, 1, 1, 0);
+			fail("Expected IllegalArgumentException");
+		    } catch (IllegalArgumentException e) {
+			System.err.println(e);
+		    }
+		    try {
+			new ScalableSpatialIndex<Integer>(0, 0, 1, 1, 1);
+			fail("Expected IllegalArgumentException");
+		    } catch (IllegalArgumentException e) {
+			System.err.println(e);
+		    }
+		}
+	    }, taskOwner);
+    }
+
+    @Test public void testAddIllegalArguments() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() {
+		    ScalableSpatialIndex<Object> index =
+			new ScalableSpatialIndex<Object>(0, 0, 10, 10);
+		    try {
+			index.add(null, 1, 1);
+			fail("Expected NullPointerException");
+		    } catch (NullPointerException e) {
+			System.err.println(e);
+		    }
+		    try {
+			index.add(new Object(), 1, 1);
+			fail("Expected IllegalArgumentException");
+		    } catch (IllegalArgumentException e) {
+			System.err.println(e);
+		    }
+		    try {
+			index.add(1, 10.5, 1);
+			fail("Expected IllegalArgumentException");
+		    } catch (IllegalArgumentException e) {
+			System.err.println(e);
+		    }
+		    try {
+			index.add(1, Double.NaN, 1);
+			fail("Expected IllegalArgumentException");
+		    } catch (IllegalArgumentException e) {
+			System.err.println(e);
+		    }
+		    index.add(1, 10, 10);
+		    assertTrue(index.contains(1, 10, 10));
+		    dataService.removeObject(index);
+		}
+	    }, taskOwner);
+    }
+
+    @Test public void testAddRemoveMove() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() {
+		    ScalableSpatialIndex<Object> index =
+			new ScalableSpatialIndex<Object>(0, 0, 10, 10, 4);
+		    Element managed = new Element(1);
+		    index.add(managed, 1, 1);
+		    index.add(2, 2, 2);
+		    assertTrue(index.contains(managed, 1, 1));
+		    assertFalse(index.contains(managed, 2, 2));
+		    assertTrue(index.contains(2, 2, 2));
+		    assertFalse(index.move(2, 1, 1, 3, 3));
+		    assertTrue(index.move(2, 2, 2, 9, 9));
+		    assertFalse(index.contains(2, 2, 2));
+		    assertTrue(index.contains(2, 9, 9));
+		    assertFalse(index.remove(managed, 2, 2));
+		    assertTrue(index.remove(managed, 1, 1));
+		    assertFalse(index.contains(managed, 1, 1));
+		    assertTrue(index.remove(2, 9, 9));
+		    assertEquals(0, index.getWithin(0, 0, 10, 10).size());
+		    dataService.removeObject(index);
+		    dataService.removeObject(managed);
+		}
+	    }, taskOwner);
+    }
+
+    @Test public void testQueries() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() {
+		    ScalableSpatialIndex<Integer> index =
+			new ScalableSpatialIndex<Integer>(0, 0, 100, 100, 2);
+		    for (int i = 0; i <= 10; i++) {
+			index.add(i, 10 * i, 10 * i);
+		    }
+		    assertEquals(Arrays.asList(2, 3, 4),
+				 sorted(index.getWithin(20, 20, 45, 45)));
+		    assertEquals(Arrays.asList(4, 5, 6),
+				 sorted(index.getWithinRadius(50, 50, 15)));
+		    assertEquals(Arrays.asList(5),
+				 index.getNearest(52, 52, 1));
+		    assertEquals(Arrays.asList(10, 9, 8),
+				 index.getNearest(100, 100, 3));
+		    assertEquals(11, index.getNearest(0, 0, 20).size());
+		    assertEquals(0, index.getNearest(0, 0, 0).size());
+		    try {
+			index.getNearest(0, 0, -1);
+			fail("Expected IllegalArgumentException");
+		    } catch (IllegalArgumentException e) {
+			System.err.println(e);
+		    }
+		    try {
+			index.getWithinRadius(0, 0, -1);
+			fail("Expected IllegalArgumentException");
+		    } catch (IllegalArgumentException e) {
+			System.err.println(e);
+		    }
+		    dataService.removeObject(index);
+		}
+	    }, taskOwner);
+    }
+
+    @Test public void testSplitAndMerge() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() throws Exception {
+		    ScalableSpatialIndex<Integer> index =
+			new ScalableSpatialIndex<Integer>(0, 0, 64, 64, 4);
+		    dataService.setBinding("index", index);
+		    assertEquals(0, getDepth.invoke(index));
+		    for (int i = 0; i < 64; i++) {
+			index.add(i, i, 64 - i);
+		    }
+		    assertTrue((Integer) getDepth.invoke(index) > 1);
+		}
+	    }, taskOwner);
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() throws Exception {
+		    ScalableSpatialIndex<Integer> index =
+			uncheckedCast(dataService.getBinding("index"));
+		    for (int i = 0; i < 64; i++) {
+			assertTrue(index.remove(i, i, 64 - i));
+		    }
+		    assertEquals(0, getDepth.invoke(index));
+		    DoneRemoving.init(ScalableSpatialIndex.class);
+		    dataService.removeObject(index);
+		    dataService.removeBinding("index");
+		}
+	    }, taskOwner);
+	DoneRemoving.await(1);
+    }
+
+    @Test public void testAreaOfInterest() throws Exception {
+	txnScheduler.runTask(
+	    new TestAbstractKernelRunnable() {
+		public void run() {
+		    try {
+			new AreaOfInterest(null, 0, 0, 1);
+			fail("Expected NullPointerException");
+		    } catch (NullPointerException e) {
+			System.err.println(e);
+		    }
+		    Channel channel = AppContext.getChannelManager().
+			createChannel("aoi", null, Delivery.RELIABLE);
+		    try {
+			new AreaOfInterest(channel, 0, 0, -1);
+			fail("Expected IllegalArgumentException");
+		    } catch (IllegalArgumentException e) {
+			System.err.println(e);
+		    }
+		    AreaOfInterest area = new AreaOfInterest(channel, 5, 5, 2);
+		    assertSame(channel, area.getChannel());
+		    assertTrue(area.contains(5, 5));
+		    assertTrue(area.contains(7, 5));
+		    assertFalse(area.contains(7, 7));
+		    /* Moves that don't cross the boundary don't use the session */
+		    assertFalse(area.moved(null, 5, 5, 6, 6));
+		    assertFalse(area.moved(null, 0, 0, 9, 9));
+		    ScalableSpatialIndex<Integer> index =
+			new ScalableSpatialIndex<Integer>(0, 0, 10, 10);
+		    index.add(1, 5, 5);
+		    area.populate(index);
+		    assertFalse(channel.hasSessions());
+		    dataService.removeObject(index);
+		    dataService.removeObject(area);
+		    dataService.removeObject(channel);
+		}
+	    }, taskOwner);
+    }
+
+    /* -- Utilities -- */
+
+    /** A managed object to store in the index. */
+    private static class Element implements ManagedObject, Serializable {
+	private static final long serialVersionUID = 1;
+	private final int i;
+	Element(int i) {
+	    this.i = i;
+	}
+	public boolean equals(Object object) {
+	    return object instanceof Element && i == ((Element) object).i;
+	}
+	public int hashCode() {
+	    return i;
+	}
+    }
+
+    /** Returns the elements of the list in sorted order. */
+    private static List<Integer> sorted(List<Integer> list) {
+	List<Integer> result = new ArrayList<Integer>(list);
+	Collections.sort(result);
+	return result;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.test.impl.kernel;
+
+import com.sun.sgs.app.TransactionAbortedException;
+import com.sun.sgs.impl.kernel.AccessCoordinatorHandle;
+import com.sun.sgs.impl.kernel.LockingAccessCoordinator;
+import com.sun.sgs.impl.kernel.OptimisticAccessCoordinator;
+import com.sun.sgs.kernel.AccessReporter;
+import com.sun.sgs.kernel.AccessReporter.AccessType;
+import com.sun.sgs.test.util.DummyProfileCollectorHandle;
+import com.sun.sgs.test.util.DummyTransaction;
+import com.sun.sgs.test.util.DummyTransactionProxy;
+import com.sun.sgs.tools.test.FilteredNameRunner;
+import com.sun.sgs.tools.test.IntegrationTest;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares the performance of {@link LockingAccessCoordinator} and {@link
+ * OptimisticAccessCoordinator} on a workload that mixes reads and writes.
+ * Each transaction accesses a number of randomly chosen objects, writing a
+ * percentage of them, and is retried until it commits.
+ */
+@IntegrationTest
+@RunWith(FilteredNameRunner.class)
+public class TestAccessCoordinatorPerformance {
+
+    /** The transaction proxy. */
+    private static final DummyTransactionProxy txnProxy =
+	new DummyTransactionProxy();
+
+    /** The profile collector handle. */
+    private static final DummyProfileCollectorHandle profileCollector =
+	new DummyProfileCollectorHandle();
+
+    /** The number of times to repeat each test. */
+    private final int repeat = Integer.getInteger("test.repeat", 4);
+
+    /** The number of threads. */
+    private final int threads = Integer.getInteger("test.threads", 4);
+
+    /** The number of transactions each thread commits. */
+    private final int count = Integer.getInteger("test.count", 200);
+
+    /** The number of objects. */
+    private final int objects = Integer.getInteger("test.objects", 1000);
+
+    /** The number of objects accessed by each transaction. */
+    private final int accesses = Integer.getInteger("test.accesses", 20);
+
+    /** The percentage of accesses that are writes. */
+    private final int writePercent =
+	Integer.getInteger("test.write.percent", 5);
+
+    /** Creates an instance of this class. */
+    public TestAccessCoordinatorPerformance() { }
+
+    /** Prints the test parameters. */
+    @Before
+    public void setUp() {
+	System.err.println("Parameters:" +
+			   "\n  test.repeat=" + repeat +
+			   "\n  test.threads=" + threads +
+			   "\n  test.count=" + count +
+			   "\n  test.objects=" + objects +
+			   "\n  test.accesses=" + accesses +
+			   "\n  test.write.percent=" + writePercent);
+    }
+
+    /* -- Tests -- */
+
+    @Test
+    public void testLocking() throws Exception {
+	for (int r = 0; r < repeat; r++) {
+	    runWorkload(new LockingAccessCoordinator(
+			    new Properties(), txnProxy, profileCollector));
+	}
+    }
+
+    @Test
+    public void testOptimistic() throws Exception {
+	for (int r = 0; r < repeat; r++) {
+	    runWorkload(new OptimisticAccessCoordinator(
+			    new Properties(), txnProxy, profileCollector));
+	}
+    }
+
+    /* -- Other methods -- */
+
+    /** Runs the workload using the specified coordinator. */
+    private void runWorkload(final AccessCoordinatorHandle coordinator)
+	throws Exception
+    {
+	final AccessReporter<Integer> reporter =
+	    coordinator.registerAccessSource("test", Integer.class);
+	final AtomicLong retries = new AtomicLong();
+	final CountDownLatch done = new CountDownLatch(threads);
+	long start = System.currentTimeMillis();
+	for (int t = 0; t < threads; t++) {
+	    final Random random = new Random(t);
+	    new Thread() {
+		public void run() {
+		    try {
+			for (int c = 0; c < count; c++) {
+			    runTransaction(coordinator, reporter, random,
+					   retries);
+			}
+		    } finally {
+			done.countDown();
+		    }
+		}
+	    }.start();
+	}
+	done.await();
+	long stop = System.currentTimeMillis();
+	System.err.println(
+	    "Time: " + (stop - start) / (float) (threads * count) +
+	    " ms per transaction, " + retries.get() + " retries");
+    }
+
+    /** Runs one transaction, retrying it until it commits. */
+    private void runTransaction(AccessCoordinatorHandle coordinator,
+				AccessReporter<Integer> reporter,
+				Random random,
+				AtomicLong retries)
+    {
+	long requestedStartTime = System.currentTimeMillis();
+	for (int tryCount = 1; true; tryCount++) {
+	    DummyTransaction txn = new DummyTransaction();
+	    coordinator.notifyNewTransaction(
+		txn, requestedStartTime, tryCount);
+	    try {
+		for (int i = 0; i < accesses; i++) {
+		    reporter.reportObjectAccess(
+			txn, random.nextInt(objects),
+			(random.nextInt(100) < writePercent)
+			? AccessType.WRITE : AccessType.READ);
+		}
+		txn.commit();
+		return;
+	    } catch (TransactionAbortedException e) {
+		if (!txn.isAborted()) {
+		    txn.abort(e);
+		}
+		retries.incrementAndGet();
+	    } catch (Exception e) {
+		throw new RuntimeException("Unexpected exception: " + e, e);
+	    }
+	}
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.test.impl.kernel;
+
+import com.sun.sgs.app.TransactionConflictException;
+import com.sun.sgs.impl.kernel.OptimisticAccessCoordinator;
+import com.sun.sgs.kernel.AccessReporter.AccessType;
+import com.sun.sgs.profile.AccessedObjectsDetail;
+import com.sun.sgs.profile.AccessedObjectsDetail.ConflictType;
+import com.sun.sgs.test.util.DummyTransaction;
+import com.sun.sgs.tools.test.FilteredNameRunner;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests the {@link OptimisticAccessCoordinator} class. */
+@RunWith(FilteredNameRunner.class)
+public class TestOptimisticAccessCoordinator
+    extends BasicAccessCoordinatorTest<OptimisticAccessCoordinator>
+{
+    /** Another active transaction. */
+    private DummyTransaction txn2;
+
+    /** Creates an {@code OptimisticAccessCoordinator}. */
+    protected OptimisticAccessCoordinator createAccessCoordinator() {
+	return new OptimisticAccessCoordinator(
+	    properties, txnProxy, profileCollector);
+    }
+
+    /** Initialize fields, including the second transaction. */
+    protected void init() {
+	super.init();
+	txn2 = new DummyTransaction();
+	coordinator.notifyNewTransaction(txn2, 0, 1);
+    }
+
+    /** Clear transaction state, including the second transaction. */
+    @After
+    public void after() throws Exception {
+	if (txn2 != null &&
+	    txn2.getState() != DummyTransaction.State.ABORTED &&
+	    txn2.getState() != DummyTransaction.State.COMMITTED)
+	{
+	    txn2.abort(ABORT_EXCEPTION);
+	}
+	txn2 = null;
+	super.after();
+    }
+
+    /* -- Tests -- */
+
+    /* -- Test constructor -- */
+
+    @Test(expected=NullPointerException.class)
+    public void testConstructorNullProperties() {
+	new OptimisticAccessCoordinator(null, txnProxy, profileCollector);
+    }
+
+    @Test(expected=NullPointerException.class)
+    public void testConstructorNullTxnProxy() {
+	new OptimisticAccessCoordinator(properties, null, profileCollector);
+    }
+
+    @Test(expected=NullPointerException.class)
+    public void testConstructorNullProfileCollector() {
+	new OptimisticAccessCoordinator(properties, txnProxy, null);
+    }
+
+    @Test
+    public void testConstructorIllegalNumStamps() {
+	String[] values = { "0", "-50" };
+	for (String value : values) {
+	    properties.setProperty(
+		OptimisticAccessCoordinator.NUM_STAMPS_PROPERTY, value);
+	    try {
+		new OptimisticAccessCoordinator(
+		    properties, txnProxy, profileCollector);
+		fail("Expected IllegalArgumentException");
+	    } catch (IllegalArgumentException e) {
+		System.err.println(e);
+	    }
+	}
+    }
+
+    /* -- Test conflicts -- */
+
+    @Test
+    public void testReportObjectAccessReadOnlyTxnWrite() {
+	DummyTransaction readOnlyTxn = new DummyTransaction();
+	readOnlyTxn.setReadOnly(true);
+	coordinator.notifyNewTransaction(readOnlyTxn, 0, 1);
+	try {
+	    reporter.reportObjectAccess(readOnlyTxn, "o1", AccessType.WRITE);
+	    fail("Expected IllegalStateException");
+	} catch (IllegalStateException e) {
+	    System.err.println(e);
+	} finally {
+	    readOnlyTxn.abort(ABORT_EXCEPTION);
+	}
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+	reporter.reportObjectAccess(txn, "o1", AccessType.READ);
+	reporter.reportObjectAccess(txn2, "o1", AccessType.READ);
+	txn2.commit();
+	txn.commit();
+	txn = null;
+    }
+
+    @Test
+    public void testConcurrentWritesDifferentObjects() throws Exception {
+	reporter.reportObjectAccess(txn, "o1", AccessType.WRITE);
+	reporter.reportObjectAccess(txn2, "o2", AccessType.WRITE);
+	txn2.commit();
+	txn.commit();
+	txn = null;
+    }
+
+    @Test
+    public void testReadChangedByCommittedWrite() throws Exception {
+	reporter.reportObjectAccess(txn, "o1", AccessType.READ);
+	reporter.reportObjectAccess(txn2, "o1", AccessType.WRITE);
+	txn2.commit();
+	try {
+	    txn.commit();
+	    fail("Expected TransactionConflictException");
+	} catch (TransactionConflictException e) {
+	    System.err.println(e);
+	}
+	txn = null;
+	AccessedObjectsDetail detail =
+	    profileCollector.getAccessedObjectsDetail();
+	assertObjectDetails(detail, "s", "o1", AccessType.READ, null);
+	assertEquals(ConflictType.ACCESS_NOT_GRANTED,
+		     detail.getConflictType());
+    }
+
+    @Test
+    public void testReadAfterCommittedWrite() throws Exception {
+	reporter.reportObjectAccess(txn2, "o1", AccessType.WRITE);
+	txn2.commit();
+	reporter.reportObjectAccess(txn, "o1", AccessType.READ);
+	reporter.reportObjectAccess(txn, "o1", AccessType.WRITE);
+	txn.commit();
+	txn = null;
+    }
+
+    @Test
+    public void testWriteWriteFirstCommitterWins() throws Exception {
+	reporter.reportObjectAccess(txn, "o1", AccessType.WRITE);
+	reporter.reportObjectAccess(txn2, "o1", AccessType.WRITE);
+	txn2.commit();
+	try {
+	    txn.commit();
+	    fail("Expected TransactionConflictException");
+	} catch (TransactionConflictException e) {
+	    System.err.println(e);
+	}
+	txn = null;
+    }
+
+    @Test
+    public void testAccessReservedObject() throws Exception {
+	reporter.reportObjectAccess(txn2, "o1", AccessType.WRITE);
+	txn2.prepare();
+	try {
+	    reporter.reportObjectAccess(
+		txn, "o1", AccessType.READ, "Object 1");
+	    fail("Expected TransactionConflictException");
+	} catch (TransactionConflictException e) {
+	    System.err.println(e);
+	}
+	txn = null;
+	AccessedObjectsDetail detail =
+	    profileCollector.getAccessedObjectsDetail();
+	assertObjectDetails(detail, "s", "o1", AccessType.READ, "Object 1");
+	assertEquals(ConflictType.ACCESS_NOT_GRANTED,
+		     detail.getConflictType());
+	assertArrayEquals(txn2.getId(), detail.getConflictingId());
+	txn2.commit();
+    }
+
+    @Test
+    public void testValidateReservedObject() throws Exception {
+	reporter.reportObjectAccess(txn, "o1", AccessType.READ);
+	reporter.reportObjectAccess(txn2, "o1", AccessType.WRITE);
+	txn2.prepare();
+	try {
+	    txn.commit();
+	    fail("Expected TransactionConflictException");
+	} catch (TransactionConflictException e) {
+	    System.err.println(e);
+	}
+	txn = null;
+	AccessedObjectsDetail detail =
+	    profileCollector.getAccessedObjectsDetail();
+	assertArrayEquals(txn2.getId(), detail.getConflictingId());
+	txn2.commit();
+    }
+
+    @Test
+    public void testAbortReleasesReservation() throws Exception {
+	reporter.reportObjectAccess(txn, "o1", AccessType.READ);
+	reporter.reportObjectAccess(txn2, "o1", AccessType.WRITE);
+	txn2.prepare();
+	txn2.abort(ABORT_EXCEPTION);
+	reporter.reportObjectAccess(txn, "o2", AccessType.WRITE);
+	txn.commit();
+	txn = null;
+    }
+
+    @Test
+    public void testWriteAfterValidation() throws Exception {
+	reporter.reportObjectAccess(txn, "o1", AccessType.READ);
+	txn.prepare();
+	reporter.reportObjectAccess(txn, "o1", AccessType.WRITE);
+	try {
+	    reporter.reportObjectAccess(txn2, "o1", AccessType.READ);
+	    fail("Expected TransactionConflictException");
+	} catch (TransactionConflictException e) {
+	    System.err.println(e);
+	}
+	txn.commit();
+	txn = null;
+    }
+
+    @Test
+    public void testWriteAfterValidationConflict() throws Exception {
+	reporter.reportObjectAccess(txn, "o1", AccessType.READ);
+	reporter.reportObjectAccess(txn2, "o1", AccessType.WRITE);
+	txn.prepare();
+	txn2.commit();
+	try {
+	    reporter.reportObjectAccess(txn, "o1", AccessType.WRITE);
+	    fail("Expected TransactionConflictException");
+	} catch (TransactionConflictException e) {
+	    System.err.println(e);
+	}
+	txn = null;
+    }
+
+    @Test
+    public void testSharedStamp() throws Exception {
+	txn.abort(ABORT_EXCEPTION);
+	txn2.abort(ABORT_EXCEPTION);
+	properties.setProperty(
+	    OptimisticAccessCoordinator.NUM_STAMPS_PROPERTY, "1");
+	init();
+	reporter.reportObjectAccess(txn, "o1", AccessType.READ);
+	reporter.reportObjectAccess(txn, "o2", AccessType.WRITE);
+	reporter.reportObjectAccess(txn2, "o3", AccessType.WRITE);
+	txn2.commit();
+	try {
+	    txn.commit();
+	    fail("Expected TransactionConflictException");
+	} catch (TransactionConflictException e) {
+	    System.err.println(e);
+	}
+	txn = null;
+    }
+}
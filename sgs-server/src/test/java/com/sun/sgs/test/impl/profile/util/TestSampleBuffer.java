@@ -0,0 +1,107 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.test.impl.profile.util;
+
+import com.sun.sgs.impl.profile.util.SampleBuffer;
+import com.sun.sgs.tools.test.FilteredNameRunner;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Test the SampleBuffer class. */
+@RunWith(FilteredNameRunner.class)
+public class TestSampleBuffer {
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testConstructorZero() {
+	new SampleBuffer(0);
+    }
+
+    @Test
+    public void testEmpty() {
+	SampleBuffer buffer = new SampleBuffer(3);
+	assertEquals(3, buffer.getCapacity());
+	assertEquals(0, buffer.size());
+	assertTrue(buffer.getSamples().isEmpty());
+    }
+
+    @Test
+    public void testNotFull() {
+	SampleBuffer buffer = new SampleBuffer(3);
+	buffer.add(4);
+	buffer.add(5);
+	assertEquals(2, buffer.size());
+	assertEquals(Arrays.asList(4L, 5L), buffer.getSamples());
+    }
+
+    @Test
+    public void testDropsOldest() {
+	SampleBuffer buffer = new SampleBuffer(3);
+	for (long i = 1; i <= 7; i++) {
+	    buffer.add(i);
+	}
+	assertEquals(3, buffer.size());
+	assertEquals(Arrays.asList(5L, 6L, 7L), buffer.getSamples());
+    }
+
+    @Test
+    public void testConcurrentAdds() throws Exception {
+	final SampleBuffer buffer = new SampleBuffer(100);
+	Thread[] threads = new Thread[4];
+	for (int i = 0; i < threads.length; i++) {
+	    final long base = i * 1000000L;
+	    threads[i] = new Thread() {
+		public void run() {
+		    for (long j = 0; j < 10000; j++) {
+			buffer.add(base + j);
+		    }
+		}
+	    };
+	    threads[i].start();
+	}
+	for (Thread thread : threads) {
+	    thread.join(10000);
+	    assertFalse(thread.isAlive());
+	}
+	List<Long> samples = buffer.getSamples();
+	assertEquals(100, buffer.size());
+	assertEquals(100, samples.size());
+	/* Samples from each thread appear in the order they were added */
+	long[] last = new long[threads.length];
+	Arrays.fill(last, -1);
+	for (long sample : samples) {
+	    int thread = (int) (sample / 1000000L);
+	    assertTrue(sample > last[thread]);
+	    last[thread] = sample;
+	}
+    }
+}
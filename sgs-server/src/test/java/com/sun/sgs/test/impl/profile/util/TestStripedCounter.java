@@ -0,0 +1,88 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.test.impl.profile.util;
+
+import com.sun.sgs.impl.profile.util.StripedCounter;
+import com.sun.sgs.tools.test.FilteredNameRunner;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Test the StripedCounter class. */
+@RunWith(FilteredNameRunner.class)
+public class TestStripedCounter {
+
+    @Test
+    public void testInitial() {
+	assertEquals(0, new StripedCounter().get());
+    }
+
+    @Test
+    public void testIncrementAndAdd() {
+	StripedCounter counter = new StripedCounter();
+	counter.increment();
+	counter.add(5);
+	counter.add(-2);
+	assertEquals(4, counter.get());
+	assertEquals("4", counter.toString());
+    }
+
+    @Test
+    public void testClear() {
+	StripedCounter counter = new StripedCounter();
+	counter.add(7);
+	counter.clear();
+	assertEquals(0, counter.get());
+	counter.increment();
+	assertEquals(1, counter.get());
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+	final StripedCounter counter = new StripedCounter();
+	final int perThread = 10000;
+	Thread[] threads = new Thread[8];
+	for (int i = 0; i < threads.length; i++) {
+	    threads[i] = new Thread() {
+		public void run() {
+		    for (int j = 0; j < perThread; j++) {
+			counter.increment();
+			counter.add(2);
+		    }
+		}
+	    };
+	    threads[i].start();
+	}
+	for (Thread thread : threads) {
+	    thread.join(10000);
+	    assertFalse(thread.isAlive());
+	}
+	assertEquals(3L * perThread * threads.length, counter.get());
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.test.impl.protocol.simple;
+
+import com.sun.sgs.impl.protocol.simple.MessageCompressor;
+import com.sun.sgs.tools.test.FilteredNameRunner;
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Test the MessageCompressor class. */
+@RunWith(FilteredNameRunner.class)
+public class TestMessageCompressor {
+
+    private static final byte[] DICTIONARY =
+	"position=;velocity=;heading=;health=;".getBytes();
+
+    @Test
+    public void testRepetitive() {
+	byte[] payload = repeat("position=10,20;", 40);
+	MessageCompressor compressor = new MessageCompressor();
+	byte[] compressed = compressor.compress(payload, 0, payload.length);
+	assertNotNull(compressed);
+	assertTrue(compressed.length < payload.length / 4);
+	assertArrayEquals(
+	    payload,
+	    compressor.decompress(
+		compressed, 0, compressed.length, payload.length));
+    }
+
+    @Test
+    public void testRandomNotCompressed() {
+	byte[] payload = new byte[1000];
+	new Random(1).nextBytes(payload);
+	assertNull(new MessageCompressor().compress(
+		       payload, 0, payload.length));
+    }
+
+    @Test
+    public void testShortNotCompressed() {
+	byte[] payload = "aaaaaaaa".getBytes();
+	assertNull(new MessageCompressor().compress(
+		       payload, 0, payload.length));
+    }
+
+    @Test
+    public void testOffset() {
+	byte[] payload = repeat("heading=90;", 20);
+	byte[] src = new byte[payload.length + 10];
+	System.arraycopy(payload, 0, src, 5, payload.length);
+	MessageCompressor compressor = new MessageCompressor();
+	byte[] compressed = compressor.compress(src, 5, payload.length);
+	byte[] padded = new byte[compressed.length + 3];
+	System.arraycopy(compressed, 0, padded, 3, compressed.length);
+	assertArrayEquals(
+	    payload,
+	    compressor.decompress(
+		padded, 3, compressed.length, payload.length));
+    }
+
+    @Test
+    public void testDictionary() {
+	byte[] payload =
+	    "position=1,2;velocity=3,4;heading=5;health=6;".getBytes();
+	assertNull(new MessageCompressor().compress(
+		       payload, 0, payload.length));
+	MessageCompressor compressor = new MessageCompressor(DICTIONARY);
+	byte[] compressed = compressor.compress(payload, 0, payload.length);
+	assertNotNull(compressed);
+	assertArrayEquals(
+	    payload,
+	    compressor.decompress(
+		compressed, 0, compressed.length, payload.length));
+    }
+
+    @Test
+    public void testRoundTripRandomPayloads() {
+	Random random = new Random(2);
+	MessageCompressor[] compressors = {
+	    new MessageCompressor(), new MessageCompressor(DICTIONARY) };
+	for (int i = 0; i < 1000; i++) {
+	    byte[] payload = new byte[random.nextInt(2000)];
+	    for (int j = 0; j < payload.length; j++) {
+		payload[j] = (byte) random.nextInt(4);
+	    }
+	    for (MessageCompressor compressor : compressors) {
+		byte[] compressed =
+		    compressor.compress(payload, 0, payload.length);
+		if (compressed != null) {
+		    assertArrayEquals(
+			payload,
+			compressor.decompress(
+			    compressed, 0, compressed.length,
+			    payload.length));
+		}
+	    }
+	}
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testDecompressWrongLength() {
+	byte[] payload = repeat("health=100;", 20);
+	MessageCompressor compressor = new MessageCompressor();
+	byte[] compressed = compressor.compress(payload, 0, payload.length);
+	compressor.decompress(
+	    compressed, 0, compressed.length, payload.length + 1);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testDecompressTruncated() {
+	byte[] payload = repeat("health=100;", 20);
+	MessageCompressor compressor = new MessageCompressor();
+	byte[] compressed = compressor.compress(payload, 0, payload.length);
+	compressor.decompress(
+	    Arrays.copyOf(compressed, compressed.length - 3), 0,
+	    compressed.length - 3, payload.length);
+    }
+
+    /** Returns the bytes of the specified string repeated. */
+    private static byte[] repeat(String s, int count) {
+	StringBuilder builder = new StringBuilder();
+	for (int i = 0; i < count; i++) {
+	    builder.append(s);
+	}
+	return builder.toString().getBytes();
+    }
+}
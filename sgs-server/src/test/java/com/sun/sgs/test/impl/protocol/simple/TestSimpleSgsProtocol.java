@@ -46,6 +46,9 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -57,6 +60,11 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
 /**
  * Test the simple sgs protocol.
  */
@@ -64,6 +72,13 @@ import org.junit.runner.RunWith;
 public class TestSimpleSgsProtocol {
 
     private static final String APP_NAME = "TestSimpleSgsProtocol";
+
+    /** The prefix of the names of the acceptor's login threads. */
+    private static final String LOGIN_THREAD_PREFIX =
+	"com.sun.sgs.impl.protocol.simple.login";
+
+    /** The time to wait for an expected event. */
+    private static final long WAIT_TIME = 5000;
     
     private SgsTestNode serverNode;
     
@@ -77,6 +92,7 @@ public class TestSimpleSgsProtocol {
         serverNode = 
                 new SgsTestNode(APP_NAME, DummyAppListener.class, props, true);
         acceptor = null;
+        DummyTransport.writtenOpcodes.clear();
     }
 
     @After
@@ -147,6 +163,65 @@ public class TestSimpleSgsProtocol {
         close();
     }
     
+    @Test
+    public void testLoginAuthenticatedOnLoginThread() throws Exception {
+        acceptor = createAcceptor(1, 1);
+        DummyListener listener = new DummyListener();
+        acceptor.accept(listener);
+        listener.waitForLogin();
+        assertNotNull(listener.identity);
+        assertTrue(listener.loginThread.getName(),
+                   listener.loginThread.getName().startsWith(
+                       LOGIN_THREAD_PREFIX));
+        close();
+    }
+
+    @Test
+    public void testLoginRefusedWhenLoginThreadsBusy() throws Exception {
+        SimpleSgsProtocolAcceptor simpleAcceptor = createAcceptor(1, 0);
+        acceptor = simpleAcceptor;
+        BlockingTask task = new BlockingTask();
+        try {
+            assertTrue(simpleAcceptor.scheduleLoginTask(task));
+            task.waitForStart();
+            DummyListener listener = new DummyListener();
+            acceptor.accept(listener);
+            waitForOpcode(SimpleSgsProtocol.LOGIN_FAILURE);
+            assertNull(listener.identity);
+        } finally {
+            task.release();
+        }
+        close();
+    }
+
+    @Test
+    public void testScheduleLoginTaskQueueFull() throws Exception {
+        SimpleSgsProtocolAcceptor simpleAcceptor = createAcceptor(1, 1);
+        acceptor = simpleAcceptor;
+        BlockingTask first = new BlockingTask();
+        BlockingTask second = new BlockingTask();
+        try {
+            assertTrue(simpleAcceptor.scheduleLoginTask(first));
+            first.waitForStart();
+            assertTrue(simpleAcceptor.scheduleLoginTask(second));
+            assertFalse(simpleAcceptor.scheduleLoginTask(new BlockingTask()));
+            first.release();
+            second.waitForStart();
+        } finally {
+            first.release();
+            second.release();
+        }
+        close();
+    }
+
+    @Test
+    public void testScheduleLoginTaskAfterClose() throws Exception {
+        SimpleSgsProtocolAcceptor simpleAcceptor = createAcceptor(1, 1);
+        acceptor = simpleAcceptor;
+        close();
+        assertFalse(simpleAcceptor.scheduleLoginTask(new BlockingTask()));
+    }
+
 //    @Test
 //    public void testSessionMessage() throws Exception {
 //        final Properties props = new Properties();
@@ -165,6 +240,42 @@ public class TestSimpleSgsProtocol {
 //        close();
 //    }
         
+    /**
+     * Creates an acceptor that uses the dummy transport and has the
+     * specified number of login threads and login queue size.
+     */
+    private SimpleSgsProtocolAcceptor createAcceptor(
+        int loginThreads, int loginQueueSize)
+        throws Exception
+    {
+        final Properties props = new Properties();
+        props.setProperty(StandardProperties.APP_NAME, APP_NAME);
+        props.setProperty(SimpleSgsProtocolAcceptor.TRANSPORT_PROPERTY,
+                          DummyTransport.class.getName());
+        props.setProperty(SimpleSgsProtocolAcceptor.LOGIN_THREADS_PROPERTY,
+                          String.valueOf(loginThreads));
+        props.setProperty(
+            SimpleSgsProtocolAcceptor.LOGIN_QUEUE_SIZE_PROPERTY,
+            String.valueOf(loginQueueSize));
+        return new SimpleSgsProtocolAcceptor(props,
+                                             serverNode.getSystemRegistry(),
+                                             serverNode.getProxy());
+    }
+
+    /**
+     * Waits for a message with the specified opcode to be written to a
+     * dummy transport connection.
+     */
+    private static void waitForOpcode(byte opcode) throws Exception {
+        long stop = System.currentTimeMillis() + WAIT_TIME;
+        while (!DummyTransport.writtenOpcodes.contains(opcode)) {
+            if (System.currentTimeMillis() > stop) {
+                throw new Exception("Opcode " + opcode + " not written");
+            }
+            Thread.sleep(10);
+        }
+    }
+
     private void close() throws IOException {
         if (acceptor != null) {
             acceptor.close();
@@ -174,11 +285,13 @@ public class TestSimpleSgsProtocol {
     
     private static class DummyListener implements ProtocolListener {
 
-        Identity identity = null;
-        SessionProtocol protocol = null;
-	RequestCompletionHandler<SessionProtocolHandler> completionHandler;
+        volatile Identity identity = null;
+        volatile SessionProtocol protocol = null;
+	volatile RequestCompletionHandler<SessionProtocolHandler>
+	    completionHandler;
+        volatile Thread loginThread = null;
         
-        public void newLogin(
+        public synchronized void newLogin(
 	    Identity identity, SessionProtocol protocol,
 	    RequestCompletionHandler<SessionProtocolHandler> completionHandler)
         {
@@ -188,6 +301,20 @@ public class TestSimpleSgsProtocol {
             this.identity = identity;
             this.protocol = protocol;
 	    this.completionHandler = completionHandler;
+            loginThread = Thread.currentThread();
+            notifyAll();
+        }
+
+        /** Waits for newLogin to be called. */
+        synchronized void waitForLogin() throws InterruptedException {
+            long stop = System.currentTimeMillis() + WAIT_TIME;
+            while (loginThread == null) {
+                long wait = stop - System.currentTimeMillis();
+                if (wait <= 0) {
+                    throw new RuntimeException("newLogin not called");
+                }
+                wait(wait);
+            }
         }
 
 	public void relocatedSession(
@@ -229,6 +356,30 @@ public class TestSimpleSgsProtocol {
         }
     }
 
+    /** A task that blocks until released. */
+    private static class BlockingTask implements Runnable {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        public void run() {
+            started.countDown();
+            try {
+                released.await(WAIT_TIME, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+            }
+        }
+
+        void waitForStart() throws InterruptedException {
+            assertTrue("Task did not start",
+                       started.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        }
+
+        void release() {
+            released.countDown();
+        }
+    }
+
     private static class CompletedFuture implements Future<Void> {
 
 	CompletedFuture() {
@@ -257,6 +408,10 @@ public class TestSimpleSgsProtocol {
             
     public static class DummyTransport implements Transport {
 
+        /** The opcodes of the messages written to any connection. */
+        static final Queue<Byte> writtenOpcodes =
+            new ConcurrentLinkedQueue<Byte>();
+
         private final TransportDescriptor descriptor;
         private final Delivery delivery;
         
@@ -342,6 +497,8 @@ public class TestSimpleSgsProtocol {
             public <A> IoFuture<Integer, A> write(ByteBuffer src, A attachment,
                                   CompletionHandler<Integer, ? super A> handler)
             {
+                // Skip the two byte message length
+                writtenOpcodes.add(src.get(src.position() + 2));
                 message = ByteBuffer.allocate(src.remaining());
                 message.put(src);
                 if (handler != null) {
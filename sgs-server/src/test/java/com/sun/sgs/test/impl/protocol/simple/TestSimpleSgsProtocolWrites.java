@@ -0,0 +1,955 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.test.impl.protocol.simple;
+
+import com.sun.sgs.app.Delivery;
+import com.sun.sgs.auth.Identity;
+import com.sun.sgs.impl.kernel.StandardProperties;
+import com.sun.sgs.impl.nio.AttachedFuture;
+import com.sun.sgs.impl.protocol.simple.MessageCompressor;
+import com.sun.sgs.impl.profile.ProfileCollectorImpl;
+import com.sun.sgs.impl.protocol.simple.SimpleSgsProtocolAcceptor;
+import com.sun.sgs.impl.protocol.simple.SimpleSgsProtocolImpl;
+import com.sun.sgs.impl.sharedutil.MessageBuffer;
+import com.sun.sgs.management.ClientSessionServiceMXBean;
+import com.sun.sgs.nio.channels.AsynchronousByteChannel;
+import com.sun.sgs.nio.channels.CompletionHandler;
+import com.sun.sgs.nio.channels.IoFuture;
+import com.sun.sgs.profile.ProfileCollector;
+import com.sun.sgs.profile.ProfileCollector.ProfileLevel;
+import com.sun.sgs.protocol.ProtocolListener;
+import com.sun.sgs.protocol.RequestCompletionHandler;
+import com.sun.sgs.protocol.SessionProtocol;
+import com.sun.sgs.protocol.SessionProtocolHandler;
+import com.sun.sgs.protocol.simple.SimpleSgsProtocol;
+import com.sun.sgs.test.util.SgsTestNode;
+import com.sun.sgs.test.util.SgsTestNode.DummyAppListener;
+import com.sun.sgs.tools.test.FilteredNameRunner;
+import com.sun.sgs.transport.ConnectionHandler;
+import com.sun.sgs.transport.Transport;
+import com.sun.sgs.transport.TransportDescriptor;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test how the simple sgs protocol queues, drops, and limits the messages
+ * it writes to a client, using a transport whose connection can stop
+ * completing writes, as a client that stops reading would.
+ */
+@RunWith(FilteredNameRunner.class)
+public class TestSimpleSgsProtocolWrites {
+
+    private static final String APP_NAME = "TestSimpleSgsProtocolWrites";
+
+    /** The time to wait for an expected event. */
+    private static final long WAIT_TIME = 5000;
+
+    /** The property that specifies the version byte of the login request. */
+    private static final String LOGIN_VERSION_PROPERTY =
+	TestSimpleSgsProtocolWrites.class.getName() + ".login.version";
+
+    /** The channel IDs used by the tests. */
+    private static final BigInteger CHANNEL1 = BigInteger.valueOf(1);
+    private static final BigInteger CHANNEL2 = BigInteger.valueOf(2);
+
+    private SgsTestNode serverNode;
+
+    /** The client session service bean for the server node. */
+    private ClientSessionServiceMXBean bean;
+
+    private SimpleSgsProtocolAcceptor acceptor;
+
+    /** The connection for the client that logged in. */
+    private StallingChannel channel;
+
+    /** The listener notified of the client's login. */
+    private Listener listener;
+
+    /** The protocol for the client that logged in. */
+    private SessionProtocol protocol;
+
+    @Before
+    public void setUp() throws Exception {
+	Properties props =
+	    SgsTestNode.getDefaultProperties(APP_NAME, null,
+					     DummyAppListener.class);
+	serverNode =
+	    new SgsTestNode(APP_NAME, DummyAppListener.class, props, true);
+	ProfileCollector collector = serverNode.getSystemRegistry().
+	    getComponent(ProfileCollector.class);
+	collector.getConsumer(
+	    ProfileCollectorImpl.CORE_CONSUMER_PREFIX +
+	    "ClientSessionService").setProfileLevel(ProfileLevel.MAX);
+	bean = (ClientSessionServiceMXBean) collector.getRegisteredMBean(
+	    ClientSessionServiceMXBean.MXBEAN_NAME);
+	acceptor = null;
+	channel = null;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+	if (acceptor != null) {
+	    acceptor.close();
+	    acceptor = null;
+	}
+	if (channel != null) {
+	    channel.shutdown();
+	    channel = null;
+	}
+	serverNode.shutdown(true);
+	serverNode = null;
+    }
+
+    /* -- Tests -- */
+
+    @Test
+    public void testReliableWrittenBeforeUnreliable() throws Exception {
+	connect(new Properties(), true);
+	sessionMessage(1, 10, Delivery.UNRELIABLE);
+	sessionMessage(2, 10, Delivery.RELIABLE);
+	channelMessage(CHANNEL1, 3, 10, Delivery.UNRELIABLE);
+	channelMessage(CHANNEL1, 4, 10, Delivery.RELIABLE);
+	channel.release();
+	List<byte[]> written = waitForWritten(5);
+	assertEquals(SimpleSgsProtocol.LOGIN_SUCCESS, written.get(0)[0]);
+	assertSessionMessage(2, written.get(1));
+	assertChannelMessage(4, written.get(2));
+	assertSessionMessage(1, written.get(3));
+	assertChannelMessage(3, written.get(4));
+    }
+
+    @Test
+    public void testUnreliableSupersedesSameKind() throws Exception {
+	Properties props = new Properties();
+	props.setProperty(
+	    SimpleSgsProtocolAcceptor.UNRELIABLE_WRITE_LIMIT_PROPERTY, "120");
+	connect(props, true);
+	long dropped = bean.getOutboundMessagesDropped();
+	/* 41 + 44 + 41 bytes exceeds the limit, so the first goes */
+	sessionMessage(1, 40, Delivery.UNRELIABLE);
+	channelMessage(CHANNEL1, 2, 40, Delivery.UNRELIABLE);
+	sessionMessage(3, 40, Delivery.UNRELIABLE);
+	assertEquals(dropped + 1, bean.getOutboundMessagesDropped());
+	channel.release();
+	List<byte[]> written = waitForWritten(3);
+	assertChannelMessage(2, written.get(1));
+	assertSessionMessage(3, written.get(2));
+    }
+
+    @Test
+    public void testUnreliableDropsOldest() throws Exception {
+	Properties props = new Properties();
+	props.setProperty(
+	    SimpleSgsProtocolAcceptor.UNRELIABLE_WRITE_LIMIT_PROPERTY, "120");
+	connect(props, true);
+	long dropped = bean.getOutboundMessagesDropped();
+	/* Channel messages for different channels are different kinds */
+	channelMessage(CHANNEL1, 1, 40, Delivery.UNRELIABLE);
+	channelMessage(CHANNEL2, 2, 40, Delivery.UNRELIABLE);
+	sessionMessage(3, 40, Delivery.UNRELIABLE);
+	assertEquals(dropped + 1, bean.getOutboundMessagesDropped());
+	channel.release();
+	List<byte[]> written = waitForWritten(3);
+	assertChannelMessage(2, written.get(1));
+	assertSessionMessage(3, written.get(2));
+    }
+
+    @Test
+    public void testUnreliableLargerThanLimitDropped() throws Exception {
+	Properties props = new Properties();
+	props.setProperty(
+	    SimpleSgsProtocolAcceptor.UNRELIABLE_WRITE_LIMIT_PROPERTY, "120");
+	connect(props, true);
+	long dropped = bean.getOutboundMessagesDropped();
+	sessionMessage(1, 40, Delivery.UNRELIABLE);
+	sessionMessage(2, 200, Delivery.UNRELIABLE);
+	sessionMessage(3, 40, Delivery.RELIABLE);
+	assertEquals(dropped + 2, bean.getOutboundMessagesDropped());
+	channel.release();
+	List<byte[]> written = waitForWritten(2);
+	assertSessionMessage(3, written.get(1));
+    }
+
+    @Test
+    public void testUnreliableNotDroppedWhenClientKeepsUp()
+	throws Exception
+    {
+	Properties props = new Properties();
+	props.setProperty(
+	    SimpleSgsProtocolAcceptor.UNRELIABLE_WRITE_LIMIT_PROPERTY, "0");
+	connect(props, false);
+	channel.waitForCompleted(1);
+	long dropped = bean.getOutboundMessagesDropped();
+	/*
+	 * With no write underway, a message is written even though it is
+	 * larger than the limit.
+	 */
+	for (int i = 1; i <= 5; i++) {
+	    sessionMessage(i, 100, Delivery.UNRELIABLE);
+	    channel.waitForCompleted(i + 1);
+	}
+	List<byte[]> written = waitForWritten(6);
+	for (int i = 1; i <= 5; i++) {
+	    assertSessionMessage(i, written.get(i));
+	}
+	assertEquals(dropped, bean.getOutboundMessagesDropped());
+    }
+
+    @Test
+    public void testChannelLeaveRemovesQueuedChannelMessages()
+	throws Exception
+    {
+	connect(new Properties(), true);
+	long dropped = bean.getOutboundMessagesDropped();
+	channelMessage(CHANNEL1, 1, 10, Delivery.UNRELIABLE);
+	channelMessage(CHANNEL2, 2, 10, Delivery.UNRELIABLE);
+	channelMessage(CHANNEL1, 3, 10, Delivery.UNRELIABLE);
+	protocol.channelLeave(CHANNEL1);
+	assertEquals(dropped + 2, bean.getOutboundMessagesDropped());
+	channel.release();
+	List<byte[]> written = waitForWritten(3);
+	assertEquals(SimpleSgsProtocol.CHANNEL_LEAVE, written.get(1)[0]);
+	assertChannelMessage(2, written.get(2));
+    }
+
+    @Test
+    public void testReliableOverflowDisconnects() throws Exception {
+	Properties props = new Properties();
+	props.setProperty(
+	    SimpleSgsProtocolAcceptor.RELIABLE_WRITE_LIMIT_PROPERTY, "65535");
+	connect(props, true);
+	long overflows = bean.getOutboundOverflowDisconnects();
+	/* Eight 8002 byte messages fit in the limit */
+	for (int i = 1; i <= 8; i++) {
+	    sessionMessage(i, 8001, Delivery.RELIABLE);
+	}
+	assertTrue(protocol.isOpen());
+	assertEquals(overflows, bean.getOutboundOverflowDisconnects());
+	sessionMessage(9, 8001, Delivery.RELIABLE);
+	assertFalse(protocol.isOpen());
+	assertEquals(overflows + 1, bean.getOutboundOverflowDisconnects());
+	listener.sessionHandler.waitForDisconnect();
+	channel.release();
+	List<byte[]> written = waitForWritten(1);
+	assertEquals(SimpleSgsProtocol.LOGIN_SUCCESS, written.get(0)[0]);
+    }
+
+    @Test
+    public void testUnreliableDoesNotCountTowardReliableLimit()
+	throws Exception
+    {
+	Properties props = new Properties();
+	props.setProperty(
+	    SimpleSgsProtocolAcceptor.RELIABLE_WRITE_LIMIT_PROPERTY, "65535");
+	connect(props, true);
+	long overflows = bean.getOutboundOverflowDisconnects();
+	for (int i = 1; i <= 8; i++) {
+	    sessionMessage(i, 8001, Delivery.RELIABLE);
+	    sessionMessage(i, 8001, Delivery.UNRELIABLE);
+	}
+	assertTrue(protocol.isOpen());
+	assertEquals(overflows, bean.getOutboundOverflowDisconnects());
+	channel.release();
+	waitForWritten(17);
+    }
+
+    @Test
+    public void testQueueDepthReported() throws Exception {
+	connect(new Properties(), true);
+	for (int i = 1; i <= 3; i++) {
+	    sessionMessage(i, 50, Delivery.UNRELIABLE);
+	}
+	sessionMessage(4, 50, Delivery.RELIABLE);
+	assertTrue("max queue bytes: " + bean.getOutboundQueueBytesMax(),
+		   bean.getOutboundQueueBytesMax() >= 4 * 51);
+	channel.release();
+	waitForWritten(5);
+    }
+
+    @Test
+    public void testBundledMessagesFramed() throws Exception {
+	connect(new Properties(), true, SimpleSgsProtocolImpl.BUNDLE_FLAG);
+	sessionMessage(1, 10, Delivery.UNRELIABLE);
+	sessionMessage(2, 20, Delivery.RELIABLE);
+	channelMessage(CHANNEL1, 3, 30, Delivery.RELIABLE);
+	channel.release();
+	List<byte[]> written = waitForWritten(2);
+	assertEquals(SimpleSgsProtocol.LOGIN_SUCCESS, written.get(0)[0]);
+	List<byte[]> bundled = unbundle(written.get(1));
+	assertEquals(3, bundled.size());
+	assertSessionMessage(2, bundled.get(0));
+	assertEquals(21, bundled.get(0).length);
+	assertChannelMessage(3, bundled.get(1));
+	assertEquals(34, bundled.get(1).length);
+	assertSessionMessage(1, bundled.get(2));
+	assertEquals(11, bundled.get(2).length);
+    }
+
+    @Test
+    public void testNotBundledWithoutFlag() throws Exception {
+	connect(new Properties(), true, (byte) 0);
+	sessionMessage(1, 10, Delivery.UNRELIABLE);
+	sessionMessage(2, 20, Delivery.RELIABLE);
+	channelMessage(CHANNEL1, 3, 30, Delivery.RELIABLE);
+	channel.release();
+	List<byte[]> written = waitForWritten(4);
+	assertSessionMessage(2, written.get(1));
+	assertChannelMessage(3, written.get(2));
+	assertSessionMessage(1, written.get(3));
+    }
+
+    @Test
+    public void testBundleLimitedToMaxPayload() throws Exception {
+	connect(new Properties(), true, SimpleSgsProtocolImpl.BUNDLE_FLAG);
+	/* Only three of these fit in a bundle */
+	for (int i = 1; i <= 4; i++) {
+	    sessionMessage(i, 20000, Delivery.RELIABLE);
+	}
+	channel.release();
+	List<byte[]> written = waitForWritten(3);
+	List<byte[]> bundled = unbundle(written.get(1));
+	assertEquals(3, bundled.size());
+	for (int i = 0; i < 3; i++) {
+	    assertSessionMessage(i + 1, bundled.get(i));
+	    assertEquals(20001, bundled.get(i).length);
+	}
+	assertTrue(written.get(1).length <=
+		   SimpleSgsProtocol.MAX_PAYLOAD_LENGTH);
+	assertSessionMessage(4, written.get(2));
+    }
+
+    @Test
+    public void testBundleFlushInterval() throws Exception {
+	Properties props = new Properties();
+	props.setProperty(
+	    SimpleSgsProtocolAcceptor.BUNDLE_FLUSH_INTERVAL_PROPERTY, "500");
+	connect(props, false, SimpleSgsProtocolImpl.BUNDLE_FLAG);
+	channel.waitForCompleted(1);
+	long start = System.currentTimeMillis();
+	sessionMessage(1, 10, Delivery.UNRELIABLE);
+	sessionMessage(2, 10, Delivery.RELIABLE);
+	Thread.sleep(100);
+	assertEquals(1, channel.getWritten().size());
+	channel.waitForWritten(2);
+	long elapsed = System.currentTimeMillis() - start;
+	assertTrue("elapsed: " + elapsed, elapsed >= 500);
+	List<byte[]> written = waitForWritten(2);
+	List<byte[]> bundled = unbundle(written.get(1));
+	assertEquals(2, bundled.size());
+	assertSessionMessage(2, bundled.get(0));
+	assertSessionMessage(1, bundled.get(1));
+    }
+
+    @Test
+    public void testNoFlushIntervalWithoutFlag() throws Exception {
+	Properties props = new Properties();
+	props.setProperty(
+	    SimpleSgsProtocolAcceptor.BUNDLE_FLUSH_INTERVAL_PROPERTY, "1000");
+	connect(props, false, (byte) 0);
+	channel.waitForCompleted(1);
+	long start = System.currentTimeMillis();
+	sessionMessage(1, 10, Delivery.RELIABLE);
+	channel.waitForWritten(2);
+	long elapsed = System.currentTimeMillis() - start;
+	assertTrue("elapsed: " + elapsed, elapsed < 500);
+	assertSessionMessage(1, waitForWritten(2).get(1));
+    }
+
+    @Test
+    public void testReliableLimitAfterBundling() throws Exception {
+	Properties props = new Properties();
+	props.setProperty(
+	    SimpleSgsProtocolAcceptor.RELIABLE_WRITE_LIMIT_PROPERTY, "65535");
+	connect(props, true, SimpleSgsProtocolImpl.BUNDLE_FLAG);
+	long overflows = bean.getOutboundOverflowDisconnects();
+	for (int i = 1; i <= 7; i++) {
+	    sessionMessage(i, 8001, Delivery.RELIABLE);
+	}
+	channel.release();
+	channel.waitForCompleted(2);
+	assertEquals(7, unbundle(channel.getWritten().get(1)).size());
+	/*
+	 * With a write underway, the bundled messages must no longer count
+	 * toward the limit, or these would overflow it.
+	 */
+	channel.stall();
+	sessionMessage(8, 10, Delivery.RELIABLE);
+	for (int i = 9; i <= 16; i++) {
+	    sessionMessage(i, 8001, Delivery.RELIABLE);
+	}
+	assertTrue(protocol.isOpen());
+	assertEquals(overflows, bean.getOutboundOverflowDisconnects());
+	channel.release();
+	List<byte[]> written = waitForWritten(4);
+	assertSessionMessage(8, written.get(2));
+	List<byte[]> bundled = unbundle(written.get(3));
+	assertEquals(8, bundled.size());
+	for (int i = 0; i < 8; i++) {
+	    assertSessionMessage(i + 9, bundled.get(i));
+	}
+    }
+
+    @Test
+    public void testRewrittenChannelMessageCompressedEachTime()
+	throws Exception
+    {
+	connect(new Properties(), false,
+		SimpleSgsProtocolImpl.COMPRESSION_FLAG);
+	channel.waitForCompleted(1);
+	/*
+	 * Like a message rewritten by a channel message filter, each
+	 * message reuses the same array with different contents.
+	 */
+	byte[] payload = new byte[1000];
+	for (int i = 1; i <= 2; i++) {
+	    Arrays.fill(payload, (byte) i);
+	    protocol.channelMessage(
+		CHANNEL1, ByteBuffer.wrap(payload), Delivery.RELIABLE);
+	    channel.waitForCompleted(i + 1);
+	}
+	List<byte[]> written = waitForWritten(3);
+	MessageCompressor compressor = new MessageCompressor();
+	for (int i = 1; i <= 2; i++) {
+	    ByteBuffer buf = ByteBuffer.wrap(written.get(i));
+	    assertEquals(SimpleSgsProtocolImpl.COMPRESSED_CHANNEL_MESSAGE,
+			 buf.get());
+	    int idLength = buf.getShort();
+	    buf.position(buf.position() + idLength);
+	    int length = buf.getInt();
+	    byte[] expected = new byte[length];
+	    Arrays.fill(expected, (byte) i);
+	    assertTrue(Arrays.equals(
+			   expected,
+			   compressor.decompress(
+			       buf.array(), buf.position(), buf.remaining(),
+			       length)));
+	}
+    }
+
+    /* -- Other methods and classes -- */
+
+    /**
+     * Creates an acceptor with the specified properties and the stalling
+     * transport, and logs in a client.  If {@code stall} is {@code true},
+     * the client stops reading before the login success message is
+     * written, so the messages sent afterwards are queued.
+     */
+    private void connect(Properties props, boolean stall) throws Exception {
+	connect(props, stall, (byte) 0);
+    }
+
+    /**
+     * Creates an acceptor and logs in a client as {@link
+     * #connect(Properties,boolean)} does, with the specified flags, such
+     * as {@link SimpleSgsProtocolImpl#BUNDLE_FLAG}, set in the version
+     * byte of the login request.
+     */
+    private void connect(Properties props, boolean stall, byte flags)
+	throws Exception
+    {
+	byte version = (byte) (SimpleSgsProtocol.VERSION | flags);
+	props.setProperty(LOGIN_VERSION_PROPERTY, String.valueOf(version));
+	props.setProperty(StandardProperties.APP_NAME, APP_NAME);
+	props.setProperty(SimpleSgsProtocolAcceptor.TRANSPORT_PROPERTY,
+			  StallingTransport.class.getName());
+	acceptor = new SimpleSgsProtocolAcceptor(
+	    props, serverNode.getSystemRegistry(), serverNode.getProxy());
+	listener = new Listener();
+	acceptor.accept(listener);
+	channel = StallingTransport.lastChannel;
+	protocol = listener.waitForLogin();
+	if (stall) {
+	    channel.stall();
+	}
+	listener.completeLogin();
+	channel.waitForWritten(1);
+    }
+
+    /** Sends a session message with the specified tag and payload size. */
+    private void sessionMessage(int tag, int size, Delivery delivery)
+	throws IOException
+    {
+	protocol.sessionMessage(payload(tag, size), delivery);
+    }
+
+    /** Sends a channel message with the specified tag and payload size. */
+    private void channelMessage(
+	BigInteger channelId, int tag, int size, Delivery delivery)
+	throws IOException
+    {
+	protocol.channelMessage(channelId, payload(tag, size), delivery);
+    }
+
+    /** Returns a payload of the specified size filled with the tag. */
+    private static ByteBuffer payload(int tag, int size) {
+	byte[] bytes = new byte[size];
+	Arrays.fill(bytes, (byte) tag);
+	return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Waits for the specified number of messages to be written, checks
+     * that no more are written, and returns them.
+     */
+    private List<byte[]> waitForWritten(int count) throws Exception {
+	channel.waitForWritten(count);
+	Thread.sleep(100);
+	List<byte[]> written = channel.getWritten();
+	assertEquals(count, written.size());
+	return written;
+    }
+
+    /**
+     * Asserts that the message is a session message with the specified
+     * tag.
+     */
+    private static void assertSessionMessage(int tag, byte[] message) {
+	assertEquals(SimpleSgsProtocol.SESSION_MESSAGE, message[0]);
+	assertEquals(tag, message[1]);
+    }
+
+    /**
+     * Asserts that the message is a channel message with the specified
+     * tag.
+     */
+    private static void assertChannelMessage(int tag, byte[] message) {
+	assertEquals(SimpleSgsProtocol.CHANNEL_MESSAGE, message[0]);
+	int idLength = ByteBuffer.wrap(message, 1, 2).getShort();
+	assertEquals(tag, message[3 + idLength]);
+    }
+
+    /** Returns the messages contained in the specified message bundle. */
+    private static List<byte[]> unbundle(byte[] bundle) {
+	assertEquals(SimpleSgsProtocolImpl.MESSAGE_BUNDLE, bundle[0]);
+	ByteBuffer buf = ByteBuffer.wrap(bundle, 1, bundle.length - 1);
+	List<byte[]> messages = new ArrayList<byte[]>();
+	while (buf.hasRemaining()) {
+	    byte[] message = new byte[buf.getShort() & 0xffff];
+	    buf.get(message);
+	    messages.add(message);
+	}
+	return messages;
+    }
+
+    /** A listener that completes the login when requested. */
+    private static class Listener implements ProtocolListener {
+
+	final SessionHandler sessionHandler = new SessionHandler();
+	private SessionProtocol protocol;
+	private RequestCompletionHandler<SessionProtocolHandler>
+	    completionHandler;
+
+	public synchronized void newLogin(
+	    Identity identity, SessionProtocol protocol,
+	    RequestCompletionHandler<SessionProtocolHandler> completionHandler)
+	{
+	    this.protocol = protocol;
+	    this.completionHandler = completionHandler;
+	    notifyAll();
+	}
+
+	public void relocatedSession(
+	    BigInteger relocationKey, SessionProtocol protocol,
+	    RequestCompletionHandler<SessionProtocolHandler> completionHandler)
+	{
+	}
+
+	/** Waits for newLogin to be called, and returns the protocol. */
+	synchronized SessionProtocol waitForLogin()
+	    throws InterruptedException
+	{
+	    long stop = System.currentTimeMillis() + WAIT_TIME;
+	    while (protocol == null) {
+		long wait = stop - System.currentTimeMillis();
+		if (wait <= 0) {
+		    fail("newLogin not called");
+		}
+		wait(wait);
+	    }
+	    return protocol;
+	}
+
+	/** Completes the login successfully. */
+	void completeLogin() {
+	    completionHandler.completed(
+		new CompletedFuture<SessionProtocolHandler>(sessionHandler));
+	}
+    }
+
+    /** A protocol handler that records whether it was disconnected. */
+    private static class SessionHandler implements SessionProtocolHandler {
+
+	private boolean disconnected = false;
+
+	public void sessionMessage(
+	    ByteBuffer message,
+	    RequestCompletionHandler<Void> completionHandler)
+	{
+	    completionHandler.completed(new CompletedFuture<Void>(null));
+	}
+
+	public void channelMessage(
+	    BigInteger channelId, ByteBuffer message,
+	    RequestCompletionHandler<Void> completionHandler)
+	{
+	    completionHandler.completed(new CompletedFuture<Void>(null));
+	}
+
+	public void logoutRequest(
+	    RequestCompletionHandler<Void> completionHandler)
+	{
+	    completionHandler.completed(new CompletedFuture<Void>(null));
+	}
+
+	public synchronized void disconnect(
+	    RequestCompletionHandler<Void> completionHandler)
+	{
+	    disconnected = true;
+	    notifyAll();
+	    completionHandler.completed(new CompletedFuture<Void>(null));
+	}
+
+	/** Waits for disconnect to be called. */
+	synchronized void waitForDisconnect() throws InterruptedException {
+	    long stop = System.currentTimeMillis() + WAIT_TIME;
+	    while (!disconnected) {
+		long wait = stop - System.currentTimeMillis();
+		if (wait <= 0) {
+		    fail("disconnect not called");
+		}
+		wait(wait);
+	    }
+	}
+    }
+
+    /** A future that has completed with the specified value. */
+    private static class CompletedFuture<T> implements Future<T> {
+
+	private final T value;
+
+	CompletedFuture(T value) {
+	    this.value = value;
+	}
+
+	public boolean cancel(boolean mayInterruptIfRunning) {
+	    return false;
+	}
+
+	public boolean isCancelled() {
+	    return false;
+	}
+
+	public boolean isDone() {
+	    return true;
+	}
+
+	public T get() {
+	    return value;
+	}
+
+	public T get(long timeout, TimeUnit unit) {
+	    return value;
+	}
+    }
+
+    /**
+     * A transport that makes a single connection, which sends a login
+     * request and whose writes can be stalled.
+     */
+    public static class StallingTransport implements Transport {
+
+	/** The connection made by the most recently created transport. */
+	static volatile StallingChannel lastChannel;
+
+	/** The version byte for the connection's login request. */
+	private final byte loginVersion;
+
+	public StallingTransport(Properties properties) {
+	    loginVersion = Byte.parseByte(
+		properties.getProperty(
+		    LOGIN_VERSION_PROPERTY,
+		    String.valueOf(SimpleSgsProtocol.VERSION)));
+	}
+
+	public TransportDescriptor getDescriptor() {
+	    return new TransportDescriptor() {
+		public boolean supportsTransport(
+		    TransportDescriptor descriptor)
+		{
+		    return true;
+		}
+		public byte[] getConnectionData() {
+		    throw new UnsupportedOperationException();
+		}
+	    };
+	}
+
+	public Delivery getDelivery() {
+	    return Delivery.RELIABLE;
+	}
+
+	public void accept(ConnectionHandler handler) {
+	    lastChannel = new StallingChannel(loginVersion);
+	    try {
+		handler.newConnection(lastChannel);
+	    } catch (Exception e) {
+		throw new RuntimeException(
+		    "Unexpected exception from newConnection", e);
+	    }
+	}
+
+	public void shutdown() { }
+    }
+
+    /**
+     * A connection that supplies a login request with the specified
+     * version byte for the first read, never completes later reads, and
+     * records the messages written to it.  While stalled, writes are
+     * recorded but not completed, so the protocol cannot start the next
+     * write until the connection is released.
+     */
+    static class StallingChannel implements AsynchronousByteChannel {
+
+	/** Completes writes while the connection is not stalled. */
+	private final ExecutorService completer =
+	    Executors.newSingleThreadExecutor();
+
+	/** The login request, or {@code null} once it has been read. */
+	private ByteBuffer loginRequest;
+
+	/** The messages written, without their length prefix. */
+	private final List<byte[]> written = new ArrayList<byte[]>();
+
+	/** The completions of writes held while stalled. */
+	private final List<Runnable> held = new ArrayList<Runnable>();
+
+	/** The number of writes completed. */
+	private int completed = 0;
+
+	private boolean stalled = false;
+
+	private volatile boolean open = true;
+
+	StallingChannel(byte loginVersion) {
+	    MessageBuffer msg =
+		new MessageBuffer(4 + MessageBuffer.getSize("username") +
+				  MessageBuffer.getSize("password"));
+	    msg.putShort(msg.capacity() - 2).
+		putByte(SimpleSgsProtocol.LOGIN_REQUEST).
+		putByte(loginVersion).
+		putString("username").
+		putString("password");
+	    loginRequest = ByteBuffer.wrap(msg.getBuffer());
+	}
+
+	public <A> IoFuture<Integer, A> read(
+	    ByteBuffer dst, A attachment,
+	    CompletionHandler<Integer, ? super A> handler)
+	{
+	    ByteBuffer request;
+	    synchronized (this) {
+		request = loginRequest;
+		loginRequest = null;
+	    }
+	    if (request == null) {
+		return AttachedFuture.wrap(
+		    new PendingFuture<Integer>(), attachment);
+	    }
+	    int length = request.remaining();
+	    dst.put(request);
+	    IoFuture<Integer, A> result = AttachedFuture.wrap(
+		new CompletedFuture<Integer>(length), attachment);
+	    callCompletion(handler, attachment, result);
+	    return result;
+	}
+
+	public <A> IoFuture<Integer, A> read(
+	    ByteBuffer dst, CompletionHandler<Integer, ? super A> handler)
+	{
+	    return read(dst, null, handler);
+	}
+
+	public <A> IoFuture<Integer, A> write(
+	    ByteBuffer src, A attachment,
+	    final CompletionHandler<Integer, ? super A> handler)
+	{
+	    byte[] bytes = new byte[src.remaining()];
+	    src.get(bytes);
+	    final Future<Integer> result =
+		new CompletedFuture<Integer>(bytes.length);
+	    Runnable completion = new Runnable() {
+		public void run() {
+		    callCompletion(handler, null, result);
+		    synchronized (StallingChannel.this) {
+			completed++;
+			StallingChannel.this.notifyAll();
+		    }
+		}
+	    };
+	    synchronized (this) {
+		/* Skip the two byte message length */
+		written.add(Arrays.copyOfRange(bytes, 2, bytes.length));
+		notifyAll();
+		if (stalled) {
+		    held.add(completion);
+		    completion = null;
+		}
+	    }
+	    if (completion != null) {
+		completer.execute(completion);
+	    }
+	    return AttachedFuture.wrap(result, attachment);
+	}
+
+	public <A> IoFuture<Integer, A> write(
+	    ByteBuffer src, CompletionHandler<Integer, ? super A> handler)
+	{
+	    return write(src, null, handler);
+	}
+
+	public boolean isOpen() {
+	    return open;
+	}
+
+	public void close() {
+	    open = false;
+	}
+
+	/** Stops completing writes. */
+	synchronized void stall() {
+	    stalled = true;
+	}
+
+	/** Completes the held writes, and resumes completing writes. */
+	void release() {
+	    List<Runnable> completions;
+	    synchronized (this) {
+		stalled = false;
+		completions = new ArrayList<Runnable>(held);
+		held.clear();
+	    }
+	    for (Runnable completion : completions) {
+		completer.execute(completion);
+	    }
+	}
+
+	/** Stops the thread that completes writes. */
+	void shutdown() {
+	    completer.shutdownNow();
+	}
+
+	/** Returns the messages written so far. */
+	synchronized List<byte[]> getWritten() {
+	    return new ArrayList<byte[]>(written);
+	}
+
+	/** Waits for the specified number of messages to be written. */
+	synchronized void waitForWritten(int count)
+	    throws InterruptedException
+	{
+	    long stop = System.currentTimeMillis() + WAIT_TIME;
+	    while (written.size() < count) {
+		long wait = stop - System.currentTimeMillis();
+		if (wait <= 0) {
+		    fail("Expected " + count + " messages written, got " +
+			 written.size());
+		}
+		wait(wait);
+	    }
+	}
+
+	/** Waits for the specified number of writes to complete. */
+	synchronized void waitForCompleted(int count)
+	    throws InterruptedException
+	{
+	    long stop = System.currentTimeMillis() + WAIT_TIME;
+	    while (completed < count) {
+		long wait = stop - System.currentTimeMillis();
+		if (wait <= 0) {
+		    fail("Expected " + count + " writes completed, got " +
+			 completed);
+		}
+		wait(wait);
+	    }
+	}
+
+	/*
+	 * Drops the "? super" from the handler's type so that the handler
+	 * can be called, as the DummyChannel in TestSimpleSgsProtocol does.
+	 */
+	private static <R, A> void callCompletion(
+	    CompletionHandler<R, A> handler, A attachment, Future<R> future)
+	{
+	    handler.completed(AttachedFuture.wrap(future, attachment));
+	}
+    }
+
+    /** A future that never completes. */
+    private static class PendingFuture<T> implements Future<T> {
+
+	PendingFuture() { }
+
+	public boolean cancel(boolean mayInterruptIfRunning) {
+	    return false;
+	}
+
+	public boolean isCancelled() {
+	    return false;
+	}
+
+	public boolean isDone() {
+	    return false;
+	}
+
+	public T get() {
+	    throw new UnsupportedOperationException();
+	}
+
+	public T get(long timeout, TimeUnit unit) {
+	    throw new UnsupportedOperationException();
+	}
+    }
+}
@@ -168,6 +168,16 @@ public abstract class AbstractChannelServiceTest extends Assert {
     }
 
     protected void setUp(boolean clean) throws Exception {
+	setUp(clean, new Properties());
+    }
+
+    /**
+     * Creates and configures the channel service, adding the specified
+     * properties to the server node's properties.
+     */
+    protected void setUp(boolean clean, Properties extraProps)
+	throws Exception
+    {
         Properties props = 
             SgsTestNode.getDefaultProperties(APP_NAME, null, 
                                              DummyAppListener.class);
@@ -182,6 +192,7 @@ public abstract class AbstractChannelServiceTest extends Assert {
 	props.setProperty(
 	    StandardProperties.SESSION_RELOCATION_TIMEOUT_PROPERTY,
 	    "5000");
+	props.putAll(extraProps);
 			  
 	serverNode = 
                 new SgsTestNode(APP_NAME, DummyAppListener.class, props, clean);
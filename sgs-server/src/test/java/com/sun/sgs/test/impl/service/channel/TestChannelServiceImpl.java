@@ -25,15 +25,18 @@ import com.sun.sgs.app.AppContext;
 import com.sun.sgs.app.Channel;
 import com.sun.sgs.app.ChannelListener;
 import com.sun.sgs.app.ClientSession;
+import com.sun.sgs.app.ClientSessionHandle;
 import com.sun.sgs.app.DataManager;
 import com.sun.sgs.app.Delivery;
 import com.sun.sgs.app.ManagedObject;
 import com.sun.sgs.app.ManagedReference;
 import com.sun.sgs.app.ResourceUnavailableException;
 import com.sun.sgs.app.TransactionNotActiveException;
+import com.sun.sgs.auth.Identity;
 import com.sun.sgs.impl.service.channel.ChannelServiceImpl;
 import com.sun.sgs.impl.service.session.ClientSessionWrapper;
 import com.sun.sgs.impl.util.AbstractService.Version;
+import com.sun.sgs.service.ChannelMessageFilter;
 import com.sun.sgs.test.util.ConfigurableNodePolicy;
 import com.sun.sgs.test.util.SgsTestNode;
 import com.sun.sgs.test.util.TestAbstractKernelRunnable;
@@ -44,9 +47,11 @@ import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
@@ -58,6 +63,10 @@ import org.junit.runner.RunWith;
 @RunWith(FilteredNameRunner.class)
 public class TestChannelServiceImpl extends AbstractChannelServiceTest {
     
+    /** The name of the channel service's message filter property. */
+    private static final String MESSAGE_FILTER_PROPERTY =
+	"com.sun.sgs.impl.service.channel.message.filter";
+
     /** Constructs a test instance. */
     public TestChannelServiceImpl() throws Exception  {
     }
@@ -108,6 +117,37 @@ public class TestChannelServiceImpl extends AbstractChannelServiceTest {
 	}
     }
 
+    @Test
+    public void testConstructorWithMessageFilter() throws Exception {
+	Properties props = new Properties(serviceProps);
+	props.setProperty(MESSAGE_FILTER_PROPERTY,
+			  EvenMessageFilter.class.getName());
+	ChannelServiceImpl newChannelService = null;
+	try {
+	    newChannelService =
+		new ChannelServiceImpl(props, serverNode.getSystemRegistry(),
+				       serverNode.getProxy());
+	} finally {
+	    if (newChannelService != null) {
+		newChannelService.shutdown();
+	    }
+	}
+    }
+
+    @Test
+    public void testConstructorBadMessageFilter() throws Exception {
+	Properties props = new Properties(serviceProps);
+	props.setProperty(MESSAGE_FILTER_PROPERTY,
+			  "com.example.NoSuchMessageFilter");
+	try {
+	    new ChannelServiceImpl(props, serverNode.getSystemRegistry(),
+				   serverNode.getProxy());
+	    fail("Expected IllegalArgumentException");
+	} catch (IllegalArgumentException e) {
+	    System.err.println(e);
+	}
+    }
+
     @Test
     public void testConstructedVersion() throws Exception {
 	txnScheduler.runTask(new TestAbstractKernelRunnable() {
@@ -571,6 +611,68 @@ public class TestChannelServiceImpl extends AbstractChannelServiceTest {
 	testChannelGetSessionsWithSessionsJoined();
     }
 
+    @Test
+    public void testChannelGetSessionHandlesWithSessionsJoined()
+	throws Exception
+    {
+	final String channelName = "foo";
+	createChannel(channelName);
+	ClientGroup group = new ClientGroup(someUsers);
+	try {
+	    joinUsers("foo", someUsers);
+	    checkUsersJoined("foo", someUsers);
+	    txnScheduler.runTask(new TestAbstractKernelRunnable() {
+		public void run() {
+		    Channel channel = channelService.getChannel(channelName);
+		    assertEquals(someUsers.length, channel.getSessionCount());
+		    List<String> users =
+			new ArrayList<String>(Arrays.asList(someUsers));
+		    Iterator<ClientSessionHandle> iter =
+			channel.getSessionHandles();
+		    while (iter.hasNext()) {
+			ClientSessionHandle handle = iter.next();
+			String name = handle.getName();
+			if (! users.remove(name)) {
+			    fail("unexpected channel member: " + name);
+			}
+			ClientSession session = handle.getSession();
+			assertEquals(name, session.getName());
+			assertEquals(handle.getId(),
+				     dataService.createReference(
+					 ((ClientSessionWrapper) session).
+					 getClientSession()).getId());
+		    }
+		    if (! users.isEmpty()) {
+			fail("Expected getSessionHandles to include: " + users);
+		    }
+		}}, taskOwner);
+	} finally {
+	    group.disconnect(false);
+	}
+    }
+
+    @Test
+    public void testChannelGetSessionHandlesMultipleNodes() throws Exception {
+	addNodes(2);
+	ConfigurableNodePolicy.setRoundRobinPolicy();
+	testChannelGetSessionHandlesWithSessionsJoined();
+    }
+
+    @Test
+    public void testChannelGetSessionCountNoSessionsJoined()
+	throws Exception
+    {
+	final String channelName = "foo";
+	createChannel(channelName);
+	txnScheduler.runTask(new TestAbstractKernelRunnable() {
+	    public void run() {
+		Channel channel = channelService.getChannel(channelName);
+		assertEquals(0, channel.getSessionCount());
+		assertFalse(channel.getSessionHandles().hasNext());
+	    }
+	}, taskOwner);
+    }
+
     @Test
     public void testChannelGetSessionsClosedChannel() throws Exception {
 	txnScheduler.runTask(new TestAbstractKernelRunnable() {
@@ -672,6 +774,77 @@ public class TestChannelServiceImpl extends AbstractChannelServiceTest {
 	}
     }
 
+    @Test
+    @IntegrationTest
+    public void testChannelJoinSessions() throws Exception {
+	String channelName = "joinSessionsTest";
+	ClientGroup group = new ClientGroup(sevenDwarfs);
+	Thread.sleep(1000);
+	int count = getObjectCount();
+	createChannel(channelName);
+	
+	try {
+	    joinSessions(channelName, sevenDwarfs);
+	    checkUsersJoined(channelName, sevenDwarfs);
+	    sendMessagesToChannel(channelName, 2);
+	    checkChannelMessagesReceived(group, channelName, 2);
+	    closeChannel(channelName);
+	    Thread.sleep(1000);
+	    assertEquals(count, getObjectCount());
+	} finally {
+	    group.disconnect(false);
+	}
+    }
+
+    @Test
+    @IntegrationTest
+    public void testChannelJoinSessionsMultipleNodes() throws Exception {
+	addNodes(3);
+	ConfigurableNodePolicy.setRoundRobinPolicy();
+	testChannelJoinSessions();
+    }
+
+    /**
+     * Joins the specified {@code users} to the specified channel with a
+     * single invocation of {@code Channel.join(Set)}.
+     */
+    private void joinSessions(final String channelName, final String... users)
+	throws Exception
+    {
+	txnScheduler.runTask(new TestAbstractKernelRunnable() {
+	    public void run() {
+		getChannel(channelName).join(getSessionSet(users));
+	    }
+	}, taskOwner);
+    }
+
+    /**
+     * Removes the specified {@code users} from the specified channel with
+     * a single invocation of {@code Channel.leave(Set)}.
+     */
+    private void leaveSessions(final String channelName,
+			       final String... users)
+	throws Exception
+    {
+	txnScheduler.runTask(new TestAbstractKernelRunnable() {
+	    public void run() {
+		getChannel(channelName).leave(getSessionSet(users));
+	    }
+	}, taskOwner);
+    }
+
+    /**
+     * Returns a set containing the sessions of the specified {@code
+     * users}.  This method must be invoked within a transaction.
+     */
+    private Set<ClientSession> getSessionSet(String... users) {
+	Set<ClientSession> sessions = new HashSet<ClientSession>();
+	for (String user : users) {
+	    sessions.add(getSession(user));
+	}
+	return sessions;
+    }
+
     // -- Test Channel.leave --
 
     @Test
@@ -878,6 +1051,35 @@ public class TestChannelServiceImpl extends AbstractChannelServiceTest {
 
     }
 
+    @Test
+    @IntegrationTest
+    public void testChannelLeaveSessions() throws Exception {
+	String channelName = "leaveSessionsTest";
+	createChannel(channelName);
+	ClientGroup group = new ClientGroup(sevenDwarfs);
+	
+	try {
+	    Thread.sleep(1000);
+	    joinSessions(channelName, sevenDwarfs);
+	    checkUsersJoined(channelName, sevenDwarfs);
+	    leaveSessions(channelName, "bashful", "doc", "dopey", "grumpy");
+	    checkUsersJoined(channelName, "happy", "sleepy", "sneezy");
+	    leaveSessions(channelName, "happy", "sleepy", "sneezy");
+	    checkUsersJoined(channelName);
+	    closeChannel(channelName);
+	} finally {
+	    group.disconnect(false);
+	}
+    }
+
+    @Test
+    @IntegrationTest
+    public void testChannelLeaveSessionsMultipleNodes() throws Exception {
+	addNodes(3);
+	ConfigurableNodePolicy.setRoundRobinPolicy();
+	testChannelLeaveSessions();
+    }
+
     // -- Test Channel.leaveAll --
 
     @Test
@@ -1082,6 +1284,64 @@ public class TestChannelServiceImpl extends AbstractChannelServiceTest {
 	}
     }
 
+    @Test
+    public void testChannelSendWithMessageFilterDropping() throws Exception {
+	setUpWithMessageFilter(EvenMessageFilter.class);
+	String channelName = "test";
+	createChannel(channelName);
+	ClientGroup group = new ClientGroup(someUsers);
+	try {
+	    joinUsers(channelName, someUsers);
+	    sendMessagesToChannel(channelName, 6);
+	    for (DummyClient client : group.getClients()) {
+		for (int i = 0; i < 6; i += 2) {
+		    checkNextChannelMessage(client, channelName, i);
+		}
+	    }
+	} finally {
+	    group.disconnect(false);
+	}
+    }
+
+    @Test
+    public void testChannelSendWithMessageFilterRewriting() throws Exception {
+	setUpWithMessageFilter(OffsetMessageFilter.class);
+	String channelName = "test";
+	createChannel(channelName);
+	ClientGroup group = new ClientGroup(someUsers);
+	try {
+	    joinUsers(channelName, someUsers);
+	    sendMessagesToChannel(channelName, 3);
+	    for (DummyClient client : group.getClients()) {
+		for (int i = 0; i < 3; i++) {
+		    checkNextChannelMessage(
+			client, channelName, i + OffsetMessageFilter.OFFSET);
+		}
+	    }
+	} finally {
+	    group.disconnect(false);
+	}
+    }
+
+    @Test
+    public void testChannelSendWithMessageFilterThrowing() throws Exception {
+	setUpWithMessageFilter(ThrowingMessageFilter.class);
+	String channelName = "test";
+	createChannel(channelName);
+	ClientGroup group = new ClientGroup(someUsers);
+	try {
+	    joinUsers(channelName, someUsers);
+	    sendMessagesToChannel(channelName, 6);
+	    for (DummyClient client : group.getClients()) {
+		for (int i = 0; i < 6; i += 2) {
+		    checkNextChannelMessage(client, channelName, i);
+		}
+	    }
+	} finally {
+	    group.disconnect(false);
+	}
+    }
+
     @Test
     public void testChannelSendMultipleNodes() throws Exception {
 	addNodes(3);
@@ -2043,6 +2303,66 @@ public class TestChannelServiceImpl extends AbstractChannelServiceTest {
 	}
     }
 
+    /**
+     * A message filter that delivers messages whose first integer is even,
+     * and drops the rest.
+     */
+    public static class EvenMessageFilter implements ChannelMessageFilter {
+
+	public EvenMessageFilter(Properties properties) { }
+
+	public ByteBuffer filterMessage(String channelName,
+					BigInteger sessionId,
+					Identity identity,
+					ByteBuffer message)
+	{
+	    return message.getInt(message.position()) % 2 == 0 ?
+		message : null;
+	}
+    }
+
+    /**
+     * A message filter that delivers a new message whose first integer is
+     * {@link #OFFSET} greater than that of the message sent.
+     */
+    public static class OffsetMessageFilter implements ChannelMessageFilter {
+
+	static final int OFFSET = 100;
+
+	public OffsetMessageFilter(Properties properties) { }
+
+	public ByteBuffer filterMessage(String channelName,
+					BigInteger sessionId,
+					Identity identity,
+					ByteBuffer message)
+	{
+	    ByteBuffer filtered = ByteBuffer.allocate(4);
+	    filtered.putInt(message.getInt(message.position()) + OFFSET).
+		flip();
+	    return filtered;
+	}
+    }
+
+    /**
+     * A message filter that delivers messages whose first integer is even,
+     * and throws an exception for the rest.
+     */
+    public static class ThrowingMessageFilter implements ChannelMessageFilter {
+
+	public ThrowingMessageFilter(Properties properties) { }
+
+	public ByteBuffer filterMessage(String channelName,
+					BigInteger sessionId,
+					Identity identity,
+					ByteBuffer message)
+	{
+	    if (message.getInt(message.position()) % 2 != 0) {
+		throw new RuntimeException("odd message");
+	    }
+	    return message;
+	}
+    }
+
     private static class ValidatingChannelListener
 	implements ChannelListener, Serializable, ManagedObject
     {
@@ -2082,6 +2402,20 @@ public class TestChannelServiceImpl extends AbstractChannelServiceTest {
 	}
     }
     
+    /**
+     * Restarts the server node with a channel service that uses a message
+     * filter of the specified class.
+     */
+    private void setUpWithMessageFilter(
+	Class<? extends ChannelMessageFilter> filterClass)
+	throws Exception
+    {
+	tearDown(true);
+	Properties props = new Properties();
+	props.setProperty(MESSAGE_FILTER_PROPERTY, filterClass.getName());
+	setUp(true, props);
+    }
+
     private DummyClient newClient() {
 	DummyClient client = new DummyClient("dummy");
 	client.connect(port).login();
@@ -34,6 +34,7 @@ import com.sun.sgs.app.TransactionNotActiveException;
 import com.sun.sgs.app.TransactionTimeoutException;
 import com.sun.sgs.auth.Identity;
 import com.sun.sgs.impl.kernel.StandardProperties;
+import com.sun.sgs.impl.profile.ProfileCollectorImpl;
 import com.sun.sgs.impl.service.data.DataServiceImpl;
 import com.sun.sgs.impl.service.data.store.DataStoreImpl;
 import static com.sun.sgs.impl.service.transaction.
@@ -43,7 +44,11 @@ import static com.sun.sgs.impl.service.transaction.
 import com.sun.sgs.impl.service.transaction.TransactionCoordinator;
 import static com.sun.sgs.impl.sharedutil.Objects.uncheckedCast;
 import com.sun.sgs.kernel.ComponentRegistry;
+import com.sun.sgs.kernel.ReadOnlyKernelRunnable;
 import com.sun.sgs.kernel.TransactionScheduler;
+import com.sun.sgs.management.DataServiceMXBean;
+import com.sun.sgs.profile.ProfileCollector;
+import com.sun.sgs.profile.ProfileCollector.ProfileLevel;
 import com.sun.sgs.service.DataService;
 import com.sun.sgs.service.Transaction;
 import com.sun.sgs.service.TransactionListener;
@@ -75,6 +80,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Properties;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
@@ -775,6 +781,64 @@ public class TestDataServiceImpl extends Assert {
         }}, taskOwner);
     }
 
+    @Test 
+    public void testGetBindingCachedInTransaction() throws Exception {
+	testGetBindingCachedInTransaction(true);
+    }
+    @Test 
+    public void testGetServiceBindingCachedInTransaction()
+	throws Exception
+    {
+	testGetBindingCachedInTransaction(false);
+    }
+    private void testGetBindingCachedInTransaction(final boolean app)
+	throws Exception
+    {
+	ProfileCollector collector =
+	    componentRegistry.getComponent(ProfileCollector.class);
+	collector.getConsumer(
+	    ProfileCollectorImpl.CORE_CONSUMER_PREFIX + "DataService").
+	    setProfileLevel(ProfileLevel.MAX);
+	final DataServiceMXBean bean = (DataServiceMXBean)
+	    collector.getRegisteredMBean(DataServiceMXBean.MXBEAN_NAME);
+	final DummyManagedObject other = new DummyManagedObject();
+        txnScheduler.runTask(new InitialTestRunnable() {
+            public void run() throws Exception {
+                super.run();
+                setBinding(app, service, "dummy", dummy);
+                service.setBinding("other", other);
+        }}, taskOwner);
+	try {
+	    txnScheduler.runTask(new TestAbstractKernelRunnable() {
+            public void run() {
+		long hits = bean.getBindingCacheHits();
+                assertEquals(dummy, getBinding(app, service, "dummy"));
+                assertEquals(dummy, getBinding(app, service, "dummy"));
+		assertTrue(bean.getBindingCacheHits() > hits);
+		/* The transaction's own changes replace cached bindings */
+                setBinding(app, service, "dummy", other);
+                assertEquals(other, getBinding(app, service, "dummy"));
+                removeBinding(app, service, "dummy");
+		try {
+		    getBinding(app, service, "dummy");
+		    fail("Expected NameNotBoundException");
+		} catch (NameNotBoundException e) {
+		    System.err.println(e);
+		}
+                setBinding(app, service, "dummy", other);
+		throw new TestAbortedTransactionException("abort");
+	    }}, taskOwner);
+	    fail("Expected TestAbortedTransactionException");
+	} catch (TestAbortedTransactionException e) {
+	    System.err.println(e);
+	}
+	/* An aborted transaction's changes are not seen by others */
+        txnScheduler.runTask(new TestAbstractKernelRunnable() {
+            public void run() {
+                assertEquals(dummy, getBinding(app, service, "dummy"));
+	    }}, taskOwner);
+    }
+
     @Test 
     public void testGetBindingTimeout() throws Exception {
 	testGetBindingTimeout(true);
@@ -4316,6 +4380,230 @@ public class TestDataServiceImpl extends Assert {
         }}, taskOwner);
     }
 
+    /* -- Test prefetch -- */
+
+    @Test
+    public void testPrefetchNullRefs() throws Exception {
+        txnScheduler.runTask(new TestAbstractKernelRunnable() {
+            public void run() {
+                try {
+                    service.prefetch(null);
+                    fail("Expected NullPointerException");
+                } catch (NullPointerException e) {
+                    System.err.println(e);
+                }
+        }}, taskOwner);
+    }
+
+    @Test
+    public void testPrefetchForeignReference() throws Exception {
+        txnScheduler.runTask(new TestAbstractKernelRunnable() {
+            public void run() {
+                ManagedReference<ManagedObject> ref =
+                    new ManagedReference<ManagedObject>() {
+                        public ManagedObject get() { return null; }
+                        public ManagedObject getForUpdate() { return null; }
+                        public BigInteger getId() { return BigInteger.ONE; }
+                };
+                try {
+                    service.prefetch(
+                        Collections.<ManagedReference<?>>singleton(ref));
+                    fail("Expected IllegalArgumentException");
+                } catch (IllegalArgumentException e) {
+                    System.err.println(e);
+                }
+        }}, taskOwner);
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        class TestTask extends InitialTestRunnable {
+            BigInteger id;
+            BigInteger id2;
+            BigInteger removedId;
+            public void run() throws Exception {
+                super.run();
+                dummy.setValue("a");
+                id = service.getObjectId(dummy);
+                DummyManagedObject dummy2 = new DummyManagedObject();
+                dummy2.setValue("b");
+                id2 = service.getObjectId(dummy2);
+                DummyManagedObject removed = new DummyManagedObject();
+                removedId = service.getObjectId(removed);
+                service.removeObject(removed);
+            }
+        }
+        final TestTask task = new TestTask();
+        txnScheduler.runTask(task, taskOwner);
+        txnScheduler.runTask(new TestAbstractKernelRunnable() {
+            public void run() {
+                ManagedReference<?> ref =
+                    service.createReferenceForId(task.id);
+                ManagedReference<?> ref2 =
+                    service.createReferenceForId(task.id2);
+                ManagedReference<?> removedRef =
+                    service.createReferenceForId(task.removedId);
+                service.prefetch(
+                    Arrays.<ManagedReference<?>>asList(
+                        ref, removedRef, ref2, ref));
+                assertEquals("a", ((DummyManagedObject) ref.get()).value);
+                assertEquals("b", ((DummyManagedObject) ref2.get()).value);
+                try {
+                    removedRef.get();
+                    fail("Expected ObjectNotFoundException");
+                } catch (ObjectNotFoundException e) {
+                    System.err.println(e);
+                }
+                /* Prefetching objects already fetched has no effect */
+                service.prefetch(Arrays.<ManagedReference<?>>asList(ref));
+                assertSame(ref.get(), service.getBinding("dummy"));
+        }}, taskOwner);
+        txnScheduler.runTask(new TestAbstractKernelRunnable() {
+            public void run() {
+                service.removeObject(
+                    service.createReferenceForId(task.id2).get());
+                service.removeObject(service.getBinding("dummy"));
+                service.removeBinding("dummy");
+        }}, taskOwner);
+    }
+
+    @Test
+    public void testPrefetchTransactionNotActive() throws Exception {
+        class TestTask extends InitialTestRunnable {
+            ManagedReference<?> ref;
+            public void run() throws Exception {
+                super.run();
+                ref = service.createReference(dummy);
+            }
+        }
+        final TestTask task = new TestTask();
+        txnScheduler.runTask(task, taskOwner);
+        txnScheduler.runTask(new TestAbstractKernelRunnable() {
+            public void run() {
+                try {
+                    service.prefetch(
+                        Collections.<ManagedReference<?>>singleton(task.ref));
+                    fail("Expected TransactionNotActiveException");
+                } catch (TransactionNotActiveException e) {
+                    System.err.println(e);
+                }
+        }}, taskOwner);
+    }
+
+    /* -- Test read-only transactions -- */
+
+    /** A kernel runnable that is run in a read-only transaction. */
+    private abstract static class ReadOnlyTestRunnable
+        extends TestAbstractKernelRunnable
+        implements ReadOnlyKernelRunnable
+    { }
+
+    @Test
+    public void testReadOnlyGet() throws Exception {
+        txnScheduler.runTask(new InitialTestRunnable() {
+            public void run() throws Exception {
+                super.run();
+                dummy.setValue("a");
+        }}, taskOwner);
+        txnScheduler.runTask(new ReadOnlyTestRunnable() {
+            public void run() {
+                dummy = (DummyManagedObject) service.getBinding("dummy");
+                assertEquals("a", dummy.value);
+                assertEquals(dummy, service.createReference(dummy).get());
+        }}, taskOwner);
+    }
+
+    @Test
+    public void testReadOnlyModifyFails() throws Exception {
+        txnScheduler.runTask(new InitialTestRunnable(), taskOwner);
+        txnScheduler.runTask(new ReadOnlyTestRunnable() {
+            public void run() {
+                dummy = (DummyManagedObject) service.getBinding("dummy");
+                try {
+                    service.markForUpdate(dummy);
+                    fail("Expected IllegalStateException");
+                } catch (IllegalStateException e) {
+                    System.err.println(e);
+                }
+                try {
+                    service.createReference(dummy).getForUpdate();
+                    fail("Expected IllegalStateException");
+                } catch (IllegalStateException e) {
+                    System.err.println(e);
+                }
+                try {
+                    service.getBindingForUpdate("dummy");
+                    fail("Expected IllegalStateException");
+                } catch (IllegalStateException e) {
+                    System.err.println(e);
+                }
+                try {
+                    service.createReference(new DummyManagedObject());
+                    fail("Expected IllegalStateException");
+                } catch (IllegalStateException e) {
+                    System.err.println(e);
+                }
+                try {
+                    service.setBinding("dummy2", dummy);
+                    fail("Expected IllegalStateException");
+                } catch (IllegalStateException e) {
+                    System.err.println(e);
+                }
+                try {
+                    service.removeBinding("dummy");
+                    fail("Expected IllegalStateException");
+                } catch (IllegalStateException e) {
+                    System.err.println(e);
+                }
+                try {
+                    service.removeObject(dummy);
+                    fail("Expected IllegalStateException");
+                } catch (IllegalStateException e) {
+                    System.err.println(e);
+                }
+        }}, taskOwner);
+        txnScheduler.runTask(new TestAbstractKernelRunnable() {
+            public void run() {
+                dummy = (DummyManagedObject) service.getBinding("dummy");
+                service.removeObject(dummy);
+        }}, taskOwner);
+    }
+
+    @Test
+    public void testReadOnlyUnmarkedModificationFails() throws Exception {
+        txnScheduler.runTask(new InitialTestRunnable(), taskOwner);
+        try {
+            txnScheduler.runTask(new ReadOnlyTestRunnable() {
+                public void run() {
+                    dummy = (DummyManagedObject) service.getBinding("dummy");
+                    dummy.value = "modified";
+            }}, taskOwner);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            System.err.println(e);
+        }
+        txnScheduler.runTask(new TestAbstractKernelRunnable() {
+            public void run() {
+                dummy = (DummyManagedObject) service.getBinding("dummy");
+                assertNull(dummy.value);
+        }}, taskOwner);
+    }
+
+    @Test
+    public void testReadOnlyUnmodifiedObjectsCommit() throws Exception {
+        txnScheduler.runTask(new InitialTestRunnable() {
+            public void run() throws Exception {
+                super.run();
+                dummy.setNext(new DummyManagedObject());
+        }}, taskOwner);
+        txnScheduler.runTask(new ReadOnlyTestRunnable() {
+            public void run() {
+                dummy = (DummyManagedObject) service.getBinding("dummy");
+                assertNotNull(dummy.getNext());
+                service.nextBoundName(null);
+        }}, taskOwner);
+    }
+
     /* -- Test shutdown -- */
 
     @Test 
@@ -5776,6 +6064,9 @@ public class TestDataServiceImpl extends Assert {
 	public byte[] getObject(Transaction txn, long oid, boolean forUpdate) {
 	    return null;
 	}
+	public byte[][] getObjects(Transaction txn, long[] oids) {
+	    return null;
+	}
 	public void setObject(Transaction txn, long oid, byte[] data) { }
 	public void setObjects(
 	    Transaction txn, long[] oids, byte[][] dataArray)
@@ -46,7 +46,10 @@ import com.sun.sgs.tools.test.FilteredNameRunner;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -327,6 +330,46 @@ public class TestDataStoreImpl extends Assert {
 	txn = null;
     }
 
+    @Test
+    public void testCreateObjectManyThreads() throws Exception {
+	txn.commit();
+	txn = null;
+	final Set<Long> ids = Collections.synchronizedSet(new HashSet<Long>());
+	final AtomicReference<Throwable> failure =
+	    new AtomicReference<Throwable>();
+	Thread[] threads = new Thread[4];
+	for (int t = 0; t < threads.length; t++) {
+	    threads[t] = new Thread("testCreateObjectManyThreads-" + t) {
+		public void run() {
+		    try {
+			for (int i = 0; i < 20; i++) {
+			    DummyTransaction threadTxn = createTransaction(
+				UsePrepareAndCommit.ARBITRARY, 10000);
+			    for (int j = 0; j < 200; j++) {
+				if (!ids.add(store.createObject(threadTxn))) {
+				    throw new AssertionError(
+					"Object ID allocated twice");
+				}
+			    }
+			    threadTxn.commit();
+			}
+		    } catch (Throwable e) {
+			failure.compareAndSet(null, e);
+		    }
+		}
+	    };
+	    threads[t].start();
+	}
+	for (Thread thread : threads) {
+	    thread.join(60000);
+	    assertFalse("Thread should not be alive", thread.isAlive());
+	}
+	if (failure.get() != null) {
+	    throw new AssertionError(failure.get());
+	}
+	assertEquals(threads.length * 20 * 200, ids.size());
+    }
+
     /* -- Test markForUpdate -- */
 
     @Test
@@ -531,6 +574,49 @@ public class TestDataStoreImpl extends Assert {
 	}
     }
 
+    /* -- Test getObjects -- */
+
+    @Test
+    public void testGetObjectsNullOids() {
+	try {
+	    store.getObjects(txn, null);
+	    fail("Expected NullPointerException");
+	} catch (NullPointerException e) {
+	    System.err.println(e);
+	}
+    }
+
+    @Test
+    public void testGetObjectsBadId() {
+	try {
+	    store.getObjects(txn, new long[] { id, -3 });
+	    fail("Expected IllegalArgumentException");
+	} catch (IllegalArgumentException e) {
+	    System.err.println(e);
+	}
+    }
+
+    @Test
+    public void testGetObjectsSuccess() throws Exception {
+	byte[] data = { 1, 2 };
+	store.setObject(txn, id, data);
+	long id2 = store.createObject(txn);
+	byte[] data2 = { 3 };
+	store.setObject(txn, id2, data2);
+	long notFound = store.createObject(txn);
+	txn.commit();
+	txn = createTransaction(UsePrepareAndCommit.ARBITRARY);
+	byte[][] result =
+	    store.getObjects(txn, new long[] { id2, notFound, id });
+	assertEquals(3, result.length);
+	assertTrue(Arrays.equals(data2, result[0]));
+	assertNull(result[1]);
+	assertTrue(Arrays.equals(data, result[2]));
+	assertEquals(0, store.getObjects(txn, new long[0]).length);
+	/* Getting objects is not an update */
+	assertTrue(txn.prepare());
+    }
+
     /* -- Test setObject -- */
 
     @Test
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.test.impl.service.data.store;
+
+import com.sun.sgs.app.ObjectNotFoundException;
+import com.sun.sgs.impl.kernel.AccessCoordinatorHandle;
+import com.sun.sgs.impl.service.data.store.DataStoreImpl;
+import com.sun.sgs.test.util.DummyTransaction;
+import com.sun.sgs.test.util.DummyTransaction.UsePrepareAndCommit;
+import com.sun.sgs.test.util.DummyTransactionProxy;
+import com.sun.sgs.tools.test.FilteredNameRunner;
+import static com.sun.sgs.test.util.UtilProperties.createProperties;
+import com.sun.sgs.test.util.UtilReflection;
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Properties;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests the object cache in the DataStoreImpl class */
+@RunWith(FilteredNameRunner.class)
+public class TestDataStoreImplObjectCache extends Assert {
+
+    /** The basic test environment. */
+    private static final BasicDataStoreTestEnv env =
+	new BasicDataStoreTestEnv(System.getProperties());
+
+    /** The name of the DataStoreImpl class. */
+    private static final String DataStoreImplClassName =
+	DataStoreImpl.class.getName();
+
+    /** Directory used for database shared across multiple tests. */
+    private static final String dbDirectory =
+	System.getProperty("java.io.tmpdir") + File.separator +
+	"TestDataStoreImplObjectCache.db";
+
+    /** The DataStoreImpl.getObjectCache() method. */
+    private static final Method getObjectCache =
+	UtilReflection.getMethod(DataStoreImpl.class, "getObjectCache");
+
+    /** The OffHeapObjectCache class. */
+    private static final Class<?> cacheClass = UtilReflection.getClass(
+	"com.sun.sgs.impl.service.data.store.OffHeapObjectCache");
+
+    /** The OffHeapObjectCache.contains(long) method. */
+    private static final Method contains =
+	UtilReflection.getMethod(cacheClass, "contains", long.class);
+
+    /** The OffHeapObjectCache.getHits() method. */
+    private static final Method getHits =
+	UtilReflection.getMethod(cacheClass, "getHits");
+
+    /** The OffHeapObjectCache.getMisses() method. */
+    private static final Method getMisses =
+	UtilReflection.getMethod(cacheClass, "getMisses");
+
+    /** The OffHeapObjectCache.getEvictions() method. */
+    private static final Method getEvictions =
+	UtilReflection.getMethod(cacheClass, "getEvictions");
+
+    /** The size of the object cache. */
+    private static final long CACHE_SIZE = 64 * 1024;
+
+    /** Properties for creating the DataStore. */
+    private static Properties props = createProperties(
+	DataStoreImplClassName + ".directory", dbDirectory,
+	DataStoreImpl.CACHE_SIZE_PROPERTY, String.valueOf(CACHE_SIZE));
+
+    /** The transaction proxy. */
+    protected static final DummyTransactionProxy txnProxy = env.txnProxy;
+
+    /** The access coordinator. */
+    protected static final AccessCoordinatorHandle accessCoordinator =
+	env.accessCoordinator;
+
+    /** The data store to test. */
+    private static DataStoreImpl store;
+
+    /** An initial, open transaction. */
+    private DummyTransaction txn;
+
+    /** The object ID of a newly created object. */
+    private long id;
+
+    /** Clean the database directory and create the data store. */
+    @BeforeClass
+    public static void initialize() throws Exception {
+	cleanDirectory(dbDirectory);
+	store = new DataStoreImpl(props, env.systemRegistry, env.txnProxy);
+    }
+
+    /** Shutdown the data store. */
+    @AfterClass
+    public static void shutdown() throws Exception {
+	if (store != null) {
+	    store.shutdown();
+	    store = null;
+	}
+    }
+
+    /** Create a transaction and a committed object in the data store. */
+    @Before
+    public void setUp() throws Exception {
+	txn = createTransaction(UsePrepareAndCommit.ARBITRARY, 10000);
+	id = store.createObject(txn);
+	store.setObject(txn, id, new byte[] { 1, 2, 3 });
+	txn.commit();
+	txn = createTransaction(UsePrepareAndCommit.ARBITRARY, 10000);
+    }
+
+    /** Commit the current transaction, if non-null. */
+    @After
+    public void tearDown() throws Exception {
+	try {
+	    if (txn != null) {
+		txn.commit();
+	    }
+	} finally {
+	    txn = null;
+	}
+    }
+
+    /* -- Tests -- */
+
+    @Test
+    public void testConstructorNegativeCacheSize() throws Exception {
+	Properties badProps = createProperties(
+	    DataStoreImplClassName + ".directory", dbDirectory,
+	    DataStoreImpl.CACHE_SIZE_PROPERTY, "-1");
+	try {
+	    new DataStoreImpl(badProps, env.systemRegistry, env.txnProxy);
+	    fail("Expected IllegalArgumentException");
+	} catch (IllegalArgumentException e) {
+	    System.err.println(e);
+	}
+    }
+
+    @Test
+    public void testGetObjectCached() throws Exception {
+	assertFalse(cacheContains(id));
+	long hits = getCount(getHits);
+	long misses = getCount(getMisses);
+	assertSameBytes(new byte[] { 1, 2, 3 },
+			store.getObject(txn, id, false));
+	assertTrue(cacheContains(id));
+	assertEquals(misses + 1, getCount(getMisses));
+	txn.commit();
+	txn = createTransaction(UsePrepareAndCommit.ARBITRARY);
+	assertSameBytes(new byte[] { 1, 2, 3 },
+			store.getObject(txn, id, false));
+	assertSameBytes(new byte[] { 1, 2, 3 },
+			store.getObject(txn, id, true));
+	assertEquals(hits + 2, getCount(getHits));
+    }
+
+    @Test
+    public void testGetObjectsCached() throws Exception {
+	long id2 = store.createObject(txn);
+	store.setObject(txn, id2, new byte[] { 4 });
+	txn.commit();
+	txn = createTransaction(UsePrepareAndCommit.ARBITRARY);
+	byte[][] result = store.getObjects(txn, new long[] { id, id2 });
+	assertSameBytes(new byte[] { 1, 2, 3 }, result[0]);
+	assertSameBytes(new byte[] { 4 }, result[1]);
+	assertTrue(cacheContains(id));
+	assertTrue(cacheContains(id2));
+    }
+
+    @Test
+    public void testSetObjectInvalidates() throws Exception {
+	store.getObject(txn, id, false);
+	assertTrue(cacheContains(id));
+	store.setObject(txn, id, new byte[] { 4, 5 });
+	assertFalse(cacheContains(id));
+	assertSameBytes(new byte[] { 4, 5 }, store.getObject(txn, id, false));
+	txn.commit();
+	txn = createTransaction(UsePrepareAndCommit.ARBITRARY);
+	assertSameBytes(new byte[] { 4, 5 }, store.getObject(txn, id, false));
+	assertTrue(cacheContains(id));
+    }
+
+    @Test
+    public void testSetObjectsInvalidates() throws Exception {
+	store.getObject(txn, id, false);
+	assertTrue(cacheContains(id));
+	store.setObjects(txn, new long[] { id }, new byte[][] { { 6 } });
+	assertFalse(cacheContains(id));
+	txn.commit();
+	txn = createTransaction(UsePrepareAndCommit.ARBITRARY);
+	assertSameBytes(new byte[] { 6 }, store.getObject(txn, id, false));
+    }
+
+    @Test
+    public void testRemoveObjectInvalidates() throws Exception {
+	store.getObject(txn, id, false);
+	assertTrue(cacheContains(id));
+	store.removeObject(txn, id);
+	assertFalse(cacheContains(id));
+	txn.commit();
+	txn = createTransaction(UsePrepareAndCommit.ARBITRARY);
+	try {
+	    store.getObject(txn, id, false);
+	    fail("Expected ObjectNotFoundException");
+	} catch (ObjectNotFoundException e) {
+	    System.err.println(e);
+	}
+	assertFalse(cacheContains(id));
+    }
+
+    @Test
+    public void testAbortInvalidates() throws Exception {
+	store.setObject(txn, id, new byte[] { 7 });
+	/* Read the uncommitted value, which populates the cache */
+	store.getObject(txn, id, false);
+	txn.abort(new RuntimeException("abort"));
+	assertFalse(cacheContains(id));
+	txn = createTransaction(UsePrepareAndCommit.ARBITRARY);
+	assertSameBytes(new byte[] { 1, 2, 3 },
+			store.getObject(txn, id, false));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+	long evictions = getCount(getEvictions);
+	byte[] data = new byte[1024];
+	int count = (int) (4 * CACHE_SIZE / data.length);
+	long[] ids = new long[count];
+	for (int i = 0; i < count; i++) {
+	    ids[i] = store.createObject(txn);
+	    data[0] = (byte) i;
+	    store.setObject(txn, ids[i], data);
+	}
+	txn.commit();
+	txn = createTransaction(UsePrepareAndCommit.ARBITRARY);
+	for (int i = 0; i < count; i++) {
+	    data[0] = (byte) i;
+	    assertSameBytes(data, store.getObject(txn, ids[i], false));
+	}
+	assertTrue(getCount(getEvictions) > evictions);
+	for (int i = 0; i < count; i++) {
+	    data[0] = (byte) i;
+	    assertSameBytes(data, store.getObject(txn, ids[i], false));
+	}
+    }
+
+    /* -- Other methods -- */
+
+    /** Insures an empty version of the directory exists. */
+    private static void cleanDirectory(String directory) {
+	File dir = new File(directory);
+	if (dir.exists()) {
+	    for (File f : dir.listFiles()) {
+		if (!f.delete()) {
+		    throw new RuntimeException("Failed to delete file: " + f);
+		}
+	    }
+	    if (!dir.delete()) {
+		throw new RuntimeException(
+		    "Failed to delete directory: " + dir);
+	    }
+	}
+	if (!dir.mkdir()) {
+	    throw new RuntimeException(
+		"Failed to create directory: " + dir);
+	}
+    }
+
+    /** Assert that the two byte arrays are the same. */
+    private static void assertSameBytes(byte[] x, byte[] y) {
+	if (!Arrays.equals(x, y)) {
+	    fail("Expected " + Arrays.toString(x) + ", got " +
+		 Arrays.toString(y));
+	}
+    }
+
+    /** Checks if the object cache contains the specified object. */
+    private static boolean cacheContains(long oid) {
+	try {
+	    return (Boolean) contains.invoke(
+		getObjectCache.invoke(store), oid);
+	} catch (Exception e) {
+	    throw new RuntimeException(e.getMessage(), e);
+	}
+    }
+
+    /** Calls a method on the object cache that returns a count. */
+    private static long getCount(Method method) {
+	try {
+	    return (Long) method.invoke(getObjectCache.invoke(store));
+	} catch (Exception e) {
+	    throw new RuntimeException(e.getMessage(), e);
+	}
+    }
+
+    /** Creates a transaction with explicit use of prepareAndCommit. */
+    static DummyTransaction createTransaction(
+	UsePrepareAndCommit usePrepareAndCommit)
+    {
+	return initTransaction(new DummyTransaction(usePrepareAndCommit));
+    }
+
+    /**
+     * Creates a transaction with explicit use of prepareAndCommit and a
+     * non-standard timeout.
+     */
+    static DummyTransaction createTransaction(
+	UsePrepareAndCommit usePrepareAndCommit, long timeout)
+    {
+	return initTransaction(
+	    new DummyTransaction(usePrepareAndCommit, timeout));
+    }
+
+    /** Initializes a transaction. */
+    static DummyTransaction initTransaction(DummyTransaction txn) {
+	txnProxy.setCurrentTransaction(txn);
+	accessCoordinator.notifyNewTransaction(txn, 0, 1);
+	return txn;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.test.impl.service.data.store;
+
+import com.sun.sgs.impl.service.data.store.DataStoreImpl;
+import com.sun.sgs.impl.service.data.store.db.mem.MemEnvironment;
+import org.junit.Before;
+
+/**
+ * Performance tests for the DataStoreImpl class using the in-memory database
+ * environment, for comparison with the results of running {@link
+ * TestDataStorePerformance} with Berkeley DB.
+ */
+public class TestDataStoreMemPerformance extends TestDataStorePerformance {
+
+    /** Creates the test. */
+    public TestDataStoreMemPerformance() { }
+
+    /** Sets up data store properties to use the in-memory environment. */
+    @Before
+    @Override
+    public void setUp() throws Exception {
+	super.setUp();
+	props.setProperty(DataStoreImpl.ENVIRONMENT_CLASS_PROPERTY,
+			  MemEnvironment.class.getName());
+    }
+}
@@ -26,6 +26,7 @@ import com.sun.sgs.impl.service.data.store.DataStoreImpl;
 import com.sun.sgs.impl.service.data.store.DataStoreProfileProducer;
 import com.sun.sgs.impl.service.data.store.db.bdb.BdbEnvironment;
 import com.sun.sgs.impl.service.data.store.db.je.JeEnvironment;
+import com.sun.sgs.impl.service.data.store.db.mem.MemEnvironment;
 import com.sun.sgs.service.store.DataStore;
 import com.sun.sgs.test.util.DummyProfileCoordinator;
 import com.sun.sgs.test.util.DummyTransaction;
@@ -271,6 +272,8 @@ public class TestDataStorePerformance extends Assert {
 	    BdbEnvironment.FLUSH_TO_DISK_PROPERTY, String.valueOf(flush));
 	props.setProperty(
 	    JeEnvironment.FLUSH_TO_DISK_PROPERTY, String.valueOf(flush));
+	props.setProperty(
+	    MemEnvironment.FLUSH_TO_DISK_PROPERTY, String.valueOf(flush));
 	byte[] data = new byte[itemSize];
 	data[0] = 1;
 	store = getDataStore();
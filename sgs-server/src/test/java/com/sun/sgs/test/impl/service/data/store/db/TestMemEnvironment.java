@@ -0,0 +1,439 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.test.impl.service.data.store.db;
+
+import com.sun.sgs.app.TransactionTimeoutException;
+import com.sun.sgs.impl.service.data.store.db.mem.MemEnvironment;
+import com.sun.sgs.service.store.db.DbCursor;
+import com.sun.sgs.service.store.db.DbDatabase;
+import com.sun.sgs.service.store.db.DbEnvironment;
+import com.sun.sgs.service.store.db.DbTransaction;
+import static com.sun.sgs.test.impl.service.data.store.db.TestDbEnvironment.cleanDirectory;
+import static com.sun.sgs.test.impl.service.data.store.db.TestDbEnvironment.dbDirectory;
+import static com.sun.sgs.test.util.UtilProperties.createProperties;
+import com.sun.sgs.tools.test.FilteredNameRunner;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.RandomAccessFile;
+import java.util.Properties;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Test the MemEnvironment class. */
+@RunWith(FilteredNameRunner.class)
+public class TestMemEnvironment extends Assert {
+
+    /** The transaction timeout. */
+    private static final long TIMEOUT = 1000;
+
+    /** Properties for creating the environment. */
+    private Properties props;
+
+    /** The environment or null. */
+    private DbEnvironment env = null;
+
+    /** Cleans the database directory and creates the environment. */
+    @Before
+    public void setUp() throws Exception {
+	cleanDirectory(dbDirectory);
+	props = createProperties(
+	    MemEnvironment.LOCK_TIMEOUT_PROPERTY, "20");
+	env = createEnvironment();
+    }
+
+    /** Closes the environment, if present. */
+    @After
+    public void tearDown() throws Exception {
+	if (env != null) {
+	    env.close();
+	    env = null;
+	}
+    }
+
+    /* -- Tests -- */
+
+    /* -- Test openDatabase -- */
+
+    @Test
+    public void testOpenDatabaseNotFound() throws Exception {
+	DbTransaction txn = env.beginTransaction(TIMEOUT);
+	try {
+	    env.openDatabase(txn, "db", false);
+	    fail("Expected FileNotFoundException");
+	} catch (FileNotFoundException e) {
+	    System.err.println(e);
+	} finally {
+	    txn.abort();
+	}
+    }
+
+    @Test
+    public void testOpenDatabaseAborted() throws Exception {
+	DbTransaction txn = env.beginTransaction(TIMEOUT);
+	env.openDatabase(txn, "db", true);
+	txn.abort();
+	txn = env.beginTransaction(TIMEOUT);
+	try {
+	    env.openDatabase(txn, "db", false);
+	    fail("Expected FileNotFoundException");
+	} catch (FileNotFoundException e) {
+	    System.err.println(e);
+	} finally {
+	    txn.abort();
+	}
+    }
+
+    /* -- Test operations -- */
+
+    @Test
+    public void testPutGetDelete() throws Exception {
+	DbTransaction txn = env.beginTransaction(TIMEOUT);
+	DbDatabase db = env.openDatabase(txn, "db", true);
+	db.put(txn, bytes(1), bytes(10));
+	assertArrayEquals(bytes(10), db.get(txn, bytes(1), false));
+	assertFalse(db.putNoOverwrite(txn, bytes(1), bytes(11)));
+	assertTrue(db.putNoOverwrite(txn, bytes(2), bytes(20)));
+	txn.commit();
+	txn = env.beginTransaction(TIMEOUT);
+	assertArrayEquals(bytes(10), db.get(txn, bytes(1), false));
+	assertTrue(db.delete(txn, bytes(1)));
+	assertFalse(db.delete(txn, bytes(1)));
+	assertNull(db.get(txn, bytes(1), false));
+	txn.abort();
+	txn = env.beginTransaction(TIMEOUT);
+	assertArrayEquals(bytes(10), db.get(txn, bytes(1), false));
+	txn.abort();
+    }
+
+    @Test
+    public void testCursor() throws Exception {
+	DbTransaction txn = env.beginTransaction(TIMEOUT);
+	DbDatabase db = env.openDatabase(txn, "db", true);
+	db.put(txn, bytes(1), bytes(10));
+	db.put(txn, bytes(3), bytes(30));
+	db.put(txn, bytes(200), bytes(40));
+	txn.commit();
+	txn = env.beginTransaction(TIMEOUT);
+	db.delete(txn, bytes(3));
+	DbCursor cursor = db.openCursor(txn);
+	assertTrue(cursor.putNoOverwrite(bytes(2), bytes(20)));
+	assertTrue(cursor.findFirst());
+	assertArrayEquals(bytes(1), cursor.getKey());
+	assertTrue(cursor.findNext());
+	assertArrayEquals(bytes(2), cursor.getKey());
+	assertArrayEquals(bytes(20), cursor.getValue());
+	assertTrue(cursor.findNext());
+	assertArrayEquals(bytes(200), cursor.getKey());
+	assertFalse(cursor.findNext());
+	assertTrue(cursor.findNext(bytes(3)));
+	assertArrayEquals(bytes(200), cursor.getKey());
+	assertTrue(cursor.findLast());
+	assertArrayEquals(bytes(200), cursor.getKey());
+	cursor.close();
+	txn.commit();
+    }
+
+    @Test
+    public void testConflictingWrites() throws Exception {
+	DbTransaction txn = env.beginTransaction(TIMEOUT);
+	DbDatabase db = env.openDatabase(txn, "db", true);
+	db.put(txn, bytes(1), bytes(10));
+	txn.commit();
+	DbTransaction txn1 = env.beginTransaction(TIMEOUT);
+	DbTransaction txn2 = env.beginTransaction(TIMEOUT);
+	try {
+	    db.get(txn1, bytes(1), true);
+	    try {
+		db.get(txn2, bytes(1), false);
+		fail("Expected TransactionTimeoutException");
+	    } catch (TransactionTimeoutException e) {
+		System.err.println(e);
+	    }
+	} finally {
+	    txn1.abort();
+	    txn2.abort();
+	}
+    }
+
+    @Test
+    public void testInsertPhantom() throws Exception {
+	DbTransaction txn = env.beginTransaction(TIMEOUT);
+	DbDatabase db = env.openDatabase(txn, "db", true);
+	db.put(txn, bytes(1), bytes(10));
+	db.put(txn, bytes(5), bytes(50));
+	txn.commit();
+	DbTransaction txn1 = env.beginTransaction(TIMEOUT);
+	DbTransaction txn2 = env.beginTransaction(TIMEOUT);
+	try {
+	    DbCursor cursor = db.openCursor(txn1);
+	    assertTrue(cursor.findNext(bytes(2)));
+	    assertArrayEquals(bytes(5), cursor.getKey());
+	    cursor.close();
+	    try {
+		db.put(txn2, bytes(3), bytes(30));
+		fail("Expected TransactionTimeoutException");
+	    } catch (TransactionTimeoutException e) {
+		System.err.println(e);
+	    }
+	} finally {
+	    txn1.abort();
+	    txn2.abort();
+	}
+    }
+
+    @Test
+    public void testConcurrentInserts() throws Exception {
+	DbTransaction txn = env.beginTransaction(TIMEOUT);
+	DbDatabase db = env.openDatabase(txn, "db", true);
+	db.put(txn, bytes(15), bytes(150));
+	txn.commit();
+	DbTransaction txn1 = env.beginTransaction(TIMEOUT);
+	DbTransaction txn2 = env.beginTransaction(TIMEOUT);
+	DbTransaction txn3 = env.beginTransaction(TIMEOUT);
+	try {
+	    /* Inserts before a pending insert lock that insert's key */
+	    db.put(txn1, bytes(10), bytes(100));
+	    db.put(txn1, bytes(5), bytes(50));
+	    db.put(txn2, bytes(20), bytes(200));
+	    db.put(txn2, bytes(17), bytes(170));
+	    /* The committed next key still guards against phantoms */
+	    DbCursor cursor = db.openCursor(txn3);
+	    try {
+		cursor.findNext(bytes(1));
+		fail("Expected TransactionTimeoutException");
+	    } catch (TransactionTimeoutException e) {
+		System.err.println(e);
+	    } finally {
+		cursor.close();
+	    }
+	    txn1.commit();
+	    txn1 = null;
+	    txn2.commit();
+	    txn2 = null;
+	} finally {
+	    if (txn1 != null) {
+		txn1.abort();
+	    }
+	    if (txn2 != null) {
+		txn2.abort();
+	    }
+	    txn3.abort();
+	}
+	txn = env.beginTransaction(TIMEOUT);
+	DbCursor cursor = db.openCursor(txn);
+	int[] keys = { 5, 10, 15, 17, 20 };
+	for (int key : keys) {
+	    assertTrue(cursor.findNext(bytes(key)));
+	    assertArrayEquals(bytes(key), cursor.getKey());
+	    assertArrayEquals(bytes(key * 10), cursor.getValue());
+	}
+	assertFalse(cursor.findNext());
+	cursor.close();
+	txn.commit();
+    }
+
+    /* -- Test recovery -- */
+
+    @Test
+    public void testRecoverFromLog() throws Exception {
+	populate();
+	/* Simulate a crash by not closing the environment */
+	env = createEnvironment();
+	checkPopulated();
+    }
+
+    @Test
+    public void testRecoverFromSnapshot() throws Exception {
+	populate();
+	env.close();
+	env = createEnvironment();
+	checkPopulated();
+	env.close();
+	env = createEnvironment();
+	checkPopulated();
+    }
+
+    @Test
+    public void testRecoverFromSnapshotAndLog() throws Exception {
+	env.close();
+	props.setProperty(MemEnvironment.SNAPSHOT_LOG_SIZE_PROPERTY, "100");
+	env = createEnvironment();
+	populate();
+	Thread.sleep(200);
+	env = createEnvironment();
+	checkPopulated();
+    }
+
+    @Test
+    public void testRecoverIncompleteRecord() throws Exception {
+	populate();
+	DbTransaction txn = env.beginTransaction(TIMEOUT);
+	DbDatabase db = env.openDatabase(txn, "db", false);
+	db.put(txn, bytes(100), bytes(100));
+	txn.commit();
+	/* Truncate the last record */
+	RandomAccessFile raf = new RandomAccessFile(getLogFile(), "rw");
+	raf.setLength(raf.length() - 1);
+	raf.close();
+	env = createEnvironment();
+	checkPopulated();
+	txn = env.beginTransaction(TIMEOUT);
+	db = env.openDatabase(txn, "db", false);
+	assertNull(db.get(txn, bytes(100), false));
+	txn.abort();
+    }
+
+    @Test
+    public void testRecoverTruncatedHeader() throws Exception {
+	populate();
+	appendToLog(new byte[] { 0, 0, 1 });
+	env = createEnvironment();
+	checkPopulated();
+    }
+
+    @Test
+    public void testRecoverCorruptLengthTooLarge() throws Exception {
+	populate();
+	appendRecordHeader(Integer.MAX_VALUE);
+	env = createEnvironment();
+	checkPopulated();
+    }
+
+    @Test
+    public void testRecoverCorruptLengthPastEnd() throws Exception {
+	populate();
+	appendRecordHeader(1000);
+	env = createEnvironment();
+	checkPopulated();
+    }
+
+    @Test
+    public void testRecoverCorruptLengthNegative() throws Exception {
+	populate();
+	appendRecordHeader(-20);
+	env = createEnvironment();
+	checkPopulated();
+    }
+
+    @Test
+    public void testRecoverCorruptChecksum() throws Exception {
+	populate();
+	appendRecordHeader(4);
+	appendToLog(new byte[] { 1, 2, 3, 4 });
+	env = createEnvironment();
+	checkPopulated();
+    }
+
+    /* -- Other methods -- */
+
+    /** Creates an environment using the current properties. */
+    private DbEnvironment createEnvironment() {
+	return new MemEnvironment(dbDirectory, props, null, null);
+    }
+
+    /** Returns the largest log file, which holds the populated data. */
+    private static File getLogFile() {
+	File log = null;
+	for (File file : new File(dbDirectory).listFiles()) {
+	    if (file.getName().startsWith("log.") &&
+		(log == null || file.length() > log.length()))
+	    {
+		log = file;
+	    }
+	}
+	return log;
+    }
+
+    /** Appends the bytes to the end of the log file. */
+    private static void appendToLog(byte[] bytes) throws Exception {
+	RandomAccessFile raf = new RandomAccessFile(getLogFile(), "rw");
+	try {
+	    raf.seek(raf.length());
+	    raf.write(bytes);
+	} finally {
+	    raf.close();
+	}
+    }
+
+    /**
+     * Appends a record header with the specified length and a zero checksum
+     * to the end of the log file.
+     */
+    private static void appendRecordHeader(int length) throws Exception {
+	RandomAccessFile raf = new RandomAccessFile(getLogFile(), "rw");
+	try {
+	    raf.seek(raf.length());
+	    raf.writeInt(length);
+	    raf.writeLong(0);
+	} finally {
+	    raf.close();
+	}
+    }
+
+    /** Stores some values and deletes some of them. */
+    private void populate() throws Exception {
+	DbTransaction txn = env.beginTransaction(TIMEOUT);
+	DbDatabase db = env.openDatabase(txn, "db", true);
+	txn.commit();
+	for (int i = 0; i < 20; i++) {
+	    txn = env.beginTransaction(TIMEOUT);
+	    db.put(txn, bytes(i), bytes(i + 1));
+	    if (i % 3 == 0 && i > 0) {
+		db.delete(txn, bytes(i - 1));
+	    }
+	    txn.commit();
+	}
+    }
+
+    /** Checks that the values stored by populate are present. */
+    private void checkPopulated() throws Exception {
+	DbTransaction txn = env.beginTransaction(TIMEOUT);
+	DbDatabase db = env.openDatabase(txn, "db", false);
+	for (int i = 0; i < 20; i++) {
+	    byte[] value = db.get(txn, bytes(i), false);
+	    if (i % 3 == 2 && i < 19) {
+		assertNull(value);
+	    } else {
+		assertArrayEquals(bytes(i + 1), value);
+	    }
+	}
+	txn.abort();
+    }
+
+    /** Converts the arguments to a byte array. */
+    private static byte[] bytes(int... values) {
+	byte[] result = new byte[values.length];
+	for (int i = 0; i < values.length; i++) {
+	    result[i] = (byte) values[i];
+	}
+	return result;
+    }
+}
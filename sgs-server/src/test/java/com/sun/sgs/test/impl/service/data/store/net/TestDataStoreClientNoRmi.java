@@ -0,0 +1,145 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.test.impl.service.data.store.net;
+
+import com.sun.sgs.test.util.DummyTransaction;
+import com.sun.sgs.test.util.DummyTransaction.UsePrepareAndCommit;
+import static com.sun.sgs.test.util.UtilDataStoreDb.getLockTimeoutPropertyName;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+/**
+ * Test the DataStoreClient class using the experimental socket-based facility
+ * in place of RMI.
+ */
+public class TestDataStoreClientNoRmi extends TestDataStoreClient {
+
+    /** The name of the DataStoreClient package. */
+    private static final String DataStoreNetPackage =
+	"com.sun.sgs.impl.service.data.store.net";
+
+    /** The number of server worker threads. */
+    private static final int WORKER_THREADS = 2;
+
+    /** Creates an instance. */
+    public TestDataStoreClientNoRmi() { }
+
+    /** Adds the property to use sockets and limits the worker threads. */
+    @Override
+    protected Properties getProperties() throws Exception {
+	Properties props = super.getProperties();
+	props.setProperty(DataStoreNetPackage + ".no.rmi", "true");
+	props.setProperty(DataStoreNetPackage + ".server.worker.threads",
+			  String.valueOf(WORKER_THREADS));
+	return props;
+    }
+
+    /* -- Tests -- */
+
+    /**
+     * Tests that a transaction holding a lock can commit while more
+     * transactions than there are server worker threads are waiting for that
+     * lock.
+     */
+    @Test
+    public void testCommitWithWorkersBlockedOnLock() throws Exception {
+	txn.commit();
+	txn = null;
+	store.shutdown();
+	store = null;
+	props.setProperty(getLockTimeoutPropertyName(props), "5000");
+	store = createDataStore(props);
+	txn = createTransaction(UsePrepareAndCommit.ARBITRARY, 10000);
+	final long oid = store.createObject(txn);
+	store.setObject(txn, oid, new byte[] { 0 });
+	txn.commit();
+	txn = createTransaction(UsePrepareAndCommit.ARBITRARY, 10000);
+	store.setObject(txn, oid, new byte[] { 1 });
+	int count = WORKER_THREADS + 2;
+	final CountDownLatch started = new CountDownLatch(count);
+	final CountDownLatch done = new CountDownLatch(count);
+	final AtomicReference<Throwable> failure =
+	    new AtomicReference<Throwable>();
+	try {
+	    for (int i = 0; i < count; i++) {
+		new Thread("testCommitWithWorkersBlockedOnLock-" + i) {
+		    public void run() {
+			DummyTransaction readTxn = null;
+			try {
+			    readTxn = createTransaction(
+				UsePrepareAndCommit.ARBITRARY, 10000);
+			    started.countDown();
+			    byte[] value = store.getObject(readTxn, oid, false);
+			    if (!Arrays.equals(new byte[] { 1 }, value)) {
+				throw new AssertionError(
+				    "Unexpected value: " +
+				    Arrays.toString(value));
+			    }
+			    readTxn.commit();
+			    readTxn = null;
+			} catch (Throwable t) {
+			    failure.compareAndSet(null, t);
+			    if (readTxn != null) {
+				readTxn.abort(new RuntimeException("abort"));
+			    }
+			} finally {
+			    done.countDown();
+			}
+		    }
+		}.start();
+	    }
+	    assertTrue(started.await(5000, TimeUnit.MILLISECONDS));
+	    /* Give the readers time to block on the lock in the server */
+	    Thread.sleep(500);
+	    long start = System.currentTimeMillis();
+	    txn.commit();
+	    txn = null;
+	    long elapsed = System.currentTimeMillis() - start;
+	    System.err.println("Commit took " + elapsed + " ms");
+	    assertTrue("Commit waited for blocked readers: " + elapsed + " ms",
+		       elapsed < 2000);
+	    assertTrue(done.await(5000, TimeUnit.MILLISECONDS));
+	    if (failure.get() != null) {
+		throw new AssertionError(failure.get());
+	    }
+	} finally {
+	    done.await(10000, TimeUnit.MILLISECONDS);
+	    if (txn != null) {
+		txn.abort(new RuntimeException("abort"));
+		txn = null;
+	    }
+	    /* Recreate the store with the standard lock timeout */
+	    store.shutdown();
+	    store = null;
+	}
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.test.impl.service.nodemap.policy;
+
+import com.sun.sgs.impl.service.nodemap.NoNodesAvailableException;
+import com.sun.sgs.impl.service.nodemap.NodeAssignPolicy;
+import com.sun.sgs.impl.service.nodemap.policy.LeastLoadedPolicy;
+import com.sun.sgs.impl.service.watchdog.NodeLoad;
+import com.sun.sgs.tools.test.FilteredNameRunner;
+import java.util.Properties;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests the {@link LeastLoadedPolicy} class. */
+@RunWith(FilteredNameRunner.class)
+public class TestLeastLoadedPolicy extends Assert {
+
+    private LeastLoadedPolicy policy;
+
+    @Before
+    public void setUp() {
+	policy = new LeastLoadedPolicy(new Properties());
+    }
+
+    /* -- Tests -- */
+
+    @Test(expected = NoNodesAvailableException.class)
+    public void testChooseNodeNoNodes() throws Exception {
+	policy.chooseNode(NodeAssignPolicy.SERVER_NODE);
+    }
+
+    @Test
+    public void testChooseNodeOneNode() throws Exception {
+	policy.nodeAvailable(1);
+	policy.nodeLoadUpdate(1, new NodeLoad(100, 100, 100));
+	for (int i = 0; i < 10; i++) {
+	    assertEquals(1, policy.chooseNode(NodeAssignPolicy.SERVER_NODE));
+	}
+    }
+
+    @Test
+    public void testChooseNodeAvoidsLoadedNode() throws Exception {
+	policy.nodeAvailable(1);
+	policy.nodeAvailable(2);
+	policy.nodeLoadUpdate(1, new NodeLoad(50, 5000, 20));
+	policy.nodeLoadUpdate(2, new NodeLoad(0, 10, 5));
+	// With two nodes, both are always candidates
+	for (int i = 0; i < 100; i++) {
+	    assertEquals(2, policy.chooseNode(NodeAssignPolicy.SERVER_NODE));
+	}
+    }
+
+    @Test
+    public void testChooseNodeCountsAssignmentsSinceReport()
+	throws Exception
+    {
+	policy.nodeAvailable(1);
+	policy.nodeAvailable(2);
+	policy.nodeLoadUpdate(1, new NodeLoad(0, 0, 0));
+	policy.nodeLoadUpdate(2, new NodeLoad(0, 0, 0));
+	int[] counts = new int[3];
+	for (int i = 0; i < 100; i++) {
+	    counts[(int) policy.chooseNode(NodeAssignPolicy.SERVER_NODE)]++;
+	}
+	assertTrue(Math.abs(counts[1] - counts[2]) <= 1);
+    }
+
+    @Test
+    public void testChooseNodeSpreadsUnreportedNodes() throws Exception {
+	for (long nodeId = 1; nodeId <= 4; nodeId++) {
+	    policy.nodeAvailable(nodeId);
+	}
+	int[] counts = new int[5];
+	for (int i = 0; i < 400; i++) {
+	    counts[(int) policy.chooseNode(NodeAssignPolicy.SERVER_NODE)]++;
+	}
+	for (long nodeId = 1; nodeId <= 4; nodeId++) {
+	    assertTrue("node " + nodeId + " assigned " + counts[(int) nodeId],
+		       counts[(int) nodeId] > 50);
+	}
+    }
+
+    @Test
+    public void testNodeUnavailable() throws Exception {
+	policy.nodeAvailable(1);
+	policy.nodeAvailable(2);
+	policy.nodeLoadUpdate(2, new NodeLoad(0, 0, 0));
+	policy.nodeLoadUpdate(1, new NodeLoad(100, 100, 100));
+	policy.nodeUnavailable(2);
+	assertEquals(1, policy.chooseNode(NodeAssignPolicy.SERVER_NODE));
+    }
+
+    @Test(expected = NoNodesAvailableException.class)
+    public void testReset() throws Exception {
+	policy.nodeAvailable(1);
+	policy.reset();
+	policy.chooseNode(NodeAssignPolicy.SERVER_NODE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNodeLoadNegative() {
+	new NodeLoad(-1, 0, 0);
+    }
+}
@@ -40,13 +40,19 @@ import com.sun.sgs.impl.service.session.ClientSessionServer;
 import com.sun.sgs.impl.service.session.ClientSessionWrapper;
 import com.sun.sgs.impl.sharedutil.HexDumper;
 import com.sun.sgs.impl.sharedutil.MessageBuffer;
+import com.sun.sgs.impl.profile.ProfileCollectorImpl;
 import com.sun.sgs.kernel.TransactionScheduler;
+import com.sun.sgs.management.ClientSessionServiceMXBean;
+import com.sun.sgs.profile.ProfileCollector;
+import com.sun.sgs.profile.ProfileCollector.ProfileLevel;
 import com.sun.sgs.protocol.simple.SimpleSgsProtocol;
 import com.sun.sgs.service.DataService;
 import com.sun.sgs.service.Node.Health;
+import com.sun.sgs.service.Transaction;
 import com.sun.sgs.service.WatchdogService;
 import com.sun.sgs.test.util.AbstractDummyClient;
 import com.sun.sgs.test.util.ConfigurableNodePolicy;
+import com.sun.sgs.test.util.DummyNonDurableTransactionParticipant;
 import com.sun.sgs.test.util.SgsTestNode;
 import com.sun.sgs.test.util.SimpleTestIdentityAuthenticator;
 import com.sun.sgs.test.util.TestAbstractKernelRunnable;
@@ -69,6 +75,8 @@ import java.util.Set;
 import java.util.Properties;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -1222,6 +1230,162 @@ public class TestClientSessionServiceImplv4 extends Assert {
 	client.checkDisconnectedCallback(true);
     }
 
+    // -- Test ordering of committed actions --
+
+    @Test
+    public void testClientSessionSendInterleavedTransactions()
+	throws Exception
+    {
+	DummyClient client1 = createDummyClient("client1");
+	DummyClient client2 = createDummyClient("client2");
+	try {
+	    assertTrue(client1.connect(serverNode.getAppPort()).login());
+	    assertTrue(client2.connect(serverNode.getAppPort()).login());
+	    txnScheduler.runTask(new TestAbstractKernelRunnable() {
+		public void run() {
+		    DataManager dataManager = AppContext.getDataManager();
+		    dataManager.setBinding("client1.counter", new Counter());
+		    dataManager.setBinding("client2.counter", new Counter());
+		} }, taskOwner);
+	    // Interleave transactions that send to one or both sessions
+	    int iterations = 10;
+	    for (int i = 0; i < iterations; i++) {
+		scheduleCountedSend(client1);
+		scheduleCountedSend(client2);
+		scheduleCountedSend(client1, client2);
+	    }
+	    for (DummyClient client : new DummyClient[] { client1, client2 }) {
+		client.waitForClientToReceiveExpectedMessages(2 * iterations);
+		client.validateMessageSequence(
+		    client.clientReceivedMessages, 2 * iterations, 0);
+	    }
+	} finally {
+	    client1.disconnect();
+	    client2.disconnect();
+	}
+    }
+
+    @Test
+    public void testSlowTransactionDoesNotDelayOtherSessions()
+	throws Exception
+    {
+	DummyClient client1 = createDummyClient("client1");
+	DummyClient client2 = createDummyClient("client2");
+	BlockingParticipant participant = new BlockingParticipant(false);
+	try {
+	    assertTrue(client1.connect(serverNode.getAppPort()).login());
+	    assertTrue(client2.connect(serverNode.getAppPort()).login());
+	    scheduleBlockedSend(client1, 2, 0, participant);
+	    // A later transaction for the same session must wait
+	    sendMessagesFromNode(serverNode, client1, 2, 2);
+	    // Another session's messages should not be held back
+	    sendMessagesFromNodeToClient(serverNode, client2, 3, 0);
+	    Thread.sleep(100);
+	    assertEquals(0, client1.clientReceivedMessages.size());
+	    participant.release();
+	    client1.waitForClientToReceiveExpectedMessages(4);
+	    client1.validateMessageSequence(
+		client1.clientReceivedMessages, 4, 0);
+	} finally {
+	    participant.release();
+	    client1.disconnect();
+	    client2.disconnect();
+	}
+    }
+
+    @Test
+    public void testAbortedTransactionDoesNotDelayOtherSessions()
+	throws Exception
+    {
+	DummyClient client1 = createDummyClient("client1");
+	DummyClient client2 = createDummyClient("client2");
+	BlockingParticipant participant = new BlockingParticipant(true);
+	try {
+	    assertTrue(client1.connect(serverNode.getAppPort()).login());
+	    assertTrue(client2.connect(serverNode.getAppPort()).login());
+	    scheduleBlockedSend(client1, 2, 100, participant);
+	    sendMessagesFromNode(serverNode, client1, 2, 0);
+	    sendMessagesFromNodeToClient(serverNode, client2, 3, 0);
+	    Thread.sleep(100);
+	    assertEquals(0, client1.clientReceivedMessages.size());
+	    // The aborted transaction's messages should never be sent
+	    participant.release();
+	    client1.waitForClientToReceiveExpectedMessages(2);
+	    Thread.sleep(100);
+	    client1.validateMessageSequence(
+		client1.clientReceivedMessages, 2, 0);
+	} finally {
+	    participant.release();
+	    client1.disconnect();
+	    client2.disconnect();
+	}
+    }
+
+    @Test
+    public void testDisconnectAfterDelayedSends() throws Exception {
+	final String name = "foo";
+	DummyClient client = createDummyClient(name);
+	BlockingParticipant participant = new BlockingParticipant(false);
+	try {
+	    assertTrue(client.connect(serverNode.getAppPort()).login());
+	    scheduleBlockedSend(client, 4, 0, participant);
+	    // The blocked transaction may hold locks the removal needs, so
+	    // don't wait for the removal here
+	    txnScheduler.scheduleTask(new TestAbstractKernelRunnable() {
+		public void run() {
+		    DataManager dataManager = AppContext.getDataManager();
+		    dataManager.removeObject(dataManager.getBinding(name));
+		} }, taskOwner);
+	    Thread.sleep(100);
+	    assertTrue(client.isConnected());
+	    assertEquals(0, client.clientReceivedMessages.size());
+	    participant.release();
+	    client.waitForClientToReceiveExpectedMessages(4);
+	    client.validateMessageSequence(client.clientReceivedMessages, 4, 0);
+	    assertTrue(client.waitForDisconnect());
+	} finally {
+	    participant.release();
+	    client.disconnect();
+	}
+    }
+
+    @Test
+    public void testFlushLagRecordedForDelayedSession() throws Exception {
+	DummyClient client = createDummyClient("foo");
+	BlockingParticipant participant = new BlockingParticipant(false);
+	try {
+	    assertTrue(client.connect(serverNode.getAppPort()).login());
+	    ProfileCollector collector = serverNode.getSystemRegistry().
+		getComponent(ProfileCollector.class);
+	    collector.getConsumer(
+		ProfileCollectorImpl.CORE_CONSUMER_PREFIX +
+		"ClientSessionService").setProfileLevel(ProfileLevel.MAX);
+	    ClientSessionServiceMXBean bean = (ClientSessionServiceMXBean)
+		collector.getRegisteredMBean(
+		    ClientSessionServiceMXBean.MXBEAN_NAME);
+	    long initialMax = bean.getFlushLagMax();
+	    sendMessagesFromNodeToClient(serverNode, client, 1, 0);
+	    long max = bean.getFlushLagMax();
+	    assertTrue("Flush lag not recorded: " + max, max > initialMax);
+	    // A committed send delayed by an earlier slow transaction
+	    scheduleBlockedSend(client, 1, 0, participant);
+	    sendMessagesFromNode(serverNode, client, 1, 1);
+	    long delay = 200;
+	    Thread.sleep(delay);
+	    participant.release();
+	    client.waitForClientToReceiveExpectedMessages(2);
+	    client.validateMessageSequence(client.clientReceivedMessages, 2, 0);
+	    max = bean.getFlushLagMax();
+	    assertTrue("Expected flush lag of at least " + delay + " ms: " +
+		       max,
+		       max >= delay);
+	    assertTrue(bean.getFlushLagAvg() > 0);
+	} finally {
+	    participant.release();
+	    client.disconnect();
+	}
+    }
+
     /* -- other methods -- */
 
     /**
@@ -1277,6 +1441,63 @@ public class TestClientSessionServiceImplv4 extends Assert {
 	}
     }
     
+    /**
+     * Schedules a task that sends the current value of a counter for each
+     * of the specified clients to that client, and then increments the
+     * counter.  The counter for each client must be bound to the client's
+     * name followed by {@code ".counter"}.
+     */
+    private void scheduleCountedSend(final DummyClient... clients) {
+	txnScheduler.scheduleTask(new TestAbstractKernelRunnable() {
+	    public void run() {
+		DataManager dataManager = AppContext.getDataManager();
+		for (DummyClient client : clients) {
+		    Counter counter = (Counter)
+			dataManager.getBinding(client.name + ".counter");
+		    ClientSession session = (ClientSession)
+			dataManager.getBinding(client.name);
+		    ByteBuffer buf = ByteBuffer.allocate(4);
+		    buf.putInt(counter.getAndIncrement()).flip();
+		    session.send(buf, Delivery.RELIABLE);
+		}
+	    } }, taskOwner);
+    }
+
+    /**
+     * Schedules a task that sends the specified number of messages to the
+     * specified client in a single transaction, and waits until the
+     * specified participant blocks that transaction.  The content of each
+     * message is a consecutive integer starting at the specified offset.
+     * If the participant aborts the transaction, it is joined after the
+     * messages are sent, so that the session service has prepared before
+     * it blocks.  Otherwise it is joined first, so that it blocks in
+     * commit before the session service commits.
+     */
+    protected void scheduleBlockedSend(
+	final DummyClient client, final int numMessages, final int offset,
+	final BlockingParticipant participant)
+	throws Exception
+    {
+	txnScheduler.scheduleTask(new TestAbstractKernelRunnable() {
+	    public void run() throws Exception {
+		Transaction txn = serverNode.getProxy().getCurrentTransaction();
+		if (!participant.abort) {
+		    txn.join(participant);
+		}
+		ClientSession session = (ClientSession)
+		    AppContext.getDataManager().getBinding(client.name);
+		for (int i = 0; i < numMessages; i++) {
+		    ByteBuffer buf = ByteBuffer.allocate(4);
+		    buf.putInt(offset + i).flip();
+		    session.send(buf, Delivery.RELIABLE);
+		}
+		if (participant.abort) {
+		    txn.join(participant);
+		}
+	    } }, taskOwner);
+	participant.waitForBlocked();
+    }
+
     /**
      * Check that the session bindings are the expected number and throw an
      * exception if they aren't.
@@ -1637,6 +1858,57 @@ public class TestClientSessionServiceImplv4 extends Assert {
 	}
     }
 
+    /**
+     * A non-durable participant that blocks its transaction until
+     * released.  If {@code abort} is {@code true}, the participant blocks
+     * in prepare and then aborts the transaction, otherwise it blocks in
+     * commit.
+     */
+    static class BlockingParticipant
+	extends DummyNonDurableTransactionParticipant
+    {
+	final boolean abort;
+	private final CountDownLatch blocked = new CountDownLatch(1);
+	private final CountDownLatch released = new CountDownLatch(1);
+
+	BlockingParticipant(boolean abort) {
+	    this.abort = abort;
+	}
+
+	public boolean prepare(Transaction txn) throws Exception {
+	    boolean result = super.prepare(txn);
+	    if (abort) {
+		block();
+		throw new MaybeRetryException("Abort after prepare", false);
+	    }
+	    return result;
+	}
+
+	public void commit(Transaction txn) {
+	    super.commit(txn);
+	    block();
+	}
+
+	/** Waits for this participant to block its transaction. */
+	void waitForBlocked() throws InterruptedException {
+	    assertTrue("Participant did not block",
+		       blocked.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+	}
+
+	/** Releases the blocked transaction. */
+	void release() {
+	    released.countDown();
+	}
+
+	private void block() {
+	    blocked.countDown();
+	    try {
+		released.await(WAIT_TIME, TimeUnit.MILLISECONDS);
+	    } catch (InterruptedException e) {
+	    }
+	}
+    }
+
     static class DummyClient extends AbstractDummyClient {
 
 	private final Object disconnectedCallbackLock = new Object();
@@ -1650,6 +1922,9 @@ public class TestClientSessionServiceImplv4 extends Assert {
 	    new ConcurrentLinkedQueue<byte[]>();
 	public final Queue<byte[]> clientReceivedMessages =
 	    new ConcurrentLinkedQueue<byte[]>();
+	// Number of session messages received before the relocate
+	// notification, or -1 if no notification was received
+	public volatile int messagesBeforeRelocation = -1;
 
 	
 
@@ -1691,6 +1966,11 @@ public class TestClientSessionServiceImplv4 extends Assert {
 		    }
 		}
 		break;
+
+	    case SimpleSgsProtocol.RELOCATE_NOTIFICATION:
+		messagesBeforeRelocation = clientReceivedMessages.size();
+		super.handleOpCode(opcode, buf);
+		break;
 	    
 	    default:
 		super.handleOpCode(opcode, buf);
@@ -21,11 +21,23 @@
 
 package com.sun.sgs.test.impl.service.session;
 
+import com.sun.sgs.app.DataManager;
+import com.sun.sgs.auth.Identity;
+import com.sun.sgs.impl.profile.ProfileCollectorImpl;
 import com.sun.sgs.impl.sharedutil.MessageBuffer;
+import com.sun.sgs.kernel.TransactionScheduler;
+import com.sun.sgs.management.ClientSessionServiceMXBean;
+import com.sun.sgs.profile.ProfileCollector;
+import com.sun.sgs.profile.ProfileCollector.ProfileLevel;
+import com.sun.sgs.test.impl.service.session.TestClientSessionServiceImplv4.
+    BlockingParticipant;
 import com.sun.sgs.test.impl.service.session.TestClientSessionServiceImplv4.
     DummyClient;
+import com.sun.sgs.test.util.DummyManagedObject;
 import com.sun.sgs.test.util.IdentityAssigner;
 import com.sun.sgs.test.util.SgsTestNode;
+import com.sun.sgs.test.util.SimpleTestIdentityAuthenticator.DummyIdentity;
+import com.sun.sgs.test.util.TestAbstractKernelRunnable;
 import com.sun.sgs.tools.test.FilteredNameRunner;
 
 import org.junit.Before;
@@ -118,6 +130,105 @@ public class TestClientSessionServiceImplv5 extends TestClientSessionServiceImpl
 	}
     }
     
+    @Test
+    public void testRelocateAfterDelayedSends() throws Exception {
+	String newNodeHost = "newNode";
+	String name = "foo";
+	addNodes(newNodeHost);
+	DummyClient client = createDummyClient(name);
+	BlockingParticipant participant = new BlockingParticipant(false);
+	try {
+	    assertTrue(client.connect(serverNode.getAppPort()).login());
+	    SgsTestNode newNode = additionalNodes.get(newNodeHost);
+	    scheduleBlockedSend(client, 4, 0, participant);
+	    identityAssigner.
+		moveIdentity(name, serverNode.getNodeId(), newNode.getNodeId());
+	    Thread.sleep(100);
+	    assertEquals(-1, client.messagesBeforeRelocation);
+	    participant.release();
+	    client.waitForRelocationNotification(newNode.getAppPort());
+	    // The move must not overtake sends that committed before it
+	    assertEquals(4, client.messagesBeforeRelocation);
+	    client.validateMessageSequence(client.clientReceivedMessages, 4, 0);
+	    client.relocate(newNode.getAppPort(), true, true);
+	} finally {
+	    participant.release();
+	    client.disconnect();
+	}
+    }
+
+    @Test
+    public void testRelocatePrefetchesRecentObjects() throws Exception {
+	testRelocatePrefetch(false);
+    }
+
+    @Test
+    public void testRelocatePrefetchToleratesRemovedObjects()
+	throws Exception
+    {
+	testRelocatePrefetch(true);
+    }
+
+    /**
+     * Logs in a client on the server node, accesses an object in a task
+     * owned by the client's identity, optionally removes the object, and
+     * then relocates the client to a new node, checking that the new node
+     * prefetches the recently accessed objects.
+     */
+    private void testRelocatePrefetch(boolean removeObject) throws Exception {
+	String newNodeHost = "newNode";
+	final String name = "foo";
+	final String binding = "prefetch.object";
+	addNodes(newNodeHost);
+	SgsTestNode newNode = additionalNodes.get(newNodeHost);
+	ClientSessionServiceMXBean newNodeBean =
+	    getClientSessionServiceBean(newNode);
+	assertEquals(0, newNodeBean.getRelocationPrefetchedObjects());
+	TransactionScheduler txnScheduler = serverNode.getSystemRegistry().
+	    getComponent(TransactionScheduler.class);
+	Identity taskOwner = serverNode.getProxy().getCurrentOwner();
+	DummyClient client = createDummyClient(name);
+	try {
+	    assertTrue(client.connect(serverNode.getAppPort()).login());
+	    txnScheduler.runTask(new TestAbstractKernelRunnable() {
+		    public void run() {
+			serverNode.getDataService().setBinding(
+			    binding, new DummyManagedObject());
+		    } }, taskOwner);
+	    // Object accesses are only recorded for the session's identity
+	    txnScheduler.runTask(new TestAbstractKernelRunnable() {
+		    public void run() {
+			serverNode.getDataService().getBindingForUpdate(
+			    binding);
+		    } }, new DummyIdentity(name));
+	    if (removeObject) {
+		txnScheduler.runTask(new TestAbstractKernelRunnable() {
+			public void run() {
+			    DataManager dataManager =
+				serverNode.getDataService();
+			    dataManager.removeObject(
+				dataManager.getBinding(binding));
+			    dataManager.removeBinding(binding);
+			} }, taskOwner);
+	    }
+	    identityAssigner.
+		moveIdentity(name, serverNode.getNodeId(), newNode.getNodeId());
+	    client.waitForRelocationNotification(newNode.getAppPort());
+	    client.relocate(newNode.getAppPort(), true, true);
+	    long prefetched = 0;
+	    for (int i = 0; i < 10 && prefetched == 0; i++) {
+		prefetched = newNodeBean.getRelocationPrefetchedObjects();
+		if (prefetched == 0) {
+		    Thread.sleep(WAIT_TIME / 10);
+		}
+	    }
+	    assertTrue("No objects prefetched", prefetched > 0);
+	    sendMessagesFromNodeToClient(newNode, client, 1, 0);
+	} finally {
+	    client.disconnect();
+	}
+    }
+
     @Test
     public void testRelocateInvalidRelocationKey()  throws Exception {
 	String newNodeHost = "new";
@@ -343,6 +454,24 @@ public class TestClientSessionServiceImplv5 extends TestClientSessionServiceImpl
 	return client;
     }
 
+    /**
+     * Returns the client session service MXBean for the specified {@code
+     * node}, after setting the service's profiling level so that the bean
+     * reports relocation prefetching.
+     */
+    private static ClientSessionServiceMXBean getClientSessionServiceBean(
+	SgsTestNode node)
+    {
+	ProfileCollector collector =
+	    node.getSystemRegistry().getComponent(ProfileCollector.class);
+	collector.getConsumer(
+	    ProfileCollectorImpl.CORE_CONSUMER_PREFIX +
+	    "ClientSessionService").setProfileLevel(ProfileLevel.MAX);
+	return (ClientSessionServiceMXBean)
+	    collector.getRegisteredMBean(
+		ClientSessionServiceMXBean.MXBEAN_NAME);
+    }
+
     /**
      * Waits for the object count to match the {@code expectedCount}, and
      * throws an AssertionFailedException if the object count does not
@@ -34,6 +34,7 @@ import com.sun.sgs.app.ManagedObject;
 import com.sun.sgs.app.NameNotBoundException;
 import com.sun.sgs.app.ObjectNotFoundException;
 import com.sun.sgs.app.PeriodicTaskHandle;
+import com.sun.sgs.app.RunReadOnly;
 import com.sun.sgs.app.RunWithNewIdentity;
 import com.sun.sgs.app.Task;
 import com.sun.sgs.app.TransactionException;
@@ -73,6 +74,7 @@ import java.util.Properties;
 
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -1031,6 +1033,55 @@ public class TestTaskServiceImpl extends Assert {
         assertTrue(latch.await(500L, TimeUnit.MILLISECONDS));
     }
 
+    @Test
+    public void testRunReadOnlyTasks() throws Exception {
+        ReadOnlyTask.runs.set(0);
+        ReadOnlyTask.writableRuns.set(0);
+        txnScheduler.runTask(
+            new TestAbstractKernelRunnable() {
+                public void run() {
+                    for (long i = 0; i < 3; i++) {
+                        taskService.scheduleTask(
+                            new ReadOnlyTask(ReadOnlyAction.READ), i * 50L);
+                    }
+                }
+        }, taskOwner);
+
+        Thread.sleep(500);
+        assertEquals(3, ReadOnlyTask.runs.get());
+        assertEquals(0, ReadOnlyTask.writableRuns.get());
+        assertCounterClearXAction("Read-only task modified the counter");
+        assertPendingTasksReusable();
+    }
+
+    @Test
+    public void testRunReadOnlyTaskMarkForUpdate() throws Exception {
+        runReadOnlyFailureTest(ReadOnlyAction.MARK_FOR_UPDATE);
+    }
+
+    @Test
+    public void testRunReadOnlyTaskUnmarkedModification() throws Exception {
+        runReadOnlyFailureTest(ReadOnlyAction.MODIFY_UNMARKED);
+    }
+
+    private void runReadOnlyFailureTest(final ReadOnlyAction action)
+        throws Exception
+    {
+        ReadOnlyTask.runs.set(0);
+        txnScheduler.runTask(
+            new TestAbstractKernelRunnable() {
+                public void run() {
+                    taskService.scheduleTask(new ReadOnlyTask(action));
+                }
+        }, taskOwner);
+
+        Thread.sleep(400);
+        // the failure is not retryable, so the task only runs once
+        assertEquals(1, ReadOnlyTask.runs.get());
+        assertCounterClearXAction("Read-only task modified the counter");
+        assertPendingTasksReusable();
+    }
+
     @Test
     public void testRecoveryCleanup() throws Exception {
         final SgsTestNode node = new SgsTestNode(serverNode, null, null);
@@ -1275,6 +1326,23 @@ public class TestTaskServiceImpl extends Assert {
         }, taskOwner);
     }
 
+    private void assertPendingTasksReusable() throws Exception {
+        final Field reusableField = getReusableField();
+        txnScheduler.runTask(
+            new TestAbstractKernelRunnable() {
+                public void run() throws Exception {
+                    String name = dataService.nextServiceBoundName(PENDING_NS);
+                    while ((name != null) && (name.startsWith(PENDING_NS))) {
+                        Object o = dataService.getServiceBinding(name);
+                        if (! reusableField.getBoolean(o))
+                            fail("Pending task didn't get removed or " +
+                                 "set for re-use: " + name);
+                        name = dataService.nextServiceBoundName(name);
+                    }
+                }
+        }, taskOwner);
+    }
+
     private static Field getReusableField() throws Exception {
         Class pendingTaskClass =
             Class.forName("com.sun.sgs.impl.service.task.PendingTask");
@@ -1414,6 +1482,50 @@ public class TestTaskServiceImpl extends Assert {
          }
     }
 
+    /** The data access performed by a {@code ReadOnlyTask}. */
+    public enum ReadOnlyAction {
+        /** Only read the counter. */
+        READ,
+        /** Mark the counter for update before modifying it. */
+        MARK_FOR_UPDATE,
+        /** Modify the counter without marking it for update. */
+        MODIFY_UNMARKED
+    }
+
+    /** A utility class to test tasks run in read-only transactions. */
+    @RunReadOnly
+    public static class ReadOnlyTask implements Task, Serializable {
+        private static final long serialVersionUID = 1;
+        static final AtomicInteger runs = new AtomicInteger();
+        static final AtomicInteger writableRuns = new AtomicInteger();
+        private final ReadOnlyAction action;
+        public ReadOnlyTask(ReadOnlyAction action) {
+            this.action = action;
+        }
+        public void run() throws Exception {
+            runs.incrementAndGet();
+            if (! txnProxy.getCurrentTransaction().isReadOnly()) {
+                writableRuns.incrementAndGet();
+            }
+            DataManager dataManager = AppContext.getDataManager();
+            Counter counter = (Counter) dataManager.getBinding("counter");
+            switch (action) {
+            case READ:
+                counter.value();
+                break;
+            case MARK_FOR_UPDATE:
+                dataManager.markForUpdate(counter);
+                counter.increment();
+                break;
+            case MODIFY_UNMARKED:
+                counter.increment();
+                break;
+            default:
+                throw new AssertionError();
+            }
+        }
+    }
+
     @RunWithNewIdentity
     public static class NewIdentityKernelRunnable implements KernelRunnable {
         final Identity callingIdentity;
@@ -34,6 +34,7 @@ import com.sun.sgs.impl.service.transaction.TransactionCoordinatorImpl;
 import com.sun.sgs.impl.service.transaction.TransactionHandle;
 import com.sun.sgs.kernel.schedule.ScheduledTask;
 import com.sun.sgs.profile.ProfileCollector.ProfileLevel;
+import com.sun.sgs.service.ConcurrentTransactionParticipant;
 import com.sun.sgs.service.Transaction;
 import com.sun.sgs.service.TransactionListener;
 import com.sun.sgs.service.TransactionParticipant;
@@ -48,6 +49,8 @@ import com.sun.sgs.tools.test.FilteredNameRunner;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import org.junit.AfterClass;
 import static org.junit.Assert.assertEquals;
@@ -162,7 +165,10 @@ public class TestTransactionCoordinatorImpl {
 	    createProperties(
 		TransactionCoordinator.TXN_UNBOUNDED_TIMEOUT_PROPERTY, "0"),
 	    createProperties(
-		TransactionCoordinator.TXN_UNBOUNDED_TIMEOUT_PROPERTY, "-200")
+		TransactionCoordinator.TXN_UNBOUNDED_TIMEOUT_PROPERTY, "-200"),
+	    createProperties(
+		TransactionCoordinator.
+		TXN_CONCURRENT_PARTICIPANT_THREADS_PROPERTY, "-1")
 	};
 	for (Properties props : allProperties) {
 	    try {
@@ -2212,6 +2218,183 @@ public class TestTransactionCoordinatorImpl {
 	}
     }
 
+    /* -- Test Transaction.isReadOnly -- */
+
+    @Test
+    public void testIsReadOnlyDefault() {
+	assertFalse(txn.isReadOnly());
+    }
+
+    @Test
+    public void testIsReadOnly() throws Exception {
+	Transaction readOnlyTxn = coordinator.createTransaction(
+	    coordinator.getDefaultTimeout(), true).getTransaction();
+	assertTrue(readOnlyTxn.isReadOnly());
+	Transaction readWriteTxn = coordinator.createTransaction(
+	    coordinator.getDefaultTimeout(), false).getTransaction();
+	assertFalse(readWriteTxn.isReadOnly());
+    }
+
+    @Test
+    public void testCommitReadOnlyDisablePrepareAndCommit() throws Exception {
+	Properties props = new Properties(coordinatorProps);
+	props.setProperty(
+	    TransactionCoordinator.TXN_DISABLE_PREPAREANDCOMMIT_OPT_PROPERTY,
+	    "true");
+	TransactionCoordinator disabled =
+	    new TransactionCoordinatorImpl(props, collectorHandle);
+	handle = disabled.createTransaction(
+	    disabled.getDefaultTimeout(), true);
+	txn = handle.getTransaction();
+	DummyTransactionParticipant participant =
+	    new DummyTransactionParticipant() {
+		public boolean prepare(Transaction txn) throws Exception {
+		    throw new RuntimeException("Unexpected prepare");
+		}
+	    };
+	txn.join(participant);
+	handle.commit();
+	assertEquals(State.COMMITTED, participant.getState());
+	assertCommitted();
+    }
+
+    /* -- Test concurrent participants -- */
+
+    @Test
+    public void testCommitConcurrentParticipants() throws Exception {
+	/* Each prepare waits for the other, so they need to run together */
+	final CountDownLatch prepared = new CountDownLatch(2);
+	DummyTransactionParticipant[] participants = {
+	    new ConcurrentParticipant() {
+		public boolean prepare(Transaction txn) throws Exception {
+		    awaitLatch(prepared);
+		    return super.prepare(txn);
+		}
+	    },
+	    new ConcurrentParticipant() {
+		public boolean prepare(Transaction txn) throws Exception {
+		    awaitLatch(prepared);
+		    return super.prepare(txn);
+		}
+	    },
+	    new DummyNonDurableTransactionParticipant(),
+	    new DummyTransactionParticipant()
+	};
+	for (TransactionParticipant participant : participants) {
+	    txn.join(participant);
+	}
+	handle.commit();
+	for (DummyTransactionParticipant participant : participants) {
+	    assertEquals(State.COMMITTED, participant.getState());
+	}
+	assertCommitted();
+    }
+
+    @Test
+    public void testCommitConcurrentParticipantReadOnly() throws Exception {
+	DummyTransactionParticipant[] participants = {
+	    new ConcurrentParticipant() {
+		protected boolean prepareResult() { return true; }
+	    },
+	    new ConcurrentParticipant(),
+	    new DummyTransactionParticipant()
+	};
+	for (TransactionParticipant participant : participants) {
+	    txn.join(participant);
+	}
+	handle.commit();
+	assertTrue(participants[0].prepareReturnedTrue());
+	assertEquals(State.PREPARED, participants[0].getState());
+	assertEquals(State.COMMITTED, participants[1].getState());
+	assertEquals(State.COMMITTED, participants[2].getState());
+	assertCommitted();
+    }
+
+    @Test
+    public void testCommitConcurrentParticipantPrepareFails()
+	throws Exception
+    {
+	final Exception abortCause = new IOException("Prepare failed");
+	DummyTransactionParticipant[] participants = {
+	    new ConcurrentParticipant(),
+	    new ConcurrentParticipant() {
+		public boolean prepare(Transaction txn) throws Exception {
+		    throw abortCause;
+		}
+	    },
+	    new DummyNonDurableTransactionParticipant(),
+	    new DummyTransactionParticipant()
+	};
+	for (TransactionParticipant participant : participants) {
+	    txn.join(participant);
+	}
+	try {
+	    handle.commit();
+	    fail("Expected IOException");
+	} catch (IOException e) {
+	    System.err.println(e);
+	}
+	for (DummyTransactionParticipant participant : participants) {
+	    assertEquals(State.ABORTED, participant.getState());
+	}
+	assertAborted(abortCause);
+    }
+
+    @Test
+    public void testCommitConcurrentParticipantCommitFails()
+	throws Exception
+    {
+	DummyTransactionParticipant[] participants = {
+	    new ConcurrentParticipant() {
+		public void commit(Transaction txn) {
+		    throw new RuntimeException("Commit failed");
+		}
+	    },
+	    new ConcurrentParticipant(),
+	    new DummyTransactionParticipant()
+	};
+	for (TransactionParticipant participant : participants) {
+	    txn.join(participant);
+	}
+	handle.commit();
+	assertEquals(State.PREPARED, participants[0].getState());
+	assertEquals(State.COMMITTED, participants[1].getState());
+	assertEquals(State.COMMITTED, participants[2].getState());
+	assertCommitted();
+    }
+
+    @Test
+    public void testCommitConcurrentParticipantsDisabled() throws Exception {
+	Properties props = new Properties(coordinatorProps);
+	props.setProperty(
+	    TransactionCoordinator.TXN_CONCURRENT_PARTICIPANT_THREADS_PROPERTY,
+	    "0");
+	TransactionCoordinator disabled =
+	    new TransactionCoordinatorImpl(props, collectorHandle);
+	handle = disabled.createTransaction(disabled.getDefaultTimeout());
+	txn = handle.getTransaction();
+	final Thread owner = Thread.currentThread();
+	DummyTransactionParticipant[] participants = {
+	    new ConcurrentParticipant() {
+		public boolean prepare(Transaction txn) throws Exception {
+		    if (Thread.currentThread() != owner) {
+			throw new RuntimeException("Wrong thread");
+		    }
+		    return super.prepare(txn);
+		}
+	    },
+	    new DummyTransactionParticipant()
+	};
+	for (TransactionParticipant participant : participants) {
+	    txn.join(participant);
+	}
+	handle.commit();
+	for (DummyTransactionParticipant participant : participants) {
+	    assertEquals(State.COMMITTED, participant.getState());
+	}
+	assertCommitted();
+    }
+
     /* -- Test equals -- */
 
     @Test
@@ -2299,6 +2482,22 @@ public class TestTransactionCoordinatorImpl {
 	}
     }
 
+    /** Waits for the latch, failing if it takes too long. */
+    private static void awaitLatch(CountDownLatch latch) throws Exception {
+	latch.countDown();
+	if (!latch.await(TIMEOUT, TimeUnit.MILLISECONDS)) {
+	    throw new RuntimeException("Participants were not concurrent");
+	}
+    }
+
+    /** A participant that can be prepared and committed concurrently. */
+    private static class ConcurrentParticipant
+	extends DummyNonDurableTransactionParticipant
+	implements ConcurrentTransactionParticipant
+    {
+	ConcurrentParticipant() { }
+    }
+
     /** Checks if the argument is a retryable exception. */
     private static boolean retryable(Throwable t) {
 	return t instanceof ExceptionRetryStatus &&
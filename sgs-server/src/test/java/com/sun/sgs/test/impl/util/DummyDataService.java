@@ -30,6 +30,7 @@ import com.sun.sgs.service.DataService;
 import java.io.Serializable;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -83,6 +84,8 @@ class DummyDataService
     public BigInteger getObjectId(Object object) {
 	throw new UnsupportedOperationException();
     }
+
+    public void prefetch(Collection<? extends ManagedReference<?>> refs) { }
 	
     /* -- Implement DataService -- */
     public long getLocalNodeId() {
@@ -29,6 +29,7 @@ import com.sun.sgs.tools.test.FilteredJUnit3TestRunner;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -331,6 +332,8 @@ public class TestBoundNamesUtil extends TestCase {
 	    return null;
 	}
 	public BigInteger getObjectId(Object object) { return null; }
+	public void prefetch(
+	    Collection<? extends ManagedReference<?>> refs) { }
 	/* -- Stubs for DataService -- */
 	public long getLocalNodeId() { return 1; }
 	public ManagedObject getServiceBinding(String name) {
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2010 The RedDwarf Authors.  All rights reserved
+ * Portions of this file have been modified as part of RedDwarf
+ * The source code is governed by a GPLv2 license that can be found
+ * in the LICENSE file.
+ */
+/*
+ * Copyright 2007-2010 Sun Microsystems, Inc.
+ *
+ * This file is part of Project Darkstar Server.
+ *
+ * Project Darkstar Server is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * version 2 as published by the Free Software Foundation and
+ * distributed hereunder to you.
+ *
+ * Project Darkstar Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * --
+ */
+
+package com.sun.sgs.test.impl.util;
+
+import com.sun.sgs.impl.util.RunLimiter;
+import com.sun.sgs.tools.test.FilteredNameRunner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Test the RunLimiter class. */
+@RunWith(FilteredNameRunner.class)
+public class TestRunLimiter {
+
+    /* -- Test constructor -- */
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testConstructorZero() {
+	new RunLimiter(0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testConstructorNegative() {
+	new RunLimiter(-1);
+    }
+
+    @Test
+    public void testConstructor() {
+	RunLimiter limiter = new RunLimiter(3);
+	assertEquals(3, limiter.getMaxRunning());
+	assertEquals(0, limiter.getRunningCount());
+    }
+
+    /* -- Test enter and exit -- */
+
+    @Test
+    public void testEnterExit() {
+	RunLimiter limiter = new RunLimiter(1);
+	limiter.enter();
+	try {
+	    assertEquals(1, limiter.getRunningCount());
+	} finally {
+	    limiter.exit();
+	}
+	assertEquals(0, limiter.getRunningCount());
+    }
+
+    @Test
+    public void testEnterTwice() {
+	RunLimiter limiter = new RunLimiter(2);
+	limiter.enter();
+	try {
+	    limiter.enter();
+	    fail("Expected IllegalStateException");
+	} catch (IllegalStateException e) {
+	    System.err.println(e);
+	} finally {
+	    limiter.exit();
+	}
+	assertEquals(0, limiter.getRunningCount());
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testExitNotEntered() {
+	new RunLimiter(1).exit();
+    }
+
+    @Test
+    public void testLimitEnforced() throws Exception {
+	final RunLimiter limiter = new RunLimiter(2);
+	final AtomicInteger running = new AtomicInteger();
+	final AtomicInteger maxRunning = new AtomicInteger();
+	Thread[] threads = new Thread[8];
+	for (int i = 0; i < threads.length; i++) {
+	    threads[i] = new Thread() {
+		public void run() {
+		    for (int j = 0; j < 50; j++) {
+			limiter.enter();
+			try {
+			    int n = running.incrementAndGet();
+			    synchronized (maxRunning) {
+				if (n > maxRunning.get()) {
+				    maxRunning.set(n);
+				}
+			    }
+			    Thread.yield();
+			    running.decrementAndGet();
+			} finally {
+			    limiter.exit();
+			}
+		    }
+		}
+	    };
+	    threads[i].start();
+	}
+	for (Thread thread : threads) {
+	    thread.join(10000);
+	    assertFalse(thread.isAlive());
+	}
+	assertTrue("Max running: " + maxRunning, maxRunning.get() <= 2);
+	assertEquals(0, limiter.getRunningCount());
+    }
+
+    /* -- Test beginBlocking and endBlocking -- */
+
+    @Test
+    public void testBlockingNotEntered() {
+	RunLimiter limiter = RunLimiter.beginBlocking();
+	assertNull(limiter);
+	RunLimiter.endBlocking(limiter);
+    }
+
+    @Test
+    public void testBlockingReleasesTurn() throws Exception {
+	final RunLimiter limiter = new RunLimiter(1);
+	limiter.enter();
+	RunLimiter blocking = RunLimiter.beginBlocking();
+	assertSame(limiter, blocking);
+	assertEquals(0, limiter.getRunningCount());
+	final CountDownLatch ran = new CountDownLatch(1);
+	final CountDownLatch release = new CountDownLatch(1);
+	Thread thread = new Thread() {
+	    public void run() {
+		limiter.enter();
+		try {
+		    ran.countDown();
+		    release.await();
+		} catch (InterruptedException e) {
+		} finally {
+		    limiter.exit();
+		}
+	    }
+	};
+	thread.start();
+	assertTrue(ran.await(10, TimeUnit.SECONDS));
+	release.countDown();
+	RunLimiter.endBlocking(blocking);
+	try {
+	    assertEquals(1, limiter.getRunningCount());
+	} finally {
+	    limiter.exit();
+	}
+	thread.join(10000);
+	assertEquals(0, limiter.getRunningCount());
+    }
+
+    /* -- Test blockingProxy -- */
+
+    /** An interface for testing proxies. */
+    public interface Service {
+	int call(int arg) throws Exception;
+    }
+
+    @Test(expected=NullPointerException.class)
+    public void testBlockingProxyNullTarget() {
+	RunLimiter.blockingProxy(Service.class, null);
+    }
+
+    @Test
+    public void testBlockingProxy() throws Exception {
+	final RunLimiter limiter = new RunLimiter(1);
+	Service service = RunLimiter.blockingProxy(
+	    Service.class,
+	    new Service() {
+		public int call(int arg) throws Exception {
+		    assertEquals(0, limiter.getRunningCount());
+		    if (arg < 0) {
+			throw new Exception("Negative: " + arg);
+		    }
+		    return arg + 1;
+		}
+	    });
+	limiter.enter();
+	try {
+	    assertEquals(2, service.call(1));
+	    assertEquals(1, limiter.getRunningCount());
+	    try {
+		service.call(-1);
+		fail("Expected Exception");
+	    } catch (Exception e) {
+		assertEquals("Negative: -1", e.getMessage());
+	    }
+	    assertEquals(1, limiter.getRunningCount());
+	} finally {
+	    limiter.exit();
+	}
+    }
+}
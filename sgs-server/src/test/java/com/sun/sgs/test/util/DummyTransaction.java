@@ -81,6 +81,9 @@ public class DummyTransaction implements Transaction {
     /** The state of this transaction. */
     private State state = State.ACTIVE;
 
+    /** Whether this transaction is read-only. */
+    private boolean readOnly = false;
+
     /**
      * The exception that caused the transaction to be aborted, or null if no
      * cause was provided or if no abort occurred.
@@ -179,6 +182,8 @@ public class DummyTransaction implements Transaction {
 	}
     }
 
+    public boolean isReadOnly() { return readOnly; }
+
     public synchronized void join(TransactionParticipant participant) {
 	if (logger.isLoggable(Level.FINEST)) {
 	    logger.log(
@@ -253,6 +258,17 @@ public class DummyTransaction implements Transaction {
 
     /* -- Other methods -- */
 
+    /**
+     * Specifies whether this transaction should be treated as read-only.
+     * Must be called before any participants have joined.
+     */
+    public void setReadOnly(boolean readOnly) {
+	if (!participants.isEmpty()) {
+	    throw new IllegalStateException("Participants have joined");
+	}
+	this.readOnly = readOnly;
+    }
+
     public synchronized boolean prepare() throws Exception {
 	logger.log(Level.FINER, "prepare {0}", this);
 	if (state != State.ACTIVE) {
@@ -85,13 +85,21 @@ public class DummyTransactionProxy
     /* -- Implement TransactionCoordinator -- */
 
     public TransactionHandle createTransaction(long timeout) {
+	return createTransaction(timeout, false);
+    }
+
+    public TransactionHandle createTransaction(long timeout,
+					       boolean readOnly)
+    {
 	if (timeout == ScheduledTask.UNBOUNDED) {
 	    timeout = unboundedTimeout;
 	} else if (timeout <= 0) {
 	    throw new IllegalArgumentException(
 		"Timeout value must be greater than 0: " + timeout);
 	}
-	return new TxnHandle(disablePrepareAndCommitOpt, timeout);
+	TxnHandle handle = new TxnHandle(disablePrepareAndCommitOpt, timeout);
+	handle.txn.setReadOnly(readOnly);
+	return handle;
     }
 
     public long getDefaultTimeout() {
@@ -118,6 +118,17 @@ public class InMemoryDataStore extends AbstractDataStore {
 	}
     }
 
+    protected synchronized byte[][] getObjectsInternal(
+	Transaction txn, long[] oids)
+    {
+	txn.join(this);
+	byte[][] result = new byte[oids.length][];
+	for (int i = 0; i < oids.length; i++) {
+	    result[i] = this.oids.get(oids[i]);
+	}
+	return result;
+    }
+
     protected synchronized void setObjectInternal(
 	Transaction txn, long oid, byte[] data)
     {
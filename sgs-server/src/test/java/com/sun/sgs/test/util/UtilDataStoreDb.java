@@ -24,6 +24,7 @@ package com.sun.sgs.test.util;
 import com.sun.sgs.impl.service.data.store.DataStoreImpl;
 import com.sun.sgs.impl.service.data.store.db.bdb.BdbEnvironment;
 import com.sun.sgs.impl.service.data.store.db.je.JeEnvironment;
+import com.sun.sgs.impl.service.data.store.db.mem.MemEnvironment;
 import com.sun.sgs.service.store.db.DbEnvironment;
 import java.lang.reflect.Method;
 import java.util.Properties;
@@ -38,7 +39,10 @@ public final class UtilDataStoreDb {
 	BDB,
 
 	/** Berkeley DB Java Edition */
-	JE
+	JE,
+
+	/** In-memory database with write-ahead logging */
+	MEM
     };
 
     /**
@@ -60,6 +64,11 @@ public final class UtilDataStoreDb {
 		       "JeEnvironment"))
 	{
 	    return EnvironmentType.JE;
+	} else if (className.equals(
+		       "com.sun.sgs.impl.service.data.store.db.mem." +
+		       "MemEnvironment"))
+	{
+	    return EnvironmentType.MEM;
 	} else {
 	    throw new RuntimeException(
 		"Unknown environment class: " + className);
@@ -80,6 +89,8 @@ public final class UtilDataStoreDb {
 	    return BdbEnvironment.LOCK_TIMEOUT_PROPERTY;
 	case JE:
 	    return JeEnvironment.LOCK_TIMEOUT_PROPERTY;
+	case MEM:
+	    return MemEnvironment.LOCK_TIMEOUT_PROPERTY;
 	default:
 	    throw new RuntimeException("Unknown environment");
 	}